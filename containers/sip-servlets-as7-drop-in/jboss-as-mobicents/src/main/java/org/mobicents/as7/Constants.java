@@ -57,6 +57,7 @@ interface Constants {
     String DIALOG_PENDING_REQUEST_CHECKING = "dialog-pending-request-checking";
     String DNS_SERVER_LOCATOR_CLASS = "dns-server-locator-class";
     String DNS_TIMEOUT = "dns-timeout";
+    String ASYNCHRONOUS_DNS_RESOLUTION = "asynchronous-dns-resolution";
     String DNS_RESOLVER_CLASS = "dns-resolver-class";
     String CALL_ID_MAX_LENGTH = "call-id-max-length";
     String TAG_HASH_MAX_LENGTH = "tag-hash-max-length";
@@ -126,6 +127,8 @@ interface Constants {
     String SSL = "ssl";
     String SSO = "sso";
     String STANDARD = "standard";
+    String WHEEL = "wheel";
+    String SHARED = "shared";
     String STATIC_RESOURCES = "static-resources";
     String STATIC_SERVER_ADDRESS = "static-server-address";
     String STATIC_SERVER_PORT = "static-server-port";
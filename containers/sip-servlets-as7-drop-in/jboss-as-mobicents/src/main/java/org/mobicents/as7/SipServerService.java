@@ -75,6 +75,7 @@ class SipServerService implements SipServer, Service<SipServer> {
  	final boolean dialogPendingRequestChecking;
  	final String dnsServerLocatorClass;
  	final int dnsTimeout;
+ 	final boolean asynchronousDnsResolution;
  	final String dnsResolverClass;
  	final int callIdMaxLength;
 	final int tagHashMaxLength;
@@ -115,6 +116,7 @@ class SipServerService implements SipServer, Service<SipServer> {
     		boolean dialogPendingRequestChecking,
     		String dnsServerLocatorClass,
     		int dnsTimeout,
+    		boolean asynchronousDnsResolution,
     		String dnsResolverClass,
     		int callIdMaxLength,
     		int tagHashMaxLength,
@@ -144,6 +146,7 @@ class SipServerService implements SipServer, Service<SipServer> {
         this.dialogPendingRequestChecking = dialogPendingRequestChecking;
         this.dnsServerLocatorClass = dnsServerLocatorClass;
         this.dnsTimeout = dnsTimeout;
+        this.asynchronousDnsResolution = asynchronousDnsResolution;
         this.dnsResolverClass = dnsResolverClass;
         this.callIdMaxLength = callIdMaxLength;
         this.tagHashMaxLength = tagHashMaxLength;
@@ -242,6 +245,7 @@ class SipServerService implements SipServer, Service<SipServer> {
         sipService.setDialogPendingRequestChecking(dialogPendingRequestChecking);
         sipService.setDnsServerLocatorClass(dnsServerLocatorClass);
         sipService.setDnsTimeout(dnsTimeout);
+        sipService.setAsynchronousDnsResolution(asynchronousDnsResolution);
         sipService.setDnsResolverClass(dnsResolverClass);
         sipService.setCanceledTimerTasksPurgePeriod(canceledTimerTasksPurgePeriod);
         sipService.setMemoryThreshold(memoryThreshold);
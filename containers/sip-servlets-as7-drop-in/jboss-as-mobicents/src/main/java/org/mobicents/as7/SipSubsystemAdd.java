@@ -104,6 +104,7 @@ class SipSubsystemAdd extends AbstractBoottimeAddStepHandler {
         SipDefinition.DIALOG_PENDING_REQUEST_CHECKING.validateAndSet(operation, model);
         SipDefinition.DNS_SERVER_LOCATOR_CLASS.validateAndSet(operation, model);
         SipDefinition.DNS_TIMEOUT.validateAndSet(operation, model);
+        SipDefinition.ASYNCHRONOUS_DNS_RESOLUTION.validateAndSet(operation, model);
         SipDefinition.DNS_RESOLVER_CLASS.validateAndSet(operation, model);
         SipDefinition.CANCELED_TIMER_TASKS_PURGE_PERIOD.validateAndSet(operation, model);
         SipDefinition.MEMORY_THRESHOLD.validateAndSet(operation, model);
@@ -177,6 +178,9 @@ class SipSubsystemAdd extends AbstractBoottimeAddStepHandler {
         final ModelNode dnsTimeoutModel = SipDefinition.DNS_TIMEOUT.resolveModelAttribute(context, fullModel);
         final int dnsTimeout = dnsTimeoutModel.isDefined() ? dnsTimeoutModel.asInt() : null;
         
+        final ModelNode asynchronousDnsResolutionModel = SipDefinition.ASYNCHRONOUS_DNS_RESOLUTION.resolveModelAttribute(context, fullModel);
+        final boolean asynchronousDnsResolution = asynchronousDnsResolutionModel.isDefined() ? asynchronousDnsResolutionModel.asBoolean() : false;
+        
         final ModelNode dnsResolverClassModel = SipDefinition.DNS_RESOLVER_CLASS.resolveModelAttribute(context, fullModel);
         final String dnsResolverClass = dnsResolverClassModel.isDefined() ? dnsResolverClassModel.asString() : null;
         
@@ -208,12 +212,12 @@ class SipSubsystemAdd extends AbstractBoottimeAddStepHandler {
 //    	final boolean usePrettyEncoding = operation.hasDefined(Constants.USE_PRETTY_ENCODING) ? operation.get(Constants.USE_PRETTY_ENCODING).asBoolean() : true;
 
         if(sasTimerServiceImplementationType!=null &&
-                !Constants.DEFAULT.equalsIgnoreCase(sasTimerServiceImplementationType) && !Constants.STANDARD.equalsIgnoreCase(sasTimerServiceImplementationType)) {
-            throw new OperationFailedException("Invalid value is set for "+Constants.SAS_TIMER_SERVICE_IMPEMENTATION_TYPE+" property: "+sasTimerServiceImplementationType+"! Valid values are: "+Constants.DEFAULT +", "+Constants.STANDARD+".");
+                !Constants.DEFAULT.equalsIgnoreCase(sasTimerServiceImplementationType) && !Constants.STANDARD.equalsIgnoreCase(sasTimerServiceImplementationType) && !Constants.WHEEL.equalsIgnoreCase(sasTimerServiceImplementationType) && !Constants.SHARED.equalsIgnoreCase(sasTimerServiceImplementationType)) {
+            throw new OperationFailedException("Invalid value is set for "+Constants.SAS_TIMER_SERVICE_IMPEMENTATION_TYPE+" property: "+sasTimerServiceImplementationType+"! Valid values are: "+Constants.DEFAULT +", "+Constants.STANDARD+", "+Constants.WHEEL+", "+Constants.SHARED+".");
         }
         if(sasTimerServiceImplementationType!=null &&
-                !Constants.DEFAULT.equalsIgnoreCase(proxyTimerServiceImplementationType) && !Constants.STANDARD.equalsIgnoreCase(proxyTimerServiceImplementationType)) {
-            throw new OperationFailedException("Invalid value is set for "+Constants.PROXY_TIMER_SERVICE_IMPEMENTATION_TYPE+" property: "+proxyTimerServiceImplementationType+"! Valid values are: "+Constants.DEFAULT +", "+Constants.STANDARD+".");
+                !Constants.DEFAULT.equalsIgnoreCase(proxyTimerServiceImplementationType) && !Constants.STANDARD.equalsIgnoreCase(proxyTimerServiceImplementationType) && !Constants.WHEEL.equalsIgnoreCase(proxyTimerServiceImplementationType) && !Constants.SHARED.equalsIgnoreCase(proxyTimerServiceImplementationType)) {
+            throw new OperationFailedException("Invalid value is set for "+Constants.PROXY_TIMER_SERVICE_IMPEMENTATION_TYPE+" property: "+proxyTimerServiceImplementationType+"! Valid values are: "+Constants.DEFAULT +", "+Constants.STANDARD+", "+Constants.WHEEL+", "+Constants.SHARED+".");
         }
         
         final SipServerService service = new SipServerService(
@@ -235,6 +239,7 @@ class SipSubsystemAdd extends AbstractBoottimeAddStepHandler {
         		dialogPendingRequestChecking,
         		dnsServerLocatorClass,
         		dnsTimeout,
+        		asynchronousDnsResolution,
         		dnsResolverClass,
         		callIdMaxLength,
         		tagHashMaxLength,
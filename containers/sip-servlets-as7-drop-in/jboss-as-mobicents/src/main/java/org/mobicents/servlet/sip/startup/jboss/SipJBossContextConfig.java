@@ -70,13 +70,13 @@ import org.mobicents.servlet.sip.catalina.SipLoginConfig;
 import org.mobicents.servlet.sip.catalina.SipSecurityCollection;
 import org.mobicents.servlet.sip.catalina.SipSecurityConstraint;
 import org.mobicents.servlet.sip.catalina.SipServletImpl;
-import org.mobicents.servlet.sip.catalina.rules.AndRule;
-import org.mobicents.servlet.sip.catalina.rules.ContainsRule;
-import org.mobicents.servlet.sip.catalina.rules.EqualsRule;
-import org.mobicents.servlet.sip.catalina.rules.ExistsRule;
-import org.mobicents.servlet.sip.catalina.rules.NotRule;
-import org.mobicents.servlet.sip.catalina.rules.OrRule;
-import org.mobicents.servlet.sip.catalina.rules.SubdomainRule;
+import org.mobicents.servlet.sip.rules.AndRule;
+import org.mobicents.servlet.sip.rules.ContainsRule;
+import org.mobicents.servlet.sip.rules.EqualsRule;
+import org.mobicents.servlet.sip.rules.ExistsRule;
+import org.mobicents.servlet.sip.rules.NotRule;
+import org.mobicents.servlet.sip.rules.OrRule;
+import org.mobicents.servlet.sip.rules.SubdomainRule;
 import org.mobicents.servlet.sip.core.descriptor.MatchingRule;
 import org.mobicents.servlet.sip.startup.loading.SipServletMapping;
 
@@ -77,6 +77,7 @@ import org.mobicents.javax.servlet.CongestionControlPolicy;
 import org.mobicents.servlet.sip.JainSipUtils;
 import org.mobicents.servlet.sip.SipConnector;
 import org.mobicents.servlet.sip.annotation.ConcurrencyControlMode;
+import org.mobicents.servlet.sip.core.DispatcherExecutionMode;
 import org.mobicents.servlet.sip.core.ExtendedListeningPoint;
 import org.mobicents.servlet.sip.core.MobicentsExtendedListeningPoint;
 import org.mobicents.servlet.sip.core.SipApplicationDispatcher;
@@ -123,6 +124,9 @@ public class SipStandardService extends StandardService implements CatalinaSipSe
 	private boolean gatherStatistics = true;
 	protected int sipMessageQueueSize = 1500;
 	private int backToNormalSipMessageQueueSize = 1300;
+	// queueing delay based congestion control, disabled if the target is 0
+	private long sipMessageQueueDelayTarget = 0;
+	private long sipMessageQueueDelayInterval = 100;
 	protected int memoryThreshold = 95;
 	private int backToNormalMemoryThreshold = 90;
 	protected OutboundProxy outboundProxy;
@@ -136,6 +140,8 @@ public class SipStandardService extends StandardService implements CatalinaSipSe
 	private int t4Interval = 5000;
 	private int timerDInterval = 32000;
 	protected int dispatcherThreadPoolSize = 15;
+	// Pooled, Elastic or Sharded, see DispatcherExecutionMode
+	protected String dispatcherExecutionMode = DispatcherExecutionMode.Pooled.toString();
 	private boolean md5ContactUserPart = false;
 	
 	protected String concurrencyControlMode = ConcurrencyControlMode.SipApplicationSession.toString();
@@ -171,6 +177,7 @@ public class SipStandardService extends StandardService implements CatalinaSipSe
 	private String addressResolverClass = null;
 	private String dnsServerLocatorClass = DefaultDNSServerLocator.class.getName();
 	private int dnsTimeout = 1;
+	private boolean asynchronousDnsResolution = false;
 	private String dnsResolverClass = MobicentsDNSResolver.class.getName();
 	private String mobicentsSipServletMessageFactoryClassName = Servlet3SipServletMessageFactory.class.getName();
 	
@@ -296,10 +303,13 @@ public class SipStandardService extends StandardService implements CatalinaSipSe
 		sipApplicationDispatcher.setCongestionControlPolicyByName(getCongestionControlPolicy());
 		sipApplicationDispatcher.setQueueSize(getSipMessageQueueSize());
 		sipApplicationDispatcher.setBackToNormalQueueSize(backToNormalSipMessageQueueSize);
+		sipApplicationDispatcher.setQueueDelayTarget(sipMessageQueueDelayTarget);
+		sipApplicationDispatcher.setQueueDelayInterval(sipMessageQueueDelayInterval);
 		sipApplicationDispatcher.setGatherStatistics(gatherStatistics);
 		sipApplicationDispatcher.setConcurrencyControlMode(ConcurrencyControlMode.valueOf(getConcurrencyControlMode()));		
 		sipApplicationDispatcher.setBypassRequestExecutor(bypassRequestExecutor);
 		sipApplicationDispatcher.setBypassResponseExecutor(bypassResponseExecutor);
+		sipApplicationDispatcher.setDispatcherExecutionMode(DispatcherExecutionMode.valueOf(dispatcherExecutionMode));
 		sipApplicationDispatcher.setSipStack(sipStack);
 		sipApplicationDispatcher.init();
 		// Tomcat specific loading case where the connectors are added even before the service is initialized
@@ -784,6 +794,42 @@ public class SipStandardService extends StandardService implements CatalinaSipSe
 	public int getBackToNormalSipMessageQueueSize() {
 		return backToNormalSipMessageQueueSize;
 	}
+
+	/**
+	 * @param sipMessageQueueDelayTarget the time in milliseconds SIP messages can wait for a worker thread before
+	 * initial requests start being refused, 0 to disable the queueing delay based congestion control
+	 */
+	public void setSipMessageQueueDelayTarget(long sipMessageQueueDelayTarget) {
+		this.sipMessageQueueDelayTarget = sipMessageQueueDelayTarget;
+		if(sipApplicationDispatcher != null) {
+			sipApplicationDispatcher.setQueueDelayTarget(sipMessageQueueDelayTarget);
+		}
+	}
+
+	/**
+	 * @return the sipMessageQueueDelayTarget
+	 */
+	public long getSipMessageQueueDelayTarget() {
+		return sipMessageQueueDelayTarget;
+	}
+
+	/**
+	 * @param sipMessageQueueDelayInterval the interval in milliseconds over which the queueing delay has to stay
+	 * above the target for the congestion level to be raised
+	 */
+	public void setSipMessageQueueDelayInterval(long sipMessageQueueDelayInterval) {
+		this.sipMessageQueueDelayInterval = sipMessageQueueDelayInterval;
+		if(sipApplicationDispatcher != null) {
+			sipApplicationDispatcher.setQueueDelayInterval(sipMessageQueueDelayInterval);
+		}
+	}
+
+	/**
+	 * @return the sipMessageQueueDelayInterval
+	 */
+	public long getSipMessageQueueDelayInterval() {
+		return sipMessageQueueDelayInterval;
+	}
 	
 
 	/**
@@ -947,6 +993,23 @@ public class SipStandardService extends StandardService implements CatalinaSipSe
 		this.dispatcherThreadPoolSize = dispatcherThreadPoolSize;
 	}
 
+	/**
+	 * @param dispatcherExecutionMode Pooled for a fixed pool of dispatcherThreadPoolSize threads, Elastic for a thread
+	 * per task up to a high bound, for applications blocking in their servlets, Sharded for dispatcherThreadPoolSize
+	 * single threaded shards the SIP messages are spread over by Call-ID, which requires the Transaction or
+	 * SipApplicationSessionMailbox concurrency control mode. Only taken into account at startup.
+	 */
+	public void setDispatcherExecutionMode(String dispatcherExecutionMode) {
+		this.dispatcherExecutionMode = DispatcherExecutionMode.valueOf(dispatcherExecutionMode).toString();
+	}
+
+	/**
+	 * @return the dispatcherExecutionMode
+	 */
+	public String getDispatcherExecutionMode() {
+		return dispatcherExecutionMode;
+	}
+
 	public int getCanceledTimerTasksPurgePeriod() {
 		return canceledTimerTasksPurgePeriod;
 	}
@@ -1389,6 +1452,21 @@ public class SipStandardService extends StandardService implements CatalinaSipSe
 	public void setDnsTimeout(int dnsTimeout) {
 		this.dnsTimeout = dnsTimeout;
 	}
+
+	/**
+	 * @return true if the DNS lookups of outgoing requests are done on dedicated resolver threads
+	 */
+	public boolean isAsynchronousDnsResolution() {
+		return asynchronousDnsResolution;
+	}
+
+	/**
+	 * @param asynchronousDnsResolution true to do the DNS lookups of outgoing requests on dedicated resolver threads,
+	 * the request being sent once its hops are located
+	 */
+	public void setAsynchronousDnsResolution(boolean asynchronousDnsResolution) {
+		this.asynchronousDnsResolution = asynchronousDnsResolution;
+	}
 	
 	public String getProxyTimerServiceImplementationType() {
         return proxyTimerServiceImplementationType;
@@ -56,6 +56,7 @@ enum Attribute {
     DIALOG_PENDING_REQUEST_CHECKING(Constants.DIALOG_PENDING_REQUEST_CHECKING),
     DNS_SERVER_LOCATOR_CLASS(Constants.DNS_SERVER_LOCATOR_CLASS),
     DNS_TIMEOUT(Constants.DNS_TIMEOUT),
+    ASYNCHRONOUS_DNS_RESOLUTION(Constants.ASYNCHRONOUS_DNS_RESOLUTION),
     DNS_RESOLVER_CLASS(Constants.DNS_RESOLVER_CLASS),
     DIRECTORY(Constants.DIRECTORY),
     DISABLED(Constants.DISABLED),
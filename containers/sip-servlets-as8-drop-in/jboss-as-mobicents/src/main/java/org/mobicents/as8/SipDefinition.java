@@ -206,6 +206,13 @@ public class SipDefinition extends SimpleResourceDefinition {
                     .setFlags(AttributeAccess.Flag.RESTART_ALL_SERVICES)
                     .setDefaultValue(new ModelNode(1))
                     .build();
+    protected static final SimpleAttributeDefinition ASYNCHRONOUS_DNS_RESOLUTION =
+            new SimpleAttributeDefinitionBuilder(Constants.ASYNCHRONOUS_DNS_RESOLUTION, ModelType.BOOLEAN, true)
+                    .setAllowExpression(true)
+                    .setXmlName(Constants.ASYNCHRONOUS_DNS_RESOLUTION)
+                    .setFlags(AttributeAccess.Flag.RESTART_ALL_SERVICES)
+                    .setDefaultValue(new ModelNode(false))
+                    .build();
     protected static final SimpleAttributeDefinition DNS_RESOLVER_CLASS =
             new SimpleAttributeDefinitionBuilder(Constants.DNS_RESOLVER_CLASS, ModelType.STRING, true)
                     .setAllowExpression(true)
@@ -311,6 +318,7 @@ public class SipDefinition extends SimpleResourceDefinition {
         registration.registerReadWriteAttribute(DNS_SERVER_LOCATOR_CLASS, null, new ReloadRequiredWriteAttributeHandler(
                 DNS_SERVER_LOCATOR_CLASS));
         registration.registerReadWriteAttribute(DNS_TIMEOUT, null, new ReloadRequiredWriteAttributeHandler(DNS_TIMEOUT));
+        registration.registerReadWriteAttribute(ASYNCHRONOUS_DNS_RESOLUTION, null, new ReloadRequiredWriteAttributeHandler(ASYNCHRONOUS_DNS_RESOLUTION));
         registration.registerReadWriteAttribute(DNS_RESOLVER_CLASS, null, new ReloadRequiredWriteAttributeHandler(
                 DNS_RESOLVER_CLASS));
         registration.registerReadWriteAttribute(CANCELED_TIMER_TASKS_PURGE_PERIOD, null,
@@ -96,6 +96,7 @@ class SipSubsystemParser implements XMLStreamConstants, XMLElementReader<List<Mo
         SipDefinition.DIALOG_PENDING_REQUEST_CHECKING.marshallAsAttribute(node, false, writer);
         SipDefinition.DNS_SERVER_LOCATOR_CLASS.marshallAsAttribute(node, false, writer);
         SipDefinition.DNS_TIMEOUT.marshallAsAttribute(node, false, writer);
+        SipDefinition.ASYNCHRONOUS_DNS_RESOLUTION.marshallAsAttribute(node, false, writer);
         SipDefinition.DNS_RESOLVER_CLASS.marshallAsAttribute(node, false, writer);
         SipDefinition.CANCELED_TIMER_TASKS_PURGE_PERIOD.marshallAsAttribute(node, false, writer);
         SipDefinition.MEMORY_THRESHOLD.marshallAsAttribute(node, false, writer);
@@ -143,6 +144,7 @@ class SipSubsystemParser implements XMLStreamConstants, XMLElementReader<List<Mo
                 case DIALOG_PENDING_REQUEST_CHECKING:
                 case DNS_SERVER_LOCATOR_CLASS:
                 case DNS_TIMEOUT:
+                case ASYNCHRONOUS_DNS_RESOLUTION:
                 case DNS_RESOLVER_CLASS:
                 case CANCELED_TIMER_TASKS_PURGE_PERIOD:
                 case PROXY_TIMER_SERVICE_IMPEMENTATION_TYPE:
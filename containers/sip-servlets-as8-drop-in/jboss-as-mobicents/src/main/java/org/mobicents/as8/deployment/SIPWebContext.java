@@ -147,6 +147,10 @@ public class SIPWebContext extends SipContextImpl {
 
         if(Constants.DEFAULT.equalsIgnoreCase(sipServer.getService().getProxyTimerServiceImplementationType())){
             super.proxyTimerServiceType = SipContextImpl.TimerServiceType.DEFAULT;
+        }else if (Constants.WHEEL.equalsIgnoreCase(sipServer.getService().getProxyTimerServiceImplementationType())){
+            super.proxyTimerServiceType = SipContextImpl.TimerServiceType.WHEEL;
+        }else if (Constants.SHARED.equalsIgnoreCase(sipServer.getService().getProxyTimerServiceImplementationType())){
+            super.proxyTimerServiceType = SipContextImpl.TimerServiceType.SHARED;
         }else if (Constants.STANDARD.equalsIgnoreCase(sipServer.getService().getProxyTimerServiceImplementationType())){
             super.proxyTimerServiceType = SipContextImpl.TimerServiceType.STANDARD;
         }else{
@@ -155,6 +159,10 @@ public class SIPWebContext extends SipContextImpl {
 
         if(Constants.DEFAULT.equalsIgnoreCase(sipServer.getService().getSasTimerServiceImplementationType())){
             super.sasTimerServiceType = SipContextImpl.TimerServiceType.DEFAULT;
+        }else if (Constants.WHEEL.equalsIgnoreCase(sipServer.getService().getSasTimerServiceImplementationType())){
+            super.sasTimerServiceType = SipContextImpl.TimerServiceType.WHEEL;
+        }else if (Constants.SHARED.equalsIgnoreCase(sipServer.getService().getSasTimerServiceImplementationType())){
+            super.sasTimerServiceType = SipContextImpl.TimerServiceType.SHARED;
         }else if (Constants.STANDARD.equalsIgnoreCase(sipServer.getService().getSasTimerServiceImplementationType())){
             super.sasTimerServiceType = SipContextImpl.TimerServiceType.STANDARD;
         }else{
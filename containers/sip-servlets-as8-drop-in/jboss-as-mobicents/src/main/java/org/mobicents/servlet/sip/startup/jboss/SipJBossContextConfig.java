@@ -70,13 +70,13 @@ import org.mobicents.servlet.sip.undertow.SipLoginConfig;
 import org.mobicents.servlet.sip.undertow.SipSecurityCollection;
 import org.mobicents.servlet.sip.undertow.SipSecurityConstraint;
 import org.mobicents.servlet.sip.undertow.SipServletImpl;
-import org.mobicents.servlet.sip.undertow.rules.AndRule;
-import org.mobicents.servlet.sip.undertow.rules.ContainsRule;
-import org.mobicents.servlet.sip.undertow.rules.EqualsRule;
-import org.mobicents.servlet.sip.undertow.rules.ExistsRule;
-import org.mobicents.servlet.sip.undertow.rules.NotRule;
-import org.mobicents.servlet.sip.undertow.rules.OrRule;
-import org.mobicents.servlet.sip.undertow.rules.SubdomainRule;
+import org.mobicents.servlet.sip.rules.AndRule;
+import org.mobicents.servlet.sip.rules.ContainsRule;
+import org.mobicents.servlet.sip.rules.EqualsRule;
+import org.mobicents.servlet.sip.rules.ExistsRule;
+import org.mobicents.servlet.sip.rules.NotRule;
+import org.mobicents.servlet.sip.rules.OrRule;
+import org.mobicents.servlet.sip.rules.SubdomainRule;
 import org.mobicents.servlet.sip.core.descriptor.MatchingRule;
 import org.mobicents.servlet.sip.startup.loading.SipServletMapping;
 import org.wildfly.extension.undertow.deployment.UndertowDeploymentInfoService;
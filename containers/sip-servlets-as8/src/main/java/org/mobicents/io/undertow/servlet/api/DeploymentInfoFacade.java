@@ -40,6 +40,7 @@ import org.mobicents.servlet.sip.core.MobicentsSipServlet;
 import org.mobicents.servlet.sip.core.descriptor.MobicentsSipServletMapping;
 import org.mobicents.servlet.sip.core.security.MobicentsSipLoginConfig;
 import org.mobicents.servlet.sip.ruby.SipRubyController;
+import org.mobicents.servlet.sip.rules.SipServletMappingMatcher;
 
 /**
  * @author kakonyi.istvan@alerant.hu
@@ -72,6 +73,8 @@ public class DeploymentInfoFacade implements Cloneable {
     protected ConcurrencyControlMode concurrencyControlMode;
     protected transient List<String> sipApplicationListeners = new CopyOnWriteArrayList<String>();
     protected transient List<MobicentsSipServletMapping> sipServletMappings = new ArrayList<MobicentsSipServletMapping>();
+    // compiled lazily from the sip servlet mappings once they are all known, reset when they change
+    protected transient volatile SipServletMappingMatcher sipServletMappingMatcher;
     private transient SipRubyController rubyController;
     protected transient Map<String, MobicentsSipServlet> childrenMap;
     protected transient Map<String, MobicentsSipServlet> childrenMapByClassName;
@@ -190,6 +193,7 @@ public class DeploymentInfoFacade implements Cloneable {
 
     public void addSipServletMapping(MobicentsSipServletMapping sipServletMapping) {
         sipServletMappings.add(sipServletMapping);
+        sipServletMappingMatcher = null;
         isMainServlet = false;
         if (servletHandler == null) {
             servletHandler = sipServletMapping.getServletName();
@@ -204,15 +208,12 @@ public class DeploymentInfoFacade implements Cloneable {
         if (logger.isDebugEnabled()) {
             logger.debug("Checking sip Servlet Mapping for following request : " + sipServletRequest);
         }
-        for (MobicentsSipServletMapping sipServletMapping : sipServletMappings) {
-            if (sipServletMapping.getMatchingRule().matches(sipServletRequest)) {
-                return sipServletMapping;
-            } else {
-                logger.debug("Following mapping rule didn't match : servletName => " + sipServletMapping.getServletName()
-                        + " | expression = " + sipServletMapping.getMatchingRule().getExpression());
-            }
+        SipServletMappingMatcher matcher = sipServletMappingMatcher;
+        if (matcher == null) {
+            matcher = new SipServletMappingMatcher(sipServletMappings);
+            sipServletMappingMatcher = matcher;
         }
-        return null;
+        return matcher.match(sipServletRequest);
     }
 
     /**
@@ -220,6 +221,12 @@ public class DeploymentInfoFacade implements Cloneable {
      */
     public void removeSipServletMapping(MobicentsSipServletMapping sipServletMapping) {
         sipServletMappings.remove(sipServletMapping);
+        sipServletMappingMatcher = null;
+    }
+
+    public void clearSipServletMappings() {
+        sipServletMappings.clear();
+        sipServletMappingMatcher = null;
     }
 
     public String[] findSipApplicationListeners() {
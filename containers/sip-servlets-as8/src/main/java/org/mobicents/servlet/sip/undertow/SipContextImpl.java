@@ -67,6 +67,7 @@ import org.mobicents.servlet.sip.core.security.SipDigestAuthenticator;
 import org.mobicents.servlet.sip.core.session.MobicentsSipApplicationSession;
 import org.mobicents.servlet.sip.core.session.MobicentsSipSession;
 import org.mobicents.servlet.sip.core.session.MobicentsSipSessionsUtil;
+import org.mobicents.servlet.sip.core.session.SessionMailbox;
 import org.mobicents.servlet.sip.core.session.SipApplicationSessionCreationThreadLocal;
 import org.mobicents.servlet.sip.core.session.SipSessionsUtilImpl;
 import org.mobicents.servlet.sip.core.timers.DefaultProxyTimerService;
@@ -74,9 +75,13 @@ import org.mobicents.servlet.sip.core.timers.DefaultSipApplicationSessionTimerSe
 import org.mobicents.servlet.sip.core.timers.ProxyTimerService;
 import org.mobicents.servlet.sip.core.timers.ProxyTimerServiceImpl;
 import org.mobicents.servlet.sip.core.timers.SipApplicationSessionTimerService;
+import org.mobicents.servlet.sip.core.timers.SharedProxyTimerService;
+import org.mobicents.servlet.sip.core.timers.SharedSipApplicationSessionTimerService;
 import org.mobicents.servlet.sip.core.timers.SipServletTimerService;
 import org.mobicents.servlet.sip.core.timers.StandardSipApplicationSessionTimerService;
 import org.mobicents.servlet.sip.core.timers.TimerServiceImpl;
+import org.mobicents.servlet.sip.core.timers.WheelProxyTimerService;
+import org.mobicents.servlet.sip.core.timers.WheelSipApplicationSessionTimerService;
 import org.mobicents.servlet.sip.dns.MobicentsDNSResolver;
 import org.mobicents.servlet.sip.listener.SipConnectorListener;
 import org.mobicents.servlet.sip.message.SipFactoryFacade;
@@ -296,7 +301,7 @@ public class SipContextImpl implements SipContext {
         // in destroy methods to notify that context is getting destroyed and app removed
         sipListeners.deallocateServletsActingAsListeners();
         this.deploymentInfoFacade.getSipApplicationListeners().clear();
-        this.deploymentInfoFacade.getSipServletMappings().clear();
+        this.deploymentInfoFacade.clearSipServletMappings();
 
         this.getChildrenMap().clear();
         this.deploymentInfoFacade.getChildrenMapByClassName().clear();
@@ -388,6 +393,10 @@ public class SipContextImpl implements SipContext {
                 proxyTimerService = new ProxyTimerServiceImpl(getApplicationName());
             } else if(proxyTimerServiceType != null && proxyTimerServiceType == TimerServiceType.DEFAULT) {
                 proxyTimerService = new DefaultProxyTimerService(getApplicationName());
+            } else if(proxyTimerServiceType != null && proxyTimerServiceType == TimerServiceType.WHEEL) {
+                proxyTimerService = new WheelProxyTimerService(getApplicationName());
+            } else if(proxyTimerServiceType != null && proxyTimerServiceType == TimerServiceType.SHARED) {
+                proxyTimerService = new SharedProxyTimerService(getApplicationName(), sipApplicationDispatcher);
             } else {
                 proxyTimerService = new ProxyTimerServiceImpl(getApplicationName());
             }
@@ -403,6 +412,10 @@ public class SipContextImpl implements SipContext {
                 sasTimerService = new StandardSipApplicationSessionTimerService(getApplicationName());
             }else if (sasTimerServiceType != null && sasTimerServiceType == TimerServiceType.DEFAULT){
                 sasTimerService = new DefaultSipApplicationSessionTimerService(getApplicationName());
+            }else if (sasTimerServiceType != null && sasTimerServiceType == TimerServiceType.WHEEL){
+                sasTimerService = new WheelSipApplicationSessionTimerService(getApplicationName());
+            }else if (sasTimerServiceType != null && sasTimerServiceType == TimerServiceType.SHARED){
+                sasTimerService = new SharedSipApplicationSessionTimerService(getApplicationName(), sipApplicationDispatcher);
             }else{
                 sasTimerService = new StandardSipApplicationSessionTimerService(getApplicationName());
             }
@@ -866,6 +879,12 @@ public class SipContextImpl implements SipContext {
                     sipSession.acquire();
                 }
                 break;
+            case SipApplicationSessionMailbox:
+                // mailbox tasks run with the session already locked by their drain pass, anything else
+                // (timers, transaction and dialog cleanup, CANCEL, ...) locks it like the SipApplicationSession mode
+                if (SessionMailbox.isDrainedByCurrentThread(sipApplicationSession != null ? sipApplicationSession.getMailbox() : null)) {
+                    break;
+                }
             case SipApplicationSession:
                 if (logger.isDebugEnabled()) {
                     logger.debug("checkIsManagedThread " + checkIsManagedThread + " , isManagedThread " + isManagedThread.get()
@@ -914,6 +933,39 @@ public class SipContextImpl implements SipContext {
         }
     }
 
+    @Override
+    public boolean tryEnterSipApp(MobicentsSipApplicationSession sipApplicationSession, MobicentsSipSession sipSession,
+            boolean checkIsManagedThread, boolean isContainerManaged) {
+        switch (this.getConcurrencyControlMode()) {
+            case SipSession:
+                return sipSession == null || sipSession.tryAcquire();
+            case SipApplicationSessionMailbox:
+                if (SessionMailbox.isDrainedByCurrentThread(sipApplicationSession != null ? sipApplicationSession.getMailbox() : null)) {
+                    return true;
+                }
+            case SipApplicationSession:
+                if (sipApplicationSession != null && isContainerManaged
+                        && (!checkIsManagedThread || Boolean.TRUE.equals(isManagedThread.get()))) {
+                    final SipApplicationSessionCreationThreadLocal sipApplicationSessionCreationThreadLocal = sipApplicationSessionsAccessedThreadLocal
+                            .get();
+                    if (sipApplicationSessionCreationThreadLocal == null
+                            || !sipApplicationSessionCreationThreadLocal.getSipApplicationSessions().contains(sipApplicationSession)) {
+                        if (!sipApplicationSession.tryAcquire()) {
+                            return false;
+                        }
+                        // already locked, only record it among the sessions accessed by this thread so that exitSipApp releases it
+                        enterSipApp(sipApplicationSession, sipSession, checkIsManagedThread, false);
+                        return true;
+                    }
+                }
+                enterSipApp(sipApplicationSession, sipSession, checkIsManagedThread, isContainerManaged);
+                return true;
+            default:
+                enterSipApp(sipApplicationSession, sipSession, checkIsManagedThread, isContainerManaged);
+                return true;
+        }
+    }
+
     @Override
     public void exitSipApp(MobicentsSipApplicationSession sipApplicationSession, MobicentsSipSession sipSession) {
         switch (this.getConcurrencyControlMode()) {
@@ -927,6 +979,12 @@ public class SipContextImpl implements SipContext {
                     }
                 }
                 break;
+            case SipApplicationSessionMailbox:
+                // mailbox tasks run with the session already locked by their drain pass, anything else
+                // (timers, transaction and dialog cleanup, CANCEL, ...) locks it like the SipApplicationSession mode
+                if (SessionMailbox.isDrainedByCurrentThread(sipApplicationSession != null ? sipApplicationSession.getMailbox() : null)) {
+                    break;
+                }
             case SipApplicationSession:
                 boolean wasSessionReleased = false;
                 SipApplicationSessionCreationThreadLocal sipApplicationSessionCreationThreadLocal = sipApplicationSessionsAccessedThreadLocal
@@ -1151,7 +1209,9 @@ public class SipContextImpl implements SipContext {
 
     public enum TimerServiceType{
         STANDARD,
-        DEFAULT;
+        DEFAULT,
+        WHEEL,
+        SHARED;
     }
 
     @Override
@@ -62,6 +62,7 @@ import org.mobicents.ha.javax.sip.ReplicationStrategy;
 import org.mobicents.javax.servlet.CongestionControlPolicy;
 import org.mobicents.servlet.sip.SipConnector;
 import org.mobicents.servlet.sip.annotation.ConcurrencyControlMode;
+import org.mobicents.servlet.sip.core.DispatcherExecutionMode;
 import org.mobicents.servlet.sip.core.ExtendedListeningPoint;
 import org.mobicents.servlet.sip.core.MobicentsExtendedListeningPoint;
 import org.mobicents.servlet.sip.core.SipApplicationDispatcher;
@@ -101,6 +102,9 @@ public class SipStandardService implements SipService {
     private boolean gatherStatistics = true;
     protected int sipMessageQueueSize = 1500;
     private int backToNormalSipMessageQueueSize = 1300;
+    // queueing delay based congestion control, disabled if the target is 0
+    private long sipMessageQueueDelayTarget = 0;
+    private long sipMessageQueueDelayInterval = 100;
     protected int memoryThreshold = 95;
     private int backToNormalMemoryThreshold = 90;
     protected OutboundProxy outboundProxy;
@@ -114,6 +118,8 @@ public class SipStandardService implements SipService {
     private int t4Interval = 5000;
     private int timerDInterval = 32000;
     protected int dispatcherThreadPoolSize = 15;
+    // Pooled, Elastic or Sharded, see DispatcherExecutionMode
+    protected String dispatcherExecutionMode = DispatcherExecutionMode.Pooled.toString();
     private boolean md5ContactUserPart = false;
 
     protected String concurrencyControlMode = ConcurrencyControlMode.SipApplicationSession.toString();
@@ -150,6 +156,7 @@ public class SipStandardService implements SipService {
     private String addressResolverClass = null;
     private String dnsServerLocatorClass = DefaultDNSServerLocator.class.getName();
     private int dnsTimeout = 1;
+    private boolean asynchronousDnsResolution = false;
     private String dnsResolverClass = MobicentsDNSResolver.class.getName();
     private String mobicentsSipServletMessageFactoryClassName = Servlet3SipServletMessageFactory.class.getName();
 
@@ -289,10 +296,13 @@ public class SipStandardService implements SipService {
         sipApplicationDispatcher.setCongestionControlPolicyByName(getCongestionControlPolicy());
         sipApplicationDispatcher.setQueueSize(getSipMessageQueueSize());
         sipApplicationDispatcher.setBackToNormalQueueSize(backToNormalSipMessageQueueSize);
+        sipApplicationDispatcher.setQueueDelayTarget(sipMessageQueueDelayTarget);
+        sipApplicationDispatcher.setQueueDelayInterval(sipMessageQueueDelayInterval);
         sipApplicationDispatcher.setGatherStatistics(gatherStatistics);
         sipApplicationDispatcher.setConcurrencyControlMode(ConcurrencyControlMode.valueOf(getConcurrencyControlMode()));
         sipApplicationDispatcher.setBypassRequestExecutor(bypassRequestExecutor);
         sipApplicationDispatcher.setBypassResponseExecutor(bypassResponseExecutor);
+        sipApplicationDispatcher.setDispatcherExecutionMode(DispatcherExecutionMode.valueOf(dispatcherExecutionMode));
         sipApplicationDispatcher.setSipStack(sipStack);
         sipApplicationDispatcher.init();
 
@@ -778,6 +788,23 @@ public class SipStandardService implements SipService {
         this.dispatcherThreadPoolSize = dispatcherThreadPoolSize;
     }
 
+    /**
+     * @param dispatcherExecutionMode Pooled for a fixed pool of dispatcherThreadPoolSize threads, Elastic for a thread
+     * per task up to a high bound, for applications blocking in their servlets, Sharded for dispatcherThreadPoolSize
+     * single threaded shards the SIP messages are spread over by Call-ID, which requires the Transaction or
+     * SipApplicationSessionMailbox concurrency control mode. Only taken into account at startup.
+     */
+    public void setDispatcherExecutionMode(String dispatcherExecutionMode) {
+        this.dispatcherExecutionMode = DispatcherExecutionMode.valueOf(dispatcherExecutionMode).toString();
+    }
+
+    /**
+     * @return the dispatcherExecutionMode
+     */
+    public String getDispatcherExecutionMode() {
+        return dispatcherExecutionMode;
+    }
+
     @Override
     public String getJvmRoute() {
         return jvmRoute;
@@ -1070,6 +1097,42 @@ public class SipStandardService implements SipService {
         return backToNormalSipMessageQueueSize;
     }
 
+    /**
+     * @param sipMessageQueueDelayTarget the time in milliseconds SIP messages can wait for a worker thread before
+     * initial requests start being refused, 0 to disable the queueing delay based congestion control
+     */
+    public void setSipMessageQueueDelayTarget(long sipMessageQueueDelayTarget) {
+        this.sipMessageQueueDelayTarget = sipMessageQueueDelayTarget;
+        if(sipApplicationDispatcher != null) {
+            sipApplicationDispatcher.setQueueDelayTarget(sipMessageQueueDelayTarget);
+        }
+    }
+
+    /**
+     * @return the sipMessageQueueDelayTarget
+     */
+    public long getSipMessageQueueDelayTarget() {
+        return sipMessageQueueDelayTarget;
+    }
+
+    /**
+     * @param sipMessageQueueDelayInterval the interval in milliseconds over which the queueing delay has to stay
+     * above the target for the congestion level to be raised
+     */
+    public void setSipMessageQueueDelayInterval(long sipMessageQueueDelayInterval) {
+        this.sipMessageQueueDelayInterval = sipMessageQueueDelayInterval;
+        if(sipApplicationDispatcher != null) {
+            sipApplicationDispatcher.setQueueDelayInterval(sipMessageQueueDelayInterval);
+        }
+    }
+
+    /**
+     * @return the sipMessageQueueDelayInterval
+     */
+    public long getSipMessageQueueDelayInterval() {
+        return sipMessageQueueDelayInterval;
+    }
+
     public void setBackToNormalSipMessageQueueSize(int backToNormalSipMessageQueueSize) {
         this.backToNormalSipMessageQueueSize = backToNormalSipMessageQueueSize;
     }
@@ -1106,6 +1169,21 @@ public class SipStandardService implements SipService {
         this.dnsTimeout = dnsTimeout;
     }
 
+    /**
+     * @return true if the DNS lookups of outgoing requests are done on dedicated resolver threads
+     */
+    public boolean isAsynchronousDnsResolution() {
+        return asynchronousDnsResolution;
+    }
+
+    /**
+     * @param asynchronousDnsResolution true to do the DNS lookups of outgoing requests on dedicated resolver threads,
+     * the request being sent once its hops are located
+     */
+    public void setAsynchronousDnsResolution(boolean asynchronousDnsResolution) {
+        this.asynchronousDnsResolution = asynchronousDnsResolution;
+    }
+
     public String getProxyTimerServiceImplementationType() {
         return proxyTimerServiceImplementationType;
     }
@@ -34,6 +34,7 @@ import org.mobicents.servlet.sip.core.session.MobicentsSipSession;
 import org.mobicents.servlet.sip.core.session.MobicentsSipSessionKey;
 import org.mobicents.servlet.sip.core.session.SipApplicationSessionKey;
 import org.mobicents.servlet.sip.core.session.SipManagerDelegate;
+import org.mobicents.servlet.sip.core.session.SipManagerDelegateHolder;
 import org.mobicents.servlet.sip.core.session.SipSessionKey;
 import org.mobicents.servlet.sip.core.session.SipStandardManagerDelegate;
 import org.mobicents.servlet.sip.message.SipFactoryImpl;
@@ -47,7 +48,7 @@ import org.mobicents.servlet.sip.startup.ConvergedServletContextImpl;
  * @author kakonyi.istvan@alerant.hu
  *
  */
-public class UndertowSipManager extends ConvergedInMemorySessionManager implements SipManager {
+public class UndertowSipManager extends ConvergedInMemorySessionManager implements SipManager, SipManagerDelegateHolder {
 
     private SipManagerDelegate sipManagerDelegate;
     private SipContext container;
@@ -112,11 +113,22 @@ public class UndertowSipManager extends ConvergedInMemorySessionManager implemen
                 mobicentsSipApplicationSession);
     }
 
+    @Override
+    public MobicentsSipSession findSipSession(String applicationSessionId, String applicationName, String callId,
+            String fromTag, String toTag) {
+        return sipManagerDelegate.findSipSession(applicationSessionId, applicationName, callId, fromTag, toTag);
+    }
+
     @Override
     public MobicentsSipApplicationSession findSipApplicationSession(HttpSession httpSession) {
         return sipManagerDelegate.findSipApplicationSession(httpSession);
     }
 
+    @Override
+    public SipManagerDelegate getSipManagerDelegate() {
+        return sipManagerDelegate;
+    }
+
     @Override
     public void removeAllSessions() {
         sipManagerDelegate.removeAllSessions();
@@ -1,53 +0,0 @@
-/*
- * TeleStax, Open Source Cloud Communications
- * Copyright 2011-2015, Telestax Inc and individual contributors
- * by the @authors tag.
- *
- * This program is free software: you can redistribute it and/or modify
- * under the terms of the GNU Affero General Public License as
- * published by the Free Software Foundation; either version 3 of
- * the License, or (at your option) any later version.
- *
- * This program is distributed in the hope that it will be useful,
- * but WITHOUT ANY WARRANTY; without even the implied warranty of
- * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
- * GNU Affero General Public License for more details.
- *
- * You should have received a copy of the GNU Affero General Public License
- * along with this program.  If not, see <http://www.gnu.org/licenses/>
- */
-
-package org.mobicents.servlet.sip.undertow.rules.request;
-
-import javax.servlet.sip.SipURI;
-import javax.servlet.sip.TelURL;
-import javax.servlet.sip.URI;
-
-/**
- * @author Thomas Leseney
- *
- *         This class is based on the contents of org.mobicents.servlet.sip.catalina.rules.request package from sip-servlet-as7
- *         project, re-implemented for jboss as8 (wildfly) by:
- * @author kakonyi.istvan@alerant.hu
- */
-public class Param implements Extractor {
-
-    private String param;
-
-    public Param(String token, String param) {
-        if (!token.equals("uri")) {
-            throw new IllegalArgumentException("Invalid expression: param after " + token);
-        }
-        this.param = param;
-    }
-
-    public Object extract(Object input) {
-        URI uri = (URI) input;
-        if (uri.isSipURI()) {
-            return ((SipURI) uri).getParameter(param);
-        } else if ("tel".equals(uri.getScheme())) {
-            return ((TelURL) uri).getParameter(param);
-        }
-        return null;
-    }
-}
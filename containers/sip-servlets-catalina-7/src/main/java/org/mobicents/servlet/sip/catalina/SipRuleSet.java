@@ -34,7 +34,7 @@ import org.apache.tomcat.util.digester.Digester;
 import org.apache.tomcat.util.digester.NodeCreateRule;
 import org.apache.tomcat.util.digester.Rule;
 import org.apache.tomcat.util.digester.RuleSetBase;
-import org.mobicents.servlet.sip.catalina.rules.MatchingRuleParser;
+import org.mobicents.servlet.sip.rules.MatchingRuleParser;
 import org.mobicents.servlet.sip.core.descriptor.MatchingRule;
 import org.mobicents.servlet.sip.core.descriptor.MobicentsSipServletMapping;
 import org.mobicents.servlet.sip.core.security.MobicentsSipLoginConfig;
@@ -45,6 +45,7 @@ import org.mobicents.servlet.sip.core.session.MobicentsSipSession;
 import org.mobicents.servlet.sip.core.session.MobicentsSipSessionKey;
 import org.mobicents.servlet.sip.core.session.SipApplicationSessionKey;
 import org.mobicents.servlet.sip.core.session.SipManagerDelegate;
+import org.mobicents.servlet.sip.core.session.SipManagerDelegateHolder;
 import org.mobicents.servlet.sip.core.session.SipSessionKey;
 import org.mobicents.servlet.sip.core.session.SipStandardManagerDelegate;
 import org.mobicents.servlet.sip.message.SipFactoryImpl;
@@ -57,7 +58,7 @@ import org.mobicents.servlet.sip.message.SipFactoryImpl;
  * @author <A HREF="mailto:jean.deruelle@gmail.com">Jean Deruelle</A> 
  *
  */
-public class SipStandardManager extends StandardManager implements CatalinaSipManager {
+public class SipStandardManager extends StandardManager implements CatalinaSipManager, SipManagerDelegateHolder {
 
 	private static final Logger logger = Logger.getLogger(SipStandardManager.class);
 	private SipManagerDelegate sipManagerDelegate;
@@ -217,6 +218,13 @@ public class SipStandardManager extends StandardManager implements CatalinaSipMa
 		return sipManagerDelegate.getSipSession((SipSessionKey)key, create, (SipFactoryImpl)sipFactoryImpl, sipApplicationSessionImpl);
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 */
+	public MobicentsSipSession findSipSession(final String applicationSessionId, final String applicationName, final String callId, final String fromTag, final String toTag) {
+		return sipManagerDelegate.findSipSession(applicationSessionId, applicationName, callId, fromTag, toTag);
+	}
+	
 	/**
 	 * {@inheritDoc}
 	 */
@@ -238,6 +246,13 @@ public class SipStandardManager extends StandardManager implements CatalinaSipMa
 		return sipManagerDelegate.findSipApplicationSession(httpSession);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	public SipManagerDelegate getSipManagerDelegate() {
+		return sipManagerDelegate;
+	}
+
 	/**
 	 * 
 	 */
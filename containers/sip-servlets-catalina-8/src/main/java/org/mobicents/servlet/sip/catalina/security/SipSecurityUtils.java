@@ -46,14 +46,19 @@ import org.mobicents.servlet.sip.core.message.MobicentsSipServletRequest;
 import org.mobicents.servlet.sip.core.message.MobicentsSipServletResponse;
 import org.mobicents.servlet.sip.core.security.MobicentsSipLoginConfig;
 import org.mobicents.servlet.sip.core.security.SipPrincipal;
+import org.mobicents.servlet.sip.security.DigestAlgorithm;
+import org.mobicents.servlet.sip.security.DigestAuthenticationSettings;
 
 public class SipSecurityUtils {
 	
 	private static final Logger log = Logger.getLogger(SipSecurityUtils.class);
 	private SipContext sipStandardContext;
+	// nonce manager and H(A1) cache shared by the authentications of this application
+	private DigestAuthenticationSettings digestAuthenticationSettings;
 	
 	public SipSecurityUtils(SipContext sipContext) {
 		this.sipStandardContext = sipContext;
+		this.digestAuthenticationSettings = DigestAuthenticationSettings.fromSystemProperties();
 	}
 	
 	public boolean authenticate(MobicentsSipServletRequest request, SipSecurityConstraint sipConstraint)
@@ -103,6 +108,7 @@ public class SipSecurityUtils {
 					if(!authenticated && authMethod.equalsIgnoreCase("DIGEST")) {
 						DigestAuthenticator digestAuthenticator = new DigestAuthenticator(sipStandardContext.getSipApplicationDispatcher().getSipFactory().getHeaderFactory());
 						digestAuthenticator.setContext((CatalinaSipContext)sipStandardContext);
+						digestAuthenticator.setSettings(digestAuthenticationSettings);
 						MobicentsSipServletResponse response = createErrorResponse(request, sipConstraint);
 						authenticated = digestAuthenticator.authenticate(request, response, loginConfig);		
 						request.setUserPrincipal(digestAuthenticator.getPrincipal());
@@ -219,4 +225,48 @@ public class SipSecurityUtils {
 		return null;
 		
 	}
+	
+	/*
+	 *  This method attempts to obtain H(username ":" realm ":" password) of a user from a realm so that
+	 *  it can be cached. Like impersonatePrincipal, it peeks into Realms that extend RealmBase : a password
+	 *  stored in clear is hashed with the requested algorithm, a digested one is MD5(username ":" realm ":" password).
+	 */
+	public static String getHa1(Realm realm, String username, String realmName, DigestAlgorithm algorithm) {
+		if(!(realm instanceof RealmBase)) {
+			return null;
+		}
+		try {
+			String password = (String) invokeRealmMethod(realm, "getPassword", new Class[] {String.class}, new Object[] {username});
+			if(password == null) {
+				return null;
+			}
+			Boolean hasMessageDigest = (Boolean) invokeRealmMethod(realm, "hasMessageDigest", new Class[0], new Object[0]);
+			if(hasMessageDigest.booleanValue()) {
+				if(algorithm == DigestAlgorithm.MD5 || algorithm == DigestAlgorithm.MD5_SESS) {
+					return password;
+				}
+				return null;
+			}
+			return algorithm.digestA1(username, realmName, password);
+		} catch (Throwable t) {
+			if(log.isDebugEnabled()) {
+				log.debug("Could not get the credentials of user " + username + " from realm " + realm.getClass().getCanonicalName(), t);
+			}
+		}
+		return null;
+	}
+	
+	private static Object invokeRealmMethod(Realm realm, String name, Class<?>[] parameterTypes, Object[] args) throws Exception {
+		Class<?> clazz = realm.getClass();
+		while(clazz != null) {
+			try {
+				Method method = clazz.getDeclaredMethod(name, parameterTypes);
+				method.setAccessible(true);
+				return method.invoke(realm, args);
+			} catch (NoSuchMethodException e) {
+				clazz = clazz.getSuperclass();
+			}
+		}
+		throw new NoSuchMethodException(name);
+	}
 }
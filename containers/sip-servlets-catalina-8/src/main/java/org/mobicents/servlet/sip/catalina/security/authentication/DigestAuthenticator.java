@@ -23,8 +23,6 @@
 package org.mobicents.servlet.sip.catalina.security.authentication;
 
 import java.io.IOException;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.text.ParseException;
 import java.util.StringTokenizer;
 
@@ -43,18 +41,27 @@ import org.apache.catalina.authenticator.Constants;
 import org.apache.catalina.connector.Request;
 import org.apache.log4j.Logger;
 import org.apache.tomcat.util.descriptor.web.LoginConfig;
-import org.apache.tomcat.util.security.MD5Encoder;
 import org.mobicents.servlet.sip.catalina.SipLoginConfig;
 import org.mobicents.servlet.sip.catalina.security.CatalinaSipPrincipal;
+import org.mobicents.servlet.sip.catalina.security.SipSecurityUtils;
 import org.mobicents.servlet.sip.core.message.MobicentsSipServletRequest;
 import org.mobicents.servlet.sip.core.message.MobicentsSipServletResponse;
 import org.mobicents.servlet.sip.core.security.MobicentsSipLoginConfig;
 import org.mobicents.servlet.sip.core.security.SipDigestAuthenticator;
 import org.mobicents.servlet.sip.core.security.SipPrincipal;
+import org.mobicents.servlet.sip.security.DigestAlgorithm;
+import org.mobicents.servlet.sip.security.DigestAuthenticationSettings;
+import org.mobicents.servlet.sip.security.Ha1Cache;
+import org.mobicents.servlet.sip.security.StatelessNonceManager;
 
 /**
  * An <b>Authenticator</b> and <b>Valve</b> implementation of HTTP DIGEST
  * Authentication (see RFC 2069). Modified for SIP authentication.
+ * <p>
+ * The nonces are signed rather than remembered (see {@link StatelessNonceManager}) and
+ * the digests are computed on per thread instances (see {@link DigestAlgorithm}) so that
+ * concurrent authentications don't contend with each other. MD5 and SHA-256 (RFC 8760)
+ * are supported, with qop=auth or qop=auth-int.
  *
  * @author Craig R. McClanahan
  * @author Remy Maucherat
@@ -91,28 +98,21 @@ public class DigestAuthenticator
 
 
     /**
-     * MD5 message digest provider.
+     * Algorithms, nonce manager and H(A1) cache shared by the authenticators
+     * of the application.
      */
-    protected volatile static MessageDigest md5Helper;
+    protected DigestAuthenticationSettings settings;
 
-    static {
-    	try {            
-             md5Helper = MessageDigest.getInstance("MD5");
-        } catch (NoSuchAlgorithmException e) {            
-            throw new IllegalStateException(e);
-        }
-    }
-
-    /**
-     * Private key.
-     */
-    protected String key = "Catalina";
-    
     /*
      * Principal
      */
     private SipPrincipal principal;
 
+    /*
+     * Whether the credentials were rejected only because their nonce is too old
+     */
+    private boolean stale;
+
 
     // ------------------------------------------------------------- Properties
 
@@ -126,6 +126,17 @@ public class DigestAuthenticator
 
     }
 
+    public DigestAuthenticationSettings getSettings() {
+        if (settings == null) {
+            settings = DigestAuthenticationSettings.fromSystemProperties();
+        }
+        return settings;
+    }
+
+    public void setSettings(DigestAuthenticationSettings settings) {
+        this.settings = settings;
+    }
+
     // --------------------------------------------------------- Public Methods
 
 
@@ -148,6 +159,7 @@ public class DigestAuthenticator
         throws IOException {
     	
     	principal = null;
+    	stale = false;
     	
         // Have we already authenticated someone?
         principal = request.getUserPrincipal();
@@ -201,7 +213,7 @@ public class DigestAuthenticator
      * @param authorization Authorization credentials from this request
      * @param realm Realm used to authenticate Principals
      */
-    protected static SipPrincipal findPrincipal(MobicentsSipServletRequest request,
+    protected SipPrincipal findPrincipal(MobicentsSipServletRequest request,
                                              String authorization,
                                              Realm realm) {
 
@@ -226,6 +238,7 @@ public class DigestAuthenticator
         String qop = null;
         String uri = null;
         String response = null;
+        String algorithmName = null;
         String method = request.getMethod();
 
         for (int i = 0; i < tokens.length; i++) {
@@ -256,26 +269,102 @@ public class DigestAuthenticator
                 uri = removeQuotes(currentTokenValue);
             if ("response".equals(currentTokenName))
                 response = removeQuotes(currentTokenValue);
+            if ("algorithm".equals(currentTokenName))
+                algorithmName = removeQuotes(currentTokenValue);
         }
 
         if ( (userName == null) || (realmName == null) || (nOnce == null)
              || (uri == null) || (response == null) )
             return null;
 
-        // Second MD5 digest used to calculate the digest :
-        // MD5(Method + ":" + uri)
-        String a2 = method + ":" + uri;
-        //System.out.println("A2:" + a2);
+        DigestAuthenticationSettings settings = getSettings();
+        DigestAlgorithm algorithm = DigestAlgorithm.fromName(algorithmName);
+        if (algorithm == null || !settings.isAlgorithmAllowed(algorithm)) {
+            if (log.isDebugEnabled())
+                log.debug("Digest algorithm " + algorithmName + " not allowed for user '" + userName + "'");
+            return null;
+        }
+        if (!algorithm.hasRequiredParameters(nc, cnonce, qop)) {
+            if (log.isDebugEnabled())
+                log.debug("Malformed " + algorithm.getName() + " credentials of user '" + userName + "', the cnonce or the nonce count is missing");
+            return null;
+        }
 
-        byte[] buffer = null;
-        synchronized (md5Helper) {
-            buffer = md5Helper.digest(a2.getBytes());
+        StatelessNonceManager.Validity nonceValidity =
+            settings.getNonceManager().validateNonce(nOnce, request.getRemoteAddr());
+        if (nonceValidity != StatelessNonceManager.Validity.VALID) {
+            if (log.isDebugEnabled())
+                log.debug("Nonce " + nOnce + " of user '" + userName + "' is " + nonceValidity);
+            stale = nonceValidity == StatelessNonceManager.Validity.STALE;
+            return null;
+        }
+
+        // Second digest used to calculate the digest :
+        // H(Method ":" uri) or H(Method ":" uri ":" H(entity-body)) for qop=auth-int
+        byte[] body = null;
+        if ("auth-int".equalsIgnoreCase(qop)) {
+            try {
+                body = request.getRawContent();
+            } catch (IOException e) {
+                log.error("Could not read the body of the request to authenticate", e);
+                return null;
+            }
+        }
+        String ha2 = algorithm.digestA2(method, uri, qop, body);
+
+        Ha1Cache ha1Cache = settings.getHa1Cache();
+        if (ha1Cache != null) {
+            Ha1Cache.Entry entry = ha1Cache.get(realmName, userName, algorithm);
+            boolean cached = entry != null;
+            if (!cached) {
+                entry = loadHa1(ha1Cache, realm, userName, realmName, algorithm);
+            }
+            if (entry != null) {
+                if (DigestAlgorithm.isEqual(algorithm.digestResponse(entry.getHa1(),
+                        nOnce, nc, cnonce, qop, ha2), response)) {
+                    return entry.getPrincipal();
+                }
+                if (!cached) {
+                    return null;
+                }
+                // the password may have changed in the realm since it was cached
+                ha1Cache.remove(realmName, userName, algorithm);
+                entry = loadHa1(ha1Cache, realm, userName, realmName, algorithm);
+                if (entry != null && DigestAlgorithm.isEqual(algorithm.digestResponse(entry.getHa1(),
+                        nOnce, nc, cnonce, qop, ha2), response)) {
+                    return entry.getPrincipal();
+                }
+                return null;
+            }
         }
-        String md5a2 = MD5Encoder.encode(buffer);
 
+        // The realm only knows how to check MD5 digests
+        if (algorithm != DigestAlgorithm.MD5) {
+            if (log.isDebugEnabled())
+                log.debug("The realm can't check " + algorithm.getName() + " digests, user '" + userName + "' can't be authenticated");
+            return null;
+        }
         return (new CatalinaSipPrincipal(realm.authenticate(userName, response, nOnce, nc, cnonce, qop,
-                                   realmName, md5a2)));
+                                   realmName, ha2)));
+
+    }
+
 
+    /**
+     * Look up H(A1) and the principal of a user in the realm and cache them.
+     *
+     * @return the cached entry, <code>null</code> if the realm doesn't give access
+     * to the credentials of the user
+     */
+    protected Ha1Cache.Entry loadHa1(Ha1Cache ha1Cache, Realm realm, String userName,
+                                     String realmName, DigestAlgorithm algorithm) {
+        String ha1 = SipSecurityUtils.getHa1(realm, userName, realmName, algorithm);
+        if (ha1 == null)
+            return null;
+        SipPrincipal userPrincipal = SipSecurityUtils.impersonatePrincipal(userName, realm);
+        if (userPrincipal == null || userPrincipal.getPrincipal() == null)
+            return null;
+        return ha1Cache.put(realmName, userName, algorithm, ha1, userPrincipal);
     }
 
 
@@ -342,25 +431,14 @@ public class DigestAuthenticator
 
     /**
      * Generate a unique token. The token is generated according to the
-     * following pattern. NOnceToken = Base64 ( MD5 ( client-IP ":"
-     * time-stamp ":" private-key ) ).
+     * following pattern. NOnceToken = Hex ( time-stamp HMAC-SHA256 (
+     * time-stamp client-IP ) ), see {@link StatelessNonceManager}.
      *
      * @param request HTTP Servlet request
      */
     protected String generateNOnce(MobicentsSipServletRequest request) {
 
-        long currentTime = System.currentTimeMillis();
-
-        String nOnceValue = request.getRemoteAddr() + ":" +
-            currentTime + ":" + key;
-
-        byte[] buffer = null;
-        synchronized (md5Helper) {
-            buffer = md5Helper.digest(nOnceValue.getBytes());
-        }
-        nOnceValue = MD5Encoder.encode(buffer);
-
-        return nOnceValue;
+        return getSettings().getNonceManager().generateNonce(request.getRemoteAddr());
     }
 
 
@@ -384,6 +462,8 @@ public class DigestAuthenticator
      *      stale               = "stale" "=" ( "true" | "false" )
      *      algorithm           = "algorithm" "=" ( "MD5" | token )
      * </pre>
+     * One challenge is added per algorithm offered, in order of preference,
+     * as required by RFC 8760.
      *
      * @param request HTTP Servlet request
      * @param response HTTP Servlet response
@@ -402,21 +482,29 @@ public class DigestAuthenticator
             realmName = request.getServerName() + ":"
                 + request.getServerPort();
 
-        byte[] buffer = null;
-        synchronized (md5Helper) {
-            buffer = md5Helper.digest(nOnce.getBytes());
-        }
+        DigestAuthenticationSettings settings = getSettings();
+        String opaque = DigestAlgorithm.MD5.digestHex(nOnce);
 
-        String authenticateHeader = "Digest realm=\"" + realmName + "\", "
-            +  "qop=\"auth\", nonce=\"" + nOnce + "\", " + "opaque=\""
-            + MD5Encoder.encode(buffer) + "\"";
-        
         // There are different headers for different types of auth
+        String headerName = "WWW-Authenticate";
         if(response.getStatus() == 
         	MobicentsSipServletResponse.SC_PROXY_AUTHENTICATION_REQUIRED) {
-        	response.setHeader("Proxy-Authenticate", authenticateHeader);
-        } else {
-        	response.setHeader("WWW-Authenticate", authenticateHeader);
+        	headerName = "Proxy-Authenticate";
+        }
+        boolean first = true;
+        for (DigestAlgorithm algorithm : settings.getAlgorithms()) {
+            String authenticateHeader = "Digest realm=\"" + realmName + "\", "
+                +  "qop=\"" + settings.getQop() + "\", nonce=\"" + nOnce + "\", " + "opaque=\""
+                + opaque + "\", algorithm=" + algorithm.getName();
+            if (stale) {
+                authenticateHeader += ", stale=true";
+            }
+            if (first) {
+                response.setHeader(headerName, authenticateHeader);
+                first = false;
+            } else {
+                response.addHeader(headerName, authenticateHeader);
+            }
         }
     }
     
@@ -494,12 +582,8 @@ public class DigestAuthenticator
         String nc_value = String.format("%08x", nc);
         //String cnonce = "xyz";
         long currentTime = System.currentTimeMillis();
-        String nOnceValue = currentTime + ":" + "mobicents" + response;
-        byte[] buffer = null;
-        synchronized (md5Helper) {
-            buffer = md5Helper.digest(nOnceValue.getBytes());
-        }
-        String cnonce = MD5Encoder.encode(buffer);
+        String nOnceValue = currentTime + ":" + System.nanoTime() + ":" + "mobicents";
+        String cnonce = DigestAlgorithm.MD5.digestHex(nOnceValue);
 
         try {
             response = MessageDigestResponseAlgorithm.calculateResponse(
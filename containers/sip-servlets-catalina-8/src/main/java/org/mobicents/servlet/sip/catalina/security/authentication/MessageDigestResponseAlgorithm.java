@@ -22,13 +22,14 @@
 
 package org.mobicents.servlet.sip.catalina.security.authentication;
 
-import java.security.*;
+import java.nio.charset.Charset;
 
 import org.apache.log4j.Logger;
+import org.mobicents.servlet.sip.security.DigestAlgorithm;
 
 /**
  * The class takes standard Http Authentication details and returns a response
- * according to the MD5 algorithm
+ * according to the MD5 or SHA-256 (RFC 8760) algorithm
  *
  * @author Emil Ivov
  */
@@ -42,7 +43,7 @@ public class MessageDigestResponseAlgorithm
      * Calculates an http authentication response in accordance with rfc2617.
      * <p>
      * @param algorithm a string indicating a pair of algorithms (MD5 (default),
-     * or MD5-sess) used to produce the digest and a checksum.
+     * MD5-sess, SHA-256 or SHA-256-sess) used to produce the digest and a checksum.
      * @param username_value username_value (see rfc2617)
      * @param realm_value A string that has been displayed to the user in order 
      * to determine the context of the username and password to use.
@@ -87,130 +88,33 @@ public class MessageDigestResponseAlgorithm
             throw new NullPointerException(
                 "Null parameter to MessageDigestAlgorithm.calculateResponse()");
 
+        DigestAlgorithm digestAlgorithm = DigestAlgorithm.fromName(algorithm);
+        if (digestAlgorithm == null)
+            throw new IllegalArgumentException(
+                "Unsupported digest algorithm " + algorithm);
+        if (digestAlgorithm.isSession()
+            && (cnonce_value == null || cnonce_value.length() == 0))
+            throw new NullPointerException(
+                "cnonce_value may not be absent for " + algorithm + " algorithm.");
+
         //The following follows closely the algorithm for generating a response
         //digest as specified by rfc2617
-        String A1 = null;
-
-        if (algorithm == null
-            || algorithm.trim().length() == 0
-            || algorithm.trim().equalsIgnoreCase("MD5")) {
-            A1 = username_value + ":" + realm_value + ":" + passwd;
-        }
-        else {
-            if (cnonce_value == null || cnonce_value.length() == 0)
-                throw new NullPointerException(
-                    "cnonce_value may not be absent for MD5-Sess algorithm.");
-
-            A1 = H(username_value + ":" + realm_value + ":" + passwd)
-                + ":" + nonce_value + ":" + cnonce_value;
-        }
-
-        String A2 = null;
-        if (qop_value == null
-            || qop_value.trim().length() == 0
-            || qop_value.trim().equalsIgnoreCase("auth"))
-        {
-            A2 = method + ":" + digest_uri_value;
-        }
-        else
-        {
-            if (entity_body == null)
-                entity_body = "";
-            A2 = method + ":" + digest_uri_value + ":" + H(entity_body);
-        }
-
-
-        String request_digest = null;
-
-        if( cnonce_value != null 
-            && qop_value != null 
-            && nc_value!=null
-            && (qop_value.equalsIgnoreCase("auth") 
-                || qop_value.equalsIgnoreCase("auth-int")))
-
-        {
-            request_digest  = KD ( H(A1), nonce_value
-                                          + ":" + nc_value
-                                          + ":" + cnonce_value
-                                          + ":" + qop_value
-                                          + ":" + H(A2)
-                              );
-            if(logger.isDebugEnabled()) {
-            	logger.debug("H(A1) " + H(A1));
-            	logger.debug("H(A2) " + H(A2));
-            	logger.debug("request digest with auth " + request_digest);
-            }
-        }
-        else
-        {
-            request_digest = KD(H(A1), nonce_value + ":" + H(A2));
-            if(logger.isDebugEnabled()) {
-            	logger.debug("request digest " + request_digest);
-            }
+        String HA1 = digestAlgorithm.digestA1(username_value, realm_value, passwd);
+
+        byte[] entity_body_bytes = null;
+        if (entity_body != null)
+            entity_body_bytes = entity_body.getBytes(Charset.forName("UTF-8"));
+        String HA2 = digestAlgorithm.digestA2(method, digest_uri_value,
+            qop_value, entity_body_bytes);
+
+        String request_digest = digestAlgorithm.digestResponse(HA1,
+            nonce_value, nc_value, cnonce_value, qop_value, HA2);
+        if(logger.isDebugEnabled()) {
+            logger.debug("H(A1) " + HA1);
+            logger.debug("H(A2) " + HA2);
+            logger.debug("request digest " + request_digest);
         }
 
         return request_digest;
     }
-
-    /**
-     * Defined in rfc 2617 as
-     * H(data) = MD5(data);
-     *
-     * @param data data
-     * @return MD5(data)
-     */
-    private static String H(String data)
-    {
-        try
-        {
-            MessageDigest digest = MessageDigest.getInstance("MD5");
-
-            return toHexString(digest.digest(data.getBytes()));
-        }
-        catch (NoSuchAlgorithmException ex)
-        {
-            //shouldn't happen
-            logger.error("Failed to instantiate an MD5 algorithm", ex);
-            return null;
-        }
-    }
-
-    /**
-    * Defined in rfc 2617 as
-    * KD(secret, data) = H(concat(secret, ":", data))
-    * @param data data
-    * @param secret secret
-    * @return H(concat(secret, ":", data));
-    */
-   private static String KD(String secret, String data)
-   {
-       return H(secret + ":" + data);
-   }
-
-
-    // the following code was copied from the NIST-SIP instant
-    // messenger (its author is Olivier Deruelle). Thanks for making it public!
-    /**
-     * to hex converter
-     */
-    private static final char[] toHex = {
-        '0', '1', '2', '3', '4', '5', '6',
-        '7', '8', '9', 'a', 'b', 'c', 'd',
-        'e', 'f'};
-
-    /**
-     * Converts b[] to hex string.
-     * @param b the bte array to convert
-     * @return a Hex representation of b.
-     */
-    private static String toHexString(byte b[])
-    {
-        int pos = 0;
-        char[] c = new char[b.length * 2];
-        for (int i = 0; i < b.length; i++) {
-            c[pos++] = toHex[ (b[i] >> 4) & 0x0F];
-            c[pos++] = toHex[b[i] & 0x0f];
-        }
-        return new String(c);
-    }
 }
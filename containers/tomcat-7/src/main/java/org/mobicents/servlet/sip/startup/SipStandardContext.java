@@ -95,6 +95,7 @@ import org.mobicents.servlet.sip.core.security.SipDigestAuthenticator;
 import org.mobicents.servlet.sip.core.session.DistributableSipManager;
 import org.mobicents.servlet.sip.core.session.MobicentsSipApplicationSession;
 import org.mobicents.servlet.sip.core.session.MobicentsSipSession;
+import org.mobicents.servlet.sip.core.session.SessionMailbox;
 import org.mobicents.servlet.sip.core.session.SipApplicationSessionCreationThreadLocal;
 import org.mobicents.servlet.sip.core.session.SipSessionsUtilImpl;
 import org.mobicents.servlet.sip.core.timers.DefaultProxyTimerService;
@@ -102,13 +103,18 @@ import org.mobicents.servlet.sip.core.timers.DefaultSipApplicationSessionTimerSe
 import org.mobicents.servlet.sip.core.timers.ProxyTimerService;
 import org.mobicents.servlet.sip.core.timers.ProxyTimerServiceImpl;
 import org.mobicents.servlet.sip.core.timers.SipApplicationSessionTimerService;
+import org.mobicents.servlet.sip.core.timers.SharedProxyTimerService;
+import org.mobicents.servlet.sip.core.timers.SharedSipApplicationSessionTimerService;
 import org.mobicents.servlet.sip.core.timers.SipServletTimerService;
 import org.mobicents.servlet.sip.core.timers.StandardSipApplicationSessionTimerService;
 import org.mobicents.servlet.sip.core.timers.TimerServiceImpl;
+import org.mobicents.servlet.sip.core.timers.WheelProxyTimerService;
+import org.mobicents.servlet.sip.core.timers.WheelSipApplicationSessionTimerService;
 import org.mobicents.servlet.sip.listener.SipConnectorListener;
 import org.mobicents.servlet.sip.message.SipFactoryFacade;
 import org.mobicents.servlet.sip.message.SipFactoryImpl;
 import org.mobicents.servlet.sip.ruby.SipRubyController;
+import org.mobicents.servlet.sip.rules.SipServletMappingMatcher;
 
 /**
  * Sip implementation of the <b>Context</b> interface extending the standard
@@ -169,6 +175,8 @@ public class SipStandardContext extends StandardContext implements CatalinaSipCo
      * application.
      */
     protected transient List<MobicentsSipServletMapping> sipServletMappings = new ArrayList<MobicentsSipServletMapping>();
+    // compiled lazily from the sip servlet mappings once they are all known, reset when they change
+    protected transient volatile SipServletMappingMatcher sipServletMappingMatcher;
     
     protected transient SipApplicationDispatcher sipApplicationDispatcher = null;
     
@@ -251,6 +259,10 @@ public class SipStandardContext extends StandardContext implements CatalinaSipCo
                 proxyTimerService = new ProxyTimerServiceImpl(applicationName);
             } else if(proxyTimerServiceType != null && proxyTimerServiceType.equalsIgnoreCase("Default")) {
                 proxyTimerService = new DefaultProxyTimerService(applicationName);
+            } else if(proxyTimerServiceType != null && proxyTimerServiceType.equalsIgnoreCase("Wheel")) {
+                proxyTimerService = new WheelProxyTimerService(applicationName);
+            } else if(proxyTimerServiceType != null && proxyTimerServiceType.equalsIgnoreCase("Shared")) {
+                proxyTimerService = new SharedProxyTimerService(applicationName, sipApplicationDispatcher);
             } else {
                 proxyTimerService = new ProxyTimerServiceImpl(applicationName);
             }		
@@ -262,6 +274,10 @@ public class SipStandardContext extends StandardContext implements CatalinaSipCo
                 sasTimerService = new StandardSipApplicationSessionTimerService(applicationName);
             } else if (sasTimerServiceType != null && sasTimerServiceType.equalsIgnoreCase("Default")) {
                 sasTimerService = new DefaultSipApplicationSessionTimerService(applicationName);
+            } else if (sasTimerServiceType != null && sasTimerServiceType.equalsIgnoreCase("Wheel")) {
+                sasTimerService = new WheelSipApplicationSessionTimerService(applicationName);
+            } else if (sasTimerServiceType != null && sasTimerServiceType.equalsIgnoreCase("Shared")) {
+                sasTimerService = new SharedSipApplicationSessionTimerService(applicationName, sipApplicationDispatcher);
             } else {
                 sasTimerService = new StandardSipApplicationSessionTimerService(applicationName);
             }
@@ -623,6 +639,7 @@ public class SipStandardContext extends StandardContext implements CatalinaSipCo
 		sipListeners.deallocateServletsActingAsListeners();
 		sipApplicationListeners.clear();
 		sipServletMappings.clear();
+		sipServletMappingMatcher = null;
 		childrenMap.clear();
 		childrenMapByClassName.clear();
 		if(sipApplicationDispatcher != null) {
@@ -1079,6 +1096,7 @@ public class SipStandardContext extends StandardContext implements CatalinaSipCo
 	 */
 	public void addSipServletMapping(MobicentsSipServletMapping sipServletMapping) {
 		sipServletMappings.add(sipServletMapping);
+		sipServletMappingMatcher = null;
 		isMainServlet = false;
 		if(servletHandler == null) {
 			servletHandler = sipServletMapping.getServletName();
@@ -1098,16 +1116,12 @@ public class SipStandardContext extends StandardContext implements CatalinaSipCo
 		if(logger.isDebugEnabled()) {
 			logger.debug("Checking sip Servlet Mapping for following request : " + sipServletRequest);
 		}
-		for (MobicentsSipServletMapping sipServletMapping : sipServletMappings) {
-			if(sipServletMapping.getMatchingRule().matches(sipServletRequest)) {
-				return sipServletMapping;
-			} else {
-				logger.debug("Following mapping rule didn't match : servletName => " + 
-						sipServletMapping.getServletName() + " | expression = "+ 
-						sipServletMapping.getMatchingRule().getExpression());
-			}
+		SipServletMappingMatcher matcher = sipServletMappingMatcher;
+		if(matcher == null) {
+			matcher = new SipServletMappingMatcher(sipServletMappings);
+			sipServletMappingMatcher = matcher;
 		}
-		return null;
+		return matcher.match(sipServletRequest);
 	}
 	
 	/**
@@ -1115,6 +1129,7 @@ public class SipStandardContext extends StandardContext implements CatalinaSipCo
 	 */
 	public void removeSipServletMapping(MobicentsSipServletMapping sipServletMapping) {
 		sipServletMappings.remove(sipServletMapping);
+		sipServletMappingMatcher = null;
 	}
 
 	/**
@@ -1277,6 +1292,12 @@ public class SipStandardContext extends StandardContext implements CatalinaSipCo
 					sipSession.acquire();					
 				} 
 				break;
+			case SipApplicationSessionMailbox:
+				// mailbox tasks run with the session already locked by their drain pass, anything else
+				// (timers, transaction and dialog cleanup, CANCEL, ...) locks it like the SipApplicationSession mode
+				if(SessionMailbox.isDrainedByCurrentThread(sipApplicationSession != null ? sipApplicationSession.getMailbox() : null)) {
+					break;
+				}
 			case SipApplicationSession:
 				if(logger.isDebugEnabled()) {
 					logger.debug("checkIsManagedThread " + checkIsManagedThread + " , isManagedThread " + isManagedThread.get() + ", isContainerManaged " + isContainerManaged);
@@ -1321,6 +1342,40 @@ public class SipStandardContext extends StandardContext implements CatalinaSipCo
 		}		
 	} 
     
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.SipContext#tryEnterSipApp(org.mobicents.servlet.sip.core.session.MobicentsSipApplicationSession, org.mobicents.servlet.sip.core.session.MobicentsSipSession, boolean, boolean)
+	 */
+	public boolean tryEnterSipApp(MobicentsSipApplicationSession sipApplicationSession, MobicentsSipSession sipSession, boolean checkIsManagedThread, boolean isContainerManaged) {
+		switch (concurrencyControlMode) {
+			case SipSession:
+				return sipSession == null || sipSession.tryAcquire();
+			case SipApplicationSessionMailbox:
+				if(SessionMailbox.isDrainedByCurrentThread(sipApplicationSession != null ? sipApplicationSession.getMailbox() : null)) {
+					return true;
+				}
+			case SipApplicationSession:
+				if(sipApplicationSession != null && isContainerManaged && 
+						(!checkIsManagedThread || Boolean.TRUE.equals(isManagedThread.get()))) {
+					final SipApplicationSessionCreationThreadLocal sipApplicationSessionCreationThreadLocal = sipApplicationSessionsAccessedThreadLocal.get();
+					if(sipApplicationSessionCreationThreadLocal == null || 
+							!sipApplicationSessionCreationThreadLocal.getSipApplicationSessions().contains(sipApplicationSession)) {
+						if(!sipApplicationSession.tryAcquire()) {
+							return false;
+						}
+						// already locked, only record it among the sessions accessed by this thread so that exitSipApp releases it
+						enterSipApp(sipApplicationSession, sipSession, checkIsManagedThread, false);
+						return true;
+					}
+				}
+				enterSipApp(sipApplicationSession, sipSession, checkIsManagedThread, isContainerManaged);
+				return true;
+			default:
+				enterSipApp(sipApplicationSession, sipSession, checkIsManagedThread, isContainerManaged);
+				return true;
+		}
+	}
+	
 	/*
 	 * (non-Javadoc)
 	 * @see org.mobicents.servlet.sip.startup.SipContext#exitSipApp(org.mobicents.servlet.sip.core.session.MobicentsSipApplicationSession, org.mobicents.servlet.sip.core.session.MobicentsSipSession)
@@ -1337,6 +1392,12 @@ public class SipStandardContext extends StandardContext implements CatalinaSipCo
 					}
 				}
 				break;
+			case SipApplicationSessionMailbox:
+				// mailbox tasks run with the session already locked by their drain pass, anything else
+				// (timers, transaction and dialog cleanup, CANCEL, ...) locks it like the SipApplicationSession mode
+				if(SessionMailbox.isDrainedByCurrentThread(sipApplicationSession != null ? sipApplicationSession.getMailbox() : null)) {
+					break;
+				}
 			case SipApplicationSession:
 				boolean wasSessionReleased = false;
 				SipApplicationSessionCreationThreadLocal sipApplicationSessionCreationThreadLocal = sipApplicationSessionsAccessedThreadLocal.get();
@@ -24,10 +24,9 @@ import java.io.IOException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.Type;
-import java.util.Enumeration;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
+import java.util.List;
 
+import javax.servlet.ServletContext;
 import javax.servlet.sip.SipServletRequest;
 import javax.servlet.sip.annotation.SipApplication;
 import javax.servlet.sip.annotation.SipApplicationKey;
@@ -39,6 +38,8 @@ import org.apache.log4j.Logger;
 import org.mobicents.servlet.sip.annotation.ConcurrencyControl;
 import org.mobicents.servlet.sip.catalina.CatalinaSipContext;
 import org.mobicents.servlet.sip.catalina.SipServletImpl;
+import org.mobicents.servlet.sip.startup.annotations.AnnotatedClassScanner;
+import org.mobicents.servlet.sip.startup.annotations.DeploymentFootprint;
 
 /**
  * This class implement the logic to enumerate all class files in
@@ -47,6 +48,9 @@ import org.mobicents.servlet.sip.catalina.SipServletImpl;
  * party libs in WEB-INF/jar, and system libs. Parsing all these would be slow, so for
  * now we will only look in WEB-INF/classes since it works.
  * 
+ * The class files are first read by an {@link AnnotatedClassScanner}, without loading them, and only the
+ * classes carrying SIP annotations are then loaded and reflected over.
+ * 
  * General TODO: Validation
  * 
  * @author Vladimir Ralev
@@ -55,6 +59,8 @@ import org.mobicents.servlet.sip.catalina.SipServletImpl;
 public class ClassFileScanner {
 
 	private static transient final Logger logger = Logger.getLogger(ClassFileScanner.class);
+	// sub directory of the context work directory holding the annotation indexes of the jars
+	private static final String INDEX_DIRECTORY = "sip-annotation-index";
 			
 	private String docbase;
 	
@@ -114,79 +120,51 @@ public class ClassFileScanner {
 //		}
 		// TODO: Add META-INF classpath
 			
-		_scan(new File(this.docbase));
+		final DeploymentFootprint footprint = DeploymentFootprint.start();
+		// the class files are read without loading the classes, only the annotated ones get loaded
+		final AnnotatedClassScanner annotatedClassScanner = new AnnotatedClassScanner(getIndexDirectory());
+		final List<String> classNames;
+		try {
+			classNames = annotatedClassScanner.scan(new File(this.docbase));
+		} catch (IOException e) {
+			throw new AnnotationVerificationException("couldn't read the application for parsing annotations " + this.docbase, e);
+		}
+		for (String className : classNames) {
+			analyzeClass(className);
+		}
+		if(logger.isInfoEnabled()) {
+			logger.info("Annotations of " + this.docbase + " scanned " + footprint + " : " + annotatedClassScanner
+					+ ", " + classNames.size() + " annotated classes");
+		}
 	}
 	
-	protected void _scan(File folder) throws AnnotationVerificationException {    	
-        File[] files = folder.listFiles();
-        if(files != null) {
-	        for(int j = 0; j < files.length; j++) {
-	            if(files[j].isDirectory()) {
-	                _scan(files[j]);
-	            } else if(files[j].getAbsolutePath().endsWith(".jar")) {
-	            	scanJar(files[j].getAbsolutePath());
-	            } else {
-	            	analyzeClass(files[j].getAbsolutePath());
-	            }
-	        }
-        }
-    }
-	
-	private void scanJar(String path) throws AnnotationVerificationException {
-		if(logger.isDebugEnabled()) {
-    		logger.debug("scanning jar " + path + " for annotations");
-    	}
-		try {
-			JarFile jar =new JarFile(path);
-			Enumeration<JarEntry> jarEntries = jar.entries();
-			while (jarEntries.hasMoreElements()) {
-				JarEntry jarEntry = jarEntries.nextElement();
-				String entryName = jarEntry.getName();
-								
-				if(entryName.endsWith(".class")) {
-					String className =  entryName.substring(0, entryName.indexOf(".class"));
-					className = className.replace('/', '.');
-					className = className.replace('\\', '.');
-					try {
-		    	    	Class clazz = Class.forName(className, false, this.classLoader);
-		    	    	processAnnotations(clazz);
-		    		} catch (Throwable e) {
-		    			logger.debug("Failed to parse annotations for class " + className);
-		    			if(logger.isDebugEnabled()) {
-		    				logger.debug("Failed to parse annotations for class " + className, e);
-		    			}
-		    		}
-				}
+	/**
+	 * @return the directory where the annotation indexes of the application jars are kept between deployments, null if the context has no work directory
+	 */
+	protected File getIndexDirectory() {
+		final ServletContext servletContext = sipContext.getServletContext();
+		if(servletContext != null) {
+			final Object workDir = servletContext.getAttribute(ServletContext.TEMPDIR);
+			if(workDir instanceof File) {
+				return new File((File) workDir, INDEX_DIRECTORY);
 			}
-		} catch (IOException e) {
-			throw new AnnotationVerificationException("couldn't read the following jar file for parsing annotations " + path, e);
-		} 
+		}
+		return null;
 	}
     
-    protected void analyzeClass(String path) throws AnnotationVerificationException {
+    protected void analyzeClass(String className) throws AnnotationVerificationException {
     	if(logger.isDebugEnabled()) {
-    		logger.debug("analyzing class " + path + " for annotations");
+    		logger.debug("analyzing class " + className + " for annotations");
     	}
-    	// TODO: must check if there are extra /// or \\\ or /./ in the path after classes/
-    	int classesIndex = path.toLowerCase().lastIndexOf("classes/");
-    	if(classesIndex < 0) classesIndex = path.toLowerCase().lastIndexOf("classes\\");
-    	classesIndex += "classes/".length();
-    	String classpath = path.substring(classesIndex);
-    	classpath = classpath.replace('/', '.').replace('\\', '.');
-    	if(classpath.endsWith(".class")) {
-    		classpath = classpath.substring(0, classpath.length() - 6);
-    		if(classpath.startsWith(".")) classpath = classpath.substring(1);
-    		String className = classpath;
-    		try {
-    	    	Class clazz = Class.forName(className, false, this.classLoader);
-    	    	processAnnotations(clazz);
-    		} catch (Throwable e) {
-    			logger.debug("Failed to parse annotations for class " + className);
-    			if(logger.isDebugEnabled()) {
-    				logger.debug("Failed to parse annotations for class " + className, e);
-    			}
+    	try {
+    		Class clazz = Class.forName(className, false, this.classLoader);
+    		processAnnotations(clazz);
+    	} catch (Throwable e) {
+    		logger.debug("Failed to parse annotations for class " + className);
+    		if(logger.isDebugEnabled()) {
+    			logger.debug("Failed to parse annotations for class " + className, e);
     		}
-    	} 
+    	}
     }
     
     protected void processAnnotations(Class clazz) throws AnnotationVerificationException {
@@ -31,5 +31,10 @@ public enum ConcurrencyControlMode {
 	Transaction,
 	SipSession,
 	SipApplicationSession,
+	/**
+	 * Serializes processing per SipApplicationSession through a mailbox of tasks
+	 * instead of a lock, so worker threads never block on a busy session.
+	 */
+	SipApplicationSessionMailbox,
 	None
 }
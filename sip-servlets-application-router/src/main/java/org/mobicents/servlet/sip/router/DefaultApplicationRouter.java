@@ -29,9 +29,8 @@ import java.io.StringReader;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Iterator;
+import java.util.HashMap;
 import java.util.List;
-import java.util.ListIterator;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
@@ -147,27 +146,23 @@ import org.apache.log4j.Logger;
  * </p>
  */
 public class DefaultApplicationRouter implements SipApplicationRouter, ManageableApplicationRouter {
-    private static final String DIRECTION_PARAMETER = "DIRECTION";
-    private static final String REGEX_PARAMETER = "REGEX";
-    private static final String REGEX_POPPED_ROUTE_PARAMETER = "REGEX_POPPED_ROUTE";
     private static final String DIRECTION_OUTBOUND = "OUTBOUND";
     private static final String DIRECTION_INBOUND = "INBOUND";
     private static final String DIRECTION_UAC_ROUTE_BACK = "UAC_ROUTE_BACK";
     // the logger
     private static Logger log = Logger.getLogger(DefaultApplicationRouter.class);
-    // the prefix used in the dar configuration file to specify the subscriber URI to use
-    // when reusing the information from one header
-    private static final String DAR_SUSCRIBER_PREFIX = "DAR:";
     private static final String FROM = "From";
     private static final String TO = "To";
-    private static final int DAR_SUSCRIBER_PREFIX_LENGTH = DAR_SUSCRIBER_PREFIX.length();
-    private static final String METHOD_WILDCARD = "ALL";
+    // returned when no application is to be called, it is immutable so it can be shared
+    private static final SipApplicationRouterInfo NO_APPLICATION = new SipApplicationRouterInfo(null, null, null, null, null,
+            null);
     // the parser for the properties file
     private DefaultApplicationRouterParser defaultApplicationRouterParser;
     // Applications deployed within the container
     Set<String> containerDeployedApplicationNames = null;
-    // List of applications defined in the defautl application router properties file
-    Map<String, List<? extends SipApplicationRouterInfo>> defaultSipApplicationRouterInfos;
+    // Compiled applications defined in the default application router properties file,
+    // replaced as a whole on each reconfiguration
+    volatile DefaultApplicationRouterRuleIndex ruleIndex;
 
     List<AppRouterCondition> conditions;
 
@@ -177,7 +172,8 @@ public class DefaultApplicationRouter implements SipApplicationRouter, Manageabl
     public DefaultApplicationRouter() {
         containerDeployedApplicationNames = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
         defaultApplicationRouterParser = new DefaultApplicationRouterParser();
-        defaultSipApplicationRouterInfos = new ConcurrentHashMap<String, List<? extends SipApplicationRouterInfo>>();
+        ruleIndex = new DefaultApplicationRouterRuleIndex(new Properties(),
+                new HashMap<String, List<? extends SipApplicationRouterInfo>>());
         conditions = new ArrayList();
         conditions.add(new HeaderRegexCondition());
     }
@@ -214,48 +210,29 @@ public class DefaultApplicationRouter implements SipApplicationRouter, Manageabl
         // besides the declaration of the application order as specified in JSR 289 - Appendix C
         SipApplicationRouterInfo sipApplicationRouterInfo = null;
         if (initialRequest != null) {
+            // read the volatile once so that the whole routing decision is made on the same configuration
+            final DefaultApplicationRouterRuleIndex currentRuleIndex = ruleIndex;
             if (log.isDebugEnabled()) {
                 log.debug(this + " checking for next application for request " + initialRequest + " , region=" + region
                         + " , directive=" + directive + ", targetedRequestInfo=" + targetedRequestInfo + ", stateinfo="
-                        + stateInfo + " with following dar " + defaultApplicationRouterParser.getProperties());
+                        + stateInfo + " with following dar " + currentRuleIndex.getProperties());
             }
-            List<? extends SipApplicationRouterInfo> defaultSipApplicationRouterInfoList = defaultSipApplicationRouterInfos
-                    .get(initialRequest.getMethod());
-            sipApplicationRouterInfo = getNextApplication(initialRequest, stateInfo, defaultSipApplicationRouterInfoList);
+            sipApplicationRouterInfo = getNextApplication(initialRequest, stateInfo,
+                    currentRuleIndex.getRules(initialRequest.getMethod()));
             if (sipApplicationRouterInfo == null) {
-                defaultSipApplicationRouterInfoList = defaultSipApplicationRouterInfos.get(METHOD_WILDCARD);
-                sipApplicationRouterInfo = getNextApplication(initialRequest, stateInfo, defaultSipApplicationRouterInfoList);
+                sipApplicationRouterInfo = getNextApplication(initialRequest, stateInfo, currentRuleIndex.getWildcardRules());
             }
             if (sipApplicationRouterInfo != null) {
                 return sipApplicationRouterInfo;
             }
         }
-        return new SipApplicationRouterInfo(null, null, null, null, null, null);
-    }
-
-    /*
-     * This method is checking if the application that initiated the request is currently configured to be called for this
-     * method. Apps that initiate request may not be in the list.
-     */
-    private DefaultSipApplicationRouterInfo getFirstRequestApplicationEntry(
-            List<? extends SipApplicationRouterInfo> defaultSipApplicationRouterInfoList, SipServletRequest initialRequest) {
-        SipSession sipSession = initialRequest.getSession(false);
-        if (sipSession != null) {
-            String appName = sipSession.getApplicationSession().getApplicationName();
-            Iterator<? extends SipApplicationRouterInfo> iterator = defaultSipApplicationRouterInfoList.iterator();
-            while (iterator.hasNext()) {
-                DefaultSipApplicationRouterInfo next = (DefaultSipApplicationRouterInfo) iterator.next();
-                if (next.getApplicationName().equals(appName))
-                    return next;
-            }
-        }
-        return null;
+        return NO_APPLICATION;
     }
 
     private SipApplicationRouterInfo getNextApplication(SipServletRequest initialRequest, Serializable stateInfo,
-            List<? extends SipApplicationRouterInfo> defaultSipApplicationRouterInfoList) {
+            DefaultApplicationRouterRuleIndex.MethodRules rules) {
 
-        if (defaultSipApplicationRouterInfoList != null && defaultSipApplicationRouterInfoList.size() > 0) {
+        if (rules.size() > 0) {
             int previousAppOrder = 0;
             if (stateInfo != null) {
                 previousAppOrder = (Integer) stateInfo;
@@ -263,9 +240,34 @@ public class DefaultApplicationRouter implements SipApplicationRouter, Manageabl
                     log.debug("The previous app order was : " + previousAppOrder);
                 }
             }
-            ListIterator<? extends SipApplicationRouterInfo> defaultSipApplicationRouterInfoIt = defaultSipApplicationRouterInfoList
-                    .listIterator(previousAppOrder++);
-            while (defaultSipApplicationRouterInfoIt.hasNext()) {
+            if (previousAppOrder >= rules.size()) {
+                return null;
+            }
+            final SipSession initialSession = initialRequest.getSession(false);
+            /*
+             * This is checking if the application that initiated the request is currently configured to be called for this
+             * method. Apps that initiate request may not be in the list thus params must be assumed for them.
+             */
+            String requestDirection = null;
+            String initialAppName = null;
+            if (initialSession != null) {
+                initialAppName = initialSession.getApplicationSession().getApplicationName();
+                DefaultSipApplicationRouterInfo requestSipApplicationRouterInfo = rules.getFirstInfo(initialAppName);
+                if (requestSipApplicationRouterInfo != null) {
+                    requestDirection = requestSipApplicationRouterInfo.getDirection();
+                } else {
+                    // If this request comes from outside (was not initiated by some app) the session will be null,
+                    // thus if it's not null we can assume the request already has a session and was initiated by
+                    // the application...
+                    requestDirection = DIRECTION_OUTBOUND;
+                }
+            }
+            final DefaultSipApplicationRouterInfo previousSipApplicationRouterInfo = rules.get(previousAppOrder);
+            // computed lazily and only once per routing decision since they are costly
+            String initialRequestStringified = null;
+            String poppedRouteStringified = null;
+
+            for (int i = previousAppOrder; i < rules.size(); i++) {
 
                 /*
                  * Fix for http://code.google.com/p/mobicents/issues/detail?id=987 Issue 987
@@ -275,33 +277,12 @@ public class DefaultApplicationRouter implements SipApplicationRouter, Manageabl
                  * the optional parameters. If the request was initiated by the app then we will call only applications without
                  * INBOUND direction. All applications without hint will be called to keep backward compatibility.
                  */
-                DefaultSipApplicationRouterInfo defaultSipApplicationRouterInfo = (DefaultSipApplicationRouterInfo) defaultSipApplicationRouterInfoIt
-                        .next();
-
-                /*
-                 * This method is checking if the application that initiated the request is currently configured to be called
-                 * for this method. Apps that initiate request may not be in the list thus params must be assumed for them.
-                 */
-                DefaultSipApplicationRouterInfo requestSipApplicationRouterInfo = (DefaultSipApplicationRouterInfo) getFirstRequestApplicationEntry(
-                        defaultSipApplicationRouterInfoList, initialRequest);
-
-                String currentDirection = defaultSipApplicationRouterInfo.getOptionalParameters().get(DIRECTION_PARAMETER);
-                String requestDirection = null;
-                if (requestSipApplicationRouterInfo != null) {
-                    requestDirection = requestSipApplicationRouterInfo.getOptionalParameters().get(DIRECTION_PARAMETER);
-                } else {
-                    if (initialRequest.getSession(false) != null) {
-                        // If this request comes from outside (was not initiated by some app) the session will be null,
-                        // thus if it's not null we can assume the request already has a session and was initiated by
-                        // the application...
-                        requestDirection = DIRECTION_OUTBOUND;
-                    }
-                }
+                final DefaultSipApplicationRouterInfo defaultSipApplicationRouterInfo = rules.get(i);
 
                 if (DIRECTION_OUTBOUND.equalsIgnoreCase(requestDirection)) { // If the request was initiated by the previous app
                                                                              // or the previous app has out marker
-                    if (DIRECTION_INBOUND.equalsIgnoreCase(currentDirection)) { // but the new application is handling only
-                                                                                // INBOUND request
+                    if (DIRECTION_INBOUND.equalsIgnoreCase(defaultSipApplicationRouterInfo.getDirection())) { // but the new
+                                                                                // application is handling only INBOUND request
                         if (log.isDebugEnabled()) {
                             log.debug(defaultSipApplicationRouterInfo.getApplicationName()
                                     + " will not be called because we are routing the request out and the application has 'DIRECTION=INBOUND' hint.");
@@ -310,41 +291,44 @@ public class DefaultApplicationRouter implements SipApplicationRouter, Manageabl
                     }
                 }
 
-                String regEx = defaultSipApplicationRouterInfo.getOptionalParameters().get(REGEX_PARAMETER);
-                if (regEx != null) {
-                    Pattern pattern = Pattern.compile(regEx);
-                    Matcher matcher = pattern.matcher(initialRequest.toString());
+                final Pattern regexPattern = defaultSipApplicationRouterInfo.getRegexPattern();
+                if (regexPattern != null) {
+                    if (initialRequestStringified == null) {
+                        initialRequestStringified = initialRequest.toString();
+                    }
+                    Matcher matcher = regexPattern.matcher(initialRequestStringified);
                     if (matcher.find()) {
                         if (log.isDebugEnabled()) {
-                            log.debug("initialRequest " + initialRequest + " matching regex pattern " + regEx + "begin index "
-                                    + matcher.start() + " and ending at index " + matcher.end() + " for application "
-                                    + defaultSipApplicationRouterInfo.getApplicationName());
+                            log.debug("initialRequest " + initialRequest + " matching regex pattern " + regexPattern
+                                    + "begin index " + matcher.start() + " and ending at index " + matcher.end()
+                                    + " for application " + defaultSipApplicationRouterInfo.getApplicationName());
                         }
                     } else {
                         if (log.isDebugEnabled()) {
-                            log.debug("initialRequest " + initialRequest + " not matching regex pattern " + regEx
+                            log.debug("initialRequest " + initialRequest + " not matching regex pattern " + regexPattern
                                     + " skipping application " + defaultSipApplicationRouterInfo.getApplicationName());
                         }
                         continue; // pattern not matching, just don't call the application
                     }
                 }
                 // https://code.google.com/p/sipservlets/issues/detail?id=43
-                String regExPoppedRoute = defaultSipApplicationRouterInfo.getOptionalParameters().get(
-                        REGEX_POPPED_ROUTE_PARAMETER);
-                if (regExPoppedRoute != null) {
-                    Pattern pattern = Pattern.compile(regExPoppedRoute);
-                    Matcher matcher = pattern.matcher(initialRequest.getPoppedRoute().toString());
+                final Pattern poppedRouteRegexPattern = defaultSipApplicationRouterInfo.getPoppedRouteRegexPattern();
+                if (poppedRouteRegexPattern != null) {
+                    if (poppedRouteStringified == null) {
+                        poppedRouteStringified = initialRequest.getPoppedRoute().toString();
+                    }
+                    Matcher matcher = poppedRouteRegexPattern.matcher(poppedRouteStringified);
                     if (matcher.find()) {
                         if (log.isDebugEnabled()) {
                             log.debug("initialRequest Popped Route" + initialRequest.getPoppedRoute()
-                                    + " matching regex pattern " + regExPoppedRoute + "begin index " + matcher.start()
+                                    + " matching regex pattern " + poppedRouteRegexPattern + "begin index " + matcher.start()
                                     + " and ending at index " + matcher.end() + " for application "
                                     + defaultSipApplicationRouterInfo.getApplicationName());
                         }
                     } else {
                         if (log.isDebugEnabled()) {
                             log.debug("initialRequest Popped Route" + initialRequest.getPoppedRoute()
-                                    + " matching regex pattern " + regExPoppedRoute + " skipping application "
+                                    + " matching regex pattern " + poppedRouteRegexPattern + " skipping application "
                                     + defaultSipApplicationRouterInfo.getApplicationName());
                         }
                         continue; // pattern not matching, just don't call the application
@@ -368,12 +352,8 @@ public class DefaultApplicationRouter implements SipApplicationRouter, Manageabl
 			    }
                 if (log.isDebugEnabled()) {
                     log.debug("Route Modifier : " + defaultSipApplicationRouterInfo.getRouteModifier());
-                    log.debug("Previous App Name : "
-                            + ((SipApplicationRouterInfo) defaultSipApplicationRouterInfoList.listIterator(previousAppOrder)
-                                    .previous()).getNextApplicationName());
-                    log.debug("Previous App Route Region : "
-                            + ((SipApplicationRouterInfo) defaultSipApplicationRouterInfoList.listIterator(previousAppOrder)
-                                    .previous()).getRoutingRegion());
+                    log.debug("Previous App Name : " + previousSipApplicationRouterInfo.getNextApplicationName());
+                    log.debug("Previous App Route Region : " + previousSipApplicationRouterInfo.getRoutingRegion());
                     log.debug("Current App Name : " + defaultSipApplicationRouterInfo.getNextApplicationName());
                     log.debug("Current App Route Region : " + defaultSipApplicationRouterInfo.getRoutingRegion());
                 }
@@ -382,38 +362,27 @@ public class DefaultApplicationRouter implements SipApplicationRouter, Manageabl
                 if (isApplicationPresentInContainer
                         || !SipRouteModifier.NO_ROUTE.equals(defaultSipApplicationRouterInfo.getRouteModifier())) {
                     // prevents to route twice in a row to the same application with the same routing region
-                    SipSession initialSession = initialRequest.getSession(false);
-                    String initialAppName = null;
-                    String initialRoutingRegion = null;
-                    String defaultSipApplicationRouterAppName = null;
-                    String defaultSipApplicationRouterRoutingRegion = null;
-
-                    if (initialSession != null) {
-                        initialAppName = initialRequest.getSession(false).getApplicationSession().getApplicationName();
-                        initialRoutingRegion = ((SipApplicationRouterInfo) defaultSipApplicationRouterInfoList.listIterator(
-                                previousAppOrder).previous()).getRoutingRegion().toString();
-                        defaultSipApplicationRouterAppName = defaultSipApplicationRouterInfo.getApplicationName();
-                        defaultSipApplicationRouterRoutingRegion = defaultSipApplicationRouterInfo.getRoutingRegion()
-                                .toString();
-                    }
+                    String defaultSipApplicationRouterAppName = defaultSipApplicationRouterInfo.getApplicationName();
                     if (initialSession == null || !defaultSipApplicationRouterAppName.equals(initialAppName) ||
                     // https://code.google.com/p/sipservlets/issues/detail?id=273 allowing to route to the same app with
                     // different routing regions
-                            ((defaultSipApplicationRouterAppName.equals(initialAppName) && !(initialRoutingRegion
-                                    .equals(defaultSipApplicationRouterRoutingRegion)))) || 
+                            (!previousSipApplicationRouterInfo.getRoutingRegion().toString()
+                                    .equals(defaultSipApplicationRouterInfo.getRoutingRegion().toString())) || 
                             // https://github.com/Mobicents/sip-servlets/issues/94
-                            ((requestDirection != null &&  defaultSipApplicationRouterAppName.equals(initialAppName) && 
-                            		DIRECTION_UAC_ROUTE_BACK.equals(requestDirection) && stateInfo == null))) {
-                        String subscriberIdentity = defaultSipApplicationRouterInfo.getSubscriberIdentity();
-                        if (subscriberIdentity.indexOf(DAR_SUSCRIBER_PREFIX) != -1) {
-                            String headerName = subscriberIdentity.substring(DAR_SUSCRIBER_PREFIX_LENGTH);
-                            if (FROM.equalsIgnoreCase(headerName)) {
-                                subscriberIdentity = initialRequest.getFrom().getURI().toString();
-                            } else if (TO.equalsIgnoreCase(headerName)) {
-                                subscriberIdentity = initialRequest.getTo().getURI().toString();
-                            } else {
-                                subscriberIdentity = initialRequest.getHeader(headerName);
-                            }
+                            ((requestDirection != null && DIRECTION_UAC_ROUTE_BACK.equals(requestDirection) && stateInfo == null))) {
+                        SipApplicationRouterInfo staticSipApplicationRouterInfo = defaultSipApplicationRouterInfo
+                                .getStaticSipApplicationRouterInfo();
+                        if (staticSipApplicationRouterInfo != null) {
+                            return staticSipApplicationRouterInfo;
+                        }
+                        String headerName = defaultSipApplicationRouterInfo.getSubscriberHeaderName();
+                        String subscriberIdentity = null;
+                        if (FROM.equalsIgnoreCase(headerName)) {
+                            subscriberIdentity = initialRequest.getFrom().getURI().toString();
+                        } else if (TO.equalsIgnoreCase(headerName)) {
+                            subscriberIdentity = initialRequest.getTo().getURI().toString();
+                        } else {
+                            subscriberIdentity = initialRequest.getHeader(headerName);
                         }
                         return new SipApplicationRouterInfo(defaultSipApplicationRouterInfo.getApplicationName(),
                                 defaultSipApplicationRouterInfo.getRoutingRegion(), subscriberIdentity,
@@ -427,13 +396,12 @@ public class DefaultApplicationRouter implements SipApplicationRouter, Manageabl
     }
 
     private boolean checkConditions(SipServletRequest initialRequest, DefaultSipApplicationRouterInfo info) {
-        boolean allConditionsMet = true;
-        Iterator<AppRouterCondition> iterator = conditions.iterator();
-        while (allConditionsMet && iterator.hasNext()) {
-            boolean condMet = iterator.next().checkCondition(initialRequest, info);
-            allConditionsMet = allConditionsMet && condMet;
+        for (int i = 0; i < conditions.size(); i++) {
+            if (!conditions.get(i).checkCondition(initialRequest, info)) {
+                return false;
+            }
         }
-        return allConditionsMet;
+        return true;
     }
 
     /**
@@ -442,7 +410,7 @@ public class DefaultApplicationRouter implements SipApplicationRouter, Manageabl
     public void init() {
         defaultApplicationRouterParser.init();
         try {
-            defaultSipApplicationRouterInfos = defaultApplicationRouterParser.parse();
+            ruleIndex = defaultApplicationRouterParser.compile();
         } catch (ParseException e) {
             log.fatal("Impossible to parse the default application router configuration file", e);
             throw new IllegalArgumentException("Impossible to parse the default application router configuration file", e);
@@ -457,7 +425,7 @@ public class DefaultApplicationRouter implements SipApplicationRouter, Manageabl
     public void init(Properties properties) {
         defaultApplicationRouterParser.init(properties);
         try {
-            defaultSipApplicationRouterInfos = defaultApplicationRouterParser.parse();
+            ruleIndex = defaultApplicationRouterParser.compile();
         } catch (ParseException e) {
             log.fatal("Impossible to parse the default application router configuration file", e);
             throw new IllegalArgumentException("Impossible to parse the default application router configuration file", e);
@@ -486,7 +454,9 @@ public class DefaultApplicationRouter implements SipApplicationRouter, Manageabl
             properties = (Properties) configuration;
         }
         try {
-            defaultSipApplicationRouterInfos = this.defaultApplicationRouterParser.parse(properties);
+            // the new configuration is compiled entirely before being swapped in, requests being routed
+            // concurrently keep using the previous one
+            ruleIndex = this.defaultApplicationRouterParser.compile(properties);
         } catch (ParseException e1) {
             throw new IllegalArgumentException("Failed to parse the new DAR properties", e1);
         }
@@ -534,7 +504,7 @@ public class DefaultApplicationRouter implements SipApplicationRouter, Manageabl
      * @see org.mobicents.servlet.sip.router.ManageableApplicationRouter#getCurrentConfiguration()
      */
     public Object getCurrentConfiguration() {
-        return defaultApplicationRouterParser.getProperties();
+        return ruleIndex.getProperties();
     }
 
     /*
@@ -543,7 +513,7 @@ public class DefaultApplicationRouter implements SipApplicationRouter, Manageabl
      * @see org.mobicents.servlet.sip.router.ManageableApplicationRouter#getCurrentConfiguration()
      */
     public Map<String, List<? extends SipApplicationRouterInfo>> getConfiguration() {
-        return defaultSipApplicationRouterInfos;
+        return ruleIndex.getSipApplicationRouterInfos();
     }
 
 }
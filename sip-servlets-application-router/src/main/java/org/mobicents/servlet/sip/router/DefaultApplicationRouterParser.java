@@ -174,6 +174,28 @@ public class DefaultApplicationRouterParser {
         return parse();
     }
 
+    /**
+     * Parse the loaded properties and compile them, regexes included, into an immutable index to be used for routing.
+     * 
+     * @return the rule index corresponding to the loaded properties
+     * @throws ParseException if anything goes wrong during the parsing
+     */
+    public DefaultApplicationRouterRuleIndex compile() throws ParseException {
+        Properties compiledProperties = properties;
+        return new DefaultApplicationRouterRuleIndex(compiledProperties, parse(compiledProperties));
+    }
+
+    /**
+     * Same method as above, but compiles the DAR configuration from the given properties.
+     * 
+     * @param properties
+     * @return
+     * @throws ParseException
+     */
+    public DefaultApplicationRouterRuleIndex compile(Properties properties) throws ParseException {
+        return new DefaultApplicationRouterRuleIndex(properties, parse(properties));
+    }
+
     /**
      * Parse a string corresponding to one or more definition of SipApplicationRouterInfo ex : ("SimpleSipServlet", "DAR:From",
      * "ORIGINATING", "", "NO_ROUTE", "0"), ("SimpleSipServlet", "DAR:To", "TERMINATING", "", "NO_ROUTE", "1") and return the
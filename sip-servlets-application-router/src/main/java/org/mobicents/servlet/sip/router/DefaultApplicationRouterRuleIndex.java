@@ -0,0 +1,127 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package org.mobicents.servlet.sip.router;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+
+import javax.servlet.sip.ar.SipApplicationRouterInfo;
+
+/**
+ * Immutable snapshot of a parsed DAR configuration. The per method lists of sip-router-info are flattened into arrays
+ * and indexed by application name so that the {@link DefaultApplicationRouter} can route an initial request without
+ * walking lists or compiling anything. A new index is built on each (re)configuration and swapped in one assignment, so
+ * requests being routed concurrently always see a consistent configuration.
+ */
+public final class DefaultApplicationRouterRuleIndex {
+    static final String METHOD_WILDCARD = "ALL";
+
+    private static final MethodRules NO_RULES = new MethodRules(new DefaultSipApplicationRouterInfo[0]);
+
+    private final Properties properties;
+    private final Map<String, List<? extends SipApplicationRouterInfo>> sipApplicationRouterInfos;
+    private final Map<String, MethodRules> rulesByMethod;
+    private final MethodRules wildcardRules;
+
+    public DefaultApplicationRouterRuleIndex(Properties properties,
+            Map<String, List<? extends SipApplicationRouterInfo>> sipApplicationRouterInfos) {
+        this.properties = properties;
+        this.sipApplicationRouterInfos = Collections.unmodifiableMap(sipApplicationRouterInfos);
+        Map<String, MethodRules> rules = new HashMap<String, MethodRules>();
+        for (Entry<String, List<? extends SipApplicationRouterInfo>> entry : sipApplicationRouterInfos.entrySet()) {
+            List<? extends SipApplicationRouterInfo> infoList = entry.getValue();
+            rules.put(entry.getKey(),
+                    new MethodRules(infoList.toArray(new DefaultSipApplicationRouterInfo[infoList.size()])));
+        }
+        this.rulesByMethod = rules;
+        MethodRules wildcard = rules.get(METHOD_WILDCARD);
+        this.wildcardRules = wildcard != null ? wildcard : NO_RULES;
+    }
+
+    /**
+     * @param method the SIP method of the initial request
+     * @return the rules defined for this method, never null
+     */
+    public MethodRules getRules(String method) {
+        MethodRules rules = rulesByMethod.get(method);
+        return rules != null ? rules : NO_RULES;
+    }
+
+    /**
+     * @return the rules defined for the ALL wildcard method, never null
+     */
+    public MethodRules getWildcardRules() {
+        return wildcardRules;
+    }
+
+    /**
+     * @return the properties this index was compiled from
+     */
+    public Properties getProperties() {
+        return properties;
+    }
+
+    /**
+     * @return the parsed configuration as exposed through the ManageableApplicationRouter interface
+     */
+    public Map<String, List<? extends SipApplicationRouterInfo>> getSipApplicationRouterInfos() {
+        return sipApplicationRouterInfos;
+    }
+
+    /**
+     * The ordered sip-router-info of one SIP method
+     */
+    public static final class MethodRules {
+        private final DefaultSipApplicationRouterInfo[] infos;
+        private final Map<String, DefaultSipApplicationRouterInfo> firstInfoByApplicationName;
+
+        MethodRules(DefaultSipApplicationRouterInfo[] infos) {
+            this.infos = infos;
+            Map<String, DefaultSipApplicationRouterInfo> firstInfos = new HashMap<String, DefaultSipApplicationRouterInfo>();
+            for (DefaultSipApplicationRouterInfo info : infos) {
+                String applicationName = info.getApplicationName();
+                if (applicationName != null && !firstInfos.containsKey(applicationName)) {
+                    firstInfos.put(applicationName, info);
+                }
+            }
+            this.firstInfoByApplicationName = firstInfos;
+        }
+
+        public int size() {
+            return infos.length;
+        }
+
+        public DefaultSipApplicationRouterInfo get(int index) {
+            return infos[index];
+        }
+
+        /**
+         * @param applicationName the name of an application
+         * @return the first sip-router-info declared for this application, null if the application isn't listed
+         */
+        public DefaultSipApplicationRouterInfo getFirstInfo(String applicationName) {
+            return firstInfoByApplicationName.get(applicationName);
+        }
+    }
+}
@@ -43,6 +43,12 @@ import javax.servlet.sip.ar.SipRouteModifier;
 public class DefaultSipApplicationRouterInfo extends SipApplicationRouterInfo {
     private static final String HEADER_REGEX_PREFIX = "HEADER";
     private static final String HEADER_REGEX_SEPARATOR = "_";
+    static final String DIRECTION_PARAMETER = "DIRECTION";
+    static final String REGEX_PARAMETER = "REGEX";
+    static final String REGEX_POPPED_ROUTE_PARAMETER = "REGEX_POPPED_ROUTE";
+    // the prefix used in the dar configuration file to specify the subscriber URI to use
+    // when reusing the information from one header
+    static final String DAR_SUSCRIBER_PREFIX = "DAR:";
 
     // private String applicationName;
     // private SipApplicationRoutingRegion routingRegion;
@@ -54,6 +60,16 @@ public class DefaultSipApplicationRouterInfo extends SipApplicationRouterInfo {
 
     private Map<String, Pattern> headerPatternMap = new HashMap();
 
+    // everything below is compiled once from the optional parameters and the subscriber identity
+    // so that the application router doesn't have to compile or parse anything when routing a request
+    private String direction;
+    private Pattern regexPattern;
+    private Pattern poppedRouteRegexPattern;
+    private String[] headerNames = new String[0];
+    private Pattern[] headerPatterns = new Pattern[0];
+    private String subscriberHeaderName;
+    private SipApplicationRouterInfo staticSipApplicationRouterInfo;
+
     /**
      * @param applicationName
      * @param subscriberIdentity
@@ -74,23 +90,48 @@ public class DefaultSipApplicationRouterInfo extends SipApplicationRouterInfo {
         this.order = order;
         try {
             this.optionalParameters = stringToMap(optionalParameters);
-            scanForHeaderRegex();
+            compileOptionalParameters();
         } catch (ParseException e) {
             throw new RuntimeException("Error", e);
         }
-
+        if (subscriberIdentity != null && subscriberIdentity.indexOf(DAR_SUSCRIBER_PREFIX) != -1) {
+            subscriberHeaderName = subscriberIdentity.substring(DAR_SUSCRIBER_PREFIX.length());
+        }
+        compileStaticSipApplicationRouterInfo();
     }
 
-    private void scanForHeaderRegex() {
-        for (String optParamName : optionalParameters.keySet()) {
+    private void compileStaticSipApplicationRouterInfo() {
+        if (subscriberHeaderName == null) {
+            // nothing depends on the request so the returned router info can be shared between requests
+            staticSipApplicationRouterInfo = new SipApplicationRouterInfo(getNextApplicationName(), getRoutingRegion(),
+                    getSubscriberURI(), getRoutes(), getRouteModifier(), order);
+        }
+    }
 
+    private void compileOptionalParameters() {
+        headerPatternMap = new HashMap<String, Pattern>();
+        for (Entry<String, String> optionalParameter : optionalParameters.entrySet()) {
+            String optParamName = optionalParameter.getKey();
             if (optParamName.startsWith(HEADER_REGEX_PREFIX)) {
                 int headerNamePos = optParamName.indexOf(HEADER_REGEX_SEPARATOR);
                 // add 1 to found position to skip SEPARATOR char as the key in the map
                 headerPatternMap.put(optParamName.substring(headerNamePos + 1),
-                        Pattern.compile(optionalParameters.get(optParamName)));
+                        Pattern.compile(optionalParameter.getValue()));
             }
         }
+        headerNames = new String[headerPatternMap.size()];
+        headerPatterns = new Pattern[headerPatternMap.size()];
+        int i = 0;
+        for (Entry<String, Pattern> headerPattern : headerPatternMap.entrySet()) {
+            headerNames[i] = headerPattern.getKey();
+            headerPatterns[i] = headerPattern.getValue();
+            i++;
+        }
+        direction = optionalParameters.get(DIRECTION_PARAMETER);
+        String regex = optionalParameters.get(REGEX_PARAMETER);
+        regexPattern = regex != null ? Pattern.compile(regex) : null;
+        String poppedRouteRegex = optionalParameters.get(REGEX_POPPED_ROUTE_PARAMETER);
+        poppedRouteRegexPattern = poppedRouteRegex != null ? Pattern.compile(poppedRouteRegex) : null;
     }
 
     public static Map<String, String> stringToMap(String str) throws ParseException {
@@ -150,6 +191,7 @@ public class DefaultSipApplicationRouterInfo extends SipApplicationRouterInfo {
      */
     public void setStateInfo(int stateInfo) {
         this.order = stateInfo;
+        compileStaticSipApplicationRouterInfo();
     }
 
     /**
@@ -166,9 +208,61 @@ public class DefaultSipApplicationRouterInfo extends SipApplicationRouterInfo {
      */
     public void setOptionalParameters(HashMap<String, String> optionalParameters) {
         this.optionalParameters = optionalParameters;
+        compileOptionalParameters();
     }
 
     public Map<String, Pattern> getHeaderPatternMap() {
         return headerPatternMap;
     }
+
+    /**
+     * @return the value of the DIRECTION optional parameter, null if not present
+     */
+    public String getDirection() {
+        return direction;
+    }
+
+    /**
+     * @return the precompiled REGEX optional parameter, null if not present
+     */
+    public Pattern getRegexPattern() {
+        return regexPattern;
+    }
+
+    /**
+     * @return the precompiled REGEX_POPPED_ROUTE optional parameter, null if not present
+     */
+    public Pattern getPoppedRouteRegexPattern() {
+        return poppedRouteRegexPattern;
+    }
+
+    /**
+     * @return the names of the headers to match against the HEADER_ regexes, in the same order as {@link #getHeaderPatterns()}
+     */
+    String[] getHeaderNames() {
+        return headerNames;
+    }
+
+    /**
+     * @return the precompiled HEADER_ regexes, in the same order as {@link #getHeaderNames()}
+     */
+    Pattern[] getHeaderPatterns() {
+        return headerPatterns;
+    }
+
+    /**
+     * @return the name of the header to use as subscriber identity when it is specified through the DAR: directive, null
+     *         otherwise
+     */
+    public String getSubscriberHeaderName() {
+        return subscriberHeaderName;
+    }
+
+    /**
+     * @return the router info to return to the container when it doesn't depend on the request (ie no DAR: directive for
+     *         the subscriber identity), null otherwise
+     */
+    SipApplicationRouterInfo getStaticSipApplicationRouterInfo() {
+        return staticSipApplicationRouterInfo;
+    }
 }
@@ -19,7 +19,6 @@
  */
 package org.mobicents.servlet.sip.router;
 
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.servlet.sip.SipServletRequest;
 
@@ -42,16 +41,17 @@ public class HeaderRegexCondition implements AppRouterCondition {
      */
     @Override
     public final boolean checkCondition(final SipServletRequest initialRequest, final DefaultSipApplicationRouterInfo info) {
-        boolean enabled = true;
-        for (String hAux : info.getHeaderPatternMap().keySet()) {
-            String headerValue = initialRequest.getHeader(hAux);
+        final String[] headerNames = info.getHeaderNames();
+        final Pattern[] headerPatterns = info.getHeaderPatterns();
+        // all the regexes have to match so stop at the first one not matching
+        for (int i = 0; i < headerNames.length; i++) {
+            String headerValue = initialRequest.getHeader(headerNames[i]);
             // Pattern is ThreadSafe as doc by Java doc
             // Matcher is not threadsafe, but a new one is created every time.
-            // Anyway if performance is degraded, Threadlocal/pool may be used
-            Pattern headerPattern = info.getHeaderPatternMap().get(hAux);
-            Matcher matcher = headerPattern.matcher(headerValue);
-            enabled = enabled && matcher.find();
+            if (headerValue == null || !headerPatterns[i].matcher(headerValue).find()) {
+                return false;
+            }
         }
-        return enabled;
+        return true;
     }
 }
@@ -18,4 +18,49 @@ public class DefaultApplicationRouterTest extends TestCase {
         router.init(properties);
     }
 
+    public void testInitCompilesRuleIndex() {
+        DefaultApplicationRouter router = new DefaultApplicationRouter();
+        Properties properties = new Properties();
+        properties.setProperty("INVITE",
+                "(\"App1\",\"DAR:From\",\"ORIGINATING\",\"\",\"NO_ROUTE\",\"0\",\"REGEX=From:.*sip:.*@sip-servlets\\.com\"),"
+                        + "(\"App2\",\"sip:app2@sip-servlets.com\",\"TERMINATING\",\"\",\"NO_ROUTE\",\"1\",\"DIRECTION=INBOUND\")");
+        router.init(properties);
+
+        DefaultApplicationRouterRuleIndex.MethodRules rules = router.ruleIndex.getRules("INVITE");
+        assertEquals(2, rules.size());
+        assertNotNull(rules.get(0).getRegexPattern());
+        assertEquals("From", rules.get(0).getSubscriberHeaderName());
+        assertNull(rules.get(0).getStaticSipApplicationRouterInfo());
+        assertEquals("INBOUND", rules.get(1).getDirection());
+        assertEquals("sip:app2@sip-servlets.com", rules.get(1).getStaticSipApplicationRouterInfo().getSubscriberURI());
+        assertSame(rules.get(1), rules.getFirstInfo("App2"));
+        assertEquals(0, router.ruleIndex.getRules("MESSAGE").size());
+        assertEquals(0, router.ruleIndex.getWildcardRules().size());
+        assertEquals(2, router.getConfiguration().get("INVITE").size());
+    }
+
+    public void testReconfigurationSwapsRuleIndex() {
+        DefaultApplicationRouter router = new DefaultApplicationRouter();
+        Properties properties = new Properties();
+        properties.setProperty("INVITE", "(\"App1\",\"DAR:From\",\"ORIGINATING\",\"\",\"NO_ROUTE\",\"0\")");
+        router.init(properties);
+        DefaultApplicationRouterRuleIndex previousRuleIndex = router.ruleIndex;
+
+        Properties newProperties = new Properties();
+        newProperties.setProperty("ALL", "(\"App2\",\"DAR:To\",\"TERMINATING\",\"\",\"NO_ROUTE\",\"0\")");
+        router.init(newProperties);
+
+        assertNotSame(previousRuleIndex, router.ruleIndex);
+        // the previous snapshot is left untouched for requests still being routed with it
+        assertEquals(1, previousRuleIndex.getRules("INVITE").size());
+        assertEquals(0, router.ruleIndex.getRules("INVITE").size());
+        assertEquals(1, router.ruleIndex.getWildcardRules().size());
+        assertSame(newProperties, router.getCurrentConfiguration());
+    }
+
+    public void testNoApplicationForNullRequest() {
+        DefaultApplicationRouter router = new DefaultApplicationRouter();
+        assertNull(router.getNextApplication(null, null, null, null, null).getNextApplicationName());
+    }
+
 }
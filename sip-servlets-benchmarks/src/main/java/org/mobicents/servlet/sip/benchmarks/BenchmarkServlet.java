@@ -0,0 +1,129 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.servlet.sip.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.servlet.ServletException;
+import javax.servlet.sip.B2buaHelper;
+import javax.servlet.sip.Proxy;
+import javax.servlet.sip.SipFactory;
+import javax.servlet.sip.SipServlet;
+import javax.servlet.sip.SipServletRequest;
+import javax.servlet.sip.SipServletResponse;
+import javax.servlet.sip.SipURI;
+import javax.servlet.sip.URI;
+
+/**
+ * The application driven by the benchmarks. What it does with an initial request depends on the user part of its Request-URI :
+ * <ul>
+ * <li>uas : answers 200 OK</li>
+ * <li>proxy : proxies the request in parallel to the callee1 and callee2 users at the remote peer</li>
+ * <li>forkN : proxies the request in parallel to the callee1 to calleeN users at the remote peer</li>
+ * <li>b2bua : forwards the request to the callee user at the remote peer as a linked B2BUA request
+ * and relays the final response back</li>
+ * </ul>
+ * Subsequent requests reaching the application are always answered with a 200 OK.
+ */
+public class BenchmarkServlet extends SipServlet {
+	private static final long serialVersionUID = 1L;
+
+	public static final String UAS = "uas";
+	public static final String PROXY = "proxy";
+	public static final String B2BUA = "b2bua";
+	public static final String FORK = "fork";
+
+	private final SipFactory sipFactory;
+	private final String remoteHost;
+	private final int remotePort;
+
+	/**
+	 * @param sipFactory the factory used to create the proxy and B2BUA targets
+	 * @param remoteHost the host of the peer the requests are proxied or forwarded to
+	 * @param remotePort the port of the peer the requests are proxied or forwarded to
+	 */
+	public BenchmarkServlet(SipFactory sipFactory, String remoteHost, int remotePort) {
+		this.sipFactory = sipFactory;
+		this.remoteHost = remoteHost;
+		this.remotePort = remotePort;
+	}
+
+	@Override
+	protected void doRequest(SipServletRequest request) throws ServletException, IOException {
+		if(request.getMethod().equals("ACK")) {
+			return;
+		}
+		if(!request.isInitial()) {
+			request.createResponse(SipServletResponse.SC_OK).send();
+			return;
+		}
+		final String user = ((SipURI) request.getRequestURI()).getUser();
+		if(PROXY.equals(user)) {
+			final Proxy proxy = request.getProxy();
+			proxy.setParallel(true);
+			proxy.setRecordRoute(false);
+			proxy.setSupervised(false);
+			final List<URI> targets = new ArrayList<URI>(2);
+			targets.add(createRemoteURI("callee1"));
+			targets.add(createRemoteURI("callee2"));
+			proxy.proxyTo(targets);
+		} else if(user.startsWith(FORK)) {
+			final int branches = Integer.parseInt(user.substring(FORK.length()));
+			final Proxy proxy = request.getProxy();
+			proxy.setParallel(true);
+			proxy.setRecordRoute(false);
+			proxy.setSupervised(false);
+			final List<URI> targets = new ArrayList<URI>(branches);
+			for (int i = 1; i <= branches; i++) {
+				targets.add(createRemoteURI("callee" + i));
+			}
+			proxy.proxyTo(targets);
+		} else if(B2BUA.equals(user)) {
+			final B2buaHelper b2buaHelper = request.getB2buaHelper();
+			final SipServletRequest forkedRequest = b2buaHelper.createRequest(request, true, null);
+			forkedRequest.setRequestURI(createRemoteURI("callee"));
+			forkedRequest.send();
+		} else {
+			request.createResponse(SipServletResponse.SC_OK).send();
+		}
+	}
+
+	@Override
+	protected void doResponse(SipServletResponse response) throws ServletException, IOException {
+		if(response.getStatus() < SipServletResponse.SC_OK) {
+			return;
+		}
+		final SipServletRequest request = response.getRequest();
+		final B2buaHelper b2buaHelper = request.getB2buaHelper();
+		final SipServletRequest linkedRequest = b2buaHelper.getLinkedSipServletRequest(request);
+		if(linkedRequest != null && !linkedRequest.isCommitted()) {
+			linkedRequest.createResponse(response.getStatus()).send();
+		}
+	}
+
+	private SipURI createRemoteURI(String user) {
+		final SipURI uri = sipFactory.createSipURI(user, remoteHost);
+		uri.setPort(remotePort);
+		return uri;
+	}
+}
@@ -0,0 +1,485 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.servlet.sip.benchmarks;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.servlet.Servlet;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.sip.SipFactory;
+import javax.servlet.sip.SipServlet;
+import javax.servlet.sip.SipServletRequest;
+import javax.servlet.sip.TimerService;
+
+import org.mobicents.servlet.sip.annotation.ConcurrencyControlMode;
+import org.mobicents.servlet.sip.core.MobicentsSipServlet;
+import org.mobicents.servlet.sip.core.SipApplicationDispatcher;
+import org.mobicents.servlet.sip.core.SipContext;
+import org.mobicents.servlet.sip.core.SipContextEvent;
+import org.mobicents.servlet.sip.core.SipContextEventType;
+import org.mobicents.servlet.sip.core.SipListeners;
+import org.mobicents.servlet.sip.core.SipManager;
+import org.mobicents.servlet.sip.core.descriptor.MobicentsSipServletMapping;
+import org.mobicents.servlet.sip.core.message.MobicentsSipServletRequest;
+import org.mobicents.servlet.sip.core.message.MobicentsSipServletResponse;
+import org.mobicents.servlet.sip.core.security.MobicentsSipLoginConfig;
+import org.mobicents.servlet.sip.core.security.SipDigestAuthenticator;
+import org.mobicents.servlet.sip.core.session.MobicentsSipApplicationSession;
+import org.mobicents.servlet.sip.core.session.MobicentsSipSession;
+import org.mobicents.servlet.sip.core.session.MobicentsSipSessionsUtil;
+import org.mobicents.servlet.sip.core.session.SipListenersHolder;
+import org.mobicents.servlet.sip.core.session.SipSessionsUtilImpl;
+import org.mobicents.servlet.sip.core.timers.ProxyTimerService;
+import org.mobicents.servlet.sip.core.timers.ProxyTimerServiceImpl;
+import org.mobicents.servlet.sip.core.timers.SipApplicationSessionTimerService;
+import org.mobicents.servlet.sip.core.timers.SipServletTimerService;
+import org.mobicents.servlet.sip.core.timers.StandardSipApplicationSessionTimerService;
+import org.mobicents.servlet.sip.core.timers.TimerServiceImpl;
+import org.mobicents.servlet.sip.message.SipFactoryFacade;
+import org.mobicents.servlet.sip.message.SipFactoryImpl;
+import org.mobicents.servlet.sip.ruby.SipRubyController;
+
+/**
+ * {@link SipContext} of the single application deployed in the benchmarks. It plays the part of the
+ * SipStandardContext of the containers with only what the dispatching of SIP messages needs : one main servlet,
+ * an in memory {@link SipManager}, no listeners, no security and no concurrency control.
+ */
+public class BenchmarkSipContext implements SipContext {
+
+	private static final int SIP_APPLICATION_SESSION_TIMEOUT = 3;
+
+	private String applicationName;
+	private String description;
+	private String largeIcon;
+	private String smallIcon;
+	private String mainServlet;
+	private int proxyTimeout = 180;
+	private int sipApplicationSessionTimeout = SIP_APPLICATION_SESSION_TIMEOUT;
+	private ConcurrencyControlMode concurrencyControlMode = ConcurrencyControlMode.None;
+
+	private final SipApplicationDispatcher sipApplicationDispatcher;
+	private final BenchmarkSipManager sipManager;
+	private SipListeners sipListeners;
+	private final ServletContext servletContext;
+	private final Map<String, MobicentsSipServlet> childrenMap = new ConcurrentHashMap<String, MobicentsSipServlet>();
+
+	private final SipFactory sipFactoryFacade;
+	private final MobicentsSipSessionsUtil sipSessionsUtil;
+	private final SipServletTimerService timerService;
+	private final ProxyTimerService proxyTimerService;
+	private final SipApplicationSessionTimerService sasTimerService;
+
+	public BenchmarkSipContext(String applicationName, SipApplicationDispatcher sipApplicationDispatcher) {
+		this.applicationName = applicationName;
+		this.sipApplicationDispatcher = sipApplicationDispatcher;
+		this.servletContext = (ServletContext) java.lang.reflect.Proxy.newProxyInstance(
+				getClass().getClassLoader(), new Class[] {ServletContext.class}, new AttributesServletContext());
+		this.sipListeners = new BenchmarkSipListenersHolder(this);
+		this.sipManager = new BenchmarkSipManager();
+		sipManager.setMobicentsSipFactory(sipApplicationDispatcher.getSipFactory());
+		sipManager.setContainer(this);
+		this.sipFactoryFacade = new SipFactoryFacade((SipFactoryImpl) sipApplicationDispatcher.getSipFactory(), this);
+		this.sipSessionsUtil = new SipSessionsUtilImpl(this);
+		this.timerService = new TimerServiceImpl(sipApplicationDispatcher.getSipService(), applicationName);
+		this.proxyTimerService = new ProxyTimerServiceImpl(applicationName);
+		this.sasTimerService = new StandardSipApplicationSessionTimerService(applicationName);
+	}
+
+	/**
+	 * Deploy the servlet as the main servlet of the application
+	 */
+	public void setServlet(String servletName, SipServlet servlet) {
+		childrenMap.put(servletName, new BenchmarkSipServletWrapper(servletName, servlet));
+		mainServlet = servletName;
+	}
+
+	public String getApplicationName() {
+		return applicationName;
+	}
+
+	public String getApplicationNameHashed() {
+		return sipApplicationDispatcher.getHashFromApplicationName(applicationName);
+	}
+
+	public boolean hasDistributableManager() {
+		return false;
+	}
+
+	public void setApplicationName(String applicationName) {
+		this.applicationName = applicationName;
+	}
+
+	public String getDescription() {
+		return description;
+	}
+
+	public void setDescription(String description) {
+		this.description = description;
+	}
+
+	public String getLargeIcon() {
+		return largeIcon;
+	}
+
+	public void setLargeIcon(String largeIcon) {
+		this.largeIcon = largeIcon;
+	}
+
+	public SipListeners getListeners() {
+		return sipListeners;
+	}
+
+	public void setListeners(SipListeners listeners) {
+		this.sipListeners = listeners;
+	}
+
+	public boolean isMainServlet() {
+		return mainServlet != null;
+	}
+
+	public String getMainServlet() {
+		return mainServlet;
+	}
+
+	public void setMainServlet(String mainServlet) {
+		this.mainServlet = mainServlet;
+	}
+
+	public void setServletHandler(String servletHandler) {
+		this.mainServlet = servletHandler;
+	}
+
+	public String getServletHandler() {
+		return mainServlet;
+	}
+
+	public int getProxyTimeout() {
+		return proxyTimeout;
+	}
+
+	public void setProxyTimeout(int proxyTimeout) {
+		this.proxyTimeout = proxyTimeout;
+	}
+
+	public int getSipApplicationSessionTimeout() {
+		return sipApplicationSessionTimeout;
+	}
+
+	public void setSipApplicationSessionTimeout(int sipApplicationSessionTimeout) {
+		this.sipApplicationSessionTimeout = sipApplicationSessionTimeout;
+	}
+
+	public String getSmallIcon() {
+		return smallIcon;
+	}
+
+	public void setSmallIcon(String smallIcon) {
+		this.smallIcon = smallIcon;
+	}
+
+	public void addSipApplicationListener(String listener) {
+	}
+
+	public void removeSipApplicationListener(String listener) {
+	}
+
+	public String[] findSipApplicationListeners() {
+		return new String[0];
+	}
+
+	public Method getSipApplicationKeyMethod() {
+		return null;
+	}
+
+	public void setSipApplicationKeyMethod(Method sipApplicationKeyMethod) {
+	}
+
+	public void setSipLoginConfig(MobicentsSipLoginConfig config) {
+	}
+
+	public MobicentsSipLoginConfig getSipLoginConfig() {
+		return null;
+	}
+
+	public void addSipServletMapping(MobicentsSipServletMapping sipServletMapping) {
+	}
+
+	public void removeSipServletMapping(MobicentsSipServletMapping sipServletMapping) {
+	}
+
+	public List<MobicentsSipServletMapping> findSipServletMappings() {
+		return Collections.emptyList();
+	}
+
+	public MobicentsSipServletMapping findSipServletMappings(SipServletRequest sipServletRequest) {
+		return null;
+	}
+
+	public SipManager getSipManager() {
+		return sipManager;
+	}
+
+	public SipApplicationDispatcher getSipApplicationDispatcher() {
+		return sipApplicationDispatcher;
+	}
+
+	public String getEngineName() {
+		return "benchmarks";
+	}
+
+	public boolean notifySipContextListeners(SipContextEvent event) {
+		if(event.getEventType() == SipContextEventType.SERVLET_INITIALIZED) {
+			if(!timerService.isStarted()) {
+				timerService.start();
+			}
+			if(!proxyTimerService.isStarted()) {
+				proxyTimerService.start();
+			}
+			if(!sasTimerService.isStarted()) {
+				sasTimerService.start();
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Stop the timer services started when the application was initialized
+	 */
+	public void stop() {
+		timerService.stop();
+		proxyTimerService.stop();
+		sasTimerService.stop();
+		sipManager.removeAllSessions();
+	}
+
+	public void enterSipApp(MobicentsSipApplicationSession sipApplicationSession, MobicentsSipSession sipSession, boolean checkIsManagedThread, boolean isContainerManaged) {
+		// no concurrency control
+	}
+
+	public boolean tryEnterSipApp(MobicentsSipApplicationSession sipApplicationSession, MobicentsSipSession sipSession, boolean checkIsManagedThread, boolean isContainerManaged) {
+		// no concurrency control
+		return true;
+	}
+
+	public void exitSipApp(MobicentsSipApplicationSession sipApplicationSession, MobicentsSipSession sipSession) {
+		// no concurrency control
+	}
+
+	public boolean enterSipAppHa(boolean startCacheActivity) {
+		return false;
+	}
+
+	public void exitSipAppHa(MobicentsSipServletRequest request, MobicentsSipServletResponse response, boolean batchStarted) {
+	}
+
+	public SipFactory getSipFactoryFacade() {
+		return sipFactoryFacade;
+	}
+
+	public MobicentsSipSessionsUtil getSipSessionsUtil() {
+		return sipSessionsUtil;
+	}
+
+	public TimerService getTimerService() {
+		return timerService;
+	}
+
+	public ProxyTimerService getProxyTimerService() {
+		return proxyTimerService;
+	}
+
+	public SipApplicationSessionTimerService getSipApplicationSessionTimerService() {
+		return sasTimerService;
+	}
+
+	public void setConcurrencyControlMode(ConcurrencyControlMode mode) {
+		this.concurrencyControlMode = mode;
+	}
+
+	public ConcurrencyControlMode getConcurrencyControlMode() {
+		return concurrencyControlMode;
+	}
+
+	public void setSipRubyController(SipRubyController rubyController) {
+	}
+
+	public SipRubyController getSipRubyController() {
+		return null;
+	}
+
+	public ServletContext getServletContext() {
+		return servletContext;
+	}
+
+	public String getPath() {
+		return "/" + applicationName;
+	}
+
+	public MobicentsSipServlet findSipServletByClassName(String canonicalName) {
+		for (MobicentsSipServlet sipServlet : childrenMap.values()) {
+			if(((BenchmarkSipServletWrapper) sipServlet).servlet.getClass().getCanonicalName().equals(canonicalName)) {
+				return sipServlet;
+			}
+		}
+		return null;
+	}
+
+	public MobicentsSipServlet findSipServletByName(String name) {
+		if(name == null) {
+			return null;
+		}
+		return childrenMap.get(name);
+	}
+
+	public ClassLoader getSipContextClassLoader() {
+		return getClass().getClassLoader();
+	}
+
+	public Map<String, MobicentsSipServlet> getChildrenMap() {
+		return childrenMap;
+	}
+
+	public boolean isPackageProtectionEnabled() {
+		return false;
+	}
+
+	public boolean authorize(MobicentsSipServletRequest request) {
+		return true;
+	}
+
+	public SipDigestAuthenticator getDigestAuthenticator() {
+		return null;
+	}
+
+	public void enterSipContext() {
+		Thread.currentThread().setContextClassLoader(getSipContextClassLoader());
+	}
+
+	public void exitSipContext(ClassLoader oldClassLoader) {
+		Thread.currentThread().setContextClassLoader(oldClassLoader);
+	}
+
+	public void stopGracefully(long timeToWait) {
+		stop();
+	}
+
+	public boolean isStoppingGracefully() {
+		return false;
+	}
+
+	/**
+	 * The servlet of the benchmarks is stateless so the same instance serves all the messages
+	 */
+	private static class BenchmarkSipServletWrapper implements MobicentsSipServlet {
+		private final String name;
+		private final Servlet servlet;
+
+		BenchmarkSipServletWrapper(String name, Servlet servlet) {
+			this.name = name;
+			this.servlet = servlet;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public int getLoadOnStartup() {
+			return 1;
+		}
+
+		public Servlet allocate() throws ServletException {
+			return servlet;
+		}
+
+		public void deallocate(Servlet servlet) throws ServletException {
+		}
+
+		public boolean isUnavailable() {
+			return false;
+		}
+	}
+
+	/**
+	 * The application doesn't declare any listener
+	 */
+	private static class BenchmarkSipListenersHolder extends SipListenersHolder {
+		BenchmarkSipListenersHolder(SipContext sipContext) {
+			super(sipContext);
+		}
+
+		@Override
+		public boolean loadListeners(String[] listeners, ClassLoader classLoader) {
+			return true;
+		}
+	}
+
+	/**
+	 * The container only stores attributes in the servlet context while dispatching, every other method is a no-op
+	 */
+	private static class AttributesServletContext implements InvocationHandler {
+		private final Map<String, Object> attributes = new ConcurrentHashMap<String, Object>();
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			final String name = method.getName();
+			if(name.equals("getAttribute")) {
+				return attributes.get((String) args[0]);
+			}
+			if(name.equals("setAttribute")) {
+				if(args[1] == null) {
+					attributes.remove((String) args[0]);
+				} else {
+					attributes.put((String) args[0], args[1]);
+				}
+				return null;
+			}
+			if(name.equals("removeAttribute")) {
+				attributes.remove((String) args[0]);
+				return null;
+			}
+			if(name.equals("getAttributeNames")) {
+				return Collections.enumeration(attributes.keySet());
+			}
+			if(name.equals("hashCode")) {
+				return System.identityHashCode(proxy);
+			}
+			if(name.equals("equals")) {
+				return proxy == args[0];
+			}
+			if(name.equals("toString")) {
+				return "BenchmarkServletContext";
+			}
+			final Class<?> returnType = method.getReturnType();
+			if(returnType == boolean.class) {
+				return Boolean.FALSE;
+			}
+			if(returnType == int.class) {
+				return Integer.valueOf(0);
+			}
+			return null;
+		}
+	}
+}
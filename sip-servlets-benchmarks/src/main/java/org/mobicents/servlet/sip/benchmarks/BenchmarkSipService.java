@@ -0,0 +1,148 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.servlet.sip.benchmarks;
+
+import javax.sip.SipStack;
+
+import org.mobicents.ha.javax.sip.ReplicationStrategy;
+import org.mobicents.servlet.sip.SipConnector;
+import org.mobicents.servlet.sip.core.SipApplicationDispatcher;
+import org.mobicents.servlet.sip.core.SipService;
+import org.mobicents.servlet.sip.core.message.OutboundProxy;
+
+/**
+ * Minimal {@link SipService} standing in for the container service (SipStandardService in Tomcat or JBoss)
+ * so that the {@link SipApplicationDispatcher} can run without any container.
+ */
+public class BenchmarkSipService implements SipService {
+
+	private SipApplicationDispatcher sipApplicationDispatcher;
+	private SipStack sipStack;
+	private SipConnector sipConnector;
+	private String mobicentsSipServletMessageFactoryClassName = BenchmarkSipServletMessageFactory.class.getName();
+
+	public SipApplicationDispatcher getSipApplicationDispatcher() {
+		return sipApplicationDispatcher;
+	}
+
+	public void setSipApplicationDispatcher(SipApplicationDispatcher sipApplicationDispatcher) {
+		this.sipApplicationDispatcher = sipApplicationDispatcher;
+	}
+
+	public SipStack getSipStack() {
+		return sipStack;
+	}
+
+	public void setSipStack(SipStack sipStack) {
+		this.sipStack = sipStack;
+	}
+
+	public void setSipConnector(SipConnector sipConnector) {
+		this.sipConnector = sipConnector;
+	}
+
+	public SipConnector findSipConnector(String outboundTransport) {
+		if(sipConnector != null && sipConnector.getTransport().equalsIgnoreCase(outboundTransport)) {
+			return sipConnector;
+		}
+		return null;
+	}
+
+	public SipConnector[] findSipConnectors() {
+		if(sipConnector == null) {
+			return new SipConnector[0];
+		}
+		return new SipConnector[] {sipConnector};
+	}
+
+	public boolean isHttpFollowsSip() {
+		return false;
+	}
+
+	public String getJvmRoute() {
+		return null;
+	}
+
+	public OutboundProxy getOutboundProxy() {
+		return null;
+	}
+
+	public int getDispatcherThreadPoolSize() {
+		return 4;
+	}
+
+	public int getCanceledTimerTasksPurgePeriod() {
+		return 0;
+	}
+
+	public boolean isDialogPendingRequestChecking() {
+		return false;
+	}
+
+	public boolean isMd5ContactUserPart() {
+		return false;
+	}
+
+	public ReplicationStrategy getReplicationStrategy() {
+		return ReplicationStrategy.ConfirmedDialog;
+	}
+
+	public int getTagHashMaxLength() {
+		return 0;
+	}
+
+	public int getCallIdMaxLength() {
+		return 0;
+	}
+
+	public String getDnsResolverClass() {
+		return null;
+	}
+
+	public int getDnsTimeout() {
+		return 1;
+	}
+
+	public boolean isAsynchronousDnsResolution() {
+		return false;
+	}
+
+	public String getMobicentsSipServletMessageFactoryClassName() {
+		return mobicentsSipServletMessageFactoryClassName;
+	}
+
+	public void setMobicentsSipServletMessageFactoryClassName(String mobicentsSipServletMessageFactoryClassName) {
+		this.mobicentsSipServletMessageFactoryClassName = mobicentsSipServletMessageFactoryClassName;
+	}
+
+	public void stopGracefully(long timeToWait) {
+		if(sipApplicationDispatcher != null) {
+			sipApplicationDispatcher.stop();
+		}
+	}
+
+	public String getProxyTimerServiceImplementationType() {
+		return "Standard";
+	}
+
+	public String getSasTimerServiceImplementationType() {
+		return "Standard";
+	}
+}
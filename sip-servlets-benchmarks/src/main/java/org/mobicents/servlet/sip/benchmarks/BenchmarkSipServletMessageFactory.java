@@ -0,0 +1,70 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.servlet.sip.benchmarks;
+
+import javax.sip.Dialog;
+import javax.sip.Transaction;
+import javax.sip.message.Request;
+import javax.sip.message.Response;
+
+import org.mobicents.servlet.sip.core.MobicentsSipFactory;
+import org.mobicents.servlet.sip.core.MobicentsSipServletMessageFactory;
+import org.mobicents.servlet.sip.core.message.MobicentsSipServletRequest;
+import org.mobicents.servlet.sip.core.message.MobicentsSipServletResponse;
+import org.mobicents.servlet.sip.core.session.MobicentsSipSession;
+import org.mobicents.servlet.sip.message.SipFactoryImpl;
+
+/**
+ * Creates the benchmark flavour of the SIP Servlet messages, the ones from the containers
+ * can't be used here since they bring the container classes with them.
+ * It is instantiated by the {@link SipFactoryImpl} from {@link BenchmarkSipService#getMobicentsSipServletMessageFactoryClassName()}.
+ */
+public class BenchmarkSipServletMessageFactory implements MobicentsSipServletMessageFactory {
+
+	private SipFactoryImpl sipFactoryImpl;
+
+	@Override
+	public MobicentsSipServletRequest createSipServletRequest(Request request,
+			MobicentsSipSession sipSession, Transaction transaction,
+			Dialog dialog, boolean createDialog) {
+		return new BenchmarkSipServletRequest(request,
+				sipFactoryImpl, sipSession, transaction,
+				dialog, createDialog);
+	}
+
+	@Override
+	public MobicentsSipServletResponse createSipServletResponse(
+			Response response, Transaction transaction,
+			MobicentsSipSession session, Dialog dialog,
+			boolean hasBeenReceived, boolean isRetransmission) {
+		return new BenchmarkSipServletResponse(response,
+				sipFactoryImpl, transaction, session, dialog,
+				hasBeenReceived, isRetransmission);
+	}
+
+	public void setMobicentsSipFactory(MobicentsSipFactory mobicentsSipFactory) {
+		this.sipFactoryImpl = (SipFactoryImpl) mobicentsSipFactory;
+	}
+
+	public MobicentsSipFactory getMobicentsSipFactory() {
+		return sipFactoryImpl;
+	}
+}
@@ -0,0 +1,52 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.servlet.sip.benchmarks;
+
+import javax.sip.Dialog;
+import javax.sip.Transaction;
+import javax.sip.message.Response;
+
+import org.mobicents.servlet.sip.core.message.MobicentsSipServletResponse;
+import org.mobicents.servlet.sip.core.session.MobicentsSipSession;
+import org.mobicents.servlet.sip.message.SipFactoryImpl;
+import org.mobicents.servlet.sip.message.SipServletResponseImpl;
+
+/**
+ * Sip Servlet response compiled against the servlet 3.1 API the benchmarks run with.
+ */
+public class BenchmarkSipServletResponse extends SipServletResponseImpl implements MobicentsSipServletResponse {
+
+	public BenchmarkSipServletResponse() {
+	}
+
+	public BenchmarkSipServletResponse(Response response,
+			SipFactoryImpl sipFactoryImpl, Transaction transaction,
+			MobicentsSipSession session, Dialog dialog,
+			boolean hasBeenReceived, boolean isRetransmission) {
+		super(response, sipFactoryImpl, transaction, session, dialog,
+				hasBeenReceived, isRetransmission);
+	}
+
+	@Override
+	public void setContentLengthLong(long len) {
+		setContentLength((int) len);
+	}
+}
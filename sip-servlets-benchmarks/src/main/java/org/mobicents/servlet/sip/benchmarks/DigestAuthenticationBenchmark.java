@@ -0,0 +1,124 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.servlet.sip.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.mobicents.servlet.sip.security.DigestAlgorithm;
+import org.mobicents.servlet.sip.security.Ha1Cache;
+import org.mobicents.servlet.sip.security.StatelessNonceManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of the digest authentication of a request : issuing a challenge and checking the credentials of a user whose
+ * H(A1) is cached. The nonce manager and the cache are shared by all the benchmark threads, as they are by the threads
+ * of the container, so running it with -t 1 and then with -t set to the number of cores shows how it scales.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DigestAuthenticationBenchmark {
+	private static final String REALM = "sip-servlets-realm";
+	private static final String USERS_PREFIX = "user";
+	private static final String CLIENT_ADDRESS = "127.0.0.1";
+	private static final String METHOD = "REGISTER";
+	private static final String URI = "sip:127.0.0.1";
+	private static final String QOP = "auth";
+	private static final String NC = "00000001";
+	private static final String CNONCE = "0a4f113b";
+	private static final int USERS = 1024;
+
+	@Param({"MD5", "SHA-256"})
+	private String algorithmName;
+
+	private DigestAlgorithm algorithm;
+	private StatelessNonceManager nonceManager;
+	private Ha1Cache ha1Cache;
+	private String nonce;
+	private String[] responses;
+
+	@Setup
+	public void setup() {
+		algorithm = DigestAlgorithm.fromName(algorithmName);
+		nonceManager = new StatelessNonceManager(TimeUnit.HOURS.toMillis(1));
+		ha1Cache = new Ha1Cache(USERS, TimeUnit.HOURS.toMillis(1));
+		nonce = nonceManager.generateNonce(CLIENT_ADDRESS);
+		responses = new String[USERS];
+		final String ha2 = algorithm.digestA2(METHOD, URI, QOP, null);
+		for (int i = 0; i < USERS; i++) {
+			final String ha1 = algorithm.digestA1(USERS_PREFIX + i, REALM, "password" + i);
+			ha1Cache.put(REALM, USERS_PREFIX + i, algorithm, ha1, null);
+			responses[i] = algorithm.digestResponse(ha1, nonce, NC, CNONCE, QOP, ha2);
+		}
+	}
+
+	/**
+	 * Per thread index of the user authenticated next, so that the threads spread over the cache
+	 */
+	@State(Scope.Thread)
+	public static class UserIndex {
+		private int next;
+
+		int next() {
+			next = (next + 1) & (USERS - 1);
+			return next;
+		}
+	}
+
+	/**
+	 * Generating the nonce and the opaque value of a challenge
+	 */
+	@Benchmark
+	public String challenge() {
+		final String challengeNonce = nonceManager.generateNonce(CLIENT_ADDRESS);
+		return DigestAlgorithm.MD5.digestHex(challengeNonce);
+	}
+
+	/**
+	 * Validating the nonce and the response of the credentials of a user whose H(A1) is cached
+	 */
+	@Benchmark
+	public boolean verifyCredentials(UserIndex userIndex) {
+		final int user = userIndex.next();
+		if(nonceManager.validateNonce(nonce, CLIENT_ADDRESS) != StatelessNonceManager.Validity.VALID) {
+			return false;
+		}
+		final Ha1Cache.Entry entry = ha1Cache.get(REALM, USERS_PREFIX + user, algorithm);
+		if(entry == null) {
+			return false;
+		}
+		final String ha2 = algorithm.digestA2(METHOD, URI, QOP, null);
+		return DigestAlgorithm.isEqual(algorithm.digestResponse(entry.getHa1(), nonce, NC, CNONCE, QOP, ha2), responses[user]);
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.servlet.sip.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.mobicents.servlet.sip.core.SipManager;
+import org.mobicents.servlet.sip.core.session.MobicentsSipApplicationSession;
+import org.mobicents.servlet.sip.core.session.MobicentsSipSession;
+import org.mobicents.servlet.sip.core.session.SipApplicationSessionKey;
+import org.mobicents.servlet.sip.core.session.SipSessionKey;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Heap taken by the idle sessions of long lived registrations and subscriptions : each operation creates a 
+ * sip application session and a sip session holding a couple of attributes through the SipManagerDelegate, 
+ * so the gc.alloc.rate.norm figure is an upper bound of the heap an idle session keeps.
+ * The oldest sessions are removed from the manager as new ones are created to keep the heap stable.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IdleSessionBenchmark {
+
+	private static final int LIVE_SESSIONS = 10000;
+
+	private SipContainerHarness harness;
+	private SipManager sipManager;
+	private final SipSessionKey[] sipSessionKeys = new SipSessionKey[LIVE_SESSIONS];
+	private final SipApplicationSessionKey[] sipApplicationSessionKeys = new SipApplicationSessionKey[LIVE_SESSIONS];
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		harness = new SipContainerHarness();
+		harness.start();
+		// registrations are expired by the application, no container timer per session
+		harness.getSipContext().setSipApplicationSessionTimeout(0);
+		sipManager = harness.getSipContext().getSipManager();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		harness.stop();
+	}
+
+	/**
+	 * Idle session of a REGISTER or SUBSCRIBE dialog with the two attributes a registrar typically keeps
+	 */
+	@Benchmark
+	public MobicentsSipSession createIdleSession() {
+		final int slot = next;
+		next = (slot + 1) % LIVE_SESSIONS;
+		if(sipSessionKeys[slot] != null) {
+			sipManager.removeSipSession(sipSessionKeys[slot]);
+			sipManager.removeSipApplicationSession(sipApplicationSessionKeys[slot]);
+		}
+		final String callId = harness.newCallId();
+		final SipApplicationSessionKey sipApplicationSessionKey = new SipApplicationSessionKey(callId, SipContainerHarness.APPLICATION_NAME, null);
+		final MobicentsSipApplicationSession sipApplicationSession = sipManager.getSipApplicationSession(sipApplicationSessionKey, true);
+		final SipSessionKey sipSessionKey = new SipSessionKey("caller", "callee", callId, sipApplicationSessionKey.getId(), SipContainerHarness.APPLICATION_NAME);
+		final MobicentsSipSession sipSession = sipManager.getSipSession(sipSessionKey, true, 
+				harness.getSipApplicationDispatcher().getSipFactory(), sipApplicationSession);
+		sipSession.setAttribute("contact", "sip:caller@127.0.0.1:5080;transport=udp");
+		sipSession.setAttribute("expires", 3600);
+		sipSessionKeys[slot] = sipSessionKey;
+		sipApplicationSessionKeys[slot] = sipApplicationSessionKey;
+		return sipSession;
+	}
+}
@@ -0,0 +1,91 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.servlet.sip.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.sip.message.Request;
+import javax.sip.message.Response;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Initial requests proxied in parallel by ProxyImpl to a growing number of targets, all of them answering 404 :
+ * shows how the cost of building and sending the branch requests (ProxyBranchTemplate, ProxyUtils) 
+ * and of collecting the branch responses grows with the fan-out of the proxy.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParallelForkBenchmark {
+
+	@Param({"1", "10", "100", "500"})
+	private int branches;
+
+	private SipContainerHarness harness;
+	private Request[] branchRequests;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		harness = new SipContainerHarness();
+		harness.start();
+		branchRequests = new Request[branches];
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		harness.stop();
+	}
+
+	/**
+	 * MESSAGE forked to the given number of targets
+	 */
+	@Benchmark
+	public int parallelFork() throws Exception {
+		final Request request = harness.createRequest(Request.MESSAGE, null, BenchmarkServlet.FORK + branches, harness.newCallId(), "caller", null, 1);
+		harness.injectRequest(request);
+		for (int i = 0; i < branches; i++) {
+			branchRequests[i] = harness.receiveRequest(Request.MESSAGE);
+		}
+		for (int i = 0; i < branches; i++) {
+			if(!harness.injectResponse(harness.createResponse(Response.NOT_FOUND, branchRequests[i], "callee" + (i + 1)))) {
+				throw new IllegalStateException("no client transaction for the branch response " + i);
+			}
+			branchRequests[i] = null;
+		}
+		return harness.drainSent();
+	}
+}
@@ -0,0 +1,108 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.servlet.sip.benchmarks;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.sip.ServletParseException;
+import javax.servlet.sip.URI;
+
+import org.apache.log4j.Logger;
+import org.mobicents.servlet.sip.message.SipFactoryImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing the same record route URI and application router route again and again, with the JAIN SIP parser 
+ * and through the parse cache of the SipFactoryImpl. The tear down reports the hit rate of the cache.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParseCacheBenchmark {
+	private static final Logger logger = Logger.getLogger(ParseCacheBenchmark.class);
+
+	private static final String RECORD_ROUTE_URI = "sip:127.0.0.1:5080;transport=udp;lr;node_host=127.0.0.1;node_port=5080";
+	private static final String ROUTE = "<sip:as.example.com:5060;transport=tcp;lr>;param=value";
+
+	private SipContainerHarness harness;
+	private SipFactoryImpl sipFactory;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		harness = new SipContainerHarness();
+		harness.start();
+		sipFactory = (SipFactoryImpl) harness.getSipApplicationDispatcher().getSipFactory();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		final long hits = SipFactoryImpl.getParseCacheHitCount();
+		final long misses = SipFactoryImpl.getParseCacheMissCount();
+		if(logger.isInfoEnabled()) {
+			logger.info("parse cache hits " + hits + ", misses " + misses + ", hit rate " + (hits * 100d / Math.max(1, hits + misses)) + "%");
+		}
+		harness.stop();
+	}
+
+	@Benchmark
+	public javax.sip.address.URI parseURI() throws ParseException {
+		return SipFactoryImpl.addressFactory.createURI(RECORD_ROUTE_URI);
+	}
+
+	@Benchmark
+	public javax.sip.address.URI parseURICached() throws ParseException {
+		return SipFactoryImpl.parseURI(RECORD_ROUTE_URI);
+	}
+
+	@Benchmark
+	public javax.sip.address.Address parseAddress() throws ParseException {
+		return SipFactoryImpl.addressFactory.createAddress(ROUTE);
+	}
+
+	@Benchmark
+	public javax.sip.address.Address parseAddressCached() throws ParseException {
+		return SipFactoryImpl.parseAddress(ROUTE);
+	}
+
+	/**
+	 * What the applications call, wrapping the cached URI
+	 */
+	@Benchmark
+	public URI createURI() throws ServletParseException {
+		return sipFactory.createURI(RECORD_ROUTE_URI);
+	}
+}
@@ -0,0 +1,82 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.servlet.sip.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.sip.message.Request;
+import javax.sip.message.Response;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Initial requests proxied in parallel by ProxyImpl to two targets, one of them answering 200 OK and the other 404 :
+ * creation of the proxy branches, forwarding of the requests, best response selection and forwarding of the responses
+ * through the ResponseDispatcher.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProxyBenchmark {
+
+	private SipContainerHarness harness;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		harness = new SipContainerHarness();
+		harness.start();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		harness.stop();
+	}
+
+	/**
+	 * MESSAGE forked to two targets
+	 */
+	@Benchmark
+	public int parallelFork() throws Exception {
+		final Request request = harness.createRequest(Request.MESSAGE, null, BenchmarkServlet.PROXY, harness.newCallId(), "caller", null, 1);
+		harness.injectRequest(request);
+		final Request firstBranch = harness.receiveRequest(Request.MESSAGE);
+		final Request secondBranch = harness.receiveRequest(Request.MESSAGE);
+		if(!harness.injectResponse(harness.createResponse(Response.OK, firstBranch, "callee1"))
+				|| !harness.injectResponse(harness.createResponse(Response.NOT_FOUND, secondBranch, "callee2"))) {
+			throw new IllegalStateException("no client transaction for the branch responses");
+		}
+		return harness.drainSent();
+	}
+}
@@ -0,0 +1,160 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.servlet.sip.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.sip.message.Request;
+
+import org.mobicents.servlet.sip.core.session.MobicentsSipSessionKey;
+import org.mobicents.servlet.sip.core.session.SipSessionKey;
+import org.mobicents.servlet.sip.message.B2buaHelperImpl;
+import org.mobicents.servlet.sip.message.SipFactoryImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Replication of the state of a request and of the sessions linked by a B2BUA through the binary codec, 
+ * written to and read back from a byte array in the same JVM without any cache. The set up checks that 
+ * the state read back matches the state written.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReplicationCodecBenchmark {
+
+	private static final int LINKED_SESSIONS = 4;
+
+	private SipContainerHarness harness;
+	private BenchmarkSipServletRequest request;
+	private B2buaHelperImpl b2buaHelper;
+	private byte[] serializedRequest;
+	private byte[] serializedB2buaHelper;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		harness = new SipContainerHarness();
+		harness.start();
+		final String callId = harness.newCallId();
+		final Request jainSipRequest = harness.createRequest(Request.INVITE, null, BenchmarkServlet.UAS, callId, "caller", null, 1);
+		request = new BenchmarkSipServletRequest(jainSipRequest,
+				(SipFactoryImpl) harness.getSipApplicationDispatcher().getSipFactory(), null, null, null, true);
+		request.setSipSessionKey(new SipSessionKey("caller", null, callId, "5e1c0d9a-7a8b-4c2d-9e3f-0a1b2c3d4e5f", SipContainerHarness.APPLICATION_NAME));
+		request.setCurrentApplicationName(SipContainerHarness.APPLICATION_NAME);
+		request.setAttribute("org.mobicents.benchmarks.attribute", "value");
+
+		b2buaHelper = new B2buaHelperImpl();
+		final Map<MobicentsSipSessionKey, MobicentsSipSessionKey> sessionMap = b2buaHelper.getSessionMap();
+		for (int i = 0; i < LINKED_SESSIONS; i++) {
+			final SipSessionKey incoming = new SipSessionKey("caller" + i, "callee" + i, i + callId, "5e1c0d9a-7a8b-4c2d-9e3f-0a1b2c3d4e5f", SipContainerHarness.APPLICATION_NAME);
+			final SipSessionKey outgoing = new SipSessionKey("b2bua" + i, null, "b2bua" + i + callId, "5e1c0d9a-7a8b-4c2d-9e3f-0a1b2c3d4e5f", SipContainerHarness.APPLICATION_NAME);
+			sessionMap.put(incoming, outgoing);
+			sessionMap.put(outgoing, incoming);
+		}
+
+		serializedRequest = write(request);
+		final BenchmarkSipServletRequest readRequest = (BenchmarkSipServletRequest) read(serializedRequest);
+		if(!request.getMessage().toString().equals(readRequest.getMessage().toString())
+				|| !request.getSipSessionKey().equals(readRequest.getSipSessionKey())
+				|| !SipContainerHarness.APPLICATION_NAME.equals(readRequest.getCurrentApplicationName())
+				|| !"value".equals(readRequest.getAttribute("org.mobicents.benchmarks.attribute"))) {
+			throw new IllegalStateException("request read back differs from the one written");
+		}
+		serializedB2buaHelper = write(b2buaHelper);
+		final B2buaHelperImpl readB2buaHelper = (B2buaHelperImpl) read(serializedB2buaHelper);
+		if(!sessionMap.equals(readB2buaHelper.getSessionMap())) {
+			throw new IllegalStateException("linked sessions read back differ from the ones written");
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		harness.stop();
+	}
+
+	/**
+	 * Writing a request, as done for early dialog replication
+	 */
+	@Benchmark
+	public byte[] writeRequest() throws IOException {
+		return write(request);
+	}
+
+	/**
+	 * Reading a request on the node taking over the call
+	 */
+	@Benchmark
+	public Object readRequest() throws Exception {
+		return read(serializedRequest);
+	}
+
+	/**
+	 * Writing the sessions linked by a B2BUA
+	 */
+	@Benchmark
+	public byte[] writeB2buaHelper() throws IOException {
+		return write(b2buaHelper);
+	}
+
+	/**
+	 * Reading the sessions linked by a B2BUA
+	 */
+	@Benchmark
+	public Object readB2buaHelper() throws Exception {
+		return read(serializedB2buaHelper);
+	}
+
+	private static byte[] write(Object object) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(2048);
+		final ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(object);
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	private static Object read(byte[] bytes) throws IOException, ClassNotFoundException {
+		final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+		try {
+			return in.readObject();
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,126 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+
+package org.mobicents.servlet.sip.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.mobicents.servlet.sip.JainSipUtils;
+import org.mobicents.servlet.sip.core.RoutingToken;
+import org.mobicents.servlet.sip.core.SipApplicationDispatcherImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Encoding the Via branch of the requests sent by the container and decoding it from the responses, 
+ * with the routing token and with the branch layout of the previous versions. The set up checks that 
+ * both branches decode to the application and application session they were created for.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RoutingTokenBenchmark {
+
+	private static final String BRANCH_MAGIC_COOKIE = "z9hG4bK";
+
+	private SipContainerHarness harness;
+	private SipApplicationDispatcherImpl sipApplicationDispatcher;
+	private String applicationSessionId = "5e1c0d9a-7a8b-4c2d-9e3f-0a1b2c3d4e5f";
+	private String legacyBranch;
+	private String routingTokenBranch;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		harness = new SipContainerHarness();
+		harness.start();
+		sipApplicationDispatcher = harness.getSipApplicationDispatcher();
+		legacyBranch = encodeLegacyBranch();
+		routingTokenBranch = encodeRoutingToken();
+		final String[] legacy = decodeLegacy(legacyBranch);
+		final RoutingToken routingToken = RoutingToken.parseBranch(routingTokenBranch);
+		if(routingToken == null || RoutingToken.parseBranch(legacyBranch) != null
+				|| !applicationSessionId.equals(legacy[0]) || !applicationSessionId.equals(routingToken.getApplicationSessionId())
+				|| !SipContainerHarness.APPLICATION_NAME.equals(legacy[1]) 
+				|| !SipContainerHarness.APPLICATION_NAME.equals(sipApplicationDispatcher.getApplicationNameFromIndex(routingToken.getApplicationIndex()))) {
+			throw new IllegalStateException("branches " + legacyBranch + " and " + routingTokenBranch + " don't decode to the application session they were created for");
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		harness.stop();
+	}
+
+	/**
+	 * Branch of the previous versions : application session id, hash of the application name and a random UUID
+	 */
+	@Benchmark
+	public String encodeLegacyBranch() {
+		return JainSipUtils.createBranch(applicationSessionId, sipApplicationDispatcher.getHashFromApplicationName(SipContainerHarness.APPLICATION_NAME));
+	}
+
+	@Benchmark
+	public String encodeRoutingToken() {
+		return JainSipUtils.createBranch(sipApplicationDispatcher, applicationSessionId, SipContainerHarness.APPLICATION_NAME);
+	}
+
+	@Benchmark
+	public void decodeLegacyBranch(Blackhole blackhole) {
+		final String[] decoded = decodeLegacy(legacyBranch);
+		blackhole.consume(decoded[0]);
+		blackhole.consume(decoded[1]);
+	}
+
+	@Benchmark
+	public void decodeRoutingToken(Blackhole blackhole) {
+		final RoutingToken routingToken = RoutingToken.parseBranch(routingTokenBranch);
+		blackhole.consume(routingToken.getApplicationSessionId());
+		blackhole.consume(sipApplicationDispatcher.getApplicationNameFromIndex(routingToken.getApplicationIndex()));
+	}
+
+	/**
+	 * Decoding done by the ResponseDispatcher for the branches of the previous versions
+	 */
+	private String[] decodeLegacy(String branch) {
+		String strippedBranchId = branch.substring(BRANCH_MAGIC_COOKIE.length());
+		int indexOfUnderscore = strippedBranchId.indexOf("_");
+		final String appId = strippedBranchId.substring(0, indexOfUnderscore);
+		strippedBranchId = strippedBranchId.substring(indexOfUnderscore + 1);
+		indexOfUnderscore = strippedBranchId.indexOf("_");
+		final String appNameHashed = strippedBranchId.substring(0, indexOfUnderscore);
+		return new String[] {appId, sipApplicationDispatcher.getApplicationNameFromHash(appNameHashed)};
+	}
+}
@@ -0,0 +1,395 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.servlet.sip.benchmarks;
+
+import gov.nist.javax.sip.ListeningPointExt;
+import gov.nist.javax.sip.ListeningPointImpl;
+import gov.nist.javax.sip.message.MessageFactoryImpl;
+import gov.nist.javax.sip.message.SIPRequest;
+import gov.nist.javax.sip.message.SIPResponse;
+import gov.nist.javax.sip.stack.MessageChannel;
+import gov.nist.javax.sip.stack.SIPClientTransaction;
+import gov.nist.javax.sip.stack.SIPDialog;
+import gov.nist.javax.sip.stack.SIPServerTransaction;
+import gov.nist.javax.sip.stack.SIPTransaction;
+import gov.nist.javax.sip.stack.SIPTransactionStack;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sip.Dialog;
+import javax.sip.ListeningPoint;
+import javax.sip.RequestEvent;
+import javax.sip.SipProvider;
+import javax.sip.SipStack;
+import javax.sip.header.ToHeader;
+import javax.sip.message.Message;
+import javax.sip.message.Request;
+import javax.sip.message.Response;
+
+import org.apache.log4j.Logger;
+import org.mobicents.servlet.sip.SipConnector;
+import org.mobicents.servlet.sip.annotation.ConcurrencyControlMode;
+import org.mobicents.servlet.sip.core.ExtendedListeningPoint;
+import org.mobicents.servlet.sip.core.SipApplicationDispatcherImpl;
+import org.mobicents.servlet.sip.router.DefaultApplicationRouterProvider;
+import org.mobicents.servlet.sip.startup.StaticServiceHolder;
+
+/**
+ * Runs the SIP Servlets dispatching pipeline in process, without any servlet container, for the benchmarks.
+ *
+ * A {@link SipApplicationDispatcherImpl} is wired to a JAIN SIP stack listening on the loopback interface, the
+ * {@link DefaultApplicationRouterProvider} routing INVITE, MESSAGE and INFO requests to a single {@link BenchmarkServlet}.
+ * The remote peer is a plain UDP socket : requests are handed to {@link SipApplicationDispatcherImpl#processRequest(RequestEvent)}
+ * directly, the way the stack does once it has parsed them and created their server transaction, while what the container
+ * sends lands on the peer socket where it can be read back to build the responses of the proxy and B2BUA legs.
+ * Responses are given to the client transaction they belong to, which updates its state and hands them to
+ * {@link SipApplicationDispatcherImpl#processResponse(javax.sip.ResponseEvent)} in the calling thread since the listener is reentrant.
+ *
+ * Everything runs in the thread calling the harness : the dispatcher bypasses its executors and no concurrency control is used.
+ * The harness is not thread safe.
+ */
+public class SipContainerHarness {
+	private static final Logger logger = Logger.getLogger(SipContainerHarness.class);
+
+	public static final String APPLICATION_NAME = "benchmark";
+	public static final String SERVLET_NAME = "BenchmarkServlet";
+	private static final String LOCAL_ADDRESS = "127.0.0.1";
+	private static final String TRANSPORT = ListeningPoint.UDP;
+	private static final String BRANCH_MAGIC_COOKIE = "z9hG4bK";
+	private static final Charset CHARSET = Charset.forName("UTF-8");
+	// T1 lowered so that completed transactions leave the stack quicker during a benchmark iteration
+	private static final int BASE_TIMER_INTERVAL = 100;
+	// the container sends synchronously, this only guards against a message that is never sent
+	private static final long RECEIVE_TIMEOUT = TimeUnit.SECONDS.toNanos(1);
+
+	private final AtomicLong sequence = new AtomicLong();
+
+	private SipApplicationDispatcherImpl sipApplicationDispatcher;
+	private BenchmarkSipService sipService;
+	private BenchmarkSipContext sipContext;
+	private SipStack sipStack;
+	private SipProvider sipProvider;
+	private ListeningPointExt listeningPoint;
+	private MessageFactoryImpl messageFactory;
+	// channel the server transactions use to send their responses to the peer
+	private MessageChannel peerMessageChannel;
+	private DatagramChannel peer;
+	private final ByteBuffer peerBuffer = ByteBuffer.allocateDirect(65536);
+	private int peerPort;
+	private int localPort;
+	private File darFile;
+
+	/**
+	 * Start the container, deploy the benchmark application and open the peer socket
+	 */
+	public void start() throws Exception {
+		peer = DatagramChannel.open();
+		peer.socket().setReceiveBufferSize(1024 * 1024);
+		peer.socket().bind(new InetSocketAddress(LOCAL_ADDRESS, 0));
+		peer.configureBlocking(false);
+		peerPort = peer.socket().getLocalPort();
+
+		darFile = File.createTempFile("benchmark-dar", ".properties");
+		darFile.deleteOnExit();
+		final Writer darWriter = new FileWriter(darFile);
+		try {
+			for (String method : new String[] {Request.INVITE, Request.MESSAGE, Request.INFO}) {
+				darWriter.write(method + ": (\"" + APPLICATION_NAME + "\", \"DAR:From\", \"ORIGINATING\", \"\", \"NO_ROUTE\", \"0\")\n");
+			}
+		} finally {
+			darWriter.close();
+		}
+		System.setProperty("javax.servlet.sip.ar.spi.SipApplicationRouterProvider", DefaultApplicationRouterProvider.class.getName());
+		System.setProperty("javax.servlet.sip.dar", darFile.toURI().toURL().toString());
+
+		// the sip factory created by the dispatcher looks up the message factory class from the service
+		sipService = new BenchmarkSipService();
+		StaticServiceHolder.sipStandardService = sipService;
+		sipApplicationDispatcher = new SipApplicationDispatcherImpl();
+		sipService.setSipApplicationDispatcher(sipApplicationDispatcher);
+		sipApplicationDispatcher.setSipService(sipService);
+		sipApplicationDispatcher.getSipFactory().initialize("gov.nist", false);
+		sipApplicationDispatcher.setDomain("benchmarks");
+		messageFactory = (MessageFactoryImpl) sipApplicationDispatcher.getSipFactory().getMessageFactory();
+
+		final Properties sipStackProperties = new Properties();
+		sipStackProperties.setProperty("javax.sip.STACK_NAME", "mss-benchmarks");
+		sipStackProperties.setProperty("javax.sip.AUTOMATIC_DIALOG_SUPPORT", "off");
+		sipStackProperties.setProperty("gov.nist.javax.sip.TRACE_LEVEL", "0");
+		sipStackProperties.setProperty("gov.nist.javax.sip.LOG_MESSAGE_CONTENT", "false");
+		sipStackProperties.setProperty("gov.nist.javax.sip.DELIVER_UNSOLICITED_NOTIFY", "true");
+		sipStackProperties.setProperty("gov.nist.javax.sip.THREAD_POOL_SIZE", "4");
+		sipStackProperties.setProperty("gov.nist.javax.sip.REENTRANT_LISTENER", "true");
+		sipStackProperties.setProperty("gov.nist.javax.sip.AGGRESSIVE_CLEANUP", "true");
+		sipStackProperties.setProperty("gov.nist.javax.sip.MAX_FORK_TIME_SECONDS", "0");
+		sipStackProperties.setProperty("gov.nist.javax.sip.AUTOMATIC_DIALOG_ERROR_HANDLING", "false");
+		sipStackProperties.setProperty("gov.nist.javax.sip.LOOSE_DIALOG_VALIDATION", "true");
+		sipStackProperties.setProperty("gov.nist.javax.sip.PASS_INVITE_NON_2XX_ACK_TO_LISTENER", "true");
+		sipStack = sipApplicationDispatcher.getSipFactory().getJainSipFactory().createSipStack(sipStackProperties);
+		sipService.setSipStack(sipStack);
+
+		sipApplicationDispatcher.setBaseTimerInterval(BASE_TIMER_INTERVAL);
+		sipApplicationDispatcher.setT2Interval(BASE_TIMER_INTERVAL * 8);
+		sipApplicationDispatcher.setT4Interval(BASE_TIMER_INTERVAL * 10);
+		sipApplicationDispatcher.setTimerDInterval(BASE_TIMER_INTERVAL * 64);
+		sipApplicationDispatcher.setCongestionControlCheckingInterval(0);
+		sipApplicationDispatcher.setConcurrencyControlMode(ConcurrencyControlMode.None);
+		sipApplicationDispatcher.setBypassRequestExecutor(true);
+		sipApplicationDispatcher.setBypassResponseExecutor(true);
+		sipApplicationDispatcher.setSipStack(sipStack);
+		sipApplicationDispatcher.init();
+
+		localPort = findFreePort();
+		listeningPoint = (ListeningPointExt) sipStack.createListeningPoint(LOCAL_ADDRESS, localPort, TRANSPORT);
+		sipProvider = sipStack.createSipProvider(listeningPoint);
+		final SipConnector sipConnector = new SipConnector();
+		sipConnector.setIpAddress(LOCAL_ADDRESS);
+		sipConnector.setPort(localPort);
+		sipConnector.setTransport(TRANSPORT);
+		sipService.setSipConnector(sipConnector);
+		final ExtendedListeningPoint extendedListeningPoint = new ExtendedListeningPoint(sipProvider, listeningPoint, sipConnector);
+		sipProvider.addSipListener(sipApplicationDispatcher);
+		sipApplicationDispatcher.getSipNetworkInterfaceManager().addExtendedListeningPoint(extendedListeningPoint);
+		sipApplicationDispatcher.addHostName(LOCAL_ADDRESS + ":" + localPort);
+
+		peerMessageChannel = ((ListeningPointImpl) listeningPoint).getMessageProcessor().createMessageChannel(
+				InetAddress.getByName(LOCAL_ADDRESS), peerPort);
+
+		sipContext = new BenchmarkSipContext(APPLICATION_NAME, sipApplicationDispatcher);
+		sipContext.setServlet(SERVLET_NAME, new BenchmarkServlet(sipContext.getSipFactoryFacade(), LOCAL_ADDRESS, peerPort));
+		sipApplicationDispatcher.addSipApplication(APPLICATION_NAME, sipContext);
+		sipApplicationDispatcher.start();
+		if(logger.isInfoEnabled()) {
+			logger.info("benchmark container listening on " + LOCAL_ADDRESS + ":" + localPort + ", peer on " + LOCAL_ADDRESS + ":" + peerPort);
+		}
+	}
+
+	public void stop() throws IOException {
+		if(sipApplicationDispatcher != null) {
+			sipApplicationDispatcher.stop();
+		}
+		if(sipContext != null) {
+			sipContext.stop();
+		}
+		if(peer != null) {
+			peer.close();
+		}
+		if(darFile != null) {
+			darFile.delete();
+		}
+		StaticServiceHolder.sipStandardService = null;
+	}
+
+	private static int findFreePort() throws IOException {
+		final DatagramSocket socket = new DatagramSocket(new InetSocketAddress(LOCAL_ADDRESS, 0));
+		try {
+			return socket.getLocalPort();
+		} finally {
+			socket.close();
+		}
+	}
+
+	/**
+	 * Create a request as sent by the peer
+	 * @param method the method of the request
+	 * @param requestURI the Request-URI, null for sip:user@local address
+	 * @param user the user the request is sent to, selects the behavior of the {@link BenchmarkServlet}
+	 * @param callId the Call-ID of the request
+	 * @param fromTag the tag of the From header
+	 * @param toTag the tag of the To header, null for an initial request
+	 * @param cseq the sequence number of the request
+	 */
+	public Request createRequest(String method, String requestURI, String user, String callId, String fromTag, String toTag, long cseq) throws ParseException {
+		final String localHostPort = LOCAL_ADDRESS + ":" + localPort;
+		final String peerHostPort = LOCAL_ADDRESS + ":" + peerPort;
+		final StringBuilder request = new StringBuilder(512);
+		request.append(method).append(' ').append(requestURI != null ? requestURI : "sip:" + user + "@" + localHostPort).append(" SIP/2.0\r\n");
+		request.append("Via: SIP/2.0/UDP ").append(peerHostPort).append(";branch=").append(BRANCH_MAGIC_COOKIE).append(sequence.incrementAndGet()).append("\r\n");
+		request.append("Max-Forwards: 70\r\n");
+		request.append("From: <sip:caller@").append(peerHostPort).append(">;tag=").append(fromTag).append("\r\n");
+		request.append("To: <sip:").append(user).append('@').append(localHostPort).append('>');
+		if(toTag != null) {
+			request.append(";tag=").append(toTag);
+		}
+		request.append("\r\n");
+		request.append("Call-ID: ").append(callId).append("\r\n");
+		request.append("CSeq: ").append(cseq).append(' ').append(method).append("\r\n");
+		request.append("Contact: <sip:caller@").append(peerHostPort).append(">\r\n");
+		request.append("Content-Length: 0\r\n\r\n");
+		return messageFactory.createRequest(request.toString());
+	}
+
+	/**
+	 * @return a Call-ID unique to this harness
+	 */
+	public String newCallId() {
+		return sequence.incrementAndGet() + "@" + LOCAL_ADDRESS;
+	}
+
+	/**
+	 * Hand a request received from the peer to the container, for requests other than ACK the server transaction
+	 * is created beforehand the way the stack does it for a message coming from the network
+	 */
+	public void injectRequest(Request request) throws IOException {
+		final SIPRequest sipRequest = (SIPRequest) request;
+		Dialog dialog = null;
+		if(((ToHeader) request.getHeader(ToHeader.NAME)).getTag() != null) {
+			dialog = ((SIPTransactionStack) sipStack).getDialog(sipRequest.getDialogId(true));
+		}
+		if(Request.ACK.equals(request.getMethod())) {
+			if(dialog != null) {
+				((SIPDialog) dialog).ackReceived(sipRequest.getCSeq().getSeqNumber());
+			}
+		} else {
+			final SIPServerTransaction serverTransaction = ((SIPTransactionStack) sipStack).createServerTransaction(peerMessageChannel);
+			serverTransaction.setOriginalRequest(sipRequest);
+			if(dialog != null) {
+				serverTransaction.setDialog((SIPDialog) dialog, sipRequest.getDialogId(true));
+			}
+			sipRequest.setTransaction(serverTransaction);
+		}
+		sipApplicationDispatcher.processRequest(new RequestEvent(sipProvider, null, dialog, request));
+	}
+
+	/**
+	 * Hand a response received from the peer to the client transaction it belongs to
+	 * @return false if no client transaction matches the response
+	 */
+	public boolean injectResponse(Response response) {
+		final SIPResponse sipResponse = (SIPResponse) response;
+		final SIPTransaction clientTransaction = ((SIPTransactionStack) sipStack).findTransaction(sipResponse, false);
+		if(clientTransaction == null) {
+			return false;
+		}
+		((SIPClientTransaction) clientTransaction).processResponse(sipResponse, peerMessageChannel, null);
+		return true;
+	}
+
+	/**
+	 * Create the response of the peer to a request the container sent it
+	 * @param toTag the tag the peer adds to the To header
+	 */
+	public Response createResponse(int statusCode, Request request, String toTag) throws ParseException {
+		final Response response = messageFactory.createResponse(statusCode, request);
+		((ToHeader) response.getHeader(ToHeader.NAME)).setTag(toTag);
+		return response;
+	}
+
+	/**
+	 * @return the next message the container sent to the peer, null if there is none
+	 */
+	public Message receive() throws IOException, ParseException {
+		peerBuffer.clear();
+		if(peer.receive(peerBuffer) == null) {
+			return null;
+		}
+		peerBuffer.flip();
+		final String message = CHARSET.decode(peerBuffer).toString();
+		if(message.startsWith("SIP/2.0")) {
+			return messageFactory.createResponse(message);
+		}
+		return messageFactory.createRequest(message);
+	}
+
+	/**
+	 * @return the next request with the given method the container sent to the peer, the messages before it are discarded
+	 * @throws IllegalStateException if there is no such request
+	 */
+	public Request receiveRequest(String method) throws IOException, ParseException {
+		final long deadline = System.nanoTime() + RECEIVE_TIMEOUT;
+		do {
+			final Message message = receive();
+			if(message instanceof Request && method.equals(((Request) message).getMethod())) {
+				return (Request) message;
+			}
+			if(message == null) {
+				Thread.yield();
+			}
+		} while(System.nanoTime() - deadline < 0);
+		throw new IllegalStateException("the container didn't send any " + method);
+	}
+
+	/**
+	 * @return the next final response the container sent to the peer, the messages before it are discarded
+	 * @throws IllegalStateException if there is no final response
+	 */
+	public Response receiveFinalResponse() throws IOException, ParseException {
+		final long deadline = System.nanoTime() + RECEIVE_TIMEOUT;
+		do {
+			final Message message = receive();
+			if(message instanceof Response && ((Response) message).getStatusCode() >= Response.OK) {
+				return (Response) message;
+			}
+			if(message == null) {
+				Thread.yield();
+			}
+		} while(System.nanoTime() - deadline < 0);
+		throw new IllegalStateException("the container didn't send any final response");
+	}
+
+	/**
+	 * Discard everything the container sent to the peer so far
+	 * @return the number of datagrams discarded
+	 */
+	public int drain() throws IOException {
+		int datagrams = 0;
+		peerBuffer.clear();
+		while(peer.receive(peerBuffer) != null) {
+			datagrams++;
+			peerBuffer.clear();
+		}
+		return datagrams;
+	}
+
+	/**
+	 * Discard everything the container sent to the peer so far, without parsing it
+	 * @return the number of datagrams discarded
+	 * @throws IllegalStateException if the container didn't send anything
+	 */
+	public int drainSent() throws IOException {
+		final int datagrams = drain();
+		if(datagrams == 0) {
+			throw new IllegalStateException("the container didn't send anything");
+		}
+		return datagrams;
+	}
+
+	public SipApplicationDispatcherImpl getSipApplicationDispatcher() {
+		return sipApplicationDispatcher;
+	}
+
+	public BenchmarkSipContext getSipContext() {
+		return sipContext;
+	}
+}
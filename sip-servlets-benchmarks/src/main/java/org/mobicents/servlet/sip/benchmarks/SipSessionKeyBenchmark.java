@@ -0,0 +1,145 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.servlet.sip.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.sip.message.Request;
+
+import org.mobicents.servlet.sip.core.SipManager;
+import org.mobicents.servlet.sip.core.session.MobicentsSipApplicationSession;
+import org.mobicents.servlet.sip.core.session.MobicentsSipSession;
+import org.mobicents.servlet.sip.core.session.SessionManagerUtil;
+import org.mobicents.servlet.sip.core.session.SipApplicationSessionKey;
+import org.mobicents.servlet.sip.core.session.SipSessionKey;
+import org.mobicents.servlet.sip.message.SipFactoryImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of looking up the sip session of a message among the live sessions of the application :
+ * through the SipSessionKeyProbe of SipManagerDelegate.findSipSession, which doesn't build any key, 
+ * compared to the former lookup building a SipSessionKey for every message.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SipSessionKeyBenchmark {
+
+	private static final int LIVE_SESSIONS = 10000;
+	private static final String FROM_TAG = "98223452_7b3dbd5b";
+	private static final String TO_TAG = "17294011_6c3a8c1e";
+
+	private SipContainerHarness harness;
+	private SipManager sipManager;
+	private SipFactoryImpl sipFactory;
+	private final String[] callIds = new String[LIVE_SESSIONS];
+	private final String[] applicationSessionIds = new String[LIVE_SESSIONS];
+	private final Request[] requests = new Request[LIVE_SESSIONS];
+
+	/**
+	 * Index of the session looked up next, one per benchmark thread
+	 */
+	@State(Scope.Thread)
+	public static class Cursor {
+		private int next;
+
+		int next() {
+			final int index = next;
+			next = (index + 1) % LIVE_SESSIONS;
+			return index;
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		harness = new SipContainerHarness();
+		harness.start();
+		harness.getSipContext().setSipApplicationSessionTimeout(0);
+		sipManager = harness.getSipContext().getSipManager();
+		sipFactory = (SipFactoryImpl) harness.getSipApplicationDispatcher().getSipFactory();
+		for (int i = 0; i < LIVE_SESSIONS; i++) {
+			final String callId = harness.newCallId();
+			final SipApplicationSessionKey sipApplicationSessionKey = new SipApplicationSessionKey(callId, SipContainerHarness.APPLICATION_NAME, null);
+			final MobicentsSipApplicationSession sipApplicationSession = sipManager.getSipApplicationSession(sipApplicationSessionKey, true);
+			final SipSessionKey sipSessionKey = new SipSessionKey(FROM_TAG, TO_TAG, callId, sipApplicationSessionKey.getId(), SipContainerHarness.APPLICATION_NAME);
+			sipManager.getSipSession(sipSessionKey, true, sipFactory, sipApplicationSession);
+			callIds[i] = callId;
+			applicationSessionIds[i] = sipApplicationSessionKey.getId();
+			requests[i] = harness.createRequest("BYE", null, "callee", callId, FROM_TAG, TO_TAG, 2);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		harness.stop();
+	}
+
+	/**
+	 * Lookup from the key components, as SipManagerDelegate.findSipSession probes the sessions map
+	 */
+	@Benchmark
+	public MobicentsSipSession findSipSession(Cursor cursor) {
+		final int index = cursor.next();
+		return sipManager.findSipSession(applicationSessionIds[index], SipContainerHarness.APPLICATION_NAME, callIds[index], FROM_TAG, TO_TAG);
+	}
+
+	/**
+	 * Lookup from the headers of a subsequent request, as the SubsequentRequestDispatcher does
+	 */
+	@Benchmark
+	public MobicentsSipSession findSipSessionFromMessage(Cursor cursor) {
+		final int index = cursor.next();
+		return SessionManagerUtil.findSipSession(sipManager, applicationSessionIds[index], SipContainerHarness.APPLICATION_NAME, requests[index], false, sipFactory, null);
+	}
+
+	/**
+	 * The former lookup building a key for every message, as a baseline
+	 */
+	@Benchmark
+	public MobicentsSipSession getSipSessionFromKey(Cursor cursor) {
+		final int index = cursor.next();
+		return sipManager.getSipSession(new SipSessionKey(FROM_TAG, TO_TAG, callIds[index], applicationSessionIds[index], SipContainerHarness.APPLICATION_NAME), 
+				false, sipFactory, null);
+	}
+
+	/**
+	 * Building a key and its string form, as logging or replication does
+	 */
+	@Benchmark
+	public String keyToString(Cursor cursor) {
+		final int index = cursor.next();
+		return new SipSessionKey(FROM_TAG, TO_TAG, callIds[index], applicationSessionIds[index], SipContainerHarness.APPLICATION_NAME).toString();
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.servlet.sip.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.sip.header.ContactHeader;
+import javax.sip.header.ToHeader;
+import javax.sip.message.Request;
+import javax.sip.message.Response;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Requests within an established dialog going through the SubsequentRequestDispatcher : lookup of the sessions
+ * from the tags of the request, servlet invocation and response.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SubsequentRequestBenchmark {
+
+	private static final String FROM_TAG = "caller";
+
+	private SipContainerHarness harness;
+	private String callId;
+	private String toTag;
+	private String remoteTarget;
+	private long cseq;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		harness = new SipContainerHarness();
+		harness.start();
+
+		// establish the dialog the INFO requests are sent in
+		callId = harness.newCallId();
+		harness.injectRequest(harness.createRequest(Request.INVITE, null, BenchmarkServlet.UAS, callId, FROM_TAG, null, 1));
+		final Response response = harness.receiveFinalResponse();
+		toTag = ((ToHeader) response.getHeader(ToHeader.NAME)).getTag();
+		remoteTarget = ((ContactHeader) response.getHeader(ContactHeader.NAME)).getAddress().getURI().toString();
+		harness.injectRequest(harness.createRequest(Request.ACK, remoteTarget, BenchmarkServlet.UAS, callId, FROM_TAG, toTag, 1));
+		cseq = 1;
+		harness.drain();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		harness.stop();
+	}
+
+	/**
+	 * INFO answered with a 200 OK
+	 */
+	@Benchmark
+	public int inDialogInfo() throws Exception {
+		final Request request = harness.createRequest(Request.INFO, remoteTarget, BenchmarkServlet.UAS, callId, FROM_TAG, toTag, ++cseq);
+		harness.injectRequest(request);
+		return harness.drainSent();
+	}
+}
@@ -0,0 +1,52 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.javax.servlet.sip;
+
+import java.io.IOException;
+import java.util.EventListener;
+
+import javax.servlet.sip.SipServletMessage;
+
+/**
+ * Notified of the outcome of a message sent through {@link SipServletRequestExt#sendAsynchronously(SendListener)}
+ * or {@link SipServletResponseExt#sendAsynchronously(SendListener)}, once the message has been written to the network
+ * or the write failed.<br/>
+ * 
+ * The methods are called from a container thread writing to the destination of the message, 
+ * without the concurrency control of the sip session, so applications that need to access the session from there should
+ * go through {@link SipSessionsUtilExt#scheduleAsynchronousWork(String, SipSessionAsynchronousWork)}.
+ * They should also return quickly as the next messages to the same destination wait for them.
+ */
+public interface SendListener extends EventListener {
+	/**
+	 * The message has been handed to the transport
+	 * @param message the message sent
+	 */
+	void onSent(SipServletMessage message);
+
+	/**
+	 * The message couldn't be written to its destination. For a request, this method is called 
+	 * under the concurrency control of the sip session, once the request has been rolled back and can be sent again.
+	 * @param message the message that failed to be sent
+	 * @param exception the cause of the failure
+	 */
+	void onSendFailed(SipServletMessage message, IOException exception);
+}
@@ -82,4 +82,15 @@ public interface SipServletRequestExt extends SipServletRequest {
 	 * @return
 	 */
 	void setOrphan(boolean orphan);
+	
+	/**
+	 * Sends this request without waiting for it to be written to the network.<br/>
+	 * The headers are processed and the client transaction created on the calling thread, as {@link #send()} does, 
+	 * then the request is queued behind the other messages going to the same destination and the calling thread returns.
+	 * The outcome of the write is reported to the listener, including the IOExceptions {@link #send()} would have thrown.
+	 * 
+	 * @param sendListener notified once the request has been written or the write failed, cannot be null
+	 * @throws IllegalStateException in the same cases as {@link #send()}
+	 */
+	void sendAsynchronously(SendListener sendListener);
 }
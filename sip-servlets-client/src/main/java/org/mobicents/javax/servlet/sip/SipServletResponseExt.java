@@ -57,4 +57,15 @@ public interface SipServletResponseExt extends SipServletResponse {
 	 * @return
 	 */
 	void setOrphan(boolean orphan);
+	
+	/**
+	 * Sends this response without waiting for it to be written to the network.<br/>
+	 * The headers and the session state are processed on the calling thread, as {@link #send()} does, 
+	 * then the response is queued behind the other messages going to the same destination and the calling thread returns.
+	 * The outcome of the write is reported to the listener, including the IOExceptions {@link #send()} would have thrown.
+	 * 
+	 * @param sendListener notified once the response has been written or the write failed, cannot be null
+	 * @throws IllegalStateException in the same cases as {@link #send()}
+	 */
+	void sendAsynchronously(SendListener sendListener);
 }
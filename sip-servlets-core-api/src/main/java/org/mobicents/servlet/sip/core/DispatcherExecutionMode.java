@@ -0,0 +1,56 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.servlet.sip.core;
+
+import org.mobicents.servlet.sip.annotation.ConcurrencyControlMode;
+
+/**
+ * How the worker threads the SIP messages, session asynchronous tasks and mailboxes are dispatched to are managed
+ * <ul>
+ * <li>Pooled : a fixed pool of dispatcherThreadPoolSize threads, the tasks queue up when all threads are busy</li>
+ * <li>Elastic : a thread is started for each task until {@link #ELASTIC_MAX_THREADS} are running, idle threads
+ * are released after a while. Meant for applications blocking in their servlets (JDBC, HTTP calls, ...) 
+ * so that they don't starve the other messages, without having to size the pool.</li>
+ * <li>Sharded : dispatcherThreadPoolSize single threaded shards, each with its own queue, the SIP messages being
+ * spread over them by Call-ID so that all the messages of a dialog or transaction are processed in order by the same
+ * thread and the threads don't contend on a single queue. Asynchronous session tasks still go to a Pooled executor.
+ * A shard thread must never wait for a session locked by a message of another call queued on another shard, 
+ * so Sharded requires the Transaction, SipApplicationSessionMailbox or None concurrency control mode, 
+ * see {@link #supports(ConcurrencyControlMode)}.</li>
+ * </ul>
+ */
+public enum DispatcherExecutionMode {
+	Pooled, Elastic, Sharded;
+	
+	/**
+	 * Upper bound on the number of threads in Elastic mode, the tasks are queued beyond it
+	 */
+	public static final int ELASTIC_MAX_THREADS = 1024;
+	
+	/**
+	 * @param concurrencyControlMode the concurrency control mode of the container or of an application
+	 * @return false if the threads of this mode could block on the session locks taken in that concurrency control mode
+	 */
+	public boolean supports(ConcurrencyControlMode concurrencyControlMode) {
+		return this != Sharded || concurrencyControlMode == null
+				|| (concurrencyControlMode != ConcurrencyControlMode.SipSession && concurrencyControlMode != ConcurrencyControlMode.SipApplicationSession);
+	}
+}
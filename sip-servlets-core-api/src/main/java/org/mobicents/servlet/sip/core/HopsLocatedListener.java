@@ -1,6 +1,6 @@
 /*
  * TeleStax, Open Source Cloud Communications
- * Copyright 2011-2015, Telestax Inc and individual contributors
+ * Copyright 2011-2016, Telestax Inc and individual contributors
  * by the @authors tag.
  *
  * This program is free software: you can redistribute it and/or modify
@@ -17,26 +17,20 @@
  * along with this program.  If not, see <http://www.gnu.org/licenses/>
  */
 
-package org.mobicents.servlet.sip.undertow.rules.request;
+package org.mobicents.servlet.sip.core;
 
-import javax.servlet.sip.URI;
+import java.util.Queue;
+
+import javax.sip.address.Hop;
 
 /**
- * @author Thomas Leseney
- *
- *         This class is based on the contents of org.mobicents.servlet.sip.catalina.rules.request package from sip-servlet-as7
- *         project, re-implemented for jboss as8 (wildfly) by:
- * @author kakonyi.istvan@alerant.hu
+ * Callback notified once the RFC 3263 resolution of a uri, started through
+ * {@link SipApplicationDispatcher#locateHops(javax.sip.address.URI, HopsLocatedListener)}, completes.
  */
-public class Scheme implements Extractor {
-
-    public Scheme(String token) {
-        if (!token.equals("uri")) {
-            throw new IllegalArgumentException("Invalid expression: scheme after " + token);
-        }
-    }
-
-    public Object extract(Object input) {
-        return ((URI) input).getScheme();
-    }
+public interface HopsLocatedListener {
+	/**
+	 * @param hops the hops located for the uri, in the order they should be tried,
+	 * owned by the listener. null or empty if the uri couldn't be resolved
+	 */
+	void onHopsLocated(Queue<Hop> hops);
 }
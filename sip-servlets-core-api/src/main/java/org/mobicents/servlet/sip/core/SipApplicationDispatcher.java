@@ -27,6 +27,8 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.atomic.AtomicLong;
@@ -174,6 +176,11 @@ public interface SipApplicationDispatcher extends SipListenerExt {
 	
 	String getApplicationNameFromHash(String hash);
 	String getHashFromApplicationName(String appName);
+	/**
+	 * @return the index of the application carried in the routing token of the Via branches, -1 if it isn't deployed
+	 */
+	int getApplicationIndex(String applicationName);
+	String getApplicationNameFromIndex(int applicationIndex);
 	
 	ConcurrencyControlMode getConcurrencyControlMode();
 	String getConcurrencyControlModeByName();
@@ -182,6 +189,22 @@ public interface SipApplicationDispatcher extends SipListenerExt {
 
 	int getQueueSize();
 	void setQueueSize(int queueSize);
+	/**
+	 * @param queueDelayTarget the time in milliseconds messages can wait for a worker thread before initial requests
+	 * start being refused, 0 to disable the queueing delay based congestion control
+	 */
+	void setQueueDelayTarget(long queueDelayTarget);
+	long getQueueDelayTarget();
+	/**
+	 * @param queueDelayInterval the interval in milliseconds over which the queueing delay has to stay above the target
+	 * for the congestion level to be raised
+	 */
+	void setQueueDelayInterval(long queueDelayInterval);
+	long getQueueDelayInterval();
+	/**
+	 * @return the share of initial requests currently refused because of the queueing delay, in tenths
+	 */
+	int getQueueDelayCongestionLevel();
 	
 	void setMemoryThreshold(int memoryThreshold);
 	int getMemoryThreshold();
@@ -197,12 +220,53 @@ public interface SipApplicationDispatcher extends SipListenerExt {
 	int getNumberOfMessagesInQueue();
 	double getPercentageOfMemoryUsed();
 	
+	/**
+	 * @param destination the transport, host and port a message is written to
+	 * @return the serial executor writing the messages sent asynchronously to this destination, in the order they were sent
+	 */
+	Executor getOutboundWriteExecutor(String destination);
+	/**
+	 * Writes a message sent synchronously, behind the messages sent asynchronously to the same destination
+	 * that are still waiting to be written so that it doesn't overtake them
+	 * @param destination the transport, host and port the message is written to
+	 * @param write the transport write of the message, run on the calling thread if nothing is waiting for this destination
+	 * @return the result of the write
+	 * @throws Exception the exception thrown by the write
+	 */
+	<T> T writeInOrder(String destination, Callable<T> write) throws Exception;
+	/**
+	 * @return the number of messages sent asynchronously and waiting to be written
+	 */
+	int getOutboundWriteQueueSize();
+	/**
+	 * @return the number of terminated transactions and dialogs and of session invalidations waiting to be cleaned up
+	 */
+	int getCleanupQueueSize();
+	/**
+	 * @return the time in milliseconds the oldest item handled by the last cleanup pass spent waiting
+	 */
+	long getCleanupDrainLatency();
+	/**
+	 * @return the highest time in milliseconds a cleanup item spent waiting
+	 */
+	long getCleanupMaxDrainLatency();
+	/**
+	 * @return the number of session invalidations merged with one already pending for the same session
+	 */
+	long getCleanupCoalescedInvalidations();
+	
 	void setBypassRequestExecutor(boolean bypassRequestExecutor);
 	boolean isBypassRequestExecutor();
 
 	void setBypassResponseExecutor(boolean bypassResponseExecutor);
 	boolean isBypassResponseExecutor();
 	
+	/**
+	 * @param dispatcherExecutionMode how the worker threads are managed, only taken into account before init()
+	 */
+	void setDispatcherExecutionMode(DispatcherExecutionMode dispatcherExecutionMode);
+	DispatcherExecutionMode getDispatcherExecutionMode();
+	
 	void setBaseTimerInterval(int baseTimerInterval);
 	int getBaseTimerInterval();
 	void setT2Interval(int t2Interval);
@@ -230,6 +294,46 @@ public interface SipApplicationDispatcher extends SipListenerExt {
 	
 	void updateResponseStatistics(final Response response, final boolean processed);
 	void updateRequestsStatistics(final Request request, final boolean processed);
+	/**
+	 * Record the time spent by an application processing a request, if statistics are gathered
+	 * @param method the method of the request
+	 * @param applicationName the name of the application that processed the request
+	 * @param processingTime the processing time in nanoseconds
+	 */
+	void recordRequestProcessingTime(String method, String applicationName, long processingTime);
+	/**
+	 * Record the time spent by an application processing a response, if statistics are gathered
+	 * @param statusCode the status code of the response
+	 * @param applicationName the name of the application that processed the response
+	 * @param processingTime the processing time in nanoseconds
+	 */
+	void recordResponseProcessingTime(int statusCode, String applicationName, long processingTime);
+	/**
+	 * @param method a SIP method supported by the container, or OTHER for the requests of all the other methods
+	 * @param percentile between 0 and 100, 99.9 for the p999
+	 * @return the processing time in microseconds of the requests of this method at the given percentile
+	 */
+	long getRequestProcessingTimePercentile(String method, double percentile);
+	/**
+	 * @param applicationName the name of a deployed application
+	 * @param percentile between 0 and 100, 99.9 for the p999
+	 * @return the processing time in microseconds of the messages processed by this application at the given percentile
+	 */
+	long getApplicationProcessingTimePercentile(String applicationName, double percentile);
+	/**
+	 * @return count, mean, p50, p99, p999 and max processing times of the requests, by method, 
+	 * the methods not supported by the container being grouped under OTHER
+	 */
+	Map<String, String> getRequestProcessingTimeByMethod();
+	/**
+	 * @return count, mean, p50, p99, p999 and max processing times of the responses, by class of status code
+	 */
+	Map<String, String> getResponseProcessingTimeByStatusCode();
+	/**
+	 * @return count, mean, p50, p99, p999 and max processing times of the messages, by application
+	 */
+	Map<String, String> getProcessingTimeByApplication();
+	void resetProcessingTimeStatistics();
 	
 	void setBackToNormalMemoryThreshold(
 			int backToNormalMemoryThreshold);
@@ -239,7 +343,37 @@ public interface SipApplicationDispatcher extends SipListenerExt {
 	int getBackToNormalQueueSize();
 
 	ExecutorService getAsynchronousExecutor();
+	/**
+	 * Returns the executor the SIP messages of a call are dispatched to. In Sharded mode all the messages 
+	 * sharing a Call-ID go to the same shard, in the other modes this is the asynchronous executor.
+	 * @param callId the Call-ID of the message, can be null
+	 */
+	Executor getDispatcherExecutor(String callId);
 	ScheduledExecutorService getAsynchronousScheduledExecutor();
+	/**
+	 * Returns the container wide scheduler shared by the timer services of all the deployed applications.
+	 * Tasks run on it are expected to hand their work off rather than block the scheduler threads.
+	 */
+	ScheduledExecutorService getTimerScheduler();
+	int getTimerSchedulerQueueSize();
+	/**
+	 * @return the number of proxy and sip application session timers of each application using the Wheel timer services, 
+	 * pending on the timer wheel they share
+	 */
+	Map<String, Integer> getPendingWheelTimersByApplication();
+	/**
+	 * @return the number of proxy and sip application session timers of each application using the Shared timer services, 
+	 * pending on the container wide timer scheduler
+	 */
+	Map<String, Integer> getPendingSharedTimersByApplication();
+	/**
+	 * @return how late, in milliseconds, the last tick of the shared timer wheel was processed, 0 if no application uses it
+	 */
+	long getTimerWheelLastTickLag();
+	/**
+	 * @return the highest tick lag, in milliseconds, of the shared timer wheel since it started, 0 if no application uses it
+	 */
+	long getTimerWheelMaxTickLag();
 
 	void setSipStack(SipStack sipStack);
 	SipStack getSipStack();
@@ -248,6 +382,17 @@ public interface SipApplicationDispatcher extends SipListenerExt {
 	DNSServerLocator getDNSServerLocator();
 	void setDNSTimeout(int dnsTiemout);
 	int getDNSTimeout();
+	/**
+	 * @return true if the RFC 3263 resolution of outgoing requests is done on the DNS resolver threads
+	 * instead of the thread sending the request
+	 */
+	boolean isAsynchronousDNSResolution();
+	/**
+	 * Locates the hops of the uri on the DNS resolver threads, concurrent lookups of the same uri being coalesced.
+	 * @param uri the uri to resolve, it must not be modified by the caller afterwards
+	 * @param listener notified on a resolver thread once the hops are located
+	 */
+	void locateHops(javax.sip.address.URI uri, HopsLocatedListener listener);
 	
 	DNSResolver getDNSResolver();
 	
@@ -264,6 +409,31 @@ public interface SipApplicationDispatcher extends SipListenerExt {
 	public SipService getSipService();
 	public void setSipService(SipService sipService);
 
+	/**
+	 * @return the strategy used to pick the SIP load balancer container originated requests are sent through : 
+	 * Single, ApplicationSession or Call
+	 */
+	String getLoadBalancerSelectionStrategy();
+	void setLoadBalancerSelectionStrategy(String loadBalancerSelectionStrategy);
+	/**
+	 * Set the weight of a SIP load balancer relative to the other live ones, 0 drains it.
+	 * @return true if the load balancer is currently live
+	 */
+	boolean setLoadBalancerWeight(String host, int sipPort, int weight);
+	/**
+	 * @return the live SIP load balancers as host:sipPort=weight
+	 */
+	String[] getLoadBalancers();
+
+	/**
+	 * @return the number of uris, addresses and headers copied from a cached template instead of being parsed again
+	 */
+	long getParseCacheHitCount();
+	/**
+	 * @return the number of uris, addresses and headers that had to be parsed
+	 */
+	long getParseCacheMissCount();
+
 	String getApplicationServerId();
 	String getApplicationServerIdHash();
 
@@ -135,6 +135,12 @@ public interface SipContext {
 	 * @param checkIsManagedThread need to check if the access is done within a managed Thread or not to lock or not the session depending on the concurrency control 
 	 */
 	void enterSipApp(MobicentsSipApplicationSession sipApplicationSession, MobicentsSipSession sipSession, boolean checkIsManagedThread, boolean isContainerManaged);
+	/**
+	 * same as {@link #enterSipApp(MobicentsSipApplicationSession, MobicentsSipSession, boolean, boolean)} but never waits for the lock of the session
+	 * @return true if the application was entered, false if the session is locked by another thread, 
+	 * in which case {@link #exitSipApp(MobicentsSipApplicationSession, MobicentsSipSession)} must not be called
+	 */
+	boolean tryEnterSipApp(MobicentsSipApplicationSession sipApplicationSession, MobicentsSipSession sipSession, boolean checkIsManagedThread, boolean isContainerManaged);
 	/**
 	 * notify the application that we are going to exit it with the sipapplicationsession and sip session in parameter 
 	 * @param sipApplicationSession the sip application session that is exiting the application, it can be null
@@ -87,6 +87,18 @@ public interface SipManager {
 	 */
 	public MobicentsSipSession getSipSession(final MobicentsSipSessionKey key, final boolean create, final MobicentsSipFactory sipFactoryImpl, final MobicentsSipApplicationSession MobicentsSipApplicationSession);
 	
+	/**
+	 * Retrieve an existing sip session from the components of its key without having to build the key first,
+	 * to be used on the message processing path where the session is most of the time found.
+	 * @param applicationSessionId the id of the sip application session the sip session belongs to
+	 * @param applicationName the name of the application
+	 * @param callId the Call-ID of the dialog
+	 * @param fromTag the local or remote tag identifying the session
+	 * @param toTag the other tag, can be null
+	 * @return the sip session matching, null if none exists
+	 */
+	public MobicentsSipSession findSipSession(final String applicationSessionId, final String applicationName, final String callId, final String fromTag, final String toTag);
+	
 	/**
 	 * Retrieves the sip application session holding the converged http session in parameter
 	 * @param convergedHttpSession the converged session to look up
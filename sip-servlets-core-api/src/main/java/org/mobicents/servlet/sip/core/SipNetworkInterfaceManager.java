@@ -97,6 +97,20 @@ public interface SipNetworkInterfaceManager {
 	 */
 	MobicentsExtendedListeningPoint findMatchingListeningPoint(String host,
 			int port, String transport);
+	/**
+	 * Check whether or not the host, port and transport correspond to one of the listening points 
+	 * or the host, alone or followed by the port, to one of the host names of the container
+	 * @param host can be hostname or ipaddress
+	 * @param port port number
+	 * @param transport transport used
+	 * @return true if the host, port and transport are local
+	 */
+	boolean isLocalAddress(String host, int port, String transport);
+	/**
+	 * Rebuild the local addresses used by {@link #isLocalAddress(String, int, String)} and 
+	 * {@link #findMatchingListeningPoint(String, int, String)}, to be called when the host names of the container change
+	 */
+	void updateLocalAddresses();
 		
 
 }
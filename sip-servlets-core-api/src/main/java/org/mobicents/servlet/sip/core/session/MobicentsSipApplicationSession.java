@@ -22,6 +22,7 @@
 package org.mobicents.servlet.sip.core.session;
 
 import java.util.Set;
+import java.util.concurrent.Executor;
 
 import javax.servlet.http.HttpSession;
 import javax.servlet.sip.ServletTimer;
@@ -77,7 +78,16 @@ public interface MobicentsSipApplicationSession extends SipApplicationSession, S
 	void tryToInvalidate();
 	
 	void acquire();
+	/**
+	 * @return true if the session was locked without waiting or doesn't need to be locked, false if another thread holds its lock
+	 */
+	boolean tryAcquire();
 	void release();
+	/**
+	 * @return the serial executor of this session when the SipApplicationSessionMailbox
+	 * concurrency control mode is used, null otherwise
+	 */
+	Executor getMailbox();
 	
 	MobicentsSipApplicationSession getFacade();
 	
@@ -146,6 +146,10 @@ public interface MobicentsSipSession extends SipSession, SipSessionExt {
 	SipApplicationRoutingRegion getRegionInternal();
 	
 	void acquire();
+	/**
+	 * @return true if the session was locked without waiting or doesn't need to be locked, false if another thread holds its lock
+	 */
+	boolean tryAcquire();
 	void release();
 	
 	//RFC 3265
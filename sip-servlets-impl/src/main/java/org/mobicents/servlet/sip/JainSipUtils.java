@@ -107,11 +107,14 @@ import javax.sip.header.WWWAuthenticateHeader;
 import javax.sip.header.WarningHeader;
 import javax.sip.message.Message;
 import javax.sip.message.Request;
+import javax.sip.message.Response;
 
 import org.apache.log4j.Logger;
 import org.mobicents.servlet.sip.core.MobicentsExtendedListeningPoint;
+import org.mobicents.servlet.sip.core.RoutingToken;
 import org.mobicents.servlet.sip.core.SipApplicationDispatcher;
 import org.mobicents.servlet.sip.core.SipNetworkInterfaceManager;
+import org.mobicents.servlet.sip.core.SipService;
 import org.mobicents.servlet.sip.core.dispatchers.MessageDispatcher;
 import org.mobicents.servlet.sip.core.session.MobicentsSipSession;
 import org.mobicents.servlet.sip.message.SipFactoryImpl;
@@ -526,7 +529,7 @@ public final class JainSipUtils {
 		} else {
 			javax.sip.address.SipURI outboundInterfaceURI = null;			
 			try {
-				outboundInterfaceURI = (javax.sip.address.SipURI) SipFactoryImpl.addressFactory.createURI(outboundInterface);
+				outboundInterfaceURI = (javax.sip.address.SipURI) SipFactoryImpl.parseURI(outboundInterface);
 			} catch (ParseException e) {
 				throw new IllegalArgumentException("couldn't parse the outbound interface " + outboundInterface, e);
 			}
@@ -552,6 +555,38 @@ public final class JainSipUtils {
 	public static String createBranch(String appSessionId, String appname, String random) {
 		return MessageDispatcher.BRANCH_MAGIC_COOKIE + appSessionId + "_" + appname + "_" + random;		
     }
+	
+	/**
+	 * Creates a branch carrying the {@link RoutingToken} of the application session so that the responses can be routed back to it
+	 * @param sipApplicationDispatcher the dispatcher holding the index of the application
+	 * @param appSessionId the id of the application session
+	 * @param applicationName the name of the application
+	 * @return the branch
+	 */
+	public static String createBranch(SipApplicationDispatcher sipApplicationDispatcher, String appSessionId, String applicationName) {
+		final int applicationIndex = sipApplicationDispatcher.getApplicationIndex(applicationName);
+		if(applicationIndex < 0) {
+			// the application is not deployed (anymore), the response will be forwarded statefully as before
+			return createBranch(appSessionId, sipApplicationDispatcher.getHashFromApplicationName(applicationName));
+		}
+		return RoutingToken.createBranch(applicationIndex, getRoutingNodeId(), appSessionId);
+	}
+	
+	public static String createBranch(SipApplicationDispatcher sipApplicationDispatcher, String appSessionId, String applicationName, String random) {
+		final int applicationIndex = sipApplicationDispatcher.getApplicationIndex(applicationName);
+		if(applicationIndex < 0) {
+			return createBranch(appSessionId, sipApplicationDispatcher.getHashFromApplicationName(applicationName), random);
+		}
+		return RoutingToken.createBranch(applicationIndex, getRoutingNodeId(), appSessionId, random);
+	}
+	
+	/**
+	 * @return the identifier of this node in the routing token, derived from its jvmRoute
+	 */
+	public static int getRoutingNodeId() {
+		final SipService sipService = StaticServiceHolder.sipStandardService;
+		return RoutingToken.getNodeId(sipService == null ? null : sipService.getJvmRoute());
+	}
 	 
 	/**
 	 * 
@@ -567,7 +602,7 @@ public final class JainSipUtils {
 		} else {
 			javax.sip.address.SipURI outboundInterfaceURI = null;			
 			try {
-				outboundInterfaceURI = (javax.sip.address.SipURI) SipFactoryImpl.addressFactory.createURI(outboundInterface);
+				outboundInterfaceURI = (javax.sip.address.SipURI) SipFactoryImpl.parseURI(outboundInterface);
 			} catch (ParseException e) {
 				throw new IllegalArgumentException("couldn't parse the outbound interface " + outboundInterface, e);
 			}			
@@ -742,6 +777,35 @@ public final class JainSipUtils {
 		return transport;
 	}
 	
+	/**
+	 * @return the transport, host and port the request is written to, i.e. the ones of the topmost route or of the request uri
+	 */
+	public static String findRequestDestination(Request request, String transport) {
+		URI uri = request.getRequestURI();
+		final RouteHeader route = (RouteHeader) request.getHeader(RouteHeader.NAME);
+		if(route != null) {
+			uri = route.getAddress().getURI();
+		}
+		if(uri instanceof SipURI) {
+			final SipURI sipURI = (SipURI) uri;
+			return transport + ":" + sipURI.getHost() + ":" + sipURI.getPort();
+		}
+		return transport + ":" + uri;
+	}
+
+	/**
+	 * @return the transport, host and port the response is written to, i.e. the ones the topmost via was received from
+	 */
+	public static String findResponseDestination(Response response) {
+		final ViaHeader via = (ViaHeader) response.getHeader(ViaHeader.NAME);
+		if(via == null) {
+			return ListeningPoint.UDP;
+		}
+		final String host = via.getReceived() != null ? via.getReceived() : via.getHost();
+		final int port = via.getRPort() > 0 ? via.getRPort() : via.getPort();
+		return via.getTransport() + ":" + host + ":" + port;
+	}
+	
 	public static boolean checkScheme(String address) {
 		String tmpAddress = address;
 		for(String scheme:ALLOWED_ADDRESS_SCHEMES) {
@@ -823,7 +887,7 @@ public final class JainSipUtils {
 				}	
 				MobicentsExtendedListeningPoint lp = null;
 				if(session.getOutboundInterface() != null) {
-					javax.sip.address.SipURI outboundInterfaceURI = (javax.sip.address.SipURI) SipFactoryImpl.addressFactory.createURI(session.getOutboundInterface());
+					javax.sip.address.SipURI outboundInterfaceURI = (javax.sip.address.SipURI) SipFactoryImpl.parseURI(session.getOutboundInterface());
 					lp = sipNetworkInterfaceManager.findMatchingListeningPoint(outboundInterfaceURI, false);
 				} else {
 					lp = sipNetworkInterfaceManager.findMatchingListeningPoint(transport, false);
@@ -197,6 +197,7 @@ public class AddressImpl extends ParameterableImpl implements Address {
 		}
 		try {
 			getAddress().setDisplayName(name);
+			modificationCount++;
 		} catch (ParseException e) {
 			throw new IllegalArgumentException("illegal name ", e);
 		}
@@ -259,6 +260,7 @@ public class AddressImpl extends ParameterableImpl implements Address {
 			throw new IllegalStateException("this Address is used in a context where it cannot be modified");
 		}
 		this.getAddress().setURI(((URIImpl) uri).uri);
+		modificationCount++;
 	}
 	
 	public Object clone() {
@@ -304,10 +306,10 @@ public class AddressImpl extends ParameterableImpl implements Address {
 	 */
 	public void setValue(String value) {
 		try {			
-			ContactHeader contactHeader = (ContactHeader) SipFactoryImpl.headerFactory.createHeader(
-					ContactHeader.NAME, value);
-			this.address = SipFactoryImpl.addressFactory.createAddress(value);
+			ContactHeader contactHeader = (ContactHeader) SipFactoryImpl.parseContactHeader(value);
+			this.address = SipFactoryImpl.parseAddress(value);
 			this.parameters = getParameters(((Parameters) contactHeader));
+			modificationCount++;
 		} catch (Exception ex) {
 			throw new IllegalArgumentException("Illegal argument", ex);
 		}
@@ -315,6 +317,7 @@ public class AddressImpl extends ParameterableImpl implements Address {
 
 	public void setAddress(javax.sip.address.Address address) {
 		this.address = address;
+		modificationCount++;
 	}
 	
 	@Override
@@ -54,7 +54,7 @@ public class GenericURIImpl extends URIImpl {
 	 */
 	public void setValue(String value) {
 		try {
-			this.uri = SipFactoryImpl.addressFactory.createURI(value);
+			this.uri = SipFactoryImpl.parseURI(value);
 		} catch (ParseException ex) {
 			logger.error("Bad input arg", ex);
 			throw new IllegalArgumentException("Bad input arg", ex);
@@ -75,6 +75,7 @@ public class ParameterableHeaderImpl extends ParameterableImpl {
 			throw new IllegalStateException("it is forbidden for an application to set the From or To Header");
 		}
 		this.value = value;
+		modificationCount++;
 	}
 
 	/* (non-Javadoc)
@@ -58,6 +58,9 @@ public abstract class ParameterableImpl implements Parameterable ,Cloneable, Ser
 	
 	protected ModifiableRule isModifiable = ModifiableRule.Modifiable;
 	
+	// incremented on each modification so that a cached view of a header knows it has been changed by the application
+	protected transient int modificationCount;
+	
 	protected ParameterableImpl() {
 		this.parameters = new ConcurrentHashMap<String, String>();	
 	}
@@ -124,6 +127,7 @@ public abstract class ParameterableImpl implements Parameterable ,Cloneable, Ser
 			throw new IllegalStateException("it is forbidden to set the branch parameter on the Via Header");
 		}
 		this.parameters.remove(name);
+		modificationCount++;
 		if(header != null) {
 			header.removeParameter(name);
 		}
@@ -153,6 +157,7 @@ public abstract class ParameterableImpl implements Parameterable ,Cloneable, Ser
 		}
 		//Fix from abondar for Issue 494 and angelo.marletta for Issue 502      
 		this.parameters.put(name.toLowerCase(), value);
+		modificationCount++;
 		if(header != null) {
 			try {
 				header.setParameter(name, "".equals(value) ? null : value);
@@ -206,6 +211,7 @@ public abstract class ParameterableImpl implements Parameterable ,Cloneable, Ser
 	
 	public void setParameters(Map<String, String> parameters) {
 		this.parameters = parameters;
+		modificationCount++;
 		if(header != null) {			
 			for(Entry<String, String> nameValue : this.parameters.entrySet()) {
 				try {
@@ -218,6 +224,13 @@ public abstract class ParameterableImpl implements Parameterable ,Cloneable, Ser
 	}
 	
 	public abstract Object clone();
+	
+	/**
+	 * @return the number of modifications made to this object
+	 */
+	public int getModificationCount() {
+		return modificationCount;
+	}
 
 	/* (non-Javadoc)
 	 * @see java.lang.Object#hashCode()
@@ -0,0 +1,153 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.servlet.sip.address;
+
+import java.text.ParseException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of the JAIN SIP objects parsed from the strings the container and the applications keep passing again, 
+ * the record route URI, the outbound interfaces, the routes of the application router or the fixed URIs of the applications.
+ * 
+ * The parsed object is kept as a template that is never handed out, callers get a clone of it that they are free to modify, 
+ * cloning being much cheaper than running the parser again.
+ *
+ * The cache is split in segments, each one being a small LRU map with its own lock, so that threads parsing
+ * different strings seldom wait for each other. Values that fail to parse are not cached.
+ */
+public final class ParsedTemplateCache<T> {
+	private static final int SEGMENTS = 16;
+	// longer strings are unlikely to be repeated literals and would only push the useful ones out
+	private static final int MAX_CACHED_LENGTH = 512;
+	
+	/**
+	 * Parses the strings into templates and copies the templates
+	 */
+	public interface Parser<T> {
+		T parse(String value) throws ParseException;
+		T copy(T template);
+	}
+	
+	private final Parser<T> parser;
+	private final Segment<T>[] segments;
+	private final boolean enabled;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	
+	/**
+	 * @param parser the parser of the strings
+	 * @param maxSize maximum number of templates kept, 0 disables the cache
+	 */
+	@SuppressWarnings("unchecked")
+	public ParsedTemplateCache(Parser<T> parser, int maxSize) {
+		if(maxSize < 0) {
+			throw new IllegalArgumentException("the maximum size of the cache can't be negative, maxSize=" + maxSize);
+		}
+		this.parser = parser;
+		this.enabled = maxSize > 0;
+		final int segmentSize = Math.max(1, (maxSize + SEGMENTS - 1) / SEGMENTS);
+		segments = new Segment[SEGMENTS];
+		for (int i = 0; i < SEGMENTS; i++) {
+			segments[i] = new Segment<T>(segmentSize);
+		}
+	}
+	
+	/**
+	 * @return a copy of the template parsed from the value, that the caller is free to modify
+	 * @throws ParseException if the value can't be parsed
+	 */
+	public T parse(String value) throws ParseException {
+		if(!enabled || value == null || value.length() > MAX_CACHED_LENGTH) {
+			return parser.parse(value);
+		}
+		final Segment<T> segment = segmentFor(value);
+		T template;
+		synchronized (segment) {
+			template = segment.get(value);
+		}
+		if(template != null) {
+			hits.incrementAndGet();
+			return parser.copy(template);
+		}
+		misses.incrementAndGet();
+		final T parsed = parser.parse(value);
+		template = parser.copy(parsed);
+		synchronized (segment) {
+			segment.put(value, template);
+		}
+		return parsed;
+	}
+	
+	public void clear() {
+		for (Segment<T> segment : segments) {
+			synchronized (segment) {
+				segment.clear();
+			}
+		}
+	}
+	
+	public int size() {
+		int size = 0;
+		for (Segment<T> segment : segments) {
+			synchronized (segment) {
+				size += segment.size();
+			}
+		}
+		return size;
+	}
+	
+	/**
+	 * @return the number of parse calls served from a template
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+	
+	/**
+	 * @return the number of parse calls that ran the parser
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+	
+	private Segment<T> segmentFor(String value) {
+		int hash = value.hashCode();
+		hash ^= (hash >>> 16);
+		return segments[hash & (SEGMENTS - 1)];
+	}
+	
+	private static final class Segment<T> extends LinkedHashMap<String, T> {
+		private static final long serialVersionUID = 1L;
+		private final int maxSize;
+
+		Segment(int maxSize) {
+			super(16, 0.75f, true);
+			this.maxSize = maxSize;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, T> eldest) {
+			return size() > maxSize;
+		}
+	}
+}
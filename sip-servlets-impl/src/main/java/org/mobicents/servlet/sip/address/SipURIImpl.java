@@ -357,7 +357,7 @@ public class SipURIImpl extends URIImpl implements SipURI {
 	 */
 	public void setValue(String value) {
 		try {
-			this.uri = SipFactoryImpl.addressFactory.createURI(value);
+			this.uri = SipFactoryImpl.parseURI(value);
 			if(this.uri instanceof Parameters) {
 				super.setParameters(AddressImpl.getParameters((Parameters)uri));
 			} else {
@@ -0,0 +1,118 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.servlet.sip.core;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Immutable table of the indexes of the deployed applications carried in the {@link RoutingToken}.
+ * It is rebuilt by the {@link SipApplicationDispatcherImpl} each time an application is deployed or undeployed 
+ * so that finding the application a response is for is an array probe without any boxing or hashing of strings.
+ */
+final class ApplicationIndexTable {
+	private static final Logger logger = Logger.getLogger(ApplicationIndexTable.class);
+	
+	static final ApplicationIndexTable EMPTY = new ApplicationIndexTable(new HashMap<String, Integer>());
+	
+	private final Map<String, Integer> indexes;
+	// open addressing, the slots are sized to a power of two at least twice the number of applications
+	private final int[] slotIndexes;
+	private final String[] slotNames;
+	
+	private ApplicationIndexTable(Map<String, Integer> indexes) {
+		this.indexes = indexes;
+		int capacity = 8;
+		while(capacity < indexes.size() * 2) {
+			capacity <<= 1;
+		}
+		slotIndexes = new int[capacity];
+		slotNames = new String[capacity];
+		for (Map.Entry<String, Integer> entry : indexes.entrySet()) {
+			int slot = entry.getValue() & (capacity - 1);
+			while(slotNames[slot] != null) {
+				slot = (slot + 1) & (capacity - 1);
+			}
+			slotIndexes[slot] = entry.getValue();
+			slotNames[slot] = entry.getKey();
+		}
+	}
+	
+	/**
+	 * @return a new table with the application added, the table itself if it was already there
+	 * @throws IllegalStateException if the index of the application is already taken by another application, 
+	 * picking another one would depend on the deployment order and differ from one node of the cluster to another
+	 */
+	ApplicationIndexTable add(String applicationName) {
+		if(indexes.containsKey(applicationName)) {
+			return this;
+		}
+		final int index = RoutingToken.getApplicationIndex(applicationName);
+		final String collidingApplicationName = getApplicationName(index);
+		if(collidingApplicationName != null) {
+			final String message = "the routing index " + index + " of the application " + applicationName 
+					+ " collides with the one of the application " + collidingApplicationName + ", one of them has to be renamed";
+			logger.error(message);
+			throw new IllegalStateException(message);
+		}
+		final Map<String, Integer> newIndexes = new HashMap<String, Integer>(indexes);
+		newIndexes.put(applicationName, index);
+		return new ApplicationIndexTable(newIndexes);
+	}
+	
+	/**
+	 * @return a new table without the application, the table itself if it wasn't there
+	 */
+	ApplicationIndexTable remove(String applicationName) {
+		if(!indexes.containsKey(applicationName)) {
+			return this;
+		}
+		final Map<String, Integer> newIndexes = new HashMap<String, Integer>(indexes);
+		newIndexes.remove(applicationName);
+		return new ApplicationIndexTable(newIndexes);
+	}
+	
+	/**
+	 * @return the index of the application, -1 if it isn't deployed
+	 */
+	int getApplicationIndex(String applicationName) {
+		final Integer index = indexes.get(applicationName);
+		return index != null ? index : -1;
+	}
+	
+	/**
+	 * @return the name of the application with this index, null if there is none
+	 */
+	String getApplicationName(int applicationIndex) {
+		final int mask = slotNames.length - 1;
+		int slot = applicationIndex & mask;
+		String name;
+		while((name = slotNames[slot]) != null) {
+			if(slotIndexes[slot] == applicationIndex) {
+				return name;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return null;
+	}
+}
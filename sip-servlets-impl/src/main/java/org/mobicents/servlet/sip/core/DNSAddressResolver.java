@@ -26,9 +26,6 @@ import gov.nist.core.net.AddressResolver;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 import javax.sip.ListeningPoint;
 import javax.sip.address.Hop;
@@ -58,8 +55,6 @@ public class DNSAddressResolver implements AddressResolver {
 	//the sip factory implementation to be able
 	SipApplicationDispatcher sipApplicationDispatcher;
 	
-	static ConcurrentHashMap<String, Map<String, String>> cachedLookup = new ConcurrentHashMap<String, Map<String, String>>();
-	
 	/**
 	 * @param sipApplicationDispatcherImpl
 	 */
@@ -144,75 +139,26 @@ public class DNSAddressResolver implements AddressResolver {
 			}
 			return hop;
 		} else {	
-			Map<String, String> cachedEntry = foundCachedEntry(host, transport, (Record[]) records);
-			if(cachedEntry == null) {
-				SRVRecord record = (SRVRecord) records[0];
-				int recordPort = record.getPort();						
-				String resolvedName = record.getTarget().toString();
-				try {
-					String hostAddress= InetAddress.getByName(resolvedName).getHostAddress();
-					if(logger.isDebugEnabled()) {
-						logger.debug("Did a successful DNS SRV lookup for host:transport " +
-								""+ host + "/" + transport +
-								" , Host Name = " + resolvedName +
-								" , Host IP Address = " + hostAddress + 
-								", Host Port = " + recordPort);
-					}				
-					Map<String, String> entry = new HashMap<String, String>();
-					entry.put("hostName", resolvedName);
-					entry.put("hostAddress", hostAddress);
-					entry.put("hostPort", ""+recordPort);
-					cachedLookup.putIfAbsent(host + transport, entry);
-					return new HopImpl(hostAddress, recordPort, transport);
-				} catch (UnknownHostException e) {
-					logger.error("Impossible to get the host address of the resolved name, " +
-							"we are going to just use the domain name directly" + resolvedName, e);
-					return hop;
-				}
-			} else {
-				String entryResolvedName = cachedEntry.get("hostName");
-				String hostAddress = cachedEntry.get("hostAddress");
-				String hostPort = cachedEntry.get("hostPort");
+			// SRV answers are cached by dnsjava for the TTL of the records
+			SRVRecord record = (SRVRecord) records[0];
+			int recordPort = record.getPort();						
+			String resolvedName = record.getTarget().toString();
+			try {
+				String hostAddress= InetAddress.getByName(resolvedName).getHostAddress();
 				if(logger.isDebugEnabled()) {
-					logger.debug("Reusing a previous DNS SRV lookup for host:transport " +
+					logger.debug("Did a successful DNS SRV lookup for host:transport " +
 							""+ host + "/" + transport +
-							" , Host Name = " + entryResolvedName +
+							" , Host Name = " + resolvedName +
 							" , Host IP Address = " + hostAddress + 
-							", Host Port = " + hostPort);
-				}
-				return new HopImpl(hostAddress, Integer.parseInt(hostPort), transport);
-			}
-		}
-				
-	}
-
-	public static Map<String, String> foundCachedEntry(String host, String transport, Record[] records) {
-		Map<String, String> entry = cachedLookup.get(host+transport);
-		if(entry == null) {
-			return null;
-		}
-		String entryResolvedName = entry.get("hostName");
-		String hostAddress = entry.get("hostAddress");
-		String hostPort = entry.get("hostPort");
-		for (Record record : records) {
-			if(record instanceof SRVRecord) {
-				SRVRecord srvRecord = (SRVRecord) record;
-				String resolvedName = srvRecord.getTarget().toString();
-				String resolvedHostAddress;
-				try {
-					resolvedHostAddress = InetAddress.getByName(resolvedName).getHostAddress();
-					int recordPort = srvRecord.getPort();
-					if(entryResolvedName.equalsIgnoreCase(resolvedName) 
-							&& hostAddress.equalsIgnoreCase(resolvedHostAddress)
-							&& hostPort.equalsIgnoreCase("" + recordPort)) {
-						return entry;
-					}
-				} catch (UnknownHostException e) {
-					logger.warn("Couldn't resolve address " + resolvedName);
+							", Host Port = " + recordPort);
 				}				
+				return new HopImpl(hostAddress, recordPort, transport);
+			} catch (UnknownHostException e) {
+				logger.error("Impossible to get the host address of the resolved name, " +
+						"we are going to just use the domain name directly" + resolvedName, e);
+				return hop;
 			}
-			
 		}
-		return null;
+				
 	}
 }
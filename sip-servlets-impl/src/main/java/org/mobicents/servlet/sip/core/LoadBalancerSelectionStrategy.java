@@ -0,0 +1,39 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.servlet.sip.core;
+
+/**
+ * How the container picks the SIP load balancer that container originated requests are sent through.
+ */
+public enum LoadBalancerSelectionStrategy {
+	/**
+	 * All the requests go through the first live load balancer, the next one is used only when it is removed.
+	 */
+	Single,
+	/**
+	 * The load balancer is picked by weight and stays the same for all the requests of a sip application session.
+	 */
+	ApplicationSession,
+	/**
+	 * The load balancer is picked by weight and stays the same for all the requests sharing a Call-ID.
+	 */
+	Call
+}
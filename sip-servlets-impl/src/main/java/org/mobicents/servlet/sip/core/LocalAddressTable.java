@@ -0,0 +1,330 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.servlet.sip.core;
+
+import gov.nist.javax.sip.ListeningPointExt;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.sip.ListeningPoint;
+
+import org.apache.log4j.Logger;
+import org.mobicents.servlet.sip.utils.Inet6Util;
+
+/**
+ * Immutable view of the addresses the container is listening on, along with the host names it is known under.
+ * It is rebuilt by the {@link SipNetworkInterfaceManagerImpl} each time a listening point or a host name is added or removed
+ * so that checking whether a host, port and transport triplet is local, which is done for every request, 
+ * doesn't need to build any lookup key.<br/>
+ * 
+ * The addresses a host resolves to, or the absence of any address for it, are cached for {@link #RESOLVED_HOST_TTL} 
+ * so that the hosts that are not local IP addresses are resolved only once in a while and not on every request.
+ * The caller resolves a host synchronously the first time it is seen. Once expired, the addresses are still served 
+ * while the host is resolved again, which the caller does off the request path.
+ */
+final class LocalAddressTable {
+	private static final Logger logger = Logger.getLogger(LocalAddressTable.class);
+	
+	static final String[] NO_ADDRESSES = new String[0];
+	// how long the addresses a host resolves to are cached
+	static final long RESOLVED_HOST_TTL = 60000L;
+	// bound on the number of cached hosts as they come from the messages, expired hosts and then arbitrary ones are evicted when reached
+	static final int MAX_RESOLVED_HOSTS = 4096;
+	// share of the cached hosts evicted at once when none expired, so that the eviction scan doesn't run on every new host
+	private static final int EVICTION_BATCH = MAX_RESOLVED_HOSTS / 16;
+	private static final int[] ANY_PORT = new int[0];
+	
+	enum Transport {
+		UDP(ListeningPoint.UDP), TCP(ListeningPoint.TCP), TLS(ListeningPoint.TLS), SCTP(ListeningPoint.SCTP), 
+		WS(ListeningPointExt.WS), WSS(ListeningPointExt.WSS);
+		
+		private static final Transport[] TRANSPORTS = values();
+		private final String name;
+		
+		private Transport(String name) {
+			this.name = name;
+		}
+		
+		/**
+		 * @return the transport corresponding to the name in parameter whatever its case, UDP if null, null if unknown 
+		 */
+		static Transport fromString(String transport) {
+			if(transport == null) {
+				return UDP;
+			}
+			for (int i = 0; i < TRANSPORTS.length; i++) {
+				if(TRANSPORTS[i].name.equalsIgnoreCase(transport)) {
+					return TRANSPORTS[i];
+				}
+			}
+			return null;
+		}
+	}
+	
+	private static final class Entry {
+		final int port;
+		final Transport transport;
+		final MobicentsExtendedListeningPoint listeningPoint;
+		
+		Entry(int port, Transport transport, MobicentsExtendedListeningPoint listeningPoint) {
+			this.port = port;
+			this.transport = transport;
+			this.listeningPoint = listeningPoint;
+		}
+	}
+	
+	private static final class ResolvedHost {
+		final String[] addresses;
+		final long expirationTime;
+		// set while the expired addresses are resolved again
+		final AtomicBoolean refreshing = new AtomicBoolean();
+		
+		ResolvedHost(String[] addresses, long expirationTime) {
+			this.addresses = addresses;
+			this.expirationTime = expirationTime;
+		}
+	}
+	
+	// host or ip address => listening points on that address
+	private final Map<String, Entry[]> listeningPoints;
+	// host name => ports the host name is bound to, ANY_PORT if it is not bound to a port
+	private final Map<String, int[]> hostNames;
+	// hosts not found in the table => addresses they resolve to
+	private final ConcurrentMap<String, ResolvedHost> resolvedHosts = new ConcurrentHashMap<String, ResolvedHost>();
+	private final AtomicBoolean evicting = new AtomicBoolean();
+	
+	/**
+	 * @param extendedListeningPoints the listening points of the container
+	 * @param localHostNames the host names of the container, they can be followed by a port, may be null
+	 */
+	LocalAddressTable(Collection<MobicentsExtendedListeningPoint> extendedListeningPoints, Collection<String> localHostNames) {
+		final Map<String, List<Entry>> entries = new HashMap<String, List<Entry>>();
+		for (MobicentsExtendedListeningPoint extendedListeningPoint : extendedListeningPoints) {
+			final Transport transport = Transport.fromString(extendedListeningPoint.getTransport());
+			if(transport == null) {
+				logger.warn("Unknown transport " + extendedListeningPoint.getTransport() + " for listening point " + extendedListeningPoint + ", it will not be considered as local");
+				continue;
+			}
+			final int port = extendedListeningPoint.getPort();
+			for(String ipAddress : extendedListeningPoint.getIpAddresses()) {
+				addAddress(entries, ipAddress, new Entry(port, transport, extendedListeningPoint));
+			}
+			if(extendedListeningPoint.getGlobalIpAddress() != null) {
+				addAddress(entries, extendedListeningPoint.getGlobalIpAddress(), new Entry(port, transport, extendedListeningPoint));
+				addAddress(entries, extendedListeningPoint.getGlobalIpAddress(), new Entry(extendedListeningPoint.getGlobalPort(), transport, extendedListeningPoint));
+			}
+			if(extendedListeningPoint.getSipConnector().getHostNames() != null) {
+				final StringTokenizer tokenizer = new StringTokenizer(extendedListeningPoint.getSipConnector().getHostNames(), ",");
+				while(tokenizer.hasMoreTokens()) {
+					addAddress(entries, tokenizer.nextToken(), new Entry(port, transport, extendedListeningPoint));
+				}
+			}
+		}
+		listeningPoints = new HashMap<String, Entry[]>(entries.size() * 2);
+		for (Map.Entry<String, List<Entry>> entry : entries.entrySet()) {
+			listeningPoints.put(entry.getKey(), entry.getValue().toArray(new Entry[entry.getValue().size()]));
+		}
+		
+		hostNames = new HashMap<String, int[]>();
+		if(localHostNames != null) {
+			for (String localHostName : localHostNames) {
+				hostNames.put(localHostName, ANY_PORT);
+				// host names can be given as host:port, ipv6 addresses are only considered if enclosed in brackets
+				final int portIndex = localHostName.lastIndexOf(':');
+				if(portIndex > 0 && portIndex < localHostName.length() - 1 && 
+						(localHostName.charAt(portIndex - 1) == ']' || localHostName.indexOf(':') == portIndex)) {
+					try {
+						addHostNamePort(localHostName.substring(0, portIndex), Integer.parseInt(localHostName.substring(portIndex + 1)));
+					} catch (NumberFormatException e) {
+						// not followed by a port
+					}
+				}
+			}
+		}
+	}
+	
+	private static void addAddress(Map<String, List<Entry>> entries, String address, Entry entry) {
+		addEntry(entries, address, entry);
+		// the same ip address can be written in different ways, notably ipv6 ones
+		final String canonicalAddress = getCanonicalAddress(address);
+		if(canonicalAddress != null && !canonicalAddress.equals(address)) {
+			addEntry(entries, canonicalAddress, entry);
+		}
+	}
+	
+	private static void addEntry(Map<String, List<Entry>> entries, String address, Entry entry) {
+		List<Entry> addressEntries = entries.get(address);
+		if(addressEntries == null) {
+			addressEntries = new ArrayList<Entry>(2);
+			entries.put(address, addressEntries);
+		}
+		addressEntries.add(entry);
+	}
+	
+	private void addHostNamePort(String hostName, int port) {
+		final int[] ports = hostNames.get(hostName);
+		if(ports == ANY_PORT) {
+			return;
+		}
+		if(ports == null) {
+			hostNames.put(hostName, new int[] {port});
+		} else {
+			final int[] newPorts = new int[ports.length + 1];
+			System.arraycopy(ports, 0, newPorts, 0, ports.length);
+			newPorts[ports.length] = port;
+			hostNames.put(hostName, newPorts);
+		}
+	}
+	
+	/**
+	 * @return the textual representation of the ip address in parameter as given by {@link InetAddress#getHostAddress()},
+	 * null if it is not an ip address
+	 */
+	static String getCanonicalAddress(String address) {
+		if(!Inet6Util.isValidIPV4Address(address) && !Inet6Util.isValidIP6Address(address)) {
+			return null;
+		}
+		try {
+			// no lookup is done for ip addresses
+			return InetAddress.getByName(address).getHostAddress();
+		} catch (Exception e) {
+			return null;
+		}
+	}
+	
+	/**
+	 * Find the listening point bound to the address, port and transport in parameter
+	 * @param address the address as found in the table, it is not resolved
+	 * @param port the port, already checked for range 
+	 * @param transport the transport
+	 * @return the listening point or null if none is bound to this address, port and transport
+	 */
+	MobicentsExtendedListeningPoint findListeningPoint(String address, int port, Transport transport) {
+		final Entry[] entries = listeningPoints.get(address);
+		if(entries != null) {
+			for (int i = 0; i < entries.length; i++) {
+				final Entry entry = entries[i];
+				if(entry.port == port && entry.transport == transport) {
+					return entry.listeningPoint;
+				}
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * @return true if the host, alone or followed by the port, is one of the host names of the container 
+	 */
+	boolean isLocalHostName(String host, int port) {
+		final int[] ports = hostNames.get(host);
+		if(ports == null) {
+			return false;
+		}
+		if(ports == ANY_PORT) {
+			return true;
+		}
+		for (int i = 0; i < ports.length; i++) {
+			if(ports[i] == port) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * @return the addresses the host was last resolved to, even if they expired, {@link #NO_ADDRESSES} if it resolves to none 
+	 * or null if it hasn't been resolved yet
+	 */
+	String[] getResolvedAddresses(String host) {
+		final ResolvedHost resolvedHost = resolvedHosts.get(host);
+		return resolvedHost == null ? null : resolvedHost.addresses;
+	}
+	
+	/**
+	 * Check whether the addresses of a host already resolved expired, in which case it is marked as being refreshed 
+	 * so that no other resolution is started for it until {@link #putResolvedAddresses(String, String[])} is called
+	 * @return true if the caller has to resolve the host again
+	 */
+	boolean startRefresh(String host) {
+		final ResolvedHost resolvedHost = resolvedHosts.get(host);
+		return resolvedHost != null && resolvedHost.expirationTime - System.currentTimeMillis() < 0 
+				&& resolvedHost.refreshing.compareAndSet(false, true);
+	}
+	
+	/**
+	 * Cache the addresses the host resolves to, an empty array meaning that it doesn't resolve to any address
+	 */
+	void putResolvedAddresses(String host, String[] addresses) {
+		putResolvedAddresses(host, addresses, RESOLVED_HOST_TTL);
+	}
+	
+	void putResolvedAddresses(String host, String[] addresses, long ttl) {
+		if(resolvedHosts.put(host, new ResolvedHost(addresses, System.currentTimeMillis() + ttl)) == null 
+				&& resolvedHosts.size() > MAX_RESOLVED_HOSTS) {
+			evict(host);
+		}
+	}
+	
+	/**
+	 * Bring the number of cached hosts back under {@link #MAX_RESOLVED_HOSTS}, the expired hosts are evicted first 
+	 * and, if none expired, a batch of hosts in the iteration order of the map, which doesn't depend on their use. 
+	 * Only one thread scans the map at a time, the others don't wait for it.
+	 * @param host the host just cached, it is never evicted
+	 */
+	private void evict(String host) {
+		if(!evicting.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			final long now = System.currentTimeMillis();
+			int evicted = 0;
+			for (Iterator<Map.Entry<String, ResolvedHost>> it = resolvedHosts.entrySet().iterator(); it.hasNext(); ) {
+				if(it.next().getValue().expirationTime - now < 0) {
+					it.remove();
+					evicted++;
+				}
+			}
+			if(resolvedHosts.size() > MAX_RESOLVED_HOSTS) {
+				for (Iterator<String> it = resolvedHosts.keySet().iterator(); it.hasNext() && resolvedHosts.size() > MAX_RESOLVED_HOSTS - EVICTION_BATCH; ) {
+					if(!it.next().equals(host)) {
+						it.remove();
+						evicted++;
+					}
+				}
+			}
+			if(logger.isDebugEnabled()) {
+				logger.debug("more than " + MAX_RESOLVED_HOSTS + " hosts resolved, evicted " + evicted);
+			}
+		} finally {
+			evicting.set(false);
+		}
+	}
+}
@@ -0,0 +1,214 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.servlet.sip.core;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.mobicents.servlet.sip.core.session.SessionMailbox;
+
+/**
+ * Serial write queues for the messages sent asynchronously by the applications.
+ * The destinations are spread over a fixed number of {@link SessionMailbox} stripes running on an executor of 
+ * {@link #WRITER_THREADS} threads dedicated to the writes, apart from the dispatcher executor,
+ * so the messages going to the same destination are written in the order they were sent, 
+ * a destination whose socket buffers are full only holds the worker of its own stripe
+ * and no queue ever needs to be evicted when a destination goes away.
+ *
+ * The messages sent synchronously go through {@link #write(String, Callable)} so that they don't overtake 
+ * the ones sent asynchronously to the same destination which are still waiting in its queue.
+ * The number of queued messages is counted per destination, so a synchronous write is only queued 
+ * behind the messages of its own destination, not behind the other destinations of its stripe.
+ */
+final class OutboundWriteQueues {
+	// power of two so that the stripe can be masked out of the destination hash
+	static final int STRIPES = 256;
+	// number of destinations which can be written to at the same time
+	static final int WRITER_THREADS = 8;
+
+	// true while the current thread is writing a queued message
+	private static final ThreadLocal<Boolean> writing = new ThreadLocal<Boolean>();
+
+	private final SessionMailbox[] stripes = new SessionMailbox[STRIPES];
+	// number of messages queued and not written yet per destination, only destinations with queued messages are present
+	private final ConcurrentMap<String, AtomicInteger> pending = new ConcurrentHashMap<String, AtomicInteger>();
+	// synchronous writes waiting in a queue, failed by stop()
+	private final Set<FutureTask<?>> waitingWrites = Collections.newSetFromMap(new ConcurrentHashMap<FutureTask<?>, Boolean>());
+	private volatile boolean stopped;
+
+	OutboundWriteQueues(Executor executor) {
+		for (int i = 0; i < STRIPES; i++) {
+			stripes[i] = new SessionMailbox(executor);
+		}
+	}
+
+	/**
+	 * @param destination the transport, host and port the message is written to
+	 * @return the serial executor writing to this destination
+	 */
+	Executor get(String destination) {
+		return new DestinationQueue(destination);
+	}
+
+	private SessionMailbox getStripe(String destination) {
+		int hash = destination.hashCode();
+		// spread the high bits, the destinations often differ only by their last characters
+		hash ^= (hash >>> 16);
+		return stripes[hash & (STRIPES - 1)];
+	}
+
+	/**
+	 * Writes a message sent synchronously to the given destination. 
+	 * The write runs on the calling thread, unless messages sent asynchronously to the same destination 
+	 * are still waiting in its queue: it is then queued behind them and the calling thread waits for its outcome.
+	 * @param destination the transport, host and port the message is written to
+	 * @param write the transport write of the message
+	 * @return the result of the write
+	 * @throws InterruptedIOException if the calling thread was interrupted before the queued write started
+	 * @throws IOException if the queues were stopped before the queued write started
+	 * @throws Exception the exception thrown by the write
+	 */
+	<T> T write(String destination, Callable<T> write) throws Exception {
+		// the writer threads never wait for each other, a message sent from a send listener 
+		// is written right away, after the one being notified anyway
+		if(!pending.containsKey(destination) || writing.get() != null) {
+			return write.call();
+		}
+		final FutureTask<T> task = new FutureTask<T>(write);
+		waitingWrites.add(task);
+		boolean interrupted = false;
+		try {
+			if(stopped) {
+				throw new IOException("the outbound write queues are stopped, " + destination + " can't be written to");
+			}
+			get(destination).execute(task);
+			while(true) {
+				try {
+					return task.get();
+				} catch (InterruptedException e) {
+					interrupted = true;
+					// the write can only be taken back if it didn't start yet, otherwise its outcome is awaited
+					if(task.cancel(false)) {
+						throw new InterruptedIOException("interrupted while waiting to write to " + destination);
+					}
+				}
+			}
+		} catch (CancellationException e) {
+			throw new IOException("the outbound write queues were stopped before " + destination + " was written to");
+		} catch (ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if(cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw (Exception) cause;
+		} finally {
+			waitingWrites.remove(task);
+			if(interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Fails the synchronous writes waiting in a queue, to be called when the executor of the queues is shut down 
+	 * as the messages still queued will never be written
+	 */
+	void stop() {
+		stopped = true;
+		for (FutureTask<?> task : waitingWrites) {
+			task.cancel(false);
+		}
+	}
+
+	/**
+	 * @return the number of messages waiting to be written
+	 */
+	int size() {
+		int size = 0;
+		for (SessionMailbox stripe : stripes) {
+			size += stripe.size();
+		}
+		return size;
+	}
+
+	private void incrementPending(String destination) {
+		while(true) {
+			final AtomicInteger count = pending.get(destination);
+			if(count == null) {
+				if(pending.putIfAbsent(destination, new AtomicInteger(1)) == null) {
+					return;
+				}
+				continue;
+			}
+			final int value = count.get();
+			if(value > 0) {
+				if(count.compareAndSet(value, value + 1)) {
+					return;
+				}
+			} else {
+				// the last queued message was just written, its counter is on its way out of the map
+				pending.remove(destination, count);
+			}
+		}
+	}
+
+	private void decrementPending(String destination) {
+		final AtomicInteger count = pending.get(destination);
+		if(count.decrementAndGet() == 0) {
+			pending.remove(destination, count);
+		}
+	}
+
+	// keeps track of the messages queued to the stripe of a destination until they are written
+	private final class DestinationQueue implements Executor {
+		private final String destination;
+
+		DestinationQueue(String destination) {
+			this.destination = destination;
+		}
+
+		public void execute(final Runnable task) {
+			incrementPending(destination);
+			// even when the executor rejects the drain pass, the task stays in the mailbox until the next one
+			getStripe(destination).execute(new Runnable() {
+				public void run() {
+					writing.set(Boolean.TRUE);
+					try {
+						task.run();
+					} finally {
+						writing.remove();
+						decrementPending(destination);
+					}
+				}
+			});
+		}
+	}
+}
@@ -0,0 +1,245 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.servlet.sip.core;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.mobicents.servlet.sip.core.dispatchers.MessageDispatcher;
+
+/**
+ * Routing token the container puts in the Via branch of the requests it sends so that the responses can be routed back
+ * to the application session that sent the request.<br/>
+ * 
+ * The token has a fixed layout following the RFC 3261 magic cookie : a marker, a version, the index of the application 
+ * (6 hexadecimal digits), the identifier of the node that created the token (4 hexadecimal digits, only when the node 
+ * has a jvmRoute), the application session id and, after an underscore, a random part. The index of an application 
+ * is derived from its name in the same way on every node so a token created by a node can be decoded by any other node 
+ * of the cluster. The node identifier is a hash of the jvmRoute, which stays the same across restarts of the node.<br/>
+ * 
+ * Encoding only hashes the jvmRoute when it changes and decoding reads the fixed fields in place, 
+ * only the application session id is extracted.
+ */
+public final class RoutingToken {
+	private static final String BRANCH_MAGIC_COOKIE = MessageDispatcher.BRANCH_MAGIC_COOKIE;
+	// the marker distinguishes the token from the branches created by previous versions,
+	// which start directly with the application session id
+	public static final char MARKER = '.';
+	public static final char VERSION = '1';
+	// same layout with the node identifier after the application index
+	public static final char VERSION_WITH_NODE_ID = '2';
+	public static final char SEPARATOR = '_';
+	
+	public static final int APPLICATION_INDEX_DIGITS = 6;
+	public static final int MAX_APPLICATION_INDEX = (1 << (APPLICATION_INDEX_DIGITS * 4)) - 1;
+	public static final int NODE_ID_DIGITS = 4;
+	public static final int MAX_NODE_ID = (1 << (NODE_ID_DIGITS * 4)) - 1;
+	public static final int NO_NODE_ID = -1;
+	
+	private static final int APPLICATION_INDEX_OFFSET = BRANCH_MAGIC_COOKIE.length() + 2;
+	private static final int NODE_ID_OFFSET = APPLICATION_INDEX_OFFSET + APPLICATION_INDEX_DIGITS;
+	private static final int RANDOM_DIGITS = 32;
+	
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+	
+	// last jvmRoute hashed by getNodeId(String) along with its hash
+	private static volatile NodeId lastNodeId;
+	
+	private final int applicationIndex;
+	private final int nodeId;
+	private final String applicationSessionId;
+	
+	private RoutingToken(int applicationIndex, int nodeId, String applicationSessionId) {
+		this.applicationIndex = applicationIndex;
+		this.nodeId = nodeId;
+		this.applicationSessionId = applicationSessionId;
+	}
+	
+	/**
+	 * Computes the index of an application from its name, FNV-1a folded on the size of the index field
+	 * @param applicationName the name of the application
+	 * @return the index of the application, the dispatcher refuses to deploy an application whose index is already taken
+	 */
+	public static int getApplicationIndex(String applicationName) {
+		final int hash = fnv1a(applicationName);
+		return (hash ^ (hash >>> 24)) & MAX_APPLICATION_INDEX;
+	}
+	
+	/**
+	 * Computes the identifier of a node from its jvmRoute, FNV-1a folded on the size of the node identifier field
+	 * @param jvmRoute the jvmRoute of the node, may be null
+	 * @return the identifier of the node, {@link #NO_NODE_ID} if the jvmRoute is null
+	 */
+	public static int getNodeId(String jvmRoute) {
+		if(jvmRoute == null) {
+			return NO_NODE_ID;
+		}
+		final NodeId last = lastNodeId;
+		if(last != null && last.jvmRoute.equals(jvmRoute)) {
+			return last.nodeId;
+		}
+		final int hash = fnv1a(jvmRoute);
+		final int nodeId = (hash ^ (hash >>> 16)) & MAX_NODE_ID;
+		lastNodeId = new NodeId(jvmRoute, nodeId);
+		return nodeId;
+	}
+	
+	private static int fnv1a(String s) {
+		int hash = 0x811c9dc5;
+		for (int i = 0; i < s.length(); i++) {
+			hash ^= s.charAt(i);
+			hash *= 0x01000193;
+		}
+		return hash;
+	}
+	
+	/**
+	 * Creates a Via branch carrying a routing token with a random part
+	 * @param nodeId the identifier of the node, {@link #NO_NODE_ID} to leave it out of the token
+	 */
+	public static String createBranch(int applicationIndex, int nodeId, String applicationSessionId) {
+		final StringBuilder branch = newBranch(applicationIndex, nodeId, applicationSessionId, RANDOM_DIGITS);
+		final ThreadLocalRandom random = ThreadLocalRandom.current();
+		appendHex(branch, random.nextLong(), 16);
+		appendHex(branch, random.nextLong(), 16);
+		return branch.toString();
+	}
+	
+	/**
+	 * Creates a Via branch carrying a routing token with the given random part, 
+	 * any separator in it is replaced so that the token can still be decoded
+	 */
+	public static String createBranch(int applicationIndex, int nodeId, String applicationSessionId, String random) {
+		if(random.indexOf(SEPARATOR) != -1) {
+			random = random.replace(SEPARATOR, '-');
+		}
+		return newBranch(applicationIndex, nodeId, applicationSessionId, random.length()).append(random).toString();
+	}
+	
+	private static StringBuilder newBranch(int applicationIndex, int nodeId, String applicationSessionId, int randomLength) {
+		if(applicationIndex < 0 || applicationIndex > MAX_APPLICATION_INDEX) {
+			throw new IllegalArgumentException("application index " + applicationIndex + " out of range");
+		}
+		if(nodeId < NO_NODE_ID || nodeId > MAX_NODE_ID) {
+			throw new IllegalArgumentException("node id " + nodeId + " out of range");
+		}
+		final StringBuilder branch = new StringBuilder(NODE_ID_OFFSET + NODE_ID_DIGITS + applicationSessionId.length() + 1 + randomLength);
+		branch.append(BRANCH_MAGIC_COOKIE).append(MARKER);
+		if(nodeId == NO_NODE_ID) {
+			branch.append(VERSION);
+			appendHex(branch, applicationIndex, APPLICATION_INDEX_DIGITS);
+		} else {
+			branch.append(VERSION_WITH_NODE_ID);
+			appendHex(branch, applicationIndex, APPLICATION_INDEX_DIGITS);
+			appendHex(branch, nodeId, NODE_ID_DIGITS);
+		}
+		return branch.append(applicationSessionId).append(SEPARATOR);
+	}
+	
+	private static void appendHex(StringBuilder sb, long value, int digits) {
+		for (int shift = (digits - 1) * 4; shift >= 0; shift -= 4) {
+			sb.append(HEX_DIGITS[(int) (value >>> shift) & 0xf]);
+		}
+	}
+	
+	/**
+	 * Decodes the routing token of a Via branch
+	 * @param branch the Via branch
+	 * @return the routing token, null if the branch wasn't created by this version of the container
+	 */
+	public static RoutingToken parseBranch(String branch) {
+		if(branch == null || branch.length() <= NODE_ID_OFFSET
+				|| !branch.startsWith(BRANCH_MAGIC_COOKIE) 
+				|| branch.charAt(APPLICATION_INDEX_OFFSET - 2) != MARKER) {
+			return null;
+		}
+		final int nodeId;
+		final int applicationSessionIdOffset;
+		final char version = branch.charAt(APPLICATION_INDEX_OFFSET - 1);
+		if(version == VERSION) {
+			nodeId = NO_NODE_ID;
+			applicationSessionIdOffset = NODE_ID_OFFSET;
+		} else if(version == VERSION_WITH_NODE_ID && branch.length() > NODE_ID_OFFSET + NODE_ID_DIGITS) {
+			nodeId = parseHex(branch, NODE_ID_OFFSET, NODE_ID_DIGITS);
+			applicationSessionIdOffset = NODE_ID_OFFSET + NODE_ID_DIGITS;
+		} else {
+			return null;
+		}
+		final int applicationIndex = parseHex(branch, APPLICATION_INDEX_OFFSET, APPLICATION_INDEX_DIGITS);
+		// the random part never contains the separator but the application session id may
+		final int separator = branch.lastIndexOf(SEPARATOR);
+		if(applicationIndex < 0 || (version == VERSION_WITH_NODE_ID && nodeId < 0) || separator <= applicationSessionIdOffset) {
+			return null;
+		}
+		return new RoutingToken(applicationIndex, nodeId, branch.substring(applicationSessionIdOffset, separator));
+	}
+	
+	/**
+	 * @return the value of the hexadecimal digits, -1 if one of the characters isn't an hexadecimal digit
+	 */
+	private static int parseHex(String s, int offset, int digits) {
+		int value = 0;
+		for (int i = offset; i < offset + digits; i++) {
+			final int digit = Character.digit(s.charAt(i), 16);
+			if(digit < 0) {
+				return -1;
+			}
+			value = (value << 4) | digit;
+		}
+		return value;
+	}
+
+	/**
+	 * @return the index of the application, see {@link SipApplicationDispatcher#getApplicationNameFromIndex(int)}
+	 */
+	public int getApplicationIndex() {
+		return applicationIndex;
+	}
+
+	/**
+	 * @return the identifier of the node that created the token, see {@link #getNodeId(String)}, 
+	 * {@link #NO_NODE_ID} if that node has no jvmRoute
+	 */
+	public int getNodeId() {
+		return nodeId;
+	}
+
+	/**
+	 * @return the id of the application session
+	 */
+	public String getApplicationSessionId() {
+		return applicationSessionId;
+	}
+	
+	@Override
+	public String toString() {
+		return "RoutingToken[applicationIndex=" + applicationIndex + ", nodeId=" + nodeId + ", applicationSessionId=" + applicationSessionId + "]";
+	}
+	
+	private static final class NodeId {
+		final String jvmRoute;
+		final int nodeId;
+		
+		NodeId(String jvmRoute, int nodeId) {
+			this.jvmRoute = jvmRoute;
+			this.nodeId = nodeId;
+		}
+	}
+}
@@ -37,16 +37,21 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -97,6 +102,7 @@ import javax.sip.message.Response;
 
 import org.apache.log4j.Logger;
 import org.mobicents.ext.javax.sip.dns.DNSServerLocator;
+import org.mobicents.ext.javax.sip.dns.DefaultDNSLookupPerformer;
 import org.mobicents.ha.javax.sip.LoadBalancerHeartBeatingListener;
 import org.mobicents.ha.javax.sip.SipLoadBalancer;
 import org.mobicents.javax.servlet.CongestionControlEvent;
@@ -119,7 +125,20 @@ import org.mobicents.servlet.sip.core.session.MobicentsSipApplicationSession;
 import org.mobicents.servlet.sip.core.session.MobicentsSipSession;
 import org.mobicents.servlet.sip.core.session.MobicentsSipSessionKey;
 import org.mobicents.servlet.sip.core.session.SessionManagerUtil;
+import org.mobicents.servlet.sip.core.congestion.QueueDelayCongestionController;
+import org.mobicents.servlet.sip.core.congestion.TimestampedTask;
 import org.mobicents.servlet.sip.core.session.SipApplicationSessionKey;
+import org.mobicents.servlet.sip.core.statistics.LatencyHistogram;
+import org.mobicents.servlet.sip.core.statistics.SipStatistics;
+import org.mobicents.servlet.sip.core.statistics.SipStatisticsExporter;
+import org.mobicents.servlet.sip.core.timers.HashedWheelTimer;
+import org.mobicents.servlet.sip.core.timers.SharedProxyTimerService;
+import org.mobicents.servlet.sip.core.timers.SharedSipApplicationSessionTimerService;
+import org.mobicents.servlet.sip.core.timers.TimerServiceImpl;
+import org.mobicents.servlet.sip.core.timers.WheelProxyTimerService;
+import org.mobicents.servlet.sip.core.timers.WheelSipApplicationSessionTimerService;
+import org.mobicents.servlet.sip.dns.AsynchronousDNSServerLocator;
+import org.mobicents.servlet.sip.dns.CachingDNSLookupPerformer;
 import org.mobicents.servlet.sip.dns.MobicentsDNSResolver;
 import org.mobicents.servlet.sip.listener.SipConnectorListener;
 import org.mobicents.servlet.sip.message.SipFactoryImpl;
@@ -152,9 +171,6 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 	// List of sip rfcs supported by the container
 	private static final String[] RFC_SUPPORTED = 
 		{"3261", "3428", "2976", "3265", "3311", "3903", "3515", "3262", "3489", "3327", "3911", "5626", "4916", "5627"};
-
-	private static final String[] RESPONSES_PER_CLASS_OF_SC = 
-		{"1XX", "2XX", "3XX", "4XX", "5XX", "6XX", "7XX", "8XX", "9XX"};
 	
 	/**
 	 * Timer task that will gather information about congestion control 
@@ -199,6 +215,9 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 	private Map<String, String> mdToApplicationName = null;
 	//map app names to hashes
 	private Map<String, String> applicationNameToMd = null;
+	//indexes of the applications carried in the routing token of the Via branches
+	private volatile ApplicationIndexTable applicationIndexTable = ApplicationIndexTable.EMPTY;
+	private final Object applicationIndexLock = new Object();
 	//List of host names managed by the container
 	private Set<String> hostNames = null;
 	
@@ -210,38 +229,16 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 	private DNSServerLocator dnsServerLocator;
 	private int dnsTimeout;
 	private DNSResolver dnsResolver;
+	// null unless asynchronous DNS resolution is enabled
+	private AsynchronousDNSServerLocator asynchronousDNSServerLocator;
 	
 	// stats
 	private boolean gatherStatistics = true;
-	private static AtomicLong requestsProcessed = new AtomicLong(0);
-	private static AtomicLong responsesProcessed = new AtomicLong(0);
-	static final Map<String, AtomicLong> requestsProcessedByMethod = new ConcurrentHashMap<String, AtomicLong>();
-	static {
-		for (String method : METHODS_SUPPORTED) {
-			requestsProcessedByMethod.put(method, new AtomicLong(0));
-		}
-	}
-	static final Map<String, AtomicLong> responsesProcessedByStatusCode = new ConcurrentHashMap<String, AtomicLong>();
-	static {
-		for (String classOfSc : RESPONSES_PER_CLASS_OF_SC) {
-			responsesProcessedByStatusCode.put(classOfSc, new AtomicLong(0));
-		}
-	}
-	// https://telestax.atlassian.net/browse/MSS-74
-	private static AtomicLong requestsSent = new AtomicLong(0);
-	private static AtomicLong responsesSent= new AtomicLong(0);
-	static final Map<String, AtomicLong> requestsSentByMethod = new ConcurrentHashMap<String, AtomicLong>();
-	static {
-		for (String method : METHODS_SUPPORTED) {
-			requestsSentByMethod.put(method, new AtomicLong(0));
-		}
-	}
-	static final Map<String, AtomicLong> responsesSentByStatusCode = new ConcurrentHashMap<String, AtomicLong>();
-	static {
-		for (String classOfSc : RESPONSES_PER_CLASS_OF_SC) {
-			responsesSentByStatusCode.put(classOfSc, new AtomicLong(0));
-		}
-	}
+	private final SipStatistics sipStatistics = new SipStatistics(METHODS_SUPPORTED);
+	// null unless an exporter has been plugged
+	private SipStatisticsExporter statisticsExporter;
+	private long statisticsExportInterval = 60000;
+	private ScheduledFuture<?> statisticsExportFuture;
 	// congestion control
 	private boolean memoryToHigh = false;	
 	private double maxMemory;
@@ -262,8 +259,14 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 	private int queueSize;
 	@Deprecated
 	private int backToNormalQueueSize;
+	// queueing delay based congestion control, disabled if the target is 0
+	private long queueDelayTarget;
+	private long queueDelayInterval = 100;
+	private QueueDelayCongestionController queueDelayCongestionController;
 	//used for graceful stops and congestion control mechanism (which is now deprecated)
 	private ScheduledThreadPoolExecutor asynchronousScheduledThreadPoolExecutor = null;
+	// container wide scheduler shared by the timer services of all the deployed applications
+	private ScheduledThreadPoolExecutor timerScheduler = null;
 	
 	// configuration
 	private boolean bypassResponseExecutor = true;
@@ -281,6 +284,18 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 	// This executor is used for async things that don't need to wait on session executors, like CANCEL requests
 	// or when the container is configured to execute every request ASAP without waiting on locks (no concurrency control)
 	private ThreadPoolExecutor asynchronousExecutor = null;
+	private DispatcherExecutionMode dispatcherExecutionMode = DispatcherExecutionMode.Pooled;
+	// single threaded executors the SIP messages are spread over by Call-ID, only created in Sharded mode
+	private ThreadPoolExecutor[] dispatcherShards = null;
+	// tasks submitted to the asynchronous executor and not completed yet, only maintained in Elastic mode 
+	// where the tasks are mostly running or blocked on a thread rather than waiting in the queue
+	private final AtomicInteger pendingTasks = new AtomicInteger();
+	// cleanup of terminated transactions and dialogs, coalesced per sip session and drained behind the live traffic
+	private TerminationCleanupPipeline terminationCleanupPipeline;
+	// per destination queues of the messages sent asynchronously by the applications
+	private OutboundWriteQueues outboundWriteQueues;
+	// runs the write queues, kept apart from the asynchronous executor so that slow destinations never hold its workers
+	private ThreadPoolExecutor outboundWriteExecutor = null;
 	
 	// fatcory for dispatching SIP messages
 	private MessageDispatcherFactory messageDispatcherFactory;
@@ -372,6 +387,25 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 			}
 			dnsResolver = new MobicentsDNSResolver(dnsServerLocator);
 		}	
+		if(dnsServerLocator != null && sipService.isAsynchronousDnsResolution()) {
+			if(logger.isInfoEnabled()) {
+				logger.info("SipApplicationDispatcher will be resolving outgoing requests asynchronously");
+			}
+			// only replace the stock lookup performer, a custom one is left untouched
+			if(dnsServerLocator.getDnsLookupPerformer() != null && 
+					dnsServerLocator.getDnsLookupPerformer().getClass() == DefaultDNSLookupPerformer.class) {
+				if(logger.isInfoEnabled()) {
+					logger.info("DNSServerLocator will be caching NAPTR and SRV answers");
+				}
+				CachingDNSLookupPerformer.boundAddressCache();
+				final CachingDNSLookupPerformer cachingDNSLookupPerformer = new CachingDNSLookupPerformer();
+				if(dnsTimeout > 0) {
+					cachingDNSLookupPerformer.setDNSTimeout(dnsTimeout);
+				}
+				dnsServerLocator.setDnsLookupPerformer(cachingDNSLookupPerformer);
+			}
+			asynchronousDNSServerLocator = new AsynchronousDNSServerLocator(dnsServerLocator);
+		}
 		
 		if( oname == null ) {
 			try {				
@@ -410,8 +444,25 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 		asynchronousScheduledThreadPoolExecutor = new ScheduledThreadPoolExecutor(2, new NamingThreadFactory("sip_servlets_congestion_control"),
 				new ThreadPoolExecutor.CallerRunsPolicy());
 		asynchronousScheduledThreadPoolExecutor.prestartAllCoreThreads();	
-		logger.info("AsynchronousThreadPoolExecutor size is " + sipService.getDispatcherThreadPoolSize());		
-		asynchronousExecutor = new ThreadPoolExecutor(sipService.getDispatcherThreadPoolSize(), 64, 90, TimeUnit.SECONDS,
+		timerScheduler = new ScheduledThreadPoolExecutor(TimerServiceImpl.SCHEDULER_THREAD_POOL_DEFAULT_SIZE, new NamingThreadFactory("sip_servlets_timer_scheduler"));
+		// cancelled timers are removed right away so no purge of the queue is needed
+		timerScheduler.setRemoveOnCancelPolicy(true);
+		timerScheduler.prestartAllCoreThreads();
+		final boolean elastic = DispatcherExecutionMode.Elastic.equals(dispatcherExecutionMode);
+		final int corePoolSize;
+		final int maxPoolSize;
+		if(elastic) {
+			// as long as there are less threads than the core pool size, the executor starts a new thread for each task
+			// so with core threads timing out this gives a thread per task up to the max, queueing beyond it
+			corePoolSize = DispatcherExecutionMode.ELASTIC_MAX_THREADS;
+			maxPoolSize = DispatcherExecutionMode.ELASTIC_MAX_THREADS;
+			logger.info("AsynchronousThreadPoolExecutor is elastic, up to " + maxPoolSize + " threads");
+		} else {
+			corePoolSize = sipService.getDispatcherThreadPoolSize();
+			maxPoolSize = 64;
+			logger.info("AsynchronousThreadPoolExecutor size is " + corePoolSize);
+		}
+		asynchronousExecutor = new ThreadPoolExecutor(corePoolSize, maxPoolSize, 90, TimeUnit.SECONDS,
 				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
 		            private int threadCount = 0;
 		
@@ -421,16 +472,69 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 		            	thread.setPriority(((SipStackImpl)sipStack).getThreadPriority());
 		            	return thread;
 		            }
-        });		
+        }) {
+			@Override
+			public void execute(Runnable command) {
+				if(elastic) {
+					pendingTasks.incrementAndGet();
+				}
+				super.execute(command);
+			}
+			
+			@Override
+			protected void beforeExecute(Thread thread, Runnable runnable) {
+				final QueueDelayCongestionController queueDelayController = queueDelayCongestionController;
+				if(queueDelayController != null && runnable instanceof TimestampedTask) {
+					queueDelayController.onDequeue(System.nanoTime() - ((TimestampedTask)runnable).getSubmissionTime());
+				}
+			}
+			
+			@Override
+			protected void afterExecute(Runnable runnable, Throwable throwable) {
+				if(elastic) {
+					pendingTasks.decrementAndGet();
+				}
+			}
+		};		
+		if(elastic) {
+			asynchronousExecutor.allowCoreThreadTimeOut(true);
+		}
 		asynchronousExecutor.setRejectedExecutionHandler(new RejectedExecutionHandler(){
 
 			public void rejectedExecution(Runnable r,
 					ThreadPoolExecutor executor) {
+				if(elastic) {
+					pendingTasks.decrementAndGet();
+				}
 				logger.warn("Executor job was rejected " + r.toString());
 				
 			}
 			
 		});
+		if(!dispatcherExecutionMode.supports(concurrencyControlMode)) {
+			logger.error("The " + dispatcherExecutionMode + " dispatcher execution mode requires the Transaction, SipApplicationSessionMailbox or None concurrency control mode, " 
+					+ "its threads would block on the session locks of the " + concurrencyControlMode + " mode, falling back to " + DispatcherExecutionMode.Pooled);
+			dispatcherExecutionMode = DispatcherExecutionMode.Pooled;
+		}
+		if(DispatcherExecutionMode.Sharded.equals(dispatcherExecutionMode)) {
+			final ThreadPoolExecutor[] shards = new ThreadPoolExecutor[sipService.getDispatcherThreadPoolSize()];
+			for (int i = 0; i < shards.length; i++) {
+				shards[i] = createDispatcherShard(i);
+			}
+			dispatcherShards = shards;
+			// the messages have to leave the stack threads to reach the shard of their call
+			bypassRequestExecutor = false;
+			bypassResponseExecutor = false;
+			logger.info("SIP messages dispatched over " + shards.length + " shards by Call-ID, request and response executors are not bypassed");
+		}
+		terminationCleanupPipeline = new TerminationCleanupPipeline(this, asynchronousExecutor, asynchronousScheduledThreadPoolExecutor);
+		outboundWriteExecutor = new ThreadPoolExecutor(OutboundWriteQueues.WRITER_THREADS, OutboundWriteQueues.WRITER_THREADS, 90, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new NamingThreadFactory("sip_servlets_outbound_writer"));
+		outboundWriteExecutor.allowCoreThreadTimeOut(true);
+		outboundWriteQueues = new OutboundWriteQueues(outboundWriteExecutor);
+		if(queueDelayTarget > 0) {
+			queueDelayCongestionController = createQueueDelayCongestionController();
+		}
 	}
 	/**
 	 * {@inheritDoc}
@@ -456,6 +560,7 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 		 		logger.info("No Congestion control background task started since the checking interval is equals to " + congestionControlCheckingInterval + " milliseconds.");
 		 	}
 		}
+		scheduleStatisticsExport();
 		Version.printVersion();
 		// outbound interfaces set here and not in sipstandardcontext because
 		// depending on jboss or tomcat context can be started before or after
@@ -503,7 +608,19 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 			statusLock.unlock();
 		}
 		asynchronousScheduledThreadPoolExecutor.shutdownNow();
+		timerScheduler.shutdownNow();
 		asynchronousExecutor.shutdownNow();						
+		outboundWriteExecutor.shutdownNow();
+		// the messages still queued will never be written, the threads waiting for them are released
+		outboundWriteQueues.stop();
+		if(dispatcherShards != null) {
+			for (ThreadPoolExecutor dispatcherShard : dispatcherShards) {
+				dispatcherShard.shutdownNow();
+			}
+		}
+		if(asynchronousDNSServerLocator != null) {
+			asynchronousDNSServerLocator.stop();
+		}
 		sipApplicationRouter.destroy();
 		
 		stopSipStack();				
@@ -551,8 +668,18 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 				logger.info("Concurrency control mode for application " + sipApplicationName + " is " + sipApplication.getConcurrencyControlMode());
 			}
 		}
+		if(!dispatcherExecutionMode.supports(sipApplication.getConcurrencyControlMode())) {
+			final String message = "The concurrency control mode " + sipApplication.getConcurrencyControlMode() + " of the application " + sipApplicationName 
+					+ " is not supported by the " + dispatcherExecutionMode + " dispatcher execution mode, use Transaction or SipApplicationSessionMailbox instead";
+			logger.error(message);
+			throw new IllegalStateException(message);
+		}
 		sipApplication.getServletContext().setAttribute(ConcurrencyControlMode.class.getCanonicalName(), sipApplication.getConcurrencyControlMode());		
 		
+		// the routing index has to be the same on all the nodes, the deployment fails if it is taken by another application
+		synchronized (applicationIndexLock) {
+			applicationIndexTable = applicationIndexTable.add(sipApplicationName);
+		}
 		applicationDeployed.put(sipApplicationName, sipApplication);
 
 		String hash = GenericUtils.hashString(sipApplicationName, tagHashMaxLength);
@@ -603,6 +730,9 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 		String hash = GenericUtils.hashString(sipApplicationName, tagHashMaxLength);
 		mdToApplicationName.remove(hash);
 		applicationNameToMd.remove(sipApplicationName);
+		synchronized (applicationIndexLock) {
+			applicationIndexTable = applicationIndexTable.remove(sipApplicationName);
+		}
 		if(logger.isInfoEnabled()) {
 			logger.info("the following sip servlet application has been removed : " + sipApplicationName);
 		}
@@ -665,7 +795,17 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 	 * Gives the number of pending messages in all queues for all concurrency control modes.
 	 */
 	public int getNumberOfPendingMessages() {
-		return this.asynchronousExecutor.getQueue().size();
+		if(DispatcherExecutionMode.Elastic.equals(dispatcherExecutionMode)) {
+			// with a thread per task the queue stays mostly empty, the work piles up on the threads instead
+			return pendingTasks.get();
+		}
+		int size = this.asynchronousExecutor.getQueue().size();
+		if(dispatcherShards != null) {
+			for (ThreadPoolExecutor dispatcherShard : dispatcherShards) {
+				size += dispatcherShard.getQueue().size();
+			}
+		}
+		return size;
 //		int size = 0;
 //		Iterator<SipContext> applicationsIterator = this.applicationDeployed
 //				.values().iterator();
@@ -855,7 +995,9 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 			try {
 				// congestion control is done here so that the STX is created and a response can be generated back
 				// and that 
-				if(controlCongestion(request, sipServletRequest, dialog, routeHeader, sipProvider)) {
+				// with the DropMessage policy the request has already been admitted before the STX creation
+				if(!CongestionControlPolicy.DropMessage.equals(congestionControlPolicy) && 
+						controlCongestion(request, sipServletRequest, dialog, routeHeader, sipProvider)) {
 					return;
 				}
 				messageDispatcherFactory.getRequestDispatcher(sipServletRequest, this).
@@ -911,7 +1053,8 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 	}
 
 	private boolean controlCongestion(Request request, SipServletRequestImpl sipServletRequest, Dialog dialog, RouteHeader routeHeader, SipProvider sipProvider) {
-		if(rejectSipMessages || memoryToHigh) {
+		final QueueDelayCongestionController queueDelayController = queueDelayCongestionController;
+		if(rejectSipMessages || memoryToHigh || (queueDelayController != null && queueDelayController.isCongested())) {
 			String method = request.getMethod();
 			boolean goodMethod = method.equals(Request.ACK) || method.equals(Request.PRACK) || method.equals(Request.BYE) || method.equals(Request.CANCEL) || method.equals(Request.UPDATE) || method.equals(Request.INFO);
 			if(logger.isDebugEnabled()) {
@@ -919,19 +1062,34 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 			}
 			if(!goodMethod) {
 				if(dialog == null && (routeHeader == null || ((Parameters)routeHeader.getAddress().getURI()).getParameter(MessageDispatcher.RR_PARAM_PROXY_APP) == null)) {
+					// graded admission of initial requests when only the queueing delay is too high
+					final boolean queueDelayRejection = !rejectSipMessages && !memoryToHigh;
+					if(queueDelayRejection && queueDelayController.admitInitialRequest()) {
+						return false;
+					}
 					if(CongestionControlPolicy.DropMessage.equals(congestionControlPolicy)) {
-						logger.error("dropping request, memory is too high or too many messages present in queues");
+						if(queueDelayRejection) {
+							if(logger.isDebugEnabled()) {
+								logger.debug("dropping request, queueing delay is too high, congestion level " + queueDelayController.getLevel());
+							}
+						} else {
+							logger.error("dropping request, memory is too high or too many messages present in queues");
+						}
 						return true;
 					}
 					SipServletResponse sipServletResponse = null;
 					String message = null;
+					org.mobicents.javax.servlet.CongestionControlEvent.Reason reason = org.mobicents.javax.servlet.CongestionControlEvent.Reason.Memory;
 					if(rejectSipMessages) {
 						message = "Number of pending messages in the queues : " + numberOfMessagesInQueue + " > to the queue Size : " + queueSize;
 					} else if (memoryToHigh) {
 						message = "Memory used: " + percentageOfMemoryUsed + "% > to the memory threshold : " + memoryThreshold + "%";
+					} else {
+						message = "Queueing delay : " + queueDelayController.getLastQueueDelay() + "ms > to the target : " + queueDelayController.getTarget() + "ms";
+						reason = org.mobicents.javax.servlet.CongestionControlEvent.Reason.Queue;
 					}
 					final CongestionControlEvent congestionControlEvent = new CongestionControlEvent(
-							org.mobicents.javax.servlet.CongestionControlEvent.Reason.Memory, message);
+							reason, message);
 					
 					for (SipContext sipContext : applicationDeployed.values()) {
 						final ContainerListener containerListener = 
@@ -966,7 +1124,9 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 					}
 					// no application implements the container listener or the container listener didn't generate any responses so we send back a generic one.
 					if(sipServletResponse == null) {
-						MessageDispatcher.sendErrorResponse(this, Response.SERVICE_UNAVAILABLE, (ServerTransaction) sipServletRequest.getTransaction(), request, sipProvider);						
+						// the more congested, the later clients are asked to retry
+						final int retryAfter = queueDelayRejection ? queueDelayController.getLevel() : -1;
+						MessageDispatcher.sendErrorResponse(this, Response.SERVICE_UNAVAILABLE, (ServerTransaction) sipServletRequest.getTransaction(), request, sipProvider, retryAfter);						
 						return true;
 					}
 				}
@@ -980,29 +1140,7 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 	 */
 	public void updateRequestsStatistics(final Request request, final boolean processed) {
 		if(gatherStatistics) {
-			AtomicLong requestsStats = null;			
-			if(processed) {
-				requestsStats = requestsProcessed;
-			} else {
-				requestsStats = requestsSent;
-			}
-			requestsStats.incrementAndGet();
-			final String method = request.getMethod();
-			AtomicLong requestsStatsMethod = null;
-			if(processed) {
-				requestsStatsMethod = requestsProcessedByMethod.get(method);
-			} else {
-				requestsStatsMethod = requestsSentByMethod.get(method);
-			}
-			if(requestsStatsMethod == null) {
-				if(processed) {
-					requestsProcessedByMethod.put(method, new AtomicLong());
-				} else {
-					requestsSentByMethod.put(method, new AtomicLong());
-				}
-			} else {
-				requestsStatsMethod.incrementAndGet();
-			}
+			sipStatistics.updateRequestsStatistics(request.getMethod(), processed);
 		}
 	}
 	
@@ -1011,50 +1149,30 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 	 */
 	public void updateResponseStatistics(final Response response, final boolean processed) {
 		if(gatherStatistics) {
-			AtomicLong responsesStats = null;			
-			Map<String, AtomicLong> responsesStatsStatusCode = null;
-			if(processed) {
-				responsesStats = responsesProcessed;
-				responsesStatsStatusCode = responsesProcessedByStatusCode;
-			} else {
-				responsesStats = responsesSent;
-				responsesStatsStatusCode = responsesSentByStatusCode;
-			}
-			responsesStats.incrementAndGet();	
-			final int statusCode = response.getStatusCode();
-			int statusCodeDiv = statusCode / 100;
-			switch (statusCodeDiv) {
-				case 1:
-					responsesStatsStatusCode.get("1XX").incrementAndGet();
-					break;
-				case 2:
-					responsesStatsStatusCode.get("2XX").incrementAndGet();
-					break;
-				case 3:
-					responsesStatsStatusCode.get("3XX").incrementAndGet();
-					break;
-				case 4:
-					responsesStatsStatusCode.get("4XX").incrementAndGet();
-					break;
-				case 5:
-					responsesStatsStatusCode.get("5XX").incrementAndGet();
-					break;
-				case 6:
-					responsesStatsStatusCode.get("6XX").incrementAndGet();
-					break;
-				case 7:
-					responsesStatsStatusCode.get("7XX").incrementAndGet();
-					break;
-				case 8:
-					responsesStatsStatusCode.get("8XX").incrementAndGet();
-					break;
-				case 9:
-					responsesStatsStatusCode.get("9XX").incrementAndGet();
-					break;
-			}			
+			sipStatistics.updateResponseStatistics(response.getStatusCode(), processed);
 		}
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.SipApplicationDispatcher#recordRequestProcessingTime(java.lang.String, java.lang.String, long)
+	 */
+	public void recordRequestProcessingTime(String method, String applicationName, long processingTime) {
+		if(gatherStatistics) {
+			sipStatistics.recordRequestProcessingTime(method, applicationName, processingTime);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.SipApplicationDispatcher#recordResponseProcessingTime(int, java.lang.String, long)
+	 */
+	public void recordResponseProcessingTime(int statusCode, String applicationName, long processingTime) {
+		if(gatherStatistics) {
+			sipStatistics.recordResponseProcessingTime(statusCode, applicationName, processingTime);
+		}
+	}
+	
 	/*
 	 * (non-Javadoc)
 	 * @see javax.sip.SipListener#processResponse(javax.sip.ResponseEvent)
@@ -1133,8 +1251,8 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 			logger.debug("Dialog Terminated => dialog Id : " + dialogTerminatedEvent.getDialog().getDialogId());
 		}
 		
-		getAsynchronousExecutor().execute(new Runnable() {
-			public void run() {			
+		terminationCleanupPipeline.execute(new TerminationCleanupPipeline.Task() {
+			public boolean run() {			
 				try {
 					boolean appDataFound = false;
 					TransactionApplicationData dialogAppData = (TransactionApplicationData) dialog.getApplicationData();
@@ -1148,7 +1266,7 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 							}
 						} else {
 							MobicentsSipSessionKey sipSessionKey = dialogAppData.getSipSessionKey();
-							tryToInvalidateSession(sipSessionKey, false);				
+							terminationCleanupPipeline.invalidate(sipSessionKey, false);				
 						}
 						dialogAppData.cleanUp();
 						// since the stack doesn't nullify the app data, we need to do it to let go of the refs					
@@ -1160,6 +1278,7 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 				} catch (Exception e) {
 					logger.error("Problem handling dialog termination", e);
 				}
+				return true;
 			}
 		});
 
@@ -1167,8 +1286,10 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 
 	/**
 	 * @param sipSessionImpl
+	 * @return false if the sip session or its application session is locked by another thread, 
+	 * in which case nothing was done and the call has to be made again later
 	 */
-	private void tryToInvalidateSession(MobicentsSipSessionKey sipSessionKey, boolean invalidateProxySession) {
+	boolean tryToInvalidateSession(MobicentsSipSessionKey sipSessionKey, boolean invalidateProxySession) {
 		//the key can be null if the application already invalidated the session
 		if(sipSessionKey != null) {
 			SipContext sipContext = findSipApplication(sipSessionKey.getApplicationName());
@@ -1218,11 +1339,13 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 							if(logger.isDebugEnabled()) {
 								logger.debug("don't Invalidate Proxy session");
 							}
-							return;
+							return true;
 						} 
+						if(!sipContext.tryEnterSipApp(sipApplicationSession, sipSessionImpl, false, true)) {
+							return false;
+						}
 						boolean batchStarted = false;
 						try {
-							sipContext.enterSipApp(sipApplicationSession, sipSessionImpl, false, true);
 							batchStarted = sipContext.enterSipAppHa(true);
 							if(logger.isDebugEnabled()) {
 								logger.debug("sip session " + sipSessionKey + " is valid ? :" + sipSessionImpl.isValidInternal());
@@ -1246,8 +1369,11 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 						}
 					}															
 					if(sipApplicationSession != null) {												
+						if(!sipContext.tryEnterSipApp(sipApplicationSession, null, false, true)) {
+							// the sip session is done with, running this again will only retry the application session
+							return false;
+						}
 						try {
-							sipContext.enterSipApp(sipApplicationSession, null, false, true);
 							if(logger.isDebugEnabled()) {
 								logger.debug("sip app session " + sipApplicationSession.getKey() + " is valid ? :" + sipApplicationSession.isValidInternal());
 								if(sipApplicationSession.isValidInternal()) {
@@ -1267,6 +1393,7 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 				}
 			}
 		}
+		return true;
 	}
 	
 	/*
@@ -1305,7 +1432,7 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 									// Issue 1822 http://code.google.com/p/mobicents/issues/detail?id=1822
 									// don't delete the dialog so that the app can send the BYE even after the noAckReceived has been called
 									//								dialog.delete();
-									tryToInvalidateSession(sipSessionKey, false);						
+									terminationCleanupPipeline.invalidate(sipSessionKey, false);						
 								}					
 							}
 							tad.cleanUp();
@@ -1424,7 +1551,7 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 								// don't invalidate here because if the application sends a final response on the noPrack received
 								// the ACK to this final response won't be able to get routed since the sip session would have been invalidated
 								if(!appNotifiedOfPrackNotReceived) {
-									tryToInvalidateSession(sipSessionKey, false);
+									terminationCleanupPipeline.invalidate(sipSessionKey, false);
 								}
 							}
 						}
@@ -1556,8 +1683,8 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 		final TransactionApplicationData tad = (TransactionApplicationData) transaction.getApplicationData();
 		final String branchId = transaction.getBranchId();
 		if(tad != null && tad.getSipServletMessage() != null) {
-			getAsynchronousExecutor().execute(new Runnable() {
-				public void run() {
+			terminationCleanupPipeline.execute(new TerminationCleanupPipeline.Task() {
+				public boolean run() {
 					try {
 						SipServletMessageImpl sipServletMessageImpl = tad.getSipServletMessage();
 						MobicentsSipSessionKey sipSessionKey = sipServletMessageImpl.getSipSessionKey();
@@ -1589,8 +1716,11 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 							//the context can be null if the server is being shutdown
 							if(sipContext != null) {
 								MobicentsSipApplicationSession sipApplicationSession = sipSession.getSipApplicationSession();
+								// removing the transaction from the proxy branch above can safely be done again
+								if(!sipContext.tryEnterSipApp(sipApplicationSession, sipSession, false, true)) {
+									return false;
+								}
 								try {
-									sipContext.enterSipApp(sipApplicationSession, sipSession, false, true);
 									if(b2buaHelperImpl != null && tad.getSipServletMessage() instanceof SipServletRequestImpl) {
 										b2buaHelperImpl.unlinkOriginalRequestInternal((SipServletRequestImpl)tad.getSipServletMessage(), false);
 									}
@@ -1622,12 +1752,13 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 							}
 							
 							// If it is a client transaction, do not kill the proxy session http://code.google.com/p/mobicents/issues/detail?id=1024
-							tryToInvalidateSession(sipSessionKey, transactionTerminatedEvent.isServerTransaction());				
+							terminationCleanupPipeline.invalidate(sipSessionKey, transactionTerminatedEvent.isServerTransaction());				
 
 						}
 					} catch (Exception e) {
 						logger.error("Problem handling transaction termination", e);
 					}
+					return true;
 				}
 			});
 		} else {
@@ -1650,6 +1781,22 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 		return applicationNameToMd.get(appName);
 	}
 	
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.SipApplicationDispatcher#getApplicationIndex(java.lang.String)
+	 */
+	public int getApplicationIndex(String applicationName) {
+		return applicationIndexTable.getApplicationIndex(applicationName);
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.SipApplicationDispatcher#getApplicationNameFromIndex(int)
+	 */
+	public String getApplicationNameFromIndex(int applicationIndex) {
+		return applicationIndexTable.getApplicationName(applicationIndex);
+	}
+	
 	@Override
 	public String getApplicationServerId() {		
 		return applicationServerId;
@@ -1716,17 +1863,8 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 	 * false otherwise
 	 */
 	public final boolean isExternal(String host, int port, String transport) {
-		boolean isExternal = true;
-		MobicentsExtendedListeningPoint listeningPoint = sipNetworkInterfaceManager.findMatchingListeningPoint(host, port, transport);		
-		if((hostNames.contains(host) || hostNames.contains(host+":" + port) || listeningPoint != null)) {
-			if(logger.isDebugEnabled()) {
-				logger.debug("hostNames.contains(host)=" + 
-						hostNames.contains(host) +
-						" | listeningPoint found = " +
-						listeningPoint);
-			}
-			isExternal = false;
-		}		
+		// the host names and listening points are looked up in a table rebuilt each time one of them changes
+		final boolean isExternal = !sipNetworkInterfaceManager.isLocalAddress(host, port, transport);
 		if(logger.isDebugEnabled()) {
 			logger.debug("the triplet host/port/transport : " + 
 					host + "/" +
@@ -1795,6 +1933,7 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 			logger.debug("Adding hostname "+ hostName);
 		}
 		hostNames.add(hostName);
+		sipNetworkInterfaceManager.updateLocalAddresses();
 		if(dnsServerLocator != null) {
 			dnsServerLocator.addLocalHostName(hostName);
 		}
@@ -1817,6 +1956,7 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 			logger.debug("Removing hostname "+ hostName);
 		}
 		hostNames.remove(hostName);
+		sipNetworkInterfaceManager.updateLocalAddresses();
 		if(dnsServerLocator != null) {
 			dnsServerLocator.removeLocalHostName(hostName);
 		}
@@ -1850,7 +1990,7 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 			// ROUTE modifier indicates that SipApplicationRouterInfo.getRoute() returns a valid route,
 			// it is up to container to decide whether it is external or internal.
 			if(SipRouteModifier.ROUTE.equals(sipRouteModifier)) {						
-				final Address routeAddress = SipFactoryImpl.addressFactory.createAddress(routes[0]);
+				final Address routeAddress = SipFactoryImpl.parseAddress(routes[0]);
 				final RouteHeader applicationRouterInfoRouteHeader = SipFactoryImpl.headerFactory.createRouteHeader(routeAddress);									
 				if(isRouteExternal(applicationRouterInfoRouteHeader)) {				
 					// push all of the routes on the Route header stack of the request and 
@@ -1888,10 +2028,133 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 		return asynchronousExecutor;
 	}
 	
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.SipApplicationDispatcher#getDispatcherExecutor(java.lang.String)
+	 */
+	public Executor getDispatcherExecutor(String callId) {
+		final ThreadPoolExecutor[] shards = dispatcherShards;
+		if(shards == null || callId == null) {
+			return asynchronousExecutor;
+		}
+		int hash = callId.hashCode();
+		hash ^= (hash >>> 16);
+		return shards[(hash & Integer.MAX_VALUE) % shards.length];
+	}
+	
+	private ThreadPoolExecutor createDispatcherShard(final int index) {
+		final ThreadPoolExecutor dispatcherShard = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+		            public Thread newThread(Runnable pRunnable) {
+		            	Thread thread = new Thread(pRunnable, String.format("%s-%d",
+		                                "MSS-Executor-Shard", index));
+		            	thread.setPriority(((SipStackImpl)sipStack).getThreadPriority());
+		            	return thread;
+		            }
+		}) {
+			@Override
+			protected void beforeExecute(Thread thread, Runnable runnable) {
+				final QueueDelayCongestionController queueDelayController = queueDelayCongestionController;
+				if(queueDelayController != null && runnable instanceof TimestampedTask) {
+					queueDelayController.onDequeue(System.nanoTime() - ((TimestampedTask)runnable).getSubmissionTime());
+				}
+			}
+		};
+		dispatcherShard.setRejectedExecutionHandler(new RejectedExecutionHandler(){
+			public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+				logger.warn("Executor job was rejected by shard " + index + " " + r.toString());
+			}
+		});
+		dispatcherShard.prestartAllCoreThreads();
+		return dispatcherShard;
+	}
+	
 	public ScheduledThreadPoolExecutor getAsynchronousScheduledExecutor() {
 		return asynchronousScheduledThreadPoolExecutor;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.SipApplicationDispatcher#getTimerScheduler()
+	 */
+	public ScheduledThreadPoolExecutor getTimerScheduler() {
+		return timerScheduler;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.SipApplicationDispatcher#getTimerSchedulerQueueSize()
+	 */
+	public int getTimerSchedulerQueueSize() {
+		return timerScheduler != null ? timerScheduler.getQueue().size() : 0;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.SipApplicationDispatcher#getPendingWheelTimersByApplication()
+	 */
+	public Map<String, Integer> getPendingWheelTimersByApplication() {
+		final Map<String, Integer> pendingTimers = new TreeMap<String, Integer>();
+		for (SipContext sipContext : applicationDeployed.values()) {
+			int pending = 0;
+			boolean wheel = false;
+			if(sipContext.getProxyTimerService() instanceof WheelProxyTimerService) {
+				pending += ((WheelProxyTimerService) sipContext.getProxyTimerService()).getPendingTimers();
+				wheel = true;
+			}
+			if(sipContext.getSipApplicationSessionTimerService() instanceof WheelSipApplicationSessionTimerService) {
+				pending += ((WheelSipApplicationSessionTimerService) sipContext.getSipApplicationSessionTimerService()).getPendingTimers();
+				wheel = true;
+			}
+			if(wheel) {
+				pendingTimers.put(sipContext.getApplicationName(), pending);
+			}
+		}
+		return pendingTimers;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.SipApplicationDispatcher#getPendingSharedTimersByApplication()
+	 */
+	public Map<String, Integer> getPendingSharedTimersByApplication() {
+		final Map<String, Integer> pendingTimers = new TreeMap<String, Integer>();
+		for (SipContext sipContext : applicationDeployed.values()) {
+			int pending = 0;
+			boolean shared = false;
+			if(sipContext.getProxyTimerService() instanceof SharedProxyTimerService) {
+				pending += ((SharedProxyTimerService) sipContext.getProxyTimerService()).getPendingTimers();
+				shared = true;
+			}
+			if(sipContext.getSipApplicationSessionTimerService() instanceof SharedSipApplicationSessionTimerService) {
+				pending += ((SharedSipApplicationSessionTimerService) sipContext.getSipApplicationSessionTimerService()).getPendingTimers();
+				shared = true;
+			}
+			if(shared) {
+				pendingTimers.put(sipContext.getApplicationName(), pending);
+			}
+		}
+		return pendingTimers;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.SipApplicationDispatcher#getTimerWheelLastTickLag()
+	 */
+	public long getTimerWheelLastTickLag() {
+		final HashedWheelTimer timerWheel = HashedWheelTimer.getShared();
+		return timerWheel != null ? timerWheel.getLastTickLag() : 0;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.SipApplicationDispatcher#getTimerWheelMaxTickLag()
+	 */
+	public long getTimerWheelMaxTickLag() {
+		final HashedWheelTimer timerWheel = HashedWheelTimer.getShared();
+		return timerWheel != null ? timerWheel.getMaxTickLag() : 0;
+	}
+
 	/**
 	 * Serialize the state info in memory and deserialize it and return the new object. 
 	 * Since there is no clone method this is the only way to get the same object with a new reference 
@@ -1977,6 +2240,26 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 		dnsServerLocator.getDnsLookupPerformer().setDNSTimeout(dnsTimeout);
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.SipApplicationDispatcher#isAsynchronousDNSResolution()
+	 */
+	public boolean isAsynchronousDNSResolution() {
+		return asynchronousDNSServerLocator != null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.SipApplicationDispatcher#locateHops(javax.sip.address.URI, org.mobicents.servlet.sip.core.HopsLocatedListener)
+	 */
+	public void locateHops(javax.sip.address.URI uri, HopsLocatedListener listener) {
+		if(asynchronousDNSServerLocator != null) {
+			asynchronousDNSServerLocator.locateHops(uri, listener);
+		} else {
+			listener.onHopsLocated(dnsServerLocator != null ? dnsServerLocator.locateHops(uri) : null);
+		}
+	}
+
 	
 	// -------------------- JMX and Registration  --------------------
     protected String domain;
@@ -2123,94 +2406,201 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 	 * @return the requestsProcessed
 	 */
 	public long getRequestsProcessed() {
-		return requestsProcessed.get();
+		return sipStatistics.getRequestsProcessed();
 	}
 	
 	/**
-	 * @return the requestsProcessedByMethod
+	 * @return a snapshot of the requestsProcessedByMethod
 	 */
 	public Map<String, AtomicLong> getRequestsProcessedByMethod() {		
-		return requestsProcessedByMethod;
+		return sipStatistics.getRequestsProcessedByMethod();
 	}
 
 	/**
-	 * @return the responsesProcessedByStatusCode
+	 * @return a snapshot of the responsesProcessedByStatusCode
 	 */
 	public Map<String, AtomicLong> getResponsesProcessedByStatusCode() {		
-		return responsesProcessedByStatusCode;
+		return sipStatistics.getResponsesProcessedByStatusCode();
 	}
 	
 	/**
 	 * @return the requestsProcessed
 	 */
 	public long getRequestsProcessedByMethod(String method) {
-		AtomicLong requestsProcessed = requestsProcessedByMethod.get(method);
-		if(requestsProcessed != null) {
-			return requestsProcessed.get();
-		}
-		return 0;
+		return sipStatistics.getRequestsProcessedByMethod(method);
 	}
 	
 	public long getResponsesProcessedByStatusCode(String statusCode) {
-		AtomicLong responsesProcessed = responsesProcessedByStatusCode.get(statusCode);
-		if(responsesProcessed != null) {
-			return responsesProcessed.get();
-		}
-		return 0;
+		return sipStatistics.getResponsesProcessedByStatusCode(statusCode);
 	}
 	
 	/**
 	 * @return the requestsProcessed
 	 */
 	public long getResponsesProcessed() {
-		return responsesProcessed.get();
+		return sipStatistics.getResponsesProcessed();
 	}
 	
 	/**
 	 * @return the requestsProcessed
 	 */
 	public long getRequestsSent() {
-		return requestsSent.get();
+		return sipStatistics.getRequestsSent();
 	}
 	
 	/**
-	 * @return the requestsProcessedByMethod
+	 * @return a snapshot of the requestsSentByMethod
 	 */
 	public Map<String, AtomicLong> getRequestsSentByMethod() {		
-		return requestsSentByMethod;
+		return sipStatistics.getRequestsSentByMethod();
 	}
 
 	/**
-	 * @return the responsesProcessedByStatusCode
+	 * @return a snapshot of the responsesSentByStatusCode
 	 */
 	public Map<String, AtomicLong> getResponsesSentByStatusCode() {		
-		return responsesSentByStatusCode;
+		return sipStatistics.getResponsesSentByStatusCode();
 	}
 	
 	/**
 	 * @return the requestsProcessed
 	 */
 	public long getRequestsSentByMethod(String method) {
-		AtomicLong requestsSent = requestsSentByMethod.get(method);
-		if(requestsSent != null) {
-			return requestsSent.get();
-		}
-		return 0;
+		return sipStatistics.getRequestsSentByMethod(method);
 	}
 	
 	public long getResponsesSentByStatusCode(String statusCode) {
-		AtomicLong responsesSent = responsesSentByStatusCode.get(statusCode);
-		if(responsesSent != null) {
-			return responsesSent.get();
-		}
-		return 0;
+		return sipStatistics.getResponsesSentByStatusCode(statusCode);
 	}
 	
 	/**
 	 * @return the requestsProcessed
 	 */
 	public long getResponsesSent() {
-		return responsesSent.get();
+		return sipStatistics.getResponsesSent();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.SipApplicationDispatcher#getRequestProcessingTimePercentile(java.lang.String, double)
+	 */
+	public long getRequestProcessingTimePercentile(String method, double percentile) {
+		final LatencyHistogram.Snapshot snapshot = sipStatistics.getRequestProcessingTime(method);
+		return snapshot == null ? 0 : snapshot.getValueAtPercentile(percentile);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.SipApplicationDispatcher#getApplicationProcessingTimePercentile(java.lang.String, double)
+	 */
+	public long getApplicationProcessingTimePercentile(String applicationName, double percentile) {
+		final LatencyHistogram.Snapshot snapshot = sipStatistics.getApplicationProcessingTime(applicationName);
+		return snapshot == null ? 0 : snapshot.getValueAtPercentile(percentile);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.SipApplicationDispatcher#getRequestProcessingTimeByMethod()
+	 */
+	public Map<String, String> getRequestProcessingTimeByMethod() {
+		return toSummaries(sipStatistics.getRequestProcessingTimeByMethod());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.SipApplicationDispatcher#getResponseProcessingTimeByStatusCode()
+	 */
+	public Map<String, String> getResponseProcessingTimeByStatusCode() {
+		return toSummaries(sipStatistics.getResponseProcessingTimeByStatusCode());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.SipApplicationDispatcher#getProcessingTimeByApplication()
+	 */
+	public Map<String, String> getProcessingTimeByApplication() {
+		return toSummaries(sipStatistics.getProcessingTimeByApplication());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.SipApplicationDispatcher#resetProcessingTimeStatistics()
+	 */
+	public void resetProcessingTimeStatistics() {
+		sipStatistics.resetProcessingTimes();
+	}
+
+	private static Map<String, String> toSummaries(Map<String, LatencyHistogram.Snapshot> snapshots) {
+		final Map<String, String> summaries = new TreeMap<String, String>();
+		for (Map.Entry<String, LatencyHistogram.Snapshot> entry : snapshots.entrySet()) {
+			summaries.put(entry.getKey(), entry.getValue().toString());
+		}
+		return summaries;
+	}
+
+	/**
+	 * @return the statistics gathered by this dispatcher
+	 */
+	public SipStatistics getSipStatistics() {
+		return sipStatistics;
+	}
+
+	/**
+	 * Plug an exporter that will be handed the statistics every statisticsExportInterval milliseconds
+	 * @param statisticsExporter the exporter, null to stop exporting
+	 */
+	public void setStatisticsExporter(SipStatisticsExporter statisticsExporter) {
+		this.statisticsExporter = statisticsExporter;
+		scheduleStatisticsExport();
+	}
+
+	/**
+	 * @return the statisticsExporter
+	 */
+	public SipStatisticsExporter getStatisticsExporter() {
+		return statisticsExporter;
+	}
+
+	/**
+	 * @param statisticsExportInterval the interval in milliseconds between two exports of the statistics
+	 */
+	public void setStatisticsExportInterval(long statisticsExportInterval) {
+		if(statisticsExportInterval != this.statisticsExportInterval) {
+			this.statisticsExportInterval = statisticsExportInterval;
+			scheduleStatisticsExport();
+		}
+	}
+
+	/**
+	 * @return the statisticsExportInterval
+	 */
+	public long getStatisticsExportInterval() {
+		return statisticsExportInterval;
+	}
+
+	private synchronized void scheduleStatisticsExport() {
+		if(statisticsExportFuture != null) {
+			statisticsExportFuture.cancel(false);
+			statisticsExportFuture = null;
+		}
+		final SipStatisticsExporter exporter = statisticsExporter;
+		if(exporter == null || statisticsExportInterval <= 0 || !started || asynchronousScheduledThreadPoolExecutor == null) {
+			return;
+		}
+		statisticsExportFuture = asynchronousScheduledThreadPoolExecutor.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				if(gatherStatistics) {
+					try {
+						exporter.export(sipStatistics);
+					} catch (Throwable t) {
+						logger.error("Unexpected exception while exporting statistics with " + exporter, t);
+					}
+				}
+			}
+		}, statisticsExportInterval, statisticsExportInterval, TimeUnit.MILLISECONDS);
+		if(logger.isInfoEnabled()) {
+			logger.info("Exporting statistics with " + exporter + " every " + statisticsExportInterval + " milliseconds.");
+		}
 	}
 
 	/**
@@ -2347,6 +2737,29 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 		return bypassResponseExecutor;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.SipApplicationDispatcher#setDispatcherExecutionMode(org.mobicents.servlet.sip.core.DispatcherExecutionMode)
+	 */
+	public void setDispatcherExecutionMode(DispatcherExecutionMode dispatcherExecutionMode) {
+		if(asynchronousExecutor != null) {
+			logger.warn("The dispatcher execution mode can only be changed before the dispatcher is initialized, keeping " + this.dispatcherExecutionMode);
+			return;
+		}
+		this.dispatcherExecutionMode = dispatcherExecutionMode;
+		if(logger.isInfoEnabled()) {
+			logger.info("Dispatcher Execution Mode set to " + dispatcherExecutionMode);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.SipApplicationDispatcher#getDispatcherExecutionMode()
+	 */
+	public DispatcherExecutionMode getDispatcherExecutionMode() {
+		return dispatcherExecutionMode;
+	}
+
 	/**
 	 * @param baseTimerInterval the baseTimerInterval to set
 	 */
@@ -2445,6 +2858,7 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 
 	public void loadBalancerAdded(SipLoadBalancer sipLoadBalancer) {
 		sipLoadBalancers.add(sipLoadBalancer);
+		sipFactoryImpl.getLoadBalancerSelector().add(sipLoadBalancer);
 		if(sipFactoryImpl.getLoadBalancerToUse() == null) {
 			sipFactoryImpl.setLoadBalancerToUse(sipLoadBalancer);
 		}
@@ -2452,6 +2866,8 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 
 	public void loadBalancerRemoved(SipLoadBalancer sipLoadBalancer) {
 		sipLoadBalancers.remove(sipLoadBalancer);
+		// ejected right away so that no new request picks it while the default one is being switched
+		sipFactoryImpl.getLoadBalancerSelector().remove(sipLoadBalancer);
 		if(sipFactoryImpl.getLoadBalancerToUse() != null && 
 				sipFactoryImpl.getLoadBalancerToUse().equals(sipLoadBalancer)) {
 			if(sipLoadBalancers.size() > 0) {
@@ -2462,6 +2878,57 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 		}
 	}	
 	
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.SipApplicationDispatcher#getLoadBalancerSelectionStrategy()
+	 */
+	public String getLoadBalancerSelectionStrategy() {
+		return sipFactoryImpl.getLoadBalancerSelector().getStrategy().toString();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.SipApplicationDispatcher#setLoadBalancerSelectionStrategy(java.lang.String)
+	 */
+	public void setLoadBalancerSelectionStrategy(String loadBalancerSelectionStrategy) {
+		sipFactoryImpl.getLoadBalancerSelector().setStrategy(LoadBalancerSelectionStrategy.valueOf(loadBalancerSelectionStrategy));
+		if(logger.isInfoEnabled()) {
+			logger.info("Load Balancer selection strategy set to " + loadBalancerSelectionStrategy);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.SipApplicationDispatcher#setLoadBalancerWeight(java.lang.String, int, int)
+	 */
+	public boolean setLoadBalancerWeight(String host, int sipPort, int weight) {
+		return sipFactoryImpl.getLoadBalancerSelector().setWeight(host, sipPort, weight);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.SipApplicationDispatcher#getLoadBalancers()
+	 */
+	public String[] getLoadBalancers() {
+		return sipFactoryImpl.getLoadBalancerSelector().getLoadBalancers();
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.SipApplicationDispatcher#getParseCacheHitCount()
+	 */
+	public long getParseCacheHitCount() {
+		return SipFactoryImpl.getParseCacheHitCount();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.SipApplicationDispatcher#getParseCacheMissCount()
+	 */
+	public long getParseCacheMissCount() {
+		return SipFactoryImpl.getParseCacheMissCount();
+	}
+	
 	/**
 	 * @param info
 	 */
@@ -2550,6 +3017,164 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 		return backToNormalQueueSize;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.SipApplicationDispatcher#setQueueDelayTarget(long)
+	 */
+	public void setQueueDelayTarget(long queueDelayTarget) {
+		this.queueDelayTarget = queueDelayTarget;
+		if(logger.isInfoEnabled()) {
+			logger.info("Queue Delay Target set to " + queueDelayTarget);
+		}
+		if(asynchronousExecutor != null) {
+			queueDelayCongestionController = queueDelayTarget > 0 ? createQueueDelayCongestionController() : null;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.SipApplicationDispatcher#getQueueDelayTarget()
+	 */
+	public long getQueueDelayTarget() {
+		return queueDelayTarget;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.SipApplicationDispatcher#setQueueDelayInterval(long)
+	 */
+	public void setQueueDelayInterval(long queueDelayInterval) {
+		this.queueDelayInterval = queueDelayInterval;
+		if(logger.isInfoEnabled()) {
+			logger.info("Queue Delay Interval set to " + queueDelayInterval);
+		}
+		if(asynchronousExecutor != null && queueDelayTarget > 0) {
+			queueDelayCongestionController = createQueueDelayCongestionController();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.SipApplicationDispatcher#getQueueDelayInterval()
+	 */
+	public long getQueueDelayInterval() {
+		return queueDelayInterval;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.SipApplicationDispatcher#getQueueDelayCongestionLevel()
+	 */
+	public int getQueueDelayCongestionLevel() {
+		final QueueDelayCongestionController queueDelayController = queueDelayCongestionController;
+		return queueDelayController != null ? queueDelayController.getLevel() : 0;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.SipApplicationDispatcher#getOutboundWriteExecutor(java.lang.String)
+	 */
+	public Executor getOutboundWriteExecutor(String destination) {
+		return outboundWriteQueues.get(destination);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.SipApplicationDispatcher#writeInOrder(java.lang.String, java.util.concurrent.Callable)
+	 */
+	public <T> T writeInOrder(String destination, Callable<T> write) throws Exception {
+		return outboundWriteQueues.write(destination, write);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.SipApplicationDispatcher#getOutboundWriteQueueSize()
+	 */
+	public int getOutboundWriteQueueSize() {
+		return outboundWriteQueues != null ? outboundWriteQueues.size() : 0;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.SipApplicationDispatcher#getCleanupQueueSize()
+	 */
+	public int getCleanupQueueSize() {
+		return terminationCleanupPipeline != null ? terminationCleanupPipeline.size() : 0;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.SipApplicationDispatcher#getCleanupDrainLatency()
+	 */
+	public long getCleanupDrainLatency() {
+		return terminationCleanupPipeline != null ? terminationCleanupPipeline.getLastDrainLatency() : 0;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.SipApplicationDispatcher#getCleanupMaxDrainLatency()
+	 */
+	public long getCleanupMaxDrainLatency() {
+		return terminationCleanupPipeline != null ? terminationCleanupPipeline.getMaxDrainLatency() : 0;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.SipApplicationDispatcher#getCleanupCoalescedInvalidations()
+	 */
+	public long getCleanupCoalescedInvalidations() {
+		return terminationCleanupPipeline != null ? terminationCleanupPipeline.getCoalescedInvalidations() : 0;
+	}
+
+	private QueueDelayCongestionController createQueueDelayCongestionController() {
+		if(logger.isInfoEnabled()) {
+			logger.info("Queueing delay congestion control enabled with a target of " + queueDelayTarget + " milliseconds over " + queueDelayInterval + " milliseconds intervals");
+		}
+		return new QueueDelayCongestionController(queueDelayTarget, queueDelayInterval, 
+				new QueueDelayCongestionController.QueueDelayProbe() {
+					public long getOldestQueueDelay(long now) {
+						long oldestQueueDelay = getQueueDelay(asynchronousExecutor, now);
+						if(dispatcherShards != null) {
+							for (ThreadPoolExecutor dispatcherShard : dispatcherShards) {
+								oldestQueueDelay = Math.max(oldestQueueDelay, getQueueDelay(dispatcherShard, now));
+							}
+						}
+						return oldestQueueDelay;
+					}
+				}, 
+				new QueueDelayCongestionController.CongestionListener() {
+					public void onCongestionStarted(String message) {
+						notifyQueueDelayCongestion(true, message);
+					}
+					public void onCongestionStopped(String message) {
+						notifyQueueDelayCongestion(false, message);
+					}
+				});
+	}
+
+	private static long getQueueDelay(ThreadPoolExecutor executor, long now) {
+		final Runnable oldest = executor.getQueue().peek();
+		if(oldest instanceof TimestampedTask) {
+			return now - ((TimestampedTask)oldest).getSubmissionTime();
+		}
+		return 0;
+	}
+
+	private void notifyQueueDelayCongestion(final boolean triggered, String message) {
+		final CongestionControlEvent congestionControlEvent = new CongestionControlEvent(
+				org.mobicents.javax.servlet.CongestionControlEvent.Reason.Queue, message);
+		// the state changes are detected on the message processing threads, don't run the listeners on them
+		try {
+			asynchronousScheduledThreadPoolExecutor.execute(new Runnable() {
+				public void run() {
+					callbackCongestionControlListener(triggered, congestionControlEvent);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			logger.warn("couldn't notify the container listeners of the congestion control state change " + message);
+		}
+	}
+
 	public SipStack getSipStack() {
 		return sipStack;
 	}
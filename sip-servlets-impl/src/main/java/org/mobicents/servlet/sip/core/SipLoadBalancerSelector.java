@@ -0,0 +1,253 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.servlet.sip.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.log4j.Logger;
+import org.mobicents.ha.javax.sip.SipLoadBalancer;
+
+/**
+ * Picks the SIP load balancer a container originated request is sent through among all the live ones
+ * reported by the heart beating service.
+ * 
+ * The choice is done by weighted rendezvous hashing of the sip application session id or of the Call-ID, 
+ * depending on the {@link LoadBalancerSelectionStrategy}, so it needs no state per session : 
+ * the same key always lands on the same balancer as long as that balancer is live, 
+ * and only the keys of a removed balancer move to the other ones.
+ * The Contact and Route headers of a dialog thus keep pointing to the same balancer for its whole lifetime.
+ * 
+ * The live balancers are kept in an immutable array replaced on each change so that selection doesn't lock.
+ */
+public final class SipLoadBalancerSelector {
+	private static final Logger logger = Logger.getLogger(SipLoadBalancerSelector.class);
+	
+	public static final int DEFAULT_WEIGHT = 100;
+	
+	private static final Member[] NO_MEMBERS = new Member[0];
+	
+	private static final class Member {
+		final SipLoadBalancer sipLoadBalancer;
+		final String id;
+		final long seed;
+		final int weight;
+		
+		Member(SipLoadBalancer sipLoadBalancer, String id, int weight) {
+			this.sipLoadBalancer = sipLoadBalancer;
+			this.id = id;
+			this.seed = mix(id.hashCode());
+			this.weight = weight;
+		}
+	}
+	
+	private final Object lock = new Object();
+	private volatile Member[] members = NO_MEMBERS;
+	// weights are kept by balancer address so that they survive the balancer being removed and added back
+	private final ConcurrentMap<String, Integer> weights = new ConcurrentHashMap<String, Integer>();
+	private volatile LoadBalancerSelectionStrategy strategy = LoadBalancerSelectionStrategy.ApplicationSession;
+	
+	/**
+	 * @param sipLoadBalancer the balancer that started to send heartbeats
+	 */
+	public void add(SipLoadBalancer sipLoadBalancer) {
+		final String id = getId(sipLoadBalancer);
+		synchronized (lock) {
+			final Member[] current = members;
+			for (Member member : current) {
+				if(member.sipLoadBalancer.equals(sipLoadBalancer)) {
+					return;
+				}
+			}
+			final Member[] updated = new Member[current.length + 1];
+			System.arraycopy(current, 0, updated, 0, current.length);
+			updated[current.length] = new Member(sipLoadBalancer, id, getWeight(id));
+			members = updated;
+		}
+		if(logger.isInfoEnabled()) {
+			logger.info("Load Balancer " + id + " added to the selection");
+		}
+	}
+	
+	/**
+	 * @param sipLoadBalancer the balancer that stopped to send heartbeats
+	 * @return true if it was part of the selection
+	 */
+	public boolean remove(SipLoadBalancer sipLoadBalancer) {
+		synchronized (lock) {
+			final Member[] current = members;
+			for (int i = 0; i < current.length; i++) {
+				if(current[i].sipLoadBalancer.equals(sipLoadBalancer)) {
+					final Member[] updated = new Member[current.length - 1];
+					System.arraycopy(current, 0, updated, 0, i);
+					System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+					members = updated;
+					if(logger.isInfoEnabled()) {
+						logger.info("Load Balancer " + current[i].id + " ejected from the selection");
+					}
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Set the share of the new sessions or calls the balancer gets relative to the others. 
+	 * A weight of 0 drains the balancer, it is then only picked when no other balancer has a positive weight.
+	 * 
+	 * @param host the address of the balancer
+	 * @param sipPort the sip port of the balancer
+	 * @param weight the weight of the balancer
+	 * @return true if the balancer is currently live
+	 */
+	public boolean setWeight(String host, int sipPort, int weight) {
+		if(weight < 0) {
+			throw new IllegalArgumentException("the weight of a load balancer can't be negative " + weight);
+		}
+		final String id = host + ":" + sipPort;
+		boolean live = false;
+		synchronized (lock) {
+			weights.put(id, weight);
+			final Member[] current = members;
+			final Member[] updated = current.clone();
+			for (int i = 0; i < updated.length; i++) {
+				if(updated[i].id.equals(id)) {
+					updated[i] = new Member(updated[i].sipLoadBalancer, id, weight);
+					live = true;
+				}
+			}
+			members = updated;
+		}
+		if(logger.isInfoEnabled()) {
+			logger.info("Load Balancer " + id + " weight set to " + weight);
+		}
+		return live;
+	}
+	
+	/**
+	 * @param applicationSessionId the id of the sip application session the request belongs to, can be null
+	 * @param callId the Call-ID of the request, can be null
+	 * @return the balancer to send the request through or null if there is no live balancer
+	 */
+	public SipLoadBalancer select(String applicationSessionId, String callId) {
+		final Member[] current = members;
+		if(current.length == 0) {
+			return null;
+		}
+		String key = null;
+		switch (strategy) {
+			case ApplicationSession:
+				key = applicationSessionId != null ? applicationSessionId : callId;
+				break;
+			case Call:
+				key = callId != null ? callId : applicationSessionId;
+				break;
+			default:
+				break;
+		}
+		if(key == null || current.length == 1) {
+			return current[0].sipLoadBalancer;
+		}
+		final long keyHash = mix(key.hashCode());
+		Member selected = null;
+		double bestScore = 0;
+		for (Member member : current) {
+			if(member.weight <= 0) {
+				continue;
+			}
+			// uniform in ]0,1[ from the 53 high bits of the combined hash 
+			final double uniform = ((mix(keyHash ^ member.seed) >>> 11) + 0.5d) * 0x1.0p-53;
+			final double score = member.weight / -Math.log(uniform);
+			if(selected == null || score > bestScore) {
+				selected = member;
+				bestScore = score;
+			}
+		}
+		if(selected == null) {
+			// every balancer is drained, still route through one of them
+			return current[0].sipLoadBalancer;
+		}
+		return selected.sipLoadBalancer;
+	}
+	
+	/**
+	 * @return the first live balancer or null if there is none
+	 */
+	public SipLoadBalancer getFirst() {
+		final Member[] current = members;
+		return current.length > 0 ? current[0].sipLoadBalancer : null;
+	}
+	
+	/**
+	 * @return the number of live balancers
+	 */
+	public int size() {
+		return members.length;
+	}
+	
+	/**
+	 * @return the live balancers as host:sipPort=weight
+	 */
+	public String[] getLoadBalancers() {
+		final Member[] current = members;
+		final List<String> loadBalancers = new ArrayList<String>(current.length);
+		for (Member member : current) {
+			loadBalancers.add(member.id + "=" + member.weight);
+		}
+		return loadBalancers.toArray(new String[loadBalancers.size()]);
+	}
+	
+	/**
+	 * @return the strategy
+	 */
+	public LoadBalancerSelectionStrategy getStrategy() {
+		return strategy;
+	}
+
+	/**
+	 * @param strategy the strategy to set
+	 */
+	public void setStrategy(LoadBalancerSelectionStrategy strategy) {
+		if(strategy == null) {
+			throw new IllegalArgumentException("the load balancer selection strategy can't be null");
+		}
+		this.strategy = strategy;
+	}
+	
+	private int getWeight(String id) {
+		final Integer weight = weights.get(id);
+		return weight != null ? weight : DEFAULT_WEIGHT;
+	}
+	
+	private static String getId(SipLoadBalancer sipLoadBalancer) {
+		return sipLoadBalancer.getAddress().getHostAddress() + ":" + sipLoadBalancer.getSipPort();
+	}
+	
+	// 64 bits finalizer of SplitMix64
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+}
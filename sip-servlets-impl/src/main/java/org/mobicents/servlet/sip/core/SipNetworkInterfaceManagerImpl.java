@@ -33,7 +33,6 @@ import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
 import java.util.StringTokenizer;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.locks.Lock;
@@ -87,10 +86,10 @@ public class SipNetworkInterfaceManagerImpl implements SipNetworkInterfaceManage
 	//use only to lookup the hosts for issue 563, need to find a better way and reduce coupling
 	private SipApplicationDispatcher sipApplicationDispatcher;
 	
-	//those maps are present to improve the performance of finding a listening point either from a transport
-	// or from a triplet ipaddress, port and transport
+	//this map is present to improve the performance of finding a listening point from a transport
 	Map<String, Set<MobicentsExtendedListeningPoint>> transportMappingCacheMap = null;	
-	Map<String, MobicentsExtendedListeningPoint> extendedListeningPointsCacheMap = null;
+	// used to find a listening point from a triplet ipaddress, port and transport, rebuilt on each change
+	private volatile LocalAddressTable localAddressTable;
 	
 	Lock lock = null;
 	
@@ -111,9 +110,8 @@ public class SipNetworkInterfaceManagerImpl implements SipNetworkInterfaceManage
 		transportMappingCacheMap.put(ListeningPoint.TLS.toLowerCase(), new CopyOnWriteArraySet<MobicentsExtendedListeningPoint>());
 		transportMappingCacheMap.put(ListeningPointExt.WS.toLowerCase(), new CopyOnWriteArraySet<MobicentsExtendedListeningPoint>());
 		transportMappingCacheMap.put(ListeningPointExt.WSS.toLowerCase(), new CopyOnWriteArraySet<MobicentsExtendedListeningPoint>());
-		// creating the ipaddress/port/transport cache map
-		extendedListeningPointsCacheMap = new ConcurrentHashMap<String, MobicentsExtendedListeningPoint>();
 		lock = new ReentrantLock();
+		localAddressTable = new LocalAddressTable(extendedListeningPointList, null);
 	}
 	
 	/**
@@ -139,21 +137,12 @@ public class SipNetworkInterfaceManagerImpl implements SipNetworkInterfaceManage
 	    	if(sipApplicationDispatcher.getDNSServerLocator() != null) {
 	    		sipApplicationDispatcher.getDNSServerLocator().addSupportedTransport(extendedListeningPoint.getTransport());
 	    	}
-		    // Adding private ipaddress to the triplet cache map
-		    for(String ipAddress : extendedListeningPoint.getIpAddresses()) {
-		    	extendedListeningPointsCacheMap.put(ipAddress + "/" + extendedListeningPoint.getPort() + ":" + extendedListeningPoint.getTransport().toLowerCase(), extendedListeningPoint);
-		    }
-		    // Adding public address if any to the triplet cache map
-		    if(extendedListeningPoint.getGlobalIpAddress() != null) {
-		    	extendedListeningPointsCacheMap.put(extendedListeningPoint.getGlobalIpAddress() + "/" + extendedListeningPoint.getPort() + ":" + extendedListeningPoint.getTransport().toLowerCase(), extendedListeningPoint);
-		    	extendedListeningPointsCacheMap.put(extendedListeningPoint.getGlobalIpAddress() + "/" + extendedListeningPoint.getGlobalPort() + ":" + extendedListeningPoint.getTransport().toLowerCase(), extendedListeningPoint);
-		    }
-		    // Adding local hostnames if any to the triplet cache map
+		    // Adding private ipaddresses, public address and local hostnames to the local address table
+		    updateLocalAddresses();
 		    if(extendedListeningPoint.getSipConnector().getHostNames() != null) {
 		    	StringTokenizer tokenizer = new StringTokenizer(extendedListeningPoint.getSipConnector().getHostNames(), ",");
 		    	while(tokenizer.hasMoreTokens()) {
 		    		String localHostName = tokenizer.nextToken();
-		    		extendedListeningPointsCacheMap.put(localHostName + "/" + extendedListeningPoint.getPort() + ":" + extendedListeningPoint.getTransport().toLowerCase(), extendedListeningPoint);
 		    		if(sipApplicationDispatcher.getDNSServerLocator() != null) {
 		    			sipApplicationDispatcher.getDNSServerLocator().mapLocalHostNameToIP(localHostName, new CopyOnWriteArraySet<String>(extendedListeningPoint.getIpAddresses()));
 			    	}
@@ -189,20 +178,12 @@ public class SipNetworkInterfaceManagerImpl implements SipNetworkInterfaceManage
 		    if(sipApplicationDispatcher.getDNSServerLocator() != null) {
 		    	sipApplicationDispatcher.getDNSServerLocator().removeSupportedTransport(extendedListeningPoint.getTransport());
 		    }
-		    // Removing private ipaddress from the triplet cache map for listening point
-		    for(String ipAddress : extendedListeningPoint.getIpAddresses()) {
-		    	extendedListeningPointsCacheMap.remove(ipAddress + "/" + extendedListeningPoint.getPort() + ":" + extendedListeningPoint.getTransport().toLowerCase());
-		    }
-		    // Removing public address if any from the triplet cache map
-		    if(extendedListeningPoint.getGlobalIpAddress() != null) {
-		    	extendedListeningPointsCacheMap.remove(extendedListeningPoint.getGlobalIpAddress() + "/" + extendedListeningPoint.getPort() + ":" + extendedListeningPoint.getTransport().toLowerCase());
-		    	extendedListeningPointsCacheMap.remove(extendedListeningPoint.getGlobalIpAddress() + "/" + extendedListeningPoint.getGlobalPort() + ":" + extendedListeningPoint.getTransport().toLowerCase());
-		    }	
+		    // Removing private ipaddresses, public address and local hostnames from the local address table
+		    updateLocalAddresses();
 		    if(extendedListeningPoint.getSipConnector().getHostNames() != null) {
 		    	StringTokenizer tokenizer = new StringTokenizer(extendedListeningPoint.getSipConnector().getHostNames(), ",");
 		    	while(tokenizer.hasMoreTokens()) {
 		    		String localHostName = tokenizer.nextToken();
-		    		extendedListeningPointsCacheMap.remove(localHostName + "/" + extendedListeningPoint.getPort() + ":" + extendedListeningPoint.getTransport().toLowerCase());
 		    		if(sipApplicationDispatcher.getDNSServerLocator() != null) {
 		    			sipApplicationDispatcher.getDNSServerLocator().unmapLocalHostNameToIP(localHostName);
 		    		}
@@ -314,45 +295,156 @@ public class SipNetworkInterfaceManagerImpl implements SipNetworkInterfaceManage
 	 * If none has been found, null is returned.
 	 */
 	public MobicentsExtendedListeningPoint findMatchingListeningPoint(final String ipAddress, int port, String transport) {
-		String tmpTransport = transport;
-		int portChecked = checkPortRange(port, tmpTransport);
-		if(tmpTransport == null) {
-			tmpTransport = ListeningPoint.UDP;
-		}	
+		return findMatchingListeningPoint(localAddressTable, ipAddress, port, transport);
+	}
+	
+	private MobicentsExtendedListeningPoint findMatchingListeningPoint(final LocalAddressTable table, final String ipAddress, int port, String transport) {
+		final int portChecked = checkPortRange(port, transport);
+		final LocalAddressTable.Transport tableTransport = LocalAddressTable.Transport.fromString(transport);
+		if(tableTransport == null) {
+			return null;
+		}
 		
 		// we check first if a listening point can be found (we only do the host resolving if not found to have better perf )
-		MobicentsExtendedListeningPoint listeningPoint = extendedListeningPointsCacheMap.get(ipAddress + "/" + portChecked + ":" + tmpTransport.toLowerCase());
+		MobicentsExtendedListeningPoint listeningPoint = table.findListeningPoint(ipAddress, portChecked, tableTransport);
 		if(logger.isDebugEnabled()) {
-			logger.debug("Checked Listening Point " + ipAddress + "/" + portChecked + ":" + tmpTransport.toLowerCase() + " against existing listening points, found " + listeningPoint);
+			logger.debug("Checked Listening Point " + ipAddress + "/" + portChecked + ":" + tableTransport + " against existing listening points, found " + listeningPoint);
 		}
-		if(listeningPoint == null && !Inet6Util.isValidIP6Address(ipAddress) 
-					&& !Inet6Util.isValidIPV4Address(ipAddress)) {
-			// if no listening point has been found and the ipaddress is not a valid IP6 address nor a valid IPV4 address 
-			// then we try to resolve it as a hostname
-			Queue<Hop> hops = null;
-			try {
-				hops = sipApplicationDispatcher.getDNSServerLocator().getDnsLookupPerformer().locateHopsForNonNumericAddressWithPort(ipAddress, portChecked, tmpTransport.toLowerCase());
-			} catch (Exception e) {
-				// not important it can mean that the ipAddress provided is not a hostname
-				// but an ip address not found in the searched listening points above				
-			}
-			if(hops != null) {
-				for (Hop hop : hops) {
+		if(listeningPoint == null) {
+			final String[] addresses = getResolvedAddresses(table, ipAddress, portChecked, tableTransport);
+			for (int i = 0; i < addresses.length; i++) {
+				if(logger.isDebugEnabled()) {
+					logger.debug("Checking Hop " + addresses[i] + "/" + portChecked + ":" + tableTransport + " against existing listening points");
+				}
+				listeningPoint = table.findListeningPoint(addresses[i], portChecked, tableTransport);
+				if(listeningPoint != null) {
 					if(logger.isDebugEnabled()) {
-						logger.debug("Checking Hop " + hop.getHost() + "/" + portChecked + ":" + tmpTransport.toLowerCase() + " against existing listening points");
-					}
-					listeningPoint = extendedListeningPointsCacheMap.get(hop.getHost() + "/" + portChecked + ":" + tmpTransport.toLowerCase());
-					if(listeningPoint != null) {
-						if(logger.isDebugEnabled()) {
-							logger.debug("Found listening point " + listeningPoint);
-						}
-						return listeningPoint;
+						logger.debug("Found listening point " + listeningPoint);
 					}
+					return listeningPoint;
 				}
 			}
 		}
 		return listeningPoint;
-	}		
+	}
+	
+	/**
+	 * Get the addresses of a host not found in the local address table. They are cached along with the hosts resolving 
+	 * to no address. A host seen for the first time is resolved on the calling thread, once its addresses expired 
+	 * they are still served while the host name is resolved again in the background on the DNS resolver threads.
+	 * @return the addresses the host resolves to, an empty array if none
+	 */
+	private String[] getResolvedAddresses(final LocalAddressTable table, final String host, int port, LocalAddressTable.Transport transport) {
+		final String[] addresses = table.getResolvedAddresses(host);
+		if(addresses == null) {
+			final String[] resolvedAddresses = isIpAddress(host) ? getCanonicalAddresses(host) : resolveAddressesSynchronously(host, port, transport);
+			table.putResolvedAddresses(host, resolvedAddresses);
+			return resolvedAddresses;
+		}
+		if(table.startRefresh(host)) {
+			if(isIpAddress(host)) {
+				table.putResolvedAddresses(host, getCanonicalAddresses(host));
+			} else {
+				resolveAddresses(table, host, port, transport);
+			}
+		}
+		return addresses;
+	}
+	
+	private static boolean isIpAddress(String host) {
+		return Inet6Util.isValidIP6Address(host) || Inet6Util.isValidIPV4Address(host);
+	}
+	
+	/**
+	 * An ip address not found in the table can still match a local one written differently, no lookup needed
+	 */
+	private static String[] getCanonicalAddresses(String ipAddress) {
+		final String canonicalAddress = LocalAddressTable.getCanonicalAddress(ipAddress);
+		return canonicalAddress != null && !canonicalAddress.equals(ipAddress) ? new String[] {canonicalAddress} : LocalAddressTable.NO_ADDRESSES;
+	}
+	
+	/**
+	 * Resolve the host name on the calling thread, only done the first time the host is seen
+	 */
+	private String[] resolveAddressesSynchronously(final String host, int port, LocalAddressTable.Transport transport) {
+		if(logger.isDebugEnabled()) {
+			logger.debug("resolving host " + host + " not found in the local addresses");
+		}
+		Queue<Hop> hops = null;
+		try {
+			if(sipApplicationDispatcher.getDNSServerLocator() != null) {
+				hops = sipApplicationDispatcher.getDNSServerLocator().getDnsLookupPerformer().locateHopsForNonNumericAddressWithPort(
+						host, port, transport.name().toLowerCase());
+			}
+		} catch (Exception e) {
+			// not important it can mean that the host provided is not a valid hostname
+			if(logger.isDebugEnabled()) {
+				logger.debug("couldn't resolve host " + host, e);
+			}
+		}
+		return toAddresses(hops);
+	}
+	
+	private static String[] toAddresses(Queue<Hop> hops) {
+		if(hops == null || hops.isEmpty()) {
+			return LocalAddressTable.NO_ADDRESSES;
+		}
+		final String[] addresses = new String[hops.size()];
+		int i = 0;
+		for (Hop hop : hops) {
+			addresses[i++] = hop.getHost();
+		}
+		return addresses;
+	}
+	
+	/**
+	 * Resolve again the host name whose addresses expired through the asynchronous DNS resolution of the dispatcher 
+	 * and cache its addresses in the table once done
+	 */
+	private void resolveAddresses(final LocalAddressTable table, final String host, int port, LocalAddressTable.Transport transport) {
+		if(logger.isDebugEnabled()) {
+			logger.debug("resolving again host " + host + " whose addresses expired");
+		}
+		try {
+			// with the port set only the A and AAAA records of the host are looked up
+			final javax.sip.address.SipURI uri = SipFactoryImpl.addressFactory.createSipURI(null, host);
+			uri.setPort(port);
+			uri.setTransportParam(transport.name().toLowerCase());
+			sipApplicationDispatcher.locateHops(uri, new HopsLocatedListener() {
+				public void onHopsLocated(Queue<Hop> hops) {
+					table.putResolvedAddresses(host, toAddresses(hops));
+				}
+			});
+		} catch (Exception e) {
+			// not important it can mean that the host provided is not a valid hostname
+			if(logger.isDebugEnabled()) {
+				logger.debug("couldn't resolve host " + host, e);
+			}
+			table.putResolvedAddresses(host, LocalAddressTable.NO_ADDRESSES);
+		}
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.SipNetworkInterfaceManager#isLocalAddress(java.lang.String, int, java.lang.String)
+	 */
+	public boolean isLocalAddress(final String host, int port, String transport) {
+		final LocalAddressTable table = localAddressTable;
+		return table.isLocalHostName(host, port) || findMatchingListeningPoint(table, host, port, transport) != null;
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.SipNetworkInterfaceManager#updateLocalAddresses()
+	 */
+	public void updateLocalAddresses() {
+		lock.lock();
+		try {
+			localAddressTable = new LocalAddressTable(extendedListeningPointList, sipApplicationDispatcher.findHostNames());
+		} finally {
+			lock.unlock();
+		}
+	}
 	
 	/**
 	 * Checks if the port is in the UDP-TCP port numbers (0-65355) range 
@@ -427,7 +519,6 @@ public class SipNetworkInterfaceManagerImpl implements SipNetworkInterfaceManage
 	}
 	
 	public boolean findUsePublicAddress(Message message) {
-		// TODO add a caching mechanism to increase perf
 		boolean usePublicAddress = true;
 		String host = null;
 		int port = -1;
@@ -471,21 +562,16 @@ public class SipNetworkInterfaceManagerImpl implements SipNetworkInterfaceManage
 				}
 				usePublicAddress = !isIPAddressPartOfPrivateNetwork(host);
 			} else {
-				logger.debug("host " + host + " is a hostname, " +
-					"doing DNS A + AAAA lookup");
-				//hostname  : DNS lookup to do
-				Hop hop = new HopImpl(host, port, transport);
-				Queue<Hop> hops = null;
-				try {
-					hops = sipApplicationDispatcher.getDNSServerLocator().getDnsLookupPerformer().locateHopsForNonNumericAddressWithPort(host, port, transport);
-				} catch (Exception e) {
-					// not important it can mean that the ipAddress provided is not a hostname
-					// but an ip address not found in the searched listening points above				
+				if(logger.isDebugEnabled()) {
+					logger.debug("host " + host + " is a hostname, " +
+						"using its cached DNS A + AAAA lookup");
 				}
-				if(hops != null && hops.size() > 0) {
-					Hop lookedupHop = hops.peek();
-					if(!hop.equals(lookedupHop)) {
-						usePublicAddress = !isIPAddressPartOfPrivateNetwork(lookedupHop.getHost());
+				//hostname  : DNS lookup done in the background, the public address is used until it completes
+				final LocalAddressTable.Transport tableTransport = LocalAddressTable.Transport.fromString(transport);
+				if(tableTransport != null) {
+					final String[] addresses = getResolvedAddresses(localAddressTable, host, checkPortRange(port, transport), tableTransport);
+					if(addresses.length > 0) {
+						usePublicAddress = !isIPAddressPartOfPrivateNetwork(addresses[0]);
 					}
 				}
 			}
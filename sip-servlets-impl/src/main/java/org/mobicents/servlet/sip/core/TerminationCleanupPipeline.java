@@ -0,0 +1,334 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.servlet.sip.core;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.mobicents.servlet.sip.core.session.MobicentsSipSessionKey;
+
+/**
+ * Coalesces the cleanup work triggered by terminated transactions and dialogs.
+ * Termination events are queued here instead of being submitted one by one to the dispatcher executor,
+ * and the session invalidation attempts they lead to are deduplicated per sip session so that a call
+ * tearing down several transactions and its dialog only goes through the session managers once.
+ *
+ * A single drain pass is scheduled on the underlying executor at a time and it runs at most
+ * {@link #MAX_TASKS_PER_DRAIN} items, half of them for each queue when both are busy, before going back 
+ * to the end of the executor queue, so cleanup never takes more than one worker and always yields to the 
+ * live traffic queued in front of it.
+ * 
+ * The drain pass never waits for the lock of a session : an item finding its session locked by another thread
+ * goes back to the end of its queue, and if a pass only found locked sessions the next one runs after 
+ * {@link #BUSY_SESSION_RETRY_DELAY} milliseconds.
+ */
+final class TerminationCleanupPipeline {
+	private static final Logger logger = Logger.getLogger(TerminationCleanupPipeline.class);
+
+	static final int MAX_TASKS_PER_DRAIN = 64;
+	static final long BUSY_SESSION_RETRY_DELAY = 10;
+
+	/**
+	 * Cleanup of a terminated transaction or dialog
+	 */
+	interface Task {
+		/**
+		 * @return false if the session to clean up is locked by another thread, the task is then run again later
+		 */
+		boolean run();
+	}
+
+	private final SipApplicationDispatcherImpl sipApplicationDispatcher;
+	private final Executor executor;
+	private final ScheduledExecutorService scheduler;
+
+	private final Queue<PendingTask> tasks = new ConcurrentLinkedQueue<PendingTask>();
+	// one entry per sip session waiting to be invalidated, the queue keeps them in arrival order
+	private final ConcurrentMap<MobicentsSipSessionKey, PendingInvalidation> invalidations = 
+		new ConcurrentHashMap<MobicentsSipSessionKey, PendingInvalidation>();
+	private final Queue<PendingInvalidation> invalidationOrder = new ConcurrentLinkedQueue<PendingInvalidation>();
+	// ConcurrentLinkedQueue.size() is O(n), keep our own count for JMX
+	private final AtomicInteger size = new AtomicInteger();
+	// true while a drain pass is scheduled or running on the underlying executor
+	private final AtomicBoolean scheduled = new AtomicBoolean(false);
+	// only read and written by the drain pass, which runs on one thread at a time
+	private long drainPass;
+	private int busyItems;
+	private int completedItems;
+	private long oldestSubmissionTime;
+
+	private final AtomicLong coalescedInvalidations = new AtomicLong();
+	private volatile long lastDrainLatency;
+	private volatile long maxDrainLatency;
+
+	private final Runnable drainTask = new Runnable() {
+		public void run() {
+			drain();
+		}
+	};
+
+	private final Runnable retryTask = new Runnable() {
+		public void run() {
+			try {
+				executor.execute(drainTask);
+			} catch (RejectedExecutionException e) {
+				// the dispatcher is stopping
+				scheduled.set(false);
+			}
+		}
+	};
+
+	TerminationCleanupPipeline(SipApplicationDispatcherImpl sipApplicationDispatcher, Executor executor, ScheduledExecutorService scheduler) {
+		this.sipApplicationDispatcher = sipApplicationDispatcher;
+		this.executor = executor;
+		this.scheduler = scheduler;
+	}
+
+	/**
+	 * Queue the cleanup of a terminated transaction or dialog
+	 * @param task the cleanup to run
+	 */
+	void execute(Task task) {
+		tasks.offer(new PendingTask(task));
+		size.incrementAndGet();
+		schedule();
+	}
+
+	/**
+	 * Queue an attempt to invalidate the given sip session, merged with the one already pending for the same session if any
+	 * @param sipSessionKey the key of the session to invalidate, can be null if the application already invalidated it
+	 * @param invalidateProxySession whether a proxy session should be invalidated as well
+	 */
+	void invalidate(MobicentsSipSessionKey sipSessionKey, boolean invalidateProxySession) {
+		if(sipSessionKey == null) {
+			return;
+		}
+		for(;;) {
+			PendingInvalidation pending = invalidations.get(sipSessionKey);
+			if(pending == null) {
+				pending = new PendingInvalidation(sipSessionKey, invalidateProxySession);
+				if(invalidations.putIfAbsent(sipSessionKey, pending) == null) {
+					invalidationOrder.offer(pending);
+					size.incrementAndGet();
+					schedule();
+					return;
+				}
+			} else {
+				if(invalidateProxySession) {
+					pending.invalidateProxySession = true;
+				}
+				// if the drain pass took the entry in the meantime the flag may have been read already, so queue a new one 
+				if(invalidations.get(sipSessionKey) == pending) {
+					coalescedInvalidations.incrementAndGet();
+					if(logger.isDebugEnabled()) {
+						logger.debug("invalidation of " + sipSessionKey + " already pending, coalescing");
+					}
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the number of termination events and session invalidations waiting to be processed
+	 */
+	int size() {
+		return size.get();
+	}
+
+	long getCoalescedInvalidations() {
+		return coalescedInvalidations.get();
+	}
+
+	/**
+	 * @return the time in milliseconds the oldest item processed by the last drain pass spent in the queue
+	 */
+	long getLastDrainLatency() {
+		return lastDrainLatency;
+	}
+
+	/**
+	 * @return the highest time in milliseconds an item spent in the queue
+	 */
+	long getMaxDrainLatency() {
+		return maxDrainLatency;
+	}
+
+	private void schedule() {
+		if(scheduled.compareAndSet(false, true)) {
+			try {
+				executor.execute(drainTask);
+			} catch (RejectedExecutionException e) {
+				scheduled.set(false);
+				throw e;
+			}
+		}
+	}
+
+	private void scheduleRetry() {
+		if(scheduled.compareAndSet(false, true)) {
+			try {
+				scheduler.schedule(retryTask, BUSY_SESSION_RETRY_DELAY, TimeUnit.MILLISECONDS);
+			} catch (RejectedExecutionException e) {
+				// the dispatcher is stopping
+				scheduled.set(false);
+			}
+		}
+	}
+
+	private void drain() {
+		drainPass++;
+		busyItems = 0;
+		completedItems = 0;
+		oldestSubmissionTime = Long.MAX_VALUE;
+		try {
+			// termination events feed the invalidations but they only get half of the pass when invalidations are waiting
+			int budget = MAX_TASKS_PER_DRAIN;
+			budget -= drainTasks(invalidationOrder.isEmpty() ? budget : budget / 2);
+			budget -= drainInvalidations(budget);
+			drainTasks(budget);
+		} finally {
+			if(oldestSubmissionTime != Long.MAX_VALUE) {
+				final long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - oldestSubmissionTime);
+				lastDrainLatency = latency;
+				if(latency > maxDrainLatency) {
+					maxDrainLatency = latency;
+				}
+			}
+			scheduled.set(false);
+			// an item may have been offered after the last poll but before the flag was cleared
+			if(!tasks.isEmpty() || !invalidationOrder.isEmpty()) {
+				if(completedItems == 0 && busyItems > 0) {
+					// only sessions locked by other threads were found, give them some time
+					scheduleRetry();
+				} else {
+					schedule();
+				}
+			}
+		}
+	}
+
+	private int drainTasks(int max) {
+		int processed = 0;
+		PendingTask task;
+		// stop on a task already tried during this pass, only busy tasks are left
+		while(processed < max && (task = tasks.peek()) != null && task.drainPass != drainPass) {
+			tasks.poll();
+			processed++;
+			task.drainPass = drainPass;
+			oldestSubmissionTime = Math.min(oldestSubmissionTime, task.submissionTime);
+			boolean done = true;
+			try {
+				done = task.task.run();
+			} catch (Throwable t) {
+				logger.error("Unexpected exception while running cleanup task " + task.task, t);
+			}
+			if(done) {
+				size.decrementAndGet();
+				completedItems++;
+			} else {
+				if(logger.isDebugEnabled()) {
+					logger.debug("session locked by another thread, requeuing cleanup task " + task.task);
+				}
+				busyItems++;
+				tasks.offer(task);
+			}
+		}
+		return processed;
+	}
+
+	private int drainInvalidations(int max) {
+		int processed = 0;
+		PendingInvalidation invalidation;
+		while(processed < max && (invalidation = invalidationOrder.peek()) != null && invalidation.drainPass != drainPass) {
+			invalidationOrder.poll();
+			processed++;
+			invalidation.drainPass = drainPass;
+			invalidations.remove(invalidation.sipSessionKey, invalidation);
+			oldestSubmissionTime = Math.min(oldestSubmissionTime, invalidation.submissionTime);
+			boolean done = true;
+			try {
+				done = sipApplicationDispatcher.tryToInvalidateSession(invalidation.sipSessionKey, invalidation.invalidateProxySession);
+			} catch (Throwable t) {
+				logger.error("Unexpected exception while invalidating " + invalidation.sipSessionKey, t);
+			}
+			if(done) {
+				size.decrementAndGet();
+				completedItems++;
+			} else {
+				if(logger.isDebugEnabled()) {
+					logger.debug("session " + invalidation.sipSessionKey + " locked by another thread, requeuing its invalidation");
+				}
+				busyItems++;
+				requeue(invalidation);
+			}
+		}
+		return processed;
+	}
+
+	private void requeue(PendingInvalidation invalidation) {
+		PendingInvalidation pending = invalidations.putIfAbsent(invalidation.sipSessionKey, invalidation);
+		if(pending == null) {
+			invalidationOrder.offer(invalidation);
+		} else {
+			// a new invalidation was queued for the same session while this one was running, merge into it
+			if(invalidation.invalidateProxySession) {
+				pending.invalidateProxySession = true;
+			}
+			size.decrementAndGet();
+			coalescedInvalidations.incrementAndGet();
+		}
+	}
+
+	private static final class PendingTask {
+		private final Task task;
+		private final long submissionTime = System.nanoTime();
+		// last drain pass which ran the task
+		private long drainPass;
+
+		private PendingTask(Task task) {
+			this.task = task;
+		}
+	}
+
+	private static final class PendingInvalidation {
+		private final MobicentsSipSessionKey sipSessionKey;
+		private final long submissionTime = System.nanoTime();
+		private volatile boolean invalidateProxySession;
+		// last drain pass which ran the invalidation
+		private long drainPass;
+
+		private PendingInvalidation(MobicentsSipSessionKey sipSessionKey, boolean invalidateProxySession) {
+			this.sipSessionKey = sipSessionKey;
+			this.invalidateProxySession = invalidateProxySession;
+		}
+	}
+}
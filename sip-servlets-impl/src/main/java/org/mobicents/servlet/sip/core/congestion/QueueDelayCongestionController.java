@@ -0,0 +1,194 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.servlet.sip.core.congestion;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Congestion controller driven by the time messages spend queued before a worker picks them up, in the spirit of CoDel.
+ *
+ * The minimum queueing delay seen during each interval is compared to a target : a minimum above the target means
+ * every message of the interval waited too long, i.e. a standing queue has built up, while bursts that drain within
+ * the interval are ignored. Each congested interval raises the congestion level by one and each interval back under the
+ * target lowers it by one. At level n, n tenths of the initial requests are refused, so admission degrades gradually
+ * instead of flipping between accepting and rejecting everything. The caller is responsible for always admitting
+ * in-dialog requests.
+ *
+ * If no message was dequeued during an interval, the age of the oldest queued message reported by the
+ * {@link QueueDelayProbe} is used instead, so that a stalled pool is still detected.
+ */
+public class QueueDelayCongestionController {
+	private static final Logger logger = Logger.getLogger(QueueDelayCongestionController.class);
+
+	public static final int MAX_LEVEL = 10;
+
+	/**
+	 * Gives the age of the oldest message still waiting in the queue
+	 */
+	public interface QueueDelayProbe {
+		/**
+		 * @param now the current {@link System#nanoTime()}
+		 * @return the time in nanoseconds the oldest queued message has been waiting, 0 if the queue is empty
+		 */
+		long getOldestQueueDelay(long now);
+	}
+
+	/**
+	 * Notified when the controller starts or stops refusing initial requests
+	 */
+	public interface CongestionListener {
+		void onCongestionStarted(String message);
+		void onCongestionStopped(String message);
+	}
+
+	private final long target;
+	private final long interval;
+	private final QueueDelayProbe probe;
+	private final CongestionListener listener;
+
+	// minimum queueing delay seen during the current interval, Long.MAX_VALUE if no message was dequeued
+	private final AtomicLong intervalMinQueueDelay = new AtomicLong(Long.MAX_VALUE);
+	private final AtomicLong intervalEnd;
+	// only written by the thread closing an interval
+	private volatile int level;
+	private volatile long lastQueueDelay;
+
+	/**
+	 * @param target the acceptable queueing delay in milliseconds
+	 * @param interval the interval in milliseconds over which the queueing delay must stay above the target for congestion to be detected
+	 * @param probe gives the age of the oldest queued message, can be null
+	 * @param listener notified of the congestion state changes, can be null
+	 */
+	public QueueDelayCongestionController(long target, long interval, QueueDelayProbe probe, CongestionListener listener) {
+		if(target <= 0 || interval <= 0) {
+			throw new IllegalArgumentException("target and interval must be positive, target=" + target + ", interval=" + interval);
+		}
+		this.target = TimeUnit.MILLISECONDS.toNanos(target);
+		this.interval = TimeUnit.MILLISECONDS.toNanos(interval);
+		this.probe = probe;
+		this.listener = listener;
+		this.intervalEnd = new AtomicLong(System.nanoTime() + this.interval);
+	}
+
+	/**
+	 * Called by a worker when it picks up a message
+	 * @param queueDelay the time in nanoseconds the message waited in the queue
+	 */
+	public void onDequeue(long queueDelay) {
+		long min = intervalMinQueueDelay.get();
+		while(queueDelay < min && !intervalMinQueueDelay.compareAndSet(min, queueDelay)) {
+			min = intervalMinQueueDelay.get();
+		}
+		checkInterval(System.nanoTime());
+	}
+
+	/**
+	 * Decide whether an initial request can be processed
+	 * @return true if the request should be processed, false if it should be refused
+	 */
+	public boolean admitInitialRequest() {
+		checkInterval(System.nanoTime());
+		final int currentLevel = level;
+		if(currentLevel == 0) {
+			return true;
+		}
+		if(currentLevel >= MAX_LEVEL) {
+			return false;
+		}
+		return ThreadLocalRandom.current().nextInt(MAX_LEVEL) >= currentLevel;
+	}
+
+	/**
+	 * @return true if initial requests are currently being refused
+	 */
+	public boolean isCongested() {
+		checkInterval(System.nanoTime());
+		return level > 0;
+	}
+
+	/**
+	 * @return the share of initial requests refused, in tenths
+	 */
+	public int getLevel() {
+		return level;
+	}
+
+	/**
+	 * @return the queueing delay in milliseconds measured over the last interval
+	 */
+	public long getLastQueueDelay() {
+		return TimeUnit.NANOSECONDS.toMillis(lastQueueDelay);
+	}
+
+	public long getTarget() {
+		return TimeUnit.NANOSECONDS.toMillis(target);
+	}
+
+	public long getInterval() {
+		return TimeUnit.NANOSECONDS.toMillis(interval);
+	}
+
+	private void checkInterval(long now) {
+		final long end = intervalEnd.get();
+		// only the thread that moves the interval forward evaluates it
+		if(now - end >= 0 && intervalEnd.compareAndSet(end, now + interval)) {
+			evaluate(now);
+		}
+	}
+
+	private void evaluate(long now) {
+		long queueDelay = intervalMinQueueDelay.getAndSet(Long.MAX_VALUE);
+		if(queueDelay == Long.MAX_VALUE) {
+			queueDelay = probe != null ? probe.getOldestQueueDelay(now) : 0;
+		}
+		lastQueueDelay = queueDelay;
+		final int previousLevel = level;
+		int newLevel = previousLevel;
+		if(queueDelay > target) {
+			newLevel = Math.min(MAX_LEVEL, previousLevel + 1);
+		} else if(previousLevel > 0) {
+			newLevel = previousLevel - 1;
+		}
+		if(newLevel == previousLevel) {
+			return;
+		}
+		level = newLevel;
+		if(logger.isDebugEnabled()) {
+			logger.debug("queueing delay " + TimeUnit.NANOSECONDS.toMillis(queueDelay) + "ms, congestion level " + previousLevel + " => " + newLevel);
+		}
+		if(previousLevel == 0) {
+			final String message = "Queueing delay : " + TimeUnit.NANOSECONDS.toMillis(queueDelay) + "ms > to the target : " + getTarget() + "ms";
+			logger.warn(message + " => starting to refuse initial requests");
+			if(listener != null) {
+				listener.onCongestionStarted(message);
+			}
+		} else if(newLevel == 0) {
+			final String message = "Queueing delay : " + TimeUnit.NANOSECONDS.toMillis(queueDelay) + "ms < to the target : " + getTarget() + "ms";
+			logger.warn(message + " => stopping to refuse initial requests");
+			if(listener != null) {
+				listener.onCongestionStopped(message);
+			}
+		}
+	}
+}
@@ -1,6 +1,6 @@
 /*
  * TeleStax, Open Source Cloud Communications
- * Copyright 2011-2015, Telestax Inc and individual contributors
+ * Copyright 2011-2016, Telestax Inc and individual contributors
  * by the @authors tag.
  *
  * This program is free software: you can redistribute it and/or modify
@@ -17,15 +17,16 @@
  * along with this program.  If not, see <http://www.gnu.org/licenses/>
  */
 
-package org.mobicents.servlet.sip.undertow.rules.request;
+
+package org.mobicents.servlet.sip.core.congestion;
 
 /**
- * @author Thomas Leseney
- *
- *         This class is based on the contents of org.mobicents.servlet.sip.catalina.rules.request package from sip-servlet-as7
- *         project, re-implemented for jboss as8 (wildfly) by:
- * @author kakonyi.istvan@alerant.hu
+ * Task that remembers when it was handed to an executor, so that the time it spent
+ * waiting in the queue can be measured when a worker picks it up.
  */
-public interface Extractor {
-    Object extract(Object input);
+public interface TimestampedTask extends Runnable {
+	/**
+	 * @return the {@link System#nanoTime()} at which the task was submitted
+	 */
+	long getSubmissionTime();
 }
@@ -25,6 +25,7 @@ import javax.sip.message.Response;
 
 import org.apache.log4j.Logger;
 import org.mobicents.servlet.sip.core.DispatcherException;
+import org.mobicents.servlet.sip.core.congestion.TimestampedTask;
 import org.mobicents.servlet.sip.message.SipServletMessageImpl;
 import org.mobicents.servlet.sip.message.SipServletRequestImpl;
 
@@ -35,18 +36,24 @@ import org.mobicents.servlet.sip.message.SipServletRequestImpl;
  * @author Vladimir Ralev
  *
  */
-public abstract class DispatchTask implements Runnable {
+public abstract class DispatchTask implements TimestampedTask {
 	
 	private static final Logger logger = Logger.getLogger(DispatchTask.class);
 	
 	protected SipServletMessageImpl sipServletMessage;
 	protected SipProvider sipProvider;
+	// tasks are handed to the executor right after being created
+	private final long submissionTime = System.nanoTime();
 	
 	public DispatchTask(SipServletMessageImpl sipServletMessage, SipProvider sipProvider) {
 		this.sipProvider = sipProvider;
 		this.sipServletMessage = sipServletMessage;
 	}
 
+	public long getSubmissionTime() {
+		return submissionTime;
+	}
+
 	abstract public void dispatch() throws DispatcherException;
 
 	public void run() {
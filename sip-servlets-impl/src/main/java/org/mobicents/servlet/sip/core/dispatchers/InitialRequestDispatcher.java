@@ -438,7 +438,9 @@ public class InitialRequestDispatcher extends RequestDispatcher {
 		final InitialDispatchTask dispatchTask = new InitialDispatchTask(sipServletRequest, sipProvider);
 		// we enter the sip app here, thus acuiring the semaphore on the session (if concurrency control is set) before the jain sip tx semaphore is released and ensuring that
 		// the tx serialization is preserved		
-		sipContext.enterSipApp(sipApplicationSession, sipSessionImpl, false, true);
+		if(!isLockedByMailbox(sipContext, sipApplicationDispatcher.isBypassRequestExecutor())) {
+			sipContext.enterSipApp(sipApplicationSession, sipSessionImpl, false, true);
+		}
 		
 		// The fastest way to figure out the transport is the mandatory Via transport header 
 		ViaHeader via = (ViaHeader) request.getHeader(ViaHeader.NAME);
@@ -532,13 +534,13 @@ public class InitialRequestDispatcher extends RequestDispatcher {
 					Address routeAddress = null; 
 					RouteHeader applicationRouterInfoRouteHeader = null;
 					try {
-						routeAddress = SipFactoryImpl.addressFactory.createAddress(routes[0]);
+						routeAddress = SipFactoryImpl.parseAddress(routes[0]);
 						applicationRouterInfoRouteHeader = SipFactoryImpl.headerFactory.createRouteHeader(routeAddress);										
 						if(sipApplicationDispatcher.isRouteExternal(applicationRouterInfoRouteHeader)) {						
 							// push all of the routes on the Route header stack of the request and 
 							// send the request externally
 							for (int i = routes.length-1 ; i >= 0; i--) {
-								routeAddress = SipFactoryImpl.addressFactory.createAddress(routes[i]);
+								routeAddress = SipFactoryImpl.parseAddress(routes[i]);
 								URI routeURI = routeAddress.getURI();
 								if(routeURI.isSipURI()) {
 									((javax.sip.address.SipURI)routeURI).setLrParam();
@@ -554,7 +556,7 @@ public class InitialRequestDispatcher extends RequestDispatcher {
 							if(logger.isDebugEnabled()) {
 								logger.debug("Routing the request externally " + sipServletRequest );
 							}
-							request.setRequestURI(SipFactoryImpl.addressFactory.createURI(routes[0]));
+							request.setRequestURI(SipFactoryImpl.parseURI(routes[0]));
 							try {
 								forwardRequestStatefully(sipServletRequest, null, sipRouteModifier);
 								return true;
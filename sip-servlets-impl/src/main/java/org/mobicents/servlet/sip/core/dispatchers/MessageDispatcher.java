@@ -19,10 +19,12 @@
  
 package org.mobicents.servlet.sip.core.dispatchers;
 
+import gov.nist.javax.sip.message.MessageExt;
+
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
 
 import javax.servlet.Servlet;
 import javax.servlet.ServletException;
@@ -35,6 +37,7 @@ import javax.sip.message.Request;
 import javax.sip.message.Response;
 
 import org.apache.log4j.Logger;
+import org.mobicents.servlet.sip.annotation.ConcurrencyControlMode;
 import org.mobicents.servlet.sip.core.DispatcherException;
 import org.mobicents.servlet.sip.core.MobicentsSipServlet;
 import org.mobicents.servlet.sip.core.SipApplicationDispatcher;
@@ -137,9 +140,26 @@ public abstract class MessageDispatcher {
 	public static void sendErrorResponse(SipApplicationDispatcher sipApplicationDispatcher, int errorCode,
 			ServerTransaction transaction, Request request,
 			SipProvider sipProvider) {
+		sendErrorResponse(sipApplicationDispatcher, errorCode, transaction, request, sipProvider, -1);
+	}
+	
+	/**
+	 * 
+	 * @param errorCode
+	 * @param transaction
+	 * @param request
+	 * @param sipProvider
+	 * @param retryAfter the number of seconds to put in a Retry-After header, no header is added if negative
+	 */
+	public static void sendErrorResponse(SipApplicationDispatcher sipApplicationDispatcher, int errorCode,
+			ServerTransaction transaction, Request request,
+			SipProvider sipProvider, int retryAfter) {
 		try{
 			Response response=SipFactoryImpl.messageFactory.createResponse
 	        	(errorCode,request);			
+			if(retryAfter >= 0) {
+				response.setHeader(SipFactoryImpl.headerFactory.createRetryAfterHeader(retryAfter));
+			}
 	        if (transaction!=null) {
 	        	transaction.sendResponse(response);
 	        } else { 
@@ -365,10 +385,15 @@ public abstract class MessageDispatcher {
 					logger.debug("Invoking instance " + servlet);
 				}
 				
+				final SipApplicationDispatcher sipApplicationDispatcher = sipContext.getSipApplicationDispatcher();
+				final long startTime = sipApplicationDispatcher.isGatherStatistics() ? System.nanoTime() : 0;
 				try {
 					servlet.service(request, null);
 				} finally {			
 					sipServletImpl.deallocate(servlet);
+					if(startTime != 0) {
+						sipApplicationDispatcher.recordRequestProcessingTime(request.getMethod(), sipContext.getApplicationName(), System.nanoTime() - startTime);
+					}
 				}
 			} finally {
 				sipContext.exitSipContext(oldClassLoader);
@@ -455,10 +480,15 @@ public abstract class MessageDispatcher {
 			try {
 				sipContext.enterSipContext();	
 			
+				final SipApplicationDispatcher sipApplicationDispatcher = sipContext.getSipApplicationDispatcher();
+				final long startTime = sipApplicationDispatcher.isGatherStatistics() ? System.nanoTime() : 0;
 				try {				
 					servlet.service(null, response);
 				} finally {
 					sipServletImpl.deallocate(servlet);
+					if(startTime != 0) {
+						sipApplicationDispatcher.recordResponseProcessingTime(response.getStatus(), sipContext.getApplicationName(), System.nanoTime() - startTime);
+					}
 				}
 			} finally {
 				sipContext.exitSipContext(oldClassLoader);
@@ -495,12 +525,36 @@ public abstract class MessageDispatcher {
 	 * executor of a sip session, app session or just threadpool executor which doesn't limit concurrent processing
 	 * of requests per app or sip session.
 	 * Since 0.8.1 it always return threadpool executor which doesn't limit concurrent processing since concurrency is achieved through semaphore
+	 * except for the SipApplicationSessionMailbox concurrency control mode where the mailbox of the sip application session is returned
+	 * and for the Sharded dispatcher execution mode where the shard of the Call-ID of the message is returned
 	 * 
 	 * @param sipServletMessage the request you put here must have app and sip session associated
 	 * @return
 	 */
-	public final ExecutorService getConcurrencyModelExecutorService(
+	public final Executor getConcurrencyModelExecutorService(
 			SipContext sipContext, SipServletMessageImpl sipServletMessage) {
-			return this.sipApplicationDispatcher.getAsynchronousExecutor();
+		if(ConcurrencyControlMode.SipApplicationSessionMailbox.equals(sipContext.getConcurrencyControlMode())) {
+			final MobicentsSipSession sipSession = sipServletMessage.getSipSession();
+			final MobicentsSipApplicationSession sipApplicationSession = sipSession != null ? sipSession.getSipApplicationSession() : null;
+			if(sipApplicationSession != null) {
+				final Executor mailbox = sipApplicationSession.getMailbox();
+				if(mailbox != null) {
+					return mailbox;
+				}
+			}
+		}
+		return this.sipApplicationDispatcher.getDispatcherExecutor(((MessageExt)sipServletMessage.getMessage()).getCallIdHeader().getCallId());
+	}
+	
+	/**
+	 * In the SipApplicationSessionMailbox concurrency control mode, a dispatch task handed over to the executor is queued
+	 * in the mailbox of the sip application session whose drain pass locks the session while running it, 
+	 * so the stack thread must neither lock nor unlock the session itself.
+	 * 
+	 * @param bypassExecutor true if the dispatch task will be run on the stack thread
+	 * @return true if the session is locked by the mailbox for this dispatch
+	 */
+	protected static boolean isLockedByMailbox(SipContext sipContext, boolean bypassExecutor) {
+		return !bypassExecutor && ConcurrencyControlMode.SipApplicationSessionMailbox.equals(sipContext.getConcurrencyControlMode());
 	}
 }
@@ -101,13 +101,13 @@ public abstract class RequestDispatcher extends MessageDispatcher {
 				//an app was found or an app was returned by the AR but not found
 				String handlerName = session.getHandler();
 				if(handlerName != null) {
-					final String branch = JainSipUtils.createBranch(session.getSipApplicationSession().getKey().getId(),  sipApplicationDispatcher.getHashFromApplicationName(session.getKey().getApplicationName()));
+					final String branch = JainSipUtils.createBranch(sipApplicationDispatcher, session.getSipApplicationSession().getKey().getId(), session.getKey().getApplicationName());
 					viaHeader.setBranch(branch);
 				} else {				
 					// if the handler name is null it means that the app returned by the AR was not deployed
 					// and couldn't be called, 
 					// we specify it so that on response handling this app can be skipped
-					final String branch = JainSipUtils.createBranch(session.getSipApplicationSession().getKey().getId(),  sipApplicationDispatcher.getHashFromApplicationName(session.getKey().getApplicationName()));
+					final String branch = JainSipUtils.createBranch(sipApplicationDispatcher, session.getSipApplicationSession().getKey().getId(), session.getKey().getApplicationName());
 					viaHeader.setBranch(branch);
 					appNotDeployed = session.getKey().getApplicationName();					
 				}			
@@ -52,6 +52,7 @@ import org.mobicents.javax.servlet.sip.SipFactoryExt;
 import org.mobicents.servlet.sip.JainSipUtils;
 import org.mobicents.servlet.sip.annotation.ConcurrencyControlMode;
 import org.mobicents.servlet.sip.core.DispatcherException;
+import org.mobicents.servlet.sip.core.RoutingToken;
 import org.mobicents.servlet.sip.core.SipContext;
 import org.mobicents.servlet.sip.core.SipManager;
 import org.mobicents.servlet.sip.core.proxy.MobicentsProxyBranch;
@@ -60,7 +61,6 @@ import org.mobicents.servlet.sip.core.session.MobicentsSipApplicationSession;
 import org.mobicents.servlet.sip.core.session.MobicentsSipSession;
 import org.mobicents.servlet.sip.core.session.SessionManagerUtil;
 import org.mobicents.servlet.sip.core.session.SipApplicationSessionKey;
-import org.mobicents.servlet.sip.core.session.SipSessionKey;
 import org.mobicents.servlet.sip.message.SipFactoryImpl;
 import org.mobicents.servlet.sip.message.SipServletMessageImpl;
 import org.mobicents.servlet.sip.message.SipServletRequestImpl;
@@ -192,24 +192,32 @@ public class ResponseDispatcher extends MessageDispatcher {
 					return ;
 				}		
 			}
-			String strippedBranchId = branch.substring(BRANCH_MAGIC_COOKIE.length());
-			int indexOfUnderscore = strippedBranchId.indexOf("_");
-			if(indexOfUnderscore == -1) {
-				if(sipServletResponse.getStatus() == Response.TRYING) return;
-				throw new DispatcherException("the via header branch " + branch + " for the response is wrong the response does not reuse the one from the original request");
-			}
-			final String appId = strippedBranchId.substring(0, indexOfUnderscore);
-			indexOfUnderscore = strippedBranchId.indexOf("_");			
-			if(indexOfUnderscore == -1) {
-				throw new DispatcherException("the via header branch " + branch + " for the response is wrong the response does not reuse the one from the original request");
-			}
-			strippedBranchId = strippedBranchId.substring(indexOfUnderscore + 1);
-			indexOfUnderscore = strippedBranchId.indexOf("_");
-			if(indexOfUnderscore == -1) {
-				throw new DispatcherException("the via header branch " + branch + " for the response is wrong the response does not reuse the one from the original request");
+			final String appId;
+			final String appName;
+			final RoutingToken routingToken = RoutingToken.parseBranch(branch);
+			if(routingToken != null) {
+				appId = routingToken.getApplicationSessionId();
+				appName = sipApplicationDispatcher.getApplicationNameFromIndex(routingToken.getApplicationIndex());
+				if(logger.isDebugEnabled() && routingToken.getNodeId() != JainSipUtils.getRoutingNodeId()) {
+					logger.debug("response " + branch + " to a request sent by the node " + routingToken.getNodeId() + " failed over to this node");
+				}
+			} else {
+				// branch created by a previous version of the container
+				String strippedBranchId = branch.substring(BRANCH_MAGIC_COOKIE.length());
+				int indexOfUnderscore = strippedBranchId.indexOf("_");
+				if(indexOfUnderscore == -1) {
+					if(sipServletResponse.getStatus() == Response.TRYING) return;
+					throw new DispatcherException("the via header branch " + branch + " for the response is wrong the response does not reuse the one from the original request");
+				}
+				appId = strippedBranchId.substring(0, indexOfUnderscore);
+				strippedBranchId = strippedBranchId.substring(indexOfUnderscore + 1);
+				indexOfUnderscore = strippedBranchId.indexOf("_");
+				if(indexOfUnderscore == -1) {
+					throw new DispatcherException("the via header branch " + branch + " for the response is wrong the response does not reuse the one from the original request");
+				}
+				final String appNameHashed = strippedBranchId.substring(0, indexOfUnderscore);			
+				appName = sipApplicationDispatcher.getApplicationNameFromHash(appNameHashed);
 			}
-			final String appNameHashed = strippedBranchId.substring(0, indexOfUnderscore);			
-			final String appName = sipApplicationDispatcher.getApplicationNameFromHash(appNameHashed);
 			if(appName == null) {
 				throw new DispatcherException("the via header branch " + branch + " for the response is missing the appname previsouly set by the container");
 			}
@@ -226,9 +234,8 @@ public class ResponseDispatcher extends MessageDispatcher {
 				return ;
 			}
 			final SipManager sipManager = sipContext.getSipManager();
-			SipSessionKey sessionKey = SessionManagerUtil.getSipSessionKey(appId, appName, response, inverted);
 			if(logger.isDebugEnabled()) {
-				logger.debug("Trying to find session with following session key " + sessionKey);
+				logger.debug("Trying to find session with following session key " + SessionManagerUtil.getSipSessionKey(appId, appName, response, inverted));
 			}		
 			final SipApplicationSessionKey sipApplicationSessionKey = SessionManagerUtil.getSipApplicationSessionKey(
 					appName, 
@@ -242,14 +249,13 @@ public class ResponseDispatcher extends MessageDispatcher {
 			}
 			MobicentsSipSession tmpSession = null;
 
-			tmpSession = sipManager.getSipSession(sessionKey, false, sipFactoryImpl, sipApplicationSession);
+			tmpSession = SessionManagerUtil.findSipSession(sipManager, appId, appName, response, inverted, sipFactoryImpl, sipApplicationSession);
 			//needed in the case of RE-INVITE by example
 			if(tmpSession == null) {
-				sessionKey = SessionManagerUtil.getSipSessionKey(appId, appName, response, !inverted);
 				if(logger.isDebugEnabled()) {
-					logger.debug("Trying to find session with following session key " + sessionKey);
+					logger.debug("Trying to find session with following session key " + SessionManagerUtil.getSipSessionKey(appId, appName, response, !inverted));
 				}
-				tmpSession = sipManager.getSipSession(sessionKey, false, sipFactoryImpl, sipApplicationSession);				
+				tmpSession = SessionManagerUtil.findSipSession(sipManager, appId, appName, response, !inverted, sipFactoryImpl, sipApplicationSession);				
 			}
 			if(logger.isDebugEnabled()) {
 				logger.debug("session found is " + tmpSession);
@@ -518,7 +524,9 @@ public class ResponseDispatcher extends MessageDispatcher {
 			};
 			// we enter the sip app here, thus acuiring the semaphore on the session (if concurrency control is set) before the jain sip tx semaphore is released and ensuring that
 			// the tx serialization is preserved
-			sipContext.enterSipApp(session.getSipApplicationSession(), session, false, true);
+			if(!isLockedByMailbox(sipContext, sipApplicationDispatcher.isBypassResponseExecutor())) {
+				sipContext.enterSipApp(session.getSipApplicationSession(), session, false, true);
+			}
 			// if the flag is set we bypass the executor, the bypassExecutor flag should be made deprecated 
 			if(sipApplicationDispatcher.isBypassResponseExecutor() || ConcurrencyControlMode.Transaction.equals((sipContext.getConcurrencyControlMode()))) {
 				dispatchTask.dispatchAndHandleExceptions();
@@ -67,7 +67,6 @@ import org.mobicents.servlet.sip.core.session.MobicentsSipApplicationSession;
 import org.mobicents.servlet.sip.core.session.MobicentsSipApplicationSessionKey;
 import org.mobicents.servlet.sip.core.session.MobicentsSipSession;
 import org.mobicents.servlet.sip.core.session.SessionManagerUtil;
-import org.mobicents.servlet.sip.core.session.SipSessionKey;
 import org.mobicents.servlet.sip.message.SipServletMessageImpl;
 import org.mobicents.servlet.sip.message.SipServletRequestImpl;
 import org.mobicents.servlet.sip.message.SipServletResponseImpl;
@@ -264,21 +263,23 @@ public class SubsequentRequestDispatcher extends RequestDispatcher {
 			}
 		}
 		
-		SipSessionKey key = SessionManagerUtil.getSipSessionKey(sipApplicationSession.getKey().getId(), applicationName, request, inverted);
+		final String sipApplicationSessionId = sipApplicationSession.getKey().getId();
 		if(logger.isDebugEnabled()) {
-			logger.debug("Trying to find the corresponding sip session with key " + key + " to this subsequent request " + request +
+			logger.debug("Trying to find the corresponding sip session with key " + SessionManagerUtil.getSipSessionKey(sipApplicationSessionId, applicationName, request, inverted) + 
+					" to this subsequent request " + request +
 					" with the following popped route header " + sipServletRequest.getPoppedRoute());
 		}
-		tmpSipSession = sipManager.getSipSession(key, false, sipFactoryImpl, sipApplicationSession);
+		// the key is only built if the session needs it, most subsequent requests find their session
+		tmpSipSession = SessionManagerUtil.findSipSession(sipManager, sipApplicationSessionId, applicationName, request, inverted, sipFactoryImpl, sipApplicationSession);
 		
 		// Added by Vladimir because the inversion detection on proxied requests doesn't work
 		if(tmpSipSession == null) {
 			if(logger.isDebugEnabled()) {
-				logger.debug("Cannot find the corresponding sip session with key " + key + " to this subsequent request " + request +
+				logger.debug("Cannot find the corresponding sip session with key " + SessionManagerUtil.getSipSessionKey(sipApplicationSessionId, applicationName, request, inverted) + 
+						" to this subsequent request " + request +
 						" with the following popped route header " + sipServletRequest.getPoppedRoute() + ". Trying inverted.");
 			}
-			key = SessionManagerUtil.getSipSessionKey(sipApplicationSession.getKey().getId(), applicationName, request, !inverted);
-			tmpSipSession = sipManager.getSipSession(key, false, sipFactoryImpl, sipApplicationSession);
+			tmpSipSession = SessionManagerUtil.findSipSession(sipManager, sipApplicationSessionId, applicationName, request, !inverted, sipFactoryImpl, sipApplicationSession);
 		}
 		
 		if(tmpSipSession == null) {
@@ -310,7 +311,10 @@ public class SubsequentRequestDispatcher extends RequestDispatcher {
 		final SubsequentDispatchTask dispatchTask = new SubsequentDispatchTask(sipServletRequest, sipProvider);
 		// we enter the sip app here, thus acuiring the semaphore on the session (if concurrency control is set) before the jain sip tx semaphore is released and ensuring that
 		// the tx serialization is preserved		
-		sipContext.enterSipApp(sipApplicationSession, sipSession, false, true);
+		final boolean lockedByMailbox = isLockedByMailbox(sipContext, sipApplicationDispatcher.isBypassRequestExecutor());
+		if(!lockedByMailbox) {
+			sipContext.enterSipApp(sipApplicationSession, sipSession, false, true);
+		}
 		// Issue 2886 : http://code.google.com/p/mobicents/issues/detail?id=2886 ACK is bound out of replication context
 		// we need to enter the serialization here because validateCSeq below can set the CSeq so we need to replicate it
 		final boolean batchStarted = sipContext.enterSipAppHa(true);
@@ -330,7 +334,9 @@ public class SubsequentRequestDispatcher extends RequestDispatcher {
 				} catch (IOException e) {
 					logger.error("Problem sending 491 response to " + sipServletRequest, e);
 				} finally {
-					sipContext.exitSipApp(sipApplicationSession, sipSession);
+					if(!lockedByMailbox) {
+						sipContext.exitSipApp(sipApplicationSession, sipSession);
+					}
 				}
 			}
 			sipSession.setRequestsPending(sipSession.getRequestsPending() + 1);
@@ -354,7 +360,9 @@ public class SubsequentRequestDispatcher extends RequestDispatcher {
 				// we need to exit the serialization here because validateCSeq above can set the CSeq so we need to replicate it
 				sipContext.exitSipAppHa(sipServletRequest, null, batchStarted);
 				// Issue 1714 release the lock if we don't call the app
-				sipContext.exitSipApp(sipApplicationSession, sipSession);				
+				if(!lockedByMailbox) {
+					sipContext.exitSipApp(sipApplicationSession, sipSession);
+				}
 				return;
 			}
 		}
@@ -406,8 +414,8 @@ public class SubsequentRequestDispatcher extends RequestDispatcher {
 				
 				String branch = ((ViaHeader)sipServletRequest.getMessage().getHeader(ViaHeader.NAME)).getBranch();
 				ViaHeader via = JainSipUtils.createViaHeader(sipContext.getSipApplicationDispatcher().getSipNetworkInterfaceManager(), request, 
-						JainSipUtils.createBranch("orphan", 
-								sipContext.getSipApplicationDispatcher().getHashFromApplicationName(applicationName),
+						JainSipUtils.createBranch(sipContext.getSipApplicationDispatcher(), "orphan", 
+								applicationName,
 								Integer.toString(branch.hashCode()) + branch.substring(branch.length()/2)), 
 								null) ;
 				if(connector.isUseStaticAddress()) {
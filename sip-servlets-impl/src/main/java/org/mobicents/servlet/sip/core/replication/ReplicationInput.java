@@ -0,0 +1,237 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.servlet.sip.core.replication;
+
+import gov.nist.javax.sip.message.SIPMessage;
+import gov.nist.javax.sip.parser.StringMsgParser;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.StreamCorruptedException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.mobicents.servlet.sip.core.session.SipApplicationSessionKey;
+import org.mobicents.servlet.sip.core.session.SipSessionKey;
+
+/**
+ * Reads back a block written by a {@link ReplicationOutput}.
+ *
+ * An instance is not thread safe and covers a single block.
+ */
+public final class ReplicationInput {
+	private final ObjectInput in;
+	private final int version;
+	private List<String> strings;
+	private List<Object> keys;
+
+	/**
+	 * Start reading a block from the given stream
+	 * @param in the stream to read from
+	 * @throws IOException if the stream doesn't start with a block written by a compatible version
+	 */
+	public ReplicationInput(ObjectInput in) throws IOException {
+		this.in = in;
+		final int magic = in.readUnsignedByte();
+		if(magic != ReplicationOutput.MAGIC) {
+			throw new StreamCorruptedException("Replicated state doesn't start with the expected magic number, found " + magic);
+		}
+		version = in.readUnsignedByte();
+		if(version > ReplicationOutput.VERSION) {
+			throw new InvalidObjectException("Replicated state written in version " + version
+					+ " which is more recent than the supported version " + ReplicationOutput.VERSION);
+		}
+	}
+
+	/**
+	 * @return the version of the format the block was written in
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	public boolean readBoolean() throws IOException {
+		return in.readBoolean();
+	}
+
+	public int readVarInt() throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			final int b = in.readUnsignedByte();
+			value |= (b & 0x7F) << shift;
+			if((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new StreamCorruptedException("Malformed variable length int");
+	}
+
+	public int readSignedVarInt() throws IOException {
+		final int value = readVarInt();
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	public long readVarLong() throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 70; shift += 7) {
+			final int b = in.readUnsignedByte();
+			value |= (long) (b & 0x7F) << shift;
+			if((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new StreamCorruptedException("Malformed variable length long");
+	}
+
+	public long readSignedVarLong() throws IOException {
+		final long value = readVarLong();
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	public byte[] readBytes() throws IOException {
+		final int length = readVarInt();
+		if(length == 0) {
+			return null;
+		}
+		final byte[] bytes = new byte[length - 1];
+		in.readFully(bytes);
+		return bytes;
+	}
+
+	public String readString() throws IOException {
+		final byte[] bytes = readBytes();
+		return bytes == null ? null : new String(bytes, ReplicationOutput.UTF_8);
+	}
+
+	public String readInternedString() throws IOException {
+		final int reference = readVarInt();
+		if(reference == ReplicationOutput.NULL_REFERENCE) {
+			return null;
+		}
+		if(strings == null) {
+			strings = new ArrayList<String>();
+		}
+		if(reference == ReplicationOutput.NEW_REFERENCE) {
+			final String value = readString();
+			strings.add(value);
+			return value;
+		}
+		final int index = reference - ReplicationOutput.FIRST_INDEX;
+		if(index >= strings.size()) {
+			throw new StreamCorruptedException("Reference to unknown string " + index);
+		}
+		return strings.get(index);
+	}
+
+	public <E extends Enum<E>> E readEnum(Class<E> enumClass) throws IOException {
+		final String name = readInternedString();
+		if(name == null) {
+			return null;
+		}
+		try {
+			return Enum.valueOf(enumClass, name);
+		} catch (IllegalArgumentException e) {
+			throw new InvalidObjectException("Unknown constant " + name + " of " + enumClass.getName());
+		}
+	}
+
+	public SipSessionKey readSipSessionKey() throws IOException {
+		final int reference = readKeyReference();
+		if(reference == ReplicationOutput.NEW_REFERENCE) {
+			final String fromTag = readString();
+			final String toTag = readString();
+			final String callId = readString();
+			final String applicationSessionId = readInternedString();
+			final String applicationName = readInternedString();
+			return addKey(new SipSessionKey(fromTag, toTag, callId, applicationSessionId, applicationName));
+		}
+		return (SipSessionKey) getKey(reference, SipSessionKey.class);
+	}
+
+	public SipApplicationSessionKey readSipApplicationSessionKey() throws IOException {
+		final int reference = readKeyReference();
+		if(reference == ReplicationOutput.NEW_REFERENCE) {
+			final String id = readString();
+			final String applicationName = readInternedString();
+			final String appGeneratedKey = readString();
+			return addKey(new SipApplicationSessionKey(id, applicationName, appGeneratedKey));
+		}
+		return (SipApplicationSessionKey) getKey(reference, SipApplicationSessionKey.class);
+	}
+
+	private int readKeyReference() throws IOException {
+		if(keys == null) {
+			keys = new ArrayList<Object>();
+		}
+		return readVarInt();
+	}
+
+	private <K> K addKey(K key) {
+		keys.add(key);
+		return key;
+	}
+
+	private Object getKey(int reference, Class<?> keyClass) throws IOException {
+		if(reference == ReplicationOutput.NULL_REFERENCE) {
+			return null;
+		}
+		final int index = reference - ReplicationOutput.FIRST_INDEX;
+		if(index >= keys.size() || !keyClass.isInstance(keys.get(index))) {
+			throw new StreamCorruptedException("Reference to unknown " + keyClass.getSimpleName() + " " + index);
+		}
+		return keys.get(index);
+	}
+
+	/**
+	 * @return the message parsed from the raw bytes written by {@link ReplicationOutput#writeMessage(javax.sip.message.Message)}, null if none was written
+	 */
+	public SIPMessage readMessage() throws IOException {
+		final byte[] bytes = readBytes();
+		if(bytes == null) {
+			return null;
+		}
+		try {
+			return new StringMsgParser().parseSIPMessage(bytes, true, false, null);
+		} catch (ParseException e) {
+			throw new IllegalArgumentException("Message " + new String(bytes, ReplicationOutput.UTF_8) + " previously serialized could not be reparsed", e);
+		}
+	}
+
+	public Object readObject() throws IOException, ClassNotFoundException {
+		return in.readObject();
+	}
+
+	/**
+	 * Read the attributes written by {@link ReplicationOutput#writeAttributes(Map)}
+	 * @param attributes the attributes to replace
+	 */
+	public void readAttributes(Map<String, Object> attributes) throws IOException, ClassNotFoundException {
+		final int size = readVarInt();
+		attributes.clear();
+		for (int i = 0; i < size; i++) {
+			final String name = readInternedString();
+			attributes.put(name, in.readObject());
+		}
+	}
+}
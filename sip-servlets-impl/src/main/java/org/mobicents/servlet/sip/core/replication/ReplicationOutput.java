@@ -0,0 +1,255 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.servlet.sip.core.replication;
+
+import gov.nist.javax.sip.message.SIPMessage;
+
+import java.io.IOException;
+import java.io.ObjectOutput;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import javax.sip.header.ViaHeader;
+import javax.sip.message.Message;
+
+import org.mobicents.servlet.sip.core.session.MobicentsSipApplicationSessionKey;
+import org.mobicents.servlet.sip.core.session.MobicentsSipSessionKey;
+
+/**
+ * Writes the replicated state of the messages, proxies and B2BUA helpers in a compact binary form.
+ *
+ * Every block starts with a magic byte and the version of the format so that a node can refuse state written
+ * by an incompatible version. Integers are written as variable length quantities, strings as length prefixed UTF-8
+ * without the 64KB limit of {@link ObjectOutput#writeUTF(String)}, and the strings and keys repeated inside a block
+ * (application names, application session ids, the session keys linked by a B2BUA) are written once and then
+ * referenced by their index. SIP messages are written as their raw bytes rather than through their string
+ * representation.
+ *
+ * An instance is not thread safe and covers a single block, it is read back by a {@link ReplicationInput}.
+ */
+public final class ReplicationOutput {
+	public static final int MAGIC = 0x5E;
+	public static final int VERSION = 1;
+
+	static final Charset UTF_8 = Charset.forName("UTF-8");
+	// references written in place of a string or a key : 0 is null, 1 a new value, n >= 2 the value at index n - 2
+	static final int NULL_REFERENCE = 0;
+	static final int NEW_REFERENCE = 1;
+	static final int FIRST_INDEX = 2;
+
+	private final ObjectOutput out;
+	private Map<String, Integer> strings;
+	private Map<Object, Integer> keys;
+
+	/**
+	 * Start a new block on the given stream
+	 * @param out the stream to write to
+	 * @throws IOException if the block header couldn't be written
+	 */
+	public ReplicationOutput(ObjectOutput out) throws IOException {
+		this.out = out;
+		out.writeByte(MAGIC);
+		out.writeByte(VERSION);
+	}
+
+	public void writeBoolean(boolean value) throws IOException {
+		out.writeBoolean(value);
+	}
+
+	/**
+	 * Write a non negative int in 1 to 5 bytes, 7 bits at a time
+	 */
+	public void writeVarInt(int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	/**
+	 * Write a signed int, small negative values such as -1 for a timeout not set stay on a single byte
+	 */
+	public void writeSignedVarInt(int value) throws IOException {
+		writeVarInt((value << 1) ^ (value >> 31));
+	}
+
+	/**
+	 * Write a non negative long in 1 to 10 bytes, 7 bits at a time
+	 */
+	public void writeVarLong(long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.writeByte((int) (value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte((int) value);
+	}
+
+	/**
+	 * Write a signed long, small negative values such as -1 for a CSeq not set stay on a single byte
+	 */
+	public void writeSignedVarLong(long value) throws IOException {
+		writeVarLong((value << 1) ^ (value >> 63));
+	}
+
+	/**
+	 * @param bytes the bytes to write, can be null
+	 */
+	public void writeBytes(byte[] bytes) throws IOException {
+		if(bytes == null) {
+			writeVarInt(0);
+		} else {
+			writeVarInt(bytes.length + 1);
+			out.write(bytes);
+		}
+	}
+
+	/**
+	 * @param value the string to write, can be null
+	 */
+	public void writeString(String value) throws IOException {
+		writeBytes(value == null ? null : value.getBytes(UTF_8));
+	}
+
+	/**
+	 * Write a string that is likely to be repeated in the block, such as an application name, only its index
+	 * is written after its first occurrence
+	 * @param value the string to write, can be null
+	 */
+	public void writeInternedString(String value) throws IOException {
+		if(value == null) {
+			writeVarInt(NULL_REFERENCE);
+			return;
+		}
+		if(strings == null) {
+			strings = new HashMap<String, Integer>();
+		}
+		final Integer index = strings.get(value);
+		if(index != null) {
+			writeVarInt(index + FIRST_INDEX);
+			return;
+		}
+		strings.put(value, strings.size());
+		writeVarInt(NEW_REFERENCE);
+		writeString(value);
+	}
+
+	/**
+	 * @param value the enum constant to write by name so that reordering the constants doesn't break the format, can be null
+	 */
+	public void writeEnum(Enum<?> value) throws IOException {
+		writeInternedString(value == null ? null : value.name());
+	}
+
+	/**
+	 * Write the fields of a sip session key, a key already written in the block is only referenced
+	 * so that a {@link ReplicationInput} gives back the same instance
+	 * @param key the key to write, can be null
+	 */
+	public void writeSipSessionKey(MobicentsSipSessionKey key) throws IOException {
+		if(writeKeyReference(key)) {
+			writeString(key.getFromTag());
+			writeString(key.getToTag());
+			writeString(key.getCallId());
+			writeInternedString(key.getApplicationSessionId());
+			writeInternedString(key.getApplicationName());
+		}
+	}
+
+	/**
+	 * Write the fields of a sip application session key, a key already written in the block is only referenced
+	 * so that a {@link ReplicationInput} gives back the same instance
+	 * @param key the key to write, can be null
+	 */
+	public void writeSipApplicationSessionKey(MobicentsSipApplicationSessionKey key) throws IOException {
+		if(writeKeyReference(key)) {
+			writeString(key.getId());
+			writeInternedString(key.getApplicationName());
+			writeString(key.getAppGeneratedKey());
+		}
+	}
+
+	/**
+	 * @return true if the key is new to this block and its fields have to be written
+	 */
+	private boolean writeKeyReference(Object key) throws IOException {
+		if(key == null) {
+			writeVarInt(NULL_REFERENCE);
+			return false;
+		}
+		if(keys == null) {
+			keys = new IdentityHashMap<Object, Integer>();
+		}
+		final Integer index = keys.get(key);
+		if(index != null) {
+			writeVarInt(index + FIRST_INDEX);
+			return false;
+		}
+		keys.put(key, keys.size());
+		writeVarInt(NEW_REFERENCE);
+		return true;
+	}
+
+	/**
+	 * Write the raw bytes of a SIP message, headers and body, as they would be sent on the wire
+	 * @param message the message to write, can be null
+	 */
+	public void writeMessage(Message message) throws IOException {
+		if(message == null) {
+			writeBytes(null);
+			return;
+		}
+		final ViaHeader via = (ViaHeader) message.getHeader(ViaHeader.NAME);
+		if(via != null && message instanceof SIPMessage) {
+			// the stack overwrites the transport of the top most Via with the one given, so give it its own
+			writeBytes(((SIPMessage) message).encodeAsBytes(via.getTransport()));
+		} else {
+			// the message is still being built by the application, its encoding doesn't depend on any transport
+			writeString(message.toString());
+		}
+	}
+
+	/**
+	 * Write an object through the underlying stream serialization
+	 */
+	public void writeObject(Object value) throws IOException {
+		out.writeObject(value);
+	}
+
+	/**
+	 * Write the attributes of a message, the reader replaces its attributes with them
+	 * @param attributes the attributes, can be null
+	 */
+	public void writeAttributes(Map<String, Object> attributes) throws IOException {
+		final List<Entry<String, Object>> entries = attributes == null ?
+				new ArrayList<Entry<String, Object>>(0) : new ArrayList<Entry<String, Object>>(attributes.entrySet());
+		writeVarInt(entries.size());
+		for (Entry<String, Object> entry : entries) {
+			writeInternedString(entry.getKey());
+			out.writeObject(entry.getValue());
+		}
+	}
+}
@@ -0,0 +1,255 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.servlet.sip.core.session;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Thread safe attribute map of the sip sessions and sip application sessions.
+ * Most sessions hold a handful of attributes or none at all, so up to {@link #MAX_COMPACT_SIZE} attributes 
+ * are kept as a flat array of alternating names and values, copied on write and read without locking,
+ * instead of the table and segments of a ConcurrentHashMap. Past that size the map switches for good 
+ * to a ConcurrentHashMap.
+ * 
+ * As with ConcurrentHashMap, null names and values are not allowed and iterators are weakly consistent, 
+ * they never throw ConcurrentModificationException.
+ */
+public final class CompactAttributeMap extends AbstractMap<String, Object> implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	static final int MAX_COMPACT_SIZE = 8;
+
+	private static final Object[] EMPTY = new Object[0];
+
+	// either an Object[] of alternating names and values or a ConcurrentHashMap once the map grew past MAX_COMPACT_SIZE
+	private volatile Object table = EMPTY;
+
+	@SuppressWarnings("unchecked")
+	private static ConcurrentHashMap<String, Object> asMap(Object table) {
+		return table instanceof ConcurrentHashMap ? (ConcurrentHashMap<String, Object>) table : null;
+	}
+
+	private static int indexOf(Object[] entries, Object name) {
+		for (int i = 0; i < entries.length; i += 2) {
+			if(entries[i].equals(name)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public int size() {
+		final Object current = table;
+		final ConcurrentHashMap<String, Object> map = asMap(current);
+		return map != null ? map.size() : ((Object[]) current).length / 2;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	@Override
+	public boolean containsKey(Object name) {
+		return get(name) != null;
+	}
+
+	@Override
+	public Object get(Object name) {
+		if(name == null) {
+			throw new NullPointerException();
+		}
+		final Object current = table;
+		final ConcurrentHashMap<String, Object> map = asMap(current);
+		if(map != null) {
+			return map.get(name);
+		}
+		final Object[] entries = (Object[]) current;
+		final int index = indexOf(entries, name);
+		return index < 0 ? null : entries[index + 1];
+	}
+
+	@Override
+	public Object put(String name, Object value) {
+		if(name == null || value == null) {
+			throw new NullPointerException();
+		}
+		ConcurrentHashMap<String, Object> map = asMap(table);
+		if(map == null) {
+			synchronized (this) {
+				map = asMap(table);
+				if(map == null) {
+					final Object[] entries = (Object[]) table;
+					final int index = indexOf(entries, name);
+					if(index >= 0) {
+						final Object[] newEntries = entries.clone();
+						newEntries[index + 1] = value;
+						table = newEntries;
+						return entries[index + 1];
+					}
+					if(entries.length / 2 < MAX_COMPACT_SIZE) {
+						final Object[] newEntries = new Object[entries.length + 2];
+						System.arraycopy(entries, 0, newEntries, 0, entries.length);
+						newEntries[entries.length] = name;
+						newEntries[entries.length + 1] = value;
+						table = newEntries;
+						return null;
+					}
+					map = new ConcurrentHashMap<String, Object>(MAX_COMPACT_SIZE * 4);
+					for (int i = 0; i < entries.length; i += 2) {
+						map.put((String) entries[i], entries[i + 1]);
+					}
+					map.put(name, value);
+					table = map;
+					return null;
+				}
+			}
+		}
+		return map.put(name, value);
+	}
+
+	@Override
+	public Object remove(Object name) {
+		if(name == null) {
+			throw new NullPointerException();
+		}
+		ConcurrentHashMap<String, Object> map = asMap(table);
+		if(map == null) {
+			synchronized (this) {
+				map = asMap(table);
+				if(map == null) {
+					final Object[] entries = (Object[]) table;
+					final int index = indexOf(entries, name);
+					if(index < 0) {
+						return null;
+					}
+					if(entries.length == 2) {
+						table = EMPTY;
+					} else {
+						final Object[] newEntries = new Object[entries.length - 2];
+						System.arraycopy(entries, 0, newEntries, 0, index);
+						System.arraycopy(entries, index + 2, newEntries, index, entries.length - index - 2);
+						table = newEntries;
+					}
+					return entries[index + 1];
+				}
+			}
+		}
+		return map.remove(name);
+	}
+
+	@Override
+	public void clear() {
+		ConcurrentHashMap<String, Object> map = asMap(table);
+		if(map == null) {
+			synchronized (this) {
+				map = asMap(table);
+				if(map == null) {
+					table = EMPTY;
+					return;
+				}
+			}
+		}
+		map.clear();
+	}
+
+	@Override
+	public Set<Entry<String, Object>> entrySet() {
+		return new EntrySet();
+	}
+
+	private final class EntrySet extends AbstractSet<Entry<String, Object>> {
+		@Override
+		public Iterator<Entry<String, Object>> iterator() {
+			final Object current = table;
+			final ConcurrentHashMap<String, Object> map = asMap(current);
+			if(map != null) {
+				return map.entrySet().iterator();
+			}
+			return new CompactIterator((Object[]) current);
+		}
+
+		@Override
+		public int size() {
+			return CompactAttributeMap.this.size();
+		}
+
+		@Override
+		public void clear() {
+			CompactAttributeMap.this.clear();
+		}
+	}
+
+	// iterates over the snapshot of the entries taken when it was created
+	private final class CompactIterator implements Iterator<Entry<String, Object>> {
+		private final Object[] entries;
+		private int next;
+		private String lastReturned;
+
+		private CompactIterator(Object[] entries) {
+			this.entries = entries;
+		}
+
+		public boolean hasNext() {
+			return next < entries.length;
+		}
+
+		public Entry<String, Object> next() {
+			if(next >= entries.length) {
+				throw new NoSuchElementException();
+			}
+			final String name = (String) entries[next];
+			final Object value = entries[next + 1];
+			next += 2;
+			lastReturned = name;
+			return new AttributeEntry(name, value);
+		}
+
+		public void remove() {
+			if(lastReturned == null) {
+				throw new IllegalStateException();
+			}
+			CompactAttributeMap.this.remove(lastReturned);
+			lastReturned = null;
+		}
+	}
+
+	private final class AttributeEntry extends SimpleEntry<String, Object> {
+		private static final long serialVersionUID = 1L;
+
+		private AttributeEntry(String name, Object value) {
+			super(name, value);
+		}
+
+		@Override
+		public Object setValue(Object value) {
+			CompactAttributeMap.this.put(getKey(), value);
+			return super.setValue(value);
+		}
+	}
+}
@@ -0,0 +1,173 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.servlet.sip.core.session;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.log4j.Logger;
+import org.mobicents.servlet.sip.core.congestion.TimestampedTask;
+
+/**
+ * Serial executor used by the SipApplicationSessionMailbox concurrency control mode.
+ * Tasks are queued in submission order and drained by whichever worker of the underlying
+ * executor claims the mailbox, so at most one task of a given session runs at a time
+ * while no worker ever blocks waiting for a busy session.
+ *
+ * To keep hot sessions from monopolizing a worker, a drain pass runs at most
+ * {@link #MAX_TASKS_PER_DRAIN} tasks before handing the mailbox back to the executor.
+ *
+ * Code paths that are not mailbox tasks (timers, transaction and dialog cleanup, CANCEL, ...)
+ * still lock the session through its semaphore. A drain pass only runs while it holds that
+ * same semaphore, taken with tryAcquire so the worker never blocks: if the session is held
+ * elsewhere the pass gives up and the holder reschedules the mailbox through
+ * {@link #sessionLockReleased()} once it releases the session.
+ */
+public class SessionMailbox implements Executor {
+	private static final Logger logger = Logger.getLogger(SessionMailbox.class);
+
+	public static final int MAX_TASKS_PER_DRAIN = 32;
+
+	// the mailbox currently drained by this thread, if any
+	private static final ThreadLocal<SessionMailbox> drainingMailbox = new ThreadLocal<SessionMailbox>();
+
+	private final Executor executor;
+	// semaphore of the sip application session, held for the duration of a drain pass
+	private final Semaphore sessionLock;
+	private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+	// true while a drain pass is scheduled or running on the underlying executor
+	private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+	private final DrainTask drainTask = new DrainTask();
+
+	public SessionMailbox(Executor executor) {
+		this(executor, null);
+	}
+
+	public SessionMailbox(Executor executor, Semaphore sessionLock) {
+		this.executor = executor;
+		this.sessionLock = sessionLock;
+	}
+
+	/**
+	 * @param mailbox the mailbox of a sip application session, can be null
+	 * @return true if the current thread is running a task of the given mailbox, 
+	 * in which case the session is already locked by the drain pass
+	 */
+	public static boolean isDrainedByCurrentThread(Executor mailbox) {
+		return mailbox != null && drainingMailbox.get() == mailbox;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.concurrent.Executor#execute(java.lang.Runnable)
+	 */
+	public void execute(Runnable task) {
+		if(task == null) {
+			throw new NullPointerException("task cannot be null");
+		}
+		tasks.offer(task);
+		schedule();
+	}
+
+	/**
+	 * @return the number of tasks waiting in this mailbox
+	 */
+	public int size() {
+		return tasks.size();
+	}
+
+	/**
+	 * To be called after the session lock has been released by a code path running outside of the mailbox
+	 * so that the tasks queued in the meantime get drained.
+	 */
+	public void sessionLockReleased() {
+		if(!tasks.isEmpty()) {
+			schedule();
+		}
+	}
+
+	private void schedule() {
+		if(scheduled.compareAndSet(false, true)) {
+			drainTask.submissionTime = System.nanoTime();
+			try {
+				executor.execute(drainTask);
+			} catch (RejectedExecutionException e) {
+				scheduled.set(false);
+				throw e;
+			}
+		}
+	}
+
+	private void drain() {
+		if(sessionLock != null && !sessionLock.tryAcquire()) {
+			// the session is held outside of the mailbox, its holder will reschedule us on release
+			if(logger.isDebugEnabled()) {
+				logger.debug("session lock busy, postponing the drain of " + tasks.size() + " mailbox tasks");
+			}
+			scheduled.set(false);
+			// the lock may have been released before the flag was cleared
+			if(sessionLock.availablePermits() > 0 && !tasks.isEmpty()) {
+				schedule();
+			}
+			return;
+		}
+		drainingMailbox.set(this);
+		try {
+			int processed = 0;
+			Runnable task;
+			while(processed < MAX_TASKS_PER_DRAIN && (task = tasks.poll()) != null) {
+				processed++;
+				try {
+					task.run();
+				} catch (Throwable t) {
+					logger.error("Unexpected exception while running mailbox task " + task, t);
+				}
+			}
+		} finally {
+			drainingMailbox.remove();
+			if(sessionLock != null) {
+				sessionLock.release();
+			}
+			scheduled.set(false);
+			// a task may have been offered after the last poll but before the flag was cleared
+			if(!tasks.isEmpty()) {
+				schedule();
+			}
+		}
+	}
+
+	// only one drain pass is scheduled at a time so the same instance is reused
+	private final class DrainTask implements TimestampedTask {
+		private volatile long submissionTime;
+
+		public long getSubmissionTime() {
+			return submissionTime;
+		}
+
+		public void run() {
+			drain();
+		}
+	}
+}
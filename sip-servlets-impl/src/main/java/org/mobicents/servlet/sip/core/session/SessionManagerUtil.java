@@ -28,6 +28,8 @@ import javax.sip.header.ToHeader;
 import javax.sip.message.Message;
 
 import org.apache.log4j.Logger;
+import org.mobicents.servlet.sip.core.MobicentsSipFactory;
+import org.mobicents.servlet.sip.core.SipManager;
 
 /**
  * This class is used as a central place to get a session be it a sip session
@@ -100,6 +102,37 @@ public class SessionManagerUtil {
 		}
 	}	
 
+	/**
+	 * Retrieves the existing sip session the message belongs to. The key components are read from the message headers
+	 * the same way as {@link #getSipSessionKey(String, String, Message, boolean)} but, unless the manager is distributable
+	 * and may need to load the session from the cluster, no key is built to look the session up.
+	 * @param sipManager the manager of the application
+	 * @param applicationSessionId the id of the sip application session
+	 * @param applicationName the name of the application
+	 * @param message the message to get the key components from
+	 * @param inverted true if the From and To tags should be swapped
+	 * @param sipFactoryImpl passed to a distributable manager
+	 * @param sipApplicationSession passed to a distributable manager, can be null
+	 * @return the sip session, null if none exists
+	 */
+	public static MobicentsSipSession findSipSession(final SipManager sipManager, final String applicationSessionId, final String applicationName, final Message message, boolean inverted, 
+			final MobicentsSipFactory sipFactoryImpl, final MobicentsSipApplicationSession sipApplicationSession) {
+		if(sipManager instanceof DistributableSipManager) {
+			return sipManager.getSipSession(getSipSessionKey(applicationSessionId, applicationName, message, inverted), false, sipFactoryImpl, sipApplicationSession);
+		}
+		if(applicationName == null) {
+			throw new NullPointerException("the application name cannot be null for sip session lookup");
+		}
+		final String toTag = ((ToHeader) message.getHeader(ToHeader.NAME)).getTag();
+		final String fromTag = ((FromHeader) message.getHeader(FromHeader.NAME)).getTag();
+		final String callId = ((CallIdHeader) message.getHeader(CallIdHeader.NAME)).getCallId();
+		if(inverted) {
+			return sipManager.findSipSession(applicationSessionId, applicationName, callId, toTag, fromTag);
+		} else {
+			return sipManager.findSipSession(applicationSessionId, applicationName, callId, fromTag, toTag);
+		}
+	}
+
 	/**
 	 * Computes the sip application session key from the input parameters. 
 	 * The sip application session key will be of the form (UUID,APPNAME)
@@ -35,6 +35,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -120,6 +121,8 @@ public class SipApplicationSessionImpl implements MobicentsSipApplicationSession
 	protected String currentRequestHandler;
 	
 	protected transient Semaphore semaphore;
+	// created lazily, only used with the SipApplicationSessionMailbox concurrency control mode
+	protected transient volatile SessionMailbox mailbox;
 		
 	protected transient MobicentsSipApplicationSessionFacade facade = null;
 	
@@ -128,7 +131,7 @@ public class SipApplicationSessionImpl implements MobicentsSipApplicationSession
 	// Does it need to be synchronized?
 	protected Map<String,Object> getAttributeMap() {
 		if(sipApplicationSessionAttributeMap == null) {
-			sipApplicationSessionAttributeMap = new ConcurrentHashMap<String,Object>() ;
+			sipApplicationSessionAttributeMap = new CompactAttributeMap();
 		}
 		return sipApplicationSessionAttributeMap;
 	}
@@ -145,7 +148,9 @@ public class SipApplicationSessionImpl implements MobicentsSipApplicationSession
 		if(sipContext != null) {
 			this.sipContext = sipContext;
 			this.currentRequestHandler = sipContext.getServletHandler();
-			if(ConcurrencyControlMode.SipApplicationSession.equals(sipContext.getConcurrencyControlMode())) {
+			// the mailbox mode keeps the semaphore for the code paths that don't go through the mailbox (timers, cleanup, ...)
+			if(ConcurrencyControlMode.SipApplicationSession.equals(sipContext.getConcurrencyControlMode()) ||
+					ConcurrencyControlMode.SipApplicationSessionMailbox.equals(sipContext.getConcurrencyControlMode())) {
 				semaphore = new Semaphore(1);
 			}
 			//scheduling the timer for session expiration
@@ -277,6 +282,12 @@ public class SipApplicationSessionImpl implements MobicentsSipApplicationSession
 		if(logger.isDebugEnabled() && wasNotPresent) {
 			logger.debug("Added http session " + JvmRouteUtil.removeJvmRoute(httpSession.getId()) + " to sip app session " + getKey());
 		}
+		if(wasNotPresent) {
+			final SipManagerDelegate sipManagerDelegate = getSipManagerDelegate();
+			if(sipManagerDelegate != null) {
+				sipManagerDelegate.addHttpSessionIndex(httpSession.getId(), key);
+			}
+		}
 		readyToInvalidate = false;
 		// TODO: We assume that there is only one HTTP session in the app session. In this case
 		// we are safe to only assign jvmRoute once here. When we support multiple http sessions
@@ -300,11 +311,29 @@ public class SipApplicationSessionImpl implements MobicentsSipApplicationSession
 			if(logger.isDebugEnabled() && wasPresent) {
 				logger.debug("Removed http session " + JvmRouteUtil.removeJvmRoute(httpSession.getId()) + " from sip app session " + getKey());
 			}
+			if(wasPresent) {
+				final SipManagerDelegate sipManagerDelegate = getSipManagerDelegate();
+				if(sipManagerDelegate != null) {
+					sipManagerDelegate.removeHttpSessionIndex(httpSession.getId(), key);
+				}
+			}
 			return wasPresent;
 		}
 		return false;
 	}
 	
+	/**
+	 * @return the delegate of the manager of this session, which indexes the converged http sessions, 
+	 * null if the manager doesn't keep its sessions in a {@link SipManagerDelegate}
+	 */
+	private SipManagerDelegate getSipManagerDelegate() {
+		final SipManager sipManager = sipContext.getSipManager();
+		if(sipManager instanceof SipManagerDelegateHolder) {
+			return ((SipManagerDelegateHolder) sipManager).getSipManagerDelegate();
+		}
+		return null;
+	}
+	
 	public HttpSession findHttpSession (String sessionId) {
 		String id = JvmRouteUtil.removeJvmRoute(sessionId);
 		if(httpSessions != null) {
@@ -1268,6 +1297,22 @@ public class SipApplicationSessionImpl implements MobicentsSipApplicationSession
 		return semaphore;
 	}
 	
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.session.MobicentsSipApplicationSession#getMailbox()
+	 */
+	public Executor getMailbox() {
+		if(mailbox == null && sipContext != null && 
+				ConcurrencyControlMode.SipApplicationSessionMailbox.equals(sipContext.getConcurrencyControlMode())) {
+			synchronized (this) {
+				if(mailbox == null) {
+					mailbox = new SessionMailbox(sipContext.getSipApplicationDispatcher().getAsynchronousExecutor(), semaphore);
+				}
+			}
+		}
+		return mailbox;
+	}
+	
 	@SuppressWarnings(value="unchecked")
 	public MobicentsSipApplicationSession getFacade() {		
 
@@ -1353,7 +1398,13 @@ public class SipApplicationSessionImpl implements MobicentsSipApplicationSession
 	 */
 	public void scheduleAsynchronousWork(
 			SipApplicationSessionAsynchronousWork work) {
-		sipContext.getSipApplicationDispatcher().getAsynchronousExecutor().execute(new SipApplicationSessionAsyncTask(key, work, (SipFactoryImpl)sipContext.getSipApplicationDispatcher().getSipFactory()));
+		final SipApplicationSessionAsyncTask asyncTask = new SipApplicationSessionAsyncTask(key, work, (SipFactoryImpl)sipContext.getSipApplicationDispatcher().getSipFactory());
+		final Executor sessionMailbox = getMailbox();
+		if(sessionMailbox != null) {
+			sessionMailbox.execute(asyncTask);
+		} else {
+			sipContext.getSipApplicationDispatcher().getAsynchronousExecutor().execute(asyncTask);
+		}
 	}	
 	
 	public void acquire() {
@@ -1380,6 +1431,17 @@ public class SipApplicationSessionImpl implements MobicentsSipApplicationSession
 		}
 	}
 	
+	public boolean tryAcquire() {
+		if(semaphore == null) {
+			return true;
+		}
+		final boolean acquired = semaphore.tryAcquire();
+		if(logger.isDebugEnabled()) {
+			logger.debug("Semaphore " + (acquired ? "acquired" : "busy") + " without waiting for sipApplicationSession=" + this + " semaphore=" + semaphore);
+		}
+		return acquired;
+	}
+	
 	public void release() {
 		if(semaphore != null) {
 			if(logger.isDebugEnabled()) {
@@ -1411,6 +1473,11 @@ public class SipApplicationSessionImpl implements MobicentsSipApplicationSession
 			if(logger.isDebugEnabled()) {
 				logger.debug("After Semaphore released for sipApplicationSession=" + this + " semaphore=" + semaphore);
 			}
+			// tasks queued in the mailbox while the session was held outside of it can now be drained
+			final SessionMailbox sessionMailbox = mailbox;
+			if(sessionMailbox != null) {
+				sessionMailbox.sessionLockReleased();
+			}
 		}
 	}
 	
@@ -46,7 +46,9 @@ public final class SipApplicationSessionKey implements Serializable, MobicentsSi
 	private final String uuid;
 	private final String appGeneratedKey;
 	private final String applicationName;
+	// built on first use
 	private String toString;
+	private transient int hashCode;
 	
 	/**
 	 * @param id
@@ -67,7 +69,6 @@ public final class SipApplicationSessionKey implements Serializable, MobicentsSi
 			if(logger.isDebugEnabled()) {
 				logger.debug("uuid for appGeneratedKey " + appGeneratedKey + " set to " + uuid);
 			}
-			toString = appGeneratedKey + SessionManagerUtil.SESSION_KEY_SEPARATOR + uuid + SessionManagerUtil.SESSION_KEY_SEPARATOR + applicationName;
 		} else {
 			if(id == null) {
 				// Issue 1551 : SipApplicationSessionKey is not unique
@@ -80,7 +81,6 @@ public final class SipApplicationSessionKey implements Serializable, MobicentsSi
 			} else {
 				this.uuid = id;
 			}					
-			toString = uuid + SessionManagerUtil.SESSION_KEY_SEPARATOR + applicationName;
 		}
 	}
 	/**
@@ -110,11 +110,15 @@ public final class SipApplicationSessionKey implements Serializable, MobicentsSi
 	 */
 	@Override
 	public int hashCode() {
-		final int prime = 31;
-		int result = 1;
-		result = prime * result
-				+ ((applicationName == null) ? 0 : applicationName.hashCode());		
-		result = prime * result + ((uuid == null) ? 0 : uuid.hashCode());	
+		int result = hashCode;
+		if(result == 0) {
+			final int prime = 31;
+			result = 1;
+			result = prime * result
+					+ ((applicationName == null) ? 0 : applicationName.hashCode());		
+			result = prime * result + ((uuid == null) ? 0 : uuid.hashCode());	
+			hashCode = result;
+		}
 		return result;
 	}
 	/* (non-Javadoc)
@@ -144,6 +148,15 @@ public final class SipApplicationSessionKey implements Serializable, MobicentsSi
 	
 	@Override
 	public String toString() {
-		return toString;
+		String result = toString;
+		if(result == null) {
+			if(appGeneratedKey != null) {
+				result = appGeneratedKey + SessionManagerUtil.SESSION_KEY_SEPARATOR + uuid + SessionManagerUtil.SESSION_KEY_SEPARATOR + applicationName;
+			} else {
+				result = uuid + SessionManagerUtil.SESSION_KEY_SEPARATOR + applicationName;
+			}
+			toString = result;
+		}
+		return result;
 	}
 }
@@ -25,6 +25,7 @@ package org.mobicents.servlet.sip.core.session;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
@@ -36,6 +37,7 @@ import org.apache.log4j.Logger;
 import org.mobicents.servlet.sip.core.SipContext;
 import org.mobicents.servlet.sip.core.timers.SipApplicationSessionTimerTask;
 import org.mobicents.servlet.sip.message.SipFactoryImpl;
+import org.mobicents.servlet.sip.utils.JvmRouteUtil;
 
 /**
  * This class handles the management of sip sessions and sip application sessions for a given container (context)
@@ -53,6 +55,10 @@ public abstract class SipManagerDelegate {
 
 	protected ConcurrentHashMap<String, MobicentsSipApplicationSession> sipApplicationSessionsByAppGeneratedKey = 
 		new ConcurrentHashMap<String, MobicentsSipApplicationSession>();
+
+	// converged http session id (without jvmRoute) to the key of the sip application session holding it
+	protected ConcurrentHashMap<String, MobicentsSipApplicationSessionKey> sipApplicationSessionKeysByHttpSessionId = 
+		new ConcurrentHashMap<String, MobicentsSipApplicationSessionKey>();
 	
 	//if it's never cleaned up a memory leak will occur
 	//Shall we have a thread scanning for invalid sessions and removing them accordingly ?
@@ -187,6 +193,14 @@ public abstract class SipManagerDelegate {
 			if(appGeneratedKey != null) {
 				sipApplicationSessionsByAppGeneratedKey.remove(appGeneratedKey);
 			}
+			if(sipApplicationSession instanceof SipApplicationSessionImpl) {
+				final Set<String> httpSessionIds = ((SipApplicationSessionImpl)sipApplicationSession).httpSessions;
+				if(httpSessionIds != null) {
+					for (String httpSessionId : httpSessionIds) {
+						sipApplicationSessionKeysByHttpSessionId.remove(httpSessionId, sipApplicationSession.getKey());
+					}
+				}
+			}
 		}
 		return sipApplicationSession;
 	}
@@ -298,6 +312,30 @@ public abstract class SipManagerDelegate {
 		return sipSessionImpl;
 	}
 	
+	/**
+	 * Retrieve an existing sip session from the components of its key, as read from the headers of a message.
+	 * This is equivalent to {@link #getSipSession(SipSessionKey, boolean, SipFactoryImpl, MobicentsSipApplicationSession)}
+	 * with create set to false, but the map is probed without building a {@link SipSessionKey} : 
+	 * one is built only if the to tag has to be set on the session or a derived session has to be created.
+	 * @param applicationSessionId the id of the sip application session
+	 * @param applicationName the name of the application
+	 * @param callId the Call-ID of the message
+	 * @param fromTag the tag of the From header, or of the To header if the message was received inverted
+	 * @param toTag the tag of the To header, or of the From header if the message was received inverted
+	 * @return the sip session matching, null if none exists
+	 */
+	public MobicentsSipSession findSipSession(final String applicationSessionId, final String applicationName, final String callId, final String fromTag, final String toTag) {
+		final MobicentsSipSession sipSessionImpl = sipSessions.get(new SipSessionKeyProbe(fromTag, callId, applicationSessionId, applicationName));
+		if(sipSessionImpl == null) {
+			return null;
+		}
+		// nothing to update on the session, so no need for a key
+		if(toTag == null || toTag.equals(sipSessionImpl.getKey().getToTag())) {
+			return sipSessionImpl;
+		}
+		return setToTag(new SipSessionKey(fromTag, toTag, callId, applicationSessionId, applicationName), sipSessionImpl);
+	}
+	
 	protected MobicentsSipSession createSipSession(final SipSessionKey key, final boolean create, final SipFactoryImpl sipFactoryImpl, final MobicentsSipApplicationSession sipApplicationSessionImpl) {
 		MobicentsSipSession sipSessionImpl = null;
 		final MobicentsSipSession newSipSessionImpl = getNewMobicentsSipSession(key, sipFactoryImpl, sipApplicationSessionImpl);
@@ -450,14 +488,50 @@ public abstract class SipManagerDelegate {
 	 * @return the sip application session holding a reference to it or null if none references it
 	 */
 	public MobicentsSipApplicationSession findSipApplicationSession(HttpSession httpSession) {
-		for (MobicentsSipApplicationSession sipApplicationSessionImpl : sipApplicationSessions.values()) {			
-			if(sipApplicationSessionImpl.findHttpSession(httpSession.getId()) != null) {
-				return sipApplicationSessionImpl;
-			}
+		final String httpSessionId = JvmRouteUtil.removeJvmRoute(httpSession.getId());
+		final MobicentsSipApplicationSessionKey sipApplicationSessionKey = sipApplicationSessionKeysByHttpSessionId.get(httpSessionId);
+		if(sipApplicationSessionKey == null) {
+			return null;
 		}
+		final MobicentsSipApplicationSession sipApplicationSessionImpl = sipApplicationSessions.get(sipApplicationSessionKey);
+		if(sipApplicationSessionImpl != null && sipApplicationSessionImpl.findHttpSession(httpSessionId) != null) {
+			return sipApplicationSessionImpl;
+		}
+		// stale entry, the sip application session is gone or doesn't hold the http session anymore
+		if(logger.isDebugEnabled()) {
+			logger.debug("Removing stale http session index entry " + httpSessionId + " => " + sipApplicationSessionKey);
+		}
+		sipApplicationSessionKeysByHttpSessionId.remove(httpSessionId, sipApplicationSessionKey);
 		return null;
 	}
 
+	/**
+	 * Index the converged http session in parameter so that it can be resolved to its sip application session
+	 * by {@link #findSipApplicationSession(HttpSession)} without scanning all the sip application sessions
+	 * @param httpSessionId the id of the converged http session
+	 * @param sipApplicationSessionKey the key of the sip application session holding the http session
+	 */
+	public void addHttpSessionIndex(String httpSessionId, MobicentsSipApplicationSessionKey sipApplicationSessionKey) {
+		final String id = JvmRouteUtil.removeJvmRoute(httpSessionId);
+		if(logger.isDebugEnabled()) {
+			logger.debug("Indexing http session " + id + " => " + sipApplicationSessionKey);
+		}
+		sipApplicationSessionKeysByHttpSessionId.put(id, sipApplicationSessionKey);
+	}
+
+	/**
+	 * Remove the index entry of the converged http session in parameter if it still points to the sip application session in parameter
+	 * @param httpSessionId the id of the converged http session
+	 * @param sipApplicationSessionKey the key of the sip application session that held the http session
+	 */
+	public void removeHttpSessionIndex(String httpSessionId, MobicentsSipApplicationSessionKey sipApplicationSessionKey) {
+		final String id = JvmRouteUtil.removeJvmRoute(httpSessionId);
+		if(logger.isDebugEnabled()) {
+			logger.debug("Removing http session index entry " + id + " => " + sipApplicationSessionKey);
+		}
+		sipApplicationSessionKeysByHttpSessionId.remove(id, sipApplicationSessionKey);
+	}
+
 	/**
 	 * 
 	 */
@@ -502,7 +576,8 @@ public abstract class SipManagerDelegate {
 		}
 		for (SipApplicationSessionKey sipApplicationSessionKey : sipApplicationSessionsToRemove) {
 			removeSipApplicationSession(sipApplicationSessionKey);
-		}				
+		}
+		sipApplicationSessionKeysByHttpSessionId.clear();
 	}
 	
 	protected abstract MobicentsSipSession getNewMobicentsSipSession(SipSessionKey key, SipFactoryImpl sipFactoryImpl, MobicentsSipApplicationSession mobicentsSipApplicationSession);
@@ -784,4 +859,43 @@ public abstract class SipManagerDelegate {
 			logger.trace("lastSipSessionUpdatedTime "+ lastSipSessionUpdatedTime);
 		}
 	}
+	
+	/**
+	 * Lookup only stand-in for a {@link SipSessionKey} : same hash and equal to the key with the same components.
+	 * The map compares the probe to its keys and never the reverse, so {@link SipSessionKey#equals(Object)} doesn't need to know about it.
+	 */
+	private static final class SipSessionKeyProbe {
+		private final String fromTag;
+		private final String callId;
+		private final String applicationSessionId;
+		private final String applicationName;
+		
+		SipSessionKeyProbe(String fromTag, String callId, String applicationSessionId, String applicationName) {
+			this.fromTag = fromTag;
+			this.callId = callId;
+			this.applicationSessionId = applicationSessionId;
+			this.applicationName = applicationName;
+		}
+		
+		@Override
+		public int hashCode() {
+			return SipSessionKey.computeHashCode(fromTag, callId, applicationSessionId, applicationName);
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if(!(obj instanceof SipSessionKey)) {
+				return false;
+			}
+			final SipSessionKey other = (SipSessionKey) obj;
+			return equal(applicationName, other.getApplicationName()) 
+					&& equal(applicationSessionId, other.getApplicationSessionId())
+					&& equal(callId, other.getCallId())
+					&& equal(fromTag, other.getFromTag());
+		}
+		
+		private static boolean equal(String a, String b) {
+			return a == null ? b == null : a.equals(b);
+		}
+	}
 }
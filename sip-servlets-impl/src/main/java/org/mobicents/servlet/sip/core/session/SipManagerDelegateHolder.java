@@ -0,0 +1,33 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.servlet.sip.core.session;
+
+/**
+ * Implemented by the managers of the container that keep their sessions in a {@link SipManagerDelegate}, 
+ * so that the sessions can maintain the indexes of the delegate which are not part of the {@link org.mobicents.servlet.sip.core.SipManager} contract,
+ * such as the one of the converged http sessions.
+ */
+public interface SipManagerDelegateHolder {
+	/**
+	 * @return the delegate holding the sessions of this manager
+	 */
+	SipManagerDelegate getSipManagerDelegate();
+}
@@ -43,6 +43,7 @@ import java.util.Set;
 import java.util.Vector;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -278,7 +279,8 @@ public class SipSessionImpl implements MobicentsSipSession {
 	
 	protected transient MobicentsSipSessionFacade facade = null;
 	
-	protected transient ConcurrentHashMap<Long, Boolean> acksReceived = new ConcurrentHashMap<Long, Boolean>(2);
+	// only allocated once an INVITE transaction waits for its ACK, most idle dialogs never need it
+	volatile protected transient ConcurrentHashMap<Long, Boolean> acksReceived;
 	// Added for Issue 2173 http://code.google.com/p/mobicents/issues/detail?id=2173
     // Handle Header [Authentication-Info: nextnonce="xyz"] in sip authorization responses
 	protected transient MobicentsSipSessionSecurity sipSessionSecurity;
@@ -424,7 +426,8 @@ public class SipSessionImpl implements MobicentsSipSession {
 							userName = ((javax.sip.address.SipURI)uri).getUser();
 						}
 						if(sipFactory.isUseLoadBalancer()) {
-							SipLoadBalancer loadBalancerToUse = sipFactory.getLoadBalancerToUse();
+							SipLoadBalancer loadBalancerToUse = sipFactory.getLoadBalancerToUse(key.getApplicationSessionId(), 
+									((MessageExt)methodRequest).getCallIdHeader().getCallId());
 							javax.sip.address.SipURI sipURI = SipFactoryImpl.addressFactory.createSipURI(userName, loadBalancerToUse.getAddress().getHostAddress());
 							sipURI.setHost(loadBalancerToUse.getAddress().getHostAddress());
 							sipURI.setPort(loadBalancerToUse.getSipPort());
@@ -457,7 +460,7 @@ public class SipSessionImpl implements MobicentsSipSession {
 				
 				// cater to http://code.google.com/p/sipservlets/issues/detail?id=31 to be able to set the rport in applications
 				final SipApplicationDispatcher sipApplicationDispatcher = sipFactory.getSipApplicationDispatcher();
-				final String branch = JainSipUtils.createBranch(getSipApplicationSession().getKey().getId(),  sipApplicationDispatcher.getHashFromApplicationName(getKey().getApplicationName()));
+				final String branch = JainSipUtils.createBranch(sipApplicationDispatcher, getSipApplicationSession().getKey().getId(), getKey().getApplicationName());
 				ViaHeader viaHeader = JainSipUtils.createViaHeader(
 	    				sipFactory.getSipNetworkInterfaceManager(), methodRequest, branch, outboundInterface);
 				methodRequest.addHeader(viaHeader);
@@ -522,7 +525,7 @@ public class SipSessionImpl implements MobicentsSipSession {
 					final SipProvider sipProvider = sipNetworkInterfaceManager.findMatchingListeningPoint(
 							JainSipUtils.findTransport(request), false).getSipProvider();
 					final SipApplicationDispatcher sipApplicationDispatcher = sipFactory.getSipApplicationDispatcher();				
-					final String branch = JainSipUtils.createBranch(getSipApplicationSession().getKey().getId(),  sipApplicationDispatcher.getHashFromApplicationName(getKey().getApplicationName()));
+					final String branch = JainSipUtils.createBranch(sipApplicationDispatcher, getSipApplicationSession().getKey().getId(), getKey().getApplicationName());
 										
 					ViaHeader viaHeader = JainSipUtils.createViaHeader(
 		    				sipNetworkInterfaceManager, request, branch, outboundInterface);
@@ -697,7 +700,7 @@ public class SipSessionImpl implements MobicentsSipSession {
 	// Does it need to be synchronized?
 	protected Map<String, Object> getAttributeMap() {
 		if(this.sipSessionAttributeMap == null) {
-			this.sipSessionAttributeMap = new ConcurrentHashMap<String, Object>();
+			this.sipSessionAttributeMap = new CompactAttributeMap();
 		}
 		return this.sipSessionAttributeMap;
 	}
@@ -2261,12 +2264,35 @@ public class SipSessionImpl implements MobicentsSipSession {
 		if(logger.isDebugEnabled()) {
 			logger.debug("setting AckReceived to : " + ackReceived + " for CSeq " + cSeq);
 		}
+		ConcurrentHashMap<Long, Boolean> acksReceived = this.acksReceived;
+		if(acksReceived == null) {
+			if(!ackReceived) {
+				acksReceived = getAcksReceived();
+			} else {
+				// nothing was waiting for this ACK so there is nothing to clean up either
+				return;
+			}
+		}
 		acksReceived.put(cSeq, ackReceived);
 		if(ackReceived) {
 			cleanupAcksReceived(cSeq);
 		}
 	}
 	
+	private ConcurrentHashMap<Long, Boolean> getAcksReceived() {
+		ConcurrentHashMap<Long, Boolean> acksReceived = this.acksReceived;
+		if(acksReceived == null) {
+			synchronized (this) {
+				acksReceived = this.acksReceived;
+				if(acksReceived == null) {
+					acksReceived = new ConcurrentHashMap<Long, Boolean>(2);
+					this.acksReceived = acksReceived;
+				}
+			}
+		}
+		return acksReceived;
+	}
+	
 	/**
 	 * check if the ack has been received for the cseq in param
 	 * it may happen that the ackReceived has been removed already if that's the case it will return true
@@ -2274,9 +2300,11 @@ public class SipSessionImpl implements MobicentsSipSession {
 	 * @return
 	 */
 	protected boolean isAckReceived(long cSeq) {
+		final ConcurrentHashMap<Long, Boolean> acksReceived = this.acksReceived;
 		if(acksReceived == null) {
 			// http://code.google.com/p/sipservlets/issues/detail?id=152 
 			// if there is no map, it means that the session was already destroyed and it is a retransmission 
+			// or that no ACK was ever waited for
 			return true;
 		}
 		Boolean ackReceived = acksReceived.get(cSeq);
@@ -2296,6 +2324,10 @@ public class SipSessionImpl implements MobicentsSipSession {
 	 * @param remoteCSeq remoteCSeq the basis CSeq for cleaning up earlier (lower CSeq) stored ackReceived
 	 */
 	protected void cleanupAcksReceived(long remoteCSeq) {
+		final ConcurrentHashMap<Long, Boolean> acksReceived = this.acksReceived;
+		if(acksReceived == null) {
+			return;
+		}
 		List<Long> toBeRemoved = new ArrayList<Long>();
 		final Iterator<Entry<Long, Boolean>> cSeqs = acksReceived.entrySet().iterator();
 		while (cSeqs.hasNext()) {
@@ -2387,7 +2419,14 @@ public class SipSessionImpl implements MobicentsSipSession {
 	 * @see org.mobicents.javax.servlet.sip.SipSessionExt#scheduleAsynchronousWork(org.mobicents.javax.servlet.sip.SipSessionAsynchronousWork)
 	 */
 	public void scheduleAsynchronousWork(SipSessionAsynchronousWork work) {
-		sipFactory.getSipApplicationDispatcher().getAsynchronousExecutor().execute(new SipSessionAsyncTask(key, work, sipFactory));
+		final SipSessionAsyncTask asyncTask = new SipSessionAsyncTask(key, work, sipFactory);
+		final MobicentsSipApplicationSession sipApplicationSession = getSipApplicationSession();
+		final Executor sessionMailbox = sipApplicationSession != null ? sipApplicationSession.getMailbox() : null;
+		if(sessionMailbox != null) {
+			sessionMailbox.execute(asyncTask);
+		} else {
+			sipFactory.getSipApplicationDispatcher().getAsynchronousExecutor().execute(asyncTask);
+		}
 	}
 	public int getRequestsPending() {
 		return requestsPending;
@@ -2454,6 +2493,17 @@ public class SipSessionImpl implements MobicentsSipSession {
 		}
 	}
 	
+	public boolean tryAcquire() {
+		if(semaphore == null) {
+			return true;
+		}
+		final boolean acquired = semaphore.tryAcquire();
+		if(logger.isDebugEnabled()) {
+			logger.debug("Semaphore " + (acquired ? "acquired" : "busy") + " without waiting for sipSession=" + this + " semaphore=" + semaphore);
+		}
+		return acquired;
+	}
+	
 	public void release() {
 		if(semaphore != null) {
 			if(logger.isDebugEnabled()) {
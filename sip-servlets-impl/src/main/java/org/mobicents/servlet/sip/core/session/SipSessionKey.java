@@ -47,7 +47,11 @@ public final class SipSessionKey implements MobicentsSipSessionKey, Serializable
 	// Issue 790 : 1 SipSession should not be used in 2 different app session (http://code.google.com/p/mobicents/issues/detail?id=790)
 	// so we add the app session id in the key as well
 	private final String applicationSessionId;
+	// the string form is only built when asked for, most keys built from incoming messages are only used to probe the sessions map
 	private String toString;
+	// to tag to put in the string form, captured when the id is (re)computed so that a later to tag doesn't change it
+	private String toStringToTag;
+	private transient int hashCode;
 	/**
 	 * @param fromAddress
 	 * @param fromTag
@@ -64,8 +68,7 @@ public final class SipSessionKey implements MobicentsSipSessionKey, Serializable
 		this.callId = callId;
 		this.applicationName = applicationName;
 		this.applicationSessionId = applicationSessionId;
-		
-		computeToString();		
+		this.toStringToTag = toTag;
 	}
 	/**
 	 * @return the fromTag
@@ -102,6 +105,19 @@ public final class SipSessionKey implements MobicentsSipSessionKey, Serializable
 	 */
 	@Override
 	public int hashCode() {
+		// all the fields used are final so the hash is computed only once, a racy computation gives the same value
+		int result = hashCode;
+		if(result == 0) {
+			result = computeHashCode(fromTag, callId, applicationSessionId, applicationName);
+			hashCode = result;
+		}
+		return result;
+	}
+	
+	/**
+	 * Hash of a sip session key made of the components in parameter, shared with the lookups that don't build a key
+	 */
+	static int computeHashCode(String fromTag, String callId, String applicationSessionId, String applicationName) {
 		final int prime = 31;
 		int result = 1;
 		result = prime * result
@@ -149,7 +165,12 @@ public final class SipSessionKey implements MobicentsSipSessionKey, Serializable
 	
 	@Override
 	public String toString() {
-		return toString;
+		String result = toString;
+		if(result == null) {
+			result = buildToString(toStringToTag);
+			toString = result;
+		}
+		return result;
 	}
 	/**
 	 * Sets the to tag on the key when we receive a response.
@@ -178,11 +199,16 @@ public final class SipSessionKey implements MobicentsSipSessionKey, Serializable
 	 * @return the toString
 	 */
 	public void computeToString() {
+		toStringToTag = toTag;
+		toString = null;
+	}
+	
+	private String buildToString(String toTag) {
 		if(toTag != null) {
 			// Issue 2365 : to tag needed for getApplicationSession().getSipSession(<sessionId>) to return forked session and not the parent one
-			toString = "(" + fromTag + SessionManagerUtil.SESSION_KEY_SEPARATOR + toTag + SessionManagerUtil.SESSION_KEY_SEPARATOR + callId + SessionManagerUtil.SESSION_KEY_SEPARATOR + applicationSessionId +SessionManagerUtil.SESSION_KEY_SEPARATOR + applicationName + ")";
+			return "(" + fromTag + SessionManagerUtil.SESSION_KEY_SEPARATOR + toTag + SessionManagerUtil.SESSION_KEY_SEPARATOR + callId + SessionManagerUtil.SESSION_KEY_SEPARATOR + applicationSessionId +SessionManagerUtil.SESSION_KEY_SEPARATOR + applicationName + ")";
 		} else {
-			toString = "(" + fromTag + SessionManagerUtil.SESSION_KEY_SEPARATOR + callId + SessionManagerUtil.SESSION_KEY_SEPARATOR + applicationSessionId +SessionManagerUtil.SESSION_KEY_SEPARATOR + applicationName + ")";
+			return "(" + fromTag + SessionManagerUtil.SESSION_KEY_SEPARATOR + callId + SessionManagerUtil.SESSION_KEY_SEPARATOR + applicationSessionId +SessionManagerUtil.SESSION_KEY_SEPARATOR + applicationName + ")";
 		}
 	}	
 	
@@ -26,6 +26,7 @@ import java.io.Serializable;
 import java.text.ParseException;
 import java.util.Iterator;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 
 import javax.servlet.sip.SipApplicationSession;
 import javax.servlet.sip.SipSession;
@@ -33,6 +34,7 @@ import javax.servlet.sip.SipSession;
 import org.apache.log4j.Logger;
 import org.mobicents.javax.servlet.sip.SipApplicationSessionAsynchronousWork;
 import org.mobicents.javax.servlet.sip.SipSessionAsynchronousWork;
+import org.mobicents.servlet.sip.annotation.ConcurrencyControlMode;
 import org.mobicents.servlet.sip.core.SipContext;
 
 /**
@@ -239,7 +241,8 @@ public class SipSessionsUtilImpl implements MobicentsSipSessionsUtil, Serializab
 			throw new IllegalArgumentException("the given application session id : " + sipSessionId + 
 					" couldn't be parsed correctly ",e);
 		}
-		sipContext.getSipApplicationDispatcher().getAsynchronousExecutor().execute(new SipSessionAsyncTask(sipSessionKey, work, sipContext.getSipApplicationDispatcher().getSipFactory()));
+		getAsynchronousWorkExecutor(sipSessionKey.getApplicationName(), sipSessionKey.getApplicationSessionId()).execute(
+				new SipSessionAsyncTask(sipSessionKey, work, sipContext.getSipApplicationDispatcher().getSipFactory()));
 	}
 
 	@Override
@@ -252,6 +255,24 @@ public class SipSessionsUtilImpl implements MobicentsSipSessionsUtil, Serializab
 			throw new IllegalArgumentException("the given application session id : " + sipApplicationSessionId + 
 					" couldn't be parsed correctly ",e);
 		}
-		sipContext.getSipApplicationDispatcher().getAsynchronousExecutor().execute(new SipApplicationSessionAsyncTask(applicationSessionKey, work, sipContext.getSipApplicationDispatcher().getSipFactory()));
+		getAsynchronousWorkExecutor(applicationSessionKey.getApplicationName(), applicationSessionKey.getId()).execute(
+				new SipApplicationSessionAsyncTask(applicationSessionKey, work, sipContext.getSipApplicationDispatcher().getSipFactory()));
+	}
+	
+	/**
+	 * Returns the mailbox of the targeted sip application session if the SipApplicationSessionMailbox 
+	 * concurrency control mode is used so that the work is serialized with the messages of the session,
+	 * the container wide asynchronous executor otherwise
+	 */
+	private Executor getAsynchronousWorkExecutor(String applicationName, String applicationSessionId) {
+		if(ConcurrencyControlMode.SipApplicationSessionMailbox.equals(sipContext.getConcurrencyControlMode())) {
+			final SipApplicationSessionKey sipApplicationSessionKey = SessionManagerUtil.getSipApplicationSessionKey(
+					applicationName, applicationSessionId, null);
+			final MobicentsSipApplicationSession sipApplicationSession = sipContext.getSipManager().getSipApplicationSession(sipApplicationSessionKey, false);
+			if(sipApplicationSession != null && sipApplicationSession.getMailbox() != null) {
+				return sipApplicationSession.getMailbox();
+			}
+		}
+		return sipContext.getSipApplicationDispatcher().getAsynchronousExecutor();
 	}
 }
@@ -0,0 +1,194 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.servlet.sip.core.statistics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of processing times in microseconds, recorded without locks.
+ *
+ * Values are counted in log-linear buckets : each power of two is split in 16 buckets so that a percentile
+ * read from the histogram is within 6.25% of the recorded value. Values above about 71 minutes are
+ * counted in the last bucket. Like the {@link StripedCounter}, the buckets are striped by thread
+ * so that concurrent recordings seldom touch the same cache line, the stripes being merged only when a
+ * {@link Snapshot} is taken.
+ */
+public final class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	// highest bit of a value before it gets clamped, 2^32 us is about 71 minutes
+	private static final int MAX_VALUE_BIT = 32;
+	static final int BUCKETS = (MAX_VALUE_BIT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+	// the buckets are bigger than a counter so fewer stripes are used to keep the footprint low
+	private static final int STRIPES = Math.min(StripedCounter.STRIPES, 8);
+
+	private final AtomicLongArray[] stripes;
+	private final StripedCounter totalTime = new StripedCounter();
+	private final AtomicLong maxValue = new AtomicLong();
+
+	public LatencyHistogram() {
+		stripes = new AtomicLongArray[STRIPES];
+		for (int i = 0; i < STRIPES; i++) {
+			stripes[i] = new AtomicLongArray(BUCKETS);
+		}
+	}
+
+	/**
+	 * Record a processing time
+	 * @param duration the processing time
+	 * @param unit the unit of the processing time
+	 */
+	public void record(long duration, TimeUnit unit) {
+		recordMicros(unit.toMicros(duration));
+	}
+
+	/**
+	 * Record a processing time
+	 * @param micros the processing time in microseconds
+	 */
+	public void recordMicros(long micros) {
+		final long value = micros < 0 ? 0 : micros;
+		stripes[StripedCounter.stripe() & (STRIPES - 1)].getAndIncrement(bucketIndex(value));
+		totalTime.add(value);
+		long max = maxValue.get();
+		while (value > max && !maxValue.compareAndSet(max, value)) {
+			max = maxValue.get();
+		}
+	}
+
+	/**
+	 * @return a copy of the merged buckets to compute percentiles from
+	 */
+	public Snapshot getSnapshot() {
+		final long[] counts = new long[BUCKETS];
+		long count = 0;
+		for (AtomicLongArray stripe : stripes) {
+			for (int i = 0; i < BUCKETS; i++) {
+				final long bucketCount = stripe.get(i);
+				counts[i] += bucketCount;
+				count += bucketCount;
+			}
+		}
+		return new Snapshot(counts, count, totalTime.sum(), maxValue.get());
+	}
+
+	public void reset() {
+		for (AtomicLongArray stripe : stripes) {
+			for (int i = 0; i < BUCKETS; i++) {
+				stripe.set(i, 0);
+			}
+		}
+		totalTime.reset();
+		maxValue.set(0);
+	}
+
+	static int bucketIndex(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		final int highestBit = 63 - Long.numberOfLeadingZeros(value);
+		if (highestBit > MAX_VALUE_BIT) {
+			return BUCKETS - 1;
+		}
+		final int group = highestBit - SUB_BUCKET_BITS + 1;
+		final int subBucket = (int) (value >>> (highestBit - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return group * SUB_BUCKETS + subBucket;
+	}
+
+	/**
+	 * @return the highest value counted in the bucket
+	 */
+	static long bucketHighestValue(int index) {
+		final int group = index >>> SUB_BUCKET_BITS;
+		final int subBucket = index & (SUB_BUCKETS - 1);
+		if (group == 0) {
+			return subBucket;
+		}
+		final int shift = group - 1;
+		return (((long) (SUB_BUCKETS + subBucket)) << shift) + (1L << shift) - 1;
+	}
+
+	/**
+	 * Point in time view of a {@link LatencyHistogram}
+	 */
+	public static final class Snapshot {
+		private final long[] counts;
+		private final long count;
+		private final long totalTime;
+		private final long max;
+
+		Snapshot(long[] counts, long count, long totalTime, long max) {
+			this.counts = counts;
+			this.count = count;
+			this.totalTime = totalTime;
+			this.max = max;
+		}
+
+		/**
+		 * @return the number of recorded values
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * @return the highest recorded value in microseconds
+		 */
+		public long getMax() {
+			return max;
+		}
+
+		/**
+		 * @return the mean of the recorded values in microseconds
+		 */
+		public long getMean() {
+			return count == 0 ? 0 : totalTime / count;
+		}
+
+		/**
+		 * @param percentile between 0 and 100, 99.9 for the p999
+		 * @return the value in microseconds below which the given percentage of the recorded values fall, 0 if nothing was recorded
+		 */
+		public long getValueAtPercentile(double percentile) {
+			if (count == 0) {
+				return 0;
+			}
+			final double boundedPercentile = Math.min(Math.max(percentile, 0), 100);
+			final long rank = Math.max(1, (long) Math.ceil(boundedPercentile / 100 * count));
+			long seen = 0;
+			for (int i = 0; i < counts.length; i++) {
+				seen += counts[i];
+				if (seen >= rank) {
+					return Math.min(bucketHighestValue(i), max);
+				}
+			}
+			return max;
+		}
+
+		@Override
+		public String toString() {
+			return "count=" + count + ", mean=" + getMean() + "us, p50=" + getValueAtPercentile(50)
+					+ "us, p99=" + getValueAtPercentile(99) + "us, p999=" + getValueAtPercentile(99.9)
+					+ "us, max=" + max + "us";
+		}
+	}
+}
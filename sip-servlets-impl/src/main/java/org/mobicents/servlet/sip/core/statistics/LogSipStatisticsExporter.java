@@ -0,0 +1,55 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.servlet.sip.core.statistics;
+
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.log4j.Logger;
+
+/**
+ * {@link SipStatisticsExporter} logging the message counters and the processing time percentiles at INFO level
+ */
+public class LogSipStatisticsExporter implements SipStatisticsExporter {
+	private static final Logger logger = Logger.getLogger(LogSipStatisticsExporter.class);
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.statistics.SipStatisticsExporter#export(org.mobicents.servlet.sip.core.statistics.SipStatistics)
+	 */
+	public void export(SipStatistics statistics) {
+		if(logger.isInfoEnabled()) {
+			logger.info("requests processed=" + statistics.getRequestsProcessed() + ", responses processed=" + statistics.getResponsesProcessed()
+					+ ", requests sent=" + statistics.getRequestsSent() + ", responses sent=" + statistics.getResponsesSent());
+			log("request processing time", statistics.getRequestProcessingTimeByMethod());
+			log("response processing time", statistics.getResponseProcessingTimeByStatusCode());
+			log("application processing time", statistics.getProcessingTimeByApplication());
+		}
+	}
+
+	private void log(String name, Map<String, LatencyHistogram.Snapshot> snapshots) {
+		for (Entry<String, LatencyHistogram.Snapshot> entry : snapshots.entrySet()) {
+			if(entry.getValue().getCount() > 0) {
+				logger.info(name + " " + entry.getKey() + " : " + entry.getValue());
+			}
+		}
+	}
+}
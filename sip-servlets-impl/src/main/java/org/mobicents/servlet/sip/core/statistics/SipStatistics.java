@@ -0,0 +1,320 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.servlet.sip.core.statistics;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SIP message statistics gathered by the SipApplicationDispatcher : number of requests and responses
+ * processed and sent, by method and by class of status code, and the time spent by the applications
+ * processing them, by method, by class of status code and by application.
+ *
+ * All the counters are {@link StripedCounter}s and the processing times {@link LatencyHistogram}s so that
+ * the container threads updating them don't contend with each other.
+ */
+public class SipStatistics {
+	/**
+	 * Key under which the processing times of the requests whose method is not one of the methods 
+	 * given to the constructor are recorded, so that unknown methods can't grow the statistics
+	 */
+	public static final String OTHER_METHODS = "OTHER";
+
+	private static final String[] CLASSES_OF_SC =
+		{"1XX", "2XX", "3XX", "4XX", "5XX", "6XX", "7XX", "8XX", "9XX"};
+
+	private final StripedCounter requestsProcessed = new StripedCounter();
+	private final StripedCounter responsesProcessed = new StripedCounter();
+	private final StripedCounter requestsSent = new StripedCounter();
+	private final StripedCounter responsesSent = new StripedCounter();
+	private final ConcurrentMap<String, StripedCounter> requestsProcessedByMethod = new ConcurrentHashMap<String, StripedCounter>();
+	private final ConcurrentMap<String, StripedCounter> requestsSentByMethod = new ConcurrentHashMap<String, StripedCounter>();
+	// indexed by status code / 100
+	private final StripedCounter[] responsesProcessedByClassOfSc = new StripedCounter[CLASSES_OF_SC.length + 1];
+	private final StripedCounter[] responsesSentByClassOfSc = new StripedCounter[CLASSES_OF_SC.length + 1];
+
+	// filled once by the constructor, read only afterwards
+	private final Map<String, LatencyHistogram> requestProcessingTimeByMethod = new HashMap<String, LatencyHistogram>();
+	private final LatencyHistogram otherMethodsProcessingTime = new LatencyHistogram();
+	private final LatencyHistogram[] responseProcessingTimeByClassOfSc = new LatencyHistogram[CLASSES_OF_SC.length + 1];
+	private final ConcurrentMap<String, LatencyHistogram> processingTimeByApplication = new ConcurrentHashMap<String, LatencyHistogram>();
+
+	/**
+	 * @param methods the methods to report even if no request has been seen for them yet, 
+	 * the processing times of the requests of any other method are recorded under {@link #OTHER_METHODS}
+	 */
+	public SipStatistics(String[] methods) {
+		for (String method : methods) {
+			requestsProcessedByMethod.put(method, new StripedCounter());
+			requestsSentByMethod.put(method, new StripedCounter());
+			requestProcessingTimeByMethod.put(method, new LatencyHistogram());
+		}
+		requestProcessingTimeByMethod.put(OTHER_METHODS, otherMethodsProcessingTime);
+		for (int i = 1; i < responsesProcessedByClassOfSc.length; i++) {
+			responsesProcessedByClassOfSc[i] = new StripedCounter();
+			responsesSentByClassOfSc[i] = new StripedCounter();
+			responseProcessingTimeByClassOfSc[i] = new LatencyHistogram();
+		}
+	}
+
+	public void updateRequestsStatistics(String method, boolean processed) {
+		if(processed) {
+			requestsProcessed.increment();
+			getOrCreate(requestsProcessedByMethod, method).increment();
+		} else {
+			requestsSent.increment();
+			getOrCreate(requestsSentByMethod, method).increment();
+		}
+	}
+
+	public void updateResponseStatistics(int statusCode, boolean processed) {
+		final int classOfSc = statusCode / 100;
+		if(processed) {
+			responsesProcessed.increment();
+			if(classOfSc > 0 && classOfSc < responsesProcessedByClassOfSc.length) {
+				responsesProcessedByClassOfSc[classOfSc].increment();
+			}
+		} else {
+			responsesSent.increment();
+			if(classOfSc > 0 && classOfSc < responsesSentByClassOfSc.length) {
+				responsesSentByClassOfSc[classOfSc].increment();
+			}
+		}
+	}
+
+	/**
+	 * Record the time spent by an application processing a request
+	 * @param method the method of the request, recorded under {@link #OTHER_METHODS} if it isn't a known method
+	 * @param applicationName the name of the application, can be null
+	 * @param processingTime processing time in nanoseconds
+	 */
+	public void recordRequestProcessingTime(String method, String applicationName, long processingTime) {
+		final long micros = TimeUnit.NANOSECONDS.toMicros(processingTime);
+		LatencyHistogram histogram = requestProcessingTimeByMethod.get(method);
+		if(histogram == null) {
+			histogram = otherMethodsProcessingTime;
+		}
+		histogram.recordMicros(micros);
+		if(applicationName != null) {
+			getOrCreateHistogram(processingTimeByApplication, applicationName).recordMicros(micros);
+		}
+	}
+
+	/**
+	 * Record the time spent by an application processing a response
+	 * @param statusCode the status code of the response
+	 * @param applicationName the name of the application, can be null
+	 * @param processingTime processing time in nanoseconds
+	 */
+	public void recordResponseProcessingTime(int statusCode, String applicationName, long processingTime) {
+		final long micros = TimeUnit.NANOSECONDS.toMicros(processingTime);
+		final int classOfSc = statusCode / 100;
+		if(classOfSc > 0 && classOfSc < responseProcessingTimeByClassOfSc.length) {
+			responseProcessingTimeByClassOfSc[classOfSc].recordMicros(micros);
+		}
+		if(applicationName != null) {
+			getOrCreateHistogram(processingTimeByApplication, applicationName).recordMicros(micros);
+		}
+	}
+
+	public long getRequestsProcessed() {
+		return requestsProcessed.sum();
+	}
+
+	public long getResponsesProcessed() {
+		return responsesProcessed.sum();
+	}
+
+	public long getRequestsSent() {
+		return requestsSent.sum();
+	}
+
+	public long getResponsesSent() {
+		return responsesSent.sum();
+	}
+
+	public long getRequestsProcessedByMethod(String method) {
+		final StripedCounter counter = requestsProcessedByMethod.get(method);
+		return counter == null ? 0 : counter.sum();
+	}
+
+	public long getRequestsSentByMethod(String method) {
+		final StripedCounter counter = requestsSentByMethod.get(method);
+		return counter == null ? 0 : counter.sum();
+	}
+
+	public long getResponsesProcessedByStatusCode(String classOfSc) {
+		final StripedCounter counter = findByClassOfSc(responsesProcessedByClassOfSc, classOfSc);
+		return counter == null ? 0 : counter.sum();
+	}
+
+	public long getResponsesSentByStatusCode(String classOfSc) {
+		final StripedCounter counter = findByClassOfSc(responsesSentByClassOfSc, classOfSc);
+		return counter == null ? 0 : counter.sum();
+	}
+
+	/**
+	 * @return a snapshot of the number of requests processed by method
+	 */
+	public Map<String, AtomicLong> getRequestsProcessedByMethod() {
+		return snapshot(requestsProcessedByMethod);
+	}
+
+	/**
+	 * @return a snapshot of the number of requests sent by method
+	 */
+	public Map<String, AtomicLong> getRequestsSentByMethod() {
+		return snapshot(requestsSentByMethod);
+	}
+
+	/**
+	 * @return a snapshot of the number of responses processed by class of status code (1XX, 2XX, ...)
+	 */
+	public Map<String, AtomicLong> getResponsesProcessedByStatusCode() {
+		return snapshot(responsesProcessedByClassOfSc);
+	}
+
+	/**
+	 * @return a snapshot of the number of responses sent by class of status code (1XX, 2XX, ...)
+	 */
+	public Map<String, AtomicLong> getResponsesSentByStatusCode() {
+		return snapshot(responsesSentByClassOfSc);
+	}
+
+	/**
+	 * @return the time spent by the applications processing requests, by method, 
+	 * the requests of the methods not known in advance being under {@link #OTHER_METHODS}
+	 */
+	public Map<String, LatencyHistogram.Snapshot> getRequestProcessingTimeByMethod() {
+		return snapshotHistograms(requestProcessingTimeByMethod);
+	}
+
+	/**
+	 * @return the time spent by the applications processing responses, by class of status code (1XX, 2XX, ...)
+	 */
+	public Map<String, LatencyHistogram.Snapshot> getResponseProcessingTimeByStatusCode() {
+		final Map<String, LatencyHistogram.Snapshot> snapshot = new TreeMap<String, LatencyHistogram.Snapshot>();
+		for (int i = 1; i < responseProcessingTimeByClassOfSc.length; i++) {
+			snapshot.put(CLASSES_OF_SC[i - 1], responseProcessingTimeByClassOfSc[i].getSnapshot());
+		}
+		return snapshot;
+	}
+
+	/**
+	 * @return the time spent processing requests and responses, by application
+	 */
+	public Map<String, LatencyHistogram.Snapshot> getProcessingTimeByApplication() {
+		return snapshotHistograms(processingTimeByApplication);
+	}
+
+	/**
+	 * @param method one of the methods given to the constructor or {@link #OTHER_METHODS}
+	 * @return the time spent by the applications processing requests of this method, null for any other method
+	 */
+	public LatencyHistogram.Snapshot getRequestProcessingTime(String method) {
+		final LatencyHistogram histogram = requestProcessingTimeByMethod.get(method);
+		return histogram == null ? null : histogram.getSnapshot();
+	}
+
+	/**
+	 * @param applicationName the name of a deployed application
+	 * @return the time spent by this application processing messages, null if it didn't process any
+	 */
+	public LatencyHistogram.Snapshot getApplicationProcessingTime(String applicationName) {
+		final LatencyHistogram histogram = processingTimeByApplication.get(applicationName);
+		return histogram == null ? null : histogram.getSnapshot();
+	}
+
+	/**
+	 * Reset the processing times, the message counters are kept since they are exposed as running totals
+	 */
+	public void resetProcessingTimes() {
+		for (LatencyHistogram histogram : requestProcessingTimeByMethod.values()) {
+			histogram.reset();
+		}
+		for (int i = 1; i < responseProcessingTimeByClassOfSc.length; i++) {
+			responseProcessingTimeByClassOfSc[i].reset();
+		}
+		processingTimeByApplication.clear();
+	}
+
+	private static StripedCounter getOrCreate(ConcurrentMap<String, StripedCounter> counters, String key) {
+		StripedCounter counter = counters.get(key);
+		if(counter == null) {
+			final StripedCounter newCounter = new StripedCounter();
+			counter = counters.putIfAbsent(key, newCounter);
+			if(counter == null) {
+				counter = newCounter;
+			}
+		}
+		return counter;
+	}
+
+	private static LatencyHistogram getOrCreateHistogram(ConcurrentMap<String, LatencyHistogram> histograms, String key) {
+		LatencyHistogram histogram = histograms.get(key);
+		if(histogram == null) {
+			final LatencyHistogram newHistogram = new LatencyHistogram();
+			histogram = histograms.putIfAbsent(key, newHistogram);
+			if(histogram == null) {
+				histogram = newHistogram;
+			}
+		}
+		return histogram;
+	}
+
+	private static StripedCounter findByClassOfSc(StripedCounter[] counters, String classOfSc) {
+		for (int i = 0; i < CLASSES_OF_SC.length; i++) {
+			if(CLASSES_OF_SC[i].equals(classOfSc)) {
+				return counters[i + 1];
+			}
+		}
+		return null;
+	}
+
+	private static Map<String, AtomicLong> snapshot(Map<String, StripedCounter> counters) {
+		final Map<String, AtomicLong> snapshot = new ConcurrentHashMap<String, AtomicLong>();
+		for (Entry<String, StripedCounter> entry : counters.entrySet()) {
+			snapshot.put(entry.getKey(), new AtomicLong(entry.getValue().sum()));
+		}
+		return snapshot;
+	}
+
+	private static Map<String, AtomicLong> snapshot(StripedCounter[] counters) {
+		final Map<String, AtomicLong> snapshot = new ConcurrentHashMap<String, AtomicLong>();
+		for (int i = 1; i < counters.length; i++) {
+			snapshot.put(CLASSES_OF_SC[i - 1], new AtomicLong(counters[i].sum()));
+		}
+		return snapshot;
+	}
+
+	private static Map<String, LatencyHistogram.Snapshot> snapshotHistograms(Map<String, LatencyHistogram> histograms) {
+		final Map<String, LatencyHistogram.Snapshot> snapshot = new TreeMap<String, LatencyHistogram.Snapshot>();
+		for (Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+			snapshot.put(entry.getKey(), entry.getValue().getSnapshot());
+		}
+		return snapshot;
+	}
+}
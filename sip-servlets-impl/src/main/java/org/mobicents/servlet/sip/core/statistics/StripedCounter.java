@@ -0,0 +1,84 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.servlet.sip.core.statistics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter spread over several cells so that threads incrementing it concurrently don't
+ * contend on the same cache line. Each thread always hits the same cell, picked from its id,
+ * and cells are padded a cache line apart. Reading the value sums all the cells, so it is
+ * meant for counters written much more often than they are read, like message statistics.
+ */
+public final class StripedCounter {
+	// number of cells, a power of two
+	static final int STRIPES = stripes();
+	// 8 longs = 64 bytes between two cells
+	private static final int PADDING = 8;
+
+	private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+	public void increment() {
+		cells.getAndIncrement(stripe() * PADDING);
+	}
+
+	public void add(long value) {
+		cells.getAndAdd(stripe() * PADDING, value);
+	}
+
+	/**
+	 * @return the sum of all the cells, not an atomic snapshot if the counter is being updated concurrently
+	 */
+	public long sum() {
+		long sum = 0;
+		for (int i = 0; i < STRIPES; i++) {
+			sum += cells.get(i * PADDING);
+		}
+		return sum;
+	}
+
+	public void reset() {
+		for (int i = 0; i < STRIPES; i++) {
+			cells.set(i * PADDING, 0);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return Long.toString(sum());
+	}
+
+	/**
+	 * @return the cell of the calling thread
+	 */
+	static int stripe() {
+		final long id = Thread.currentThread().getId();
+		return (int) (id ^ (id >>> 32)) & (STRIPES - 1);
+	}
+
+	private static int stripes() {
+		int cpus = Runtime.getRuntime().availableProcessors() * 2;
+		int stripes = 1;
+		while (stripes < cpus && stripes < 64) {
+			stripes <<= 1;
+		}
+		return stripes;
+	}
+}
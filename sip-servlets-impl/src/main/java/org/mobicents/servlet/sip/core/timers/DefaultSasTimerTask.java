@@ -42,8 +42,20 @@ public class DefaultSasTimerTask implements SipApplicationSessionTimerTask {
 	
 	protected transient ScheduledFuture<MobicentsSipApplicationSession> expirationTimerFuture;
 	
+	// if true the expiration is scheduled again when the session is in use instead of waiting for it
+	private final boolean retryWhenSessionBusy;
+	
 	public DefaultSasTimerTask(MobicentsSipApplicationSession mobicentsSipApplicationSession) {
+		this(mobicentsSipApplicationSession, false);
+	}
+	
+	/**
+	 * @param retryWhenSessionBusy true if the thread running the task must not wait for the session to be released,
+	 * the expiration is then retried after {@link TimerServiceImpl#BUSY_SESSION_RETRY_DELAY} milliseconds
+	 */
+	public DefaultSasTimerTask(MobicentsSipApplicationSession mobicentsSipApplicationSession, boolean retryWhenSessionBusy) {
 		this.sipApplicationSession = mobicentsSipApplicationSession;
+		this.retryWhenSessionBusy = retryWhenSessionBusy;
 	}
 	
 	@SuppressWarnings("unchecked")
@@ -75,7 +87,16 @@ public class DefaultSasTimerTask implements SipApplicationSessionTimerTask {
 
 	private void tryToExpire() {
 		final SipContext sipContext = getSipApplicationSession().getSipContext();
-		sipContext.enterSipApp(getSipApplicationSession(), null, false, true);
+		if(!retryWhenSessionBusy) {
+			sipContext.enterSipApp(getSipApplicationSession(), null, false, true);
+		} else if(!sipContext.tryEnterSipApp(getSipApplicationSession(), null, false, true)) {
+			// don't hold the thread of the timer service while the session is in use, try again a bit later
+			if(logger.isDebugEnabled()) {
+				logger.debug("sip application session " + sipApplicationSession.getId() + " is locked, retrying its expiration later");
+			}
+			sipContext.getSipApplicationSessionTimerService().schedule(this, TimerServiceImpl.BUSY_SESSION_RETRY_DELAY, TimeUnit.MILLISECONDS);
+			return;
+		}
 		boolean batchStarted = sipContext.enterSipAppHa(true);
 		try {
 			getSipApplicationSession().setExpirationTimerTask(null);
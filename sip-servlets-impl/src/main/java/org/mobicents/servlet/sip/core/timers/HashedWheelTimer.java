@@ -0,0 +1,495 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.servlet.sip.core.timers;
+
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.mobicents.servlet.sip.utils.NamingThreadFactory;
+
+/**
+ * Hashed timing wheel used by the Wheel proxy and sip application session timer services.
+ * Timeouts are hashed into a fixed number of buckets by their deadline and a single tick thread
+ * expires one bucket per tick, handing the expired tasks to a small worker pool so that a slow task
+ * never delays the wheel. Scheduling and cancelling a timeout are O(1) : the caller keeps the returned
+ * {@link Timeout} handle and cancelling it only flips its state, the tick thread unlinks it from its bucket
+ * on the next tick. There is no queue to scan nor any purge to run.
+ *
+ * The precision of a timeout is the tick duration, which is fine for the proxy branch and
+ * sip application session timers which are expressed in seconds and minutes.
+ *
+ * A single wheel, obtained through {@link #acquireShared()}, is shared by the Wheel timer services
+ * of all the applications deployed in the container. Each service keeps the timeouts it scheduled
+ * in its own set so they can be counted and cancelled apart from the ones of the other applications.
+ */
+public class HashedWheelTimer {
+	private static final Logger logger = Logger.getLogger(HashedWheelTimer.class);
+
+	public static final long DEFAULT_TICK_DURATION = 100;
+	public static final int DEFAULT_TICKS_PER_WHEEL = 512;
+	public static final int DEFAULT_WORKER_POOL_SIZE = 4;
+	// bounds the number of new timeouts moved to the wheel on a single tick
+	private static final int MAX_TIMEOUTS_TRANSFERRED_PER_TICK = 100000;
+
+	private static final int STATE_INIT = 0;
+	private static final int STATE_STARTED = 1;
+	private static final int STATE_STOPPED = 2;
+
+	private static final String SHARED_TIMER_NAME = "sip_servlets_wheel_timer";
+	// wheel shared by the Wheel timer services of all the applications, stopped once none of them uses it anymore
+	private static HashedWheelTimer sharedTimer;
+	private static int sharedTimerUsers;
+
+	private final String name;
+	private final long tickDuration;
+	private final Bucket[] wheel;
+	private final int mask;
+	private final AtomicInteger state = new AtomicInteger(STATE_INIT);
+	private final CountDownLatch startTimeInitialized = new CountDownLatch(1);
+	private volatile long startTime;
+
+	private final Queue<Timeout> newTimeouts = new ConcurrentLinkedQueue<Timeout>();
+	private final Queue<Timeout> cancelledTimeouts = new ConcurrentLinkedQueue<Timeout>();
+	private final Thread tickThread;
+	private final ExecutorService workerPool;
+
+	// metrics
+	private final AtomicLong pendingTimeouts = new AtomicLong();
+	private final AtomicLong expiredTimeouts = new AtomicLong();
+	private volatile long lastTickLag;
+	private volatile long maxTickLag;
+
+	/**
+	 * @return the wheel shared by the timer services of all the applications, 
+	 * to be given back through {@link #releaseShared(HashedWheelTimer)} when the service stops
+	 */
+	public static synchronized HashedWheelTimer acquireShared() {
+		if(sharedTimer == null) {
+			sharedTimer = new HashedWheelTimer(SHARED_TIMER_NAME);
+		}
+		sharedTimerUsers++;
+		return sharedTimer;
+	}
+
+	/**
+	 * @param timer the wheel returned by {@link #acquireShared()}, stopped if no other service uses it
+	 */
+	public static synchronized void releaseShared(HashedWheelTimer timer) {
+		if(timer != sharedTimer) {
+			return;
+		}
+		sharedTimerUsers--;
+		if(sharedTimerUsers <= 0) {
+			sharedTimer.stop();
+			sharedTimer = null;
+			sharedTimerUsers = 0;
+		}
+	}
+
+	/**
+	 * @return the wheel shared by the timer services of all the applications, null if none uses it
+	 */
+	public static synchronized HashedWheelTimer getShared() {
+		return sharedTimer;
+	}
+
+	public HashedWheelTimer(String name) {
+		this(name, DEFAULT_TICK_DURATION, TimeUnit.MILLISECONDS, DEFAULT_TICKS_PER_WHEEL, DEFAULT_WORKER_POOL_SIZE);
+	}
+
+	/**
+	 * @param name the name used for the tick and worker threads
+	 * @param tickDuration the duration between two ticks
+	 * @param unit the unit of the tick duration
+	 * @param ticksPerWheel the number of buckets, rounded up to a power of two
+	 * @param workerPoolSize the number of threads running the expired tasks
+	 */
+	public HashedWheelTimer(String name, long tickDuration, TimeUnit unit, int ticksPerWheel, int workerPoolSize) {
+		if(tickDuration <= 0) {
+			throw new IllegalArgumentException("tickDuration must be greater than 0 : " + tickDuration);
+		}
+		if(ticksPerWheel <= 0 || ticksPerWheel > (1 << 30)) {
+			throw new IllegalArgumentException("ticksPerWheel must be between 1 and 2^30 : " + ticksPerWheel);
+		}
+		this.name = name;
+		this.tickDuration = unit.toNanos(tickDuration);
+		int normalizedTicksPerWheel = 1;
+		while(normalizedTicksPerWheel < ticksPerWheel) {
+			normalizedTicksPerWheel <<= 1;
+		}
+		wheel = new Bucket[normalizedTicksPerWheel];
+		for (int i = 0; i < wheel.length; i++) {
+			wheel[i] = new Bucket();
+		}
+		mask = wheel.length - 1;
+		tickThread = new NamingThreadFactory(name + "_tick").newThread(new Ticker());
+		workerPool = Executors.newFixedThreadPool(workerPoolSize, new NamingThreadFactory(name));
+	}
+
+	/**
+	 * Starts the tick thread, does nothing if it is already started.
+	 * @throws IllegalStateException if the timer has been stopped
+	 */
+	public void start() {
+		switch (state.get()) {
+			case STATE_INIT:
+				if(state.compareAndSet(STATE_INIT, STATE_STARTED)) {
+					startTime = System.nanoTime();
+					startTimeInitialized.countDown();
+					tickThread.start();
+				}
+				break;
+			case STATE_STARTED:
+				break;
+			default:
+				throw new IllegalStateException("timer " + name + " cannot be started once stopped");
+		}
+		// another thread may have won the race to start the timer and not have set the start time yet
+		boolean interrupted = false;
+		while(startTimeInitialized.getCount() > 0) {
+			try {
+				startTimeInitialized.await();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if(interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Stops the tick thread and the worker pool, pending timeouts are dropped.
+	 */
+	public void stop() {
+		if(state.getAndSet(STATE_STOPPED) == STATE_STARTED) {
+			tickThread.interrupt();
+			if(Thread.currentThread() != tickThread) {
+				try {
+					tickThread.join(tickDuration / 1000000L + 1000L);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+		workerPool.shutdownNow();
+		pendingTimeouts.set(0);
+	}
+
+	public boolean isStarted() {
+		return state.get() == STATE_STARTED;
+	}
+
+	/**
+	 * Schedules the task to run once after the given delay, starting the timer if needed.
+	 * @return the handle to keep in order to cancel the task
+	 * @throws IllegalStateException if the timer has been stopped
+	 */
+	public Timeout newTimeout(Runnable task, long delay, TimeUnit unit) {
+		return newTimeout(task, delay, unit, null);
+	}
+
+	/**
+	 * Schedules the task to run once after the given delay, starting the timer if needed.
+	 * @param timeouts the set holding the timeout until it expires or gets cancelled, can be null
+	 * @return the handle to keep in order to cancel the task
+	 * @throws IllegalStateException if the timer has been stopped
+	 */
+	public Timeout newTimeout(Runnable task, long delay, TimeUnit unit, Set<Timeout> timeouts) {
+		if(task == null) {
+			throw new NullPointerException("task cannot be null");
+		}
+		start();
+		long deadline = System.nanoTime() + unit.toNanos(delay) - startTime;
+		Timeout timeout = new Timeout(this, task, deadline, timeouts);
+		if(timeouts != null) {
+			timeouts.add(timeout);
+		}
+		pendingTimeouts.incrementAndGet();
+		newTimeouts.offer(timeout);
+		return timeout;
+	}
+
+	/**
+	 * @return the number of timeouts scheduled and neither expired nor cancelled yet
+	 */
+	public long getPendingTimeouts() {
+		return pendingTimeouts.get();
+	}
+
+	/**
+	 * @return the number of timeouts that expired since the timer started
+	 */
+	public long getExpiredTimeouts() {
+		return expiredTimeouts.get();
+	}
+
+	/**
+	 * @return how late, in milliseconds, the last tick was processed compared to its deadline
+	 */
+	public long getLastTickLag() {
+		return lastTickLag;
+	}
+
+	/**
+	 * @return the highest tick lag, in milliseconds, observed since the timer started
+	 */
+	public long getMaxTickLag() {
+		return maxTickLag;
+	}
+
+	/**
+	 * @return the tick duration in milliseconds
+	 */
+	public long getTickDuration() {
+		return TimeUnit.NANOSECONDS.toMillis(tickDuration);
+	}
+
+	@Override
+	public String toString() {
+		return "HashedWheelTimer[" + name + ", pending=" + pendingTimeouts.get() + ", lastTickLag=" + lastTickLag + "ms]";
+	}
+
+	private void expire(Timeout timeout) {
+		pendingTimeouts.decrementAndGet();
+		expiredTimeouts.incrementAndGet();
+		try {
+			workerPool.execute(timeout.task);
+		} catch (RejectedExecutionException e) {
+			if(logger.isDebugEnabled()) {
+				logger.debug("timer " + name + " stopped, dropping expired task " + timeout.task);
+			}
+		}
+	}
+
+	private final class Ticker implements Runnable {
+		private long tick;
+
+		public void run() {
+			while(state.get() == STATE_STARTED) {
+				long currentTime = waitForNextTick();
+				if(currentTime < 0) {
+					break;
+				}
+				try {
+					removeCancelledTimeouts();
+					transferNewTimeouts();
+					wheel[(int) (tick & mask)].expireTimeouts(currentTime);
+				} catch (Throwable t) {
+					logger.error("Unexpected exception on tick " + tick + " of timer " + name, t);
+				}
+				tick++;
+			}
+			if(logger.isDebugEnabled()) {
+				logger.debug("tick thread of timer " + name + " stopped");
+			}
+		}
+
+		/**
+		 * @return the time of the tick relative to the start time, or -1 if the timer has been stopped
+		 */
+		private long waitForNextTick() {
+			long deadline = tickDuration * (tick + 1);
+			while(true) {
+				long currentTime = System.nanoTime() - startTime;
+				long sleepTime = (deadline - currentTime + 999999L) / 1000000L;
+				if(sleepTime <= 0) {
+					long lag = TimeUnit.NANOSECONDS.toMillis(currentTime - deadline);
+					lastTickLag = lag;
+					if(lag > maxTickLag) {
+						maxTickLag = lag;
+					}
+					return currentTime;
+				}
+				try {
+					Thread.sleep(sleepTime);
+				} catch (InterruptedException e) {
+					if(state.get() == STATE_STOPPED) {
+						return -1;
+					}
+				}
+			}
+		}
+
+		private void removeCancelledTimeouts() {
+			Timeout timeout;
+			while((timeout = cancelledTimeouts.poll()) != null) {
+				if(timeout.bucket != null) {
+					timeout.bucket.remove(timeout);
+				}
+			}
+		}
+
+		private void transferNewTimeouts() {
+			for (int i = 0; i < MAX_TIMEOUTS_TRANSFERRED_PER_TICK; i++) {
+				Timeout timeout = newTimeouts.poll();
+				if(timeout == null) {
+					break;
+				}
+				if(timeout.isCancelled()) {
+					continue;
+				}
+				long calculatedTick = timeout.deadline / tickDuration;
+				timeout.remainingRounds = (calculatedTick - tick) / wheel.length;
+				// a timeout whose deadline has already passed goes in the current bucket
+				long ticks = Math.max(calculatedTick, tick);
+				wheel[(int) (ticks & mask)].add(timeout);
+			}
+		}
+	}
+
+	/**
+	 * Doubly linked list of timeouts, only accessed by the tick thread
+	 */
+	private final class Bucket {
+		private Timeout head;
+		private Timeout tail;
+
+		void add(Timeout timeout) {
+			timeout.bucket = this;
+			if(head == null) {
+				head = tail = timeout;
+			} else {
+				tail.next = timeout;
+				timeout.prev = tail;
+				tail = timeout;
+			}
+		}
+
+		void expireTimeouts(long currentTime) {
+			Timeout timeout = head;
+			while(timeout != null) {
+				Timeout next = timeout.next;
+				if(timeout.isCancelled()) {
+					remove(timeout);
+				} else if(timeout.remainingRounds <= 0) {
+					if(timeout.deadline <= currentTime) {
+						remove(timeout);
+						// the cas fails if the timeout got cancelled concurrently
+						if(timeout.expire()) {
+							expire(timeout);
+						}
+					}
+				} else {
+					timeout.remainingRounds--;
+				}
+				timeout = next;
+			}
+		}
+
+		void remove(Timeout timeout) {
+			Timeout next = timeout.next;
+			if(timeout.prev != null) {
+				timeout.prev.next = next;
+			}
+			if(next != null) {
+				next.prev = timeout.prev;
+			}
+			if(timeout == head) {
+				head = next;
+			}
+			if(timeout == tail) {
+				tail = timeout.prev;
+			}
+			timeout.prev = null;
+			timeout.next = null;
+			timeout.bucket = null;
+		}
+	}
+
+	/**
+	 * Handle on a task scheduled on a {@link HashedWheelTimer}
+	 */
+	public static final class Timeout {
+		private static final int ST_INIT = 0;
+		private static final int ST_CANCELLED = 1;
+		private static final int ST_EXPIRED = 2;
+		private static final AtomicIntegerFieldUpdater<Timeout> STATE_UPDATER =
+				AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+		private final HashedWheelTimer timer;
+		private final Runnable task;
+		// nanoseconds relative to the start time of the timer
+		private final long deadline;
+		private final Set<Timeout> timeouts;
+		private volatile int state = ST_INIT;
+
+		// only accessed by the tick thread
+		private long remainingRounds;
+		private Timeout next;
+		private Timeout prev;
+		private Bucket bucket;
+
+		Timeout(HashedWheelTimer timer, Runnable task, long deadline, Set<Timeout> timeouts) {
+			this.timer = timer;
+			this.task = task;
+			this.deadline = deadline;
+			this.timeouts = timeouts;
+		}
+
+		/**
+		 * Cancels the task, it will be unlinked from the wheel on the next tick.
+		 * @return false if the task already expired or was already cancelled
+		 */
+		public boolean cancel() {
+			if(!STATE_UPDATER.compareAndSet(this, ST_INIT, ST_CANCELLED)) {
+				return false;
+			}
+			timer.pendingTimeouts.decrementAndGet();
+			if(timeouts != null) {
+				timeouts.remove(this);
+			}
+			timer.cancelledTimeouts.offer(this);
+			return true;
+		}
+
+		public boolean isCancelled() {
+			return state == ST_CANCELLED;
+		}
+
+		public boolean isExpired() {
+			return state == ST_EXPIRED;
+		}
+
+		public Runnable getTask() {
+			return task;
+		}
+
+		boolean expire() {
+			if(!STATE_UPDATER.compareAndSet(this, ST_INIT, ST_EXPIRED)) {
+				return false;
+			}
+			if(timeouts != null) {
+				timeouts.remove(this);
+			}
+			return true;
+		}
+	}
+}
@@ -21,7 +21,9 @@ package org.mobicents.servlet.sip.core.timers;
 
 import java.io.Serializable;
 import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.servlet.sip.TimerListener;
 
@@ -116,6 +118,17 @@ public class ServletTimerImpl implements MobicentsServletTimer, Runnable {
 	 */
 	private final Object TIMER_LOCK = new Object();
 
+	/**
+	 * Timer service of the application, keeps the accounting of the timer
+	 */
+	private transient TimerServiceImpl timerService;
+
+	/**
+	 * Whether a callback of this timer has been handed off to the session and has not run yet.
+	 * A repeating timer expiring again in the meantime is coalesced with the pending callback.
+	 */
+	private final AtomicBoolean callbackPending = new AtomicBoolean(false);
+
 	/**
 	 * Constructor for non-repeating timer.
 	 * 
@@ -182,6 +195,9 @@ public class ServletTimerImpl implements MobicentsServletTimer, Runnable {
 				// the task which is currently scheduled
 				future.cancel(mayInterruptIfRunning);
 				isCanceled = true;
+				if(timerService != null) {
+					timerService.timerCancelled(this);
+				}
 				// used for debugging/optimizeIt purpose
 				// kan be kept in production code since object should
 				// be due for gc anyway....
@@ -253,6 +269,10 @@ public class ServletTimerImpl implements MobicentsServletTimer, Runnable {
 
 	}
 
+	void setTimerService(TimerServiceImpl timerService) {
+		this.timerService = timerService;
+	}
+
 	public boolean canRun() {
 		return this.future!=null && !this.future.isCancelled() && !this.future.isDone();
 
@@ -277,13 +297,79 @@ public class ServletTimerImpl implements MobicentsServletTimer, Runnable {
 	}
 
 	/**
-	 * Method that actually
+	 * Runs on the container wide timer scheduler, the callback is handed off to the execution queue
+	 * of the sip application session so that a busy session doesn't delay the timers of the other sessions
 	 */
 	public void run() {
-
+		if(timerService != null && timerService.isStopped()) {
+			if(logger.isDebugEnabled()) {
+				logger.debug("timer service of Servlet Timer " + id + " is stopped, cancelling the timer");
+			}
+			cancel(false, false);
+			return;
+		}
+		if(!callbackPending.compareAndSet(false, true)) {
+			if(logger.isDebugEnabled()) {
+				logger.debug("previous callback of Servlet Timer " + id + " has not run yet, coalescing this expiration with it");
+			}
+			if(timerService != null) {
+				timerService.timerFiringCoalesced();
+			}
+			return;
+		}
 		final MobicentsSipApplicationSession sipApplicationSession = getApplicationSession();
+		if(sipApplicationSession == null) {
+			callbackPending.set(false);
+			if(logger.isDebugEnabled()) {
+				logger.debug("sip application session " + appSessionKey + " of Servlet Timer " + id + " doesn't exist anymore, skipping its callback");
+			}
+			return;
+		}
+		final Runnable callback = new Runnable() {
+			public void run() {
+				boolean fired = true;
+				try {
+					if(timerService == null || !timerService.isStopped()) {
+						fired = fire(sipApplicationSession);
+					}
+				} finally {
+					if(fired) {
+						callbackPending.set(false);
+						if(timerService != null) {
+							timerService.timerCallbackCompleted();
+						}
+					}
+				}
+				if(!fired) {
+					// the session is locked by another thread, the callback stays pending so the next expirations are coalesced with it
+					TimerServiceImpl.retryCallback(sipApplicationSession, this);
+				}
+			}
+		};
+		if(timerService != null) {
+			timerService.timerCallbackHandedOff();
+		}
+		try {
+			TimerServiceImpl.getCallbackExecutor(sipApplicationSession).execute(callback);
+		} catch (RejectedExecutionException e) {
+			logger.warn("callback of Servlet Timer " + id + " rejected, running it on the timer scheduler thread", e);
+			callback.run();
+		}
+	}
+
+	/**
+	 * Method that actually runs the timer listener callback
+	 * @return false if the sip application session is locked by another thread, the callback has not been run then
+	 */
+	private boolean fire(MobicentsSipApplicationSession sipApplicationSession) {
 		SipContext sipContext = sipApplicationSession.getSipContext();
 		
+		if(!sipContext.tryEnterSipApp(sipApplicationSession, null, false, true)) {
+			if(logger.isDebugEnabled()) {
+				logger.debug("sip application session " + sipApplicationSession + " of Servlet Timer " + id + " is locked, retrying its callback later");
+			}
+			return false;
+		}
 		if(logger.isDebugEnabled()) {
 			logger.debug("running Servlet Timer " + id + " for sip application session " + sipApplicationSession);
 		}
@@ -292,7 +378,6 @@ public class ServletTimerImpl implements MobicentsServletTimer, Runnable {
 		ClassLoader oldClassLoader = Thread.currentThread().getContextClassLoader();
 		try {
 			sipContext.enterSipContext();	
-			sipContext.enterSipApp(sipApplicationSession, null, false, true);
 			batchStarted = sipContext.enterSipAppHa(true);
 			if(isCanceled==false){
 			    listener.timeout(this);
@@ -320,7 +405,7 @@ public class ServletTimerImpl implements MobicentsServletTimer, Runnable {
 				sipContext.exitSipApp(sipApplicationSession, null);
 			}
 		}
-
+		return true;
 	}
 
 	/**
@@ -0,0 +1,153 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.servlet.sip.core.timers;
+
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.log4j.Logger;
+import org.mobicents.servlet.sip.core.SipApplicationDispatcher;
+import org.mobicents.servlet.sip.proxy.ProxyBranchTimerTask;
+
+/**
+ * Proxy timer service backed by the container wide timer scheduler of the sip application dispatcher,
+ * so that no thread is created per application. When a proxy branch timer fires, the task is handed off
+ * to the execution queue of the sip application session of the branch instead of being run on the scheduler thread.
+ */
+public class SharedProxyTimerService implements ProxyTimerService {
+	private static final Logger logger = Logger.getLogger(SharedProxyTimerService.class);
+
+	private final SipApplicationDispatcher sipApplicationDispatcher;
+	private final AtomicBoolean started = new AtomicBoolean(false);
+	private final ConcurrentMap<TimerTask, ScheduledFuture<?>> scheduledTasks = new ConcurrentHashMap<TimerTask, ScheduledFuture<?>>();
+
+	public SharedProxyTimerService(String applicationName, SipApplicationDispatcher sipApplicationDispatcher) {
+		this.sipApplicationDispatcher = sipApplicationDispatcher;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.timers.ProxyTimerService#schedule(java.util.TimerTask, long)
+	 */
+	public void schedule(final TimerTask task, long delay) {
+		final Runnable handOff = new Runnable() {
+			public void run() {
+				scheduledTasks.remove(task);
+				if(!started.get()) {
+					if(logger.isDebugEnabled()) {
+						logger.debug("timer service " + SharedProxyTimerService.this + " is stopped, dropping the proxy timer task " + task);
+					}
+					return;
+				}
+				getCallbackExecutor(task).execute(getCallback(task));
+			}
+		};
+		final ScheduledFuture<?> future = sipApplicationDispatcher.getTimerScheduler().schedule(handOff, delay, TimeUnit.MILLISECONDS);
+		scheduledTasks.put(task, future);
+		if(future.isDone() || !started.get()) {
+			// the task already fired before it could be registered or the service has been stopped in the meantime
+			scheduledTasks.remove(task, future);
+			future.cancel(false);
+		}
+	}
+
+	// proxy branch timers don't wait for their sip application session, they are scheduled again if it is busy
+	private Runnable getCallback(final TimerTask task) {
+		if(!(task instanceof ProxyBranchTimerTask) || ((ProxyBranchTimerTask) task).getSipApplicationSession() == null) {
+			return task;
+		}
+		return new Runnable() {
+			public void run() {
+				if(!((ProxyBranchTimerTask) task).tryRun()) {
+					if(logger.isDebugEnabled()) {
+						logger.debug("sip application session of the proxy timer task " + task + " is locked, retrying later");
+					}
+					schedule(task, TimerServiceImpl.BUSY_SESSION_RETRY_DELAY);
+				}
+			}
+		};
+	}
+
+	private Executor getCallbackExecutor(TimerTask task) {
+		if(task instanceof ProxyBranchTimerTask && ((ProxyBranchTimerTask) task).getSipApplicationSession() != null) {
+			return TimerServiceImpl.getCallbackExecutor(((ProxyBranchTimerTask) task).getSipApplicationSession());
+		}
+		return sipApplicationDispatcher.getAsynchronousExecutor();
+	}
+
+	/* (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.timers.ProxyTimerService#cancel(java.util.TimerTask)
+	 */
+	public void cancel(TimerTask task) {
+		task.cancel();
+		ScheduledFuture<?> future = scheduledTasks.remove(task);
+		if(future != null) {
+			// the shared scheduler removes cancelled tasks from its queue so no purge is needed
+			boolean cancelled = future.cancel(false);
+			if(logger.isDebugEnabled()) {
+				logger.debug("expiration timer on sip proxy task" + task + " Cancelled : " + cancelled);
+			}
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.timers.ProxyTimerService#start()
+	 */
+	public void start() {
+		started.set(true);
+		if(logger.isInfoEnabled()) {
+			logger.info("Started proxy timer service "+ this);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.timers.ProxyTimerService#stop()
+	 */
+	public void stop() {
+		// the scheduler is shared by all the applications, only the timers of this application are cancelled
+		started.set(false);
+		for(ScheduledFuture<?> future : scheduledTasks.values()) {
+			future.cancel(false);
+		}
+		scheduledTasks.clear();
+		if(logger.isInfoEnabled()) {
+			logger.info("Stopped proxy timer service "+ this);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.timers.ProxyTimerService#isStarted()
+	 */
+	public boolean isStarted() {
+		return started.get();
+	}
+
+	/**
+	 * @return the number of proxy timers of this application scheduled and neither fired nor cancelled yet
+	 */
+	public int getPendingTimers() {
+		return scheduledTasks.size();
+	}
+}
@@ -0,0 +1,156 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.servlet.sip.core.timers;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.log4j.Logger;
+import org.mobicents.servlet.sip.core.SipApplicationDispatcher;
+import org.mobicents.servlet.sip.core.session.MobicentsSipApplicationSession;
+
+/**
+ * Sip application session timer service backed by the container wide timer scheduler of the
+ * sip application dispatcher, so that no thread is created per application. When the expiration
+ * timer of a session fires, the expiration is handed off to the execution queue of the session
+ * instead of being processed on the scheduler thread. The expiration never waits for a session in use,
+ * it is retried a bit later so that the execution queue isn't held.
+ */
+public class SharedSipApplicationSessionTimerService implements SipApplicationSessionTimerService {
+	private static final Logger logger = Logger.getLogger(SharedSipApplicationSessionTimerService.class);
+
+	private final SipApplicationDispatcher sipApplicationDispatcher;
+	private final AtomicBoolean started = new AtomicBoolean(false);
+	// expiration timers of this application still scheduled on the shared scheduler, cancelled when the service is stopped
+	private final ConcurrentMap<SipApplicationSessionTimerTask, ScheduledFuture<?>> scheduledTasks = 
+		new ConcurrentHashMap<SipApplicationSessionTimerTask, ScheduledFuture<?>>();
+
+	public SharedSipApplicationSessionTimerService(String applicationName, SipApplicationDispatcher sipApplicationDispatcher) {
+		this.sipApplicationDispatcher = sipApplicationDispatcher;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.timers.SipApplicationSessionTimerService#createSipApplicationSessionTimerTask(org.mobicents.servlet.sip.core.session.MobicentsSipApplicationSession)
+	 */
+	public SipApplicationSessionTimerTask createSipApplicationSessionTimerTask(MobicentsSipApplicationSession sipApplicationSession) {
+		return new DefaultSasTimerTask(sipApplicationSession, true);
+	}
+
+	/* (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.timers.SipApplicationSessionTimerService#schedule(org.mobicents.servlet.sip.core.timers.SipApplicationSessionTimerTask, long, java.util.concurrent.TimeUnit)
+	 */
+	@SuppressWarnings("unchecked")
+	public SipApplicationSessionTimerTask schedule(
+			final SipApplicationSessionTimerTask expirationTimerTask, long delay,
+			TimeUnit unit) {
+		if(logger.isDebugEnabled()) {
+			logger.debug("Scheduling sip application session "+ expirationTimerTask.getSipApplicationSession().getKey() +" to expire in " + (delay / (double) 1000 / (double) 60) + " minutes");
+		}
+		final Runnable handOff = new Runnable() {
+			public void run() {
+				scheduledTasks.remove(expirationTimerTask);
+				if(!started.get()) {
+					if(logger.isDebugEnabled()) {
+						logger.debug("timer service " + SharedSipApplicationSessionTimerService.this + " is stopped, dropping the expiration timer");
+					}
+					return;
+				}
+				final MobicentsSipApplicationSession sipApplicationSession = expirationTimerTask.getSipApplicationSession();
+				if(sipApplicationSession == null) {
+					return;
+				}
+				TimerServiceImpl.getCallbackExecutor(sipApplicationSession).execute(expirationTimerTask);
+			}
+		};
+		final ScheduledFuture<?> future = sipApplicationDispatcher.getTimerScheduler().schedule(handOff, delay, unit);
+		((DefaultSasTimerTask)expirationTimerTask).setScheduledFuture((ScheduledFuture<MobicentsSipApplicationSession>) future);
+		scheduledTasks.put(expirationTimerTask, future);
+		if(future.isDone() || !started.get()) {
+			// the task already fired before it could be registered or the service has been stopped in the meantime
+			scheduledTasks.remove(expirationTimerTask, future);
+			future.cancel(false);
+		}
+		return expirationTimerTask;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.timers.SipApplicationSessionTimerService#cancel(org.mobicents.servlet.sip.core.timers.SipApplicationSessionTimerTask)
+	 */
+	public boolean cancel(SipApplicationSessionTimerTask expirationTimerTask) {
+		ScheduledFuture<MobicentsSipApplicationSession> future = ((DefaultSasTimerTask)expirationTimerTask).getScheduledFuture();
+		if(future != null) {
+			// the shared scheduler removes cancelled tasks from its queue so no purge is needed
+			boolean cancelled = future.cancel(false);
+			scheduledTasks.remove(expirationTimerTask, future);
+			if(logger.isDebugEnabled()) {
+				logger.debug("expiration timer on sip application session " + expirationTimerTask.getSipApplicationSession().getKey() + " Cancelled : " + cancelled);
+			}
+			return cancelled;
+		} else {
+			if(logger.isDebugEnabled()) {
+				logger.debug("expiration timer future is null, thus cannot be Cancelled");
+			}
+			return false;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.timers.SipApplicationSessionTimerService#start()
+	 */
+	public void start() {
+		started.set(true);
+		if(logger.isInfoEnabled()) {
+			logger.info("Started timer service "+ this);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.timers.SipApplicationSessionTimerService#stop()
+	 */
+	public void stop() {
+		// the scheduler is shared by all the applications, only the timers of this application are cancelled
+		started.set(false);
+		for(ScheduledFuture<?> future : scheduledTasks.values()) {
+			future.cancel(false);
+		}
+		scheduledTasks.clear();
+		if(logger.isInfoEnabled()) {
+			logger.info("Stopped timer service "+ this);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.timers.SipApplicationSessionTimerService#isStarted()
+	 */
+	public boolean isStarted() {
+		return started.get();
+	}
+
+	/**
+	 * @return the number of sip application session expiration timers of this application scheduled and neither fired nor cancelled yet
+	 */
+	public int getPendingTimers() {
+		return scheduledTasks.size();
+	}
+}
@@ -17,9 +17,16 @@
 package org.mobicents.servlet.sip.core.timers;
 
 import java.io.Serializable;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.servlet.sip.ServletTimer;
 import javax.servlet.sip.SipApplicationSession;
@@ -28,8 +35,11 @@ import javax.servlet.sip.TimerListener;
 import org.apache.log4j.Logger;
 import org.mobicents.servlet.sip.core.SipService;
 import org.mobicents.servlet.sip.core.session.MobicentsSipApplicationSession;
-import org.mobicents.servlet.sip.utils.NamingThreadFactory;
 
+/**
+ * Servlet timer service of an application. The timers of all the applications are scheduled on the container wide
+ * timer scheduler of the sip application dispatcher, this class only keeps the accounting of the timers of its application.
+ */
 public class TimerServiceImpl implements SipServletTimerService {
 	
 	private static final long serialVersionUID = 1L;
@@ -37,33 +47,67 @@ public class TimerServiceImpl implements SipServletTimerService {
 			.getName());
 	
 	public static final int SCHEDULER_THREAD_POOL_DEFAULT_SIZE = 4;
+	// delay in milliseconds before a timer callback which found its sip application session locked is tried again
+	static final long BUSY_SESSION_RETRY_DELAY = 10;
+	
+	private transient SipService sipService;
+	
+	private volatile boolean started;
+	private volatile boolean stopped;
 	
-	private transient ScheduledThreadPoolExecutor scheduledExecutor;
+	// per application accounting, the scheduler itself is shared by all the applications
+	private final AtomicLong scheduledTimers = new AtomicLong();
+	private final AtomicLong firedTimers = new AtomicLong();
+	private final AtomicInteger pendingTimerCallbacks = new AtomicInteger();
+	private final AtomicLong coalescedTimerFirings = new AtomicLong();
+	// timers of this application still scheduled on the shared scheduler, cancelled when the service is stopped
+	private final Set<ServletTimerImpl> timers = Collections.newSetFromMap(new ConcurrentHashMap<ServletTimerImpl, Boolean>());
 	
 	public TimerServiceImpl(SipService sipService, String applicationName) {		
-		scheduledExecutor = new ScheduledThreadPoolExecutor(SCHEDULER_THREAD_POOL_DEFAULT_SIZE,new NamingThreadFactory(applicationName + "_sip_default_sas_timer_service"));
-		int purgePeriod = sipService.getCanceledTimerTasksPurgePeriod();
-		if(purgePeriod > 0) {
-			Runnable r = new Runnable() {			
+		this.sipService = sipService;
+	}
+	
+	/**
+	 * Returns the executor the callback of a timer of the given sip application session has to be handed off to :
+	 * the mailbox of the session if the SipApplicationSessionMailbox concurrency control mode is used so that
+	 * the callback is serialized with the messages of the session, the container wide asynchronous executor otherwise.
+	 * The callbacks never wait for the lock of their session on the asynchronous executor, 
+	 * they go through {@link #retryCallback(MobicentsSipApplicationSession, Runnable)} when it is busy
+	 */
+	static Executor getCallbackExecutor(MobicentsSipApplicationSession sipApplicationSession) {
+		final Executor mailbox = sipApplicationSession.getMailbox();
+		if(mailbox != null) {
+			return mailbox;
+		}
+		return sipApplicationSession.getSipContext().getSipApplicationDispatcher().getAsynchronousExecutor();
+	}
+	
+	/**
+	 * Hands the callback of a timer off to the executor of its sip application session again after {@link #BUSY_SESSION_RETRY_DELAY} 
+	 * milliseconds, used by the callbacks which found their session locked by another thread
+	 */
+	static void retryCallback(final MobicentsSipApplicationSession sipApplicationSession, final Runnable callback) {
+		final ScheduledExecutorService scheduler = sipApplicationSession.getSipContext().getSipApplicationDispatcher().getTimerScheduler();
+		try {
+			scheduler.schedule(new Runnable() {
 				public void run() {
-					try {
-						if(logger.isDebugEnabled()) {
-							logger.debug("Purging canceled timer tasks...");
-						}
-						scheduledExecutor.purge();
-						if(logger.isDebugEnabled()) {
-							logger.debug("Purging canceled timer tasks completed.");
-						}						
-					}
-					catch (Exception e) {
-						logger.error("failed to execute purge",e);
-					}
+					getCallbackExecutor(sipApplicationSession).execute(callback);
 				}
-			};
-			scheduledExecutor.scheduleWithFixedDelay(r, purgePeriod, purgePeriod, TimeUnit.MINUTES);
+			}, BUSY_SESSION_RETRY_DELAY, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			// the sip application dispatcher is stopping
+			logger.warn("timer callback " + callback + " for sip application session " + sipApplicationSession.getKey() + " dropped, the timer scheduler is stopped");
 		}
 	}
 	
+	private ScheduledExecutorService getScheduler() {
+		final ScheduledExecutorService scheduler = sipService.getSipApplicationDispatcher().getTimerScheduler();
+		if(scheduler == null) {
+			throw new IllegalStateException("The container timer scheduler is not available, the sip application dispatcher has not been initialized");
+		}
+		return scheduler;
+	}
+	
 	/*
 	 * (non-Javadoc)
 	 * @see javax.servlet.sip.TimerService#createTimer(javax.servlet.sip.SipApplicationSession, long, boolean, java.io.Serializable)
@@ -129,7 +173,15 @@ public class TimerServiceImpl implements SipServletTimerService {
 			logger.debug("Scheduling Timer "+ servletTimer.getId() +" to expire in " + delay + " ms");
 		}
 		
-		ScheduledFuture<?> future = scheduledExecutor.schedule(servletTimer, delay, TimeUnit.MILLISECONDS);
+		servletTimer.setTimerService(this);
+		timerScheduled(servletTimer);
+		ScheduledFuture<?> future = null;
+		try {
+			future = getScheduler().schedule(servletTimer, delay, TimeUnit.MILLISECONDS);
+		} catch (RuntimeException e) {
+			timerCancelled(servletTimer);
+			throw e;
+		}
 		servletTimer.setFuture(future);
 //		sipApplicationSession.timerScheduled(st);
 		sipApplicationSession.addServletTimer(servletTimer);
@@ -154,29 +206,42 @@ public class TimerServiceImpl implements SipServletTimerService {
 			Serializable info, MobicentsSipApplicationSession sipApplicationSession) {		
 		final ServletTimerImpl servletTimer = new ServletTimerImpl(
 				info, delay, fixedDelay, period, listener, sipApplicationSession);
+		servletTimer.setTimerService(this);
+		timerScheduled(servletTimer);
+		ScheduledFuture<?> future = null;
+		try {
+			future = schedule(servletTimer, delay, period, fixedDelay);
+		} catch (RuntimeException e) {
+			timerCancelled(servletTimer);
+			throw e;
+		}
+		servletTimer.setFuture(future);
+//		sipApplicationSession.timerScheduled(servletTimer);
+		sipApplicationSession.addServletTimer(servletTimer);
+		if (isPersistent) {			
+			persist(servletTimer);
+		} 
+		return servletTimer;
+	}
+	
+	private ScheduledFuture<?> schedule(ServletTimerImpl servletTimer, long delay, long period, boolean fixedDelay) {
 		ScheduledFuture<?> future = null;
 		if (fixedDelay) {
 			if(logger.isDebugEnabled()) {
 				logger.debug("Scheduling Timer "+ servletTimer.getId() +" to expire in " + delay + " ms" + " with fixed delay of " + period);
 			}
 			
-			future = scheduledExecutor.scheduleWithFixedDelay(servletTimer, delay, period,
+			future = getScheduler().scheduleWithFixedDelay(servletTimer, delay, period,
 					TimeUnit.MILLISECONDS);
 		} else {
 			if(logger.isDebugEnabled()) {
 				logger.debug("Scheduling Timer "+ servletTimer.getId() +" to expire in " + delay + " ms" + " at fixed rate of " + period);
 			}
 			
-			future = scheduledExecutor.scheduleAtFixedRate(servletTimer, delay, period,
+			future = getScheduler().scheduleAtFixedRate(servletTimer, delay, period,
 					TimeUnit.MILLISECONDS);
 		}
-		servletTimer.setFuture(future);
-//		sipApplicationSession.timerScheduled(servletTimer);
-		sipApplicationSession.addServletTimer(servletTimer);
-		if (isPersistent) {			
-			persist(servletTimer);
-		} 
-		return servletTimer;
+		return future;
 	}
 
 	/**
@@ -188,19 +253,90 @@ public class TimerServiceImpl implements SipServletTimerService {
 		
 	}
 	
+	private void timerScheduled(ServletTimerImpl servletTimer) {
+		timers.add(servletTimer);
+		scheduledTimers.incrementAndGet();
+	}
+	
+	void timerCancelled(ServletTimerImpl servletTimer) {
+		timers.remove(servletTimer);
+	}
+	
+	void timerCallbackHandedOff() {
+		pendingTimerCallbacks.incrementAndGet();
+	}
+	
+	void timerCallbackCompleted() {
+		pendingTimerCallbacks.decrementAndGet();
+		firedTimers.incrementAndGet();
+	}
+	
+	void timerFiringCoalesced() {
+		coalescedTimerFirings.incrementAndGet();
+	}
+	
+	/**
+	 * @return the number of timers scheduled by this application since it has been deployed
+	 */
+	public long getScheduledTimers() {
+		return scheduledTimers.get();
+	}
+	
+	/**
+	 * @return the number of timers of this application that are still scheduled
+	 */
+	public int getActiveTimers() {
+		return timers.size();
+	}
+	
+	/**
+	 * @return the number of timer callbacks of this application that have been run
+	 */
+	public long getFiredTimers() {
+		return firedTimers.get();
+	}
+	
+	/**
+	 * @return the number of timer callbacks of this application handed off and waiting for their session
+	 */
+	public int getPendingTimerCallbacks() {
+		return pendingTimerCallbacks.get();
+	}
+	
+	/**
+	 * @return the number of repeating timer expirations dropped because the previous callback was still pending
+	 */
+	public long getCoalescedTimerFirings() {
+		return coalescedTimerFirings.get();
+	}
+	
+	/**
+	 * The shared scheduler is left running, only the timers of this application are cancelled. 
+	 * The callbacks already handed off to their session are dropped.
+	 */
 	public void stop() {
-		scheduledExecutor.shutdownNow();
+		started = false;
+		stopped = true;
+		for(ServletTimerImpl servletTimer : timers) {
+			servletTimer.cancel(false, false);
+		}
+		timers.clear();
 		if(logger.isInfoEnabled()) {
 			logger.info("Stopped timer service "+ this);
 		}
 	}
 
 	public void start() {
-		scheduledExecutor.prestartAllCoreThreads();		
+		stopped = false;
+		started = true;
 	}
 
 	public boolean isStarted() {		
-		return scheduledExecutor.isTerminated();
+		return started;
+	}
+	
+	boolean isStopped() {
+		return stopped;
 	}
 	
 }
\ No newline at end of file
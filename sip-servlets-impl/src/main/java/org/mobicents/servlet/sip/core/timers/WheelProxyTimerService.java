@@ -0,0 +1,127 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.servlet.sip.core.timers;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+import org.mobicents.servlet.sip.proxy.ProxyBranchTimerTask;
+
+/**
+ * Proxy timer service backed by a {@link HashedWheelTimer}. The wheel handle of each
+ * proxy branch timer is kept on its {@link ProxyBranchTimerTask} so that cancelling
+ * Timer C or the 1xx timer of a branch is O(1) and the task is unlinked from the wheel
+ * instead of staying queued until it fires.
+ * The wheel is the one shared by all the applications, see {@link HashedWheelTimer#acquireShared()}.
+ */
+public class WheelProxyTimerService implements ProxyTimerService {
+	private static final Logger logger = Logger.getLogger(WheelProxyTimerService.class);
+
+	private final String applicationName;
+	// the timeouts of this application on the shared wheel
+	private final Set<HashedWheelTimer.Timeout> timeouts = Collections.newSetFromMap(new ConcurrentHashMap<HashedWheelTimer.Timeout, Boolean>());
+	private HashedWheelTimer timer;
+
+	public WheelProxyTimerService(String applicationName) {
+		this.applicationName = applicationName;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.timers.ProxyTimerService#schedule(java.util.TimerTask, long)
+	 */
+	public void schedule(TimerTask task, long delay) {
+		HashedWheelTimer.Timeout timeout = getTimer().newTimeout(task, delay, TimeUnit.MILLISECONDS, timeouts);
+		if(task instanceof ProxyBranchTimerTask) {
+			// the branch may have cancelled its task before the handle is set, the task then cancels the handle itself
+			((ProxyBranchTimerTask) task).setTimeout(timeout);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.timers.ProxyTimerService#cancel(java.util.TimerTask)
+	 */
+	public void cancel(TimerTask task) {
+		// ProxyBranchTimerTask.cancel() also cancels its wheel handle
+		boolean cancelled = task.cancel();
+		if(logger.isDebugEnabled()) {
+			logger.debug("expiration timer on sip proxy task" + task + " Cancelled : " + cancelled);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.timers.ProxyTimerService#start()
+	 */
+	public void start() {
+		getTimer();
+		if(logger.isInfoEnabled()) {
+			logger.info("Started timer service "+ this);
+		}
+	}
+
+	// the proxy may schedule its timers before the service is started
+	private synchronized HashedWheelTimer getTimer() {
+		if(timer == null) {
+			timer = HashedWheelTimer.acquireShared();
+			timer.start();
+		}
+		return timer;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.timers.ProxyTimerService#stop()
+	 */
+	public synchronized void stop() {
+		// the wheel is shared by all the applications, only the timers of this application are cancelled
+		for (HashedWheelTimer.Timeout timeout : timeouts) {
+			timeout.cancel();
+		}
+		timeouts.clear();
+		if(timer != null) {
+			HashedWheelTimer.releaseShared(timer);
+			timer = null;
+		}
+		if(logger.isInfoEnabled()) {
+			logger.info("Stopped timer service "+ this);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.timers.ProxyTimerService#isStarted()
+	 */
+	public synchronized boolean isStarted() {
+		return timer != null && timer.isStarted();
+	}
+
+	/**
+	 * @return the number of proxy branch timers of this application scheduled and neither expired nor cancelled yet
+	 */
+	public int getPendingTimers() {
+		return timeouts.size();
+	}
+
+	@Override
+	public String toString() {
+		return "WheelProxyTimerService[" + applicationName + ", pending=" + timeouts.size() + "]";
+	}
+}
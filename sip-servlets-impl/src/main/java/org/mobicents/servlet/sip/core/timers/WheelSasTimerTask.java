@@ -0,0 +1,50 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.servlet.sip.core.timers;
+
+import org.mobicents.servlet.sip.core.session.MobicentsSipApplicationSession;
+
+/**
+ * Sip application session expiration task scheduled on a {@link HashedWheelTimer}.
+ * The expiration logic is the one of {@link DefaultSasTimerTask}, only the handle
+ * used to cancel the task differs.
+ */
+public class WheelSasTimerTask extends DefaultSasTimerTask {
+
+	private transient volatile HashedWheelTimer.Timeout timeout;
+
+	public WheelSasTimerTask(MobicentsSipApplicationSession mobicentsSipApplicationSession) {
+		super(mobicentsSipApplicationSession);
+	}
+
+	/**
+	 * @param timeout the handle of this task on the wheel
+	 */
+	public void setTimeout(HashedWheelTimer.Timeout timeout) {
+		this.timeout = timeout;
+	}
+
+	/**
+	 * @return the handle of this task on the wheel, null if it hasn't been scheduled
+	 */
+	public HashedWheelTimer.Timeout getTimeout() {
+		return timeout;
+	}
+}
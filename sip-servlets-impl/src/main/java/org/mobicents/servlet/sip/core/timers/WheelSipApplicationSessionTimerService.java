@@ -0,0 +1,143 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.servlet.sip.core.timers;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+import org.mobicents.servlet.sip.core.session.MobicentsSipApplicationSession;
+
+/**
+ * Sip application session timer service backed by a {@link HashedWheelTimer}.
+ * The wheel handle is kept on the {@link WheelSasTimerTask} held by the sip application session
+ * as its expiration timer task, so cancelling or rescheduling the expiration of a session is O(1)
+ * and doesn't leave cancelled tasks behind to be purged.
+ * The wheel is the one shared by all the applications, see {@link HashedWheelTimer#acquireShared()}.
+ */
+public class WheelSipApplicationSessionTimerService implements SipApplicationSessionTimerService {
+	private static final Logger logger = Logger.getLogger(WheelSipApplicationSessionTimerService.class);
+
+	private final String applicationName;
+	// the timeouts of this application on the shared wheel
+	private final Set<HashedWheelTimer.Timeout> timeouts = Collections.newSetFromMap(new ConcurrentHashMap<HashedWheelTimer.Timeout, Boolean>());
+	private HashedWheelTimer timer;
+
+	public WheelSipApplicationSessionTimerService(String applicationName) {
+		this.applicationName = applicationName;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.timers.SipApplicationSessionTimerService#createSipApplicationSessionTimerTask(org.mobicents.servlet.sip.core.session.MobicentsSipApplicationSession)
+	 */
+	public SipApplicationSessionTimerTask createSipApplicationSessionTimerTask(MobicentsSipApplicationSession sipApplicationSession) {
+		return new WheelSasTimerTask(sipApplicationSession);
+	}
+
+	/* (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.timers.SipApplicationSessionTimerService#schedule(org.mobicents.servlet.sip.core.timers.SipApplicationSessionTimerTask, long, java.util.concurrent.TimeUnit)
+	 */
+	public SipApplicationSessionTimerTask schedule(
+			SipApplicationSessionTimerTask expirationTimerTask, long delay,
+			TimeUnit unit) {
+		if(logger.isDebugEnabled()) {
+			logger.debug("Scheduling sip application session "+ expirationTimerTask.getSipApplicationSession().getKey() +" to expire in " + (delay / (double) 1000 / (double) 60) + " minutes");
+		}
+		((WheelSasTimerTask)expirationTimerTask).setTimeout(getTimer().newTimeout(expirationTimerTask, delay, unit, timeouts));
+		return expirationTimerTask;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.timers.SipApplicationSessionTimerService#cancel(org.mobicents.servlet.sip.core.timers.SipApplicationSessionTimerTask)
+	 */
+	public boolean cancel(SipApplicationSessionTimerTask expirationTimerTask) {
+		HashedWheelTimer.Timeout timeout = ((WheelSasTimerTask)expirationTimerTask).getTimeout();
+		if(timeout != null) {
+			boolean cancelled = timeout.cancel();
+			if(logger.isDebugEnabled()) {
+				logger.debug("expiration timer on sip application session " + expirationTimerTask.getSipApplicationSession().getKey() + " Cancelled : " + cancelled);
+			}
+			return cancelled;
+		} else {
+			if(logger.isDebugEnabled()) {
+				logger.debug("expiration timer handle is null, thus cannot be Cancelled");
+			}
+			return false;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.timers.SipApplicationSessionTimerService#start()
+	 */
+	public void start() {
+		getTimer();
+		if(logger.isInfoEnabled()) {
+			logger.info("Started timer service "+ this);
+		}
+	}
+
+	// the sessions may be scheduled to expire before the service is started
+	private synchronized HashedWheelTimer getTimer() {
+		if(timer == null) {
+			timer = HashedWheelTimer.acquireShared();
+			timer.start();
+		}
+		return timer;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.timers.SipApplicationSessionTimerService#stop()
+	 */
+	public synchronized void stop() {
+		// the wheel is shared by all the applications, only the timers of this application are cancelled
+		for (HashedWheelTimer.Timeout timeout : timeouts) {
+			timeout.cancel();
+		}
+		timeouts.clear();
+		if(timer != null) {
+			HashedWheelTimer.releaseShared(timer);
+			timer = null;
+		}
+		if(logger.isInfoEnabled()) {
+			logger.info("Stopped timer service "+ this);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.timers.SipApplicationSessionTimerService#isStarted()
+	 */
+	public synchronized boolean isStarted() {
+		return timer != null && timer.isStarted();
+	}
+
+	/**
+	 * @return the number of sip application session expiration timers of this application scheduled and neither expired nor cancelled yet
+	 */
+	public int getPendingTimers() {
+		return timeouts.size();
+	}
+
+	@Override
+	public String toString() {
+		return "WheelSipApplicationSessionTimerService[" + applicationName + ", pending=" + timeouts.size() + "]";
+	}
+}
@@ -0,0 +1,165 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.servlet.sip.dns;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.sip.address.Hop;
+import javax.sip.address.URI;
+
+import org.apache.log4j.Logger;
+import org.mobicents.ext.javax.sip.dns.DNSServerLocator;
+import org.mobicents.servlet.sip.core.HopsLocatedListener;
+import org.mobicents.servlet.sip.utils.NamingThreadFactory;
+
+/**
+ * Runs the blocking RFC 3263 lookups of a {@link DNSServerLocator} on a dedicated pool of resolver threads
+ * so that the dispatch and application threads never wait on the network.
+ * Concurrent requests for the same uri are coalesced onto a single lookup, every listener
+ * then gets its own copy of the located hops since they are consumed on failover.
+ */
+public class AsynchronousDNSServerLocator {
+	private static final Logger logger = Logger.getLogger(AsynchronousDNSServerLocator.class);
+
+	public static final int RESOLVER_THREAD_POOL_DEFAULT_SIZE = 4;
+
+	private final DNSServerLocator dnsServerLocator;
+	private final ExecutorService resolverExecutor;
+	private final ConcurrentHashMap<String, PendingLocation> pendingLocations = new ConcurrentHashMap<String, PendingLocation>();
+
+	public AsynchronousDNSServerLocator(DNSServerLocator dnsServerLocator) {
+		this(dnsServerLocator, Executors.newFixedThreadPool(RESOLVER_THREAD_POOL_DEFAULT_SIZE, new NamingThreadFactory("sip_servlets_dns_resolver")));
+	}
+
+	/**
+	 * @param dnsServerLocator the locator doing the actual lookups
+	 * @param resolverExecutor the executor the lookups are run on
+	 */
+	public AsynchronousDNSServerLocator(DNSServerLocator dnsServerLocator, ExecutorService resolverExecutor) {
+		this.dnsServerLocator = dnsServerLocator;
+		this.resolverExecutor = resolverExecutor;
+	}
+
+	/**
+	 * Locates the hops of the uri on a resolver thread, joining the lookup already in progress for the same uri if any.
+	 * The listener is notified on the resolver thread.
+	 * @param uri the uri to resolve, it must not be modified by the caller afterwards
+	 * @param listener the listener to notify with the located hops
+	 */
+	public void locateHops(URI uri, HopsLocatedListener listener) {
+		final String key = uri.toString();
+		final PendingLocation pendingLocation = new PendingLocation(key, uri);
+		final PendingLocation inProgress = pendingLocations.putIfAbsent(key, pendingLocation);
+		if(inProgress != null) {
+			if(logger.isDebugEnabled()) {
+				logger.debug("joining the DNS lookup in progress for " + key);
+			}
+			inProgress.addListener(listener);
+			return;
+		}
+		pendingLocation.addListener(listener);
+		try {
+			resolverExecutor.execute(pendingLocation);
+		} catch (RejectedExecutionException e) {
+			// the resolver threads are stopped, resolve on the calling thread
+			pendingLocation.run();
+		}
+	}
+
+	/**
+	 * @return the number of distinct uris currently being resolved
+	 */
+	public int getPendingLocations() {
+		return pendingLocations.size();
+	}
+
+	public DNSServerLocator getDNSServerLocator() {
+		return dnsServerLocator;
+	}
+
+	public void stop() {
+		resolverExecutor.shutdownNow();
+	}
+
+	private final class PendingLocation implements Runnable {
+		private final String key;
+		private final URI uri;
+		private List<HopsLocatedListener> listeners = new ArrayList<HopsLocatedListener>(1);
+		private boolean completed;
+		private Queue<Hop> hops;
+
+		PendingLocation(String key, URI uri) {
+			this.key = key;
+			this.uri = uri;
+		}
+
+		void addListener(HopsLocatedListener listener) {
+			final Queue<Hop> locatedHops;
+			synchronized (this) {
+				if(!completed) {
+					listeners.add(listener);
+					return;
+				}
+				locatedHops = hops;
+			}
+			notifyListener(listener, locatedHops);
+		}
+
+		public void run() {
+			Queue<Hop> locatedHops = null;
+			try {
+				locatedHops = dnsServerLocator.locateHops(uri);
+			} catch (Throwable t) {
+				logger.error("Unexpected exception while locating hops for " + key, t);
+			} finally {
+				// later requests for the same uri start a new lookup, which the lookup performer cache makes cheap
+				pendingLocations.remove(key, this);
+				final List<HopsLocatedListener> toNotify;
+				synchronized (this) {
+					completed = true;
+					hops = locatedHops;
+					toNotify = listeners;
+					listeners = null;
+				}
+				if(logger.isDebugEnabled()) {
+					logger.debug("located hops " + locatedHops + " for " + key + ", notifying " + toNotify.size() + " listener(s)");
+				}
+				for (HopsLocatedListener listener : toNotify) {
+					notifyListener(listener, locatedHops);
+				}
+			}
+		}
+
+		private void notifyListener(HopsLocatedListener listener, Queue<Hop> locatedHops) {
+			try {
+				listener.onHopsLocated(locatedHops == null ? null : new ConcurrentLinkedQueue<Hop>(locatedHops));
+			} catch (Throwable t) {
+				logger.error("Unexpected exception while notifying the hops located for " + key, t);
+			}
+		}
+	}
+}
@@ -0,0 +1,178 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.servlet.sip.dns;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.mobicents.ext.javax.sip.dns.DefaultDNSLookupPerformer;
+import org.xbill.DNS.Cache;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Lookup;
+import org.xbill.DNS.NAPTRRecord;
+import org.xbill.DNS.Record;
+
+/**
+ * DNS lookup performer keeping the NAPTR and SRV answers in a bounded LRU cache.
+ * An answer is kept for the lowest TTL of its records, capped by the maximum TTL.
+ * An empty answer isn't kept here : the lookup also goes through the dnsjava default cache, which only keeps
+ * the NXDOMAIN and NODATA answers, for the minimum TTL of the SOA record of the zone (RFC 2308), so a name or
+ * record type that doesn't exist isn't queried again on every request while a transient failure
+ * (timeout, SERVFAIL) is retried on the next request. A/AAAA lookups go through the dnsjava default cache as well,
+ * which already honours the record TTLs, and which is bounded the same way by {@link #boundAddressCache()}.
+ */
+public class CachingDNSLookupPerformer extends DefaultDNSLookupPerformer {
+	private static final Logger logger = Logger.getLogger(CachingDNSLookupPerformer.class);
+
+	public static final int DEFAULT_MAX_ENTRIES = 10000;
+	// seconds
+	public static final int DEFAULT_MAX_TTL = 3600;
+
+	private final int maxTtl;
+	private final Map<String, CacheEntry> cache;
+
+	public CachingDNSLookupPerformer() {
+		this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_TTL);
+	}
+
+	/**
+	 * @param maxEntries the maximum number of answers kept
+	 * @param maxTtl the maximum time in seconds an answer is kept, whatever its TTL
+	 */
+	public CachingDNSLookupPerformer(final int maxEntries, int maxTtl) {
+		this.maxTtl = maxTtl;
+		this.cache = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Bounds the dnsjava default cache used for the A/AAAA lookups and the negative answers with the default limits of this class,
+	 * a negative answer is kept for the minimum TTL of the SOA record of its zone, capped like the positive ones
+	 */
+	public static void boundAddressCache() {
+		Cache addressCache = Lookup.getDefaultCache(DClass.IN);
+		addressCache.setMaxEntries(DEFAULT_MAX_ENTRIES);
+		addressCache.setMaxCache(DEFAULT_MAX_TTL);
+		addressCache.setMaxNCache(DEFAULT_MAX_TTL);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.ext.javax.sip.dns.DefaultDNSLookupPerformer#performNAPTRLookup(java.lang.String, boolean, java.util.Set)
+	 */
+	@Override
+	public List<NAPTRRecord> performNAPTRLookup(String domain, boolean isSecure, Set<String> supportedTransports) {
+		final String key = "NAPTR " + domain + " " + isSecure + " " + supportedTransports;
+		List<NAPTRRecord> records = getCachedRecords(key);
+		if(records == null) {
+			records = super.performNAPTRLookup(domain, isSecure, supportedTransports);
+			records = putRecords(key, records);
+		}
+		return new ArrayList<NAPTRRecord>(records);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.ext.javax.sip.dns.DefaultDNSLookupPerformer#performSRVLookup(java.lang.String)
+	 */
+	@Override
+	public List<Record> performSRVLookup(String replacement) {
+		final String key = "SRV " + replacement;
+		List<Record> records = getCachedRecords(key);
+		if(records == null) {
+			records = super.performSRVLookup(replacement);
+			records = putRecords(key, records);
+		}
+		return new ArrayList<Record>(records);
+	}
+
+	/**
+	 * @return the number of answers currently cached, expired ones included until they are looked up again or evicted
+	 */
+	public int getCacheSize() {
+		synchronized (cache) {
+			return cache.size();
+		}
+	}
+
+	public void clearCache() {
+		synchronized (cache) {
+			cache.clear();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T extends Record> List<T> getCachedRecords(String key) {
+		final CacheEntry entry;
+		synchronized (cache) {
+			entry = cache.get(key);
+			if(entry == null) {
+				return null;
+			}
+			if(entry.expirationTime <= System.currentTimeMillis()) {
+				cache.remove(key);
+				return null;
+			}
+		}
+		if(logger.isDebugEnabled()) {
+			logger.debug("Reusing cached DNS answer for " + key + " : " + entry.records);
+		}
+		return (List<T>) entry.records;
+	}
+
+	private <T extends Record> List<T> putRecords(String key, List<T> records) {
+		final List<T> answer = records == null ? new ArrayList<T>(0) : new ArrayList<T>(records);
+		if(answer.isEmpty()) {
+			// the lookup may have failed rather than found nothing, the dnsjava cache already keeps the real negative answers
+			return answer;
+		}
+		long ttl = maxTtl;
+		for (Record record : answer) {
+			ttl = Math.min(ttl, record.getTTL());
+		}
+		if(ttl > 0) {
+			CacheEntry entry = new CacheEntry(answer, System.currentTimeMillis() + ttl * 1000L);
+			synchronized (cache) {
+				cache.put(key, entry);
+			}
+		}
+		return answer;
+	}
+
+	private static final class CacheEntry {
+		final List<? extends Record> records;
+		final long expirationTime;
+
+		CacheEntry(List<? extends Record> records, long expirationTime) {
+			this.records = records;
+			this.expirationTime = expirationTime;
+		}
+	}
+}
@@ -26,6 +26,9 @@ import gov.nist.javax.sip.header.HeaderExt;
 import gov.nist.javax.sip.header.ims.PathHeader;
 import gov.nist.javax.sip.message.MessageExt;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.text.ParseException;
 import java.util.ArrayList;
@@ -79,6 +82,8 @@ import org.mobicents.servlet.sip.core.SipManager;
 import org.mobicents.servlet.sip.core.b2bua.MobicentsB2BUAHelper;
 import org.mobicents.servlet.sip.core.message.MobicentsSipServletMessage;
 import org.mobicents.servlet.sip.core.message.MobicentsSipServletRequest;
+import org.mobicents.servlet.sip.core.replication.ReplicationInput;
+import org.mobicents.servlet.sip.core.replication.ReplicationOutput;
 import org.mobicents.servlet.sip.core.session.MobicentsSipApplicationSession;
 import org.mobicents.servlet.sip.core.session.MobicentsSipSession;
 import org.mobicents.servlet.sip.core.session.MobicentsSipSessionKey;
@@ -119,10 +124,10 @@ public class B2buaHelperImpl implements MobicentsB2BUAHelper, Serializable {
 		CONTACT_FORBIDDEN_PARAMETER.add("lr");
 	}
 	
-	//Map to handle linked sessions
-	private Map<MobicentsSipSessionKey, MobicentsSipSessionKey> sessionMap = null;	
-	//Map to handle linked derived sessions
-	private Map<String, String> derivedSessionMap = null;
+	//Map to handle linked sessions, replicated through writeObject
+	private transient Map<MobicentsSipSessionKey, MobicentsSipSessionKey> sessionMap = null;	
+	//Map to handle linked derived sessions, replicated through writeObject
+	private transient Map<String, String> derivedSessionMap = null;
 
 	//Map to handle responses to original request and cancel on original request
 	// Issue 1550 http://code.google.com/p/mobicents/issues/detail?id=1550
@@ -211,7 +216,7 @@ public class B2buaHelperImpl implements MobicentsB2BUAHelper, Serializable {
 			
 			// cater to http://code.google.com/p/sipservlets/issues/detail?id=31 to be able to set the rport in applications
 			final SipApplicationDispatcher sipApplicationDispatcher = sipFactoryImpl.getSipApplicationDispatcher();
-			final String branch = JainSipUtils.createBranch(appSession.getKey().getId(),  sipApplicationDispatcher.getHashFromApplicationName(appSession.getKey().getApplicationName()));
+			final String branch = JainSipUtils.createBranch(sipApplicationDispatcher, appSession.getKey().getId(), appSession.getKey().getApplicationName());
 			ViaHeader viaHeader = JainSipUtils.createViaHeader(
     				sipFactoryImpl.getSipNetworkInterfaceManager(), newRequest, branch, session.getOutboundInterface());
 			newRequest.addHeader(viaHeader);
@@ -257,7 +262,7 @@ public class B2buaHelperImpl implements MobicentsB2BUAHelper, Serializable {
 				// if a sip load balancer is present in front of the server, the contact header is the one from the sip lb
 				// so that the subsequent requests can be failed over
 				if(sipFactoryImpl.isUseLoadBalancer()) {
-					final SipLoadBalancer loadBalancerToUse = sipFactoryImpl.getLoadBalancerToUse();
+					final SipLoadBalancer loadBalancerToUse = sipFactoryImpl.getLoadBalancerToUse(appSession.getKey().getId(), callIdHeader.getCallId());
 					javax.sip.address.SipURI sipURI = sipFactoryImpl.getAddressFactory().createSipURI(fromName, loadBalancerToUse.getAddress().getHostAddress());
 					sipURI.setHost(loadBalancerToUse.getAddress().getHostAddress());
 					sipURI.setPort(loadBalancerToUse.getSipPort());			
@@ -1069,4 +1074,41 @@ public class B2buaHelperImpl implements MobicentsB2BUAHelper, Serializable {
 	public void setOriginalRequestMap(Map<SipServletRequestImpl, SipServletRequestImpl> originalRequestsMap) {
 		this.originalRequestMap =  originalRequestsMap;
 	}
+
+	// every linked session key and derived session id appears twice in the maps, 
+	// the codec writes each once and gives back a single instance for both entries
+	private void writeObject(ObjectOutputStream objectOutput) throws IOException {
+		objectOutput.defaultWriteObject();
+		final ReplicationOutput out = new ReplicationOutput(objectOutput);
+		final List<Entry<MobicentsSipSessionKey, MobicentsSipSessionKey>> sessions = 
+			new ArrayList<Entry<MobicentsSipSessionKey, MobicentsSipSessionKey>>(sessionMap.entrySet());
+		out.writeVarInt(sessions.size());
+		for (Entry<MobicentsSipSessionKey, MobicentsSipSessionKey> entry : sessions) {
+			out.writeSipSessionKey(entry.getKey());
+			out.writeSipSessionKey(entry.getValue());
+		}
+		final List<Entry<String, String>> derivedSessions = new ArrayList<Entry<String, String>>(derivedSessionMap.entrySet());
+		out.writeVarInt(derivedSessions.size());
+		for (Entry<String, String> entry : derivedSessions) {
+			out.writeInternedString(entry.getKey());
+			out.writeInternedString(entry.getValue());
+		}
+	}
+
+	private void readObject(ObjectInputStream objectInput) throws IOException, ClassNotFoundException {
+		objectInput.defaultReadObject();
+		final ReplicationInput in = new ReplicationInput(objectInput);
+		int size = in.readVarInt();
+		sessionMap = new ConcurrentHashMap<MobicentsSipSessionKey, MobicentsSipSessionKey>();
+		for (int i = 0; i < size; i++) {
+			final MobicentsSipSessionKey key = in.readSipSessionKey();
+			sessionMap.put(key, in.readSipSessionKey());
+		}
+		size = in.readVarInt();
+		derivedSessionMap = new ConcurrentHashMap<String, String>();
+		for (int i = 0; i < size; i++) {
+			final String key = in.readInternedString();
+			derivedSessionMap.put(key, in.readInternedString());
+		}
+	}
 }
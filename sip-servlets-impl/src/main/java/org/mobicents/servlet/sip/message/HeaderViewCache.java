@@ -0,0 +1,245 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.servlet.sip.message;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import javax.sip.header.Header;
+import javax.sip.message.Message;
+
+import org.mobicents.servlet.sip.address.ParameterableImpl;
+
+/**
+ * Per message cache of the Address and Parameterable views handed out by {@link SipServletMessageImpl}, so that
+ * an application reading the same header several times doesn't get it parsed and wrapped each time.
+ *
+ * A cached view is only returned while it still reflects the message : the JAIN SIP headers it was built from
+ * must still be the ones of the message (adding, setting or removing a header replaces them), the committed state
+ * of the message must be the same and none of the cached views must have been modified by the application since
+ * a modification through one view may not be visible through the others. Otherwise the cache is cleared and the
+ * view built again.
+ */
+final class HeaderViewCache {
+	static final int ADDRESS = 0;
+	static final int ADDRESS_LIST = 1;
+	static final int PARAMETERABLE = 2;
+	static final int PARAMETERABLE_LIST = 3;
+
+	@SuppressWarnings("unchecked")
+	private final Map<String, Entry>[] entriesByKind = new Map[4];
+	// all the entries, to check the views for modifications without allocating an iterator
+	private final List<Entry> entries = new ArrayList<Entry>(4);
+
+	/**
+	 * @param kind the kind of view
+	 * @param name the header name as searched in the message
+	 * @param message the message the view was built from
+	 * @param committed whether the message is currently committed
+	 * @return the cached views, null if there are none or they don't reflect the message anymore
+	 */
+	synchronized ParameterableImpl[] get(int kind, String name, Message message, boolean committed) {
+		if(entries.isEmpty()) {
+			return null;
+		}
+		for (int i = 0; i < entries.size(); i++) {
+			if(entries.get(i).isModified()) {
+				clear();
+				return null;
+			}
+		}
+		final Map<String, Entry> entriesByName = entriesByKind[kind];
+		if(entriesByName == null) {
+			return null;
+		}
+		final Entry entry = entriesByName.get(name);
+		if(entry == null) {
+			return null;
+		}
+		if(entry.committed != committed || !entry.matches(kind, name, message)) {
+			entriesByName.remove(name);
+			entries.remove(entry);
+			return null;
+		}
+		return entry.views;
+	}
+
+	synchronized void put(int kind, String name, Header[] headers, ParameterableImpl[] views, boolean committed) {
+		Map<String, Entry> entriesByName = entriesByKind[kind];
+		if(entriesByName == null) {
+			entriesByName = new HashMap<String, Entry>(4);
+			entriesByKind[kind] = entriesByName;
+		}
+		final Entry entry = new Entry(headers, views, committed);
+		final Entry previousEntry = entriesByName.put(name, entry);
+		if(previousEntry != null) {
+			entries.remove(previousEntry);
+		}
+		entries.add(entry);
+	}
+
+	synchronized void clear() {
+		for (int i = 0; i < entriesByKind.length; i++) {
+			if(entriesByKind[i] != null) {
+				entriesByKind[i].clear();
+			}
+		}
+		entries.clear();
+	}
+
+	private static final class Entry {
+		private final Header[] headers;
+		private final ParameterableImpl[] views;
+		private final int[] modificationCounts;
+		private final boolean committed;
+
+		Entry(Header[] headers, ParameterableImpl[] views, boolean committed) {
+			this.headers = headers;
+			this.views = views;
+			this.committed = committed;
+			this.modificationCounts = new int[views.length];
+			for (int i = 0; i < views.length; i++) {
+				modificationCounts[i] = views[i].getModificationCount();
+			}
+		}
+
+		boolean isModified() {
+			for (int i = 0; i < views.length; i++) {
+				if(views[i].getModificationCount() != modificationCounts[i]) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@SuppressWarnings("unchecked")
+		boolean matches(int kind, String name, Message message) {
+			if(kind == ADDRESS || kind == PARAMETERABLE) {
+				// single views are built from the first header only
+				return message.getHeader(name) == headers[0];
+			}
+			final ListIterator<Header> messageHeaders = message.getHeaders(name);
+			int i = 0;
+			while (messageHeaders != null && messageHeaders.hasNext()) {
+				if(i >= headers.length || messageHeaders.next() != headers[i]) {
+					return false;
+				}
+				i++;
+			}
+			return i == headers.length;
+		}
+	}
+
+	/**
+	 * Iterator over cached views. The views are shared by the iterators so modifying the iterator doesn't modify 
+	 * them nor the message : they are copied on the first modification and the iteration goes on over the copy.
+	 */
+	static final class ViewListIterator<T> implements ListIterator<T> {
+		private final ParameterableImpl[] views;
+		// null until the iterator is modified
+		private List<T> copy;
+		private int cursor;
+		private int lastReturned = -1;
+
+		ViewListIterator(ParameterableImpl[] views) {
+			this.views = views;
+		}
+
+		private int size() {
+			return copy == null ? views.length : copy.size();
+		}
+
+		@SuppressWarnings("unchecked")
+		private T get(int index) {
+			return copy == null ? (T) views[index] : copy.get(index);
+		}
+
+		@SuppressWarnings("unchecked")
+		private List<T> copy() {
+			if(copy == null) {
+				copy = new ArrayList<T>(views.length);
+				for (ParameterableImpl view : views) {
+					copy.add((T) view);
+				}
+			}
+			return copy;
+		}
+
+		public boolean hasNext() {
+			return cursor < size();
+		}
+
+		public T next() {
+			if(cursor >= size()) {
+				throw new NoSuchElementException();
+			}
+			lastReturned = cursor++;
+			return get(lastReturned);
+		}
+
+		public boolean hasPrevious() {
+			return cursor > 0;
+		}
+
+		public T previous() {
+			if(cursor <= 0) {
+				throw new NoSuchElementException();
+			}
+			lastReturned = --cursor;
+			return get(lastReturned);
+		}
+
+		public int nextIndex() {
+			return cursor;
+		}
+
+		public int previousIndex() {
+			return cursor - 1;
+		}
+
+		public void remove() {
+			if(lastReturned < 0) {
+				throw new IllegalStateException();
+			}
+			copy().remove(lastReturned);
+			if(lastReturned < cursor) {
+				cursor--;
+			}
+			lastReturned = -1;
+		}
+
+		public void set(T e) {
+			if(lastReturned < 0) {
+				throw new IllegalStateException();
+			}
+			copy().set(lastReturned, e);
+		}
+
+		public void add(T e) {
+			copy().add(cursor++, e);
+			lastReturned = -1;
+		}
+	}
+}
@@ -30,6 +30,7 @@ import java.text.ParseException;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.Set;
+import java.util.concurrent.Executor;
 
 import javax.servlet.http.HttpSession;
 import javax.servlet.sip.ServletTimer;
@@ -334,9 +335,17 @@ public class MobicentsSipApplicationSessionFacade implements
 		sipApplicationSession.acquire();
 	}
 
+	public boolean tryAcquire() {
+		return sipApplicationSession.tryAcquire();
+	}
+
 	public void release() {
 		sipApplicationSession.release();
 	}
+
+	public Executor getMailbox() {
+		return sipApplicationSession.getMailbox();
+	}
 	
 	public boolean isOrphan() {
 		return sipApplicationSession.isOrphan();
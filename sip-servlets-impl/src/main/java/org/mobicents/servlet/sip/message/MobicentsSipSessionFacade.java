@@ -518,6 +518,10 @@ public class MobicentsSipSessionFacade implements MobicentsSipSession, Serializa
 		sipSession.acquire();
 	}
 
+	public boolean tryAcquire() {
+		return sipSession.tryAcquire();
+	}
+
 	public void release() {
 		sipSession.release();
 	}
@@ -74,6 +74,7 @@ import org.mobicents.servlet.sip.JainSipUtils;
 import org.mobicents.servlet.sip.address.AddressImpl;
 import org.mobicents.servlet.sip.address.AddressImpl.ModifiableRule;
 import org.mobicents.servlet.sip.address.GenericURIImpl;
+import org.mobicents.servlet.sip.address.ParsedTemplateCache;
 import org.mobicents.servlet.sip.address.SipURIImpl;
 import org.mobicents.servlet.sip.address.TelURLImpl;
 import org.mobicents.servlet.sip.address.URIImpl;
@@ -83,6 +84,7 @@ import org.mobicents.servlet.sip.core.MobicentsSipFactory;
 import org.mobicents.servlet.sip.core.MobicentsSipServletMessageFactory;
 import org.mobicents.servlet.sip.core.SipApplicationDispatcher;
 import org.mobicents.servlet.sip.core.SipContext;
+import org.mobicents.servlet.sip.core.SipLoadBalancerSelector;
 import org.mobicents.servlet.sip.core.SipNetworkInterfaceManager;
 import org.mobicents.servlet.sip.core.dispatchers.MessageDispatcher;
 import org.mobicents.servlet.sip.core.message.OutboundProxy;
@@ -110,6 +112,7 @@ public class SipFactoryImpl implements MobicentsSipFactory,  Externalizable {
 	private boolean useLoadBalancer = false;
 	private boolean routeOrphanRequests = false;
 	private SipLoadBalancer loadBalancerToUse = null;
+	private transient SipLoadBalancerSelector loadBalancerSelector = new SipLoadBalancerSelector();
 	
 	private static boolean initialized;
 	public static AddressFactory addressFactory;
@@ -117,6 +120,37 @@ public class SipFactoryImpl implements MobicentsSipFactory,  Externalizable {
 	public static SipFactory sipFactory;
 	public static MessageFactory messageFactory;
 	
+	public static final String PARSE_CACHE_SIZE = "org.mobicents.servlet.sip.parseCacheSize";
+	private static final int DEFAULT_PARSE_CACHE_SIZE = 1024;
+	// templates of what is parsed from the strings passed again and again, callers get a copy of the template
+	private static final ParsedTemplateCache<javax.sip.address.URI> uriCache = new ParsedTemplateCache<javax.sip.address.URI>(
+			new ParsedTemplateCache.Parser<javax.sip.address.URI>() {
+				public javax.sip.address.URI parse(String value) throws ParseException {
+					return addressFactory.createURI(value);
+				}
+				public javax.sip.address.URI copy(javax.sip.address.URI template) {
+					return (javax.sip.address.URI) template.clone();
+				}
+			}, Integer.getInteger(PARSE_CACHE_SIZE, DEFAULT_PARSE_CACHE_SIZE));
+	private static final ParsedTemplateCache<javax.sip.address.Address> addressCache = new ParsedTemplateCache<javax.sip.address.Address>(
+			new ParsedTemplateCache.Parser<javax.sip.address.Address>() {
+				public javax.sip.address.Address parse(String value) throws ParseException {
+					return addressFactory.createAddress(value);
+				}
+				public javax.sip.address.Address copy(javax.sip.address.Address template) {
+					return (javax.sip.address.Address) template.clone();
+				}
+			}, Integer.getInteger(PARSE_CACHE_SIZE, DEFAULT_PARSE_CACHE_SIZE));
+	private static final ParsedTemplateCache<Header> contactHeaderCache = new ParsedTemplateCache<Header>(
+			new ParsedTemplateCache.Parser<Header>() {
+				public Header parse(String value) throws ParseException {
+					return headerFactory.createHeader(ContactHeader.NAME, value);
+				}
+				public Header copy(Header template) {
+					return (Header) template.clone();
+				}
+			}, Integer.getInteger(PARSE_CACHE_SIZE, DEFAULT_PARSE_CACHE_SIZE));
+	
 	private MobicentsSipServletMessageFactory mobicentsSipServletMessageFactory;
 
 	public void initialize(String pathName, boolean prettyEncoding) {
@@ -161,6 +195,47 @@ public class SipFactoryImpl implements MobicentsSipFactory,  Externalizable {
 	private transient SipApplicationDispatcher sipApplicationDispatcher = null;
 	
 	public SipFactoryImpl() {}
+	
+	/**
+	 * @param uri the string to parse
+	 * @return a JAIN SIP URI the caller is free to modify, taken from the parse cache when the string was already parsed
+	 * @throws ParseException
+	 */
+	public static javax.sip.address.URI parseURI(String uri) throws ParseException {
+		return uriCache.parse(uri);
+	}
+	
+	/**
+	 * @param address the string to parse
+	 * @return a JAIN SIP Address the caller is free to modify, taken from the parse cache when the string was already parsed
+	 * @throws ParseException
+	 */
+	public static javax.sip.address.Address parseAddress(String address) throws ParseException {
+		return addressCache.parse(address);
+	}
+	
+	/**
+	 * @param value the string to parse
+	 * @return a Contact header the caller is free to modify, taken from the parse cache when the string was already parsed
+	 * @throws ParseException
+	 */
+	public static Header parseContactHeader(String value) throws ParseException {
+		return contactHeaderCache.parse(value);
+	}
+	
+	/**
+	 * @return the number of uris, addresses and headers copied from a cached template instead of being parsed
+	 */
+	public static long getParseCacheHitCount() {
+		return uriCache.getHitCount() + addressCache.getHitCount() + contactHeaderCache.getHitCount();
+	}
+	
+	/**
+	 * @return the number of uris, addresses and headers that had to be parsed
+	 */
+	public static long getParseCacheMissCount() {
+		return uriCache.getMissCount() + addressCache.getMissCount() + contactHeaderCache.getMissCount();
+	}
 	/**
 	 * Dafault constructor
 	 * @param sipApplicationDispatcher 
@@ -378,7 +453,7 @@ public class SipFactoryImpl implements MobicentsSipFactory,  Externalizable {
 		
 		// cater to http://code.google.com/p/sipservlets/issues/detail?id=31 to be able to set the rport in applications
 		final SipApplicationDispatcher sipApplicationDispatcher = getSipApplicationDispatcher();
-		final String branch = JainSipUtils.createBranch(originalAppSession.getKey().getId(),  sipApplicationDispatcher.getHashFromApplicationName(originalAppSession.getKey().getApplicationName()));
+		final String branch = JainSipUtils.createBranch(sipApplicationDispatcher, originalAppSession.getKey().getId(), originalAppSession.getKey().getApplicationName());
 		ViaHeader viaHeader = JainSipUtils.createViaHeader(
 				getSipNetworkInterfaceManager(), newRequest, branch, null);
 		newRequest.addHeader(viaHeader);
@@ -397,6 +472,29 @@ public class SipFactoryImpl implements MobicentsSipFactory,  Externalizable {
 		// Remove the record route headers. This is a new call leg.
 		newRequest.removeHeader(RecordRouteHeader.NAME);
 		
+		// the call id is set before the contact so that the load balancer picked for it is the one the request will be routed to 
+		try {
+			if(!sameCallId) {
+				//Creating new call id
+				final Iterator<MobicentsExtendedListeningPoint> listeningPointsIterator = getSipNetworkInterfaceManager().getExtendedListeningPoints();				
+				if(!listeningPointsIterator.hasNext()) {				
+					throw new IllegalStateException("There is no SIP connectors available to create the request");
+				}
+				final MobicentsExtendedListeningPoint extendedListeningPoint = listeningPointsIterator.next();
+				final CallIdHeader callIdHeader = sipApplicationDispatcher.getCallId(extendedListeningPoint, null);
+				newRequest.setHeader(callIdHeader);
+				if(logger.isDebugEnabled()) {
+					logger.debug("not reusing same call id, new call id is " + callIdHeader);
+				}
+			} else {
+				if(logger.isDebugEnabled()) {
+					logger.debug("reusing same call id = " + ((MessageExt)newRequest).getCallIdHeader().getCallId());
+				}
+			}
+		} catch (ParseException ex) {
+			throw new IllegalArgumentException("Illegal arg ecnountered while creatigng b2bua", ex);
+		}
+		
 		//For non-REGISTER requests, the Contact header field is not copied 
 		//but is populated by the container as usual
 		if(!Request.REGISTER.equalsIgnoreCase(newRequest.getMethod())) {
@@ -420,6 +518,8 @@ public class SipFactoryImpl implements MobicentsSipFactory,  Externalizable {
 						// so that the subsequent requests can be failed over
 						if(fromName != null) {
 							if(useLoadBalancer) {
+								final SipLoadBalancer loadBalancerToUse = getLoadBalancerToUse(originalAppSession.getKey().getId(), 
+										((MessageExt)newRequest).getCallIdHeader().getCallId());
 								javax.sip.address.SipURI sipURI = addressFactory.createSipURI(fromName, loadBalancerToUse.getAddress().getHostAddress());
 								sipURI.setHost(loadBalancerToUse.getAddress().getHostAddress());
 								sipURI.setPort(loadBalancerToUse.getSipPort());
@@ -451,24 +551,6 @@ public class SipFactoryImpl implements MobicentsSipFactory,  Externalizable {
 			}
 		}		
 		try {
-			if(!sameCallId) {
-				//Creating new call id
-				final Iterator<MobicentsExtendedListeningPoint> listeningPointsIterator = getSipNetworkInterfaceManager().getExtendedListeningPoints();				
-				if(!listeningPointsIterator.hasNext()) {				
-					throw new IllegalStateException("There is no SIP connectors available to create the request");
-				}
-				final MobicentsExtendedListeningPoint extendedListeningPoint = listeningPointsIterator.next();
-				final CallIdHeader callIdHeader = sipApplicationDispatcher.getCallId(extendedListeningPoint, null);
-				newRequest.setHeader(callIdHeader);
-				if(logger.isDebugEnabled()) {
-					logger.debug("not reusing same call id, new call id is " + callIdHeader);
-				}
-			} else {
-				if(logger.isDebugEnabled()) {
-					logger.debug("reusing same call id = " + ((MessageExt)newRequest).getCallIdHeader().getCallId());
-				}
-			}
-									
 			newFromHeader.setTag(ApplicationRoutingHeaderComposer.getHash(getSipApplicationDispatcher(), originalAppSession.getKey().getApplicationName(), originalAppSession.getKey().getId()));
 			
 			final MobicentsSipSessionKey key = SessionManagerUtil.getSipSessionKey(originalAppSession.getKey().getId(), originalAppSession.getKey().getApplicationName(), newRequest, false);
@@ -531,8 +613,7 @@ public class SipFactoryImpl implements MobicentsSipFactory,  Externalizable {
 //			throw new ServletParseException("The uri " + uri + " is not valid");
 //		}
 		try {
-			javax.sip.address.URI jainUri = SipFactoryImpl.addressFactory
-					.createURI(uri);
+			javax.sip.address.URI jainUri = parseURI(uri);
 			if (jainUri instanceof javax.sip.address.SipURI) {
 				return new SipURIImpl(
 						(javax.sip.address.SipURI) jainUri, ModifiableRule.Modifiable);
@@ -713,6 +794,7 @@ public class SipFactoryImpl implements MobicentsSipFactory,  Externalizable {
 				// if a sip load balancer is present in front of the server, the contact header is the one from the sip lb
 				// so that the subsequent requests can be failed over
 				if(useLoadBalancer) {
+					final SipLoadBalancer loadBalancerToUse = getLoadBalancerToUse(mobicentsSipApplicationSession.getKey().getId(), callIdHeader.getCallId());
 					javax.sip.address.SipURI sipURI = SipFactoryImpl.addressFactory.createSipURI(fromName, loadBalancerToUse.getAddress().getHostAddress());
 					sipURI.setHost(loadBalancerToUse.getAddress().getHostAddress());
 					sipURI.setPort(loadBalancerToUse.getSipPort());			
@@ -747,7 +829,7 @@ public class SipFactoryImpl implements MobicentsSipFactory,  Externalizable {
 			
 			// cater to http://code.google.com/p/sipservlets/issues/detail?id=31 to be able to set the rport in applications
 			final SipApplicationDispatcher sipApplicationDispatcher = getSipApplicationDispatcher();
-			final String branch = JainSipUtils.createBranch(sipApplicationSessionKey.getId(),  sipApplicationDispatcher.getHashFromApplicationName(sipApplicationSessionKey.getApplicationName()));
+			final String branch = JainSipUtils.createBranch(sipApplicationDispatcher, sipApplicationSessionKey.getId(), sipApplicationSessionKey.getApplicationName());
 			ViaHeader viaHeader = JainSipUtils.createViaHeader(
     				getSipNetworkInterfaceManager(), requestToWrap, branch, session.getOutboundInterface());
 			requestToWrap.addHeader(viaHeader);
@@ -767,7 +849,7 @@ public class SipFactoryImpl implements MobicentsSipFactory,  Externalizable {
 	 */
 	public Parameterable createParameterable(String value) throws ServletParseException {
 		try {			 
-			Header header = SipFactoryImpl.headerFactory.createHeader(ContactHeader.NAME, value);
+			Header header = parseContactHeader(value);
 			return SipServletMessageImpl.createParameterable(header, SipServletMessageImpl.getFullHeaderName(header.getName()), true);
 		} catch (ParseException e) {
 			try {
@@ -880,6 +962,27 @@ public class SipFactoryImpl implements MobicentsSipFactory,  Externalizable {
 		}
 	}
 
+	/**
+	 * @param applicationSessionId the id of the sip application session the request belongs to, can be null
+	 * @param callId the Call-ID of the request, can be null
+	 * @return the load balancer picked by the {@link SipLoadBalancerSelector} for this session or call, 
+	 * the loadBalancerToUse if no live balancer is known to the selector
+	 */
+	public SipLoadBalancer getLoadBalancerToUse(String applicationSessionId, String callId) {
+		final SipLoadBalancer selectedLoadBalancer = loadBalancerSelector.select(applicationSessionId, callId);
+		if(selectedLoadBalancer != null) {
+			return selectedLoadBalancer;
+		}
+		return loadBalancerToUse;
+	}
+
+	/**
+	 * @return the selector of the load balancer to use among the live ones
+	 */
+	public SipLoadBalancerSelector getLoadBalancerSelector() {
+		return loadBalancerSelector;
+	}
+
 	/**
 	 * @return the useLoadBalancer
 	 */
@@ -893,6 +996,16 @@ public class SipFactoryImpl implements MobicentsSipFactory,  Externalizable {
 	 * @throws ParseException
 	 */
 	public void addLoadBalancerRouteHeader(Request request) {
+		addLoadBalancerRouteHeader(request, null);
+	}
+	
+	/**
+	 * 
+	 * @param request
+	 * @param applicationSessionId the id of the sip application session the request belongs to, 
+	 * used to keep sending its requests through the same load balancer
+	 */
+	public void addLoadBalancerRouteHeader(Request request, String applicationSessionId) {
 		try {
 			String transport = JainSipUtils.findTransport(request);
 			String host = null;
@@ -903,6 +1016,7 @@ public class SipFactoryImpl implements MobicentsSipFactory,  Externalizable {
 					//This is a WebSocket request through LB, no need to add Route header.
 					return;
 				} else {
+					final SipLoadBalancer loadBalancerToUse = getLoadBalancerToUse(applicationSessionId, ((MessageExt)request).getCallIdHeader().getCallId());
 					host = loadBalancerToUse.getAddress().getHostAddress();
 					port = loadBalancerToUse.getSipPort();
 				}
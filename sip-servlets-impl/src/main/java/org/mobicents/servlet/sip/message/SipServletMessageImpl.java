@@ -41,6 +41,7 @@ import java.util.ListIterator;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NoSuchElementException;
 import java.util.StringTokenizer;
 import java.util.Vector;
 import java.util.concurrent.ConcurrentHashMap;
@@ -88,9 +89,12 @@ import org.mobicents.servlet.sip.JainSipUtils;
 import org.mobicents.servlet.sip.address.AddressImpl;
 import org.mobicents.servlet.sip.address.AddressImpl.ModifiableRule;
 import org.mobicents.servlet.sip.address.ParameterableHeaderImpl;
+import org.mobicents.servlet.sip.address.ParameterableImpl;
 import org.mobicents.servlet.sip.core.MobicentsExtendedListeningPoint;
 import org.mobicents.servlet.sip.core.SipContext;
 import org.mobicents.servlet.sip.core.message.MobicentsSipServletMessage;
+import org.mobicents.servlet.sip.core.replication.ReplicationInput;
+import org.mobicents.servlet.sip.core.replication.ReplicationOutput;
 import org.mobicents.servlet.sip.core.security.SipPrincipal;
 import org.mobicents.servlet.sip.core.session.MobicentsSipApplicationSession;
 import org.mobicents.servlet.sip.core.session.MobicentsSipSession;
@@ -165,6 +169,9 @@ public abstract class SipServletMessageImpl implements MobicentsSipServletMessag
 	
 	protected transient String method;
 	
+	// lazily created, the parsed header views are rebuilt after failover
+	private transient HeaderViewCache headerViewCache;
+	
 	// needed for orphan routing
 	boolean orphan;
 	private String appSessionId;
@@ -459,27 +466,33 @@ public abstract class SipServletMessageImpl implements MobicentsSipServletMessag
 //					+ "] cant be parsed to address, wrong content type!!!");
 //		}
 		String nameToSearch = getCorrectHeaderName(hName);
-		ListIterator<Header> headers = (ListIterator<Header>) this.message
-				.getHeaders(nameToSearch);
-		ListIterator<Header> lit = headers;
+		final boolean committed = this.isCommitted();
+		final ParameterableImpl[] cachedViews = getHeaderViewCache().get(HeaderViewCache.ADDRESS, nameToSearch, message, committed);
+		if(cachedViews != null) {
+			return (Address) cachedViews[0];
+		}
+		Header first = this.message.getHeader(nameToSearch);
 
-		if (lit != null && lit.hasNext()) {
-			Header first = lit.next();
+		if (first != null) {
 			if (first instanceof HeaderAddress) {
 				try {
-					if(this.isCommitted()) {
-						return new AddressImpl((HeaderAddress) first, ModifiableRule.NotModifiable);
+					final AddressImpl address;
+					if(committed) {
+						address = new AddressImpl((HeaderAddress) first, ModifiableRule.NotModifiable);
 					} else {
-						return new AddressImpl((HeaderAddress) first, getModifiableRule(hName));
+						address = new AddressImpl((HeaderAddress) first, getModifiableRule(hName));
 					}
+					getHeaderViewCache().put(HeaderViewCache.ADDRESS, nameToSearch, new Header[] {first}, new ParameterableImpl[] {address}, committed);
+					return address;
 				} catch (ParseException e) {
 					throw new ServletParseException("Bad address " + first);
 				}
 			} else {
+				// the address is parsed from the header value so changes to its URI can't be tracked, it isn't cached
 				Parameterable parametrable = createParameterable(first, first.getName(), message instanceof Request);
 				try {
 					logger.debug("parametrable Value " + parametrable.getValue());					
-					if(this.isCommitted()) {
+					if(committed) {
 						return new AddressImpl(SipFactoryImpl.addressFactory.createAddress(parametrable.getValue()), ((ParameterableHeaderImpl)parametrable).getInternalParameters(), ModifiableRule.NotModifiable);
 					} else {
 						return new AddressImpl(SipFactoryImpl.addressFactory.createAddress(parametrable.getValue()), ((ParameterableHeaderImpl)parametrable).getInternalParameters(), getModifiableRule(hName));
@@ -508,12 +521,21 @@ public abstract class SipServletMessageImpl implements MobicentsSipServletMessag
 //			throw new ServletParseException(
 //					"Header [" + hName + "] is not address type header");
 //		}
-		LinkedList<Address> retval = new LinkedList<Address>();
 		String nameToSearch = getCorrectHeaderName(hName);
+		final boolean committed = this.isCommitted();
+		final ParameterableImpl[] cachedViews = getHeaderViewCache().get(HeaderViewCache.ADDRESS_LIST, nameToSearch, message, committed);
+		if(cachedViews != null) {
+			return new HeaderViewCache.ViewListIterator<Address>(cachedViews);
+		}
+		ArrayList<Address> retval = new ArrayList<Address>();
+		ArrayList<Header> headers = new ArrayList<Header>();
+		// only the addresses wrapping the headers reflect all the changes made to them and can be cached
+		boolean cacheable = true;
 
 		for (Iterator<Header> it = this.message.getHeaders(nameToSearch); it
 				.hasNext();) {
 			Header header = (Header) it.next();
+			headers.add(header);
 			if (header instanceof HeaderAddress) {
 				HeaderAddress aph = (HeaderAddress) header;
 				try {
@@ -524,6 +546,7 @@ public abstract class SipServletMessageImpl implements MobicentsSipServletMessag
 					throw new ServletParseException("Bad header", ex);
 				}
 			}  else {
+				cacheable = false;
 				Parameterable parametrable = createParameterable(header, header.getName(), message instanceof Request);
 				try {
 					AddressImpl addressImpl = new AddressImpl(SipFactoryImpl.addressFactory.createAddress(parametrable.getValue()), ((ParameterableHeaderImpl)parametrable).getInternalParameters(), getModifiableRule(hName));
@@ -533,6 +556,11 @@ public abstract class SipServletMessageImpl implements MobicentsSipServletMessag
 				}
 			}
 		}
+		if(cacheable && !retval.isEmpty()) {
+			final ParameterableImpl[] views = retval.toArray(new ParameterableImpl[retval.size()]);
+			getHeaderViewCache().put(HeaderViewCache.ADDRESS_LIST, nameToSearch, headers.toArray(new Header[headers.size()]), views, committed);
+			return new HeaderViewCache.ViewListIterator<Address>(views);
+		}
 		return retval.listIterator();
 	}
 
@@ -839,9 +867,9 @@ public abstract class SipServletMessageImpl implements MobicentsSipServletMessag
 
 		String nameToSearch = getCorrectHeaderName(name);
 		String value = null;
-		if (this.message.getHeader(nameToSearch) != null) {
-			value = ((SIPHeader) this.message.getHeader(nameToSearch))
-					.getValue();
+		final Header header = this.message.getHeader(nameToSearch);
+		if (header != null) {
+			value = ((SIPHeader) header).getValue();
 		}
 //		if(logger.isDebugEnabled()) {
 //			logger.debug("getHeader "+ name+ ", value="+ value	);
@@ -869,22 +897,11 @@ public abstract class SipServletMessageImpl implements MobicentsSipServletMessag
 	 * (non-Javadoc)
 	 * @see javax.servlet.sip.SipServletMessage#getHeaders(java.lang.String)
 	 */
+	@SuppressWarnings("unchecked")
 	public ListIterator<String> getHeaders(String name) {
 		String nameToSearch = getCorrectHeaderName(name);
-		ArrayList<String> result = new ArrayList<String>();
-
-		try {
-			ListIterator<Header> list = this.message.getHeaders(nameToSearch);
-			while (list != null && list.hasNext()) {
-				Header h = list.next();
-				result.add(((SIPHeader)h).getHeaderValue());
-			}
-		} catch (Exception e) {
-			logger.fatal("Couldnt fetch headers, original name[" + name
-					+ "], name searched[" + nameToSearch + "]", e);
-			return result.listIterator();
-		}
-		return result.listIterator();
+		// only the headers are copied, their values are read as the iteration goes
+		return new HeaderValueIterator(this.message.getHeaders(nameToSearch));
 	}
 
 	/*
@@ -922,8 +939,17 @@ public abstract class SipServletMessageImpl implements MobicentsSipServletMessag
 		if(h == null) {
 			return null;
 		}
-		
-		return createParameterable(h, getFullHeaderName(name), message instanceof Request);
+		// the value of an address header can be changed through the URI of an address without the view knowing it
+		if(h instanceof HeaderAddress) {
+			return createParameterable(h, getFullHeaderName(name), message instanceof Request);
+		}
+		final ParameterableImpl[] cachedViews = getHeaderViewCache().get(HeaderViewCache.PARAMETERABLE, nameToSearch, message, false);
+		if(cachedViews != null) {
+			return cachedViews[0];
+		}
+		final Parameterable parameterable = createParameterable(h, getFullHeaderName(name), message instanceof Request);
+		getHeaderViewCache().put(HeaderViewCache.PARAMETERABLE, nameToSearch, new Header[] {h}, new ParameterableImpl[] {(ParameterableImpl) parameterable}, false);
+		return parameterable;
 	}
 
 	/*
@@ -933,22 +959,48 @@ public abstract class SipServletMessageImpl implements MobicentsSipServletMessag
 	public ListIterator<Parameterable> getParameterableHeaders(String name)
 			throws ServletParseException {
 
+		final String nameToSearch = getCorrectHeaderName(name);
+		if(isParameterable(name)) {
+			final ParameterableImpl[] cachedViews = getHeaderViewCache().get(HeaderViewCache.PARAMETERABLE_LIST, nameToSearch, message, false);
+			if(cachedViews != null) {
+				return new HeaderViewCache.ViewListIterator<Parameterable>(cachedViews);
+			}
+		}
 		ListIterator<Header> headers = this.message
-				.getHeaders(getCorrectHeaderName(name));
+				.getHeaders(nameToSearch);
 
 		ArrayList<Parameterable> result = new ArrayList<Parameterable>();
-
-		while (headers != null && headers.hasNext())
-			result.add(createParameterable(headers.next(),
+		ArrayList<Header> parsedHeaders = new ArrayList<Header>();
+		// the value of an address header can be changed through the URI of an address without the view knowing it
+		boolean cacheable = true;
+
+		while (headers != null && headers.hasNext()) {
+			Header header = headers.next();
+			parsedHeaders.add(header);
+			cacheable &= !(header instanceof HeaderAddress);
+			result.add(createParameterable(header,
 					getFullHeaderName(name), message instanceof Request));
+		}
 
 		if(!isParameterable(name)) {
 			throw new ServletParseException(name + " header is not parameterable !");
 		}			
 		
+		if(cacheable && !result.isEmpty()) {
+			final ParameterableImpl[] views = result.toArray(new ParameterableImpl[result.size()]);
+			getHeaderViewCache().put(HeaderViewCache.PARAMETERABLE_LIST, nameToSearch, parsedHeaders.toArray(new Header[parsedHeaders.size()]), views, false);
+			return new HeaderViewCache.ViewListIterator<Parameterable>(views);
+		}
 		return result.listIterator();
 	}
 	
+	private HeaderViewCache getHeaderViewCache() {
+		if(headerViewCache == null) {
+			headerViewCache = new HeaderViewCache();
+		}
+		return headerViewCache;
+	}
+	
 	/*
 	 * (non-Javadoc)
 	 * @see javax.servlet.sip.SipServletMessage#getProtocol()
@@ -2067,80 +2119,68 @@ public abstract class SipServletMessageImpl implements MobicentsSipServletMessag
 	 * @see java.io.Externalizable#readExternal(java.io.ObjectInput)
 	 */
 	public void readExternal(ObjectInput in) throws IOException,
+			ClassNotFoundException {
+		readReplicationState(new ReplicationInput(in));
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see java.io.Externalizable#writeExternal(java.io.ObjectOutput)
+	 */
+	public void writeExternal(ObjectOutput out) throws IOException {
+		writeReplicationState(new ReplicationOutput(out));
+	}
+	
+	/**
+	 * Read the state written by {@link #writeReplicationState(ReplicationOutput)}, 
+	 * subclasses read their own state after calling this method
+	 */
+	protected void readReplicationState(ReplicationInput in) throws IOException,
 			ClassNotFoundException {		
 		sipFactoryImpl = (SipFactoryImpl) in.readObject();
-		String sessionKeyString = in.readUTF();
-		if (sessionKeyString.length() > 0) {
-			try {
-				sessionKey = SessionManagerUtil.parseSipSessionKey(sessionKeyString);
-			} catch (ParseException e) {
-				throw new IllegalArgumentException("SIP Sesion Key " + sessionKeyString + " previously serialized could not be reparsed", e);
-			}
-		}
-		int attributesSize = in.readInt();
-		if(attributesSize > 0) {
-			Object[][] attributesArray = (Object[][] )in.readObject();
+		sessionKey = in.readSipSessionKey();
+		if(in.readBoolean()) {
 			attributes = new ConcurrentHashMap<String, Object>();
-			for (int i = 0; i < attributesSize; i++) {
-				String key = (String) attributesArray[0][i];
-				Object value = attributesArray[1][i];
-				attributes.put(key, value);
-			}
+			in.readAttributes(attributes);
 		}
 		if(in.readBoolean()) {
 			transactionApplicationData = (TransactionApplicationData) in.readObject();
 		}
-		headerForm = HeaderForm.valueOf(in.readUTF());
-		currentApplicationName = in.readUTF();
-		if(currentApplicationName.equals("")) {
-			currentApplicationName = null;
-		}
+		headerForm = in.readEnum(HeaderForm.class);
+		currentApplicationName = in.readInternedString();
 		isMessageSent = in.readBoolean();
 		if(ReplicationStrategy.EarlyDialog == StaticServiceHolder.sipStandardService.getReplicationStrategy()) {
-			transactionId = in.readUTF();
+			transactionId = in.readString();
 			if (logger.isDebugEnabled()) {
 				logger.debug("readExternal transactionId = " + transactionId);
 			}
 			if(transactionId != null) {
-				if(transactionId.equals("")) {
-					transactionId = null;
-				} else { 
-					transactionType = in.readBoolean();
-					if (logger.isDebugEnabled()) {
-						logger.debug("readExternal transactionType = " + transactionType);
-					}
+				transactionType = in.readBoolean();
+				if (logger.isDebugEnabled()) {
+					logger.debug("readExternal transactionType = " + transactionType);
 				}
 			}
 		}
+		message = in.readMessage();
 	}
 	
-	/*
-	 * (non-Javadoc)
-	 * @see java.io.Externalizable#writeExternal(java.io.ObjectOutput)
+	/**
+	 * Write the state of the message, subclasses write their own state after calling this method
 	 */
-	public void writeExternal(ObjectOutput out) throws IOException {
+	protected void writeReplicationState(ReplicationOutput out) throws IOException {
 		out.writeObject(sipFactoryImpl);
 		if(sessionKey != null) {
-			out.writeUTF(sessionKey.toString());
+			out.writeSipSessionKey(sessionKey);
+		} else if (sipSession != null) {
+			out.writeSipSessionKey(sipSession.getKey());
 		} else {
-			if (null == sipSession) {
-				out.writeUTF("");
-			} else {
-				out.writeUTF(sipSession.getId());
-			}
+			out.writeSipSessionKey(null);
 		}
 		if(attributes != null && attributes.size() > 0) {
-			out.writeInt(attributes.size());
-			Object[][] attributesArray = new Object[2][attributes.size()];
-			int i = 0;
-			for (Entry<String, Object> entry : attributes.entrySet()) {
-				attributesArray [0][i] = entry.getKey(); 
-				attributesArray [1][i] = entry.getValue();
-				i++;
-			}		
-			out.writeObject(attributesArray);
+			out.writeBoolean(true);
+			out.writeAttributes(attributes);
 		} else {
-			out.writeInt(0);
+			out.writeBoolean(false);
 		}
 		if(transactionApplicationData != null) {
 			out.writeBoolean(true);
@@ -2148,28 +2188,25 @@ public abstract class SipServletMessageImpl implements MobicentsSipServletMessag
 		} else {
 			out.writeBoolean(false);
 		}
-		out.writeUTF(headerForm.toString());
-		if(currentApplicationName != null) {
-			out.writeUTF(currentApplicationName);
-		} else {
-			out.writeUTF("");
-		}
+		out.writeEnum(headerForm);
+		out.writeInternedString(currentApplicationName);
 		out.writeBoolean(isMessageSent);		
 		if(ReplicationStrategy.EarlyDialog == StaticServiceHolder.sipStandardService.getReplicationStrategy()) {
 			if (logger.isDebugEnabled()) {
 				logger.debug("writeExternal transaction = " + transaction);
 			}
 			if(transaction == null) {
-				out.writeUTF("");
+				out.writeString(null);
 			} else {
 				if (logger.isDebugEnabled()) {
 					logger.debug("writeExternal transactionId = " + transaction.getBranchId() + " transactionType " + (transaction instanceof ServerTransaction));
 				}
-				out.writeUTF(transaction.getBranchId());
+				out.writeString(transaction.getBranchId());
 				out.writeBoolean(transaction instanceof ServerTransaction);
 			}
 		}
-		out.writeUTF(message.toString());
+		// raw bytes of the message, the subclasses don't have to reparse it from a string anymore
+		out.writeMessage(message);
 	}
 
 	/* (non-Javadoc)
@@ -2251,4 +2288,100 @@ public abstract class SipServletMessageImpl implements MobicentsSipServletMessag
 	public boolean isMessageSent() {
         return isMessageSent;
     }
+	
+	/**
+	 * Iterator over the values of the headers of a message, as they were when {@link #getHeaders(String)} was called.
+	 * The headers are copied when the iterator is created so that adding, setting or removing headers of the message
+	 * during the iteration doesn't affect it, but their values are only read when returned.
+	 * Modifying the iterator doesn't modify the message : the values are copied on the first modification 
+	 * and the iteration goes on over the copy.
+	 */
+	private static final class HeaderValueIterator implements ListIterator<String> {
+		private List<Header> headers;
+		// null until the iterator is modified
+		private List<String> values;
+		private int cursor;
+		private int lastReturned = -1;
+		
+		HeaderValueIterator(ListIterator<Header> headers) {
+			this.headers = new ArrayList<Header>();
+			while(headers != null && headers.hasNext()) {
+				this.headers.add(headers.next());
+			}
+		}
+		
+		private int size() {
+			return values == null ? headers.size() : values.size();
+		}
+		
+		private String get(int index) {
+			return values == null ? ((SIPHeader) headers.get(index)).getHeaderValue() : values.get(index);
+		}
+		
+		private List<String> values() {
+			if(values == null) {
+				values = new ArrayList<String>(headers.size());
+				for (Header header : headers) {
+					values.add(((SIPHeader) header).getHeaderValue());
+				}
+				headers = null;
+			}
+			return values;
+		}
+		
+		public boolean hasNext() {
+			return cursor < size();
+		}
+		
+		public String next() {
+			if(cursor >= size()) {
+				throw new NoSuchElementException();
+			}
+			lastReturned = cursor++;
+			return get(lastReturned);
+		}
+		
+		public boolean hasPrevious() {
+			return cursor > 0;
+		}
+		
+		public String previous() {
+			if(cursor <= 0) {
+				throw new NoSuchElementException();
+			}
+			lastReturned = --cursor;
+			return get(lastReturned);
+		}
+		
+		public int nextIndex() {
+			return cursor;
+		}
+		
+		public int previousIndex() {
+			return cursor - 1;
+		}
+		
+		public void remove() {
+			if(lastReturned < 0) {
+				throw new IllegalStateException();
+			}
+			values().remove(lastReturned);
+			if(lastReturned < cursor) {
+				cursor--;
+			}
+			lastReturned = -1;
+		}
+		
+		public void set(String e) {
+			if(lastReturned < 0) {
+				throw new IllegalStateException();
+			}
+			values().set(lastReturned, e);
+		}
+		
+		public void add(String e) {
+			values().add(cursor++, e);
+			lastReturned = -1;
+		}
+	}
 }
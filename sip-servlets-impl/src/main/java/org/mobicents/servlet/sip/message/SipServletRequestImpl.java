@@ -31,8 +31,6 @@ import gov.nist.javax.sip.stack.SIPTransaction;
 
 import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.ObjectInput;
-import java.io.ObjectOutput;
 import java.io.UnsupportedEncodingException;
 import java.text.ParseException;
 import java.util.ArrayList;
@@ -46,6 +44,7 @@ import java.util.Queue;
 import java.util.Random;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.Callable;
 
 import javax.servlet.ServletInputStream;
 import javax.servlet.sip.Address;
@@ -53,8 +52,10 @@ import javax.servlet.sip.AuthInfo;
 import javax.servlet.sip.B2buaHelper;
 import javax.servlet.sip.Parameterable;
 import javax.servlet.sip.Proxy;
+import javax.servlet.sip.SipApplicationSession;
 import javax.servlet.sip.SipServletRequest;
 import javax.servlet.sip.SipServletResponse;
+import javax.servlet.sip.SipSession;
 import javax.servlet.sip.SipSession.State;
 import javax.servlet.sip.SipURI;
 import javax.servlet.sip.TooManyHopsException;
@@ -76,6 +77,7 @@ import javax.sip.address.Hop;
 import javax.sip.address.TelURL;
 import javax.sip.header.AuthorizationHeader;
 import javax.sip.header.CSeqHeader;
+import javax.sip.header.CallIdHeader;
 import javax.sip.header.ContactHeader;
 import javax.sip.header.FromHeader;
 import javax.sip.header.Header;
@@ -96,6 +98,9 @@ import javax.sip.message.Response;
 import org.apache.log4j.Logger;
 import org.mobicents.ext.javax.sip.dns.DNSAwareRouter;
 import org.mobicents.ext.javax.sip.dns.DNSServerLocator;
+import org.mobicents.javax.servlet.sip.SendListener;
+import org.mobicents.javax.servlet.sip.SipApplicationSessionAsynchronousWork;
+import org.mobicents.javax.servlet.sip.SipSessionAsynchronousWork;
 import org.mobicents.servlet.sip.JainSipUtils;
 import org.mobicents.servlet.sip.SipConnector;
 import org.mobicents.servlet.sip.address.AddressImpl;
@@ -105,6 +110,7 @@ import org.mobicents.servlet.sip.address.SipURIImpl;
 import org.mobicents.servlet.sip.address.TelURLImpl;
 import org.mobicents.servlet.sip.address.URIImpl;
 import org.mobicents.servlet.sip.core.ApplicationRoutingHeaderComposer;
+import org.mobicents.servlet.sip.core.HopsLocatedListener;
 import org.mobicents.servlet.sip.core.MobicentsExtendedListeningPoint;
 import org.mobicents.servlet.sip.core.MobicentsSipServlet;
 import org.mobicents.servlet.sip.core.RoutingState;
@@ -114,6 +120,8 @@ import org.mobicents.servlet.sip.core.b2bua.MobicentsB2BUAHelper;
 import org.mobicents.servlet.sip.core.dispatchers.MessageDispatcher;
 import org.mobicents.servlet.sip.core.message.MobicentsSipServletRequest;
 import org.mobicents.servlet.sip.core.proxy.MobicentsProxy;
+import org.mobicents.servlet.sip.core.replication.ReplicationInput;
+import org.mobicents.servlet.sip.core.replication.ReplicationOutput;
 import org.mobicents.servlet.sip.core.security.MobicentsAuthInfoEntry;
 import org.mobicents.servlet.sip.core.session.MobicentsSipApplicationSession;
 import org.mobicents.servlet.sip.core.session.MobicentsSipApplicationSessionKey;
@@ -124,6 +132,7 @@ import org.mobicents.servlet.sip.proxy.ProxyImpl;
 import org.mobicents.servlet.sip.security.AuthInfoEntry;
 import org.mobicents.servlet.sip.security.AuthInfoImpl;
 import org.mobicents.servlet.sip.startup.StaticServiceHolder;
+import org.mobicents.servlet.sip.utils.Inet6Util;
 
 public abstract class SipServletRequestImpl extends SipServletMessageImpl implements
 		MobicentsSipServletRequest {
@@ -185,6 +194,11 @@ public abstract class SipServletRequestImpl extends SipServletMessageImpl implem
 	// This field is only used in CANCEL requests where we need the INVITe transaction
 	private transient Transaction inviteTransactionToCancel;
 	
+	// the send waiting for its hops to be located asynchronously, or for the INVITE it cancels to be sent, if any
+	private transient volatile PendingSend pendingSend;
+	// This field is only used in CANCEL requests created while their INVITE was waiting for its hops to be located
+	private transient SipServletRequestImpl inviteToCancel;
+	
 	// needed for externalizable
 	public SipServletRequestImpl () {}
 	
@@ -253,10 +267,6 @@ public abstract class SipServletRequestImpl extends SipServletMessageImpl implem
 			throw new IllegalStateException(
 					"Cannot create CANCEL for non invite " + message);
 		}
-		if (super.getTransaction() == null
-				|| super.getTransaction() instanceof ServerTransaction)
-			throw new IllegalStateException("No client transaction found! " + super.getTransaction());
-
 		if(RoutingState.FINAL_RESPONSE_SENT.equals(routingState) || lastFinalResponse != null) {
 			if(lastFinalResponse != null) {
 				throw new IllegalStateException("final response already sent : " + lastFinalResponse);
@@ -264,6 +274,13 @@ public abstract class SipServletRequestImpl extends SipServletMessageImpl implem
 				throw new IllegalStateException("final response already sent!");
 			}
 		}
+		// the INVITE may still be waiting for its hops to be located, it has no client transaction yet
+		if(pendingSend != null) {
+			return createPendingCancel();
+		}
+		if (super.getTransaction() == null
+				|| super.getTransaction() instanceof ServerTransaction)
+			throw new IllegalStateException("No client transaction found! " + super.getTransaction());
 		
 		try {			
 			Request cancelRequest = ((ClientTransaction) getTransaction())
@@ -279,6 +296,63 @@ public abstract class SipServletRequestImpl extends SipServletMessageImpl implem
 
 	}
 
+	/**
+	 * Creates the CANCEL of this INVITE while it is still waiting for its hops to be located. 
+	 * The Via and Route headers of the CANCEL are copied from the INVITE once it is sent, see {@link #bindToSentInvite(SipServletRequestImpl)}
+	 */
+	private SipServletRequest createPendingCancel() {
+		final Request inviteRequest = (Request) message;
+		try {
+			final CSeqHeader cseqHeader = (CSeqHeader) inviteRequest.getHeader(CSeqHeader.NAME).clone();
+			cseqHeader.setMethod(Request.CANCEL);
+			final Request cancelRequest = SipFactoryImpl.messageFactory.createRequest(
+					(javax.sip.address.URI) inviteRequest.getRequestURI().clone(), 
+					Request.CANCEL, 
+					(CallIdHeader) inviteRequest.getHeader(CallIdHeader.NAME).clone(), 
+					cseqHeader, 
+					(FromHeader) inviteRequest.getHeader(FromHeader.NAME).clone(), 
+					(ToHeader) inviteRequest.getHeader(ToHeader.NAME).clone(), 
+					new ArrayList<Header>(), 
+					(MaxForwardsHeader) inviteRequest.getHeader(MaxForwardsHeader.NAME).clone());
+			SipServletRequestImpl newRequest = (SipServletRequestImpl) sipFactoryImpl.getMobicentsSipServletMessageFactory().createSipServletRequest(
+					cancelRequest, getSipSession(),
+					null, getDialog(), false);
+			newRequest.inviteToCancel = this;
+			return newRequest;
+		} catch (ParseException ex) {
+			throw new IllegalStateException("Could not create cancel", ex);
+		}
+	}
+
+	/**
+	 * Completes a CANCEL created while its INVITE was waiting for its hops with the Request-URI, Via and Route headers 
+	 * the INVITE has been sent with, as per RFC 3261 Section 9.1
+	 * @return false if the INVITE couldn't be sent, there is nothing to cancel then
+	 */
+	private boolean bindToSentInvite(final SipServletRequestImpl invite) {
+		inviteToCancel = null;
+		final Transaction inviteTransaction = invite.getTransaction();
+		if(!(inviteTransaction instanceof ClientTransaction) || !invite.isMessageSent) {
+			return false;
+		}
+		final Request cancelRequest = (Request) message;
+		final Request inviteRequest = (Request) invite.getMessage();
+		cancelRequest.setRequestURI((javax.sip.address.URI) inviteRequest.getRequestURI().clone());
+		cancelRequest.removeHeader(ViaHeader.NAME);
+		cancelRequest.addHeader((Header) inviteRequest.getHeader(ViaHeader.NAME).clone());
+		cancelRequest.removeHeader(RouteHeader.NAME);
+		final ListIterator<?> routeHeaders = inviteRequest.getHeaders(RouteHeader.NAME);
+		while (routeHeaders.hasNext()) {
+			try {
+				cancelRequest.addLast((Header) ((Header) routeHeaders.next()).clone());
+			} catch (SipException e) {
+				throw new IllegalStateException("Could not copy the Route headers of " + inviteRequest, e);
+			}
+		}
+		inviteTransactionToCancel = inviteTransaction;
+		return true;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -592,6 +666,10 @@ public abstract class SipServletRequestImpl extends SipServletMessageImpl implem
 		if(getTransaction() instanceof ClientTransaction && this.isMessageSent) {
 			return true;
 		}
+		//the message is an outgoing request waiting for its hops to be located before being sent
+		if(pendingSend != null) {
+			return true;
+		}
 		/*
 		if(Request.ACK.equals((((Request)message).getMethod()))) {
 			return true;
@@ -600,7 +678,7 @@ public abstract class SipServletRequestImpl extends SipServletMessageImpl implem
 	}
 	
 	protected void checkMessageState() {
-		if(isMessageSent || getTransaction() instanceof ServerTransaction) {
+		if(isMessageSent || pendingSend != null || getTransaction() instanceof ServerTransaction) {
 			throw new IllegalStateException("Message already sent or incoming message");
 		}
 	}
@@ -940,6 +1018,40 @@ public abstract class SipServletRequestImpl extends SipServletMessageImpl implem
 	 */
 	@Override
 	public void send() throws IOException {
+		send((Runnable) null);
+	}
+
+	/**
+	 * Sends the request and then runs the afterSend task.
+	 * When asynchronous DNS resolution is enabled and the next hop has to be looked up, this method returns
+	 * right away : the request is sent, and afterSend run, from the sip application session once the hops are located.
+	 * @param afterSend task to run once the request has been handed to the stack, can be null
+	 * @throws IOException
+	 */
+	public void send(final Runnable afterSend) throws IOException {
+		send(afterSend, null);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.javax.servlet.sip.SipServletRequestExt#sendAsynchronously(org.mobicents.javax.servlet.sip.SendListener)
+	 */
+	public void sendAsynchronously(SendListener sendListener) {
+		if(sendListener == null) {
+			throw new NullPointerException("the send listener cannot be null");
+		}
+		try {
+			send(null, sendListener);
+		} catch (IOException e) {
+			sendListener.onSendFailed(this, e);
+		}
+	}
+
+	/**
+	 * @param sendListener if not null, the transport write is left to the outbound write queue of the destination
+	 * and its outcome reported to the listener
+	 */
+	private void send(final Runnable afterSend, final SendListener sendListener) throws IOException {
 		checkReadOnly();
 		// Cope with com.bea.sipservlet.tck.agents.api.javax_servlet_sip.SipServletMessageTest.testSend101 
 		// make sure a message received cannot be sent out
@@ -949,16 +1061,32 @@ public abstract class SipServletRequestImpl extends SipServletMessageImpl implem
 		final SipApplicationDispatcher sipApplicationDispatcher = sipFactoryImpl.getSipApplicationDispatcher();
 		final MobicentsSipSession session = getSipSession();
 		final DNSServerLocator dnsServerLocator = sipApplicationDispatcher.getDNSServerLocator();
+		final SipServletRequestImpl pendingInvite = inviteToCancel;
+		if(pendingInvite != null) {
+			// the CANCEL is sent right after its INVITE, once the hops of the INVITE are located
+			final PendingSend queuedSend = new PendingSend(afterSend, sendListener);
+			pendingSend = queuedSend;
+			if(pendingInvite.runAfterPendingSend(new Runnable() {
+				public void run() {
+					queuedSend.complete(new Runnable() {
+						public void run() {
+							sendQueuedCancel(pendingInvite, afterSend, sendListener);
+						}
+					});
+				}
+			})) {
+				return;
+			}
+			pendingSend = null;
+			if(!bindToSentInvite(pendingInvite)) {
+				throw new IllegalStateException("The INVITE to cancel couldn't be sent " + pendingInvite);
+			}
+		}
 		Hop hop = null;
 		// RFC 3263 support
 		if(dnsServerLocator != null) {
 			if(Request.CANCEL.equals(requestMethod)) {
-				// RFC 3263 Section 4 : a CANCEL for a particular SIP request MUST be sent to the same SIP 
-				// server that the SIP request was delivered to.
-				TransactionApplicationData inviteTxAppData = ((TransactionApplicationData)inviteTransactionToCancel.getApplicationData());
-				if(inviteTxAppData != null && inviteTxAppData.getHops() != null) {
-					hop = inviteTxAppData.getHops().peek();
-				}
+				hop = getInviteToCancelHop();
 			} else {
 				javax.sip.address.URI uriToResolve =  request.getRequestURI();
 				RouteHeader routeHeader = (RouteHeader) request.getHeader(RouteHeader.NAME);
@@ -985,7 +1113,16 @@ public abstract class SipServletRequestImpl extends SipServletMessageImpl implem
 						// nothing to do here, will never happen
 					}
 				}
-				Queue<Hop> hops = dnsServerLocator.locateHops(uriToResolve);
+				// numeric addresses need no lookup, no need to leave this thread for them
+				final boolean asynchronousResolution = sipApplicationDispatcher.isAsynchronousDNSResolution() && !isNumericAddress(uriToResolve);
+				Queue<Hop> hops = null;
+				javax.sip.address.URI asynchronousUriToResolve = null;
+				if(asynchronousResolution) {
+					// the uri belongs to the message, the resolver gets its own copy
+					asynchronousUriToResolve = (javax.sip.address.URI) uriToResolve.clone();
+				} else {
+					hops = dnsServerLocator.locateHops(uriToResolve);
+				}
 				if(transportParamModified) {
 					// Issue http://code.google.com/p/sipservlets/issues/detail?id=186
 					// Resetting the transport to what is was before the modification to avoid modifying the route set
@@ -999,6 +1136,12 @@ public abstract class SipServletRequestImpl extends SipServletMessageImpl implem
 						}
 					}
 				}
+				if(asynchronousResolution) {
+					final PendingSend asynchronousSend = new PendingSend(afterSend, sendListener);
+					pendingSend = asynchronousSend;
+					sipApplicationDispatcher.locateHops(asynchronousUriToResolve, asynchronousSend);
+					return;
+				}
 				if(hops != null && hops.size() > 0) {
 					// RFC 3263 support don't remove the current hop, it will be the one to reuse for CANCEL and ACK to non 2xx transactions
 					hop = hops.peek();
@@ -1006,7 +1149,188 @@ public abstract class SipServletRequestImpl extends SipServletMessageImpl implem
 				}
 			}
 		}
-		send(hop);
+		send(hop, sendListener);
+		if(afterSend != null) {
+			afterSend.run();
+		}
+	}
+
+	private static boolean isNumericAddress(javax.sip.address.URI uri) {
+		if(!uri.isSipURI()) {
+			return false;
+		}
+		final String host = ((javax.sip.address.SipURI) uri).getHost();
+		return Inet6Util.isValidIP6Address(host) || Inet6Util.isValidIPV4Address(host);
+	}
+
+	/**
+	 * RFC 3263 Section 4 : a CANCEL for a particular SIP request MUST be sent to the same SIP 
+	 * server that the SIP request was delivered to.
+	 */
+	private Hop getInviteToCancelHop() {
+		TransactionApplicationData inviteTxAppData = ((TransactionApplicationData)inviteTransactionToCancel.getApplicationData());
+		if(inviteTxAppData != null && inviteTxAppData.getHops() != null) {
+			return inviteTxAppData.getHops().peek();
+		}
+		return null;
+	}
+
+	/**
+	 * Queues the task until this request is sent if it is still waiting for its hops to be located.
+	 * The task then runs on the sip application session right after the send, whether it succeeded or not.
+	 * @return true if the task has been queued, false if this request isn't waiting for its hops, 
+	 * the caller has to run the task itself then
+	 */
+	public boolean runAfterPendingSend(Runnable task) {
+		final PendingSend asynchronousSend = pendingSend;
+		return asynchronousSend != null && asynchronousSend.runAfterSend(task);
+	}
+
+	/**
+	 * Sends a CANCEL that was queued until its INVITE was sent, there is nothing to cancel if the INVITE couldn't be sent
+	 */
+	private void sendQueuedCancel(final SipServletRequestImpl invite, final Runnable afterSend, final SendListener sendListener) {
+		if(!bindToSentInvite(invite)) {
+			if(logger.isDebugEnabled()) {
+				logger.debug("Not sending the CANCEL since the INVITE it cancels couldn't be sent " + invite);
+			}
+			if(sendListener != null) {
+				sendListener.onSendFailed(this, new IOException("The INVITE to cancel couldn't be sent"));
+			}
+			return;
+		}
+		final Hop hop = sipFactoryImpl.getSipApplicationDispatcher().getDNSServerLocator() != null ? getInviteToCancelHop() : null;
+		sendToHop(hop, afterSend, sendListener);
+	}
+
+	/**
+	 * Continues the send once the hops have been located by the DNS resolver threads
+	 */
+	private void sendToLocatedHops(final Queue<Hop> hops, final Runnable afterSend, final SendListener sendListener) {
+		Hop hop = null;
+		if(hops != null && hops.size() > 0) {
+			// RFC 3263 support don't remove the current hop, it will be the one to reuse for CANCEL and ACK to non 2xx transactions
+			hop = hops.peek();
+			transactionApplicationData.setHops(hops);
+		}
+		sendToHop(hop, afterSend, sendListener);
+	}
+
+	/**
+	 * Sends the request once the application already returned from send(), the failures are reported to it asynchronously
+	 */
+	private void sendToHop(final Hop hop, final Runnable afterSend, final SendListener sendListener) {
+		try {
+			send(hop, sendListener);
+			if(afterSend != null) {
+				afterSend.run();
+			}
+		} catch (IOException e) {
+			if(sendListener != null) {
+				sendListener.onSendFailed(this, e);
+			} else {
+				logger.error("Couldn't send the request " + getMethod() + " " + getRequestURI() + " to the located hop " + hop, e);
+				notifySendFailure();
+			}
+		}
+	}
+
+	/**
+	 * The application already returned from send() when the hops are located asynchronously, so as per RFC 3261 Section 8.1.3.1 
+	 * the transport failure is reported to it as a 503 (Service Unavailable) response, the same way a transaction timeout is reported as a 408
+	 */
+	private void notifySendFailure() {
+		getSipSession().getSipApplicationSession().scheduleAsynchronousWork(new SipApplicationSessionAsynchronousWork() {
+			private static final long serialVersionUID = 1L;
+
+			public void doAsynchronousWork(SipApplicationSession sipApplicationSession) {
+				try {
+					final SipServletResponseImpl response = (SipServletResponseImpl) createResponse(Response.SERVICE_UNAVAILABLE, null, false, true);
+					setResponse(response);
+					MessageDispatcher.callServlet(response);
+					if(transactionApplicationData.getProxyBranch() != null) {
+						transactionApplicationData.getProxyBranch().setResponse(response);
+						transactionApplicationData.getProxyBranch().onResponse(response, response.getStatus());
+					}
+					getSipSession().updateStateOnResponse(response, true);
+				} catch (Throwable t) {
+					logger.error("Failed to deliver 503 response on send failure of " + getMethod() + " " + getRequestURI(), t);
+				}
+			}
+		});
+	}
+
+	/**
+	 * A send waiting for its hops to be located asynchronously, or for the INVITE it cancels to be sent. 
+	 * The request stays committed until the send completes on the sip application session, and the tasks 
+	 * queued meanwhile through {@link SipServletRequestImpl#runAfterPendingSend(Runnable)} run right after it.
+	 */
+	private final class PendingSend implements HopsLocatedListener {
+		private final Runnable afterSend;
+		private final SendListener sendListener;
+		// guarded by this
+		private List<Runnable> tasksAfterSend;
+		private boolean completed;
+
+		PendingSend(Runnable afterSend, SendListener sendListener) {
+			this.afterSend = afterSend;
+			this.sendListener = sendListener;
+		}
+
+		public void onHopsLocated(final Queue<Hop> locatedHops) {
+			// continue in a thread safe manner with regard to the sip application session
+			getSipSession().getSipApplicationSession().scheduleAsynchronousWork(new SipApplicationSessionAsynchronousWork() {
+				private static final long serialVersionUID = 1L;
+
+				public void doAsynchronousWork(SipApplicationSession sipApplicationSession) {
+					complete(new Runnable() {
+						public void run() {
+							sendToLocatedHops(locatedHops, afterSend, sendListener);
+						}
+					});
+				}
+			});
+		}
+
+		synchronized boolean runAfterSend(Runnable task) {
+			if(completed) {
+				return false;
+			}
+			if(tasksAfterSend == null) {
+				tasksAfterSend = new ArrayList<Runnable>(1);
+			}
+			tasksAfterSend.add(task);
+			return true;
+		}
+
+		void complete(Runnable send) {
+			try {
+				send.run();
+			} finally {
+				// the tasks queued while sending run as well
+				while (true) {
+					final List<Runnable> tasks;
+					synchronized (this) {
+						tasks = tasksAfterSend;
+						tasksAfterSend = null;
+						if(tasks == null) {
+							completed = true;
+							break;
+						}
+					}
+					for (Runnable task : tasks) {
+						try {
+							task.run();
+						} catch (Throwable t) {
+							logger.error("Failed to run a task queued after the send of " + getMethod() + " " + getRequestURI(), t);
+						}
+					}
+				}
+				if(pendingSend == this) {
+					pendingSend = null;
+				}
+			}
+		}
 	}
 	
 	
@@ -1043,6 +1367,10 @@ public abstract class SipServletRequestImpl extends SipServletMessageImpl implem
 	}
 	
 	public void send(Hop hop) throws IOException {
+		send(hop, null);
+	}
+
+	private void send(Hop hop, SendListener sendListener) throws IOException {
 		final Request request = (Request) super.message;
 		final String requestMethod = getMethod();
 		final MobicentsSipSession session = getSipSession();
@@ -1073,6 +1401,9 @@ public abstract class SipServletRequestImpl extends SipServletMessageImpl implem
 	    					TransactionApplicationData tad = (TransactionApplicationData) tx.getApplicationData();
 	    					tad.setCanceled(true);
 	    				}
+	    				if(sendListener != null) {
+	    					sendListener.onSent(this);
+	    				}
 	    				return;
     				}
     			} else {
@@ -1111,7 +1442,7 @@ public abstract class SipServletRequestImpl extends SipServletMessageImpl implem
 				}
 				javax.sip.address.SipURI outboundInterfaceURI = null;			
 				try {
-					outboundInterfaceURI = (javax.sip.address.SipURI) SipFactoryImpl.addressFactory.createURI(outboundInterface);
+					outboundInterfaceURI = (javax.sip.address.SipURI) SipFactoryImpl.parseURI(outboundInterface);
 				} catch (ParseException e) {
 					throw new IllegalArgumentException("couldn't parse the outbound interface " + outboundInterface, e);
 				}
@@ -1139,6 +1470,9 @@ public abstract class SipServletRequestImpl extends SipServletMessageImpl implem
 				// to the same server that received the original request"
 				addDnsRoute(hop, request);
 				sendAck(transport, sipConnector, matchingListeningPoint);
+				if(sendListener != null) {
+					sendListener.onSent(this);
+				}
 				return;
 			}						
 			boolean addDNSRoute = true;
@@ -1170,7 +1504,7 @@ public abstract class SipServletRequestImpl extends SipServletMessageImpl implem
 				if(isInitial() || dialog == null) {		
 				    //Issue: https://code.google.com/p/sipservlets/issues/detail?id=284
 					if(!session.getBypassLoadBalancer() && sipFactoryImpl.isUseLoadBalancer()) {
-						sipFactoryImpl.addLoadBalancerRouteHeader(request);
+						sipFactoryImpl.addLoadBalancerRouteHeader(request, session.getKey().getApplicationSessionId());
 						addDNSRoute = false;
 						if(logger.isDebugEnabled()) {
 							logger.debug("adding route to Load Balancer since we are in a HA configuration " +
@@ -1179,7 +1513,7 @@ public abstract class SipServletRequestImpl extends SipServletMessageImpl implem
 					}
 					//Issue: https://code.google.com/p/sipservlets/issues/detail?id=284
 					else if(!session.getBypassProxy() && StaticServiceHolder.sipStandardService.getOutboundProxy() != null) {
-						sipFactoryImpl.addLoadBalancerRouteHeader(request);
+						sipFactoryImpl.addLoadBalancerRouteHeader(request, session.getKey().getApplicationSessionId());
 						addDNSRoute = false;
 						if(logger.isDebugEnabled()) {
 							logger.debug("adding route to outbound proxy (no load balancer set) since we have outboundProxy configured " +
@@ -1306,6 +1640,7 @@ public abstract class SipServletRequestImpl extends SipServletMessageImpl implem
 					linkedRequest.setRoutingState(RoutingState.RELAYED);
 				}
 			}		
+			final State stateBeforeSend = session.isValidInternal() ? session.getState() : null;
 			session.addOngoingTransaction(getTransaction());
 			// Update Session state
 			session.updateStateOnSubsequentRequest(this, false);
@@ -1319,6 +1654,26 @@ public abstract class SipServletRequestImpl extends SipServletMessageImpl implem
 			Dialog dialog = getDialog();
 			if(session.getProxy() != null) dialog = null;
 			if(request.getMethod().equals(Request.CANCEL)) dialog = null;
+			// If dialog does not exist or has no state.
+			if (dialog == null || dialog.getState() == null
+					// https://github.com/Mobicents/sip-servlets/issues/66 include UPDATE as well so it is sent indialog
+					|| (dialog.getState() == DialogState.EARLY && !Request.PRACK.equals(requestMethod) && !Request.UPDATE.equals(requestMethod)) 
+					|| Request.CANCEL.equals(requestMethod)) {
+				dialog = null;
+			}
+			
+			if(sendListener != null) {
+				// the request is considered sent as soon as it is queued so it can't be sent twice,
+				// this is rolled back if the write fails
+				isMessageSent = true;
+				if(method.equals(Request.INVITE)) {
+					session.setRequestsPending(session.getRequestsPending()+1);
+				}
+				writeAsynchronously((ClientTransaction) getTransaction(), dialog, session, stateBeforeSend,
+						JainSipUtils.findRequestDestination(request, transport), 
+						sipApplicationSession.getSipContext().getClass().getClassLoader(), sendListener);
+				return;
+			}
 						
 			// Issue 1791 : using a different classloader created outside the application loader 
 			// to avoid leaks on startup/shutdown
@@ -1326,23 +1681,27 @@ public abstract class SipServletRequestImpl extends SipServletMessageImpl implem
 			try {
 				final ClassLoader cl = sipApplicationSession.getSipContext().getClass().getClassLoader();
 				Thread.currentThread().setContextClassLoader(cl);
-				// If dialog does not exist or has no state.
-				if (dialog == null || dialog.getState() == null
-						// https://github.com/Mobicents/sip-servlets/issues/66 include UPDATE as well so it is sent indialog
-						|| (dialog.getState() == DialogState.EARLY && !Request.PRACK.equals(requestMethod) && !Request.UPDATE.equals(requestMethod)) 
-						|| Request.CANCEL.equals(requestMethod)) {
-					if(logger.isDebugEnabled()) {
-						logger.debug("Sending the request " + request);
-					}
-					((ClientTransaction) super.getTransaction()).sendRequest();
-				} else {
-					// This is a subsequent (an in-dialog) request. 
-					// we don't redirect it to the container for now
-					if(logger.isDebugEnabled()) {
-						logger.debug("Sending the in dialog request " + request);
+				final Dialog sendingDialog = dialog;
+				final ClientTransaction clientTransaction = (ClientTransaction) getTransaction();
+				// behind the requests sent asynchronously to the same destination and not written yet
+				sipFactoryImpl.getSipApplicationDispatcher().writeInOrder(JainSipUtils.findRequestDestination(request, transport), new Callable<Void>() {
+					public Void call() throws SipException {
+						if (sendingDialog == null) {
+							if(logger.isDebugEnabled()) {
+								logger.debug("Sending the request " + request);
+							}
+							clientTransaction.sendRequest();
+						} else {
+							// This is a subsequent (an in-dialog) request. 
+							// we don't redirect it to the container for now
+							if(logger.isDebugEnabled()) {
+								logger.debug("Sending the in dialog request " + request);
+							}
+							sendingDialog.sendRequest(clientTransaction);
+						}
+						return null;
 					}
-					dialog.sendRequest((ClientTransaction) getTransaction());
-				}	
+				});
 				sipFactoryImpl.getSipApplicationDispatcher().updateRequestsStatistics(request, false);
 				isMessageSent = true;
 				
@@ -1368,6 +1727,9 @@ public abstract class SipServletRequestImpl extends SipServletMessageImpl implem
 					// https://code.google.com/p/sipservlets/issues/detail?id=250 retry directly on TCP
                     boolean nextHopVisited = visitNextHop();
                     if(nextHopVisited) {
+                    	if(sendListener != null) {
+                    		sendListener.onSent(this);
+                    	}
                     	return;
                     }
 				}
@@ -1383,6 +1745,81 @@ public abstract class SipServletRequestImpl extends SipServletMessageImpl implem
 		} 
 	}
 
+	/**
+	 * Hands the transport write of the request to the outbound write queue of its destination, 
+	 * the outcome is reported to the listener from there
+	 * @param dialog the dialog to send the request in, null to send it through the client transaction only
+	 * @param stateBeforeSend the state of the session to restore if the write fails
+	 */
+	void writeAsynchronously(final ClientTransaction clientTransaction, final Dialog dialog, 
+			final MobicentsSipSession session, final State stateBeforeSend, final String destination,
+			final ClassLoader classLoader, final SendListener sendListener) {
+		final Request request = (Request) message;
+		if(logger.isDebugEnabled()) {
+			logger.debug("Queuing the request " + request + " for asynchronous write to " + destination);
+		}
+		sipFactoryImpl.getSipApplicationDispatcher().getOutboundWriteExecutor(destination).execute(new Runnable() {
+			public void run() {
+				IOException failure = null;
+				final ClassLoader oldClassLoader = Thread.currentThread().getContextClassLoader();
+				try {
+					Thread.currentThread().setContextClassLoader(classLoader);
+					if(dialog == null) {
+						clientTransaction.sendRequest();
+					} else {
+						dialog.sendRequest(clientTransaction);
+					}
+					sipFactoryImpl.getSipApplicationDispatcher().updateRequestsStatistics(request, false);
+				} catch (Exception e) {
+					JainSipUtils.terminateTransaction(clientTransaction);
+					if(e.getCause() instanceof IOException) {
+						failure = (IOException) e.getCause();
+					} else {
+						failure = new IOException("Error sending request " + request, e);
+					}
+				} finally {
+					Thread.currentThread().setContextClassLoader(oldClassLoader);
+				}
+				if(failure == null) {
+					sendListener.onSent(SipServletRequestImpl.this);
+				} else {
+					rollbackAsynchronousSend(clientTransaction, session, stateBeforeSend, sendListener, failure);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Undoes what was done when the request was queued for an asynchronous write that failed, 
+	 * the request is cleaned up as for a failed synchronous send so that it can be sent again.
+	 * The request and the session are updated back on the application side, under the concurrency control 
+	 * of the session rather than from the write queue, and the listener is notified from there once the request 
+	 * can be sent again
+	 */
+	private void rollbackAsynchronousSend(final ClientTransaction clientTransaction, final MobicentsSipSession session,
+			final State stateBeforeSend, final SendListener sendListener, final IOException failure) {
+		session.scheduleAsynchronousWork(new SipSessionAsynchronousWork() {
+			private static final long serialVersionUID = 1L;
+
+			public void doAsynchronousWork(SipSession sipSession) {
+				final Request request = (Request) message;
+				request.removeFirst(ViaHeader.NAME);
+				request.removeFirst(ContactHeader.NAME);
+				setTransaction(null);
+				message = (Request) request.clone();
+				isMessageSent = false;
+				if(Request.INVITE.equals(request.getMethod())) {
+					session.setRequestsPending(session.getRequestsPending()-1);
+				}
+				session.removeOngoingTransaction(clientTransaction);
+				if(stateBeforeSend != null && session.isValidInternal()) {
+					session.setState(stateBeforeSend);
+				}
+				sendListener.onSendFailed(SipServletRequestImpl.this, failure);
+			}
+		});
+	}
+
 	/**
 	 * 
 	 * @param hop
@@ -1445,7 +1882,7 @@ public abstract class SipServletRequestImpl extends SipServletMessageImpl implem
 		    }
 		}
 		if(viaHeader.getBranch() == null) {
-			final String branch = JainSipUtils.createBranch(sipApplicationSession.getKey().getId(),  sipFactoryImpl.getSipApplicationDispatcher().getHashFromApplicationName(session.getKey().getApplicationName()));			
+			final String branch = JainSipUtils.createBranch(sipFactoryImpl.getSipApplicationDispatcher(), sipApplicationSession.getKey().getId(), session.getKey().getApplicationName());			
 			viaHeader.setBranch(branch);
 		}
 		// https://github.com/Mobicents/sip-servlets/issues/62 modify the Via transport to match either the hop, the route or the request URI transport
@@ -1524,7 +1961,7 @@ public abstract class SipServletRequestImpl extends SipServletMessageImpl implem
 				//Issue: https://code.google.com/p/sipservlets/issues/detail?id=210
 				String outboundInterface = this.getSipSession().getOutboundInterface();
 				if(outboundInterface != null){
-					javax.sip.address.SipURI outboundInterfaceURI = (javax.sip.address.SipURI) SipFactoryImpl.addressFactory.createURI(outboundInterface);
+					javax.sip.address.SipURI outboundInterfaceURI = (javax.sip.address.SipURI) SipFactoryImpl.parseURI(outboundInterface);
 					ipAddressToCheckAgainst = ((gov.nist.javax.sip.address.SipUri)outboundInterfaceURI).getHost();
 				}
 				
@@ -1655,7 +2092,7 @@ public abstract class SipServletRequestImpl extends SipServletMessageImpl implem
 					//Issue: https://code.google.com/p/sipservlets/issues/detail?id=210
 					String outboundInterface = this.getSipSession().getOutboundInterface();
 					if(outboundInterface != null){
-						javax.sip.address.SipURI outboundInterfaceURI = (javax.sip.address.SipURI) SipFactoryImpl.addressFactory.createURI(outboundInterface);
+						javax.sip.address.SipURI outboundInterfaceURI = (javax.sip.address.SipURI) SipFactoryImpl.parseURI(outboundInterface);
 						String outboundHost = ((gov.nist.javax.sip.address.SipUri)outboundInterfaceURI).getHost();
 						contactSipUri.setHost(outboundHost);
 					} else {	
@@ -1774,7 +2211,22 @@ public abstract class SipServletRequestImpl extends SipServletMessageImpl implem
 			if(logger.isDebugEnabled()) {
 				logger.debug("Sending the ACK request " + request);
 			}
-			session.getSessionCreatingDialog().sendAck(request);
+			final Dialog dialog = session.getSessionCreatingDialog();
+			try {
+				// behind the requests sent asynchronously to the same destination and not written yet
+				sipFactoryImpl.getSipApplicationDispatcher().writeInOrder(JainSipUtils.findRequestDestination(request, transport), new Callable<Void>() {
+					public Void call() throws SipException {
+						dialog.sendAck(request);
+						return null;
+					}
+				});
+			} catch (SipException e) {
+				throw e;
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new SipException("Error sending the ACK request " + request, e);
+			}
 			session.setRequestsPending(session.getRequestsPending()-1);
 			sipFactoryImpl.getSipApplicationDispatcher().updateRequestsStatistics(request, false);
 			final Transaction transaction = getTransaction();
@@ -2484,30 +2936,19 @@ public abstract class SipServletRequestImpl extends SipServletMessageImpl implem
 	
 	/*
 	 * (non-Javadoc)
-	 * @see java.io.Externalizable#readExternal(java.io.ObjectInput)
+	 * @see org.mobicents.servlet.sip.message.SipServletMessageImpl#readReplicationState(org.mobicents.servlet.sip.core.replication.ReplicationInput)
 	 */
-	public void readExternal(ObjectInput in) throws IOException,
+	@Override
+	protected void readReplicationState(ReplicationInput in) throws IOException,
 			ClassNotFoundException {
-		super.readExternal(in);
-		String messageString = in.readUTF();
-		try {
-			message = SipFactoryImpl.messageFactory.createRequest(messageString);
-		} catch (ParseException e) {
-			throw new IllegalArgumentException("Message " + messageString + " previously serialized could not be reparsed", e);
-		}
+		super.readReplicationState(in);
 		boolean isLinkedRequestSerialized = in.readBoolean();
 		if (isLinkedRequestSerialized) {
 			linkedRequest = (SipServletRequestImpl) in.readObject();
 		}
 		createDialog = in.readBoolean();
-		String routingDirectiveString = in.readUTF();
-		if(!routingDirectiveString.equals("")) {
-			routingDirective = SipApplicationRoutingDirective.valueOf(routingDirectiveString);
-		}
-		String routingStateString = in.readUTF();
-		if(!routingStateString.equals("")) {
-			routingState = RoutingState.valueOf(routingStateString);
-		}
+		routingDirective = in.readEnum(SipApplicationRoutingDirective.class);
+		routingState = in.readEnum(RoutingState.class);
 		boolean isRoutingRegionSet = in.readBoolean();
 		if(isRoutingRegionSet) {
 			routingRegion = (SipApplicationRoutingRegion) in.readObject();
@@ -2519,10 +2960,11 @@ public abstract class SipServletRequestImpl extends SipServletMessageImpl implem
 	
 	/*
 	 * (non-Javadoc)
-	 * @see java.io.Externalizable#writeExternal(java.io.ObjectOutput)
+	 * @see org.mobicents.servlet.sip.message.SipServletMessageImpl#writeReplicationState(org.mobicents.servlet.sip.core.replication.ReplicationOutput)
 	 */
-	public void writeExternal(ObjectOutput out) throws IOException {
-		super.writeExternal(out);
+	@Override
+	protected void writeReplicationState(ReplicationOutput out) throws IOException {
+		super.writeReplicationState(out);
 		if(linkedRequest == null) {
 			out.writeBoolean(false);
 		} else {
@@ -2530,16 +2972,8 @@ public abstract class SipServletRequestImpl extends SipServletMessageImpl implem
 			out.writeObject(linkedRequest);
 		}
 		out.writeBoolean(createDialog);
-		if(routingDirective != null) {
-			out.writeUTF(routingDirective.toString());
-		} else {
-			out.writeUTF("");
-		}
-		if(routingState != null) {
-			out.writeUTF(routingState.toString());
-		} else {
-			out.writeUTF("");
-		}
+		out.writeEnum(routingDirective);
+		out.writeEnum(routingState);
 		if(routingRegion != null) {
 			out.writeBoolean(true);
 			out.writeObject(routingRegion);
@@ -25,8 +25,6 @@ import gov.nist.javax.sip.stack.SIPServerTransaction;
 import gov.nist.javax.sip.stack.SIPTransaction;
 
 import java.io.IOException;
-import java.io.ObjectInput;
-import java.io.ObjectOutput;
 import java.io.PrintWriter;
 import java.text.ParseException;
 import java.util.ArrayList;
@@ -34,6 +32,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Locale;
+import java.util.concurrent.Callable;
 
 import javax.servlet.ServletOutputStream;
 import javax.servlet.sip.Proxy;
@@ -41,6 +40,7 @@ import javax.servlet.sip.ProxyBranch;
 import javax.servlet.sip.Rel100Exception;
 import javax.servlet.sip.SipServletRequest;
 import javax.servlet.sip.SipServletResponse;
+import javax.servlet.sip.SipSession;
 import javax.sip.ClientTransaction;
 import javax.sip.Dialog;
 import javax.sip.InvalidArgumentException;
@@ -64,6 +64,8 @@ import javax.sip.message.Request;
 import javax.sip.message.Response;
 
 import org.apache.log4j.Logger;
+import org.mobicents.javax.servlet.sip.SendListener;
+import org.mobicents.javax.servlet.sip.SipSessionAsynchronousWork;
 import org.mobicents.servlet.sip.JainSipUtils;
 import org.mobicents.servlet.sip.address.AddressImpl.ModifiableRule;
 import org.mobicents.servlet.sip.core.RoutingState;
@@ -71,6 +73,8 @@ import org.mobicents.servlet.sip.core.SipApplicationDispatcher;
 import org.mobicents.servlet.sip.core.dispatchers.MessageDispatcher;
 import org.mobicents.servlet.sip.core.message.MobicentsSipServletResponse;
 import org.mobicents.servlet.sip.core.proxy.MobicentsProxy;
+import org.mobicents.servlet.sip.core.replication.ReplicationInput;
+import org.mobicents.servlet.sip.core.replication.ReplicationOutput;
 import org.mobicents.servlet.sip.core.proxy.MobicentsProxyBranch;
 import org.mobicents.servlet.sip.core.session.MobicentsSipApplicationSession;
 import org.mobicents.servlet.sip.core.session.MobicentsSipApplicationSessionKey;
@@ -273,7 +277,7 @@ public abstract class SipServletResponseImpl extends SipServletMessageImpl imple
 			prackRequest.removeHeader(ViaHeader.NAME);
 			// cater to http://code.google.com/p/sipservlets/issues/detail?id=31 to be able to set the rport in applications
 			final SipApplicationDispatcher sipApplicationDispatcher = sipFactoryImpl.getSipApplicationDispatcher();
-			final String branch = JainSipUtils.createBranch(session.getSipApplicationSession().getKey().getId(),  sipApplicationDispatcher.getHashFromApplicationName(session.getSipApplicationSession().getKey().getApplicationName()));
+			final String branch = JainSipUtils.createBranch(sipApplicationDispatcher, session.getSipApplicationSession().getKey().getId(), session.getSipApplicationSession().getKey().getApplicationName());
 			ViaHeader viaHeader = JainSipUtils.createViaHeader(
     				sipFactoryImpl.getSipNetworkInterfaceManager(), prackRequest, branch, session.getOutboundInterface());
 			prackRequest.addHeader(viaHeader);
@@ -469,6 +473,29 @@ public abstract class SipServletResponseImpl extends SipServletMessageImpl imple
 	}
 
 	public void send(boolean sendReliably) throws IOException {
+		send(sendReliably, null);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.javax.servlet.sip.SipServletResponseExt#sendAsynchronously(org.mobicents.javax.servlet.sip.SendListener)
+	 */
+	public void sendAsynchronously(SendListener sendListener) {
+		if(sendListener == null) {
+			throw new NullPointerException("the send listener cannot be null");
+		}
+		try {
+			send(false, sendListener);
+		} catch (IOException e) {
+			sendListener.onSendFailed(this, e);
+		}
+	}
+
+	/**
+	 * @param sendListener if not null, the transport write is left to the outbound write queue of the destination
+	 * and its outcome reported to the listener
+	 */
+	private void send(final boolean sendReliably, SendListener sendListener) throws IOException {
 		if(isMessageSent) {
 			throw new IllegalStateException("message already sent");
 		}
@@ -615,38 +642,63 @@ public abstract class SipServletResponseImpl extends SipServletMessageImpl imple
 			//updating the last accessed times 
 			session.access();
 			sipApplicationSession.access();
+			if(sendListener != null) {
+				SipProvider sipProvider = null;
+				if(transaction == null) {
+					final String transport = JainSipUtils.findTransport(((SipServletRequestImpl)this.getRequest()).getMessage());
+					sipProvider = sipFactoryImpl.getSipNetworkInterfaceManager().findMatchingListeningPoint(
+							transport, false).getSipProvider();
+				}
+				// the response is considered sent as soon as it is queued so it can't be sent twice,
+				// this is rolled back if the write fails
+				isMessageSent = true;
+				if(isProxiedResponse) {
+					isResponseForwardedUpstream = true;
+				}
+				writeAsynchronously(transaction, sipProvider, dialog, session, 
+						sipApplicationSession.getSipContext().getClass().getClassLoader(), sendListener);
+				return;
+			}
 			// Issue 1791 : using a different classloader created outside the application loader 
 			// to avoid leaks on startup/shutdown
 			final ClassLoader oldClassLoader = Thread.currentThread().getContextClassLoader();
 			try {
 				final ClassLoader cl = sipApplicationSession.getSipContext().getClass().getClassLoader();
 				Thread.currentThread().setContextClassLoader(cl);
-				if(transaction == null) {
-					if(logger.isDebugEnabled()) {
-						logger.debug("Sending response statelessly " + message);
-					}
-					final String transport = JainSipUtils.findTransport(((SipServletRequestImpl)this.getRequest()).getMessage());
-					final SipProvider sipProvider = sipFactoryImpl.getSipNetworkInterfaceManager().findMatchingListeningPoint(
-							transport, false).getSipProvider();
-					sipProvider.sendResponse((Response)this.message);
-				} else if(sendReliably) {
-					if(logger.isDebugEnabled()) {
-						logger.debug("Sending response reliably " + message);
-					}
-					dialog.sendReliableProvisionalResponse((Response)this.message);
-				} else {
-					if(logger.isDebugEnabled()) {
-						logger.debug("Sending response " + message + " through tx " + transaction);
-					}
-					if(proxy != null && transaction.getDialog() != null && transaction instanceof SIPServerTransaction) {
-						// http://code.google.com/p/mobicents/issues/detail?id=2939 : Application Chaining and multiple protocols usage issue						
-						// avoid that in Application chaining case (Proxy then B2BUA), the proxy server tx that got
-						// the dialog affected to it, mess up with the last response in multiple protocols scenarios.
-						// so we nullify the dialog for that tx which is fine since we are a proxy application
-						((SIPServerTransaction) transaction).setDialog(null, null);
+				// behind the responses sent asynchronously to the same destination and not written yet
+				sipFactoryImpl.getSipApplicationDispatcher().writeInOrder(JainSipUtils.findResponseDestination(response), new Callable<Void>() {
+					public Void call() throws SipException, InvalidArgumentException {
+						if(transaction == null) {
+							if(logger.isDebugEnabled()) {
+								logger.debug("Sending response statelessly " + response);
+							}
+							final String transport = JainSipUtils.findTransport(((SipServletRequestImpl)getRequest()).getMessage());
+							final SipProvider sipProvider = sipFactoryImpl.getSipNetworkInterfaceManager().findMatchingListeningPoint(
+									transport, false).getSipProvider();
+							sipProvider.sendResponse(response);
+						} else if(sendReliably) {
+							if(logger.isDebugEnabled()) {
+								logger.debug("Sending response reliably " + response);
+							}
+							dialog.sendReliableProvisionalResponse(response);
+						} else {
+							if(logger.isDebugEnabled()) {
+								logger.debug("Sending response " + response + " through tx " + transaction);
+							}
+							if(proxy != null && transaction.getDialog() != null && transaction instanceof SIPServerTransaction) {
+								// http://code.google.com/p/mobicents/issues/detail?id=2939 : Application Chaining and multiple protocols usage issue						
+								// avoid that in Application chaining case (Proxy then B2BUA), the proxy server tx that got
+								// the dialog affected to it, mess up with the last response in multiple protocols scenarios.
+								// so we nullify the dialog for that tx which is fine since we are a proxy application
+								((SIPServerTransaction) transaction).setDialog(null, null);
+							}
+							transaction.sendResponse(response);
+						}
+						return null;
 					}
-					transaction.sendResponse( (Response)this.message );
-					sipFactoryImpl.getSipApplicationDispatcher().updateResponseStatistics((Response)this.message, false);
+				});
+				if(transaction != null && !sendReliably) {
+					sipFactoryImpl.getSipApplicationDispatcher().updateResponseStatistics(response, false);
 					if(dialog != null) {
 						// we need to set the dialog again because it's possible that when the dialog
 						// was created it was in null state thus no dialog id so we need to reset it to trigger
@@ -668,6 +720,69 @@ public abstract class SipServletResponseImpl extends SipServletMessageImpl imple
 			throw new IllegalStateException("an exception occured when sending the response " + message, e);
 		}
 	}
+
+	/**
+	 * Hands the transport write of the response to the outbound write queue of its destination, 
+	 * the outcome is reported to the listener from there
+	 * @param transaction the server transaction to send the response through, null to send it statelessly through the sipProvider
+	 */
+	private void writeAsynchronously(final ServerTransaction transaction, final SipProvider sipProvider, final Dialog dialog, 
+			final MobicentsSipSession session, final ClassLoader classLoader, final SendListener sendListener) {
+		final Response response = (Response) message;
+		final String destination = JainSipUtils.findResponseDestination(response);
+		// the session is only read here, on the thread of the application
+		final boolean proxied = session.getProxy() != null;
+		if(logger.isDebugEnabled()) {
+			logger.debug("Queuing the response " + response + " for asynchronous write to " + destination);
+		}
+		sipFactoryImpl.getSipApplicationDispatcher().getOutboundWriteExecutor(destination).execute(new Runnable() {
+			public void run() {
+				IOException failure = null;
+				final ClassLoader oldClassLoader = Thread.currentThread().getContextClassLoader();
+				try {
+					Thread.currentThread().setContextClassLoader(classLoader);
+					if(transaction == null) {
+						sipProvider.sendResponse(response);
+					} else {
+						if(proxied && transaction.getDialog() != null && transaction instanceof SIPServerTransaction) {
+							// same as the synchronous send, see http://code.google.com/p/mobicents/issues/detail?id=2939
+							((SIPServerTransaction) transaction).setDialog(null, null);
+						}
+						transaction.sendResponse(response);
+						sipFactoryImpl.getSipApplicationDispatcher().updateResponseStatistics(response, false);
+						if(dialog != null) {
+							// the dialog id is only computed once the response has been sent, see the synchronous send,
+							// the session is updated back on the application side rather than from the write queue
+							session.scheduleAsynchronousWork(new SipSessionAsynchronousWork() {
+								private static final long serialVersionUID = 1L;
+
+								public void doAsynchronousWork(SipSession sipSession) {
+									session.setSessionCreatingDialog(dialog);
+								}
+							});
+						}
+					}
+				} catch (Exception e) {
+					// the response can be sent again
+					isMessageSent = false;
+					isResponseForwardedUpstream = false;
+					if(e.getCause() instanceof IOException) {
+						failure = (IOException) e.getCause();
+					} else {
+						failure = new IOException("an exception occured when sending the response " + response, e);
+					}
+				} finally {
+					Thread.currentThread().setContextClassLoader(oldClassLoader);
+				}
+				if(failure == null) {
+					sendListener.onSent(SipServletResponseImpl.this);
+				} else {
+					sendListener.onSendFailed(SipServletResponseImpl.this, failure);
+				}
+			}
+		});
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see javax.servlet.sip.SipServletResponse#getChallengeRealms()
@@ -817,17 +932,12 @@ public abstract class SipServletResponseImpl extends SipServletMessageImpl imple
 	
 	/*
 	 * (non-Javadoc)
-	 * @see java.io.Externalizable#readExternal(java.io.ObjectInput)
+	 * @see org.mobicents.servlet.sip.message.SipServletMessageImpl#readReplicationState(org.mobicents.servlet.sip.core.replication.ReplicationInput)
 	 */
-	public void readExternal(ObjectInput in) throws IOException,
+	@Override
+	protected void readReplicationState(ReplicationInput in) throws IOException,
 			ClassNotFoundException {
-		super.readExternal(in);
-		String messageString = in.readUTF();
-		try {
-			message = SipFactoryImpl.messageFactory.createResponse(messageString);
-		} catch (ParseException e) {
-			throw new IllegalArgumentException("Message " + messageString + " previously serialized could not be reparsed", e);
-		}
+		super.readReplicationState(in);
 		boolean isOriginalRequestSerialized = in.readBoolean();
 		if (isOriginalRequestSerialized) {
 			originalRequest = (SipServletRequestImpl) in.readObject();
@@ -845,10 +955,11 @@ public abstract class SipServletResponseImpl extends SipServletMessageImpl imple
 	
 	/*
 	 * (non-Javadoc)
-	 * @see java.io.Externalizable#writeExternal(java.io.ObjectOutput)
+	 * @see org.mobicents.servlet.sip.message.SipServletMessageImpl#writeReplicationState(org.mobicents.servlet.sip.core.replication.ReplicationOutput)
 	 */
-	public void writeExternal(ObjectOutput out) throws IOException {
-		super.writeExternal(out);
+	@Override
+	protected void writeReplicationState(ReplicationOutput out) throws IOException {
+		super.writeReplicationState(out);
 		if(originalRequest == null) {
 			out.writeBoolean(false);
 		} else {
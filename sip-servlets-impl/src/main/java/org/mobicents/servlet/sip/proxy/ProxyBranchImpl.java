@@ -67,6 +67,8 @@ import org.mobicents.servlet.sip.core.SipNetworkInterfaceManager;
 import org.mobicents.servlet.sip.core.message.MobicentsSipServletRequest;
 import org.mobicents.servlet.sip.core.message.MobicentsSipServletResponse;
 import org.mobicents.servlet.sip.core.proxy.MobicentsProxyBranch;
+import org.mobicents.servlet.sip.core.replication.ReplicationInput;
+import org.mobicents.servlet.sip.core.replication.ReplicationOutput;
 import org.mobicents.servlet.sip.core.session.MobicentsSipApplicationSession;
 import org.mobicents.servlet.sip.core.session.MobicentsSipSession;
 import org.mobicents.servlet.sip.message.SipFactoryImpl;
@@ -167,11 +169,18 @@ public class ProxyBranchImpl implements MobicentsProxyBranch, Externalizable {
 		this.recursedBranches = null;
 		proxyBranchTimerStarted = false;
 		cTimerLock = new Object();
-		
-		// Here we create a clone which is available through getRequest(), the user can add
-		// custom headers and push routes here. Later when we actually proxy the request we
-		// will clone this request (with it's custome headers and routes), but we will override
-		// the modified RR and Path parameters (as defined in the spec).
+		// The clone available through getRequest() is only created if the application asks for it,
+		// otherwise the branch request is derived from the template shared by all branches of the proxy
+		// see createOutgoingRequest()
+	}
+	
+	/*
+	 * Here we create a clone which is available through getRequest(), the user can add
+	 * custom headers and push routes here. Later when we actually proxy the request we
+	 * will clone this request (with it's custome headers and routes), but we will override
+	 * the modified RR and Path parameters (as defined in the spec).
+	 */
+	private void createOutgoingRequest() {
 		Request cloned = (Request)originalRequest.getMessage().clone();
 		((MessageExt)cloned).setApplicationData(null);
 		this.outgoingRequest = (SipServletRequestImpl) proxy.getSipFactoryImpl().getMobicentsSipServletMessageFactory().createSipServletRequest(
@@ -237,13 +246,25 @@ public class ProxyBranchImpl implements MobicentsProxyBranch, Externalizable {
 					cancelRequest.send();
 				} else {
 					// We dont send cancel, but we must stop the invite retrans
-					SIPClientTransaction tx = (SIPClientTransaction) outgoingRequest.getTransaction();
-					
-					if(tx != null) {
-						StaticServiceHolder.disableRetransmissionTimer.invoke(tx);
-						//disableTimeoutTimer.invoke(tx);
-					} else {
-						logger.warn("Transaction is null. Can not stop retransmission, they are already dead in the branch.");
+					// the request may still be waiting for its hops to be located, its transaction only exists once it is sent
+					final Runnable stopRetransmissions = new Runnable() {
+						public void run() {
+							SIPClientTransaction tx = (SIPClientTransaction) outgoingRequest.getTransaction();
+							
+							if(tx != null) {
+								try {
+									StaticServiceHolder.disableRetransmissionTimer.invoke(tx);
+									//disableTimeoutTimer.invoke(tx);
+								} catch (Exception e) {
+									logger.error("Can not stop the retransmissions of " + tx, e);
+								}
+							} else {
+								logger.warn("Transaction is null. Can not stop retransmission, they are already dead in the branch.");
+							}
+						}
+					};
+					if(!outgoingRequest.runAfterPendingSend(stopRetransmissions)) {
+						stopRetransmissions.run();
 					}
 					/*
 					try {
@@ -258,9 +279,9 @@ public class ProxyBranchImpl implements MobicentsProxyBranch, Externalizable {
 				canceled = true;
 			}
 			if(!this.isStarted() &&
-					(outgoingRequest.getMethod().equalsIgnoreCase(Request.INVITE) ||
+					(originalRequest.getMethod().equalsIgnoreCase(Request.INVITE) ||
 							// https://code.google.com/p/sipservlets/issues/detail?id=253
-							outgoingRequest.getMethod().equalsIgnoreCase(Request.PRACK))) {
+							originalRequest.getMethod().equalsIgnoreCase(Request.PRACK))) {
 				canceled = true;	
 			}
 		}
@@ -275,8 +296,11 @@ public class ProxyBranchImpl implements MobicentsProxyBranch, Externalizable {
 	// This will be called when we are sure this branch will not succeed and we moved on to other branches.
 	public void onBranchTerminated() {
 		if(outgoingRequest != null) {
-			String txid = ((ViaHeader) outgoingRequest.getMessage().getHeader(ViaHeader.NAME)).getBranch();
-			proxy.removeTransaction(txid);
+			final ViaHeader viaHeader = (ViaHeader) outgoingRequest.getMessage().getHeader(ViaHeader.NAME);
+			// no Via yet if the request is still waiting for its hops to be located
+			if(viaHeader != null) {
+				proxy.removeTransaction(viaHeader.getBranch());
+			}
 		}
 	}
 	
@@ -370,6 +394,9 @@ public class ProxyBranchImpl implements MobicentsProxyBranch, Externalizable {
 	 * @see javax.servlet.sip.ProxyBranch#getRequest()
 	 */
 	public SipServletRequest getRequest() {
+		if(outgoingRequest == null && !started && originalRequest != null) {
+			createOutgoingRequest();
+		}
 		return outgoingRequest;
 	}
 
@@ -412,6 +439,15 @@ public class ProxyBranchImpl implements MobicentsProxyBranch, Externalizable {
 	 * specified destination. Subsequent requests are proxied through proxySubsequentRequest
 	 */
 	public void start()	{
+		forwardInitialRequest(prepareStart());
+	}
+	
+	/**
+	 * First half of {@link #start()}, checks the branch can be started, arms its timers and
+	 * creates the request to proxy without sending it so that a proxy forking in parallel
+	 * can build the requests for all its branches before sending them
+	 */
+	Request prepareStart() {
 		if(started) {
 			throw new IllegalStateException("Proxy branch alredy started!");
 		}
@@ -438,7 +474,7 @@ public class ProxyBranchImpl implements MobicentsProxyBranch, Externalizable {
 			}
 			if(recordRouteURIString != null) {
 				try {
-					recordRouteURI = ((SipURI)proxy.getSipFactoryImpl().createURI(recordRouteURIString));
+					recordRouteURI = proxy.getBranchTemplate().getRecordRouteURI(recordRouteURIString);
 				} catch (ServletParseException e) {
 					logger.error("A problem occured while setting the target URI while proxying a request " + recordRouteURIString, e);
 				}
@@ -455,13 +491,24 @@ public class ProxyBranchImpl implements MobicentsProxyBranch, Externalizable {
 				logger.error("A problem occured while setting the target URI while proxying a request " + targetURI, e);
 			}
 		}				
-		Request cloned = ProxyUtils.createProxiedRequest(
+		final Request cloned;
+		if(outgoingRequest != null) {
+			// the application accessed the request through getRequest() and may have modified it
+			cloned = ProxyUtils.createProxiedRequest(
 				outgoingRequest,
 				this,
 				destination,
 				this.outboundInterface,
 				recordRoute, 
 				this.pathURI);
+		} else {
+			cloned = proxy.getBranchTemplate().createBranchRequest(
+				this,
+				destination,
+				this.outboundInterface,
+				recordRoute, 
+				this.pathURI);
+		}
 		//tells the application dispatcher to stop routing the original request
 		//since it has been proxied
 		originalRequest.setRoutingState(RoutingState.PROXIED);
@@ -476,7 +523,14 @@ public class ProxyBranchImpl implements MobicentsProxyBranch, Externalizable {
 		}
 		
 		started = true;
-		forwardRequest(cloned, false);		
+		return cloned;
+	}
+	
+	/**
+	 * Second half of {@link #start()}, sends the request created by {@link #prepareStart()}
+	 */
+	void forwardInitialRequest(Request request) {
+		forwardRequest(request, false);
 	}
 
     /**
@@ -541,11 +595,15 @@ public class ProxyBranchImpl implements MobicentsProxyBranch, Externalizable {
 		}
 		clonedRequest.getTransactionApplicationData().setProxyBranch(this);			
 		try {
-			clonedRequest.send();			
+			// the transaction is only known once the request is sent, which may happen later on if the hops have to be looked up
+			clonedRequest.send(new Runnable() {
+				public void run() {
+					proxy.putTransaction(clonedRequest);
+				}
+			});
 		} catch (IOException e) {
 			throw new IllegalStateException(e);
 		}
-		proxy.putTransaction(clonedRequest);
 	}	
 
 	/**
@@ -892,9 +950,9 @@ public class ProxyBranchImpl implements MobicentsProxyBranch, Externalizable {
 
 		ViaHeader viaHeader = (ViaHeader) clonedRequest.getHeader(ViaHeader.NAME);
 		try {
-			final String branch = JainSipUtils.createBranch(
+			final String branch = JainSipUtils.createBranch(sipApplicationDispatcher,
 					sipSession.getKey().getApplicationSessionId(),  
-					sipApplicationDispatcher.getHashFromApplicationName(sipSession.getKey().getApplicationName()));			
+					sipSession.getKey().getApplicationName());			
 			viaHeader.setBranch(branch);
 		} catch (ParseException pe) {
 			logger.error("A problem occured while setting the via branch while proxying a request", pe);
@@ -1234,28 +1292,30 @@ public class ProxyBranchImpl implements MobicentsProxyBranch, Externalizable {
 		this.proxy = proxy;
 	}
 
-	public void readExternal(ObjectInput in) throws IOException,
+	public void readExternal(ObjectInput objectInput) throws IOException,
 			ClassNotFoundException {
+		final ReplicationInput in = new ReplicationInput(objectInput);
 		cTimerLock = new Object();
 		recurse = in.readBoolean();
 		recordRoutingEnabled = in.readBoolean();
 		started = in.readBoolean();
 		timedOut = in.readBoolean();
-		proxyBranchTimeout = in.readInt();
-		proxyBranch1xxTimeout = in.readInt();
+		proxyBranchTimeout = in.readSignedVarInt();
+		proxyBranch1xxTimeout = in.readSignedVarInt();
 		canceled = in.readBoolean();
 		isAddToPath = in.readBoolean();
 		waitingForPrack = in.readBoolean();
 		appSpecifiedRecordRoutingEnabled = in.readBoolean();
 	}
 
-	public void writeExternal(ObjectOutput out) throws IOException {
+	public void writeExternal(ObjectOutput objectOutput) throws IOException {
+		final ReplicationOutput out = new ReplicationOutput(objectOutput);
 		out.writeBoolean(recurse);
 		out.writeBoolean(recordRoutingEnabled);
 		out.writeBoolean(started);
 		out.writeBoolean(timedOut);
-		out.writeInt(proxyBranchTimeout);
-		out.writeInt(proxyBranch1xxTimeout);
+		out.writeSignedVarInt(proxyBranchTimeout);
+		out.writeSignedVarInt(proxyBranch1xxTimeout);
 		out.writeBoolean(canceled);
 		out.writeBoolean(isAddToPath);
 		out.writeBoolean(waitingForPrack);
@@ -0,0 +1,73 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.servlet.sip.proxy;
+
+import javax.servlet.sip.ServletParseException;
+import javax.servlet.sip.SipURI;
+import javax.servlet.sip.URI;
+import javax.sip.message.Request;
+
+import org.mobicents.servlet.sip.address.SipURIImpl;
+import org.mobicents.servlet.sip.message.SipFactoryImpl;
+import org.mobicents.servlet.sip.message.SipServletRequestImpl;
+
+/**
+ * Request to proxy prepared once for all the branches of a proxy.
+ * The branch independent changes (Route removal, Max-Forwards decrement) are applied only once
+ * and each branch only clones the result and applies its own Request-URI, Via, Record-Route and Path headers.
+ * This avoids deep cloning the original request twice per branch when forking to a large number of destinations.
+ */
+class ProxyBranchTemplate {
+	private final SipFactoryImpl sipFactoryImpl;
+	// wraps the prepared request the same way the per branch request returned by ProxyBranch.getRequest() does
+	private final SipServletRequestImpl preparedRequest;
+	private String recordRouteURIString;
+	private SipURIImpl recordRouteURI;
+	
+	ProxyBranchTemplate(SipServletRequestImpl originalRequest, SipFactoryImpl sipFactoryImpl) {
+		this.sipFactoryImpl = sipFactoryImpl;
+		final Request request = ProxyUtils.prepareProxiedRequest(originalRequest, sipFactoryImpl);
+		this.preparedRequest = (SipServletRequestImpl) sipFactoryImpl.getMobicentsSipServletMessageFactory().createSipServletRequest(
+				request,
+				originalRequest.getSipSession(),
+				null, null, false);
+	}
+	
+	/**
+	 * Create the request to send on the given branch
+	 */
+	Request createBranchRequest(ProxyBranchImpl proxyBranch, URI destination, SipURI outboundInterface, SipURI recordRoute, SipURI path) {
+		final Request cloned = (Request) preparedRequest.getMessage().clone();
+		return ProxyUtils.completeProxiedRequest(cloned, preparedRequest, proxyBranch, destination, outboundInterface, recordRoute, path);
+	}
+	
+	/**
+	 * Returns a copy of the Record-Route URI for the given string, the string being parsed only once 
+	 * since all branches of a proxy usually share the same one
+	 */
+	SipURI getRecordRouteURI(String uri) throws ServletParseException {
+		if(recordRouteURI == null || !uri.equals(recordRouteURIString)) {
+			recordRouteURI = (SipURIImpl) sipFactoryImpl.createURI(uri);
+			recordRouteURIString = uri;
+		}
+		return recordRouteURI.clone();
+	}
+}
@@ -25,6 +25,7 @@ import org.apache.log4j.Logger;
 import org.mobicents.javax.servlet.sip.ResponseType;
 import org.mobicents.servlet.sip.core.SipContext;
 import org.mobicents.servlet.sip.core.session.MobicentsSipApplicationSession;
+import org.mobicents.servlet.sip.core.timers.HashedWheelTimer;
 
 public class ProxyBranchTimerTask extends TimerTask{
 
@@ -32,6 +33,10 @@ public class ProxyBranchTimerTask extends TimerTask{
 	private ProxyBranchImpl proxyBranch;
 	private ResponseType responseType;
 	private MobicentsSipApplicationSession sipApplicationSession;
+	// handle of this task when it is scheduled on the Wheel proxy timer service
+	private volatile HashedWheelTimer.Timeout timeout;
+	// the task may be cancelled before its wheel handle is set, in which case the handle is cancelled as soon as it is set
+	private volatile boolean cancelled;
 	
 	public ProxyBranchTimerTask(ProxyBranchImpl proxyBranch, ResponseType responseType, MobicentsSipApplicationSession sipApplicationSession)
 	{
@@ -48,15 +53,7 @@ public class ProxyBranchTimerTask extends TimerTask{
 				// https://github.com/Mobicents/sip-servlets/issues/70 This timer task needs to be executed 
 				// only if the sipapplicationsession is not currently in use or there is concurrency issues
 				sipContext.enterSipApp(sipApplicationSession, null, false, true);
-				boolean batchStarted = sipContext.enterSipAppHa(true);
-				if(proxyBranch != null) {
-					try {
-						proxyBranch.onTimeout(this.responseType);
-					} finally {							
-						sipContext.exitSipAppHa(null, null, batchStarted);
-						sipContext.exitSipApp(sipApplicationSession, null);
-					}
-				}
+				onTimeout(sipContext);
 		} catch (Exception e) {
 			logger.error("Problem in timeout task", e);
 		} finally {
@@ -64,10 +61,72 @@ public class ProxyBranchTimerTask extends TimerTask{
 		}
 	}
 	
+	/**
+	 * Same as {@link #run()} but doesn't wait for the sip application session if it is locked by another thread
+	 * @return false if the session is locked, the task has not been run and can be run again later
+	 */
+	public boolean tryRun()
+	{
+		try {
+			final SipContext sipContext = sipApplicationSession.getSipContext();
+			if(!sipContext.tryEnterSipApp(sipApplicationSession, null, false, true)) {
+				return false;
+			}
+			onTimeout(sipContext);
+		} catch (Exception e) {
+			logger.error("Problem in timeout task", e);
+		}
+		this.proxyBranch = null;
+		return true;
+	}
+	
+	private void onTimeout(SipContext sipContext) {
+		boolean batchStarted = sipContext.enterSipAppHa(true);
+		try {
+			if(proxyBranch != null) {
+				proxyBranch.onTimeout(this.responseType);
+			}
+		} finally {							
+			sipContext.exitSipAppHa(null, null, batchStarted);
+			sipContext.exitSipApp(sipApplicationSession, null);
+		}
+	}
+	
+	/**
+	 * @param timeout the handle of this task on the wheel of the proxy timer service
+	 */
+	public void setTimeout(HashedWheelTimer.Timeout timeout) {
+		this.timeout = timeout;
+		if(cancelled && timeout != null) {
+			this.timeout = null;
+			timeout.cancel();
+		}
+	}
+
+	/**
+	 * @return the handle of this task on the wheel of the proxy timer service, null if it isn't scheduled on a wheel
+	 */
+	public HashedWheelTimer.Timeout getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * @return the sip application session the proxy branch of this task belongs to
+	 */
+	public MobicentsSipApplicationSession getSipApplicationSession() {
+		return sipApplicationSession;
+	}
+
 	@Override
 	public boolean cancel() {
 		proxyBranch = null;
 		responseType = null;
+		cancelled = true;
+		HashedWheelTimer.Timeout scheduledTimeout = timeout;
+		if(scheduledTimeout != null) {
+			timeout = null;
+			scheduledTimeout.cancel();
+		}
 		return super.cancel();
 	}
 
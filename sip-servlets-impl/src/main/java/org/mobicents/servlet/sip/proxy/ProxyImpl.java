@@ -72,6 +72,8 @@ import org.mobicents.servlet.sip.core.message.MobicentsSipServletRequest;
 import org.mobicents.servlet.sip.core.message.MobicentsSipServletResponse;
 import org.mobicents.servlet.sip.core.proxy.MobicentsProxy;
 import org.mobicents.servlet.sip.core.proxy.MobicentsProxyBranch;
+import org.mobicents.servlet.sip.core.replication.ReplicationInput;
+import org.mobicents.servlet.sip.core.replication.ReplicationOutput;
 import org.mobicents.servlet.sip.core.session.MobicentsSipApplicationSession;
 import org.mobicents.servlet.sip.core.session.MobicentsSipSession;
 import org.mobicents.servlet.sip.core.timers.ProxyTimerService;
@@ -121,6 +123,8 @@ public class ProxyImpl implements MobicentsProxy, Externalizable {
 	private final transient Map<String, TransactionApplicationData> transactionMap = new ConcurrentHashMap<String, TransactionApplicationData>();
 	
 	private transient Map<URI, ProxyBranchImpl> proxyBranches;
+	// request to proxy shared by all the branches, built on the first branch start
+	private transient ProxyBranchTemplate branchTemplate;
 	private boolean started; 
 	private boolean ackReceived = false;
 	// https://telestax.atlassian.net/browse/MSS-153 removing can use start flag to optimize memory usage
@@ -372,6 +376,16 @@ public class ProxyImpl implements MobicentsProxy, Externalizable {
 		return new ArrayList<ProxyBranch>(this.proxyBranches.values());
 	}
 		
+	/**
+	 * @return the request to proxy shared by all the branches of this proxy
+	 */
+	ProxyBranchTemplate getBranchTemplate() {
+		if(branchTemplate == null) {
+			branchTemplate = new ProxyBranchTemplate(originalRequest, getSipFactoryImpl());
+		}
+		return branchTemplate;
+	}
+	
 	public Map<URI, ProxyBranchImpl> getProxyBranchesMap() {
 		return this.proxyBranches;
 	}
@@ -625,9 +639,21 @@ public class ProxyImpl implements MobicentsProxy, Externalizable {
 		
 		started = true;
 		if(this.parallel) {
-			for (final MobicentsProxyBranch pb : this.proxyBranches.values()) {
-				if(!pb.isStarted()) {
-					pb.start();
+			// build the requests for all the branches first from the shared template
+			// and only then send them out so the branches are forked as a batch
+			final List<ProxyBranchImpl> branchesToStart = new ArrayList<ProxyBranchImpl>(proxyBranches.size());
+			final List<Request> requestsToSend = new ArrayList<Request>(proxyBranches.size());
+			try {
+				for (final ProxyBranchImpl pb : this.proxyBranches.values()) {
+					if(!pb.isStarted()) {
+						requestsToSend.add(pb.prepareStart());
+						branchesToStart.add(pb);
+					}
+				}
+			} finally {
+				// the branches already prepared are started even if a later one failed, as they were before batching
+				for (int i = 0; i < branchesToStart.size(); i++) {
+					branchesToStart.get(i).forwardInitialRequest(requestsToSend.get(i));
 				}
 			}
 		} else {
@@ -918,6 +944,7 @@ public class ProxyImpl implements MobicentsProxy, Externalizable {
 					bestResponseSent = proxiedResponse.getStatus();
 					proxyBranches.clear();
 					originalRequest = null;
+					branchTemplate = null;
 					// not needed cleanup in the finally clause will do it
 //					bestBranch = null;
 //					bestResponse = null;
@@ -1097,8 +1124,9 @@ public class ProxyImpl implements MobicentsProxy, Externalizable {
 		return transactionMap;
 	}
 
-	public void readExternal(ObjectInput in) throws IOException,
+	public void readExternal(ObjectInput objectInput) throws IOException,
 			ClassNotFoundException {
+		final ReplicationInput in = new ReplicationInput(objectInput);
 		if(ReplicationStrategy.EarlyDialog == StaticServiceHolder.sipStandardService.getReplicationStrategy()) {
 			// Issue 2587 : read only if not null.
 			if(in.readBoolean()) {
@@ -1106,8 +1134,8 @@ public class ProxyImpl implements MobicentsProxy, Externalizable {
 			}
 		}
 		recurse = in.readBoolean();
-		proxyTimeout = in.readInt();
-		seqSearchTimeout = in.readInt();
+		proxyTimeout = in.readSignedVarInt();
+		seqSearchTimeout = in.readSignedVarInt();
 		supervised = in.readBoolean();
 		recordRoutingEnabled = in.readBoolean();
 		parallel = in.readBoolean();
@@ -1120,8 +1148,8 @@ public class ProxyImpl implements MobicentsProxy, Externalizable {
 		if(finalBranchForSubsequentRequests != null) {
 			finalBranchForSubsequentRequests.setProxy(this);
 		}
-		previousNode = in.readUTF();
-		callerFromTag = in.readUTF();
+		previousNode = in.readString();
+		callerFromTag = in.readString();
 		storeTerminationInfo = in.readBoolean();
 		if (storeTerminationInfo) {
 			terminationInfo = (ProxyTerminationInfo) in.readObject();
@@ -1130,7 +1158,8 @@ public class ProxyImpl implements MobicentsProxy, Externalizable {
 		this.proxyBranches = new LinkedHashMap<URI, ProxyBranchImpl> ();
 	}
 
-	public void writeExternal(ObjectOutput out) throws IOException {
+	public void writeExternal(ObjectOutput objectOutput) throws IOException {
+		final ReplicationOutput out = new ReplicationOutput(objectOutput);
 		if(ReplicationStrategy.EarlyDialog == StaticServiceHolder.sipStandardService.getReplicationStrategy()) {
 			// Issue 2587 : replicating original request is only useful for early dialog failover
 			if(originalRequest != null && originalRequest.getMethod().equalsIgnoreCase(Request.INVITE)) {
@@ -1141,8 +1170,8 @@ public class ProxyImpl implements MobicentsProxy, Externalizable {
 			}
 		}
 		out.writeBoolean(recurse);
-		out.writeInt(proxyTimeout);
-		out.writeInt(seqSearchTimeout);
+		out.writeSignedVarInt(proxyTimeout);
+		out.writeSignedVarInt(seqSearchTimeout);
 		out.writeBoolean(supervised);
 		out.writeBoolean(recordRoutingEnabled);
 		out.writeBoolean(parallel);
@@ -1152,8 +1181,8 @@ public class ProxyImpl implements MobicentsProxy, Externalizable {
 		out.writeBoolean(ackReceived);
 //		out.writeBoolean(tryingSent);
 		out.writeObject(finalBranchForSubsequentRequests);
-		out.writeUTF(previousNode);
-		out.writeUTF(callerFromTag);
+		out.writeString(previousNode);
+		out.writeString(callerFromTag);
 		out.writeBoolean(storeTerminationInfo);
 		if (storeTerminationInfo) {
 			out.writeObject(terminationInfo);
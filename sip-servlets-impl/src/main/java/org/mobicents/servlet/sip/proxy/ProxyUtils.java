@@ -65,17 +65,22 @@ public class ProxyUtils {
 	private static final Logger logger = Logger.getLogger(ProxyUtils.class);
 	
 	public static Request createProxiedRequest(SipServletRequestImpl originalRequest, ProxyBranchImpl proxyBranch, URI destination, SipURI outboundInterface, SipURI routeRecord, SipURI path)
+	{
+		final Request clonedRequest = prepareProxiedRequest(originalRequest, ((ProxyImpl) proxyBranch.getProxy()).getSipFactoryImpl());
+		return completeProxiedRequest(clonedRequest, originalRequest, proxyBranch, destination, outboundInterface, routeRecord, path);
+	}
+	
+	/**
+	 * Clone the request to proxy and apply the changes that don't depend on the branch it is proxied on : 
+	 * removal of the Route header pointing to this application and decrement of Max-Forwards.
+	 * The result can be cloned for each branch and completed with {@link #completeProxiedRequest(Request, SipServletRequestImpl, ProxyBranchImpl, URI, SipURI, SipURI, SipURI)}
+	 */
+	public static Request prepareProxiedRequest(SipServletRequestImpl originalRequest, SipFactoryImpl sipFactoryImpl)
 	{
 		try {
 			final Request clonedRequest = (Request) originalRequest.getMessage().clone();
-			final String method = clonedRequest.getMethod();
-			final ProxyImpl proxy = (ProxyImpl) proxyBranch.getProxy(); 
-			final SipFactoryImpl sipFactoryImpl = proxy.getSipFactoryImpl();
 			((MessageExt)clonedRequest).setApplicationData(null);
 
-
-			String outboundTransport = null;
-
 			RouteHeader rHeader = (RouteHeader) clonedRequest.getHeader(RouteHeader.NAME);
 			if(rHeader != null) {
 				String nextApp = ((javax.sip.address.SipURI)rHeader.getAddress().getURI()).getParameter(MessageDispatcher.RR_PARAM_APPLICATION_NAME);
@@ -92,16 +97,44 @@ public class ProxyUtils {
 								nextSipAppId.equals(sipAppKey.getId())) {
 							clonedRequest.removeFirst(RouteHeader.NAME);
 						}
-						rHeader = (RouteHeader) clonedRequest.getHeader(RouteHeader.NAME);
 					}
 				}
-				if(rHeader != null) {
-					outboundTransport = ((javax.sip.address.SipURI)rHeader.getAddress().getURI()).getTransportParam();
-					if(outboundTransport == null) {
-						outboundTransport = ListeningPoint.UDP;
-					}
+			}
+
+			// Decrease max forwards if available
+			MaxForwardsHeader mf = (MaxForwardsHeader) clonedRequest
+				.getHeader(MaxForwardsHeader.NAME);
+			if (mf == null) {
+				mf = SipFactoryImpl.headerFactory.createMaxForwardsHeader(70);
+				clonedRequest.addHeader(mf);
+			} else {
+				mf.setMaxForwards(mf.getMaxForwards() - 1);
+			}
+			return clonedRequest;
+		} catch (Exception e) {
+			throw new RuntimeException("Problem while creating the proxied request for message " + originalRequest.getMessage(), e);
+		}
+	}
+	
+	/**
+	 * Apply the changes specific to a branch to a request returned by {@link #prepareProxiedRequest(SipServletRequestImpl, SipFactoryImpl)} :
+	 * Request-URI, Via, Record-Route and Path headers
+	 */
+	public static Request completeProxiedRequest(Request clonedRequest, SipServletRequestImpl originalRequest, ProxyBranchImpl proxyBranch, URI destination, SipURI outboundInterface, SipURI routeRecord, SipURI path)
+	{
+		try {
+			final String method = clonedRequest.getMethod();
+			final ProxyImpl proxy = (ProxyImpl) proxyBranch.getProxy(); 
+			final SipFactoryImpl sipFactoryImpl = proxy.getSipFactoryImpl();
+
+			String outboundTransport = null;
+
+			final RouteHeader rHeader = (RouteHeader) clonedRequest.getHeader(RouteHeader.NAME);
+			if(rHeader != null) {
+				outboundTransport = ((javax.sip.address.SipURI)rHeader.getAddress().getURI()).getTransportParam();
+				if(outboundTransport == null) {
+					outboundTransport = ListeningPoint.UDP;
 				}
-				
 			}
 			if(outboundTransport == null) {
 				// Fix for Issue 2783 : Proxying to non-UDP transport is broken
@@ -224,16 +257,6 @@ public class ProxyUtils {
 				}
 			}
 
-			// Decrease max forwards if available
-			MaxForwardsHeader mf = (MaxForwardsHeader) clonedRequest
-				.getHeader(MaxForwardsHeader.NAME);
-			if (mf == null) {
-				mf = SipFactoryImpl.headerFactory.createMaxForwardsHeader(70);
-				clonedRequest.addHeader(mf);
-			} else {
-				mf.setMaxForwards(mf.getMaxForwards() - 1);
-			}
-
 			if (method.equals(Request.CANCEL)) {				
 				// Cancel is hop by hop so remove all other via headers.
 				clonedRequest.removeHeader(ViaHeader.NAME);				
@@ -256,7 +279,7 @@ public class ProxyUtils {
 						logger.debug("reusing original branch id " + branchId);
 					}
 				} else {
-					branchId = JainSipUtils.createBranch(sipAppKey.getId(),  appName);
+					branchId = JainSipUtils.createBranch(sipFactoryImpl.getSipApplicationDispatcher(), sipAppKey.getId(), sipAppKey.getApplicationName());
 				}
 				viaHeader = JainSipUtils.createViaHeader(
 						sipFactoryImpl.getSipNetworkInterfaceManager(), clonedRequest, branchId, null);
@@ -278,7 +301,7 @@ public class ProxyUtils {
 						logger.debug("reusing original branch id " + branchId);
 					}
 				} else {
-					branchId = JainSipUtils.createBranch(sipAppKey.getId(),  appName);
+					branchId = JainSipUtils.createBranch(sipFactoryImpl.getSipApplicationDispatcher(), sipAppKey.getId(), sipAppKey.getApplicationName());
 				}
 
 				viaHeader = SipFactoryImpl.headerFactory.createViaHeader(
@@ -20,7 +20,7 @@
  * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
  */
 
-package org.mobicents.servlet.sip.catalina.rules;
+package org.mobicents.servlet.sip.rules;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -32,7 +32,7 @@ import org.mobicents.servlet.sip.core.descriptor.MatchingRule;
 /**
  * @author Thomas Leseney
  */
-public class AndRule implements MatchingRule {
+public class AndRule implements FieldMatchingRule {
 	
     private List<MatchingRule> criteria = new ArrayList<MatchingRule>();
     
@@ -42,9 +42,17 @@ public class AndRule implements MatchingRule {
        criteria.add(c); 
     }
     
+    public List<MatchingRule> getCriteria() {
+        return criteria;
+    }
+    
     public boolean matches(SipServletRequest request) {
+        return matches(new RequestFields(request));
+    }
+    
+    public boolean matches(RequestFields fields) {
         for (MatchingRule rule : criteria) {
-            if (!rule.matches(request)) 
+            if (!fields.matches(rule)) 
                 return false;
         }
         return true;
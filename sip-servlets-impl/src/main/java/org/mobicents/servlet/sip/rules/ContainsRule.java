@@ -20,9 +20,7 @@
  * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
  */
 
-package org.mobicents.servlet.sip.catalina.rules;
-
-import javax.servlet.sip.SipServletRequest;
+package org.mobicents.servlet.sip.rules;
 
 import org.mobicents.servlet.sip.core.descriptor.MatchingRule;
 
@@ -43,8 +41,7 @@ public class ContainsRule extends RequestRule implements MatchingRule {
         this.ignoreCase = ignoreCase;
     }
     
-    public boolean matches(SipServletRequest request) {
-    	String requestValue = getValue(request);
+    protected boolean matchesValue(String requestValue) {
     	if (requestValue == null) {
     		return false;
     	}
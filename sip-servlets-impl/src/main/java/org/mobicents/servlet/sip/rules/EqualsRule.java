@@ -20,9 +20,7 @@
  * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
  */
 
-package org.mobicents.servlet.sip.catalina.rules;
-
-import javax.servlet.sip.SipServletRequest;
+package org.mobicents.servlet.sip.rules;
 
 import org.mobicents.servlet.sip.core.descriptor.MatchingRule;
 
@@ -39,11 +37,19 @@ public class EqualsRule extends RequestRule implements MatchingRule {
 		this.ignoreCase = ignoreCase;
 	}
 
-	public boolean matches(SipServletRequest request) {
+	protected boolean matchesValue(String requestValue) {
 		if (!ignoreCase) {
-			return value.equals(getValue(request));
+			return value.equals(requestValue);
 		}
-		return value.equalsIgnoreCase(getValue(request));
+		return value.equalsIgnoreCase(requestValue);
+	}
+
+	public String getValue() {
+		return value;
+	}
+
+	public boolean isIgnoreCase() {
+		return ignoreCase;
 	}
 
 	public String getExpression() {
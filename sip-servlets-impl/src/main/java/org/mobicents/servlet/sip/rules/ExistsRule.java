@@ -20,9 +20,7 @@
  * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
  */
 
-package org.mobicents.servlet.sip.catalina.rules;
-
-import javax.servlet.sip.SipServletRequest;
+package org.mobicents.servlet.sip.rules;
 
 import org.mobicents.servlet.sip.core.descriptor.MatchingRule;
 
@@ -35,8 +33,8 @@ public class ExistsRule extends RequestRule implements MatchingRule {
         super(var);
     }
     
-    public boolean matches(SipServletRequest request) {
-    	return getValue(request) != null;
+    protected boolean matchesValue(String requestValue) {
+    	return requestValue != null;
     }
 
     public String getExpression() {
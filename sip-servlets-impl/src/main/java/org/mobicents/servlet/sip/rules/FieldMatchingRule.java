@@ -1,6 +1,6 @@
 /*
  * TeleStax, Open Source Cloud Communications
- * Copyright 2011-2015, Telestax Inc and individual contributors
+ * Copyright 2011-2016, Telestax Inc and individual contributors
  * by the @authors tag.
  *
  * This program is free software: you can redistribute it and/or modify
@@ -17,30 +17,19 @@
  * along with this program.  If not, see <http://www.gnu.org/licenses/>
  */
 
-package org.mobicents.servlet.sip.undertow.rules;
 
-import javax.servlet.sip.SipServletRequest;
+package org.mobicents.servlet.sip.rules;
 
 import org.mobicents.servlet.sip.core.descriptor.MatchingRule;
 
 /**
- * @author Thomas Leseney
- *
- *         This class is based on the contents of org.mobicents.servlet.sip.catalina.rules package from sip-servlet-as7 project,
- *         re-implemented for jboss as8 (wildfly) by:
- * @author kakonyi.istvan@alerant.hu
+ * A {@link MatchingRule} that can be evaluated against fields already extracted from the request by other rules.
  */
-public class ExistsRule extends RequestRule implements MatchingRule {
-
-    public ExistsRule(String var) {
-        super(var);
-    }
-
-    public boolean matches(SipServletRequest request) {
-        return getValue(request) != null;
-    }
-
-    public String getExpression() {
-        return "(" + getVarName() + " != null)";
-    }
+public interface FieldMatchingRule extends MatchingRule {
+	/**
+	 * Check if the request the fields are extracted from matches this rule
+	 * @param fields the fields of the request to check
+	 * @return true if the request matches this rule
+	 */
+	boolean matches(RequestFields fields);
 }
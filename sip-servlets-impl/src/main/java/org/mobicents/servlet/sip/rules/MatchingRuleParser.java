@@ -20,7 +20,7 @@
  * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
  */
 
-package org.mobicents.servlet.sip.catalina.rules;
+package org.mobicents.servlet.sip.rules;
 
 import org.mobicents.servlet.sip.core.descriptor.MatchingRule;
 import org.w3c.dom.Element;
@@ -20,7 +20,7 @@
  * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
  */
 
-package org.mobicents.servlet.sip.catalina.rules;
+package org.mobicents.servlet.sip.rules;
 
 import javax.servlet.sip.SipServletRequest;
 
@@ -29,7 +29,7 @@ import org.mobicents.servlet.sip.core.descriptor.MatchingRule;
 /**
  * @author Thomas Leseney
  */
-public class NotRule implements MatchingRule {
+public class NotRule implements FieldMatchingRule {
     
 	private MatchingRule criterion;
     
@@ -40,7 +40,11 @@ public class NotRule implements MatchingRule {
     }
     
     public boolean matches(SipServletRequest request) {
-        return !criterion.matches(request);
+        return matches(new RequestFields(request));
+    }
+    
+    public boolean matches(RequestFields fields) {
+        return !fields.matches(criterion);
     }
 
     public String getExpression() {
@@ -20,7 +20,7 @@
  * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
  */
 
-package org.mobicents.servlet.sip.catalina.rules;
+package org.mobicents.servlet.sip.rules;
 
 import java.util.ArrayList;
 
@@ -31,7 +31,7 @@ import org.mobicents.servlet.sip.core.descriptor.MatchingRule;
 /**
  * @author Thomas Leseney
  */
-public class OrRule implements MatchingRule {
+public class OrRule implements FieldMatchingRule {
 	
     private ArrayList<MatchingRule> criteria = new ArrayList<MatchingRule>();
     
@@ -42,8 +42,12 @@ public class OrRule implements MatchingRule {
     }
     
     public boolean matches(SipServletRequest request) {
+        return matches(new RequestFields(request));
+    }
+    
+    public boolean matches(RequestFields fields) {
         for (MatchingRule rule : criteria) {
-            if (rule.matches(request)) { 
+            if (fields.matches(rule)) { 
                 return true;
             }
         }
@@ -0,0 +1,101 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.servlet.sip.rules;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.sip.SipServletRequest;
+
+import org.mobicents.servlet.sip.core.descriptor.MatchingRule;
+import org.mobicents.servlet.sip.rules.request.Extractor;
+
+/**
+ * The fields of a request extracted while evaluating servlet selection rules.
+ *
+ * Every intermediate value of an extractor chain is remembered under its path (request.from, request.from.uri,
+ * request.from.uri.user, ...) so that all the rules evaluated against the same request share the extractions and each
+ * field is extracted at most once. Not thread safe, an instance is meant to be used by the thread selecting the servlet
+ * of a single request.
+ */
+public class RequestFields {
+	// marks fields extracted as null
+	private static final Object NULL = new Object();
+
+	private final SipServletRequest request;
+	private final Map<String, Object> fields = new HashMap<String, Object>();
+	private final Map<String, String> values = new HashMap<String, String>();
+
+	public RequestFields(SipServletRequest request) {
+		this.request = request;
+	}
+
+	public SipServletRequest getRequest() {
+		return request;
+	}
+
+	/**
+	 * Evaluate a rule against the request, reusing the fields already extracted if the rule supports it
+	 */
+	public boolean matches(MatchingRule rule) {
+		if(rule instanceof FieldMatchingRule) {
+			return ((FieldMatchingRule) rule).matches(this);
+		}
+		return rule.matches(request);
+	}
+
+	/**
+	 * @param varName the full path of the field, as found in the var element of the rule
+	 * @param paths the path of each step of the chain
+	 * @param extractors the extractor of each step of the chain
+	 * @return the string value of the field, null if one of the steps gave null
+	 */
+	String getValue(String varName, String[] paths, Extractor[] extractors) {
+		String value = values.get(varName);
+		if(value != null) {
+			return value;
+		}
+		if(values.containsKey(varName)) {
+			return null;
+		}
+		final Object field = extract(paths, extractors);
+		value = field == null ? null : field.toString();
+		values.put(varName, value);
+		return value;
+	}
+
+	private Object extract(String[] paths, Extractor[] extractors) {
+		Object o = request;
+		for (int i = 0; i < extractors.length; i++) {
+			final Object field = fields.get(paths[i]);
+			if(field == null) {
+				o = extractors[i].extract(o);
+				fields.put(paths[i], o == null ? NULL : o);
+			} else {
+				o = field == NULL ? null : field;
+			}
+			if(o == null) {
+				return null;
+			}
+		}
+		return o;
+	}
+}
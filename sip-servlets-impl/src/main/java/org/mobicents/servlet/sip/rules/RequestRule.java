@@ -20,7 +20,7 @@
  * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
  */
 
-package org.mobicents.servlet.sip.catalina.rules;
+package org.mobicents.servlet.sip.rules;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -28,27 +28,29 @@ import java.util.StringTokenizer;
 
 import javax.servlet.sip.SipServletRequest;
 
-import org.mobicents.servlet.sip.catalina.rules.request.DisplayName;
-import org.mobicents.servlet.sip.catalina.rules.request.Extractor;
-import org.mobicents.servlet.sip.catalina.rules.request.From;
-import org.mobicents.servlet.sip.catalina.rules.request.Host;
-import org.mobicents.servlet.sip.catalina.rules.request.Method;
-import org.mobicents.servlet.sip.catalina.rules.request.Param;
-import org.mobicents.servlet.sip.catalina.rules.request.Port;
-import org.mobicents.servlet.sip.catalina.rules.request.Scheme;
-import org.mobicents.servlet.sip.catalina.rules.request.Tel;
-import org.mobicents.servlet.sip.catalina.rules.request.To;
-import org.mobicents.servlet.sip.catalina.rules.request.Uri;
-import org.mobicents.servlet.sip.catalina.rules.request.User;
-import org.mobicents.servlet.sip.core.descriptor.MatchingRule;
+import org.mobicents.servlet.sip.rules.request.DisplayName;
+import org.mobicents.servlet.sip.rules.request.Extractor;
+import org.mobicents.servlet.sip.rules.request.From;
+import org.mobicents.servlet.sip.rules.request.Host;
+import org.mobicents.servlet.sip.rules.request.Method;
+import org.mobicents.servlet.sip.rules.request.Param;
+import org.mobicents.servlet.sip.rules.request.Port;
+import org.mobicents.servlet.sip.rules.request.Scheme;
+import org.mobicents.servlet.sip.rules.request.Tel;
+import org.mobicents.servlet.sip.rules.request.To;
+import org.mobicents.servlet.sip.rules.request.Uri;
+import org.mobicents.servlet.sip.rules.request.User;
 
 /**
  * @author Thomas Leseney
  */
-public abstract class RequestRule implements MatchingRule {
+public abstract class RequestRule implements FieldMatchingRule {
     
 	private String varName;
     private List<Extractor> extractors;
+    // path of the value produced by each extractor, request.from, request.from.uri, ...
+    private String[] paths;
+    private Extractor[] extractorArray;
     
     protected RequestRule(String varName) {
     	this.varName = varName;
@@ -59,8 +61,11 @@ public abstract class RequestRule implements MatchingRule {
 			throw new IllegalArgumentException("Expression does not start with request: " + varName);
 		}
 		
+		List<String> pathList = new ArrayList<String>();
+		StringBuilder path = new StringBuilder(lastToken);
 		while (st.hasMoreTokens()) {
 			String token = st.nextToken();
+			path.append('.').append(token);
 			if (token.equals("from")) { 
 				extractors.add(new From(lastToken));
 			} else if (token.equals("uri")) { 
@@ -87,6 +92,7 @@ public abstract class RequestRule implements MatchingRule {
 				}
 				String param = st.nextToken();
 				extractors.add(new Param(lastToken, param));
+				path.append('.').append(param);
 				if (st.hasMoreTokens()) {
 					throw new IllegalArgumentException("Invalid var: " + st.nextToken() + " in " + varName);
 				}
@@ -94,10 +100,27 @@ public abstract class RequestRule implements MatchingRule {
             else {
                 throw new IllegalArgumentException("Invalid property: " + token + " in " + varName);
             }
+            pathList.add(path.toString());
             lastToken = token;
 		}
+		extractorArray = extractors.toArray(new Extractor[extractors.size()]);
+		paths = pathList.toArray(new String[pathList.size()]);
     }
     
+    public boolean matches(SipServletRequest request) {
+    	return matchesValue(getValue(request));
+    }
+    
+    public boolean matches(RequestFields fields) {
+    	return matchesValue(getValue(fields));
+    }
+    
+    /**
+     * @param requestValue the value extracted from the request, can be null
+     * @return true if the value satisfies this rule
+     */
+    protected abstract boolean matchesValue(String requestValue);
+    
     public String getValue(SipServletRequest request) {
     	Object o = request;
 		for (Extractor e : extractors) {
@@ -109,6 +132,13 @@ public abstract class RequestRule implements MatchingRule {
 		return o.toString();
     }
     
+    /**
+     * Same as {@link #getValue(SipServletRequest)} but reusing the fields already extracted from the request
+     */
+    public String getValue(RequestFields fields) {
+    	return fields.getValue(varName, paths, extractorArray);
+    }
+    
     public String getVarName() {
     	return varName;
     }
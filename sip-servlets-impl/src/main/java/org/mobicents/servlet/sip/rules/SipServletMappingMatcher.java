@@ -0,0 +1,262 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.servlet.sip.rules;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import javax.servlet.sip.SipServletRequest;
+
+import org.apache.log4j.Logger;
+import org.mobicents.servlet.sip.core.descriptor.MatchingRule;
+import org.mobicents.servlet.sip.core.descriptor.MobicentsSipServletMapping;
+
+/**
+ * Selects the servlet mapping of an application matching a request, as defined by JSR 289 section 16.2 : the first
+ * mapping, in the order of the deployment descriptor, whose rule matches the request.
+ *
+ * Instead of trying every rule in turn, the mappings are compiled into a decision tree. Most rules require a field to
+ * be equal to a given value (request.method == INVITE, request.uri.user == alice, ...) : at each node the field
+ * constrained by the most mappings is extracted once and its value selects, through a hash lookup, the only mappings
+ * that can still match, i.e. the ones requiring that value plus the ones not constraining that field. The rules of
+ * the few mappings left in the leaf reached are then evaluated in order, all of them sharing the fields already
+ * extracted from the request through {@link RequestFields}.
+ *
+ * Instances are immutable and can be shared by all the threads selecting servlets.
+ */
+public class SipServletMappingMatcher {
+	private static final Logger logger = Logger.getLogger(SipServletMappingMatcher.class);
+
+	// a field is only worth switching on if it splits at least this number of mappings
+	private static final int MIN_SWITCH_SIZE = 2;
+	// bounds the size of the tree, the mappings not constraining a field are copied in all its branches
+	private static final int MAX_DEPTH = 4;
+
+	private final List<MobicentsSipServletMapping> mappings;
+	private final Node root;
+
+	/**
+	 * @param mappings the mappings in the order of the deployment descriptor, they are copied
+	 */
+	public SipServletMappingMatcher(List<MobicentsSipServletMapping> mappings) {
+		this.mappings = Collections.unmodifiableList(new ArrayList<MobicentsSipServletMapping>(mappings));
+		final List<CompiledMapping> compiledMappings = new ArrayList<CompiledMapping>(mappings.size());
+		for (int i = 0; i < this.mappings.size(); i++) {
+			compiledMappings.add(new CompiledMapping(this.mappings.get(i), i));
+		}
+		root = compile(compiledMappings, new HashSet<String>(), 0);
+		if(logger.isDebugEnabled()) {
+			logger.debug("compiled " + mappings.size() + " servlet mappings into " + root);
+		}
+	}
+
+	public List<MobicentsSipServletMapping> getMappings() {
+		return mappings;
+	}
+
+	/**
+	 * @param request the initial request to select a servlet for
+	 * @return the first mapping matching the request, null if none does
+	 */
+	public MobicentsSipServletMapping match(SipServletRequest request) {
+		return root.match(new RequestFields(request));
+	}
+
+	private static Node compile(List<CompiledMapping> candidates, Set<String> switchedFields, int depth) {
+		if(candidates.size() < MIN_SWITCH_SIZE || depth >= MAX_DEPTH) {
+			return new Leaf(candidates);
+		}
+		// find the field constrained by the most candidates
+		final Map<String, Integer> constrainedCounts = new HashMap<String, Integer>();
+		String bestField = null;
+		int bestCount = 0;
+		for (CompiledMapping candidate : candidates) {
+			for (String field : candidate.equalsRules.keySet()) {
+				if(switchedFields.contains(field)) {
+					continue;
+				}
+				final Integer previousCount = constrainedCounts.get(field);
+				final int count = previousCount == null ? 1 : previousCount + 1;
+				constrainedCounts.put(field, count);
+				if(count > bestCount) {
+					bestCount = count;
+					bestField = field;
+				}
+			}
+		}
+		if(bestCount < MIN_SWITCH_SIZE) {
+			return new Leaf(candidates);
+		}
+
+		EqualsRule switchRule = null;
+		final Map<String, List<CompiledMapping>> constrained = new LinkedHashMap<String, List<CompiledMapping>>();
+		final List<CompiledMapping> unconstrained = new ArrayList<CompiledMapping>();
+		for (CompiledMapping candidate : candidates) {
+			final EqualsRule equalsRule = candidate.equalsRules.get(bestField);
+			if(equalsRule == null) {
+				unconstrained.add(candidate);
+				continue;
+			}
+			switchRule = equalsRule;
+			final String key = key(equalsRule.getValue(), equalsRule.isIgnoreCase());
+			List<CompiledMapping> mappingsForValue = constrained.get(key);
+			if(mappingsForValue == null) {
+				mappingsForValue = new ArrayList<CompiledMapping>();
+				constrained.put(key, mappingsForValue);
+			}
+			mappingsForValue.add(candidate);
+		}
+
+		final Set<String> childSwitchedFields = new HashSet<String>(switchedFields);
+		childSwitchedFields.add(bestField);
+		final Map<String, Node> branches = new HashMap<String, Node>();
+		for (Entry<String, List<CompiledMapping>> entry : constrained.entrySet()) {
+			branches.put(entry.getKey(), compile(mergeInOrder(entry.getValue(), unconstrained), childSwitchedFields, depth + 1));
+		}
+		return new Switch(switchRule, branches, compile(unconstrained, childSwitchedFields, depth + 1));
+	}
+
+	private static List<CompiledMapping> mergeInOrder(List<CompiledMapping> first, List<CompiledMapping> second) {
+		final List<CompiledMapping> merged = new ArrayList<CompiledMapping>(first.size() + second.size());
+		int i = 0;
+		int j = 0;
+		while(i < first.size() || j < second.size()) {
+			if(j >= second.size() || (i < first.size() && first.get(i).order < second.get(j).order)) {
+				merged.add(first.get(i++));
+			} else {
+				merged.add(second.get(j++));
+			}
+		}
+		return merged;
+	}
+
+	/**
+	 * Key of a value in a switch, case insensitive values are folded the way {@link String#equalsIgnoreCase(String)} compares them
+	 */
+	private static String key(String value, boolean ignoreCase) {
+		if(!ignoreCase) {
+			return value;
+		}
+		final char[] chars = value.toCharArray();
+		for (int i = 0; i < chars.length; i++) {
+			chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * A mapping along with the equality constraints its rule puts on the request fields, keyed by field
+	 */
+	private static final class CompiledMapping {
+		private final MobicentsSipServletMapping mapping;
+		private final MatchingRule rule;
+		private final int order;
+		private final Map<String, EqualsRule> equalsRules = new HashMap<String, EqualsRule>();
+
+		CompiledMapping(MobicentsSipServletMapping mapping, int order) {
+			this.mapping = mapping;
+			this.rule = mapping.getMatchingRule();
+			this.order = order;
+			collectEqualsRules(rule);
+		}
+
+		private void collectEqualsRules(MatchingRule rule) {
+			if(rule instanceof EqualsRule) {
+				final EqualsRule equalsRule = (EqualsRule) rule;
+				final String field = equalsRule.getVarName() + (equalsRule.isIgnoreCase() ? "/ignore-case" : "");
+				if(!equalsRules.containsKey(field)) {
+					equalsRules.put(field, equalsRule);
+				}
+			} else if(rule instanceof AndRule) {
+				for (MatchingRule criterion : ((AndRule) rule).getCriteria()) {
+					collectEqualsRules(criterion);
+				}
+			}
+		}
+	}
+
+	private interface Node {
+		MobicentsSipServletMapping match(RequestFields fields);
+	}
+
+	private static final class Leaf implements Node {
+		private final CompiledMapping[] candidates;
+
+		Leaf(List<CompiledMapping> candidates) {
+			this.candidates = candidates.toArray(new CompiledMapping[candidates.size()]);
+		}
+
+		public MobicentsSipServletMapping match(RequestFields fields) {
+			for (CompiledMapping candidate : candidates) {
+				if(candidate.rule != null && fields.matches(candidate.rule)) {
+					return candidate.mapping;
+				}
+				if(logger.isDebugEnabled()) {
+					logger.debug("Following mapping rule didn't match : servletName => " +
+							candidate.mapping.getServletName() + " | expression = " +
+							(candidate.rule == null ? null : candidate.rule.getExpression()));
+				}
+			}
+			return null;
+		}
+
+		@Override
+		public String toString() {
+			return "leaf(" + candidates.length + ")";
+		}
+	}
+
+	private static final class Switch implements Node {
+		private final EqualsRule switchRule;
+		private final Map<String, Node> branches;
+		private final Node otherwise;
+
+		Switch(EqualsRule switchRule, Map<String, Node> branches, Node otherwise) {
+			this.switchRule = switchRule;
+			this.branches = branches;
+			this.otherwise = otherwise;
+		}
+
+		public MobicentsSipServletMapping match(RequestFields fields) {
+			final String value = switchRule.getValue(fields);
+			Node branch = null;
+			if(value != null) {
+				branch = branches.get(key(value, switchRule.isIgnoreCase()));
+			}
+			if(branch == null) {
+				branch = otherwise;
+			}
+			return branch.match(fields);
+		}
+
+		@Override
+		public String toString() {
+			return "switch(" + switchRule.getVarName() + " " + branches + " otherwise " + otherwise + ")";
+		}
+	}
+}
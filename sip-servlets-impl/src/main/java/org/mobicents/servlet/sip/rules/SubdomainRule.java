@@ -20,9 +20,7 @@
  * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
  */
 
-package org.mobicents.servlet.sip.catalina.rules;
-
-import javax.servlet.sip.SipServletRequest;
+package org.mobicents.servlet.sip.rules;
 
 import org.mobicents.servlet.sip.core.descriptor.MatchingRule;
 
@@ -38,8 +36,7 @@ public class SubdomainRule extends RequestRule implements MatchingRule {
         this.value = value;
     }
     
-    public boolean matches(SipServletRequest request) {
-    	String requestValue = getValue(request);
+    protected boolean matchesValue(String requestValue) {
     	if (requestValue == null) {
     		return false;
     	}
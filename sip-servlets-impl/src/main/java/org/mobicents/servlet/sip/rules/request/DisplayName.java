@@ -20,7 +20,7 @@
  * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
  */
 
-package org.mobicents.servlet.sip.catalina.rules.request;
+package org.mobicents.servlet.sip.rules.request;
 
 import javax.servlet.sip.Address;
 
@@ -0,0 +1,188 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.servlet.sip.security;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * The algorithms that can be used for SIP digest authentication, MD5 from RFC 2617 and SHA-256 from RFC 8760, along
+ * with their session variants.
+ *
+ * Each thread gets its own {@link MessageDigest} instance so that concurrent authentications never contend on a
+ * shared digest.
+ */
+public enum DigestAlgorithm {
+	MD5("MD5", "MD5", false),
+	MD5_SESS("MD5-sess", "MD5", true),
+	SHA_256("SHA-256", "SHA-256", false),
+	SHA_256_SESS("SHA-256-sess", "SHA-256", true);
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final char[] HEX = {
+		'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
+
+	private final String name;
+	private final boolean session;
+	private final ThreadLocal<MessageDigest> digests;
+
+	private DigestAlgorithm(String name, final String messageDigestAlgorithm, boolean session) {
+		this.name = name;
+		this.session = session;
+		this.digests = new ThreadLocal<MessageDigest>() {
+			@Override
+			protected MessageDigest initialValue() {
+				try {
+					return MessageDigest.getInstance(messageDigestAlgorithm);
+				} catch (NoSuchAlgorithmException e) {
+					throw new IllegalStateException(messageDigestAlgorithm + " is not available", e);
+				}
+			}
+		};
+	}
+
+	/**
+	 * @param name the value of the algorithm parameter of a challenge or of credentials
+	 * @return the matching algorithm, MD5 if the name is null or empty as mandated by RFC 2617, null if the algorithm is not supported
+	 */
+	public static DigestAlgorithm fromName(String name) {
+		if(name == null) {
+			return MD5;
+		}
+		final String trimmedName = name.trim();
+		if(trimmedName.length() == 0) {
+			return MD5;
+		}
+		for (DigestAlgorithm algorithm : values()) {
+			if(algorithm.name.equalsIgnoreCase(trimmedName)) {
+				return algorithm;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return the name of the algorithm as it appears in the algorithm parameter
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return true for the -sess variants where A1 includes the nonce and the cnonce
+	 */
+	public boolean isSession() {
+		return session;
+	}
+
+	public byte[] digest(byte[] data) {
+		final MessageDigest messageDigest = digests.get();
+		messageDigest.reset();
+		return messageDigest.digest(data);
+	}
+
+	/**
+	 * @return H(data), hex encoded
+	 */
+	public String digestHex(String data) {
+		return toHexString(digest(data.getBytes(UTF_8)));
+	}
+
+	/**
+	 * @return H(username ":" realm ":" password), the value realms store or that can be cached for a user
+	 */
+	public String digestA1(String username, String realm, String password) {
+		return digestHex(username + ":" + realm + ":" + password);
+	}
+
+	/**
+	 * @return H(method ":" uri) for qop=auth or no qop, H(method ":" uri ":" H(body)) for qop=auth-int
+	 */
+	public String digestA2(String method, String uri, String qop, byte[] body) {
+		if(qop != null && qop.trim().equalsIgnoreCase("auth-int")) {
+			final String bodyDigest = toHexString(digest(body == null ? new byte[0] : body));
+			return digestHex(method + ":" + uri + ":" + bodyDigest);
+		}
+		return digestHex(method + ":" + uri);
+	}
+
+	/**
+	 * Check that credentials carry the parameters the request-digest is computed from with this algorithm :
+	 * the cnonce for the -sess variants, the cnonce and the nonce count whenever a qop is given (RFC 2617 section 3.2.2)
+	 *
+	 * @return false if the credentials are malformed and have to be rejected
+	 */
+	public boolean hasRequiredParameters(String nc, String cnonce, String qop) {
+		final boolean hasCnonce = cnonce != null && cnonce.length() > 0;
+		if(session && !hasCnonce) {
+			return false;
+		}
+		if(qop != null && qop.length() > 0 && (!hasCnonce || nc == null || nc.length() == 0)) {
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Compute the request-digest of RFC 2617 section 3.2.2.1
+	 *
+	 * @param ha1 H(username ":" realm ":" password)
+	 * @param ha2 the digest of A2, see {@link #digestA2(String, String, String, byte[])}
+	 * @return the expected value of the response parameter
+	 * @throws IllegalArgumentException if the cnonce is missing for a -sess variant, 
+	 * credentials received from a client have to be checked with {@link #hasRequiredParameters(String, String, String)} first
+	 */
+	public String digestResponse(String ha1, String nonce, String nc, String cnonce, String qop, String ha2) {
+		String sessionHa1 = ha1;
+		if(session) {
+			if(cnonce == null || cnonce.length() == 0) {
+				throw new IllegalArgumentException("cnonce may not be absent for the " + name + " algorithm");
+			}
+			sessionHa1 = digestHex(ha1 + ":" + nonce + ":" + cnonce);
+		}
+		if(qop != null && cnonce != null && nc != null
+				&& (qop.equalsIgnoreCase("auth") || qop.equalsIgnoreCase("auth-int"))) {
+			return digestHex(sessionHa1 + ":" + nonce + ":" + nc + ":" + cnonce + ":" + qop + ":" + ha2);
+		}
+		return digestHex(sessionHa1 + ":" + nonce + ":" + ha2);
+	}
+
+	/**
+	 * Compare a response received from a client with the expected one in a time that doesn't depend on where they differ
+	 */
+	public static boolean isEqual(String expectedResponse, String response) {
+		if(expectedResponse == null || response == null) {
+			return false;
+		}
+		return MessageDigest.isEqual(expectedResponse.getBytes(UTF_8), response.toLowerCase().getBytes(UTF_8));
+	}
+
+	public static String toHexString(byte[] bytes) {
+		final char[] chars = new char[bytes.length * 2];
+		int pos = 0;
+		for (int i = 0; i < bytes.length; i++) {
+			chars[pos++] = HEX[(bytes[i] >> 4) & 0x0F];
+			chars[pos++] = HEX[bytes[i] & 0x0F];
+		}
+		return new String(chars);
+	}
+}
@@ -0,0 +1,151 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.servlet.sip.security;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.StringTokenizer;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Settings shared by the digest authenticators of an application : the algorithms and qop values offered in the
+ * challenges, the {@link StatelessNonceManager} and the optional {@link Ha1Cache}.
+ *
+ * They are read from the following system properties :
+ * <ul>
+ * <li>org.mobicents.servlet.sip.security.digest.algorithms : the algorithms offered, one challenge being sent per
+ * algorithm in the order of preference, MD5 by default, SHA-256,MD5 to offer SHA-256 to the clients supporting RFC 8760</li>
+ * <li>org.mobicents.servlet.sip.security.digest.qop : the qop values offered, auth by default, auth,auth-int to allow
+ * the clients to protect the bodies</li>
+ * <li>org.mobicents.servlet.sip.security.digest.nonceValidity : the time in seconds during which a nonce is accepted, 300 by default</li>
+ * <li>org.mobicents.servlet.sip.security.digest.nonceSecret : the secret the nonces are signed with, it has to be the same
+ * on all the nodes of a cluster, a random secret is generated when the server starts by default</li>
+ * <li>org.mobicents.servlet.sip.security.digest.ha1CacheSize : the number of H(A1) values cached, 0 (no cache) by default</li>
+ * <li>org.mobicents.servlet.sip.security.digest.ha1CacheTimeToLive : the time in seconds an H(A1) value is cached, 300 by default</li>
+ * </ul>
+ */
+public class DigestAuthenticationSettings {
+	private static final Logger logger = Logger.getLogger(DigestAuthenticationSettings.class);
+
+	public static final String PROPERTY_PREFIX = "org.mobicents.servlet.sip.security.digest.";
+	public static final String ALGORITHMS = PROPERTY_PREFIX + "algorithms";
+	public static final String QOP = PROPERTY_PREFIX + "qop";
+	public static final String NONCE_VALIDITY = PROPERTY_PREFIX + "nonceValidity";
+	public static final String NONCE_SECRET = PROPERTY_PREFIX + "nonceSecret";
+	public static final String HA1_CACHE_SIZE = PROPERTY_PREFIX + "ha1CacheSize";
+	public static final String HA1_CACHE_TIME_TO_LIVE = PROPERTY_PREFIX + "ha1CacheTimeToLive";
+
+	private static final long DEFAULT_NONCE_VALIDITY = 300;
+	private static final long DEFAULT_HA1_CACHE_TIME_TO_LIVE = 300;
+	// nonces issued by one application are accepted by the others as long as no secret is configured
+	private static final byte[] DEFAULT_NONCE_SECRET = StatelessNonceManager.generateSecret();
+
+	private final List<DigestAlgorithm> algorithms;
+	private final String qop;
+	private final StatelessNonceManager nonceManager;
+	private final Ha1Cache ha1Cache;
+
+	/**
+	 * @param algorithms the algorithms offered in the challenges, in order of preference
+	 * @param qop the qop values offered in the challenges, comma separated
+	 * @param nonceManager generates and validates the nonces
+	 * @param ha1Cache caches the H(A1) values, null to look them up in the realm for every request
+	 */
+	public DigestAuthenticationSettings(List<DigestAlgorithm> algorithms, String qop,
+			StatelessNonceManager nonceManager, Ha1Cache ha1Cache) {
+		if(algorithms == null || algorithms.isEmpty()) {
+			throw new IllegalArgumentException("at least one digest algorithm has to be offered");
+		}
+		this.algorithms = Collections.unmodifiableList(new ArrayList<DigestAlgorithm>(algorithms));
+		this.qop = qop;
+		this.nonceManager = nonceManager;
+		this.ha1Cache = ha1Cache;
+	}
+
+	public static DigestAuthenticationSettings fromSystemProperties() {
+		final List<DigestAlgorithm> algorithms = new ArrayList<DigestAlgorithm>();
+		final StringTokenizer tokenizer = new StringTokenizer(System.getProperty(ALGORITHMS, DigestAlgorithm.MD5.getName()), ",");
+		while (tokenizer.hasMoreTokens()) {
+			final String algorithmName = tokenizer.nextToken().trim();
+			final DigestAlgorithm algorithm = DigestAlgorithm.fromName(algorithmName);
+			if(algorithm == null) {
+				logger.warn("Unsupported digest algorithm " + algorithmName + " in " + ALGORITHMS + ", it will be ignored");
+			} else if(!algorithms.contains(algorithm)) {
+				algorithms.add(algorithm);
+			}
+		}
+		if(algorithms.isEmpty()) {
+			algorithms.add(DigestAlgorithm.MD5);
+		}
+		final String qop = System.getProperty(QOP, "auth");
+
+		final long nonceValidity = TimeUnit.SECONDS.toMillis(Long.getLong(NONCE_VALIDITY, DEFAULT_NONCE_VALIDITY));
+		final String nonceSecret = System.getProperty(NONCE_SECRET);
+		final byte[] secret = nonceSecret == null || nonceSecret.length() == 0 ?
+				DEFAULT_NONCE_SECRET : nonceSecret.getBytes(Charset.forName("UTF-8"));
+		final StatelessNonceManager nonceManager = new StatelessNonceManager(secret, nonceValidity);
+
+		Ha1Cache ha1Cache = null;
+		final int ha1CacheSize = Integer.getInteger(HA1_CACHE_SIZE, 0);
+		if(ha1CacheSize > 0) {
+			ha1Cache = new Ha1Cache(ha1CacheSize,
+					TimeUnit.SECONDS.toMillis(Long.getLong(HA1_CACHE_TIME_TO_LIVE, DEFAULT_HA1_CACHE_TIME_TO_LIVE)));
+		}
+		if(logger.isDebugEnabled()) {
+			logger.debug("digest authentication algorithms " + algorithms + ", qop " + qop + ", nonce validity " + nonceValidity
+					+ "ms, H(A1) cache size " + ha1CacheSize);
+		}
+		return new DigestAuthenticationSettings(algorithms, qop, nonceManager, ha1Cache);
+	}
+
+	/**
+	 * @return the algorithms to challenge the clients with, in order of preference
+	 */
+	public List<DigestAlgorithm> getAlgorithms() {
+		return algorithms;
+	}
+
+	/**
+	 * @return true if credentials computed with this algorithm are accepted
+	 */
+	public boolean isAlgorithmAllowed(DigestAlgorithm algorithm) {
+		return algorithms.contains(algorithm);
+	}
+
+	public String getQop() {
+		return qop;
+	}
+
+	public StatelessNonceManager getNonceManager() {
+		return nonceManager;
+	}
+
+	/**
+	 * @return the cache of H(A1) values, null if the realm has to be looked up for every request
+	 */
+	public Ha1Cache getHa1Cache() {
+		return ha1Cache;
+	}
+}
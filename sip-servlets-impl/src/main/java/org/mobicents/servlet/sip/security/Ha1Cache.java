@@ -0,0 +1,187 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.servlet.sip.security;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.mobicents.servlet.sip.core.security.SipPrincipal;
+
+/**
+ * Bounded cache of the H(A1) values of the users, along with their principal, per realm, user and algorithm so that
+ * the realm doesn't have to be looked up for every authenticated request.
+ *
+ * The cache is split in segments, each one being a small LRU map with its own lock, so that threads authenticating
+ * different users seldom wait for each other. Entries expire after a time to live so that password and role changes
+ * made in the realm are eventually picked up.
+ */
+public class Ha1Cache {
+	private static final int SEGMENTS = 16;
+
+	private final Segment[] segments;
+	private final long timeToLive;
+
+	/**
+	 * @param maxSize maximum number of entries kept
+	 * @param timeToLive time in milliseconds after which an entry is looked up again in the realm
+	 */
+	public Ha1Cache(int maxSize, long timeToLive) {
+		if(maxSize <= 0) {
+			throw new IllegalArgumentException("the maximum size of the cache must be positive, maxSize=" + maxSize);
+		}
+		this.timeToLive = timeToLive;
+		final int segmentSize = Math.max(1, (maxSize + SEGMENTS - 1) / SEGMENTS);
+		segments = new Segment[SEGMENTS];
+		for (int i = 0; i < SEGMENTS; i++) {
+			segments[i] = new Segment(segmentSize);
+		}
+	}
+
+	/**
+	 * @return the cached entry, null if there is none or if it expired
+	 */
+	public Entry get(String realm, String username, DigestAlgorithm algorithm) {
+		final Key key = new Key(realm, username, algorithm);
+		final Segment segment = segmentFor(key);
+		synchronized (segment) {
+			final Entry entry = segment.get(key);
+			if(entry == null) {
+				return null;
+			}
+			if(entry.expirationTime - System.currentTimeMillis() < 0) {
+				segment.remove(key);
+				return null;
+			}
+			return entry;
+		}
+	}
+
+	public Entry put(String realm, String username, DigestAlgorithm algorithm, String ha1, SipPrincipal principal) {
+		final Key key = new Key(realm, username, algorithm);
+		final Entry entry = new Entry(ha1, principal, System.currentTimeMillis() + timeToLive);
+		final Segment segment = segmentFor(key);
+		synchronized (segment) {
+			segment.put(key, entry);
+		}
+		return entry;
+	}
+
+	public void remove(String realm, String username, DigestAlgorithm algorithm) {
+		final Key key = new Key(realm, username, algorithm);
+		final Segment segment = segmentFor(key);
+		synchronized (segment) {
+			segment.remove(key);
+		}
+	}
+
+	public void clear() {
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				segment.clear();
+			}
+		}
+	}
+
+	public int size() {
+		int size = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				size += segment.size();
+			}
+		}
+		return size;
+	}
+
+	private Segment segmentFor(Key key) {
+		int hash = key.hashCode();
+		hash ^= (hash >>> 16);
+		return segments[hash & (SEGMENTS - 1)];
+	}
+
+	/**
+	 * H(username ":" realm ":" password) of a user and the principal to use once the user is authenticated
+	 */
+	public static final class Entry {
+		private final String ha1;
+		private final SipPrincipal principal;
+		private final long expirationTime;
+
+		Entry(String ha1, SipPrincipal principal, long expirationTime) {
+			this.ha1 = ha1;
+			this.principal = principal;
+			this.expirationTime = expirationTime;
+		}
+
+		public String getHa1() {
+			return ha1;
+		}
+
+		public SipPrincipal getPrincipal() {
+			return principal;
+		}
+	}
+
+	private static final class Key {
+		private final String realm;
+		private final String username;
+		private final DigestAlgorithm algorithm;
+		private final int hashCode;
+
+		Key(String realm, String username, DigestAlgorithm algorithm) {
+			this.realm = realm;
+			this.username = username;
+			this.algorithm = algorithm;
+			this.hashCode = (31 * realm.hashCode() + username.hashCode()) * 31 + algorithm.ordinal();
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if(this == obj) {
+				return true;
+			}
+			if(!(obj instanceof Key)) {
+				return false;
+			}
+			final Key other = (Key) obj;
+			return algorithm == other.algorithm && realm.equals(other.realm) && username.equals(other.username);
+		}
+	}
+
+	private static final class Segment extends LinkedHashMap<Key, Entry> {
+		private static final long serialVersionUID = 1L;
+		private final int maxSize;
+
+		Segment(int maxSize) {
+			super(16, 0.75f, true);
+			this.maxSize = maxSize;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+			return size() > maxSize;
+		}
+	}
+}
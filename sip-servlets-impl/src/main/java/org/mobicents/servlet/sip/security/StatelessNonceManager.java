@@ -0,0 +1,171 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.servlet.sip.security;
+
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Generates and validates digest authentication nonces without keeping any state on the server side.
+ *
+ * A nonce is the hex encoding of the time it was issued at followed by an HMAC-SHA256 of that time and of the
+ * address of the client it was issued to, truncated to 128 bits. It can be checked on any thread, or on any node of a
+ * cluster sharing the same secret, by recomputing the HMAC. Nonces older than the validity period are reported
+ * as stale so that the client can retry with a new one without prompting the user again.
+ *
+ * As no nonce is remembered, nonce counts are not checked : a captured request can be replayed until its nonce
+ * becomes stale, so the validity period should be kept short.
+ */
+public class StatelessNonceManager {
+
+	public enum Validity {
+		VALID,
+		STALE,
+		INVALID
+	}
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final String HMAC_ALGORITHM = "HmacSHA256";
+	private static final int TIMESTAMP_LENGTH = 8;
+	private static final int SIGNATURE_LENGTH = 16;
+	private static final int NONCE_LENGTH = (TIMESTAMP_LENGTH + SIGNATURE_LENGTH) * 2;
+
+	private final SecretKeySpec key;
+	private final long validity;
+	private final ThreadLocal<Mac> macs = new ThreadLocal<Mac>() {
+		@Override
+		protected Mac initialValue() {
+			try {
+				final Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+				mac.init(key);
+				return mac;
+			} catch (GeneralSecurityException e) {
+				throw new IllegalStateException(HMAC_ALGORITHM + " is not available", e);
+			}
+		}
+	};
+
+	/**
+	 * @param secret the key used to sign the nonces, all the nodes of a cluster should use the same
+	 * @param validity time in milliseconds during which a nonce is accepted
+	 */
+	public StatelessNonceManager(byte[] secret, long validity) {
+		if(secret == null || secret.length == 0) {
+			throw new IllegalArgumentException("the secret used to sign the nonces can't be empty");
+		}
+		if(validity <= 0) {
+			throw new IllegalArgumentException("the nonce validity must be positive, validity=" + validity);
+		}
+		this.key = new SecretKeySpec(secret.clone(), HMAC_ALGORITHM);
+		this.validity = validity;
+	}
+
+	/**
+	 * Creates a nonce manager signing the nonces with a random secret, nonces it issued won't be accepted by other instances
+	 * @param validity time in milliseconds during which a nonce is accepted
+	 */
+	public StatelessNonceManager(long validity) {
+		this(generateSecret(), validity);
+	}
+
+	public static byte[] generateSecret() {
+		final byte[] secret = new byte[32];
+		new SecureRandom().nextBytes(secret);
+		return secret;
+	}
+
+	public long getValidity() {
+		return validity;
+	}
+
+	/**
+	 * @param clientAddress the address of the client the nonce is issued to
+	 * @return a new nonce
+	 */
+	public String generateNonce(String clientAddress) {
+		final byte[] nonce = new byte[TIMESTAMP_LENGTH + SIGNATURE_LENGTH];
+		putLong(nonce, System.currentTimeMillis());
+		System.arraycopy(sign(nonce, clientAddress), 0, nonce, TIMESTAMP_LENGTH, SIGNATURE_LENGTH);
+		return DigestAlgorithm.toHexString(nonce);
+	}
+
+	/**
+	 * @param nonce the nonce sent back by the client in its credentials
+	 * @param clientAddress the address of the client that sent the credentials
+	 * @return whether the nonce was issued by this manager to this client and is still fresh
+	 */
+	public Validity validateNonce(String nonce, String clientAddress) {
+		if(nonce == null || nonce.length() != NONCE_LENGTH) {
+			return Validity.INVALID;
+		}
+		final byte[] decoded = new byte[TIMESTAMP_LENGTH + SIGNATURE_LENGTH];
+		for (int i = 0; i < decoded.length; i++) {
+			final int high = Character.digit(nonce.charAt(2 * i), 16);
+			final int low = Character.digit(nonce.charAt(2 * i + 1), 16);
+			if(high < 0 || low < 0) {
+				return Validity.INVALID;
+			}
+			decoded[i] = (byte) ((high << 4) | low);
+		}
+		final byte[] expectedSignature = sign(decoded, clientAddress);
+		final byte[] signature = new byte[SIGNATURE_LENGTH];
+		System.arraycopy(decoded, TIMESTAMP_LENGTH, signature, 0, SIGNATURE_LENGTH);
+		final byte[] truncatedExpectedSignature = new byte[SIGNATURE_LENGTH];
+		System.arraycopy(expectedSignature, 0, truncatedExpectedSignature, 0, SIGNATURE_LENGTH);
+		if(!MessageDigest.isEqual(truncatedExpectedSignature, signature)) {
+			return Validity.INVALID;
+		}
+		final long age = System.currentTimeMillis() - getLong(decoded);
+		if(age < 0 || age > validity) {
+			return Validity.STALE;
+		}
+		return Validity.VALID;
+	}
+
+	private byte[] sign(byte[] nonce, String clientAddress) {
+		final Mac mac = macs.get();
+		mac.update(nonce, 0, TIMESTAMP_LENGTH);
+		if(clientAddress != null) {
+			mac.update(clientAddress.getBytes(UTF_8));
+		}
+		return mac.doFinal();
+	}
+
+	private static void putLong(byte[] bytes, long value) {
+		for (int i = TIMESTAMP_LENGTH - 1; i >= 0; i--) {
+			bytes[i] = (byte) value;
+			value >>>= 8;
+		}
+	}
+
+	private static long getLong(byte[] bytes) {
+		long value = 0;
+		for (int i = 0; i < TIMESTAMP_LENGTH; i++) {
+			value = (value << 8) | (bytes[i] & 0xFF);
+		}
+		return value;
+	}
+}
@@ -0,0 +1,289 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.servlet.sip.startup.annotations;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Finds the classes of a SIP application carrying SIP annotations by reading the class files of its docbase, without
+ * loading any class. The jars are read in parallel and the index of each jar is stored in the index directory, named
+ * after the jar checksum, so that the jars that didn't change since the previous deployment are not read again.
+ *
+ * The container then only has to load and reflect over the classes returned by {@link #scan(File)}.
+ */
+public class AnnotatedClassScanner {
+	private static final Logger logger = Logger.getLogger(AnnotatedClassScanner.class);
+
+	private static final String INDEX_SUFFIX = ".index";
+	// bounds the walk up the class hierarchy in case of a cycle between broken archives
+	private static final int MAX_HIERARCHY_DEPTH = 64;
+
+	private final File indexDirectory;
+	private final int threads;
+
+	private final AtomicInteger archivesScanned = new AtomicInteger();
+	private final AtomicInteger archivesFromIndex = new AtomicInteger();
+	private final AtomicInteger classesRead = new AtomicInteger();
+
+	/**
+	 * @param indexDirectory the directory where the jar indexes are stored, null not to store them
+	 */
+	public AnnotatedClassScanner(File indexDirectory) {
+		this(indexDirectory, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param indexDirectory the directory where the jar indexes are stored, null not to store them
+	 * @param threads the maximum number of jars read in parallel
+	 */
+	public AnnotatedClassScanner(File indexDirectory, int threads) {
+		this.indexDirectory = indexDirectory;
+		this.threads = Math.max(1, threads);
+	}
+
+	/**
+	 * Scan the class files and jars found under the docbase
+	 * @param docBase the exploded application
+	 * @return the names of the classes to process, classes of the directories first then the ones of each jar
+	 * @throws IOException if a jar can't be read
+	 */
+	public List<String> scan(File docBase) throws IOException {
+		final List<File> classFiles = new ArrayList<File>();
+		final List<File> jars = new ArrayList<File>();
+		collect(docBase, classFiles, jars);
+
+		final List<AnnotationIndex> indexes = new ArrayList<AnnotationIndex>(jars.size() + 1);
+		indexes.add(indexClassFiles(classFiles));
+		indexes.addAll(indexJars(jars));
+		return resolve(indexes);
+	}
+
+	public int getArchivesScanned() {
+		return archivesScanned.get();
+	}
+
+	public int getArchivesFromIndex() {
+		return archivesFromIndex.get();
+	}
+
+	public int getClassesRead() {
+		return classesRead.get();
+	}
+
+	private static void collect(File folder, List<File> classFiles, List<File> jars) {
+		final File[] files = folder.listFiles();
+		if(files == null) {
+			return;
+		}
+		for (File file : files) {
+			if(file.isDirectory()) {
+				collect(file, classFiles, jars);
+			} else if(file.getName().endsWith(".jar")) {
+				jars.add(file);
+			} else if(file.getName().endsWith(".class")) {
+				classFiles.add(file);
+			}
+		}
+	}
+
+	private AnnotationIndex indexClassFiles(List<File> classFiles) throws IOException {
+		final AnnotationIndex index = new AnnotationIndex();
+		final byte[] buffer = new byte[8192];
+		for (File classFile : classFiles) {
+			final InputStream inputStream = new FileInputStream(classFile);
+			try {
+				index.add(classFile.getPath(), AnnotationIndex.readFully(inputStream, buffer));
+			} finally {
+				inputStream.close();
+			}
+		}
+		classesRead.addAndGet(index.getClassesRead());
+		return index;
+	}
+
+	private List<AnnotationIndex> indexJars(List<File> jars) throws IOException {
+		final List<AnnotationIndex> indexes = new ArrayList<AnnotationIndex>(jars.size());
+		if(jars.size() < 2 || threads == 1) {
+			for (File jar : jars) {
+				indexes.add(indexJar(jar));
+			}
+			return indexes;
+		}
+		final ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, jars.size()));
+		try {
+			final List<Future<AnnotationIndex>> futures = new ArrayList<Future<AnnotationIndex>>(jars.size());
+			for (final File jar : jars) {
+				futures.add(executor.submit(new Callable<AnnotationIndex>() {
+					public AnnotationIndex call() throws IOException {
+						return indexJar(jar);
+					}
+				}));
+			}
+			for (Future<AnnotationIndex> future : futures) {
+				indexes.add(future.get());
+			}
+			return indexes;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while scanning jars for annotations", e);
+		} catch (ExecutionException e) {
+			if(e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException("couldn't scan jars for annotations", e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private AnnotationIndex indexJar(File jar) throws IOException {
+		archivesScanned.incrementAndGet();
+		File indexFile = null;
+		if(indexDirectory != null) {
+			indexFile = new File(indexDirectory, jar.getName() + "-" + checksum(jar) + INDEX_SUFFIX);
+			if(indexFile.isFile()) {
+				try {
+					final AnnotationIndex index = AnnotationIndex.load(indexFile);
+					archivesFromIndex.incrementAndGet();
+					if(logger.isDebugEnabled()) {
+						logger.debug("jar " + jar + " unchanged, annotations read from " + indexFile);
+					}
+					return index;
+				} catch (IOException e) {
+					logger.warn("couldn't read the annotation index " + indexFile + ", scanning " + jar + " again", e);
+				}
+			}
+		}
+		if(logger.isDebugEnabled()) {
+			logger.debug("scanning jar " + jar + " for annotations");
+		}
+		final AnnotationIndex index;
+		try {
+			index = AnnotationIndex.build(jar);
+		} catch (IOException e) {
+			throw new IOException("couldn't read the following jar file for parsing annotations " + jar, e);
+		}
+		classesRead.addAndGet(index.getClassesRead());
+		if(indexFile != null) {
+			storeIndex(jar, index, indexFile);
+		}
+		return index;
+	}
+
+	private void storeIndex(File jar, AnnotationIndex index, File indexFile) {
+		try {
+			if(!indexDirectory.isDirectory() && !indexDirectory.mkdirs() && !indexDirectory.isDirectory()) {
+				throw new IOException("couldn't create the directory " + indexDirectory);
+			}
+			// the indexes of the previous versions of the jar are of no use anymore
+			final String prefix = jar.getName() + "-";
+			final File[] previousIndexFiles = indexDirectory.listFiles();
+			if(previousIndexFiles != null) {
+				for (File previousIndexFile : previousIndexFiles) {
+					final String name = previousIndexFile.getName();
+					if(name.startsWith(prefix) && name.endsWith(INDEX_SUFFIX) && !name.equals(indexFile.getName())) {
+						previousIndexFile.delete();
+					}
+				}
+			}
+			index.store(indexFile);
+		} catch (IOException e) {
+			// the index is only an optimization of the next deployment
+			logger.warn("couldn't store the annotation index of " + jar + " in " + indexFile, e);
+		}
+	}
+
+	private static String checksum(File file) throws IOException {
+		final CRC32 crc = new CRC32();
+		final byte[] buffer = new byte[65536];
+		final InputStream inputStream = new FileInputStream(file);
+		try {
+			int read;
+			while ((read = inputStream.read(buffer)) != -1) {
+				crc.update(buffer, 0, read);
+			}
+		} finally {
+			inputStream.close();
+		}
+		return Long.toHexString(crc.getValue()) + "-" + Long.toHexString(file.length());
+	}
+
+	/**
+	 * Keeps the annotated classes and the ones inheriting an annotation from another class of the application
+	 */
+	private static List<String> resolve(List<AnnotationIndex> indexes) {
+		final Map<String, AnnotationIndex.Entry> entriesByName = new HashMap<String, AnnotationIndex.Entry>();
+		for (AnnotationIndex index : indexes) {
+			for (AnnotationIndex.Entry entry : index.getEntries()) {
+				if(!entriesByName.containsKey(entry.getClassName())) {
+					entriesByName.put(entry.getClassName(), entry);
+				}
+			}
+		}
+		// a class packaged twice is only processed once
+		final Set<String> classNames = new LinkedHashSet<String>();
+		for (AnnotationIndex index : indexes) {
+			for (AnnotationIndex.Entry entry : index.getEntries()) {
+				if(entry.getFlags() != 0 || inheritsAnnotation(entry, entriesByName)) {
+					classNames.add(entry.getClassName());
+				}
+			}
+		}
+		return new ArrayList<String>(classNames);
+	}
+
+	private static boolean inheritsAnnotation(AnnotationIndex.Entry entry, Map<String, AnnotationIndex.Entry> entriesByName) {
+		AnnotationIndex.Entry current = entry;
+		for (int depth = 0; depth < MAX_HIERARCHY_DEPTH && current.getSuperClassName() != null; depth++) {
+			current = entriesByName.get(current.getSuperClassName());
+			if(current == null) {
+				return false;
+			}
+			if((current.getFlags() & AnnotationIndex.INHERITED) != 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public String toString() {
+		return archivesScanned + " jars scanned (" + archivesFromIndex + " unchanged), " + classesRead + " class files read";
+	}
+}
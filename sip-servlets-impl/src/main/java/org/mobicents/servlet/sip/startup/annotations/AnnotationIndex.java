@@ -0,0 +1,243 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.servlet.sip.startup.annotations;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Classes of an archive that matter to the annotation processing of a SIP application : the classes carrying one of
+ * the SIP annotations, and the classes extending another class of the application since @SipServlet and
+ * &#64;SipListener are inherited. All the other classes are left out.
+ *
+ * An index can be stored to a file and loaded back so that an archive that didn't change since the last deployment
+ * doesn't have to be read again.
+ */
+public class AnnotationIndex {
+	private static final Logger logger = Logger.getLogger(AnnotationIndex.class);
+
+	public static final int SIP_SERVLET = 1;
+	public static final int SIP_LISTENER = 2;
+	public static final int SIP_APPLICATION = 4;
+	public static final int SIP_APPLICATION_KEY = 8;
+	public static final int CONCURRENCY_CONTROL = 16;
+	// annotations a class gets from its super class
+	public static final int INHERITED = SIP_SERVLET | SIP_LISTENER;
+
+	private static final String CLASS_SUFFIX = ".class";
+	private static final String FORMAT_VERSION = "#sip-annotation-index 1";
+	private static final String CHARSET = "UTF-8";
+
+	private final List<Entry> entries;
+	private int classesRead;
+
+	public AnnotationIndex() {
+		this.entries = new ArrayList<Entry>();
+	}
+
+	/**
+	 * Reads all the class files of a jar
+	 * @param jar the jar to index
+	 * @return the index of the jar
+	 * @throws IOException if the jar can't be read
+	 */
+	public static AnnotationIndex build(File jar) throws IOException {
+		final AnnotationIndex index = new AnnotationIndex();
+		final JarFile jarFile = new JarFile(jar);
+		try {
+			final byte[] buffer = new byte[8192];
+			final Enumeration<JarEntry> jarEntries = jarFile.entries();
+			while (jarEntries.hasMoreElements()) {
+				final JarEntry jarEntry = jarEntries.nextElement();
+				final String entryName = jarEntry.getName();
+				if(!entryName.endsWith(CLASS_SUFFIX) || entryName.endsWith("module-info.class") || entryName.startsWith("META-INF/")) {
+					continue;
+				}
+				final InputStream inputStream = jarFile.getInputStream(jarEntry);
+				try {
+					index.add(entryName, readFully(inputStream, buffer));
+				} finally {
+					inputStream.close();
+				}
+			}
+		} finally {
+			jarFile.close();
+		}
+		return index;
+	}
+
+	/**
+	 * Reads a class file and records it if it is relevant, class files that can't be parsed are skipped
+	 * @param path the path of the class file, for logging
+	 * @param classFile the content of the class file
+	 */
+	public void add(String path, byte[] classFile) {
+		classesRead++;
+		final Entry entry;
+		try {
+			entry = ClassFileAnnotationReader.read(classFile);
+		} catch (IOException e) {
+			if(logger.isDebugEnabled()) {
+				logger.debug("Failed to parse annotations for class file " + path, e);
+			}
+			return;
+		}
+		if(entry.flags != 0 || (entry.superClassName != null && !isPlatformClass(entry.superClassName))) {
+			entries.add(entry);
+		}
+	}
+
+	public List<Entry> getEntries() {
+		return Collections.unmodifiableList(entries);
+	}
+
+	/**
+	 * @return the number of class files read to build this index, 0 if it was loaded from a file
+	 */
+	public int getClassesRead() {
+		return classesRead;
+	}
+
+	/**
+	 * @param file a file written by {@link #store(File)}
+	 * @return the index stored in the file
+	 * @throws IOException if the file can't be read or isn't an index
+	 */
+	public static AnnotationIndex load(File file) throws IOException {
+		final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), CHARSET));
+		try {
+			if(!FORMAT_VERSION.equals(reader.readLine())) {
+				throw new IOException("unknown annotation index format in " + file);
+			}
+			final AnnotationIndex index = new AnnotationIndex();
+			String line;
+			while ((line = reader.readLine()) != null) {
+				final String[] fields = line.split(" ");
+				if(fields.length != 3) {
+					throw new IOException("malformed annotation index line in " + file + " : " + line);
+				}
+				try {
+					index.entries.add(new Entry(fields[0], fields[1].length() == 0 ? null : fields[1], Integer.parseInt(fields[2])));
+				} catch (NumberFormatException e) {
+					throw new IOException("malformed annotation index line in " + file + " : " + line, e);
+				}
+			}
+			return index;
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Writes the index to a file, through a temporary file renamed once complete so that a concurrent
+	 * deployment never reads a partial index
+	 * @param file the file to write
+	 * @throws IOException if the file can't be written
+	 */
+	public void store(File file) throws IOException {
+		final File temporaryFile = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+		final BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temporaryFile), CHARSET));
+		try {
+			writer.write(FORMAT_VERSION);
+			writer.newLine();
+			for (Entry entry : entries) {
+				writer.write(entry.className);
+				writer.write(' ');
+				writer.write(entry.superClassName == null ? "" : entry.superClassName);
+				writer.write(' ');
+				writer.write(Integer.toString(entry.flags));
+				writer.newLine();
+			}
+		} finally {
+			writer.close();
+		}
+		if(!temporaryFile.renameTo(file)) {
+			file.delete();
+			if(!temporaryFile.renameTo(file)) {
+				temporaryFile.delete();
+				throw new IOException("couldn't rename " + temporaryFile + " to " + file);
+			}
+		}
+	}
+
+	// the platform classes are never annotated by the application
+	private static boolean isPlatformClass(String className) {
+		return className.startsWith("java.") || className.startsWith("javax.");
+	}
+
+	static byte[] readFully(InputStream inputStream, byte[] buffer) throws IOException {
+		final ByteArrayOutputStream content = new ByteArrayOutputStream(buffer.length);
+		int read;
+		while ((read = inputStream.read(buffer)) != -1) {
+			content.write(buffer, 0, read);
+		}
+		return content.toByteArray();
+	}
+
+	/**
+	 * A class of the index
+	 */
+	public static final class Entry {
+		private final String className;
+		private final String superClassName;
+		private final int flags;
+
+		public Entry(String className, String superClassName, int flags) {
+			this.className = className;
+			this.superClassName = superClassName;
+			this.flags = flags;
+		}
+
+		public String getClassName() {
+			return className;
+		}
+
+		/**
+		 * @return the super class name, null only for java.lang.Object itself
+		 */
+		public String getSuperClassName() {
+			return superClassName;
+		}
+
+		/**
+		 * @return the SIP annotations carried by the class, a combination of {@link AnnotationIndex#SIP_SERVLET}, ...
+		 */
+		public int getFlags() {
+			return flags;
+		}
+	}
+}
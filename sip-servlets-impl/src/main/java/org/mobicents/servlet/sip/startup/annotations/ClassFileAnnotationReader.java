@@ -0,0 +1,249 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.servlet.sip.startup.annotations;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+
+/**
+ * Reads the annotations relevant to a SIP application straight from the bytes of a class file, without loading the
+ * class. Only the constant pool, the super class and the RuntimeVisibleAnnotations attributes of the class and of its
+ * methods are looked at.
+ */
+public final class ClassFileAnnotationReader {
+	private static final int MAGIC = 0xCAFEBABE;
+	private static final String RUNTIME_VISIBLE_ANNOTATIONS = "RuntimeVisibleAnnotations";
+
+	private static final String SIP_SERVLET = "Ljavax/servlet/sip/annotation/SipServlet;";
+	private static final String SIP_LISTENER = "Ljavax/servlet/sip/annotation/SipListener;";
+	private static final String SIP_APPLICATION = "Ljavax/servlet/sip/annotation/SipApplication;";
+	private static final String SIP_APPLICATION_KEY = "Ljavax/servlet/sip/annotation/SipApplicationKey;";
+	private static final String CONCURRENCY_CONTROL = "Lorg/mobicents/servlet/sip/annotation/ConcurrencyControl;";
+
+	private final byte[] classFile;
+	// offset of each constant pool entry in the class file
+	private int[] constantPoolOffsets;
+	private int position;
+
+	private ClassFileAnnotationReader(byte[] classFile) {
+		this.classFile = classFile;
+	}
+
+	/**
+	 * @param classFile the content of a class file
+	 * @return the class name, super class name and SIP annotations found in the class file
+	 * @throws IOException if the bytes are not a valid class file
+	 */
+	public static AnnotationIndex.Entry read(byte[] classFile) throws IOException {
+		try {
+			return new ClassFileAnnotationReader(classFile).read();
+		} catch (ArrayIndexOutOfBoundsException e) {
+			throw new IOException("truncated class file", e);
+		}
+	}
+
+	private AnnotationIndex.Entry read() throws IOException {
+		if(readInt(0) != MAGIC) {
+			throw new IOException("not a class file");
+		}
+		position = 8;
+		readConstantPool();
+		// access flags
+		position += 2;
+		final String className = readClassName(readUnsignedShort());
+		final int superClassIndex = readUnsignedShort();
+		final String superClassName = superClassIndex == 0 ? null : readClassName(superClassIndex);
+		final int interfacesCount = readUnsignedShort();
+		position += interfacesCount * 2;
+
+		final int fieldsCount = readUnsignedShort();
+		for (int i = 0; i < fieldsCount; i++) {
+			position += 6;
+			skipAttributes();
+		}
+		int flags = 0;
+		final int methodsCount = readUnsignedShort();
+		for (int i = 0; i < methodsCount; i++) {
+			position += 6;
+			// only @SipApplicationKey is meaningful on a method
+			flags |= readAnnotationAttributes() & AnnotationIndex.SIP_APPLICATION_KEY;
+		}
+		flags |= readAnnotationAttributes() & ~AnnotationIndex.SIP_APPLICATION_KEY;
+		// the attributes not read are skipped by their length, a class file cut in one of them is only noticed here
+		if(position != classFile.length) {
+			throw new IOException("class file of " + classFile.length + " bytes ending at offset " + position);
+		}
+		return new AnnotationIndex.Entry(className, superClassName, flags);
+	}
+
+	private void readConstantPool() throws IOException {
+		final int count = readUnsignedShort();
+		constantPoolOffsets = new int[count];
+		for (int i = 1; i < count; i++) {
+			constantPoolOffsets[i] = position;
+			final int tag = classFile[position] & 0xFF;
+			switch (tag) {
+			case 1: // Utf8
+				position += 3 + readUnsignedShort(position + 1);
+				break;
+			case 3: // Integer
+			case 4: // Float
+			case 9: // Fieldref
+			case 10: // Methodref
+			case 11: // InterfaceMethodref
+			case 12: // NameAndType
+			case 17: // Dynamic
+			case 18: // InvokeDynamic
+				position += 5;
+				break;
+			case 5: // Long
+			case 6: // Double
+				// takes two entries
+				position += 9;
+				i++;
+				break;
+			case 7: // Class
+			case 8: // String
+			case 16: // MethodType
+			case 19: // Module
+			case 20: // Package
+				position += 3;
+				break;
+			case 15: // MethodHandle
+				position += 4;
+				break;
+			default:
+				throw new IOException("unknown constant pool tag " + tag + " at offset " + position);
+			}
+		}
+	}
+
+	private void skipAttributes() {
+		final int attributesCount = readUnsignedShort();
+		for (int i = 0; i < attributesCount; i++) {
+			position += 2;
+			final int length = readInt(position);
+			position += 4 + length;
+		}
+	}
+
+	/**
+	 * @return the flags of the annotations found in the attributes read
+	 */
+	private int readAnnotationAttributes() throws IOException {
+		int flags = 0;
+		final int attributesCount = readUnsignedShort();
+		for (int i = 0; i < attributesCount; i++) {
+			final int nameIndex = readUnsignedShort();
+			final int length = readInt(position);
+			position += 4;
+			final int end = position + length;
+			if(RUNTIME_VISIBLE_ANNOTATIONS.equals(readUtf8(nameIndex))) {
+				final int annotationsCount = readUnsignedShort();
+				for (int j = 0; j < annotationsCount; j++) {
+					flags |= readAnnotation();
+				}
+			}
+			position = end;
+		}
+		return flags;
+	}
+
+	private int readAnnotation() throws IOException {
+		final int flags = getFlag(readUtf8(readUnsignedShort()));
+		final int pairsCount = readUnsignedShort();
+		for (int i = 0; i < pairsCount; i++) {
+			// element name
+			position += 2;
+			skipElementValue();
+		}
+		return flags;
+	}
+
+	private void skipElementValue() throws IOException {
+		final int tag = classFile[position++] & 0xFF;
+		switch (tag) {
+		case 'B': case 'C': case 'D': case 'F': case 'I': case 'J': case 'S': case 'Z': case 's': case 'c':
+			position += 2;
+			break;
+		case 'e':
+			position += 4;
+			break;
+		case '@':
+			readAnnotation();
+			break;
+		case '[':
+			final int valuesCount = readUnsignedShort();
+			for (int i = 0; i < valuesCount; i++) {
+				skipElementValue();
+			}
+			break;
+		default:
+			throw new IOException("unknown element value tag " + (char) tag + " at offset " + (position - 1));
+		}
+	}
+
+	private static int getFlag(String descriptor) {
+		if(SIP_SERVLET.equals(descriptor)) {
+			return AnnotationIndex.SIP_SERVLET;
+		} else if(SIP_LISTENER.equals(descriptor)) {
+			return AnnotationIndex.SIP_LISTENER;
+		} else if(SIP_APPLICATION.equals(descriptor)) {
+			return AnnotationIndex.SIP_APPLICATION;
+		} else if(SIP_APPLICATION_KEY.equals(descriptor)) {
+			return AnnotationIndex.SIP_APPLICATION_KEY;
+		} else if(CONCURRENCY_CONTROL.equals(descriptor)) {
+			return AnnotationIndex.CONCURRENCY_CONTROL;
+		}
+		return 0;
+	}
+
+	private String readClassName(int classIndex) throws IOException {
+		// a Class entry holds the index of the Utf8 entry of the internal name
+		return readUtf8(readUnsignedShort(constantPoolOffsets[classIndex] + 1)).replace('/', '.');
+	}
+
+	private String readUtf8(int index) throws IOException {
+		final int offset = constantPoolOffsets[index];
+		if(classFile[offset] != 1) {
+			throw new IOException("constant pool entry " + index + " is not an Utf8 entry");
+		}
+		// the modified UTF-8 of class files is the one of DataInput, length included
+		final int length = readUnsignedShort(offset + 1);
+		return new DataInputStream(new ByteArrayInputStream(classFile, offset + 1, length + 2)).readUTF();
+	}
+
+	private int readUnsignedShort() {
+		final int value = readUnsignedShort(position);
+		position += 2;
+		return value;
+	}
+
+	private int readUnsignedShort(int offset) {
+		return ((classFile[offset] & 0xFF) << 8) | (classFile[offset + 1] & 0xFF);
+	}
+
+	private int readInt(int offset) {
+		return ((classFile[offset] & 0xFF) << 24) | ((classFile[offset + 1] & 0xFF) << 16)
+				| ((classFile[offset + 2] & 0xFF) << 8) | (classFile[offset + 3] & 0xFF);
+	}
+}
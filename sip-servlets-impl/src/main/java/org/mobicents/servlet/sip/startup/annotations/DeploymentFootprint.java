@@ -0,0 +1,82 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.servlet.sip.startup.annotations;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures what a deployment step costs : elapsed time, classes loaded and growth of the class metadata space
+ * (Metaspace, or the permanent generation before Java 8). The class and metadata figures are JVM wide so they also
+ * account for anything deployed concurrently.
+ */
+public final class DeploymentFootprint {
+	private final long startTime;
+	private final long loadedClasses;
+	private final long metaspaceUsed;
+
+	private DeploymentFootprint() {
+		startTime = System.nanoTime();
+		loadedClasses = ManagementFactory.getClassLoadingMXBean().getTotalLoadedClassCount();
+		metaspaceUsed = getMetaspaceUsed();
+	}
+
+	/**
+	 * @return a footprint measured from now
+	 */
+	public static DeploymentFootprint start() {
+		return new DeploymentFootprint();
+	}
+
+	public long getElapsedMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+	}
+
+	public long getLoadedClasses() {
+		return ManagementFactory.getClassLoadingMXBean().getTotalLoadedClassCount() - loadedClasses;
+	}
+
+	/**
+	 * @return the growth of the class metadata space in bytes, can be negative if classes were unloaded meanwhile
+	 */
+	public long getMetaspaceGrowth() {
+		return getMetaspaceUsed() - metaspaceUsed;
+	}
+
+	private static long getMetaspaceUsed() {
+		long used = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			final String name = pool.getName();
+			if(pool.getType() == MemoryType.NON_HEAP && (name.contains("Metaspace") || name.contains("Perm Gen"))) {
+				used += pool.getUsage().getUsed();
+			}
+		}
+		return used;
+	}
+
+	@Override
+	public String toString() {
+		return "in " + getElapsedMillis() + "ms, " + getLoadedClasses() + " classes loaded, metaspace "
+				+ (getMetaspaceGrowth() >= 0 ? "+" : "") + getMetaspaceGrowth() / 1024 + "KB";
+	}
+}
@@ -0,0 +1,135 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.servlet.sip.core;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that the application indexes carried in the routing token are the same on every node
+ */
+public class ApplicationIndexTableTest extends TestCase {
+
+	public void testAddRemove() {
+		ApplicationIndexTable table = ApplicationIndexTable.EMPTY.add("click2call").add("location-service");
+		assertEquals(RoutingToken.getApplicationIndex("click2call"), table.getApplicationIndex("click2call"));
+		assertEquals("click2call", table.getApplicationName(RoutingToken.getApplicationIndex("click2call")));
+		assertEquals("location-service", table.getApplicationName(table.getApplicationIndex("location-service")));
+		assertSame(table, table.add("click2call"));
+
+		ApplicationIndexTable removed = table.remove("click2call");
+		assertEquals(-1, removed.getApplicationIndex("click2call"));
+		assertNull(removed.getApplicationName(RoutingToken.getApplicationIndex("click2call")));
+		assertEquals("location-service", removed.getApplicationName(removed.getApplicationIndex("location-service")));
+		assertSame(removed, removed.remove("click2call"));
+	}
+
+	public void testIndexDoesNotDependOnDeploymentOrder() {
+		ApplicationIndexTable table = ApplicationIndexTable.EMPTY;
+		for(int i = 0; i < 100; i++) {
+			table = table.add("app" + i);
+		}
+		ApplicationIndexTable reversed = ApplicationIndexTable.EMPTY;
+		for(int i = 99; i >= 0; i--) {
+			reversed = reversed.add("app" + i);
+		}
+		for(int i = 0; i < 100; i++) {
+			assertEquals(table.getApplicationIndex("app" + i), reversed.getApplicationIndex("app" + i));
+			assertEquals("app" + i, reversed.getApplicationName(table.getApplicationIndex("app" + i)));
+		}
+	}
+
+	public void testCollisionRejected() {
+		// the index is 24 bits wide so two of a few thousand names are bound to collide
+		final Map<Integer, String> names = new HashMap<Integer, String>();
+		String first = null;
+		String second = null;
+		for(int i = 0; second == null; i++) {
+			final String name = "app" + i;
+			first = names.put(RoutingToken.getApplicationIndex(name), name);
+			if(first != null) {
+				second = name;
+			}
+		}
+		final ApplicationIndexTable table = ApplicationIndexTable.EMPTY.add(first);
+		try {
+			table.add(second);
+			fail("the index of " + second + " collides with the one of " + first);
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		assertEquals(first, table.getApplicationName(RoutingToken.getApplicationIndex(second)));
+		assertEquals(-1, table.getApplicationIndex(second));
+	}
+
+	public void testRoutingTokenRoundTrip() {
+		final int index = RoutingToken.getApplicationIndex("click2call");
+		RoutingToken token = RoutingToken.parseBranch(RoutingToken.createBranch(index, RoutingToken.NO_NODE_ID, "5e1c0d9a_7a8b"));
+		assertNotNull(token);
+		assertEquals(index, token.getApplicationIndex());
+		assertEquals(RoutingToken.NO_NODE_ID, token.getNodeId());
+		assertEquals("5e1c0d9a_7a8b", token.getApplicationSessionId());
+
+		token = RoutingToken.parseBranch(RoutingToken.createBranch(index, RoutingToken.NO_NODE_ID, "5e1c0d9a", "random_part"));
+		assertNotNull(token);
+		assertEquals("5e1c0d9a", token.getApplicationSessionId());
+
+		// branches of the previous versions have no marker
+		assertNull(RoutingToken.parseBranch("z9hG4bK5e1c0d9a_1a2b3c4d_0123456789abcdef"));
+		assertNull(RoutingToken.parseBranch(null));
+	}
+
+	public void testNodeIdRoundTrip() {
+		final int index = RoutingToken.getApplicationIndex("click2call");
+		final int nodeId = RoutingToken.getNodeId("node1");
+		assertTrue(nodeId >= 0 && nodeId <= RoutingToken.MAX_NODE_ID);
+		// the identifier only depends on the jvmRoute so it survives a restart of the node
+		assertEquals(nodeId, RoutingToken.getNodeId(new String("node1")));
+		// the last jvmRoute is cached, another one is hashed again
+		RoutingToken.getNodeId("node2");
+		assertEquals(nodeId, RoutingToken.getNodeId("node1"));
+		assertEquals(RoutingToken.NO_NODE_ID, RoutingToken.getNodeId(null));
+
+		final String branch = RoutingToken.createBranch(index, nodeId, "5e1c0d9a_7a8b");
+		RoutingToken token = RoutingToken.parseBranch(branch);
+		assertNotNull(token);
+		assertEquals(index, token.getApplicationIndex());
+		assertEquals(nodeId, token.getNodeId());
+		assertEquals("5e1c0d9a_7a8b", token.getApplicationSessionId());
+
+		// the token without a node id is shorter by the size of the field
+		assertEquals(branch.length() - RoutingToken.NODE_ID_DIGITS, 
+				RoutingToken.createBranch(index, RoutingToken.NO_NODE_ID, "5e1c0d9a_7a8b").length());
+
+		token = RoutingToken.parseBranch(RoutingToken.createBranch(index, RoutingToken.MAX_NODE_ID, "5e1c0d9a", "random"));
+		assertEquals(RoutingToken.MAX_NODE_ID, token.getNodeId());
+		assertEquals("5e1c0d9a", token.getApplicationSessionId());
+
+		try {
+			RoutingToken.createBranch(index, RoutingToken.MAX_NODE_ID + 1, "5e1c0d9a");
+			fail("node id out of range");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.servlet.sip.core;
+
+import java.util.Collections;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks the cache of the hosts resolved by the {@link LocalAddressTable}.
+ */
+public class LocalAddressTableTest extends TestCase {
+	private LocalAddressTable table;
+
+	@Override
+	protected void setUp() throws Exception {
+		table = new LocalAddressTable(Collections.<MobicentsExtendedListeningPoint>emptyList(), null);
+	}
+
+	public void testSingleRefreshInProgress() {
+		assertNull(table.getResolvedAddresses("example.com"));
+		// never resolved, the caller resolves it synchronously
+		assertFalse(table.startRefresh("example.com"));
+
+		table.putResolvedAddresses("example.com", new String[] {"192.0.2.1"}, -1);
+		assertTrue(table.startRefresh("example.com"));
+		// a refresh is already in progress, the expired addresses are served meanwhile
+		assertFalse(table.startRefresh("example.com"));
+		assertEquals("192.0.2.1", table.getResolvedAddresses("example.com")[0]);
+
+		table.putResolvedAddresses("example.com", new String[] {"192.0.2.2"});
+		assertEquals("192.0.2.2", table.getResolvedAddresses("example.com")[0]);
+		// not expired yet
+		assertFalse(table.startRefresh("example.com"));
+	}
+
+	public void testNoAddresses() {
+		table.putResolvedAddresses("unknown.example.com", LocalAddressTable.NO_ADDRESSES);
+		assertSame(LocalAddressTable.NO_ADDRESSES, table.getResolvedAddresses("unknown.example.com"));
+		assertFalse(table.startRefresh("unknown.example.com"));
+	}
+
+	public void testExpiredHostsEvictedFirst() {
+		table.putResolvedAddresses("expired.example.com", new String[] {"192.0.2.1"}, -1);
+		for (int i = 1; i < LocalAddressTable.MAX_RESOLVED_HOSTS; i++) {
+			table.putResolvedAddresses("host" + i + ".example.com", new String[] {"192.0.2.1"});
+		}
+		table.putResolvedAddresses("new.example.com", new String[] {"192.0.2.2"});
+
+		assertNull(table.getResolvedAddresses("expired.example.com"));
+		for (int i = 1; i < LocalAddressTable.MAX_RESOLVED_HOSTS; i++) {
+			assertNotNull(table.getResolvedAddresses("host" + i + ".example.com"));
+		}
+		assertNotNull(table.getResolvedAddresses("new.example.com"));
+	}
+
+	public void testBoundedWhenNoneExpired() {
+		for (int i = 0; i < LocalAddressTable.MAX_RESOLVED_HOSTS * 2; i++) {
+			table.putResolvedAddresses("host" + i + ".example.com", new String[] {"192.0.2.1"});
+		}
+		int cached = 0;
+		for (int i = 0; i < LocalAddressTable.MAX_RESOLVED_HOSTS * 2; i++) {
+			if(table.getResolvedAddresses("host" + i + ".example.com") != null) {
+				cached++;
+			}
+		}
+		assertTrue(cached <= LocalAddressTable.MAX_RESOLVED_HOSTS);
+		// the host just cached is never the one evicted
+		assertNotNull(table.getResolvedAddresses("host" + (LocalAddressTable.MAX_RESOLVED_HOSTS * 2 - 1) + ".example.com"));
+	}
+}
@@ -0,0 +1,240 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.servlet.sip.core;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that the messages sent synchronously don't overtake the ones sent asynchronously
+ * to the same destination through the {@link OutboundWriteQueues}.
+ */
+public class OutboundWriteQueuesTest extends TestCase {
+	private static final String DESTINATION = "UDP:192.168.0.10:5060";
+
+	private ExecutorService executor;
+	private ExecutorService application;
+	private OutboundWriteQueues queues;
+	private List<String> written;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		executor = Executors.newFixedThreadPool(OutboundWriteQueues.WRITER_THREADS);
+		application = Executors.newSingleThreadExecutor();
+		queues = new OutboundWriteQueues(executor);
+		written = Collections.synchronizedList(new ArrayList<String>());
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		application.shutdownNow();
+		executor.shutdownNow();
+		super.tearDown();
+	}
+
+	private Callable<Void> write(final String message) {
+		return new Callable<Void>() {
+			public Void call() {
+				written.add(message);
+				return null;
+			}
+		};
+	}
+
+	// asynchronous write held until the latch is released
+	private void writeAsynchronously(final String message, final CountDownLatch release) {
+		queues.get(DESTINATION).execute(new Runnable() {
+			public void run() {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				written.add(message);
+			}
+		});
+	}
+
+	public void testWriteRunsOnCallingThreadWhenNothingIsQueued() throws Exception {
+		final Thread caller = Thread.currentThread();
+		final Thread writer = queues.write(DESTINATION, new Callable<Thread>() {
+			public Thread call() {
+				return Thread.currentThread();
+			}
+		});
+		assertSame(caller, writer);
+	}
+
+	public void testWriteDoesNotOvertakeQueuedWrites() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		writeAsynchronously("INVITE", release);
+		writeAsynchronously("re-INVITE", release);
+		// what a CANCEL or BYE sent with send() right after does
+		final Future<Void> cancel = application.submit(new Callable<Void>() {
+			public Void call() throws Exception {
+				return queues.write(DESTINATION, write("CANCEL"));
+			}
+		});
+		try {
+			cancel.get(200, TimeUnit.MILLISECONDS);
+			fail("the synchronous write must wait for the queued ones");
+		} catch (TimeoutException e) {
+			// expected
+		}
+		assertTrue(written.isEmpty());
+		release.countDown();
+		cancel.get(5, TimeUnit.SECONDS);
+		assertEquals(Arrays.asList("INVITE", "re-INVITE", "CANCEL"), written);
+		assertEquals(0, queues.size());
+	}
+
+	public void testWriteFailureIsRethrownToTheCaller() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		writeAsynchronously("INVITE", release);
+		final IOException failure = new IOException("connection refused");
+		final Future<Void> bye = application.submit(new Callable<Void>() {
+			public Void call() throws Exception {
+				return queues.write(DESTINATION, new Callable<Void>() {
+					public Void call() throws IOException {
+						throw failure;
+					}
+				});
+			}
+		});
+		release.countDown();
+		try {
+			bye.get(5, TimeUnit.SECONDS);
+			fail("the failure of the write must reach the caller");
+		} catch (ExecutionException e) {
+			assertSame(failure, e.getCause());
+		}
+		assertEquals(Arrays.asList("INVITE"), written);
+	}
+
+	public void testWriteFromWriterThreadDoesNotWait() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(1);
+		writeAsynchronously("INVITE", release);
+		// a send listener sending another message from the writer thread
+		queues.get(DESTINATION).execute(new Runnable() {
+			public void run() {
+				try {
+					queues.write(DESTINATION, write("ACK"));
+				} catch (Exception e) {
+					written.add("failed");
+				}
+				done.countDown();
+			}
+		});
+		release.countDown();
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertEquals(Arrays.asList("INVITE", "ACK"), written);
+	}
+
+	public void testWriteOnlyWaitsForItsOwnDestination() throws Exception {
+		// another destination, whatever stripe it falls in
+		final String otherDestination = "UDP:192.168.0.11:5060";
+		final CountDownLatch release = new CountDownLatch(1);
+		writeAsynchronously("INVITE", release);
+		final Future<Void> options = application.submit(new Callable<Void>() {
+			public Void call() throws Exception {
+				return queues.write(otherDestination, write("OPTIONS"));
+			}
+		});
+		options.get(5, TimeUnit.SECONDS);
+		assertEquals(Arrays.asList("OPTIONS"), written);
+		release.countDown();
+	}
+
+	public void testStopFailsTheQueuedWrites() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		writeAsynchronously("INVITE", release);
+		final Future<Void> bye = application.submit(new Callable<Void>() {
+			public Void call() throws Exception {
+				return queues.write(DESTINATION, write("BYE"));
+			}
+		});
+		try {
+			bye.get(200, TimeUnit.MILLISECONDS);
+			fail("the synchronous write must wait for the queued ones");
+		} catch (TimeoutException e) {
+			// expected
+		}
+		queues.stop();
+		try {
+			bye.get(5, TimeUnit.SECONDS);
+			fail("the queued write can't be written anymore");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof IOException);
+		}
+		try {
+			queues.write(DESTINATION, write("CANCEL"));
+			fail("the queues are stopped");
+		} catch (IOException e) {
+			// expected
+		}
+		release.countDown();
+		assertFalse(written.contains("BYE"));
+	}
+
+	public void testWaitingWriteCanBeInterrupted() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		writeAsynchronously("INVITE", release);
+		final Future<Boolean> bye = application.submit(new Callable<Boolean>() {
+			public Boolean call() throws Exception {
+				try {
+					queues.write(DESTINATION, write("BYE"));
+					return Boolean.FALSE;
+				} catch (InterruptedIOException e) {
+					return Thread.currentThread().isInterrupted();
+				}
+			}
+		});
+		try {
+			bye.get(200, TimeUnit.MILLISECONDS);
+			fail("the synchronous write must wait for the queued ones");
+		} catch (TimeoutException e) {
+			// expected
+		}
+		application.shutdownNow();
+		assertTrue(bye.get(5, TimeUnit.SECONDS));
+		release.countDown();
+		// the interrupted write was taken back from the queue
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+		assertEquals(Arrays.asList("INVITE"), written);
+	}
+}
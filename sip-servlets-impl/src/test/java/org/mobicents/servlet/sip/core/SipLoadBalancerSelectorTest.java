@@ -0,0 +1,229 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.servlet.sip.core;
+
+import java.net.InetAddress;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.mobicents.ha.javax.sip.SipLoadBalancer;
+
+/**
+ * Checks the weighted rendezvous hashing of the {@link SipLoadBalancerSelector} : the share of the keys each balancer
+ * gets, the stickiness of a key to its balancer and the keys moved when a balancer is ejected or drained.
+ */
+public class SipLoadBalancerSelectorTest extends TestCase {
+	private static final int SIP_PORT = 5065;
+	private static final int KEYS = 60000;
+
+	private SipLoadBalancer[] sipLoadBalancers;
+	private SipLoadBalancerSelector selector;
+
+	@Override
+	protected void setUp() throws Exception {
+		sipLoadBalancers = new SipLoadBalancer[4];
+		for (int i = 0; i < sipLoadBalancers.length; i++) {
+			sipLoadBalancers[i] = new SipLoadBalancer(null, InetAddress.getByAddress(new byte[] {10, 0, 0, (byte) (i + 1)}), SIP_PORT, 2000, 2000);
+		}
+		selector = new SipLoadBalancerSelector();
+	}
+
+	private void addAll() {
+		for (SipLoadBalancer sipLoadBalancer : sipLoadBalancers) {
+			selector.add(sipLoadBalancer);
+		}
+	}
+
+	private void setWeight(int balancer, int weight) {
+		selector.setWeight(sipLoadBalancers[balancer].getAddress().getHostAddress(), SIP_PORT, weight);
+	}
+
+	private static String key(int i) {
+		return "b7f2c1e0-" + i + "-application";
+	}
+
+	private Map<String, SipLoadBalancer> selectAll() {
+		final Map<String, SipLoadBalancer> selection = new HashMap<String, SipLoadBalancer>();
+		for (int i = 0; i < KEYS; i++) {
+			selection.put(key(i), selector.select(key(i), null));
+		}
+		return selection;
+	}
+
+	private int count(Map<String, SipLoadBalancer> selection, SipLoadBalancer sipLoadBalancer) {
+		int count = 0;
+		for (SipLoadBalancer selected : selection.values()) {
+			if(selected == sipLoadBalancer) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	public void testNoLoadBalancer() {
+		assertNull(selector.select(key(0), "call"));
+		assertNull(selector.getFirst());
+	}
+
+	public void testDistributionFollowsWeights() {
+		addAll();
+		setWeight(0, 100);
+		setWeight(1, 200);
+		setWeight(2, 300);
+		setWeight(3, 400);
+		final Map<String, SipLoadBalancer> selection = selectAll();
+		for (int i = 0; i < sipLoadBalancers.length; i++) {
+			final double share = (double) count(selection, sipLoadBalancers[i]) / KEYS;
+			final double expectedShare = (i + 1) / 10d;
+			assertEquals("share of balancer " + i, expectedShare, share, 0.02d);
+		}
+	}
+
+	public void testEvenDistributionByDefault() {
+		addAll();
+		final Map<String, SipLoadBalancer> selection = selectAll();
+		for (SipLoadBalancer sipLoadBalancer : sipLoadBalancers) {
+			assertEquals(0.25d, (double) count(selection, sipLoadBalancer) / KEYS, 0.02d);
+		}
+	}
+
+	public void testSameKeySticksToSameBalancer() {
+		addAll();
+		final Map<String, SipLoadBalancer> selection = selectAll();
+		for (int i = 0; i < KEYS; i++) {
+			assertSame(selection.get(key(i)), selector.select(key(i), "call-" + i));
+		}
+
+		// the selection doesn't depend on the order the balancers were added in
+		final SipLoadBalancerSelector otherSelector = new SipLoadBalancerSelector();
+		for (int i = sipLoadBalancers.length - 1; i >= 0; i--) {
+			otherSelector.add(sipLoadBalancers[i]);
+		}
+		for (int i = 0; i < KEYS; i++) {
+			assertSame(selection.get(key(i)), otherSelector.select(key(i), null));
+		}
+	}
+
+	public void testStrategies() {
+		addAll();
+		// the call id is only used when there is no sip application session
+		assertSame(selector.select(key(1), null), selector.select(key(1), key(2)));
+		assertSame(selector.select(null, key(2)), selector.select(key(2), null));
+
+		selector.setStrategy(LoadBalancerSelectionStrategy.Call);
+		assertSame(selector.select(key(2), null), selector.select(key(1), key(2)));
+
+		selector.setStrategy(LoadBalancerSelectionStrategy.Single);
+		for (int i = 0; i < 100; i++) {
+			assertSame(sipLoadBalancers[0], selector.select(key(i), key(i)));
+		}
+	}
+
+	public void testOnlyKeysOfEjectedBalancerMove() {
+		addAll();
+		final Map<String, SipLoadBalancer> before = selectAll();
+		final SipLoadBalancer ejected = sipLoadBalancers[2];
+		assertTrue(selector.remove(ejected));
+		assertFalse(selector.remove(ejected));
+		assertEquals(3, selector.size());
+
+		final Map<String, SipLoadBalancer> after = selectAll();
+		final int[] moved = new int[sipLoadBalancers.length];
+		for (int i = 0; i < KEYS; i++) {
+			final SipLoadBalancer previous = before.get(key(i));
+			final SipLoadBalancer current = after.get(key(i));
+			assertNotSame(ejected, current);
+			if(previous != ejected) {
+				assertSame(previous, current);
+			} else {
+				for (int j = 0; j < sipLoadBalancers.length; j++) {
+					if(sipLoadBalancers[j] == current) {
+						moved[j]++;
+					}
+				}
+			}
+		}
+		// the keys of the ejected balancer are spread over the other ones
+		final int ejectedKeys = count(before, ejected);
+		for (int j = 0; j < sipLoadBalancers.length; j++) {
+			if(j != 2) {
+				assertEquals((double) ejectedKeys / 3, moved[j], ejectedKeys * 0.1d);
+			}
+		}
+
+		// the keys go back once the balancer is added back
+		selector.add(ejected);
+		assertEquals(before, selectAll());
+	}
+
+	public void testZeroWeightDrainsBalancer() {
+		addAll();
+		final Map<String, SipLoadBalancer> before = selectAll();
+		final SipLoadBalancer drained = sipLoadBalancers[1];
+		assertTrue(selector.setWeight(drained.getAddress().getHostAddress(), SIP_PORT, 0));
+		// still live, it just gets no new keys
+		assertEquals(4, selector.size());
+
+		final Map<String, SipLoadBalancer> after = selectAll();
+		assertEquals(0, count(after, drained));
+		for (int i = 0; i < KEYS; i++) {
+			if(before.get(key(i)) != drained) {
+				assertSame(before.get(key(i)), after.get(key(i)));
+			}
+		}
+
+		// restoring the weight gives the balancer its keys back
+		setWeight(1, SipLoadBalancerSelector.DEFAULT_WEIGHT);
+		assertEquals(before, selectAll());
+	}
+
+	public void testAllBalancersDrained() {
+		addAll();
+		for (int i = 0; i < sipLoadBalancers.length; i++) {
+			setWeight(i, 0);
+		}
+		// the requests still go out through a balancer
+		assertSame(sipLoadBalancers[0], selector.select(key(0), null));
+	}
+
+	public void testWeightKeptForBalancerNotLiveYet() {
+		assertFalse(selector.setWeight(sipLoadBalancers[3].getAddress().getHostAddress(), SIP_PORT, 0));
+		addAll();
+		assertEquals(0, count(selectAll(), sipLoadBalancers[3]));
+		assertEquals("10.0.0.4:" + SIP_PORT + "=0", selector.getLoadBalancers()[3]);
+
+		// a balancer removed and added back keeps its weight
+		selector.remove(sipLoadBalancers[3]);
+		selector.add(sipLoadBalancers[3]);
+		assertEquals(0, count(selectAll(), sipLoadBalancers[3]));
+	}
+
+	public void testNegativeWeight() {
+		try {
+			setWeight(0, -1);
+			fail("a negative weight must be refused");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+}
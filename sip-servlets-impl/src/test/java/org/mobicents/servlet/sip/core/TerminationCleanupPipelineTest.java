@@ -0,0 +1,158 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.servlet.sip.core;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that the cleanup drain pass never waits on a session locked by another thread
+ */
+public class TerminationCleanupPipelineTest extends TestCase {
+
+	private ManualExecutor executor;
+	private ScheduledThreadPoolExecutor scheduler;
+	private TerminationCleanupPipeline pipeline;
+
+	@Override
+	protected void setUp() throws Exception {
+		executor = new ManualExecutor();
+		scheduler = new ScheduledThreadPoolExecutor(1);
+		pipeline = new TerminationCleanupPipeline(null, executor, scheduler);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		scheduler.shutdownNow();
+	}
+
+	public void testBusyTaskDoesNotBlockTheOthers() {
+		final List<String> ran = new ArrayList<String>();
+		pipeline.execute(new BusyTask("busy", 1, ran));
+		pipeline.execute(new BusyTask("free", 0, ran));
+		assertEquals(2, pipeline.size());
+
+		assertTrue(executor.runNext());
+		assertEquals(1, ran.size());
+		assertEquals("free", ran.get(0));
+		assertEquals(1, pipeline.size());
+
+		// some progress was made so the busy task is retried right away
+		assertTrue(executor.runNext());
+		assertEquals(2, ran.size());
+		assertEquals("busy", ran.get(1));
+		assertEquals(0, pipeline.size());
+		assertFalse(executor.runNext());
+	}
+
+	public void testBusyTaskIsTriedOncePerPass() {
+		final List<String> ran = new ArrayList<String>();
+		BusyTask busy = new BusyTask("busy", 1000, ran);
+		pipeline.execute(busy);
+
+		assertTrue(executor.runNext());
+		assertEquals(1, busy.attempts);
+		assertEquals(1, pipeline.size());
+	}
+
+	public void testOnlyBusyTasksAreRetriedLater() throws Exception {
+		final List<String> ran = new ArrayList<String>();
+		pipeline.execute(new BusyTask("busy", 1, ran));
+
+		assertTrue(executor.runNext());
+		// nothing could be done, the next pass waits on the scheduler instead of spinning on the executor
+		assertFalse(executor.runNext());
+
+		long deadline = System.currentTimeMillis() + 5000;
+		while(!executor.hasPending() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(TerminationCleanupPipeline.BUSY_SESSION_RETRY_DELAY);
+		}
+		assertTrue(executor.runNext());
+		assertEquals(1, ran.size());
+		assertEquals(0, pipeline.size());
+	}
+
+	public void testDrainIsBounded() {
+		final List<String> ran = new ArrayList<String>();
+		for(int i = 0; i < TerminationCleanupPipeline.MAX_TASKS_PER_DRAIN + 1; i++) {
+			pipeline.execute(new BusyTask("task" + i, 0, ran));
+		}
+		assertTrue(executor.runNext());
+		assertEquals(TerminationCleanupPipeline.MAX_TASKS_PER_DRAIN, ran.size());
+		assertTrue(executor.runNext());
+		assertEquals(TerminationCleanupPipeline.MAX_TASKS_PER_DRAIN + 1, ran.size());
+		assertFalse(executor.runNext());
+	}
+
+	private static final class BusyTask implements TerminationCleanupPipeline.Task {
+		private final String name;
+		private final List<String> ran;
+		private int busyAttempts;
+		private int attempts;
+
+		private BusyTask(String name, int busyAttempts, List<String> ran) {
+			this.name = name;
+			this.busyAttempts = busyAttempts;
+			this.ran = ran;
+		}
+
+		public boolean run() {
+			attempts++;
+			if(busyAttempts > 0) {
+				busyAttempts--;
+				return false;
+			}
+			synchronized (ran) {
+				ran.add(name);
+			}
+			return true;
+		}
+	}
+
+	private static final class ManualExecutor implements Executor {
+		private final LinkedList<Runnable> pending = new LinkedList<Runnable>();
+
+		public synchronized void execute(Runnable command) {
+			pending.add(command);
+		}
+
+		synchronized boolean hasPending() {
+			return !pending.isEmpty();
+		}
+
+		boolean runNext() {
+			Runnable command;
+			synchronized (this) {
+				command = pending.poll();
+			}
+			if(command == null) {
+				return false;
+			}
+			command.run();
+			return true;
+		}
+	}
+}
@@ -0,0 +1,228 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.servlet.sip.core.replication;
+
+import gov.nist.javax.sip.message.SIPMessage;
+import gov.nist.javax.sip.parser.StringMsgParser;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StreamCorruptedException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.sip.message.Request;
+
+import junit.framework.TestCase;
+
+import org.mobicents.servlet.sip.core.session.SipApplicationSessionKey;
+import org.mobicents.servlet.sip.core.session.SipSessionKey;
+
+/**
+ * Round trips of every kind of value through {@link ReplicationOutput} and {@link ReplicationInput}.
+ */
+public class ReplicationCodecTest extends TestCase {
+	private static final String INVITE = 
+		"INVITE sip:bob@example.com SIP/2.0\r\n" +
+		"Via: SIP/2.0/TCP 127.0.0.1:5070;branch=z9hG4bK776asdhds\r\n" +
+		"Max-Forwards: 70\r\n" +
+		"To: <sip:bob@example.com>\r\n" +
+		"From: <sip:alice@example.com>;tag=1928301774\r\n" +
+		"Call-ID: a84b4c76e66710@127.0.0.1\r\n" +
+		"CSeq: 314159 INVITE\r\n" +
+		"Contact: <sip:alice@127.0.0.1:5070;transport=tcp>\r\n" +
+		"Content-Type: application/sdp\r\n" +
+		"Content-Length: 5\r\n" +
+		"\r\n" +
+		"v=0\r\n";
+
+	private ByteArrayOutputStream bytes;
+	private ObjectOutputStream objectOutput;
+	private ReplicationOutput out;
+
+	@Override
+	protected void setUp() throws Exception {
+		bytes = new ByteArrayOutputStream();
+		objectOutput = new ObjectOutputStream(bytes);
+		out = new ReplicationOutput(objectOutput);
+	}
+
+	private ReplicationInput read() throws IOException {
+		objectOutput.close();
+		return new ReplicationInput(new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+	}
+
+	public void testVarInts() throws Exception {
+		final int[] values = {0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE};
+		final int[] signedValues = {0, -1, 1, -64, 64, Integer.MIN_VALUE, Integer.MAX_VALUE};
+		final long[] longValues = {0L, 127L, 128L, System.currentTimeMillis(), Long.MAX_VALUE};
+		final long[] signedLongValues = {-1L, 1L, Long.MIN_VALUE, Long.MAX_VALUE};
+		for (int value : values) {
+			out.writeVarInt(value);
+		}
+		for (int value : signedValues) {
+			out.writeSignedVarInt(value);
+		}
+		for (long value : longValues) {
+			out.writeVarLong(value);
+		}
+		for (long value : signedLongValues) {
+			out.writeSignedVarLong(value);
+		}
+		final ReplicationInput in = read();
+		for (int value : values) {
+			assertEquals(value, in.readVarInt());
+		}
+		for (int value : signedValues) {
+			assertEquals(value, in.readSignedVarInt());
+		}
+		for (long value : longValues) {
+			assertEquals(value, in.readVarLong());
+		}
+		for (long value : signedLongValues) {
+			assertEquals(value, in.readSignedVarLong());
+		}
+	}
+
+	public void testSmallValuesFitInOneByte() throws Exception {
+		objectOutput.flush();
+		final int before = bytes.size();
+		out.writeVarInt(127);
+		out.writeSignedVarLong(-1L);
+		objectOutput.flush();
+		assertEquals(2, bytes.size() - before);
+	}
+
+	public void testStrings() throws Exception {
+		final char[] longChars = new char[70000];
+		Arrays.fill(longChars, '\u00e9');
+		final String longString = new String(longChars);
+		out.writeString(null);
+		out.writeString("");
+		out.writeString(longString);
+		out.writeBytes(new byte[] {1, 2, 3});
+		final ReplicationInput in = read();
+		assertNull(in.readString());
+		assertEquals("", in.readString());
+		assertEquals(longString, in.readString());
+		assertTrue(Arrays.equals(new byte[] {1, 2, 3}, in.readBytes()));
+	}
+
+	public void testInternedStrings() throws Exception {
+		out.writeInternedString("application");
+		out.writeInternedString(null);
+		out.writeInternedString("other");
+		out.writeInternedString("application");
+		out.writeEnum(Thread.State.RUNNABLE);
+		out.writeEnum(null);
+		final ReplicationInput in = read();
+		final String first = in.readInternedString();
+		assertEquals("application", first);
+		assertNull(in.readInternedString());
+		assertEquals("other", in.readInternedString());
+		assertSame(first, in.readInternedString());
+		assertEquals(Thread.State.RUNNABLE, in.readEnum(Thread.State.class));
+		assertNull(in.readEnum(Thread.State.class));
+	}
+
+	public void testKeysAreWrittenOnce() throws Exception {
+		final SipSessionKey sessionKey = new SipSessionKey("1928301774", "a6c85cf", "a84b4c76e66710", "5e1c0d9a", "application");
+		final SipApplicationSessionKey applicationSessionKey = new SipApplicationSessionKey("5e1c0d9a", "application", null);
+		out.writeSipSessionKey(sessionKey);
+		out.writeSipApplicationSessionKey(applicationSessionKey);
+		out.writeSipSessionKey(null);
+		objectOutput.flush();
+		final int before = bytes.size();
+		out.writeSipSessionKey(sessionKey);
+		objectOutput.flush();
+		// only the reference to the key already written
+		assertEquals(1, bytes.size() - before);
+		final ReplicationInput in = read();
+		final SipSessionKey readSessionKey = in.readSipSessionKey();
+		assertEquals(sessionKey, readSessionKey);
+		assertEquals("1928301774", readSessionKey.getFromTag());
+		assertEquals("a6c85cf", readSessionKey.getToTag());
+		assertEquals("application", readSessionKey.getApplicationName());
+		final SipApplicationSessionKey readApplicationSessionKey = in.readSipApplicationSessionKey();
+		assertEquals(applicationSessionKey, readApplicationSessionKey);
+		assertNull(readApplicationSessionKey.getAppGeneratedKey());
+		assertNull(in.readSipSessionKey());
+		assertSame(readSessionKey, in.readSipSessionKey());
+	}
+
+	public void testMessage() throws Exception {
+		final SIPMessage message = new StringMsgParser().parseSIPMessage(INVITE.getBytes("UTF-8"), true, false, null);
+		out.writeMessage(message);
+		out.writeMessage(null);
+		final ReplicationInput in = read();
+		final SIPMessage readMessage = in.readMessage();
+		assertTrue(readMessage instanceof Request);
+		assertEquals(message.toString(), readMessage.toString());
+		assertEquals("v=0\r\n", new String(readMessage.getRawContent(), "UTF-8"));
+		assertNull(in.readMessage());
+	}
+
+	public void testAttributes() throws Exception {
+		final Map<String, Object> attributes = new HashMap<String, Object>();
+		attributes.put("counter", Integer.valueOf(3));
+		attributes.put("name", "value");
+		out.writeAttributes(attributes);
+		out.writeAttributes(null);
+		final ReplicationInput in = read();
+		final Map<String, Object> readAttributes = new HashMap<String, Object>();
+		readAttributes.put("stale", "value");
+		in.readAttributes(readAttributes);
+		assertEquals(attributes, readAttributes);
+		in.readAttributes(readAttributes);
+		assertTrue(readAttributes.isEmpty());
+	}
+
+	public void testRejectsForeignStream() throws Exception {
+		final ObjectOutputStream foreignOutput = new ObjectOutputStream(bytes = new ByteArrayOutputStream());
+		foreignOutput.writeByte(0x42);
+		foreignOutput.writeByte(ReplicationOutput.VERSION);
+		foreignOutput.close();
+		try {
+			new ReplicationInput(new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+			fail("a block without the magic byte was accepted");
+		} catch (StreamCorruptedException e) {
+			// expected
+		}
+	}
+
+	public void testRejectsNewerVersion() throws Exception {
+		final ObjectOutputStream newerOutput = new ObjectOutputStream(bytes = new ByteArrayOutputStream());
+		newerOutput.writeByte(ReplicationOutput.MAGIC);
+		newerOutput.writeByte(ReplicationOutput.VERSION + 1);
+		newerOutput.close();
+		try {
+			new ReplicationInput(new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+			fail("a block written by a newer version was accepted");
+		} catch (InvalidObjectException e) {
+			// expected
+		}
+	}
+}
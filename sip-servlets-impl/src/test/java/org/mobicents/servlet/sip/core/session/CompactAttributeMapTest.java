@@ -0,0 +1,198 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.servlet.sip.core.session;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that the compact attribute map behaves like a map both below and past {@link CompactAttributeMap#MAX_COMPACT_SIZE}
+ */
+public class CompactAttributeMapTest extends TestCase {
+
+	private static CompactAttributeMap fill(int size) {
+		CompactAttributeMap map = new CompactAttributeMap();
+		for(int i = 0; i < size; i++) {
+			assertNull(map.put("name" + i, "value" + i));
+		}
+		return map;
+	}
+
+	private static void assertContent(Map<String, Object> map, int size) {
+		assertEquals(size, map.size());
+		Map<String, Object> expected = new HashMap<String, Object>();
+		for(int i = 0; i < size; i++) {
+			expected.put("name" + i, "value" + i);
+			assertEquals("value" + i, map.get("name" + i));
+		}
+		assertEquals(expected, new HashMap<String, Object>(map));
+	}
+
+	public void testPutGetRemove() {
+		CompactAttributeMap map = fill(3);
+		assertContent(map, 3);
+		assertEquals("value1", map.put("name1", "other"));
+		assertEquals("other", map.get("name1"));
+		assertEquals(3, map.size());
+		assertEquals("other", map.remove("name1"));
+		assertNull(map.remove("name1"));
+		assertFalse(map.containsKey("name1"));
+		assertEquals(2, map.size());
+		map.clear();
+		assertTrue(map.isEmpty());
+	}
+
+	public void testNullNamesAndValuesRejected() {
+		CompactAttributeMap map = new CompactAttributeMap();
+		try {
+			map.put(null, "value");
+			fail();
+		} catch (NullPointerException e) {
+			// expected
+		}
+		try {
+			map.put("name", null);
+			fail();
+		} catch (NullPointerException e) {
+			// expected
+		}
+		try {
+			map.get(null);
+			fail();
+		} catch (NullPointerException e) {
+			// expected
+		}
+	}
+
+	public void testSwitchToConcurrentHashMap() {
+		CompactAttributeMap map = fill(CompactAttributeMap.MAX_COMPACT_SIZE);
+		assertContent(map, CompactAttributeMap.MAX_COMPACT_SIZE);
+		// replacing a value at the maximum size does not grow the map
+		assertEquals("value0", map.put("name0", "value0"));
+		assertEquals(CompactAttributeMap.MAX_COMPACT_SIZE, map.size());
+
+		assertNull(map.put("name" + CompactAttributeMap.MAX_COMPACT_SIZE, "value" + CompactAttributeMap.MAX_COMPACT_SIZE));
+		assertContent(map, CompactAttributeMap.MAX_COMPACT_SIZE + 1);
+
+		// the map stays a ConcurrentHashMap once switched, even when shrinking back
+		for(int i = CompactAttributeMap.MAX_COMPACT_SIZE; i > 1; i--) {
+			assertEquals("value" + i, map.remove("name" + i));
+		}
+		assertContent(map, 2);
+		map.clear();
+		assertTrue(map.isEmpty());
+		assertNull(map.put("name0", "value0"));
+		assertContent(map, 1);
+	}
+
+	public void testIteratorIsASnapshotInCompactMode() {
+		CompactAttributeMap map = fill(3);
+		Iterator<Entry<String, Object>> iterator = map.entrySet().iterator();
+		map.put("name3", "value3");
+		map.remove("name0");
+		int count = 0;
+		while(iterator.hasNext()) {
+			iterator.next();
+			count++;
+		}
+		assertEquals(3, count);
+	}
+
+	public void testRemoveDuringIteration() {
+		removeDuringIteration(3);
+		removeDuringIteration(CompactAttributeMap.MAX_COMPACT_SIZE + 2);
+	}
+
+	private void removeDuringIteration(int size) {
+		CompactAttributeMap map = fill(size);
+		Iterator<Entry<String, Object>> iterator = map.entrySet().iterator();
+		try {
+			iterator.remove();
+			fail();
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		int removed = 0;
+		while(iterator.hasNext()) {
+			Entry<String, Object> entry = iterator.next();
+			if(entry.getKey().endsWith("1") || entry.getKey().endsWith("2")) {
+				iterator.remove();
+				removed++;
+			}
+		}
+		assertEquals(2, removed);
+		assertEquals(size - 2, map.size());
+		assertFalse(map.containsKey("name1"));
+		assertFalse(map.containsKey("name2"));
+		assertEquals("value0", map.get("name0"));
+
+		// removing through the key set also goes through the entry iterator
+		Iterator<String> names = map.keySet().iterator();
+		while(names.hasNext()) {
+			names.next();
+			names.remove();
+		}
+		assertTrue(map.isEmpty());
+	}
+
+	public void testSetValueThroughEntry() {
+		setValueThroughEntry(3);
+		setValueThroughEntry(CompactAttributeMap.MAX_COMPACT_SIZE + 2);
+	}
+
+	private void setValueThroughEntry(int size) {
+		CompactAttributeMap map = fill(size);
+		for(Entry<String, Object> entry : map.entrySet()) {
+			if(entry.getKey().equals("name1")) {
+				assertEquals("value1", entry.setValue("other"));
+				assertEquals("other", entry.getValue());
+			}
+		}
+		assertEquals("other", map.get("name1"));
+		assertEquals("value0", map.get("name0"));
+		assertEquals(size, map.size());
+	}
+
+	public void testSerialization() throws Exception {
+		serialization(3);
+		serialization(CompactAttributeMap.MAX_COMPACT_SIZE + 2);
+	}
+
+	@SuppressWarnings("unchecked")
+	private void serialization(int size) throws Exception {
+		CompactAttributeMap map = fill(size);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(map);
+		out.close();
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		Map<String, Object> copy = (Map<String, Object>) in.readObject();
+		assertContent(copy, size);
+	}
+}
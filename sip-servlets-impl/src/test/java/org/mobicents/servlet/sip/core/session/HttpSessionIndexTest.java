@@ -0,0 +1,187 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.servlet.sip.core.session;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import javax.servlet.http.HttpSession;
+
+import junit.framework.TestCase;
+
+import org.mobicents.servlet.sip.core.SipContext;
+import org.mobicents.servlet.sip.core.SipManager;
+
+/**
+ * Checks that the index of the converged http sessions kept by the {@link SipManagerDelegate} 
+ * follows the http sessions added to and removed from the sip application sessions.
+ */
+public class HttpSessionIndexTest extends TestCase {
+	private static final String APPLICATION_NAME = "click2call";
+
+	private SipManagerDelegate sipManagerDelegate;
+	private SipContext sipContext;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		sipManagerDelegate = new SipStandardManagerDelegate();
+		sipContext = sipContext(sipManager(true));
+	}
+
+	// the primitive return values of the proxies have to be set, null can't be unboxed
+	private static Object defaultValue(Class<?> type) {
+		if(type == boolean.class) {
+			return Boolean.FALSE;
+		}
+		if(type == int.class) {
+			return Integer.valueOf(0);
+		}
+		if(type == long.class) {
+			return Long.valueOf(0);
+		}
+		if(type == float.class) {
+			return Float.valueOf(0);
+		}
+		if(type == double.class) {
+			return Double.valueOf(0);
+		}
+		return null;
+	}
+
+	private static HttpSession httpSession(final String id) {
+		return (HttpSession) Proxy.newProxyInstance(HttpSessionIndexTest.class.getClassLoader(), new Class<?>[] {HttpSession.class}, 
+				new InvocationHandler() {
+					public Object invoke(Object proxy, Method method, Object[] args) {
+						if("getId".equals(method.getName())) {
+							return id;
+						}
+						return defaultValue(method.getReturnType());
+					}
+				});
+	}
+
+	// manager of the container, keeping its sessions in the delegate or not
+	private SipManager sipManager(boolean delegateHolder) {
+		final Class<?>[] interfaces = delegateHolder ? 
+				new Class<?>[] {SipManager.class, SipManagerDelegateHolder.class} : new Class<?>[] {SipManager.class};
+		return (SipManager) Proxy.newProxyInstance(HttpSessionIndexTest.class.getClassLoader(), interfaces, 
+				new InvocationHandler() {
+					public Object invoke(Object proxy, Method method, Object[] args) {
+						if("getSipManagerDelegate".equals(method.getName())) {
+							return sipManagerDelegate;
+						}
+						if("findSession".equals(method.getName())) {
+							return httpSession((String) args[0]);
+						}
+						return defaultValue(method.getReturnType());
+					}
+				});
+	}
+
+	private static SipContext sipContext(final SipManager sipManager) {
+		return (SipContext) Proxy.newProxyInstance(HttpSessionIndexTest.class.getClassLoader(), new Class<?>[] {SipContext.class}, 
+				new InvocationHandler() {
+					public Object invoke(Object proxy, Method method, Object[] args) {
+						if("getSipManager".equals(method.getName())) {
+							return sipManager;
+						}
+						return defaultValue(method.getReturnType());
+					}
+				});
+	}
+
+	private SipApplicationSessionImpl sipApplicationSession(String id, SipContext sipContext) {
+		final SipApplicationSessionKey key = new SipApplicationSessionKey(id, APPLICATION_NAME, null);
+		final SipApplicationSessionImpl sipApplicationSession = new SipApplicationSessionImpl(key, sipContext);
+		sipManagerDelegate.sipApplicationSessions.put(key, sipApplicationSession);
+		return sipApplicationSession;
+	}
+
+	public void testAddedHttpSessionIsFound() {
+		final SipApplicationSessionImpl sipApplicationSession = sipApplicationSession("sas1", sipContext);
+		sipApplicationSession("sas2", sipContext).addHttpSession(httpSession("other"));
+		assertTrue(sipApplicationSession.addHttpSession(httpSession("5e1c0d9a.node1")));
+
+		// the jvmRoute of the http session may differ from the one it was added with
+		assertSame(sipApplicationSession, sipManagerDelegate.findSipApplicationSession(httpSession("5e1c0d9a")));
+		assertSame(sipApplicationSession, sipManagerDelegate.findSipApplicationSession(httpSession("5e1c0d9a.node2")));
+		assertNull(sipManagerDelegate.findSipApplicationSession(httpSession("unknown")));
+	}
+
+	public void testRemovedHttpSessionIsNotFound() {
+		final SipApplicationSessionImpl sipApplicationSession = sipApplicationSession("sas1", sipContext);
+		sipApplicationSession.addHttpSession(httpSession("5e1c0d9a"));
+		assertTrue(sipApplicationSession.removeHttpSession(httpSession("5e1c0d9a.node1")));
+
+		assertNull(sipManagerDelegate.findSipApplicationSession(httpSession("5e1c0d9a")));
+		assertFalse(sipManagerDelegate.sipApplicationSessionKeysByHttpSessionId.containsKey("5e1c0d9a"));
+	}
+
+	public void testRemovalDoesNotDropTheEntryOfAnotherSession() {
+		final SipApplicationSessionImpl first = sipApplicationSession("sas1", sipContext);
+		final SipApplicationSessionImpl second = sipApplicationSession("sas2", sipContext);
+		first.addHttpSession(httpSession("5e1c0d9a"));
+		// the http session moved to another sip application session
+		second.addHttpSession(httpSession("5e1c0d9a"));
+		first.removeHttpSession(httpSession("5e1c0d9a"));
+
+		assertSame(second, sipManagerDelegate.findSipApplicationSession(httpSession("5e1c0d9a")));
+	}
+
+	public void testStaleEntriesArePruned() {
+		// the sip application session is gone
+		sipManagerDelegate.addHttpSessionIndex("5e1c0d9a", new SipApplicationSessionKey("gone", APPLICATION_NAME, null));
+		assertNull(sipManagerDelegate.findSipApplicationSession(httpSession("5e1c0d9a")));
+		assertFalse(sipManagerDelegate.sipApplicationSessionKeysByHttpSessionId.containsKey("5e1c0d9a"));
+
+		// the sip application session doesn't hold the http session
+		final SipApplicationSessionImpl sipApplicationSession = sipApplicationSession("sas1", sipContext);
+		sipManagerDelegate.addHttpSessionIndex("7a8b4c2d", sipApplicationSession.getKey());
+		assertNull(sipManagerDelegate.findSipApplicationSession(httpSession("7a8b4c2d")));
+		assertFalse(sipManagerDelegate.sipApplicationSessionKeysByHttpSessionId.containsKey("7a8b4c2d"));
+	}
+
+	public void testInvalidatedSessionEntriesAreRemoved() {
+		final SipApplicationSessionImpl sipApplicationSession = sipApplicationSession("sas1", sipContext);
+		final SipApplicationSessionImpl other = sipApplicationSession("sas2", sipContext);
+		sipApplicationSession.addHttpSession(httpSession("5e1c0d9a"));
+		sipApplicationSession.addHttpSession(httpSession("7a8b4c2d"));
+		other.addHttpSession(httpSession("9e3f0a1b"));
+
+		// what the invalidation of the sip application session does
+		sipManagerDelegate.removeSipApplicationSession(sipApplicationSession.getKey());
+		assertFalse(sipManagerDelegate.sipApplicationSessionKeysByHttpSessionId.containsKey("5e1c0d9a"));
+		assertFalse(sipManagerDelegate.sipApplicationSessionKeysByHttpSessionId.containsKey("7a8b4c2d"));
+		assertSame(other, sipManagerDelegate.findSipApplicationSession(httpSession("9e3f0a1b")));
+
+		sipManagerDelegate.removeAllSessions();
+		assertTrue(sipManagerDelegate.sipApplicationSessionKeysByHttpSessionId.isEmpty());
+	}
+
+	public void testManagerWithoutDelegateIsNotIndexed() {
+		final SipApplicationSessionImpl sipApplicationSession = sipApplicationSession("sas1", sipContext(sipManager(false)));
+		assertTrue(sipApplicationSession.addHttpSession(httpSession("5e1c0d9a")));
+		assertTrue(sipManagerDelegate.sipApplicationSessionKeysByHttpSessionId.isEmpty());
+		assertTrue(sipApplicationSession.removeHttpSession(httpSession("5e1c0d9a")));
+	}
+}
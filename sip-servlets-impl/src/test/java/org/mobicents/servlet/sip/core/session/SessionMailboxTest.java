@@ -0,0 +1,141 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.servlet.sip.core.session;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that the tasks of a {@link SessionMailbox} never run while the session is locked
+ * by a code path running outside of the mailbox, such as a sip application session timer.
+ */
+public class SessionMailboxTest extends TestCase {
+	private static final int MESSAGES = 2000;
+	private static final int TIMER_FIRINGS = 500;
+
+	private ExecutorService executor;
+	private Semaphore sessionLock;
+	private SessionMailbox mailbox;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		executor = Executors.newFixedThreadPool(4);
+		sessionLock = new Semaphore(1);
+		mailbox = new SessionMailbox(executor, sessionLock);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		executor.shutdownNow();
+		super.tearDown();
+	}
+
+	public void testTimerAndMessagesNeverOverlap() throws Exception {
+		final AtomicInteger inside = new AtomicInteger();
+		final AtomicBoolean overlap = new AtomicBoolean(false);
+		final CountDownLatch messagesProcessed = new CountDownLatch(MESSAGES);
+
+		Thread timer = new Thread(new Runnable() {
+			public void run() {
+				for (int i = 0; i < TIMER_FIRINGS; i++) {
+					// what enterSipApp / exitSipApp do for a timer callback
+					sessionLock.acquireUninterruptibly();
+					try {
+						if(inside.incrementAndGet() != 1) {
+							overlap.set(true);
+						}
+						Thread.yield();
+						inside.decrementAndGet();
+					} finally {
+						sessionLock.release();
+						mailbox.sessionLockReleased();
+					}
+				}
+			}
+		}, "timer");
+		timer.start();
+
+		for (int i = 0; i < MESSAGES; i++) {
+			mailbox.execute(new Runnable() {
+				public void run() {
+					if(!SessionMailbox.isDrainedByCurrentThread(mailbox) || inside.incrementAndGet() != 1) {
+						overlap.set(true);
+					}
+					Thread.yield();
+					inside.decrementAndGet();
+					messagesProcessed.countDown();
+				}
+			});
+		}
+
+		timer.join(30000);
+		assertTrue("all messages should have been processed", messagesProcessed.await(30, TimeUnit.SECONDS));
+		assertFalse("a timer callback and a message of the same session ran concurrently", overlap.get());
+		assertEquals(0, mailbox.size());
+		assertEquals(1, sessionLock.availablePermits());
+	}
+
+	public void testTasksQueuedWhileLockedRunOnRelease() throws Exception {
+		final CountDownLatch processed = new CountDownLatch(1);
+		sessionLock.acquire();
+		mailbox.execute(new Runnable() {
+			public void run() {
+				processed.countDown();
+			}
+		});
+		assertFalse("the task should not run while the session is locked", processed.await(200, TimeUnit.MILLISECONDS));
+		assertEquals(1, mailbox.size());
+
+		sessionLock.release();
+		mailbox.sessionLockReleased();
+		assertTrue("the task should run once the session is released", processed.await(10, TimeUnit.SECONDS));
+	}
+
+	public void testTasksRunInSubmissionOrder() throws Exception {
+		final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+		final CountDownLatch processed = new CountDownLatch(MESSAGES);
+		for (int i = 0; i < MESSAGES; i++) {
+			final int index = i;
+			mailbox.execute(new Runnable() {
+				public void run() {
+					order.add(index);
+					processed.countDown();
+				}
+			});
+		}
+		assertTrue(processed.await(30, TimeUnit.SECONDS));
+		for (int i = 0; i < MESSAGES; i++) {
+			assertEquals(i, order.get(i).intValue());
+		}
+		assertFalse(SessionMailbox.isDrainedByCurrentThread(mailbox));
+	}
+}
@@ -0,0 +1,150 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.servlet.sip.core.timers;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.mobicents.servlet.sip.core.SipContext;
+import org.mobicents.servlet.sip.core.session.MobicentsSipApplicationSession;
+
+/**
+ * Checks that only the expiration tasks of the Shared sip application session timer service
+ * are scheduled again when their session is in use, the other services still wait for the session.
+ */
+public class DefaultSasTimerTaskTest extends TestCase {
+	// calls made on the context and the timer service, in order
+	private final List<String> calls = new ArrayList<String>();
+	private boolean sessionBusy;
+	private SipContext sipContext;
+	private MobicentsSipApplicationSession sipApplicationSession;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		final SipApplicationSessionTimerService sasTimerService = newProxy(SipApplicationSessionTimerService.class, new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				if("schedule".equals(method.getName())) {
+					calls.add("schedule " + ((TimeUnit) args[2]).toMillis((Long) args[1]));
+					return args[0];
+				}
+				return defaultValue(method);
+			}
+		});
+		sipContext = newProxy(SipContext.class, new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				final String name = method.getName();
+				if("getSipApplicationSessionTimerService".equals(name)) {
+					return sasTimerService;
+				}
+				if("tryEnterSipApp".equals(name)) {
+					calls.add(name);
+					return !sessionBusy;
+				}
+				if("enterSipApp".equals(name) || "exitSipApp".equals(name)) {
+					calls.add(name);
+				}
+				return defaultValue(method);
+			}
+		});
+		sipApplicationSession = newProxy(MobicentsSipApplicationSession.class, new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				final String name = method.getName();
+				if("getSipContext".equals(name)) {
+					return sipContext;
+				}
+				if("getExpirationTimeInternal".equals(name)) {
+					// already expired
+					return System.currentTimeMillis() - 1000L;
+				}
+				if("notifySipApplicationSessionListeners".equals(name)) {
+					calls.add("expired");
+				}
+				if("getId".equals(name) || "toString".equals(name)) {
+					return "sip application session";
+				}
+				return defaultValue(method);
+			}
+		});
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> T newProxy(Class<T> type, InvocationHandler handler) {
+		return (T) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {type}, handler);
+	}
+
+	private static Object defaultValue(Method method) {
+		final Class<?> returnType = method.getReturnType();
+		if(returnType == boolean.class) {
+			return Boolean.FALSE;
+		}
+		if(returnType == long.class) {
+			return 0L;
+		}
+		if(returnType == int.class) {
+			return 0;
+		}
+		return null;
+	}
+
+	public void testWaitsForBusySessionByDefault() {
+		sessionBusy = true;
+		new DefaultSasTimerTask(sipApplicationSession).run();
+		assertEquals("enterSipApp", calls.get(0));
+		assertFalse(calls.contains("tryEnterSipApp"));
+		assertTrue(calls.contains("expired"));
+		assertEquals("exitSipApp", calls.get(calls.size() - 1));
+	}
+
+	public void testRetriesBusySessionWhenAsked() {
+		sessionBusy = true;
+		final DefaultSasTimerTask task = new DefaultSasTimerTask(sipApplicationSession, true);
+		task.run();
+		assertEquals(2, calls.size());
+		assertEquals("tryEnterSipApp", calls.get(0));
+		assertEquals("schedule " + TimerServiceImpl.BUSY_SESSION_RETRY_DELAY, calls.get(1));
+		// the session is kept for the next attempt
+		assertSame(sipApplicationSession, task.getSipApplicationSession());
+
+		calls.clear();
+		sessionBusy = false;
+		task.run();
+		assertEquals("tryEnterSipApp", calls.get(0));
+		assertTrue(calls.contains("expired"));
+		assertEquals("exitSipApp", calls.get(calls.size() - 1));
+	}
+
+	public void testSharedServiceRetriesBusySession() {
+		sessionBusy = true;
+		final SipApplicationSessionTimerTask task =
+			new SharedSipApplicationSessionTimerService("application", null).createSipApplicationSessionTimerTask(sipApplicationSession);
+		task.run();
+		assertEquals("tryEnterSipApp", calls.get(0));
+		assertFalse(calls.contains("enterSipApp"));
+		assertFalse(calls.contains("expired"));
+	}
+}
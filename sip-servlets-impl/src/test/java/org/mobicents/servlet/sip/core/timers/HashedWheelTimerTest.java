@@ -0,0 +1,160 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+
+
+package org.mobicents.servlet.sip.core.timers;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.mobicents.servlet.sip.proxy.ProxyBranchTimerTask;
+
+/**
+ * Checks the expiry and cancellation of the timeouts of the {@link HashedWheelTimer},
+ * including the ones lasting more than a round of the wheel or scheduled in the past.
+ */
+public class HashedWheelTimerTest extends TestCase {
+	private static final long TICK_DURATION = 10;
+	private static final int TICKS_PER_WHEEL = 4;
+
+	private HashedWheelTimer timer;
+	private final Set<HashedWheelTimer.Timeout> timeouts = Collections.newSetFromMap(new ConcurrentHashMap<HashedWheelTimer.Timeout, Boolean>());
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		timer = new HashedWheelTimer("test_wheel_timer", TICK_DURATION, TimeUnit.MILLISECONDS, TICKS_PER_WHEEL, 1);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		timer.stop();
+		super.tearDown();
+	}
+
+	public void testExpiry() throws Exception {
+		final CountDownLatch latch = new CountDownLatch(1);
+		HashedWheelTimer.Timeout timeout = timer.newTimeout(new CountDown(latch), 30, TimeUnit.MILLISECONDS, timeouts);
+		assertEquals(1, timeouts.size());
+		assertEquals(1, timer.getPendingTimeouts());
+
+		assertTrue(latch.await(2, TimeUnit.SECONDS));
+		assertTrue(timeout.isExpired());
+		assertFalse(timeout.cancel());
+		assertTrue(timeouts.isEmpty());
+		assertEquals(0, timer.getPendingTimeouts());
+		assertEquals(1, timer.getExpiredTimeouts());
+	}
+
+	public void testCancel() throws Exception {
+		final AtomicInteger runs = new AtomicInteger();
+		HashedWheelTimer.Timeout timeout = timer.newTimeout(new Runnable() {
+			public void run() {
+				runs.incrementAndGet();
+			}
+		}, 50, TimeUnit.MILLISECONDS, timeouts);
+
+		assertTrue(timeout.cancel());
+		assertFalse(timeout.cancel());
+		assertTrue(timeout.isCancelled());
+		assertTrue(timeouts.isEmpty());
+		assertEquals(0, timer.getPendingTimeouts());
+
+		Thread.sleep(150);
+		assertEquals(0, runs.get());
+		assertFalse(timeout.isExpired());
+		assertEquals(0, timer.getExpiredTimeouts());
+	}
+
+	public void testTimeoutLastingSeveralRounds() throws Exception {
+		// 12 ticks on a wheel of 4 buckets, the timeout goes round the wheel twice before expiring
+		final long delay = TICK_DURATION * TICKS_PER_WHEEL * 3;
+		final CountDownLatch latch = new CountDownLatch(1);
+		long start = System.nanoTime();
+		timer.newTimeout(new CountDown(latch), delay, TimeUnit.MILLISECONDS);
+
+		assertTrue(latch.await(2, TimeUnit.SECONDS));
+		long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		assertTrue("expired after " + elapsed + "ms instead of " + delay + "ms", elapsed >= delay);
+	}
+
+	public void testTimeoutScheduledInThePast() throws Exception {
+		final CountDownLatch latch = new CountDownLatch(1);
+		// the deadline has already passed when the timeout is moved to the wheel, it expires on the next tick
+		timer.newTimeout(new CountDown(latch), -TICK_DURATION * TICKS_PER_WHEEL, TimeUnit.MILLISECONDS);
+
+		assertTrue(latch.await(2, TimeUnit.SECONDS));
+		assertTrue(timer.getLastTickLag() >= 0);
+		assertTrue(timer.getMaxTickLag() >= timer.getLastTickLag());
+	}
+
+	public void testProxyBranchTaskCancelledBeforeItsHandleIsSet() throws Exception {
+		ProxyBranchTimerTask task = new ProxyBranchTimerTask(null, null, null);
+		HashedWheelTimer.Timeout timeout = timer.newTimeout(task, 50, TimeUnit.MILLISECONDS, timeouts);
+		// the branch cancels its task between the scheduling on the wheel and the setting of the handle
+		task.cancel();
+		task.setTimeout(timeout);
+
+		assertTrue(timeout.isCancelled());
+		assertNull(task.getTimeout());
+		assertTrue(timeouts.isEmpty());
+		assertEquals(0, timer.getPendingTimeouts());
+	}
+
+	public void testStopDropsPendingTimeouts() throws Exception {
+		final AtomicInteger runs = new AtomicInteger();
+		timer.newTimeout(new Runnable() {
+			public void run() {
+				runs.incrementAndGet();
+			}
+		}, 50, TimeUnit.MILLISECONDS);
+		timer.stop();
+
+		assertFalse(timer.isStarted());
+		assertEquals(0, timer.getPendingTimeouts());
+		Thread.sleep(100);
+		assertEquals(0, runs.get());
+		try {
+			timer.newTimeout(new CountDown(new CountDownLatch(1)), 10, TimeUnit.MILLISECONDS);
+			fail("a stopped timer cannot be started again");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	private static final class CountDown implements Runnable {
+		private final CountDownLatch latch;
+
+		CountDown(CountDownLatch latch) {
+			this.latch = latch;
+		}
+
+		public void run() {
+			latch.countDown();
+		}
+	}
+}
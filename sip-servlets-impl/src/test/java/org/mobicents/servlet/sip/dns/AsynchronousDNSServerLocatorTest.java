@@ -0,0 +1,153 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.servlet.sip.dns;
+
+import java.net.InetAddress;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.sip.address.Hop;
+import javax.sip.address.SipURI;
+
+import junit.framework.TestCase;
+
+import org.mobicents.ext.javax.sip.dns.DefaultDNSServerLocator;
+import org.mobicents.servlet.sip.core.HopsLocatedListener;
+import org.xbill.DNS.ARecord;
+import org.xbill.DNS.Cache;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Lookup;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.SRVRecord;
+import org.xbill.DNS.SimpleResolver;
+import org.xbill.DNS.Type;
+
+import gov.nist.javax.sip.address.AddressFactoryImpl;
+
+/**
+ * Runs the {@link AsynchronousDNSServerLocator} against an in-process stub DNS server.
+ */
+public class AsynchronousDNSServerLocatorTest extends TestCase {
+	private static final String DOMAIN = "example.test";
+	private static final String SRV_NAME = "_sip._udp." + DOMAIN + ".";
+	private static final String TARGET = "sip1." + DOMAIN + ".";
+
+	private StubDNSServer dnsServer;
+	private AsynchronousDNSServerLocator locator;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		dnsServer = new StubDNSServer();
+		dnsServer.addRecord(new SRVRecord(new Name(SRV_NAME), DClass.IN, 60L, 0, 0, 5080, new Name(TARGET)));
+		dnsServer.addRecord(new ARecord(new Name(TARGET), DClass.IN, 60L, InetAddress.getByName("127.0.0.2")));
+		dnsServer.start();
+
+		final SimpleResolver resolver = new SimpleResolver(InetAddress.getLoopbackAddress().getHostAddress());
+		resolver.setPort(dnsServer.getPort());
+		resolver.setTimeout(5);
+		Lookup.setDefaultResolver(resolver);
+		Lookup.setDefaultCache(new Cache(DClass.IN), DClass.IN);
+		Lookup.setDefaultSearchPath(new Name[0]);
+
+		final DefaultDNSServerLocator dnsServerLocator = new DefaultDNSServerLocator();
+		dnsServerLocator.addSupportedTransport("UDP");
+		dnsServerLocator.setDnsLookupPerformer(new CachingDNSLookupPerformer());
+		locator = new AsynchronousDNSServerLocator(dnsServerLocator);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		locator.stop();
+		dnsServer.stop();
+		Lookup.refreshDefault();
+		super.tearDown();
+	}
+
+	public void testHopsLocatedOnResolverThread() throws Exception {
+		final RecordingListener listener = new RecordingListener();
+		locator.locateHops(createURI(), listener);
+
+		final Queue<Hop> hops = listener.await();
+		assertNotNull(hops);
+		assertEquals(1, hops.size());
+		final Hop hop = hops.peek();
+		assertEquals("127.0.0.2", hop.getHost());
+		assertEquals(5080, hop.getPort());
+		assertEquals("UDP", hop.getTransport().toUpperCase());
+		assertNotSame("the listener must not be notified on the calling thread", Thread.currentThread(), listener.thread.get());
+	}
+
+	public void testConcurrentLookupsOfTheSameUriAreCoalesced() throws Exception {
+		dnsServer.holdAnswers();
+		final RecordingListener first = new RecordingListener();
+		final RecordingListener second = new RecordingListener();
+		locator.locateHops(createURI(), first);
+		locator.locateHops(createURI(), second);
+		assertEquals(1, locator.getPendingLocations());
+		dnsServer.releaseAnswers();
+
+		final Queue<Hop> firstHops = first.await();
+		final Queue<Hop> secondHops = second.await();
+		assertEquals(1, firstHops.size());
+		assertEquals(1, secondHops.size());
+		// each listener consumes its own copy of the hops on failover
+		assertNotSame(firstHops, secondHops);
+		assertEquals(1, dnsServer.getQueryCount(SRV_NAME, Type.SRV));
+		assertEquals(0, locator.getPendingLocations());
+	}
+
+	public void testSrvAnswerIsCached() throws Exception {
+		final RecordingListener first = new RecordingListener();
+		locator.locateHops(createURI(), first);
+		assertEquals(1, first.await().size());
+
+		final RecordingListener second = new RecordingListener();
+		locator.locateHops(createURI(), second);
+		assertEquals(1, second.await().size());
+		assertEquals(1, dnsServer.getQueryCount(SRV_NAME, Type.SRV));
+	}
+
+	private static SipURI createURI() throws Exception {
+		final SipURI uri = new AddressFactoryImpl().createSipURI("alice", DOMAIN);
+		uri.setTransportParam("udp");
+		return uri;
+	}
+
+	private static final class RecordingListener implements HopsLocatedListener {
+		private final CountDownLatch located = new CountDownLatch(1);
+		private final AtomicReference<Queue<Hop>> hops = new AtomicReference<Queue<Hop>>();
+		private final AtomicReference<Thread> thread = new AtomicReference<Thread>();
+
+		public void onHopsLocated(Queue<Hop> locatedHops) {
+			hops.set(locatedHops);
+			thread.set(Thread.currentThread());
+			located.countDown();
+		}
+
+		Queue<Hop> await() throws InterruptedException {
+			assertTrue("the hops should have been located", located.await(20, TimeUnit.SECONDS));
+			return hops.get();
+		}
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+
+
+package org.mobicents.servlet.sip.dns;
+
+import java.net.InetAddress;
+
+import junit.framework.TestCase;
+
+import org.xbill.DNS.ARecord;
+import org.xbill.DNS.Cache;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Lookup;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.SOARecord;
+import org.xbill.DNS.SRVRecord;
+import org.xbill.DNS.SimpleResolver;
+import org.xbill.DNS.Type;
+
+/**
+ * Checks which answers the {@link CachingDNSLookupPerformer} keeps : the positive ones and the
+ * NXDOMAIN and NODATA ones, never the failures.
+ */
+public class CachingDNSLookupPerformerTest extends TestCase {
+	private static final String DOMAIN = "example.test.";
+	private static final String SRV_NAME = "_sip._udp." + DOMAIN;
+	private static final String TARGET = "sip1." + DOMAIN;
+	private static final String MISSING_SRV_NAME = "_sip._udp.missing." + DOMAIN;
+
+	private StubDNSServer dnsServer;
+	private CachingDNSLookupPerformer lookupPerformer;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		dnsServer = new StubDNSServer();
+		dnsServer.addRecord(new SRVRecord(new Name(SRV_NAME), DClass.IN, 60L, 0, 0, 5080, new Name(TARGET)));
+		dnsServer.addRecord(new ARecord(new Name(TARGET), DClass.IN, 60L, InetAddress.getByName("127.0.0.2")));
+		dnsServer.setSOARecord(new SOARecord(new Name(DOMAIN), DClass.IN, 3600L, new Name("ns." + DOMAIN), 
+				new Name("admin." + DOMAIN), 1L, 3600L, 600L, 86400L, 60L));
+		dnsServer.start();
+
+		final SimpleResolver resolver = new SimpleResolver(InetAddress.getLoopbackAddress().getHostAddress());
+		resolver.setPort(dnsServer.getPort());
+		resolver.setTimeout(5);
+		Lookup.setDefaultResolver(resolver);
+		Lookup.setDefaultCache(new Cache(DClass.IN), DClass.IN);
+		Lookup.setDefaultSearchPath(new Name[0]);
+		CachingDNSLookupPerformer.boundAddressCache();
+
+		lookupPerformer = new CachingDNSLookupPerformer();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		dnsServer.stop();
+		Lookup.refreshDefault();
+		super.tearDown();
+	}
+
+	public void testAnswerIsCached() throws Exception {
+		assertEquals(1, lookupPerformer.performSRVLookup(SRV_NAME).size());
+		assertEquals(1, lookupPerformer.performSRVLookup(SRV_NAME).size());
+		assertEquals(1, dnsServer.getQueryCount(SRV_NAME, Type.SRV));
+		assertEquals(1, lookupPerformer.getCacheSize());
+	}
+
+	public void testNxdomainIsCached() throws Exception {
+		assertTrue(lookupPerformer.performSRVLookup(MISSING_SRV_NAME).isEmpty());
+		assertTrue(lookupPerformer.performSRVLookup(MISSING_SRV_NAME).isEmpty());
+		assertEquals(1, dnsServer.getQueryCount(MISSING_SRV_NAME, Type.SRV));
+	}
+
+	public void testNodataIsCached() throws Exception {
+		// the name exists but has no SRV record
+		assertTrue(lookupPerformer.performSRVLookup(TARGET).isEmpty());
+		assertTrue(lookupPerformer.performSRVLookup(TARGET).isEmpty());
+		assertEquals(1, dnsServer.getQueryCount(TARGET, Type.SRV));
+	}
+
+	public void testFailureIsNotCached() throws Exception {
+		dnsServer.setFailing(true);
+		assertTrue(lookupPerformer.performSRVLookup(SRV_NAME).isEmpty());
+		assertEquals(1, dnsServer.getQueryCount(SRV_NAME, Type.SRV));
+
+		// the server recovered, the next request gets the answer
+		dnsServer.setFailing(false);
+		assertEquals(1, lookupPerformer.performSRVLookup(SRV_NAME).size());
+		assertEquals(2, dnsServer.getQueryCount(SRV_NAME, Type.SRV));
+	}
+}
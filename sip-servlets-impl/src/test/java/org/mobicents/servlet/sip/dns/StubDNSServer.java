@@ -0,0 +1,170 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.servlet.sip.dns;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketException;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.SOARecord;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.Type;
+
+/**
+ * Minimal in-process authoritative DNS server answering over UDP on the loopback interface
+ * from a fixed set of records, counting the queries it receives.
+ * Answers can be held back to keep lookups in progress, or replaced by SERVFAIL to simulate a failing server.
+ */
+class StubDNSServer implements Runnable {
+	private final DatagramSocket socket;
+	private final List<Record> records = new CopyOnWriteArrayList<Record>();
+	private final ConcurrentHashMap<String, AtomicInteger> queries = new ConcurrentHashMap<String, AtomicInteger>();
+	private volatile CountDownLatch answersHeldBack = new CountDownLatch(0);
+	private volatile boolean failing;
+	// returned in the authority section of the negative answers
+	private volatile SOARecord soa;
+	private final Thread thread;
+
+	StubDNSServer() throws SocketException {
+		socket = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+		thread = new Thread(this, "stub_dns_server");
+		thread.setDaemon(true);
+	}
+
+	void start() {
+		thread.start();
+	}
+
+	void stop() {
+		answersHeldBack.countDown();
+		socket.close();
+	}
+
+	int getPort() {
+		return socket.getLocalPort();
+	}
+
+	void addRecord(Record record) {
+		records.add(record);
+	}
+
+	/**
+	 * @param soa the SOA record of the zone, added to the NXDOMAIN and NODATA answers
+	 */
+	void setSOARecord(SOARecord soa) {
+		this.soa = soa;
+	}
+
+	/**
+	 * @param failing true to answer SERVFAIL to every query
+	 */
+	void setFailing(boolean failing) {
+		this.failing = failing;
+	}
+
+	/**
+	 * Holds the answers back until {@link #releaseAnswers()} is called
+	 */
+	void holdAnswers() {
+		answersHeldBack = new CountDownLatch(1);
+	}
+
+	void releaseAnswers() {
+		answersHeldBack.countDown();
+	}
+
+	int getQueryCount(String name, int type) {
+		final AtomicInteger count = queries.get(key(name, type));
+		return count == null ? 0 : count.get();
+	}
+
+	public void run() {
+		final byte[] buffer = new byte[512];
+		while(!socket.isClosed()) {
+			try {
+				final DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+				socket.receive(packet);
+				final Message query = new Message(packet.getData());
+				final Record question = query.getQuestion();
+				final String key = key(question.getName().toString(), question.getType());
+				AtomicInteger count = queries.get(key);
+				if(count == null) {
+					final AtomicInteger newCount = new AtomicInteger();
+					count = queries.putIfAbsent(key, newCount);
+					if(count == null) {
+						count = newCount;
+					}
+				}
+				count.incrementAndGet();
+				answersHeldBack.await(10, TimeUnit.SECONDS);
+
+				final Message response = new Message(query.getHeader().getID());
+				response.getHeader().setFlag(Flags.QR);
+				response.getHeader().setFlag(Flags.AA);
+				response.addRecord(question, Section.QUESTION);
+				boolean nameExists = false;
+				boolean answered = false;
+				for (Record record : records) {
+					if(record.getName().equals(question.getName())) {
+						nameExists = true;
+						if(record.getType() == question.getType()) {
+							response.addRecord(record, Section.ANSWER);
+							answered = true;
+						}
+					}
+				}
+				if(failing) {
+					response.removeAllRecords(Section.ANSWER);
+					response.getHeader().setRcode(Rcode.SERVFAIL);
+				} else if(!answered) {
+					if(!nameExists) {
+						response.getHeader().setRcode(Rcode.NXDOMAIN);
+					}
+					if(soa != null) {
+						response.addRecord(soa, Section.AUTHORITY);
+					}
+				}
+				final byte[] answer = response.toWire();
+				socket.send(new DatagramPacket(answer, answer.length, packet.getSocketAddress()));
+			} catch (IOException e) {
+				// socket closed or malformed query
+			} catch (InterruptedException e) {
+				return;
+			}
+		}
+	}
+
+	private static String key(String name, int type) {
+		return Type.string(type) + " " + (name.endsWith(".") ? name : name + ".");
+	}
+}
@@ -0,0 +1,246 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.servlet.sip.message;
+
+import gov.nist.javax.sip.parser.StringMsgParser;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import javax.servlet.sip.SipServletMessage;
+import javax.servlet.sip.SipSession.State;
+import javax.sip.ClientTransaction;
+import javax.sip.SipException;
+import javax.sip.header.ContactHeader;
+import javax.sip.header.ViaHeader;
+import javax.sip.message.Request;
+
+import junit.framework.TestCase;
+
+import org.mobicents.javax.servlet.sip.SendListener;
+import org.mobicents.javax.servlet.sip.SipSessionAsynchronousWork;
+import org.mobicents.servlet.sip.core.SipApplicationDispatcher;
+import org.mobicents.servlet.sip.core.SipService;
+import org.mobicents.servlet.sip.core.session.MobicentsSipSession;
+import org.mobicents.servlet.sip.startup.StaticServiceHolder;
+
+/**
+ * Checks the outcome reported to the {@link SendListener} of a request sent asynchronously
+ * and that a failed write leaves the request and its session as they were before the send.
+ */
+public class AsynchronousSendTest extends TestCase {
+	private static final String INVITE =
+		"INVITE sip:bob@example.com SIP/2.0\r\n" +
+		"Via: SIP/2.0/UDP 127.0.0.1:5070;branch=z9hG4bK776asdhds\r\n" +
+		"Max-Forwards: 70\r\n" +
+		"To: <sip:bob@example.com>\r\n" +
+		"From: <sip:alice@example.com>;tag=1928301774\r\n" +
+		"Call-ID: a84b4c76e66710@127.0.0.1\r\n" +
+		"CSeq: 314159 INVITE\r\n" +
+		"Contact: <sip:alice@127.0.0.1:5070>\r\n" +
+		"Content-Length: 0\r\n" +
+		"\r\n";
+	private static final String DESTINATION = "UDP:example.com:5060";
+
+	private SipService previousSipService;
+	private final List<Runnable> queuedWrites = new ArrayList<Runnable>();
+	// the session as seen by the request
+	private int requestsPending;
+	private State state;
+	private final List<Object> removedTransactions = new ArrayList<Object>();
+	private final List<SipSessionAsynchronousWork> scheduledWork = new ArrayList<SipSessionAsynchronousWork>();
+	private MobicentsSipSession session;
+	// the outcome reported to the listener
+	private final List<SipServletMessage> sent = new ArrayList<SipServletMessage>();
+	private IOException failure;
+	private SendListener sendListener;
+
+	@Override
+	protected void setUp() throws Exception {
+		previousSipService = StaticServiceHolder.sipStandardService;
+		final SipApplicationDispatcher sipApplicationDispatcher = (SipApplicationDispatcher) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] {SipApplicationDispatcher.class}, new InvocationHandler() {
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						if("getOutboundWriteExecutor".equals(method.getName())) {
+							assertEquals(DESTINATION, args[0]);
+							// the writes are run by the test, as the writer thread would
+							return new Executor() {
+								public void execute(Runnable command) {
+									queuedWrites.add(command);
+								}
+							};
+						}
+						if("updateRequestsStatistics".equals(method.getName())) {
+							return null;
+						}
+						throw new UnsupportedOperationException(method.getName());
+					}
+				});
+		StaticServiceHolder.sipStandardService = (SipService) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] {SipService.class}, new InvocationHandler() {
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						if("getSipApplicationDispatcher".equals(method.getName())) {
+							return sipApplicationDispatcher;
+						}
+						throw new UnsupportedOperationException(method.getName());
+					}
+				});
+		session = (MobicentsSipSession) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] {MobicentsSipSession.class}, new InvocationHandler() {
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						final String name = method.getName();
+						if("getRequestsPending".equals(name)) {
+							return requestsPending;
+						} else if("setRequestsPending".equals(name)) {
+							requestsPending = (Integer) args[0];
+						} else if("setState".equals(name)) {
+							state = (State) args[0];
+						} else if("isValidInternal".equals(name)) {
+							return true;
+						} else if("removeOngoingTransaction".equals(name)) {
+							removedTransactions.add(args[0]);
+						} else if("scheduleAsynchronousWork".equals(name)) {
+							scheduledWork.add((SipSessionAsynchronousWork) args[0]);
+						} else if("toString".equals(name)) {
+							return "session";
+						} else {
+							throw new UnsupportedOperationException(name);
+						}
+						return null;
+					}
+				});
+		sendListener = new SendListener() {
+			public void onSent(SipServletMessage message) {
+				sent.add(message);
+			}
+
+			public void onSendFailed(SipServletMessage message, IOException exception) {
+				failure = exception;
+			}
+		};
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		StaticServiceHolder.sipStandardService = previousSipService;
+	}
+
+	private SipServletRequestImpl createRequest() throws Exception {
+		final SipServletRequestImpl request = new ReplicationStateTest.TestSipServletRequest();
+		request.message = new StringMsgParser().parseSIPMessage(INVITE.getBytes("UTF-8"), true, false, null);
+		request.sipFactoryImpl = new SipFactoryImpl();
+		return request;
+	}
+
+	private static ClientTransaction clientTransaction(final Exception sendFailure) {
+		return (ClientTransaction) Proxy.newProxyInstance(AsynchronousSendTest.class.getClassLoader(),
+				new Class<?>[] {ClientTransaction.class}, new InvocationHandler() {
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						if("sendRequest".equals(method.getName())) {
+							if(sendFailure != null) {
+								throw sendFailure;
+							}
+							return null;
+						}
+						if("toString".equals(method.getName())) {
+							return "client transaction";
+						}
+						throw new UnsupportedOperationException(method.getName());
+					}
+				});
+	}
+
+	// what send() does before handing the write to the queue
+	private void queue(SipServletRequestImpl request, ClientTransaction clientTransaction) {
+		request.setTransaction(clientTransaction);
+		request.isMessageSent = true;
+		requestsPending++;
+		state = State.EARLY;
+		request.writeAsynchronously(clientTransaction, null, session, State.INITIAL, DESTINATION,
+				getClass().getClassLoader(), sendListener);
+	}
+
+	private void runQueuedWrites() {
+		for (Runnable write : queuedWrites) {
+			write.run();
+		}
+		queuedWrites.clear();
+	}
+
+	public void testSent() throws Exception {
+		final SipServletRequestImpl request = createRequest();
+		final ClientTransaction clientTransaction = clientTransaction(null);
+		queue(request, clientTransaction);
+		// nothing is reported before the write
+		assertTrue(sent.isEmpty());
+		runQueuedWrites();
+
+		assertEquals(1, sent.size());
+		assertSame(request, sent.get(0));
+		assertNull(failure);
+		assertTrue(request.isMessageSent);
+		assertSame(clientTransaction, request.getTransaction());
+		assertTrue(scheduledWork.isEmpty());
+		assertEquals(1, requestsPending);
+		assertEquals(State.EARLY, state);
+	}
+
+	public void testSendFailed() throws Exception {
+		final SipServletRequestImpl request = createRequest();
+		final IOException cause = new IOException("connection refused");
+		final ClientTransaction clientTransaction = clientTransaction(new SipException("IO Exception occured while Sending Request", cause));
+		queue(request, clientTransaction);
+		runQueuedWrites();
+
+		assertTrue(sent.isEmpty());
+		assertSame(cause, failure);
+		// the request can be modified and sent again
+		assertFalse(request.isMessageSent);
+		assertNull(request.getTransaction());
+		final Request message = (Request) request.getMessage();
+		assertNull(message.getHeader(ViaHeader.NAME));
+		assertNull(message.getHeader(ContactHeader.NAME));
+		// the session is rolled back on the application side
+		assertEquals(1, scheduledWork.size());
+		assertEquals(1, requestsPending);
+		scheduledWork.get(0).doAsynchronousWork(session);
+		assertEquals(0, requestsPending);
+		assertEquals(State.INITIAL, state);
+		assertEquals(1, removedTransactions.size());
+		assertSame(clientTransaction, removedTransactions.get(0));
+	}
+
+	public void testSendFailedWithoutIOException() throws Exception {
+		final SipServletRequestImpl request = createRequest();
+		final SipException cause = new SipException("Transaction terminated");
+		queue(request, clientTransaction(cause));
+		runQueuedWrites();
+
+		assertNotNull(failure);
+		assertSame(cause, failure.getCause());
+		assertFalse(request.isMessageSent);
+	}
+}
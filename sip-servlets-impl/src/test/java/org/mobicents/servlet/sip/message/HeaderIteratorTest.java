@@ -0,0 +1,157 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+
+package org.mobicents.servlet.sip.message;
+
+import gov.nist.javax.sip.parser.StringMsgParser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+
+import javax.servlet.sip.Address;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that the iterators over the header values and the address headers of a message are neither broken by
+ * the changes made to the headers of the message during the iteration nor change the message when modified.
+ */
+public class HeaderIteratorTest extends TestCase {
+	private static final String INVITE =
+		"INVITE sip:bob@example.com SIP/2.0\r\n" +
+		"Via: SIP/2.0/UDP 127.0.0.1:5070;branch=z9hG4bK776asdhds\r\n" +
+		"Max-Forwards: 70\r\n" +
+		"Route: <sip:proxy1@example.com;lr>\r\n" +
+		"Route: <sip:proxy2@example.com;lr>\r\n" +
+		"To: <sip:bob@example.com>\r\n" +
+		"From: <sip:alice@example.com>;tag=1928301774\r\n" +
+		"Call-ID: a84b4c76e66710@127.0.0.1\r\n" +
+		"CSeq: 314159 INVITE\r\n" +
+		"Contact: <sip:alice@127.0.0.1:5070>\r\n" +
+		"X-Service: one\r\n" +
+		"X-Service: two\r\n" +
+		"Content-Length: 0\r\n" +
+		"\r\n";
+
+	private SipServletRequestImpl request;
+
+	@Override
+	protected void setUp() throws Exception {
+		request = new ReplicationStateTest.TestSipServletRequest();
+		request.message = new StringMsgParser().parseSIPMessage(INVITE.getBytes("UTF-8"), true, false, null);
+		request.sipFactoryImpl = new SipFactoryImpl();
+	}
+
+	private static <T> List<T> toList(Iterator<T> iterator) {
+		final List<T> list = new ArrayList<T>();
+		while(iterator.hasNext()) {
+			list.add(iterator.next());
+		}
+		return list;
+	}
+
+	public void testHeaderAddedDuringIteration() {
+		final ListIterator<String> values = request.getHeaders("X-Service");
+		assertEquals("one", values.next());
+		request.addHeader("X-Service", "three");
+		// the iteration goes on over the headers the message had when it started
+		assertTrue(values.hasNext());
+		assertEquals("two", values.next());
+		assertFalse(values.hasNext());
+		assertEquals(Arrays.asList("one", "two", "three"), toList(request.getHeaders("X-Service")));
+	}
+
+	public void testHeaderRemovedDuringIteration() {
+		final ListIterator<String> values = request.getHeaders("X-Service");
+		request.removeHeader("X-Service");
+		assertEquals(Arrays.asList("one", "two"), toList(values));
+		assertEquals("one", values.previous());
+		assertFalse(request.getHeaders("X-Service").hasNext());
+	}
+
+	public void testHeaderSetDuringIteration() {
+		final ListIterator<String> values = request.getHeaders("X-Service");
+		assertEquals("one", values.next());
+		request.setHeader("X-Service", "other");
+		assertEquals("two", values.next());
+		assertEquals(Arrays.asList("other"), toList(request.getHeaders("X-Service")));
+	}
+
+	public void testModifyingIteratorDoesNotModifyMessage() {
+		final ListIterator<String> values = request.getHeaders("X-Service");
+		assertEquals("one", values.next());
+		values.remove();
+		assertEquals(0, values.nextIndex());
+		values.add("zero");
+		assertEquals("two", values.next());
+		values.set("deux");
+		assertEquals("deux", values.previous());
+		assertEquals("zero", values.previous());
+		assertFalse(values.hasPrevious());
+		assertEquals(Arrays.asList("zero", "deux"), toList(values));
+		// the message still has its headers
+		assertEquals(Arrays.asList("one", "two"), toList(request.getHeaders("X-Service")));
+	}
+
+	public void testRemoveWithoutNext() {
+		final ListIterator<String> values = request.getHeaders("X-Service");
+		try {
+			values.remove();
+			fail("nothing was returned yet");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		values.next();
+		values.remove();
+		try {
+			values.remove();
+			fail("the value was already removed");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	public void testMissingHeader() {
+		final ListIterator<String> values = request.getHeaders("X-Missing");
+		assertFalse(values.hasNext());
+		assertFalse(values.hasPrevious());
+		values.add("added");
+		assertEquals("added", values.previous());
+		assertNull(request.getHeader("X-Missing"));
+	}
+
+	public void testModifyingAddressIteratorDoesNotModifyCachedViews() throws Exception {
+		final ListIterator<Address> routes = request.getAddressHeaders("Route");
+		final Address first = routes.next();
+		routes.remove();
+		assertEquals("sip:proxy2@example.com;lr", routes.next().getURI().toString());
+		assertFalse(routes.hasNext());
+
+		// the cached views are given again, all of them
+		final List<Address> cachedRoutes = toList(request.getAddressHeaders("Route"));
+		assertEquals(2, cachedRoutes.size());
+		assertSame(first, cachedRoutes.get(0));
+		assertEquals(2, toList(request.getHeaders("Route")).size());
+	}
+}
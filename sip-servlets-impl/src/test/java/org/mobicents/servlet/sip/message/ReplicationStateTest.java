@@ -0,0 +1,229 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.servlet.sip.message;
+
+import gov.nist.javax.sip.parser.StringMsgParser;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.DispatcherType;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.sip.SipServletMessage.HeaderForm;
+
+import junit.framework.TestCase;
+
+import org.mobicents.ha.javax.sip.ReplicationStrategy;
+import org.mobicents.servlet.sip.core.RoutingState;
+import org.mobicents.servlet.sip.core.SipService;
+import org.mobicents.servlet.sip.core.session.MobicentsSipSessionKey;
+import org.mobicents.servlet.sip.core.session.SipSessionKey;
+import org.mobicents.servlet.sip.proxy.ProxyBranchImpl;
+import org.mobicents.servlet.sip.proxy.ProxyImpl;
+import org.mobicents.servlet.sip.startup.StaticServiceHolder;
+
+/**
+ * Round trips of the replicated state of a request, a proxy, a proxy branch and a B2BUA helper 
+ * through the java serialization that the HA managers use.
+ */
+public class ReplicationStateTest extends TestCase {
+	private static final String INVITE = 
+		"INVITE sip:bob@example.com SIP/2.0\r\n" +
+		"Via: SIP/2.0/UDP 127.0.0.1:5070;branch=z9hG4bK776asdhds\r\n" +
+		"Max-Forwards: 70\r\n" +
+		"To: <sip:bob@example.com>\r\n" +
+		"From: <sip:alice@example.com>;tag=1928301774\r\n" +
+		"Call-ID: a84b4c76e66710@127.0.0.1\r\n" +
+		"CSeq: 314159 INVITE\r\n" +
+		"Contact: <sip:alice@127.0.0.1:5070>\r\n" +
+		"Content-Length: 0\r\n" +
+		"\r\n";
+	private static final String APPLICATION_NAME = "application";
+	private static final String APPLICATION_SESSION_ID = "5e1c0d9a-7a8b-4c2d-9e3f-0a1b2c3d4e5f";
+
+	private SipService previousSipService;
+
+	@Override
+	protected void setUp() throws Exception {
+		previousSipService = StaticServiceHolder.sipStandardService;
+		// only the replication strategy is looked up while reading or writing the state
+		StaticServiceHolder.sipStandardService = (SipService) Proxy.newProxyInstance(getClass().getClassLoader(), 
+				new Class<?>[] {SipService.class}, new InvocationHandler() {
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						if("getReplicationStrategy".equals(method.getName())) {
+							return ReplicationStrategy.ConfirmedDialog;
+						}
+						throw new UnsupportedOperationException(method.getName());
+					}
+				});
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		StaticServiceHolder.sipStandardService = previousSipService;
+	}
+
+	public void testRequest() throws Exception {
+		final SipServletRequestImpl request = new TestSipServletRequest();
+		request.message = new StringMsgParser().parseSIPMessage(INVITE.getBytes("UTF-8"), true, false, null);
+		request.sessionKey = new SipSessionKey("1928301774", null, "a84b4c76e66710@127.0.0.1", APPLICATION_SESSION_ID, APPLICATION_NAME);
+		request.headerForm = HeaderForm.COMPACT;
+		request.setCurrentApplicationName(APPLICATION_NAME);
+		request.getAttributeMap().put("org.mobicents.attribute", "value");
+		request.setRoutingState(RoutingState.SUBSEQUENT);
+
+		final SipServletRequestImpl readRequest = roundTrip(request);
+		assertEquals(request.getMessage().toString(), readRequest.getMessage().toString());
+		assertEquals(request.getSipSessionKey(), readRequest.getSipSessionKey());
+		assertEquals(APPLICATION_SESSION_ID, readRequest.getSipSessionKey().getApplicationSessionId());
+		assertEquals(HeaderForm.COMPACT, readRequest.getHeaderForm());
+		assertEquals(APPLICATION_NAME, readRequest.getCurrentApplicationName());
+		assertEquals("value", readRequest.getAttribute("org.mobicents.attribute"));
+		assertEquals(RoutingState.SUBSEQUENT, readRequest.getRoutingState());
+		assertFalse(readRequest.isInitial());
+		assertFalse(readRequest.isFinalResponseGenerated());
+	}
+
+	public void testProxy() throws Exception {
+		final ProxyImpl proxy = new ProxyImpl();
+		proxy.setRecurse(false);
+		proxy.setParallel(false);
+		proxy.setSupervised(false);
+		proxy.setNoCancel(true);
+		proxy.setSequentialSearchTimeout(7);
+
+		final ProxyImpl readProxy = roundTrip(proxy);
+		assertFalse(readProxy.getRecurse());
+		assertFalse(readProxy.getParallel());
+		assertFalse(readProxy.getSupervised());
+		assertTrue(readProxy.getNoCancel());
+		assertEquals(7, readProxy.getSequentialSearchTimeout());
+		assertEquals(proxy.getProxyTimeout(), readProxy.getProxyTimeout());
+	}
+
+	public void testProxyBranch() throws Exception {
+		final ProxyBranchImpl proxyBranch = new ProxyBranchImpl();
+		proxyBranch.setRecurse(false);
+		proxyBranch.setRecordRoute(true);
+		proxyBranch.setProxyBranch1xxTimeout(-1);
+
+		final ProxyBranchImpl readProxyBranch = roundTrip(proxyBranch);
+		assertFalse(readProxyBranch.getRecurse());
+		assertTrue(readProxyBranch.getRecordRoute());
+		assertEquals(-1, readProxyBranch.getProxyBranch1xxTimeout());
+		assertEquals(proxyBranch.getProxyBranchTimeout(), readProxyBranch.getProxyBranchTimeout());
+	}
+
+	public void testB2buaHelper() throws Exception {
+		final B2buaHelperImpl b2buaHelper = new B2buaHelperImpl();
+		final Map<MobicentsSipSessionKey, MobicentsSipSessionKey> sessionMap = b2buaHelper.getSessionMap();
+		for (int i = 0; i < 3; i++) {
+			final SipSessionKey incoming = new SipSessionKey("caller" + i, "callee" + i, "incoming" + i, APPLICATION_SESSION_ID, APPLICATION_NAME);
+			final SipSessionKey outgoing = new SipSessionKey("b2bua" + i, null, "outgoing" + i, APPLICATION_SESSION_ID, APPLICATION_NAME);
+			sessionMap.put(incoming, outgoing);
+			sessionMap.put(outgoing, incoming);
+		}
+
+		final Map<MobicentsSipSessionKey, MobicentsSipSessionKey> readSessionMap = roundTrip(b2buaHelper).getSessionMap();
+		assertEquals(sessionMap, readSessionMap);
+		// each key is read once and shared by the two entries linking the sessions
+		for (Map.Entry<MobicentsSipSessionKey, MobicentsSipSessionKey> entry : readSessionMap.entrySet()) {
+			for (MobicentsSipSessionKey key : readSessionMap.keySet()) {
+				if(key.equals(entry.getValue())) {
+					assertSame(key, entry.getValue());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Request without any of the asynchronous servlet support that the containers add.
+	 */
+	public static class TestSipServletRequest extends SipServletRequestImpl {
+		private static final long serialVersionUID = 1L;
+
+		// needed for externalizable
+		public TestSipServletRequest() {}
+
+		@Override
+		public AsyncContext getAsyncContext() {
+			return null;
+		}
+
+		@Override
+		public DispatcherType getDispatcherType() {
+			return null;
+		}
+
+		@Override
+		public ServletContext getServletContext() {
+			return null;
+		}
+
+		@Override
+		public boolean isAsyncStarted() {
+			return false;
+		}
+
+		@Override
+		public boolean isAsyncSupported() {
+			return false;
+		}
+
+		@Override
+		public AsyncContext startAsync() {
+			return null;
+		}
+
+		@Override
+		public AsyncContext startAsync(ServletRequest servletRequest, ServletResponse servletResponse) {
+			return null;
+		}
+
+		public long getContentLengthLong() {
+			return (long) getContentLength();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T roundTrip(T object) throws IOException, ClassNotFoundException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(object);
+		out.close();
+		final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		try {
+			return (T) in.readObject();
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,289 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+
+package org.mobicents.servlet.sip.rules;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.servlet.sip.Address;
+import javax.servlet.sip.SipServletRequest;
+import javax.servlet.sip.SipURI;
+
+import junit.framework.TestCase;
+
+import org.mobicents.servlet.sip.core.descriptor.MatchingRule;
+import org.mobicents.servlet.sip.core.descriptor.MobicentsSipServletMapping;
+import org.mobicents.servlet.sip.startup.loading.SipServletMapping;
+
+/**
+ * Checks that the decision tree of the {@link SipServletMappingMatcher} selects the same servlet mapping
+ * as the sequential evaluation of the rules defined by JSR 289 section 16.2.
+ */
+public class SipServletMappingMatcherTest extends TestCase {
+	private static final String[] METHODS = {"INVITE", "invite", "MESSAGE", "REGISTER", "OPTIONS"};
+	private static final String[] USERS = {"alice", "ALICE", "bob", "carol", "b\u0131ll", null};
+	private static final String[] DISPLAY_NAMES = {"Alice", "Support Desk", null};
+
+	private final List<MobicentsSipServletMapping> mappings = new ArrayList<MobicentsSipServletMapping>();
+
+	private void addMapping(String servletName, MatchingRule rule) {
+		final SipServletMapping mapping = new SipServletMapping();
+		mapping.setServletName(servletName);
+		mapping.setMatchingRule(rule);
+		mappings.add(mapping);
+	}
+
+	private static EqualsRule equalsRule(String var, String value) {
+		return new EqualsRule(var, value, false);
+	}
+
+	private static AndRule and(MatchingRule... criteria) {
+		final AndRule rule = new AndRule();
+		for (MatchingRule criterion : criteria) {
+			rule.addCriterion(criterion);
+		}
+		return rule;
+	}
+
+	private static OrRule or(MatchingRule... criteria) {
+		final OrRule rule = new OrRule();
+		for (MatchingRule criterion : criteria) {
+			rule.addCriterion(criterion);
+		}
+		return rule;
+	}
+
+	private static NotRule not(MatchingRule criterion) {
+		final NotRule rule = new NotRule();
+		rule.setCriterion(criterion);
+		return rule;
+	}
+
+	private static SipServletRequest request(final String method, final String user, final String displayName) {
+		final SipURI requestURI = sipURI(user, "example.com");
+		final Address from = (Address) Proxy.newProxyInstance(SipServletMappingMatcherTest.class.getClassLoader(),
+				new Class<?>[] {Address.class}, new InvocationHandler() {
+					public Object invoke(Object proxy, Method m, Object[] args) throws Throwable {
+						if("getURI".equals(m.getName())) {
+							return sipURI(user, "atlanta.com");
+						}
+						if("getDisplayName".equals(m.getName())) {
+							return displayName;
+						}
+						if("toString".equals(m.getName())) {
+							return (displayName == null ? "" : "\"" + displayName + "\" ") + "<sip:" + user + "@atlanta.com>";
+						}
+						throw new UnsupportedOperationException(m.getName());
+					}
+				});
+		return (SipServletRequest) Proxy.newProxyInstance(SipServletMappingMatcherTest.class.getClassLoader(),
+				new Class<?>[] {SipServletRequest.class}, new InvocationHandler() {
+					public Object invoke(Object proxy, Method m, Object[] args) throws Throwable {
+						if("getMethod".equals(m.getName())) {
+							return method;
+						}
+						if("getRequestURI".equals(m.getName())) {
+							return requestURI;
+						}
+						if("getFrom".equals(m.getName())) {
+							return from;
+						}
+						if("toString".equals(m.getName())) {
+							return method + " " + requestURI + " from " + from;
+						}
+						throw new UnsupportedOperationException(m.getName());
+					}
+				});
+	}
+
+	private static SipURI sipURI(final String user, final String host) {
+		return (SipURI) Proxy.newProxyInstance(SipServletMappingMatcherTest.class.getClassLoader(),
+				new Class<?>[] {SipURI.class}, new InvocationHandler() {
+					public Object invoke(Object proxy, Method m, Object[] args) throws Throwable {
+						if("isSipURI".equals(m.getName())) {
+							return Boolean.TRUE;
+						}
+						if("getScheme".equals(m.getName())) {
+							return "sip";
+						}
+						if("getUser".equals(m.getName())) {
+							return user;
+						}
+						if("getHost".equals(m.getName())) {
+							return host;
+						}
+						if("toString".equals(m.getName())) {
+							return "sip:" + (user == null ? "" : user + "@") + host;
+						}
+						throw new UnsupportedOperationException(m.getName());
+					}
+				});
+	}
+
+	// the selection as defined by the specification : the first mapping in order whose rule matches
+	private MobicentsSipServletMapping matchSequentially(SipServletRequest request) {
+		for (MobicentsSipServletMapping mapping : mappings) {
+			if(mapping.getMatchingRule() != null && mapping.getMatchingRule().matches(request)) {
+				return mapping;
+			}
+		}
+		return null;
+	}
+
+	private String match(String method, String user, String displayName) {
+		final MobicentsSipServletMapping mapping = new SipServletMappingMatcher(mappings).match(request(method, user, displayName));
+		return mapping == null ? null : mapping.getServletName();
+	}
+
+	// every combination of the request fields gives the same mapping as the sequential evaluation
+	private void assertSameAsSequential() {
+		final SipServletMappingMatcher matcher = new SipServletMappingMatcher(mappings);
+		for (String method : METHODS) {
+			for (String user : USERS) {
+				for (String displayName : DISPLAY_NAMES) {
+					final SipServletRequest request = request(method, user, displayName);
+					assertSame(request.toString(), matchSequentially(request), matcher.match(request));
+				}
+			}
+		}
+	}
+
+	public void testFirstMatchingMappingWins() {
+		addMapping("alice-invite", and(equalsRule("request.method", "INVITE"), equalsRule("request.uri.user", "alice")));
+		addMapping("invite", equalsRule("request.method", "INVITE"));
+		addMapping("alice", equalsRule("request.uri.user", "alice"));
+		addMapping("message", equalsRule("request.method", "MESSAGE"));
+		// never selected, the invite mapping comes first
+		addMapping("bob-invite", and(equalsRule("request.method", "INVITE"), equalsRule("request.uri.user", "bob")));
+
+		assertEquals("alice-invite", match("INVITE", "alice", null));
+		assertEquals("invite", match("INVITE", "bob", null));
+		assertEquals("alice", match("MESSAGE", "alice", null));
+		assertEquals("message", match("MESSAGE", "bob", null));
+		assertNull(match("REGISTER", "bob", null));
+		// the method is case sensitive
+		assertEquals("alice", match("invite", "alice", null));
+		assertNull(match("invite", "bob", null));
+		assertSameAsSequential();
+	}
+
+	public void testIgnoreCaseEquals() {
+		addMapping("exact", equalsRule("request.uri.user", "Alice"));
+		addMapping("any-case", new EqualsRule("request.uri.user", "ALICE", true));
+		addMapping("bill", new EqualsRule("request.uri.user", "BILL", true));
+		addMapping("carol", new EqualsRule("request.uri.user", "Carol", true));
+
+		assertEquals("any-case", match("INVITE", "alice", null));
+		assertEquals("any-case", match("INVITE", "ALICE", null));
+		assertEquals("carol", match("INVITE", "carol", null));
+		// equalsIgnoreCase compares the upper case forms, the dotless i matches I
+		assertEquals("bill", match("INVITE", "b\u0131ll", null));
+		assertNull(match("INVITE", "bob", null));
+		assertNull(match("INVITE", null, null));
+		assertSameAsSequential();
+	}
+
+	public void testUnconstrainedMappingsKeepTheirOrder() {
+		addMapping("alice-invite", and(equalsRule("request.method", "INVITE"), equalsRule("request.uri.user", "alice")));
+		// not constraining the method, it is copied in every branch of the switch on it
+		addMapping("contains-a", new ContainsRule("request.uri.user", "A", true));
+		addMapping("invite", equalsRule("request.method", "INVITE"));
+		addMapping("message", equalsRule("request.method", "MESSAGE"));
+		// matches any request left, can only be reached after all the others
+		addMapping("fallback", not(equalsRule("request.method", "REGISTER")));
+
+		assertEquals("alice-invite", match("INVITE", "alice", null));
+		// the branch of INVITE must evaluate the earlier unconstrained mapping first
+		assertEquals("contains-a", match("INVITE", "carol", null));
+		assertEquals("invite", match("INVITE", "bob", null));
+		assertEquals("contains-a", match("MESSAGE", "carol", null));
+		assertEquals("message", match("MESSAGE", "bob", null));
+		assertEquals("fallback", match("OPTIONS", "bob", null));
+		assertEquals("contains-a", match("REGISTER", "ALICE", null));
+		assertNull(match("REGISTER", "bob", null));
+		assertSameAsSequential();
+	}
+
+	public void testSwitchedAndUnconstrainedFieldsMixed() {
+		addMapping("register", equalsRule("request.method", "REGISTER"));
+		addMapping("support", and(equalsRule("request.method", "INVITE"),
+				new ContainsRule("request.from.display-name", "support", true)));
+		addMapping("not-bob", and(equalsRule("request.method", "INVITE"), not(equalsRule("request.uri.user", "bob"))));
+		addMapping("alice-or-bob", or(new EqualsRule("request.uri.user", "alice", true), equalsRule("request.uri.user", "bob")));
+		addMapping("options", and(equalsRule("request.method", "OPTIONS"), new EqualsRule("request.uri.user", "carol", true)));
+		addMapping("options-any", equalsRule("request.method", "OPTIONS"));
+		addMapping("no-rule", null);
+
+		assertEquals("register", match("REGISTER", "alice", null));
+		assertEquals("support", match("INVITE", "bob", "Support Desk"));
+		assertEquals("not-bob", match("INVITE", "carol", "Alice"));
+		assertEquals("alice-or-bob", match("INVITE", "bob", "Alice"));
+		assertEquals("alice-or-bob", match("MESSAGE", "ALICE", null));
+		assertEquals("options", match("OPTIONS", "carol", null));
+		assertEquals("options-any", match("OPTIONS", null, null));
+		// a mapping without rule never matches
+		assertNull(match("MESSAGE", "carol", null));
+		assertSameAsSequential();
+	}
+
+	public void testSameFieldWithAndWithoutIgnoreCase() {
+		addMapping("exact-invite", equalsRule("request.method", "INVITE"));
+		addMapping("exact-message", equalsRule("request.method", "MESSAGE"));
+		addMapping("any-case-invite", new EqualsRule("request.method", "Invite", true));
+		addMapping("any-case-options", new EqualsRule("request.method", "options", true));
+
+		assertEquals("exact-invite", match("INVITE", "alice", null));
+		assertEquals("any-case-invite", match("invite", "alice", null));
+		assertEquals("exact-message", match("MESSAGE", "alice", null));
+		assertEquals("any-case-options", match("OPTIONS", "alice", null));
+		assertNull(match("REGISTER", "alice", null));
+		assertSameAsSequential();
+	}
+
+	public void testDeepTree() {
+		// more constrained fields than the depth of the tree, the last ones are evaluated in the leaves
+		final String[] users = {"alice", "bob", "carol"};
+		for (String method : new String[] {"INVITE", "MESSAGE"}) {
+			for (String user : users) {
+				addMapping(method + "-" + user, and(equalsRule("request.method", method),
+						equalsRule("request.uri.user", user),
+						equalsRule("request.uri.host", "example.com"),
+						equalsRule("request.uri.scheme", "sip"),
+						equalsRule("request.from.display-name", "Alice"),
+						equalsRule("request.from.uri.host", "atlanta.com")));
+			}
+		}
+		addMapping("any", new ContainsRule("request.uri", "example", false));
+
+		assertEquals("MESSAGE-bob", match("MESSAGE", "bob", "Alice"));
+		assertEquals("any", match("MESSAGE", "bob", null));
+		assertEquals("any", match("OPTIONS", "alice", "Alice"));
+		assertSameAsSequential();
+	}
+
+	public void testNoMappings() {
+		assertNull(match("INVITE", "alice", null));
+	}
+}
@@ -0,0 +1,116 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.servlet.sip.security;
+
+import java.nio.charset.Charset;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks {@link DigestAlgorithm} against the examples of RFC 2617 section 3.5 and RFC 7616 section 3.9.1.
+ * The -sess and auth-int expectations were computed independently since the RFCs give no example for them.
+ */
+public class DigestAlgorithmTest extends TestCase {
+	// RFC 2617 section 3.5
+	private static final String RFC2617_USER = "Mufasa";
+	private static final String RFC2617_REALM = "testrealm@host.com";
+	private static final String RFC2617_PASSWORD = "Circle Of Life";
+	private static final String RFC2617_NONCE = "dcd98b7102dd2f0e8b11d0f600bfb0c093";
+	private static final String RFC2617_CNONCE = "0a4f113b";
+
+	// RFC 7616 section 3.9.1
+	private static final String RFC7616_USER = "Mufasa";
+	private static final String RFC7616_REALM = "http-auth@example.org";
+	private static final String RFC7616_PASSWORD = "Circle of Life";
+	private static final String RFC7616_NONCE = "7ypf/xlj9XXwfDPEoM4URrv/xwf94BcCAzFZH4GiTo0v";
+	private static final String RFC7616_CNONCE = "f2/wE4q74E6zIJEtWaHKaf5wv/H5QzzpXusqGemxURZJ";
+
+	private static final String URI = "/dir/index.html";
+	private static final String NC = "00000001";
+
+	public void testRfc2617Md5() {
+		assertEquals("939e7578ed9e3c518a452acee763bce9", DigestAlgorithm.MD5.digestA1(RFC2617_USER, RFC2617_REALM, RFC2617_PASSWORD));
+		assertEquals("6629fae49393a05397450978507c4ef1", response(DigestAlgorithm.MD5, RFC2617_USER, RFC2617_REALM, RFC2617_PASSWORD, 
+				RFC2617_NONCE, NC, RFC2617_CNONCE, "auth"));
+	}
+
+	public void testRfc7616Md5() {
+		assertEquals("8ca523f5e9506fed4657c9700eebdbec", response(DigestAlgorithm.MD5, RFC7616_USER, RFC7616_REALM, RFC7616_PASSWORD, 
+				RFC7616_NONCE, NC, RFC7616_CNONCE, "auth"));
+	}
+
+	public void testRfc7616Sha256() {
+		assertEquals("753927fa0e85d155564e2e272a28d1802ca10daf4496794697cf8db5856cb6c1", response(DigestAlgorithm.SHA_256, RFC7616_USER, RFC7616_REALM, RFC7616_PASSWORD, 
+				RFC7616_NONCE, NC, RFC7616_CNONCE, "auth"));
+	}
+
+	public void testSessionVariants() {
+		assertEquals("e783283f46242139c486a698fec7211d", response(DigestAlgorithm.MD5_SESS, RFC7616_USER, RFC7616_REALM, RFC7616_PASSWORD, 
+				RFC7616_NONCE, NC, RFC7616_CNONCE, "auth"));
+		assertEquals("2fd51b3a77ad75bad6afad6003e818d767133c46d9e2749e7f5232ae1ea3efd7", response(DigestAlgorithm.SHA_256_SESS, RFC7616_USER, RFC7616_REALM, RFC7616_PASSWORD, 
+				RFC7616_NONCE, NC, RFC7616_CNONCE, "auth"));
+	}
+
+	public void testWithoutQop() {
+		assertEquals("670fd8c2df070c60b045671b8b24ff02", response(DigestAlgorithm.MD5, RFC2617_USER, RFC2617_REALM, RFC2617_PASSWORD, 
+				RFC2617_NONCE, null, null, null));
+	}
+
+	public void testAuthInt() {
+		final DigestAlgorithm algorithm = DigestAlgorithm.MD5;
+		final String ha1 = algorithm.digestA1(RFC2617_USER, RFC2617_REALM, RFC2617_PASSWORD);
+		final String ha2 = algorithm.digestA2("INVITE", "sip:bob@example.com", "auth-int", "v=0\r\n".getBytes(Charset.forName("UTF-8")));
+		assertEquals("6a6e449f512a9f3e11597febd92718ea", algorithm.digestResponse(ha1, RFC2617_NONCE, NC, RFC2617_CNONCE, "auth-int", ha2));
+	}
+
+	public void testFromName() {
+		assertEquals(DigestAlgorithm.MD5, DigestAlgorithm.fromName(null));
+		assertEquals(DigestAlgorithm.MD5, DigestAlgorithm.fromName(" "));
+		assertEquals(DigestAlgorithm.MD5_SESS, DigestAlgorithm.fromName("md5-sess"));
+		assertEquals(DigestAlgorithm.SHA_256, DigestAlgorithm.fromName("SHA-256"));
+		assertEquals(DigestAlgorithm.SHA_256_SESS, DigestAlgorithm.fromName("SHA-256-sess"));
+		assertNull(DigestAlgorithm.fromName("SHA-512-256"));
+	}
+
+	public void testRequiredParameters() {
+		assertTrue(DigestAlgorithm.MD5.hasRequiredParameters(null, null, null));
+		assertTrue(DigestAlgorithm.MD5.hasRequiredParameters(NC, RFC2617_CNONCE, "auth"));
+		assertTrue(DigestAlgorithm.MD5_SESS.hasRequiredParameters(NC, RFC2617_CNONCE, "auth"));
+		// -sess variants can't be computed without a cnonce
+		assertFalse(DigestAlgorithm.MD5_SESS.hasRequiredParameters(null, null, null));
+		assertFalse(DigestAlgorithm.SHA_256_SESS.hasRequiredParameters(NC, "", "auth"));
+		// a qop requires both the cnonce and the nonce count
+		assertFalse(DigestAlgorithm.MD5.hasRequiredParameters(null, RFC2617_CNONCE, "auth"));
+		assertFalse(DigestAlgorithm.SHA_256.hasRequiredParameters(NC, null, "auth"));
+	}
+
+	public void testIsEqual() {
+		assertTrue(DigestAlgorithm.isEqual("6629fae49393a05397450978507c4ef1", "6629FAE49393A05397450978507C4EF1"));
+		assertFalse(DigestAlgorithm.isEqual("6629fae49393a05397450978507c4ef1", "6629fae49393a05397450978507c4ef2"));
+		assertFalse(DigestAlgorithm.isEqual("6629fae49393a05397450978507c4ef1", null));
+	}
+
+	private static String response(DigestAlgorithm algorithm, String user, String realm, String password, String nonce, String nc, String cnonce, String qop) {
+		final String ha1 = algorithm.digestA1(user, realm, password);
+		final String ha2 = algorithm.digestA2("GET", URI, qop, null);
+		return algorithm.digestResponse(ha1, nonce, nc, cnonce, qop, ha2);
+	}
+}
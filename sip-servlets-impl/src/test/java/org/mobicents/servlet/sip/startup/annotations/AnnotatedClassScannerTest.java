@@ -0,0 +1,172 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.servlet.sip.startup.annotations;
+
+import static org.mobicents.servlet.sip.startup.annotations.ClassFileAnnotationReaderTest.PACKAGE_INFO;
+import static org.mobicents.servlet.sip.startup.annotations.ClassFileAnnotationReaderTest.classFile;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import junit.framework.TestCase;
+
+import org.mobicents.servlet.sip.startup.annotations.fixtures.AnnotatedListener;
+import org.mobicents.servlet.sip.startup.annotations.fixtures.AnnotatedServlet;
+import org.mobicents.servlet.sip.startup.annotations.fixtures.ApplicationKeyHolder;
+import org.mobicents.servlet.sip.startup.annotations.fixtures.InheritingServlet;
+import org.mobicents.servlet.sip.startup.annotations.fixtures.PlainClass;
+
+/**
+ * Scans an exploded application made of the compiled fixture classes, some in WEB-INF/classes and some in a jar,
+ * along with malformed class files which must be skipped, and checks the reuse of the stored jar indexes.
+ */
+public class AnnotatedClassScannerTest extends TestCase {
+	private static final List<String> EXPECTED_CLASSES = Arrays.asList(
+			// the classes of the directories first
+			AnnotatedServlet.class.getName(),
+			// then the ones of the jar, in its order
+			AnnotatedListener.class.getName(),
+			ApplicationKeyHolder.class.getName(),
+			PACKAGE_INFO,
+			// annotated through its super class, found in another archive
+			InheritingServlet.class.getName());
+
+	private File docBase;
+	private File indexDirectory;
+	private File jar;
+
+	@Override
+	protected void setUp() throws Exception {
+		docBase = File.createTempFile("docbase", "");
+		docBase.delete();
+		final File classes = new File(docBase, "WEB-INF/classes");
+		writeClassFile(classes, AnnotatedServlet.class.getName());
+		writeClassFile(classes, PlainClass.class.getName());
+		write(new File(classes, "Broken.class"), "not a class file".getBytes("UTF-8"));
+
+		jar = new File(docBase, "WEB-INF/lib/fixtures.jar");
+		jar.getParentFile().mkdirs();
+		final JarOutputStream jarOutputStream = new JarOutputStream(new FileOutputStream(jar));
+		try {
+			for (String className : new String[] {AnnotatedListener.class.getName(), ApplicationKeyHolder.class.getName(),
+					PACKAGE_INFO, InheritingServlet.class.getName()}) {
+				jarOutputStream.putNextEntry(new ZipEntry(className.replace('.', '/') + ".class"));
+				jarOutputStream.write(classFile(className));
+				jarOutputStream.closeEntry();
+			}
+			final byte[] classFile = classFile(PlainClass.class.getName());
+			jarOutputStream.putNextEntry(new ZipEntry("org/example/Truncated.class"));
+			jarOutputStream.write(classFile, 0, classFile.length / 2);
+			jarOutputStream.closeEntry();
+		} finally {
+			jarOutputStream.close();
+		}
+		indexDirectory = new File(docBase.getParentFile(), docBase.getName() + "-index");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		delete(docBase);
+		delete(indexDirectory);
+	}
+
+	private static void writeClassFile(File classes, String className) throws IOException {
+		write(new File(classes, className.replace('.', '/') + ".class"), classFile(className));
+	}
+
+	private static void write(File file, byte[] content) throws IOException {
+		file.getParentFile().mkdirs();
+		final OutputStream outputStream = new FileOutputStream(file);
+		try {
+			outputStream.write(content);
+		} finally {
+			outputStream.close();
+		}
+	}
+
+	private static void delete(File file) {
+		final File[] files = file.listFiles();
+		if(files != null) {
+			for (File child : files) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	public void testScan() throws Exception {
+		final AnnotatedClassScanner scanner = new AnnotatedClassScanner(null);
+		assertEquals(EXPECTED_CLASSES, scanner.scan(docBase));
+		assertEquals(1, scanner.getArchivesScanned());
+		assertEquals(0, scanner.getArchivesFromIndex());
+		// the malformed class files are read and skipped
+		assertEquals(8, scanner.getClassesRead());
+	}
+
+	public void testUnchangedJarReadFromIndex() throws Exception {
+		final AnnotatedClassScanner firstScanner = new AnnotatedClassScanner(indexDirectory);
+		assertEquals(EXPECTED_CLASSES, firstScanner.scan(docBase));
+		assertEquals(0, firstScanner.getArchivesFromIndex());
+		assertEquals(1, indexDirectory.list().length);
+
+		final AnnotatedClassScanner secondScanner = new AnnotatedClassScanner(indexDirectory);
+		assertEquals(EXPECTED_CLASSES, secondScanner.scan(docBase));
+		assertEquals(1, secondScanner.getArchivesFromIndex());
+		// only the class files of WEB-INF/classes are read again
+		assertEquals(3, secondScanner.getClassesRead());
+	}
+
+	public void testCorruptedIndexIgnored() throws Exception {
+		new AnnotatedClassScanner(indexDirectory).scan(docBase);
+		final File[] indexFiles = indexDirectory.listFiles();
+		assertEquals(1, indexFiles.length);
+		write(indexFiles[0], "#sip-annotation-index 1\nbroken line\n".getBytes("UTF-8"));
+
+		final AnnotatedClassScanner scanner = new AnnotatedClassScanner(indexDirectory);
+		assertEquals(EXPECTED_CLASSES, scanner.scan(docBase));
+		assertEquals(0, scanner.getArchivesFromIndex());
+		assertEquals(8, scanner.getClassesRead());
+	}
+
+	public void testIndexStoreAndLoad() throws Exception {
+		final AnnotationIndex index = AnnotationIndex.build(jar);
+		assertEquals(5, index.getClassesRead());
+		final File indexFile = new File(docBase, "fixtures.index");
+		index.store(indexFile);
+
+		final AnnotationIndex loadedIndex = AnnotationIndex.load(indexFile);
+		assertEquals(0, loadedIndex.getClassesRead());
+		assertEquals(index.getEntries().size(), loadedIndex.getEntries().size());
+		for (int i = 0; i < index.getEntries().size(); i++) {
+			final AnnotationIndex.Entry entry = index.getEntries().get(i);
+			final AnnotationIndex.Entry loadedEntry = loadedIndex.getEntries().get(i);
+			assertEquals(entry.getClassName(), loadedEntry.getClassName());
+			assertEquals(entry.getSuperClassName(), loadedEntry.getSuperClassName());
+			assertEquals(entry.getFlags(), loadedEntry.getFlags());
+		}
+	}
+}
@@ -0,0 +1,150 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.servlet.sip.startup.annotations;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.mobicents.servlet.sip.startup.annotations.fixtures.AnnotatedListener;
+import org.mobicents.servlet.sip.startup.annotations.fixtures.AnnotatedServlet;
+import org.mobicents.servlet.sip.startup.annotations.fixtures.ApplicationKeyHolder;
+import org.mobicents.servlet.sip.startup.annotations.fixtures.InheritingServlet;
+import org.mobicents.servlet.sip.startup.annotations.fixtures.PlainClass;
+
+/**
+ * Reads the SIP annotations of the compiled fixture classes through {@link ClassFileAnnotationReader}
+ * and checks that malformed class files are reported as such and skipped by the {@link AnnotationIndex}.
+ */
+public class ClassFileAnnotationReaderTest extends TestCase {
+	static final String FIXTURES = "org.mobicents.servlet.sip.startup.annotations.fixtures";
+	static final String PACKAGE_INFO = FIXTURES + ".package-info";
+
+	/**
+	 * @param className the name of a class of the test class path
+	 * @return the content of its class file
+	 */
+	static byte[] classFile(String className) throws IOException {
+		final InputStream inputStream = ClassFileAnnotationReaderTest.class.getClassLoader()
+			.getResourceAsStream(className.replace('.', '/') + ".class");
+		assertNotNull("no class file for " + className, inputStream);
+		try {
+			return AnnotationIndex.readFully(inputStream, new byte[8192]);
+		} finally {
+			inputStream.close();
+		}
+	}
+
+	private static AnnotationIndex.Entry read(String className) throws IOException {
+		final AnnotationIndex.Entry entry = ClassFileAnnotationReader.read(classFile(className));
+		assertEquals(className, entry.getClassName());
+		return entry;
+	}
+
+	public void testLongAndDoubleConstants() throws Exception {
+		// the annotations are only found if the constants taking two entries of the constant pool are skipped right
+		final AnnotationIndex.Entry entry = read(AnnotatedServlet.class.getName());
+		assertEquals(AnnotationIndex.SIP_SERVLET, entry.getFlags());
+		assertEquals("java.lang.Object", entry.getSuperClassName());
+	}
+
+	public void testInheritingClass() throws Exception {
+		final AnnotationIndex.Entry entry = read(InheritingServlet.class.getName());
+		assertEquals(0, entry.getFlags());
+		assertEquals(AnnotatedServlet.class.getName(), entry.getSuperClassName());
+	}
+
+	public void testPackageInfo() throws Exception {
+		final AnnotationIndex.Entry entry = read(PACKAGE_INFO);
+		assertEquals(AnnotationIndex.SIP_APPLICATION | AnnotationIndex.CONCURRENCY_CONTROL, entry.getFlags());
+	}
+
+	public void testSipApplicationKeyOnMethod() throws Exception {
+		final AnnotationIndex.Entry entry = read(ApplicationKeyHolder.class.getName());
+		assertEquals(AnnotationIndex.SIP_APPLICATION_KEY, entry.getFlags());
+	}
+
+	public void testSipListener() throws Exception {
+		final AnnotationIndex.Entry entry = read(AnnotatedListener.class.getName());
+		assertEquals(AnnotationIndex.SIP_LISTENER, entry.getFlags());
+	}
+
+	public void testOtherAnnotationsIgnored() throws Exception {
+		final AnnotationIndex.Entry entry = read(PlainClass.class.getName());
+		assertEquals(0, entry.getFlags());
+
+		final AnnotationIndex index = new AnnotationIndex();
+		index.add("PlainClass.class", classFile(PlainClass.class.getName()));
+		assertEquals(1, index.getClassesRead());
+		// neither annotated nor extending a class of the application
+		assertTrue(index.getEntries().isEmpty());
+	}
+
+	public void testNotAClassFile() throws Exception {
+		assertMalformed("text".getBytes("UTF-8"));
+		assertMalformed(new byte[0]);
+		final byte[] classFile = classFile(AnnotatedServlet.class.getName());
+		// unknown tag for the first constant pool entry
+		classFile[10] = (byte) 2;
+		assertMalformed(classFile);
+	}
+
+	public void testTruncatedClassFiles() throws Exception {
+		final byte[] classFile = classFile(AnnotatedServlet.class.getName());
+		for (int length = 0; length < classFile.length; length++) {
+			assertMalformed(Arrays.copyOf(classFile, length));
+		}
+	}
+
+	public void testCorruptedClassFiles() throws Exception {
+		final byte[] classFile = classFile(ApplicationKeyHolder.class.getName());
+		final Random random = new Random(289);
+		for (int i = 0; i < 2000; i++) {
+			final byte[] corrupted = classFile.clone();
+			for (int j = 0; j < 4; j++) {
+				corrupted[8 + random.nextInt(corrupted.length - 8)] = (byte) random.nextInt(256);
+			}
+			try {
+				ClassFileAnnotationReader.read(corrupted);
+			} catch (IOException e) {
+				// the flipped bytes can as well leave a readable class file
+			}
+			// never fails the deployment
+			new AnnotationIndex().add("corrupted.class", corrupted);
+		}
+	}
+
+	private static void assertMalformed(byte[] classFile) {
+		try {
+			ClassFileAnnotationReader.read(classFile);
+			fail("malformed class file of " + classFile.length + " bytes read");
+		} catch (IOException e) {
+			// expected
+		}
+		final AnnotationIndex index = new AnnotationIndex();
+		index.add("malformed.class", classFile);
+		assertEquals(1, index.getClassesRead());
+		assertTrue(index.getEntries().isEmpty());
+	}
+}
@@ -1,6 +1,6 @@
 /*
  * TeleStax, Open Source Cloud Communications
- * Copyright 2011-2015, Telestax Inc and individual contributors
+ * Copyright 2011-2016, Telestax Inc and individual contributors
  * by the @authors tag.
  *
  * This program is free software: you can redistribute it and/or modify
@@ -17,25 +17,15 @@
  * along with this program.  If not, see <http://www.gnu.org/licenses/>
  */
 
-package org.mobicents.servlet.sip.undertow.rules.request;
 
-import javax.servlet.sip.SipServletRequest;
+package org.mobicents.servlet.sip.startup.annotations.fixtures;
+
+import javax.servlet.sip.annotation.SipListener;
 
 /**
- * @author Thomas Leseney
- *
- *         This class is based on the contents of org.mobicents.servlet.sip.catalina.rules.request package from sip-servlet-as7
- *         project, re-implemented for jboss as8 (wildfly) by:
- * @author kakonyi.istvan@alerant.hu
+ * Listener of the application.
  */
-public class From implements Extractor {
-    public From(String token) {
-        if (!token.equals("request")) {
-            throw new IllegalArgumentException("Invalid expression: from after " + token);
-        }
-    }
-
-    public Object extract(Object input) {
-        return ((SipServletRequest) input).getFrom();
-    }
+@SipListener(applicationName = "fixtures")
+public class AnnotatedListener {
+	public static final long STARTED = 1L;
 }
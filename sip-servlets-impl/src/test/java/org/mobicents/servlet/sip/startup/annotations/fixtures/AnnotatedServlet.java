@@ -0,0 +1,47 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package org.mobicents.servlet.sip.startup.annotations.fixtures;
+
+import java.lang.annotation.ElementType;
+
+import javax.servlet.sip.annotation.SipServlet;
+
+/**
+ * Servlet whose constant pool holds long and double constants, each taking two entries.
+ */
+@Tagged(value = {"servlet", "fixture"}, type = String.class, target = ElementType.METHOD, since = 1234567890123L, weight = 0.5d)
+@SipServlet(name = "AnnotatedServlet", loadOnStartup = 1)
+public class AnnotatedServlet {
+	public static final long TIMEOUT = 9876543210L;
+	public static final double RATIO = 0.75d;
+	public static final float FACTOR = 1.5f;
+	public static final int COUNT = 123456;
+	public static final String NAME = "annotated";
+
+	private long lastTimeout = TIMEOUT;
+	private double lastRatio = RATIO;
+
+	public double scale(long value) {
+		lastTimeout = value * 31L + Long.MAX_VALUE;
+		lastRatio = value * RATIO * Double.MIN_VALUE;
+		return lastTimeout + lastRatio;
+	}
+}
@@ -1,6 +1,6 @@
 /*
  * TeleStax, Open Source Cloud Communications
- * Copyright 2011-2015, Telestax Inc and individual contributors
+ * Copyright 2011-2016, Telestax Inc and individual contributors
  * by the @authors tag.
  *
  * This program is free software: you can redistribute it and/or modify
@@ -17,25 +17,23 @@
  * along with this program.  If not, see <http://www.gnu.org/licenses/>
  */
 
-package org.mobicents.servlet.sip.undertow.rules.request;
+
+package org.mobicents.servlet.sip.startup.annotations.fixtures;
 
 import javax.servlet.sip.SipServletRequest;
+import javax.servlet.sip.annotation.SipApplicationKey;
 
 /**
- * @author Thomas Leseney
- *
- *         This class is based on the contents of org.mobicents.servlet.sip.catalina.rules.request package from sip-servlet-as7
- *         project, re-implemented for jboss as8 (wildfly) by:
- * @author kakonyi.istvan@alerant.hu
+ * Class whose only SIP annotation is on a method.
  */
-public class To implements Extractor {
-    public To(String token) {
-        if (!token.equals("request")) {
-            throw new IllegalArgumentException("Invalid expression: from after " + token);
-        }
-    }
+public class ApplicationKeyHolder {
+	@Tagged("not a key")
+	public static String describe(SipServletRequest request) {
+		return String.valueOf(request);
+	}
 
-    public Object extract(Object input) {
-        return ((SipServletRequest) input).getTo();
-    }
+	@SipApplicationKey(applicationName = "fixtures")
+	public static String sessionKey(SipServletRequest request) {
+		return request.getMethod();
+	}
 }